@@ -70,10 +70,13 @@ class QigsawAppBasePlugin extends QigsawPlugin {
         if (isQigsawBuild) {
             android.registerTransform(resourcesLoaderTransform)
         }
+        addNoCompressExtension(project, "bin")
         project.afterEvaluate {
             if (!AGPCompat.isAapt2EnabledCompat(project)) {
                 throw new GradleException('Qigsaw Error: AAPT2 required')
             }
+            //noCompress of android block replaces the list set when plugin is applied.
+            addNoCompressExtension(project, "bin")
             Set<String> dynamicFeatures = android.dynamicFeatures
             if (dynamicFeatures == null || dynamicFeatures.isEmpty()) {
                 throw new GradleException("dynamicFeatures must be set in ${project.name}/build.gradle ")
@@ -130,6 +133,7 @@ class QigsawAppBasePlugin extends QigsawPlugin {
                 File unzipSplitApkBaseDir = project.file("${project.buildDir}/${AndroidProject.FD_INTERMEDIATES}/${QIGSAW}/split-outputs/unzip/${baseVariant.name}")
                 File splitManifestDir = new File(splitManifestParentDir, baseVariant.name)
                 File splitInfoDir = project.file("${project.buildDir}/${AndroidProject.FD_INTERMEDIATES}/${QIGSAW}/split-outputs/split-info/${baseVariant.name}")
+                File splitPatchesDir = project.file("${project.buildDir}/${AndroidProject.FD_INTERMEDIATES}/${QIGSAW}/split-outputs/patches/${baseVariant.name}")
                 File qigsawProguardDir = project.file("${project.buildDir}/${AndroidProject.FD_INTERMEDIATES}/${QIGSAW}/old-outputs/mapping/${baseVariant.name}")
                 File splitDetailsDir = project.file("${project.buildDir}/${AndroidProject.FD_INTERMEDIATES}/${QIGSAW}/split-details/${baseVariant.name}")
                 File baseApksDir = project.file("${project.buildDir}/${AndroidProject.FD_INTERMEDIATES}/${QIGSAW}/base-outputs/apks/${baseVariant.name}")
@@ -162,6 +166,15 @@ class QigsawAppBasePlugin extends QigsawPlugin {
                 generateQigsawConfig.targetFilesExtractedDir = targetFilesExtractedDir
                 generateQigsawConfig.setGroup(QIGSAW)
 
+                //create patches of updated split apks.
+                CreateSplitPatchTask createSplitPatches = project.tasks.create("createSplitPatches${baseVariant.name.capitalize()}", CreateSplitPatchTask)
+                createSplitPatches.dynamicFeaturesNames = dynamicFeaturesNames
+                createSplitPatches.splitApksDir = splitApksDir
+                createSplitPatches.splitInfoDir = splitInfoDir
+                createSplitPatches.targetFilesExtractedDir = targetFilesExtractedDir
+                createSplitPatches.splitPatchesDir = splitPatchesDir
+                createSplitPatches.setGroup(QIGSAW)
+
                 //create split-details file.
                 CreateSplitDetailsFileTask qigsawAssemble = project.tasks.create("qigsawAssemble${baseVariant.name.capitalize()}", CreateSplitDetailsFileTask)
                 qigsawAssemble.qigsawId = qigsawId
@@ -171,6 +184,7 @@ class QigsawAppBasePlugin extends QigsawPlugin {
                 qigsawAssemble.dynamicFeaturesNames = dynamicFeaturesNames
                 qigsawAssemble.splitApksDir = splitApksDir
                 qigsawAssemble.splitInfoDir = splitInfoDir
+                qigsawAssemble.splitPatchesDir = splitPatchesDir
                 qigsawAssemble.targetFilesExtractedDir = targetFilesExtractedDir
                 qigsawAssemble.splitDetailsFile = splitDetailsFile
                 qigsawAssemble.updateRecordFile = updateRecordFile
@@ -193,12 +207,15 @@ class QigsawAppBasePlugin extends QigsawPlugin {
                 if(processManifestForBundle!=null){
                     extractTargetFilesFromOldApk.dependsOn processManifestForBundle
                 }
+                createSplitPatches.dependsOn extractTargetFilesFromOldApk
                 qigsawAssemble.dependsOn extractTargetFilesFromOldApk
+                qigsawAssemble.dependsOn createSplitPatches
                 generateQigsawConfig.dependsOn extractTargetFilesFromOldApk
                 generateQigsawConfig.dependsOn generateBuildConfig
                 generateBuildConfig.finalizedBy generateQigsawConfig
 
                 if (isQigsawBuild) {
+                    createSplitPatches.dependsOn mergeJniLibs
                     qigsawAssemble.dependsOn mergeJniLibs
                     qigsawAssemble.finalizedBy baseAssemble
                     baseAssemble.dependsOn qigsawAssemble
@@ -504,6 +521,19 @@ class QigsawAppBasePlugin extends QigsawPlugin {
         return mergedAbiFilters
     }
 
+    /**
+     * qigsaw_*.bin assets are mapped by AssetManager#openFd, which fails if they are compressed.
+     */
+    static void addNoCompressExtension(Project project, String extension) {
+        def aaptOptions = project.extensions.android.aaptOptions
+        Collection<String> noCompress = aaptOptions.noCompress
+        if (noCompress == null || !noCompress.contains(extension)) {
+            List<String> merged = noCompress == null ? new ArrayList<>() : new ArrayList<>(noCompress)
+            merged.add(extension)
+            aaptOptions.noCompress(merged as String[])
+        }
+    }
+
     static void removeRulesAboutMultiDex(Task multiDexTask, ApplicationVariant appVariant) {
         multiDexTask.doFirst {
             FixedMainDexList handler = new FixedMainDexList(appVariant)
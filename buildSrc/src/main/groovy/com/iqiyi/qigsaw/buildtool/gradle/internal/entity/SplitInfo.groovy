@@ -99,6 +99,34 @@ class SplitInfo implements Cloneable {
          * size of split apk file
          */
         long size
+
+        /**
+         * patch which rebuilds split apk from the apk of previous version, optional.
+         */
+        SplitPatchData patch
+    }
+
+    static class SplitPatchData implements Cloneable {
+
+        /**
+         * md5 of split apk which the patch is applied to
+         */
+        String baseMd5
+
+        /**
+         * Download link of patch file
+         */
+        String url
+
+        /**
+         * md5 of patch file
+         */
+        String md5
+
+        /**
+         * size of patch file
+         */
+        long size
     }
 
     static class SplitLibData implements Cloneable {
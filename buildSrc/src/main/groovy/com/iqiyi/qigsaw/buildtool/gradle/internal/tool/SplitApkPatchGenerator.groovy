@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.qigsaw.buildtool.gradle.internal.tool
+
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+
+/**
+ * Create zip-entry level patch which rebuilds new split apk from old split apk byte by byte.
+ * Raw data of zip entries which are not changed is copied from old apk, everything else is stored in patch.
+ * The format is read by SplitApkPatch of splitinstaller, both sides must be kept in sync when it changes.
+ * <pre>
+ * header | magic, format version, utf base md5, utf target md5, long target size
+ * body   | deflated ops: OP_COPY [long base offset][int length], OP_DATA [int length][bytes], OP_END
+ * </pre>
+ */
+class SplitApkPatchGenerator {
+
+    static final int MAGIC = 0x51535054
+
+    static final int FORMAT_VERSION = 1
+
+    static final int OP_END = 0
+
+    static final int OP_COPY = 1
+
+    static final int OP_DATA = 2
+
+    /**
+     * Entries smaller than this are cheaper to store than to copy.
+     */
+    static final int MIN_COPY_SIZE = 32
+
+    private static final int EOCD_SIGNATURE = 0x06054b50
+
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50
+
+    private static final int EOCD_SIZE = 22
+
+    /**
+     * @return size of created patch file.
+     */
+    static long generate(File oldApk, File newApk, File patchFile) {
+        byte[] oldBytes = oldApk.bytes
+        byte[] newBytes = newApk.bytes
+        Map<String, ZipEntryRange> oldEntries = new HashMap<>()
+        readEntries(oldBytes).each {
+            oldEntries.put(it.name, it)
+        }
+        List<ZipEntryRange> newEntries = readEntries(newBytes)
+        newEntries.sort { it.dataOffset }
+        if (patchFile.exists()) {
+            patchFile.delete()
+        }
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(patchFile)))
+        try {
+            output.writeInt(MAGIC)
+            output.writeShort(FORMAT_VERSION)
+            output.writeUTF(FileUtils.getMD5(oldApk))
+            output.writeUTF(FileUtils.getMD5(newApk))
+            output.writeLong(newBytes.length)
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION)
+            DataOutputStream ops = new DataOutputStream(new DeflaterOutputStream(output, deflater))
+            int cursor = 0
+            newEntries.each { ZipEntryRange entry ->
+                ZipEntryRange oldEntry = oldEntries.get(entry.name)
+                if (entry.dataOffset >= cursor && isUnchanged(oldBytes, oldEntry, newBytes, entry)) {
+                    writeData(ops, newBytes, cursor, (int) (entry.dataOffset - cursor))
+                    ops.writeByte(OP_COPY)
+                    ops.writeLong(oldEntry.dataOffset)
+                    ops.writeInt((int) entry.compressedSize)
+                    cursor = (int) (entry.dataOffset + entry.compressedSize)
+                }
+            }
+            writeData(ops, newBytes, cursor, newBytes.length - cursor)
+            ops.writeByte(OP_END)
+            ops.close()
+            deflater.end()
+        } finally {
+            FileUtils.closeQuietly(output)
+        }
+        return patchFile.length()
+    }
+
+    static String readBaseMd5(File patchFile) {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(patchFile)))
+        try {
+            if (input.readInt() != MAGIC || input.readShort() != FORMAT_VERSION) {
+                throw new IOException("Bad header of split apk patch ${patchFile.absolutePath}")
+            }
+            return input.readUTF()
+        } finally {
+            FileUtils.closeQuietly(input)
+        }
+    }
+
+    private static boolean isUnchanged(byte[] oldBytes, ZipEntryRange oldEntry, byte[] newBytes, ZipEntryRange entry) {
+        if (oldEntry == null || entry.compressedSize < MIN_COPY_SIZE) {
+            return false
+        }
+        if (oldEntry.crc != entry.crc || oldEntry.method != entry.method || oldEntry.compressedSize != entry.compressedSize) {
+            return false
+        }
+        return Arrays.equals(
+                Arrays.copyOfRange(oldBytes, (int) oldEntry.dataOffset, (int) (oldEntry.dataOffset + oldEntry.compressedSize)),
+                Arrays.copyOfRange(newBytes, (int) entry.dataOffset, (int) (entry.dataOffset + entry.compressedSize)))
+    }
+
+    private static void writeData(DataOutputStream ops, byte[] bytes, int offset, int length) {
+        if (length > 0) {
+            ops.writeByte(OP_DATA)
+            ops.writeInt(length)
+            ops.write(bytes, offset, length)
+        }
+    }
+
+    private static List<ZipEntryRange> readEntries(byte[] bytes) {
+        int eocd = -1
+        for (int i = bytes.length - EOCD_SIZE; i >= Math.max(0, bytes.length - EOCD_SIZE - 0xffff); i--) {
+            if (readInt(bytes, i) == EOCD_SIGNATURE) {
+                eocd = i
+                break
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("End of central directory is not found!")
+        }
+        int entryCount = readShort(bytes, eocd + 10)
+        int position = (int) readInt(bytes, eocd + 16)
+        List<ZipEntryRange> entries = new ArrayList<>(entryCount)
+        for (int i = 0; i < entryCount; i++) {
+            if (readInt(bytes, position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new IOException("Bad central directory entry at ${position}")
+            }
+            ZipEntryRange entry = new ZipEntryRange()
+            entry.method = readShort(bytes, position + 10)
+            entry.crc = readInt(bytes, position + 16)
+            entry.compressedSize = readInt(bytes, position + 20)
+            int nameLength = readShort(bytes, position + 28)
+            int extraLength = readShort(bytes, position + 30)
+            int commentLength = readShort(bytes, position + 32)
+            long localHeaderOffset = readInt(bytes, position + 42)
+            entry.name = new String(bytes, position + 46, nameLength, "UTF-8")
+            if (readInt(bytes, (int) localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("Bad local header of entry ${entry.name}")
+            }
+            entry.dataOffset = localHeaderOffset + 30 + readShort(bytes, (int) localHeaderOffset + 26) + readShort(bytes, (int) localHeaderOffset + 28)
+            entries.add(entry)
+            position += 46 + nameLength + extraLength + commentLength
+        }
+        return entries
+    }
+
+    private static long readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xffL) | ((bytes[offset + 1] & 0xffL) << 8) | ((bytes[offset + 2] & 0xffL) << 16) | ((bytes[offset + 3] & 0xffL) << 24)
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8)
+    }
+
+    static class ZipEntryRange {
+
+        String name
+
+        int method
+
+        long crc
+
+        long compressedSize
+
+        long dataOffset
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.qigsaw.buildtool.gradle.internal.tool
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+
+/**
+ * Write class-to-split index read by SplitClassIndex of splitloader.
+ * Each class defined in dex files of split apks is recorded as 64-bit hash of its name and index of owner split,
+ * entries are sorted by hash so that runtime could binary search them without decoding.
+ * Both sides must be kept in sync when the layout changes.
+ */
+class SplitClassIndexWriter {
+
+    static final int MAGIC = 0x51434958
+
+    static final int FORMAT_VERSION = 1
+
+    static final short AMBIGUOUS = -1
+
+    static final long FNV_OFFSET_BASIS = -3750763034362895579L
+
+    static final long FNV_PRIME = 1099511628211L
+
+    /**
+     * @param splitApks split name to one of its apk files, splits without apk file are skipped.
+     */
+    static void write(Map<String, File> splitApks, File dest) {
+        List<String> splitNames = new ArrayList<>(splitApks.keySet())
+        Collections.sort(splitNames)
+        TreeMap<Long, Short> entries = new TreeMap<>()
+        splitNames.eachWithIndex { String splitName, int index ->
+            Set<String> classNames = readClassNames(splitApks.get(splitName))
+            classNames.each { String className ->
+                long hash = hash(className)
+                Short owner = entries.get(hash)
+                entries.put(hash, owner == null || owner == (short) index ? (short) index : AMBIGUOUS)
+            }
+        }
+        dest.parentFile.mkdirs()
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dest)))
+        try {
+            out.writeInt(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            out.writeInt(splitNames.size())
+            splitNames.each {
+                out.writeUTF(it)
+            }
+            out.writeInt(entries.size())
+            entries.each { Long hash, Short owner ->
+                out.writeLong(hash)
+                out.writeShort(owner)
+            }
+        } finally {
+            out.close()
+        }
+        SplitLogger.w("Class index of ${splitNames.size()} splits with ${entries.size()} classes is written to ${dest.absolutePath}")
+    }
+
+    static long hash(String name) {
+        long hash = FNV_OFFSET_BASIS
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= (long) name.charAt(i)
+            hash *= FNV_PRIME
+        }
+        return hash
+    }
+
+    static Set<String> readClassNames(File apk) {
+        Set<String> classNames = new HashSet<>()
+        ZipFile zipFile = new ZipFile(apk)
+        try {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries()
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement()
+                if (entry.name.startsWith("classes") && entry.name.endsWith(".dex") && !entry.name.contains("/")) {
+                    classNames.addAll(readDexClassNames(zipFile.getInputStream(entry).bytes))
+                }
+            }
+        } finally {
+            zipFile.close()
+        }
+        return classNames
+    }
+
+    /**
+     * Read names of classes defined in dex file, see header_item, type_id_item and class_def_item of dex format.
+     */
+    static List<String> readDexClassNames(byte[] dex) {
+        ByteBuffer buffer = ByteBuffer.wrap(dex).order(ByteOrder.LITTLE_ENDIAN)
+        int stringIdsOffset = buffer.getInt(0x3C)
+        int typeIdsOffset = buffer.getInt(0x44)
+        int classDefsSize = buffer.getInt(0x60)
+        int classDefsOffset = buffer.getInt(0x64)
+        List<String> classNames = new ArrayList<>(classDefsSize)
+        for (int i = 0; i < classDefsSize; i++) {
+            int typeIndex = buffer.getInt(classDefsOffset + i * 32)
+            int stringIndex = buffer.getInt(typeIdsOffset + typeIndex * 4)
+            int dataOffset = buffer.getInt(stringIdsOffset + stringIndex * 4)
+            //skip uleb128 utf16 size
+            while ((dex[dataOffset++] & 0x80) != 0) {
+            }
+            int end = dataOffset
+            while (dex[end] != 0) {
+                end++
+            }
+            String descriptor = new String(dex, dataOffset, end - dataOffset, "UTF-8")
+            classNames.add(descriptor.substring(1, descriptor.length() - 1).replace('/', '.'))
+        }
+        return classNames
+    }
+}
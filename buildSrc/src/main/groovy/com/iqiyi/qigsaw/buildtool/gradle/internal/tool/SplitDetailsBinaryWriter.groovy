@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.qigsaw.buildtool.gradle.internal.tool
+
+import com.iqiyi.qigsaw.buildtool.gradle.internal.entity.SplitDetails
+import com.iqiyi.qigsaw.buildtool.gradle.internal.entity.SplitInfo
+
+import java.util.zip.CRC32
+
+/**
+ * Write split-details into the binary format read by SplitDetailsBinary of splitrequester.
+ * Both sides must be kept in sync when the layout changes.
+ */
+class SplitDetailsBinaryWriter {
+
+    static final int MAGIC = 0x51534454
+
+    static final int FORMAT_VERSION = 2
+
+    static final int HEADER_SIZE = 56
+
+    static final int SPLIT_RECORD_SIZE = 40
+
+    static final int NO_INDEX = -1
+
+    static final int FLAG_BUILT_IN = 1
+
+    static void write(SplitDetails details, File dest) {
+        List<SplitInfo> splits = details.splits
+        Map<String, Integer> stringIndexes = new HashMap<>()
+        List<String> strings = new ArrayList<>()
+        int variableOffset = HEADER_SIZE + splits.size() * SPLIT_RECORD_SIZE
+        ByteArrayOutputStream variableBytes = new ByteArrayOutputStream()
+        DataOutputStream variable = new DataOutputStream(variableBytes)
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream()
+        DataOutputStream records = new DataOutputStream(recordBytes)
+
+        int qigsawId = indexOf(stringIndexes, strings, details.qigsawId)
+        int appVersionName = indexOf(stringIndexes, strings, details.appVersionName)
+        int updateSplits = writeStringList(variable, variableOffset, stringIndexes, strings, details.updateSplits)
+        int splitEntryFragments = writeStringList(variable, variableOffset, stringIndexes, strings, details.splitEntryFragments)
+        splits.each { SplitInfo info ->
+            records.writeInt(indexOf(stringIndexes, strings, info.splitName))
+            records.writeInt(indexOf(stringIndexes, strings, info.version))
+            records.writeInt(info.builtIn ? FLAG_BUILT_IN : 0)
+            records.writeInt(info.minSdkVersion)
+            records.writeInt(info.dexNumber)
+            records.writeInt(writeStringList(variable, variableOffset, stringIndexes, strings, info.workProcesses))
+            records.writeInt(writeStringList(variable, variableOffset, stringIndexes, strings, info.dependencies))
+            records.writeInt(writeApkData(variable, variableOffset, stringIndexes, strings, info.apkData))
+            records.writeInt(writeLibData(variable, variableOffset, stringIndexes, strings, info.libData))
+            records.writeInt(writePatchData(variable, variableOffset, stringIndexes, strings, info.apkData))
+        }
+        int stringTableOffset = variableOffset + variable.size()
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream()
+        DataOutputStream body = new DataOutputStream(bodyBytes)
+        body.write(recordBytes.toByteArray())
+        body.write(variableBytes.toByteArray())
+        List<byte[]> encodedStrings = new ArrayList<>()
+        strings.each {
+            encodedStrings.add(it.getBytes("UTF-8"))
+        }
+        int dataOffset = stringTableOffset + strings.size() * 4
+        encodedStrings.each { byte[] bytes ->
+            body.writeInt(dataOffset)
+            dataOffset += 4 + bytes.length
+        }
+        encodedStrings.each { byte[] bytes ->
+            body.writeInt(bytes.length)
+            body.write(bytes)
+        }
+        body.flush()
+        byte[] bodyContent = bodyBytes.toByteArray()
+        CRC32 crc32 = new CRC32()
+        crc32.update(bodyContent)
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dest)))
+        try {
+            output.writeInt(MAGIC)
+            output.writeShort(FORMAT_VERSION)
+            output.writeShort(HEADER_SIZE)
+            output.writeInt(HEADER_SIZE + bodyContent.length)
+            output.writeInt((int) crc32.getValue())
+            output.writeInt(strings.size())
+            output.writeInt(stringTableOffset)
+            output.writeInt(splits.size())
+            output.writeInt(HEADER_SIZE)
+            output.writeInt(SPLIT_RECORD_SIZE)
+            output.writeInt(qigsawId)
+            output.writeInt(appVersionName)
+            output.writeInt(updateSplits)
+            output.writeInt(splitEntryFragments)
+            //reserved
+            output.writeInt(0)
+            output.write(bodyContent)
+        } finally {
+            FileUtils.closeQuietly(output)
+        }
+    }
+
+    private static int indexOf(Map<String, Integer> stringIndexes, List<String> strings, String value) {
+        if (value == null) {
+            return NO_INDEX
+        }
+        Integer index = stringIndexes.get(value)
+        if (index == null) {
+            index = strings.size()
+            strings.add(value)
+            stringIndexes.put(value, index)
+        }
+        return index
+    }
+
+    private static int writeStringList(DataOutputStream variable, int variableOffset,
+                                       Map<String, Integer> stringIndexes, List<String> strings, Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return NO_INDEX
+        }
+        int offset = variableOffset + variable.size()
+        variable.writeInt(values.size())
+        values.each {
+            variable.writeInt(indexOf(stringIndexes, strings, it))
+        }
+        return offset
+    }
+
+    private static int writeApkData(DataOutputStream variable, int variableOffset,
+                                    Map<String, Integer> stringIndexes, List<String> strings, List<SplitInfo.SplitApkData> apkDataList) {
+        int offset = variableOffset + variable.size()
+        variable.writeInt(apkDataList.size())
+        apkDataList.each { SplitInfo.SplitApkData apkData ->
+            variable.writeInt(indexOf(stringIndexes, strings, apkData.abi))
+            variable.writeInt(indexOf(stringIndexes, strings, apkData.url))
+            variable.writeInt(indexOf(stringIndexes, strings, apkData.md5))
+            variable.writeLong(apkData.size)
+        }
+        return offset
+    }
+
+    private static int writePatchData(DataOutputStream variable, int variableOffset,
+                                      Map<String, Integer> stringIndexes, List<String> strings, List<SplitInfo.SplitApkData> apkDataList) {
+        List<SplitInfo.SplitApkData> patchedApkDataList = apkDataList.findAll { it.patch != null }
+        if (patchedApkDataList.isEmpty()) {
+            return NO_INDEX
+        }
+        int offset = variableOffset + variable.size()
+        variable.writeInt(patchedApkDataList.size())
+        patchedApkDataList.each { SplitInfo.SplitApkData apkData ->
+            variable.writeInt(indexOf(stringIndexes, strings, apkData.abi))
+            variable.writeInt(indexOf(stringIndexes, strings, apkData.patch.baseMd5))
+            variable.writeInt(indexOf(stringIndexes, strings, apkData.patch.url))
+            variable.writeInt(indexOf(stringIndexes, strings, apkData.patch.md5))
+            variable.writeLong(apkData.patch.size)
+        }
+        return offset
+    }
+
+    private static int writeLibData(DataOutputStream variable, int variableOffset,
+                                    Map<String, Integer> stringIndexes, List<String> strings, List<SplitInfo.SplitLibData> libDataList) {
+        if (libDataList == null || libDataList.isEmpty()) {
+            return NO_INDEX
+        }
+        int offset = variableOffset + variable.size()
+        variable.writeInt(libDataList.size())
+        libDataList.each { SplitInfo.SplitLibData libData ->
+            variable.writeInt(indexOf(stringIndexes, strings, libData.abi))
+            List<SplitInfo.SplitLibData.Lib> libs = libData.jniLibs != null ? libData.jniLibs : Collections.emptyList()
+            variable.writeInt(libs.size())
+            libs.each { SplitInfo.SplitLibData.Lib lib ->
+                variable.writeInt(indexOf(stringIndexes, strings, lib.name))
+                variable.writeInt(indexOf(stringIndexes, strings, lib.md5))
+                variable.writeLong(lib.size)
+            }
+        }
+        return offset
+    }
+}
@@ -29,6 +29,9 @@ import com.iqiyi.qigsaw.buildtool.gradle.extension.QigsawSplitExtensionHelper
 import com.iqiyi.qigsaw.buildtool.gradle.internal.entity.SplitDetails
 import com.iqiyi.qigsaw.buildtool.gradle.internal.entity.SplitInfo
 import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.FileUtils
+import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.SplitApkPatchGenerator
+import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.SplitClassIndexWriter
+import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.SplitDetailsBinaryWriter
 import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.SplitLogger
 import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.TypeClassFileParser
 import com.iqiyi.qigsaw.buildtool.gradle.upload.SplitApkUploadException
@@ -71,6 +74,10 @@ class CreateSplitDetailsFileTask extends ProcessOldOutputsBaseTask {
     @InputDirectory
     File splitInfoDir
 
+    @InputDirectory
+    @Optional
+    File splitPatchesDir
+
     @InputDirectory
     File mergedJniLibsBaseDir
 
@@ -132,6 +139,9 @@ class CreateSplitDetailsFileTask extends ProcessOldOutputsBaseTask {
         } else {
             FileUtils.copyFile(splitDetailsFile, destSplitDetailsFile)
         }
+        File destSplitDetailsBinaryFile = new File(qigsawMergedAssetsDir, "qigsaw_${completeSplitInfoVersion}.bin")
+        SplitDetailsBinaryWriter.write(splitDetails, destSplitDetailsBinaryFile)
+        SplitClassIndexWriter.write(getSplitApksForClassIndex(splitDetails), new File(qigsawMergedAssetsDir, "qigsaw_class_index.bin"))
         Set<String> mergedAbiFilters = getMergedAbiFilters()
         baseAppCpuAbiListFile.write("abiList=${mergedAbiFilters.join(",")}")
         FileUtils.copyFile(baseAppCpuAbiListFile, new File(qigsawMergedAssetsDir.parentFile, baseAppCpuAbiListFile.name))
@@ -163,6 +173,25 @@ class CreateSplitDetailsFileTask extends ProcessOldOutputsBaseTask {
         }
     }
 
+    Map<String, File> getSplitApksForClassIndex(SplitDetails splitDetails) {
+        Map<String, File> splitApks = new HashMap<>()
+        splitDetails.splits.each { SplitInfo info ->
+            if (info.dexNumber > 0) {
+                for (SplitInfo.SplitApkData data : info.apkData) {
+                    File splitApk = new File(splitApksDir, "${info.splitName}-${data.abi + SdkConstants.DOT_ANDROID_PACKAGE}")
+                    if (!splitApk.exists()) {
+                        splitApk = getOldSplitApk(info.splitName, data.abi)
+                    }
+                    if (splitApk != null && splitApk.exists()) {
+                        splitApks.put(info.splitName, splitApk)
+                        break
+                    }
+                }
+            }
+        }
+        return splitApks
+    }
+
     Set<String> getMergedAbiFilters() {
         File mergedJniLibsDir = getMergedJniLibsDirCompat()
         Set<String> realABIs = new HashSet<>()
@@ -247,6 +276,7 @@ class CreateSplitDetailsFileTask extends ProcessOldOutputsBaseTask {
                     } else {
                         SplitLogger.w("Split ${info.splitName} has been uploaded: ${data.url}")
                     }
+                    uploadSplitPatchIfNeed(uploader, info, data)
                 }
             } else {
                 SplitLogger.e("SplitApkUploader has not been implemented, just make ${info.splitName} built-in")
@@ -255,6 +285,29 @@ class CreateSplitDetailsFileTask extends ProcessOldOutputsBaseTask {
         }
     }
 
+    void uploadSplitPatchIfNeed(SplitApkUploader uploader, SplitInfo info, SplitInfo.SplitApkData data) {
+        if (splitPatchesDir == null) {
+            return
+        }
+        File patchFile = new File(splitPatchesDir, "${info.splitName}-${data.abi}.patch")
+        if (!patchFile.exists()) {
+            return
+        }
+        String uploadedUrl = uploader.uploadSync(project, patchFile, info.splitName)
+        if (uploadedUrl != null && uploadedUrl.startsWith("http")) {
+            SplitInfo.SplitPatchData patchData = new SplitInfo.SplitPatchData()
+            patchData.baseMd5 = SplitApkPatchGenerator.readBaseMd5(patchFile)
+            patchData.url = uploadedUrl
+            patchData.md5 = FileUtils.getMD5(patchFile)
+            patchData.size = patchFile.length()
+            data.patch = patchData
+            SplitLogger.w("Split patch ${patchFile.absolutePath} upload successfully, url: ${uploadedUrl}")
+        } else {
+            //patch is optional, split apk would be downloaded completely.
+            SplitLogger.e("Split patch ${patchFile.absolutePath} upload failed, url: ${uploadedUrl}")
+        }
+    }
+
     static List<SplitInfo> rearrangeSplits(List<SplitInfo> splitInfoList) {
         DAG dag = new DAG()
         for (SplitInfo info : splitInfoList) {
@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.qigsaw.buildtool.gradle.task
+
+import com.android.SdkConstants
+import com.iqiyi.qigsaw.buildtool.gradle.internal.entity.SplitDetails
+import com.iqiyi.qigsaw.buildtool.gradle.internal.entity.SplitInfo
+import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.FileUtils
+import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.SplitApkPatchGenerator
+import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.SplitLogger
+import com.iqiyi.qigsaw.buildtool.gradle.internal.tool.TypeClassFileParser
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputDirectory
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
+
+/**
+ * Create patches from split apks of old outputs to updated split apks, so that devices which have installed
+ * the old split only download the patch. Patches are attached to split-details by {@link CreateSplitDetailsFileTask}.
+ */
+class CreateSplitPatchTask extends ProcessOldOutputsBaseTask {
+
+    @Input
+    Set<String> dynamicFeaturesNames
+
+    @InputDirectory
+    File splitApksDir
+
+    @InputDirectory
+    File splitInfoDir
+
+    @OutputDirectory
+    File splitPatchesDir
+
+    @TaskAction
+    void createPatches() {
+        if (splitPatchesDir.exists()) {
+            FileUtils.deleteDir(splitPatchesDir)
+        }
+        splitPatchesDir.mkdirs()
+        File oldSplitDetailsFile = getOldSplitDetailsFile()
+        if (oldSplitDetailsFile == null || !oldSplitDetailsFile.exists()) {
+            return
+        }
+        SplitDetails oldSplitDetails = TypeClassFileParser.parseFile(oldSplitDetailsFile, SplitDetails)
+        dynamicFeaturesNames.each { String splitName ->
+            File splitInfoFile = new File(splitInfoDir, splitName + SdkConstants.DOT_JSON)
+            SplitInfo oldInfo = oldSplitDetails.splits.find { it.splitName == splitName }
+            if (oldInfo == null || !splitInfoFile.exists()) {
+                return
+            }
+            SplitInfo info = TypeClassFileParser.parseFile(splitInfoFile, SplitInfo)
+            if (info.version == oldInfo.version) {
+                return
+            }
+            info.apkData.each { SplitInfo.SplitApkData apkData ->
+                SplitInfo.SplitApkData oldApkData = oldInfo.apkData.find { it.abi == apkData.abi }
+                File oldSplitApk = getOldSplitApk(splitName, apkData.abi)
+                if (oldApkData == null || !oldSplitApk.exists()) {
+                    SplitLogger.w("Split ${splitName} ${apkData.abi} apk of old outputs is not found, skip creating patch!")
+                    return
+                }
+                if (oldApkData.md5 == apkData.md5) {
+                    return
+                }
+                File splitApk = new File(splitApksDir, "${splitName}-${apkData.abi + SdkConstants.DOT_ANDROID_PACKAGE}")
+                File patchFile = new File(splitPatchesDir, "${splitName}-${apkData.abi}.patch")
+                long patchSize = SplitApkPatchGenerator.generate(oldSplitApk, splitApk, patchFile)
+                if (patchSize >= splitApk.length()) {
+                    SplitLogger.w("Patch of split ${splitName} ${apkData.abi} is not smaller than apk, discard it!")
+                    patchFile.delete()
+                } else {
+                    SplitLogger.w("Split ${splitName} ${apkData.abi} patch ${patchSize} bytes, apk ${splitApk.length()} bytes")
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.benchmark;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.split.signature.G;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Apk signature scheme v2 verification of split apks, with and without md5 computed in the same pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ApkSignatureBenchmark {
+
+    @Param({"1", "4"})
+    public int dexCount;
+
+    private File workDir;
+
+    private String signedApkPath;
+
+    @Setup
+    public void setUp() throws Exception {
+        workDir = BenchmarkInputs.createTempDir("apk_signature");
+        File unsigned = new File(workDir, "unsigned.apk");
+        File signed = new File(workDir, "signed.apk");
+        BenchmarkInputs.writeZip(unsigned, BenchmarkInputs.splitApkEntries(dexCount, dexCount, 1024 * 1024, 2, 256 * 1024), true, 0);
+        BenchmarkInputs.signApk(unsigned, signed);
+        signedApkPath = signed.getAbsolutePath();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    @Benchmark
+    public X509Certificate[][] verify() throws Exception {
+        return G.a(signedApkPath);
+    }
+
+    /**
+     * Signature and md5 checked one after another, as they were before the fused pass.
+     */
+    @Benchmark
+    public String verifyThenMD5() throws Exception {
+        G.a(signedApkPath);
+        return FileUtil.getMD5(new File(signedApkPath));
+    }
+
+    @Benchmark
+    public byte[] verifyWithMD5() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        G.a(signedApkPath, digest);
+        return digest.digest();
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.benchmark;
+
+import com.android.apksig.ApkSigner;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Deterministic inputs of benchmarks, the same seed always produces the same files.
+ */
+public final class BenchmarkInputs {
+
+    /**
+     * System property of keystore used to sign benchmark apks, see build.gradle.
+     */
+    public static final String KEYSTORE_PROPERTY = "qigsaw.benchmark.keystore";
+
+    private static final String KEYSTORE_PASSWORD = "qigsawtest";
+
+    private static final String KEY_ALIAS = "qigsawtest";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Format of split apk patch, which must be kept in sync with SplitApkPatch.
+     */
+    private static final int APK_PATCH_MAGIC = 0x51535054;
+
+    private static final int APK_PATCH_FORMAT_VERSION = 1;
+
+    private static final int APK_PATCH_OP_END = 0;
+
+    private static final int APK_PATCH_OP_COPY = 1;
+
+    private static final int APK_PATCH_OP_DATA = 2;
+
+    private static final String[] ABIS = {"arm64-v8a", "armeabi-v7a", "x86"};
+
+    private BenchmarkInputs() {
+
+    }
+
+    public static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, null);
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Failed to create temp dir " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    public static void deleteTempDir(File dir) {
+        if (dir != null) {
+            FileUtil.deleteDir(dir);
+        }
+    }
+
+    /**
+     * Bytes that compress roughly like native code: random runs mixed with repeated runs.
+     */
+    public static byte[] bytes(long seed, int size) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        int pos = 0;
+        while (pos < size) {
+            int run = Math.min(size - pos, 16 + random.nextInt(240));
+            if (random.nextBoolean()) {
+                byte[] chunk = new byte[run];
+                random.nextBytes(chunk);
+                System.arraycopy(chunk, 0, data, pos, run);
+            } else {
+                int from = pos > run ? random.nextInt(pos - run) : 0;
+                for (int i = 0; i < run; i++) {
+                    data[pos + i] = pos > run ? data[from + i] : (byte) i;
+                }
+            }
+            pos += run;
+        }
+        return data;
+    }
+
+    public static void writeFile(File dest, byte[] content) throws IOException {
+        FileOutputStream os = new FileOutputStream(dest);
+        try {
+            os.write(content);
+        } finally {
+            FileUtil.closeQuietly(os);
+        }
+    }
+
+    public static String md5(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] md5 = digest.digest(content);
+            StringBuilder sb = new StringBuilder(md5.length * 2);
+            for (byte b : md5) {
+                sb.append(String.format(Locale.US, "%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Native libs of a split, keyed by entry name "lib/{abi}/libsplit{i}.so".
+     */
+    public static Map<String, byte[]> nativeLibs(long seed, String abi, int libCount, int libSize) {
+        Map<String, byte[]> libs = new LinkedHashMap<>();
+        for (int i = 0; i < libCount; i++) {
+            libs.put("lib/" + abi + "/libsplit" + i + ".so", bytes(seed + i, libSize));
+        }
+        return libs;
+    }
+
+    /**
+     * Write entries into a zip file in order, entries named *.so are stored when {@code storeLibs} is true.
+     *
+     * @param commentLength length of zip comment, which enlarges the area searched for End Of Central Directory.
+     */
+    public static void writeZip(File dest, Map<String, byte[]> entries, boolean storeLibs, int commentLength) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(dest));
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                byte[] content = entry.getValue();
+                if (storeLibs && entry.getKey().endsWith(".so")) {
+                    CRC32 crc32 = new CRC32();
+                    crc32.update(content);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(content.length);
+                    zipEntry.setCompressedSize(content.length);
+                    zipEntry.setCrc(crc32.getValue());
+                }
+                zos.putNextEntry(zipEntry);
+                zos.write(content);
+                zos.closeEntry();
+            }
+            if (commentLength > 0) {
+                char[] comment = new char[commentLength];
+                for (int i = 0; i < commentLength; i++) {
+                    comment[i] = (char) ('a' + i % 26);
+                }
+                zos.setComment(new String(comment));
+            }
+        } finally {
+            FileUtil.closeQuietly(zos);
+        }
+    }
+
+    /**
+     * Content of a split apk: manifest, dex files, native libs and assets.
+     */
+    public static Map<String, byte[]> splitApkEntries(long seed, int dexCount, int dexSize, int libCount, int libSize) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("AndroidManifest.xml", bytes(seed, 2048));
+        for (int i = 0; i < dexCount; i++) {
+            entries.put(i == 0 ? "classes.dex" : "classes" + (i + 1) + ".dex", bytes(seed + 100 + i, dexSize));
+        }
+        for (String abi : ABIS) {
+            entries.putAll(nativeLibs(seed + 200, abi, libCount, libSize));
+        }
+        for (int i = 0; i < 16; i++) {
+            entries.put("assets/split_asset_" + i + ".bin", bytes(seed + 300 + i, 4096));
+        }
+        entries.put("resources.arsc", bytes(seed + 400, 32 * 1024));
+        return entries;
+    }
+
+    /**
+     * Sign a zip with apk signature scheme v2 using the debug keystore of this repository.
+     */
+    public static void signApk(File unsigned, File signed) throws Exception {
+        String keystorePath = System.getProperty(KEYSTORE_PROPERTY);
+        if (keystorePath == null) {
+            throw new IllegalStateException("System property " + KEYSTORE_PROPERTY + " is not set");
+        }
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream is = new FileInputStream(keystorePath);
+        try {
+            keyStore.load(is, KEYSTORE_PASSWORD.toCharArray());
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(KEY_ALIAS, KEYSTORE_PASSWORD.toCharArray());
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(KEY_ALIAS);
+        ApkSigner.SignerConfig signerConfig = new ApkSigner.SignerConfig.Builder(
+                KEY_ALIAS, privateKey, Collections.singletonList(certificate)).build();
+        new ApkSigner.Builder(Collections.singletonList(signerConfig))
+                .setInputApk(unsigned)
+                .setOutputApk(signed)
+                .setMinSdkVersion(14)
+                .setV1SigningEnabled(false)
+                .setV2SigningEnabled(true)
+                .build()
+                .sign();
+    }
+
+    /**
+     * Create zip-entry level patch as SplitApkPatchGenerator of qigsaw gradle plugin does,
+     * raw data of entries which are not changed is copied from {@code oldApk}, everything else is stored.
+     *
+     * @return size of created patch file.
+     */
+    public static long createApkPatch(File oldApk, File newApk, File patchFile) throws IOException {
+        byte[] oldBytes = readFile(oldApk);
+        byte[] newBytes = readFile(newApk);
+        Map<String, int[]> oldEntries = readZipEntries(oldBytes);
+        List<Map.Entry<String, int[]>> newEntries = new ArrayList<>(readZipEntries(newBytes).entrySet());
+        Collections.sort(newEntries, new Comparator<Map.Entry<String, int[]>>() {
+            @Override
+            public int compare(Map.Entry<String, int[]> o1, Map.Entry<String, int[]> o2) {
+                return Integer.compare(o1.getValue()[2], o2.getValue()[2]);
+            }
+        });
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(patchFile)));
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            output.writeInt(APK_PATCH_MAGIC);
+            output.writeShort(APK_PATCH_FORMAT_VERSION);
+            output.writeUTF(md5(oldBytes));
+            output.writeUTF(md5(newBytes));
+            output.writeLong(newBytes.length);
+            DeflaterOutputStream deflated = new DeflaterOutputStream(output, deflater);
+            DataOutputStream ops = new DataOutputStream(deflated);
+            int cursor = 0;
+            for (Map.Entry<String, int[]> entry : newEntries) {
+                // crc, compressed size and data offset
+                int[] range = entry.getValue();
+                int[] oldRange = oldEntries.get(entry.getKey());
+                if (range[2] < cursor || oldRange == null || range[1] < 32 || oldRange[0] != range[0] || oldRange[1] != range[1]
+                        || !ByteBuffer.wrap(oldBytes, oldRange[2], range[1]).equals(ByteBuffer.wrap(newBytes, range[2], range[1]))) {
+                    continue;
+                }
+                writePatchData(ops, newBytes, cursor, range[2] - cursor);
+                ops.writeByte(APK_PATCH_OP_COPY);
+                ops.writeLong(oldRange[2]);
+                ops.writeInt(range[1]);
+                cursor = range[2] + range[1];
+            }
+            writePatchData(ops, newBytes, cursor, newBytes.length - cursor);
+            ops.writeByte(APK_PATCH_OP_END);
+            ops.flush();
+            deflated.finish();
+            output.flush();
+        } finally {
+            FileUtil.closeQuietly(output);
+            deflater.end();
+        }
+        return patchFile.length();
+    }
+
+    private static void writePatchData(DataOutputStream ops, byte[] bytes, int offset, int length) throws IOException {
+        if (length > 0) {
+            ops.writeByte(APK_PATCH_OP_DATA);
+            ops.writeInt(length);
+            ops.write(bytes, offset, length);
+        }
+    }
+
+    private static Map<String, int[]> readZipEntries(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = bytes.length - 22;
+        while (eocd >= 0 && buffer.getInt(eocd) != 0x06054b50) {
+            eocd--;
+        }
+        if (eocd < 0) {
+            throw new IOException("End of central directory is not found!");
+        }
+        int entryCount = buffer.getShort(eocd + 10) & 0xffff;
+        int position = buffer.getInt(eocd + 16);
+        Map<String, int[]> entries = new HashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            int nameLength = buffer.getShort(position + 28) & 0xffff;
+            int localHeader = buffer.getInt(position + 42);
+            int dataOffset = localHeader + 30 + (buffer.getShort(localHeader + 26) & 0xffff) + (buffer.getShort(localHeader + 28) & 0xffff);
+            entries.put(new String(bytes, position + 46, nameLength, UTF_8),
+                    new int[]{buffer.getInt(position + 16), buffer.getInt(position + 20), dataOffset});
+            position += 46 + nameLength + (buffer.getShort(position + 30) & 0xffff) + (buffer.getShort(position + 32) & 0xffff);
+        }
+        return entries;
+    }
+
+    public static byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        try {
+            is.readFully(content);
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+        return content;
+    }
+
+    /**
+     * A split-details json as generated by qigsaw gradle plugin.
+     */
+    public static String splitDetailsJson(long seed, int splitCount) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(splitCount * 1024);
+        sb.append("{\"qigsawId\":\"1.0.0_").append(Long.toHexString(random.nextLong())).append("\",");
+        sb.append("\"appVersionName\":\"1.0.0\",");
+        sb.append("\"updateSplits\":[");
+        for (int i = 0; i < splitCount; i += 4) {
+            sb.append(i == 0 ? "" : ",").append("\"split").append(i).append('"');
+        }
+        sb.append("],\"splitEntryFragments\":[");
+        for (int i = 0; i < splitCount; i++) {
+            sb.append(i == 0 ? "" : ",").append("\"com.iqiyi.split").append(i).append(".EntryFragment\"");
+        }
+        sb.append("],\"splits\":[");
+        for (int i = 0; i < splitCount; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"splitName\":\"split").append(i).append("\",");
+            sb.append("\"builtIn\":").append(i % 3 != 0).append(',');
+            sb.append("\"minSdkVersion\":14,");
+            sb.append("\"dexNumber\":").append(1 + random.nextInt(3)).append(',');
+            sb.append("\"version\":\"1.0.").append(random.nextInt(100)).append("\",");
+            sb.append("\"workProcesses\":[\"\",\":split").append(i).append("\"],");
+            sb.append("\"dependencies\":[");
+            for (int d = 0; d < Math.min(i, 2); d++) {
+                sb.append(d == 0 ? "" : ",").append("\"split").append(random.nextInt(i)).append('"');
+            }
+            sb.append("],\"apkData\":[");
+            appendApkData(sb, random, i, "master");
+            for (String abi : ABIS) {
+                sb.append(',');
+                appendApkData(sb, random, i, abi);
+            }
+            sb.append("],\"libData\":[");
+            for (int a = 0; a < ABIS.length; a++) {
+                sb.append(a == 0 ? "" : ",").append("{\"abi\":\"").append(ABIS[a]).append("\",\"jniLibs\":[");
+                for (int l = 0; l < 2; l++) {
+                    sb.append(l == 0 ? "" : ",");
+                    sb.append("{\"name\":\"libsplit").append(i).append('_').append(l).append(".so\",");
+                    sb.append("\"md5\":\"").append(hex(random, 16)).append("\",");
+                    sb.append("\"size\":").append(random.nextInt(1 << 20)).append('}');
+                }
+                sb.append("]}");
+            }
+            sb.append("]}");
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private static void appendApkData(StringBuilder sb, Random random, int splitIndex, String abi) {
+        sb.append("{\"abi\":\"").append(abi).append("\",");
+        sb.append("\"url\":\"https://cdn.example.com/qigsaw/split").append(splitIndex).append('-').append(abi).append(".zip\",");
+        sb.append("\"md5\":\"").append(hex(random, 16)).append("\",");
+        sb.append("\"size\":").append(random.nextInt(1 << 22)).append('}');
+    }
+
+    private static String hex(Random random, int byteCount) {
+        StringBuilder sb = new StringBuilder(byteCount * 2);
+        for (int i = 0; i < byteCount; i++) {
+            sb.append(Character.forDigit(random.nextInt(16), 16)).append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A little-endian ELF64 shared object with {@code sectionCount} sections, including section name table.
+     */
+    public static byte[] elf(long seed, int sectionCount, int sectionSize) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        names.write(0);
+        int[] nameOffsets = new int[sectionCount];
+        for (int i = 1; i < sectionCount; i++) {
+            nameOffsets[i] = names.size();
+            byte[] name = (i == sectionCount - 1 ? ".shstrtab" : ".qigsaw." + i).getBytes(UTF_8);
+            names.write(name, 0, name.length);
+            names.write(0);
+        }
+        byte[] nameTable = names.toByteArray();
+        int ehdrSize = 64;
+        int phdrSize = 56;
+        int shdrSize = 64;
+        int phNum = 2;
+        int dataOffset = ehdrSize + phdrSize * phNum;
+        int dataSize = (sectionCount - 2) * sectionSize + nameTable.length;
+        int shOff = dataOffset + dataSize;
+        ByteBuffer buffer = ByteBuffer.allocate(shOff + shdrSize * sectionCount).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[]{0x7f, 'E', 'L', 'F', 2, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        buffer.putShort((short) 3);
+        buffer.putShort((short) 183);
+        buffer.putInt(1);
+        buffer.putLong(0);
+        buffer.putLong(ehdrSize);
+        buffer.putLong(shOff);
+        buffer.putInt(0);
+        buffer.putShort((short) ehdrSize);
+        buffer.putShort((short) phdrSize);
+        buffer.putShort((short) phNum);
+        buffer.putShort((short) shdrSize);
+        buffer.putShort((short) sectionCount);
+        buffer.putShort((short) (sectionCount - 1));
+        for (int i = 0; i < phNum; i++) {
+            buffer.putInt(1);
+            buffer.putInt(5);
+            buffer.putLong(dataOffset);
+            buffer.putLong(dataOffset);
+            buffer.putLong(dataOffset);
+            buffer.putLong(dataSize);
+            buffer.putLong(dataSize);
+            buffer.putLong(0x1000);
+        }
+        byte[] sectionData = new byte[sectionSize];
+        for (int i = 1; i < sectionCount - 1; i++) {
+            random.nextBytes(sectionData);
+            buffer.put(sectionData);
+        }
+        buffer.put(nameTable);
+        buffer.put(new byte[shdrSize]);
+        for (int i = 1; i < sectionCount; i++) {
+            boolean nameSection = i == sectionCount - 1;
+            buffer.putInt(nameOffsets[i]);
+            buffer.putInt(nameSection ? 3 : 1);
+            buffer.putLong(nameSection ? 0 : 6);
+            buffer.putLong(0);
+            buffer.putLong(dataOffset + (i - 1) * sectionSize);
+            buffer.putLong(nameSection ? nameTable.length : sectionSize);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(1);
+            buffer.putLong(0);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header parsing of extracted so files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitElfFileBenchmark {
+
+    @Param({"8", "64"})
+    public int sectionCount;
+
+    private File workDir;
+
+    private File elf;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = BenchmarkInputs.createTempDir("elf");
+        elf = new File(workDir, "libsplit.so");
+        BenchmarkInputs.writeFile(elf, BenchmarkInputs.elf(sectionCount, sectionCount, 1024));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    @Benchmark
+    public int getFileTypeByMagic() throws IOException {
+        return SplitElfFile.getFileTypeByMagic(elf);
+    }
+
+    @Benchmark
+    public Object parseHeaders() throws IOException {
+        SplitElfFile elfFile = new SplitElfFile(elf);
+        try {
+            return elfFile.getSectionHeaderByName(".shstrtab");
+        } finally {
+            elfFile.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes of journal backed store, such as install states and access log of splits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitJournalStoreBenchmark {
+
+    @Param({"16", "256"})
+    public int keyCount;
+
+    private File workDir;
+
+    private SplitJournalStore store;
+
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = BenchmarkInputs.createTempDir("journal");
+        store = SplitJournalStore.get(new File(workDir, "journal"));
+        Map<String, String> values = new HashMap<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            values.put("split" + i + "@1.0." + i, "installed|" + System.currentTimeMillis() + "|" + i);
+        }
+        store.update(values);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    /**
+     * Values are kept in memory, journal is only checked by its length and modified time.
+     */
+    @Benchmark
+    public String get() {
+        int i = index++ % keyCount;
+        return store.get("split" + i + "@1.0." + i);
+    }
+
+    /**
+     * Baseline of opening journal on every read, only its header is read. Mapping it on every read as well exhausts
+     * the map count of this benchmark process, since mapped buffers are only released by GC.
+     */
+    @Benchmark
+    public long getByOpeningJournal() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(store.getJournalFile(), "r");
+        try {
+            raf.seek(8);
+            return raf.readLong() + (store.get("split0@1.0.0") == null ? 0 : 1);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Overwrite one key, the journal is compacted once it grows beyond twice its compacted size.
+     */
+    @Benchmark
+    public boolean put() {
+        int i = index++ % keyCount;
+        return store.put("split" + i + "@1.0." + i, "loaded|" + index);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a log with two parameters, such as the class miss logs of split class loaders. Run with {@code -prof gc}
+ * to see allocation per log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitLogBenchmark {
+
+    private static final String TAG = "Split.SplitDexClassLoader";
+
+    private String className;
+
+    private String splitName;
+
+    @Setup
+    public void setUp() {
+        className = "com.iqiyi.qigsaw.sample.java.JavaSampleActivity";
+        splitName = "java";
+    }
+
+    /**
+     * Log below level, it is dropped before any parameter array is created.
+     */
+    @Benchmark
+    public void filtered(FilteredLog log) {
+        SplitLog.i(TAG, "Class %s is not found in split %s", className, splitName);
+    }
+
+    /**
+     * Same log with varargs, which creates parameter array at the call site before level is checked. HotSpot removes
+     * the array by escape analysis here, ART does not.
+     */
+    @Benchmark
+    public void filteredVarargs(FilteredLog log) {
+        SplitLog.i(TAG, "Class %s is not found in split %s", new Object[]{className, splitName});
+    }
+
+    /**
+     * Log passed to a logger which only consumes it.
+     */
+    @Benchmark
+    public void logged(ConsumingLog log) {
+        SplitLog.i(TAG, "Class %s is not found in split %s", className, splitName);
+    }
+
+    /**
+     * Log queued by {@link AsyncSplitLogger}, formatting is done by its thread. Logs beyond its capacity are dropped.
+     */
+    @Benchmark
+    public void loggedAsync(AsyncLog log) {
+        SplitLog.i(TAG, "Class %s is not found in split %s", className, splitName);
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilteredLog {
+
+        @Setup
+        public void setUp(Blackhole blackhole) {
+            SplitLog.setSplitLogImp(new ConsumingLogger(blackhole));
+            SplitLog.setLevel(SplitLog.WARN);
+        }
+
+        @TearDown
+        public void tearDown() {
+            SplitLog.setLevel(SplitLog.VERBOSE);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ConsumingLog {
+
+        @Setup
+        public void setUp(Blackhole blackhole) {
+            SplitLog.setSplitLogImp(new ConsumingLogger(blackhole));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AsyncLog {
+
+        @Setup
+        public void setUp() {
+            SplitLog.setSplitLogImp(new AsyncSplitLogger(new FormattingLogger(), 1024));
+        }
+    }
+
+    private static class ConsumingLogger extends FormattingLogger {
+
+        private final Blackhole blackhole;
+
+        ConsumingLogger(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void i(String tag, String msg, Object... obj) {
+            blackhole.consume(obj);
+        }
+    }
+
+    private static class FormattingLogger implements SplitLog.Logger {
+
+        private int length;
+
+        @Override
+        public void v(String tag, String msg, Object... obj) {
+            i(tag, msg, obj);
+        }
+
+        @Override
+        public void i(String tag, String msg, Object... obj) {
+            length += String.format(msg, obj).length();
+        }
+
+        @Override
+        public void w(String tag, String msg, Object... obj) {
+            i(tag, msg, obj);
+        }
+
+        @Override
+        public void d(String tag, String msg, Object... obj) {
+            i(tag, msg, obj);
+        }
+
+        @Override
+        public void e(String tag, String msg, Object... obj) {
+            i(tag, msg, obj);
+        }
+
+        @Override
+        public void v(String tag, String msg, Throwable throwable) {
+            length += msg.length();
+        }
+
+        @Override
+        public void i(String tag, String msg, Throwable throwable) {
+            length += msg.length();
+        }
+
+        @Override
+        public void w(String tag, String msg, Throwable throwable) {
+            length += msg.length();
+        }
+
+        @Override
+        public void d(String tag, String msg, Throwable throwable) {
+            length += msg.length();
+        }
+
+        @Override
+        public void e(String tag, String msg, Throwable throwable) {
+            length += msg.length();
+        }
+
+        @Override
+        public void printErrStackTrace(String tag, Throwable tr, String format, Object... obj) {
+            i(tag, format, obj);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of spans around install and load phases, tracing is disabled by default in release builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitTraceBenchmark {
+
+    private static final int CAPACITY = 4096;
+
+    private String splitName;
+
+    @Setup
+    public void setUp() {
+        splitName = "java";
+    }
+
+    /**
+     * Baseline without any span.
+     */
+    @Benchmark
+    public String untraced() {
+        return splitName;
+    }
+
+    /**
+     * Nested span with an attribute while tracing is disabled, every call returns on the volatile read of buffer.
+     */
+    @Benchmark
+    public long disabled() {
+        return traceNested();
+    }
+
+    /**
+     * Nested span with an attribute while tracing is enabled, spans are written into the ring buffer.
+     */
+    @Benchmark
+    public long enabled(EnabledTrace trace) {
+        return traceNested();
+    }
+
+    private long traceNested() {
+        long outer = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "load", splitName);
+        long inner = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "loadCode");
+        SplitTrace.attr(inner, "dex", "classes.dex");
+        SplitTrace.end(inner);
+        SplitTrace.end(outer);
+        return outer + inner;
+    }
+
+    @State(Scope.Benchmark)
+    public static class EnabledTrace {
+
+        @Setup
+        public void setUp() {
+            SplitTrace.enable(CAPACITY);
+        }
+
+        @TearDown
+        public void tearDown() {
+            SplitTrace.disable();
+        }
+    }
+}
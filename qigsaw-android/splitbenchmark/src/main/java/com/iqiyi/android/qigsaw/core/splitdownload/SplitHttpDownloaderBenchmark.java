@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download of a split apk from a loopback server by {@link SplitHttpDownloader}, compared with
+ * a plain HttpURLConnection download whose md5 is checked by reading the file again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitHttpDownloaderBenchmark {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+
+    @Param({"1", "3"})
+    public int connectionsPerFile;
+
+    private HttpServer server;
+
+    private byte[] content;
+
+    private String md5;
+
+    private File downloadDir;
+
+    private SplitHttpDownloader downloader;
+
+    private DownloadRequest request;
+
+    private int sessionId;
+
+    @Setup
+    public void setUp() throws IOException {
+        content = BenchmarkInputs.bytes(1, FILE_SIZE);
+        md5 = BenchmarkInputs.md5(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 50);
+        server.createContext("/", new RangeHandler());
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        downloadDir = BenchmarkInputs.createTempDir("split_http_downloader_benchmark");
+        downloader = SplitHttpDownloader.newBuilder()
+                .connectionsPerFile(connectionsPerFile)
+                .minChunkSize(1024 * 1024)
+                .build();
+        request = DownloadRequest.newBuilder()
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/split.apk")
+                .fileDir(downloadDir.getAbsolutePath())
+                .fileName("split.apk")
+                .fileMD5(md5)
+                .size(FILE_SIZE)
+                .moduleName("split")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        BenchmarkInputs.deleteTempDir(downloadDir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDownloadedFile() {
+        FileUtil.deleteFileSafely(new File(downloadDir, "split.apk"));
+    }
+
+    @Benchmark
+    public int download() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final int[] errorCode = {Integer.MIN_VALUE};
+        downloader.startDownload(++sessionId, Collections.singletonList(request), new DownloadCallback() {
+            @Override
+            public void onStart() {
+
+            }
+
+            @Override
+            public void onCanceled() {
+
+            }
+
+            @Override
+            public void onCanceling() {
+
+            }
+
+            @Override
+            public void onProgress(long currentBytes) {
+
+            }
+
+            @Override
+            public void onCompleted() {
+                errorCode[0] = 0;
+                finished.countDown();
+            }
+
+            @Override
+            public void onError(int code) {
+                errorCode[0] = code;
+                finished.countDown();
+            }
+        });
+        finished.await();
+        if (errorCode[0] != 0) {
+            throw new IllegalStateException("Download failed " + errorCode[0]);
+        }
+        return errorCode[0];
+    }
+
+    /**
+     * Baseline: a single connection download, md5 is checked by reading the file again.
+     */
+    @Benchmark
+    public String downloadThenReadMd5() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(request.getUrl()).openConnection();
+        File file = new File(downloadDir, "split.apk");
+        InputStream is = connection.getInputStream();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[32 * 1024];
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                os.write(buffer, 0, count);
+            }
+            os.getFD().sync();
+        } finally {
+            FileUtil.closeQuietly(os);
+            FileUtil.closeQuietly(is);
+            connection.disconnect();
+        }
+        String downloadedMd5 = FileUtil.getMD5(file);
+        if (!md5.equals(downloadedMd5)) {
+            throw new IllegalStateException("MD5 mismatch " + downloadedMd5);
+        }
+        return downloadedMd5;
+    }
+
+    private final class RangeHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0;
+            int end = content.length;
+            if (range != null) {
+                String spec = range.substring("bytes=".length());
+                int dash = spec.indexOf('-');
+                start = Integer.parseInt(spec.substring(0, dash));
+                if (dash < spec.length() - 1) {
+                    end = Integer.parseInt(spec.substring(dash + 1)) + 1;
+                }
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + content.length);
+            }
+            exchange.getResponseHeaders().add("ETag", "\"" + md5 + "\"");
+            exchange.sendResponseHeaders(range == null ? 200 : 206, end - start);
+            OutputStream os = exchange.getResponseBody();
+            try {
+                os.write(content, start, end - start);
+            } finally {
+                os.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuilding a split apk from the installed version and a patch, compared with storing the full apk
+ * as a completed download does. Bytes each way transfers are printed on setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitApkPatchBenchmark {
+
+    /**
+     * Number of the 8 dex files changed by new version.
+     */
+    @Param({"1", "4"})
+    public int changedDexCount;
+
+    private File workDir;
+
+    private File oldApk;
+
+    private File newApk;
+
+    private File patchFile;
+
+    private File targetApk;
+
+    private String newMd5;
+
+    @Setup
+    public void setUp() throws Exception {
+        workDir = BenchmarkInputs.createTempDir("split_apk_patch_benchmark");
+        Map<String, byte[]> oldEntries = BenchmarkInputs.splitApkEntries(1, 8, 512 * 1024, 2, 512 * 1024);
+        Map<String, byte[]> newEntries = BenchmarkInputs.splitApkEntries(1, 8, 512 * 1024, 2, 512 * 1024);
+        for (int i = 0; i < changedDexCount; i++) {
+            newEntries.put(i == 0 ? "classes.dex" : "classes" + (i + 1) + ".dex", BenchmarkInputs.bytes(1000 + i, 520 * 1024));
+        }
+        oldApk = writeApk("old", oldEntries);
+        newApk = writeApk("new", newEntries);
+        patchFile = new File(workDir, "split.patch");
+        BenchmarkInputs.createApkPatch(oldApk, newApk, patchFile);
+        newMd5 = FileUtil.getMD5(newApk);
+        targetApk = new File(workDir, "split-master.apk");
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    @Benchmark
+    public String applyPatch() throws IOException {
+        return SplitApkPatch.apply(oldApk, patchFile, targetApk, newMd5);
+    }
+
+    /**
+     * Baseline: write the full apk, as a download does, with md5 computed on the fly.
+     */
+    @Benchmark
+    public String writeFullApk() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        FileInputStream is = new FileInputStream(newApk);
+        FileOutputStream fos = new FileOutputStream(targetApk);
+        try {
+            DigestOutputStream os = new DigestOutputStream(fos, digest);
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                os.write(buffer, 0, count);
+            }
+            os.flush();
+            fos.getFD().sync();
+        } finally {
+            FileUtil.closeQuietly(fos);
+            FileUtil.closeQuietly(is);
+        }
+        return SplitApkVerifier.toHexString(digest.digest());
+    }
+
+    private File writeApk(String name, Map<String, byte[]> entries) throws Exception {
+        File unsigned = new File(workDir, name + "-unsigned.zip");
+        File signed = new File(workDir, name + ".apk");
+        BenchmarkInputs.writeZip(unsigned, entries, true, 0);
+        BenchmarkInputs.signApk(unsigned, signed);
+        return signed;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restoring a stored split apk into a new version dir by hard link or by copy,
+ * compared with the md5 check every restored file gets afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitArtifactStoreBenchmark {
+
+    @Param({"link", "copy"})
+    public String transfer;
+
+    @Param({"8388608"})
+    public int apkSize;
+
+    private File workDir;
+
+    private File targetApk;
+
+    private SplitArtifactStore store;
+
+    private String md5;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = BenchmarkInputs.createTempDir("split_artifact_store_benchmark");
+        final boolean linkSupported = "link".equals(transfer);
+        store = new SplitArtifactStore(new File(workDir, "artifacts"), new SplitArtifactStore.Linker() {
+            @Override
+            public boolean link(File source, File dest) {
+                return linkSupported && SplitArtifactStore.OS_LINKER.link(source, dest);
+            }
+        });
+        File apk = new File(workDir, "1.0/split.apk");
+        if (!apk.getParentFile().mkdirs() || !new File(workDir, "2.0").mkdirs()) {
+            throw new IOException("Failed to create version dirs");
+        }
+        FileOutputStream os = new FileOutputStream(apk);
+        try {
+            os.write(BenchmarkInputs.bytes(7, apkSize));
+        } finally {
+            os.close();
+        }
+        md5 = FileUtil.getMD5(apk);
+        store.publish(md5, apkSize, apk);
+        targetApk = new File(workDir, "2.0/split.apk");
+        if (!store.restore(md5, apkSize, targetApk)) {
+            throw new IOException("Failed to restore " + targetApk);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    @Benchmark
+    public boolean restore() {
+        return store.restore(md5, apkSize, targetApk);
+    }
+
+    /**
+     * Baseline: md5 of the restored apk, which installation checks anyway.
+     */
+    @Benchmark
+    public String verifyMd5() {
+        return FileUtil.getMD5(targetApk);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkContext;
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitAccessLog;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trimming 20 splits with a current and an old version each, both of 7 files, when nothing exceeds quota.
+ * Libs of both versions are hard linked to blobs of artifact store or separate copies,
+ * compared with summing file lengths of the same dirs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitDiskQuotaManagerBenchmark {
+
+    private static final int SPLIT_COUNT = 20;
+
+    private static final String[] VERSIONS = {"1.0", "2.0"};
+
+    @Param({"false", "true"})
+    public boolean linkedLibs;
+
+    private File workDir;
+
+    private List<SplitInfo> splits;
+
+    private SplitDiskQuotaManager quotaManager;
+
+    @Setup
+    public void setUp() throws Exception {
+        workDir = BenchmarkInputs.createTempDir("split_disk_quota");
+        BenchmarkContext context = new BenchmarkContext(new File(System.getProperty("java.io.tmpdir"), "qigsaw_benchmark"));
+        SplitPathManager.install(context);
+        SplitArtifactStore store = new SplitArtifactStore(new File(workDir, "artifacts"), new SplitArtifactStore.Linker() {
+            @Override
+            public boolean link(File source, File dest) {
+                return linkedLibs && SplitArtifactStore.OS_LINKER.link(source, dest);
+            }
+        });
+        SplitAccessLog accessLog = SplitAccessLog.get();
+        splits = new ArrayList<>(SPLIT_COUNT);
+        long time = 1000L;
+        for (int i = 0; i < SPLIT_COUNT; i++) {
+            SplitInfo info = createSplitInfo("quota_benchmark" + i, VERSIONS[VERSIONS.length - 1], i);
+            splits.add(info);
+            for (String version : VERSIONS) {
+                File versionDir = new File(SplitPathManager.require().getSplitRootDir(info), version);
+                for (String dir : new String[]{"code_cache", "oat", "nativeLib/arm64-v8a"}) {
+                    if (!new File(versionDir, dir).mkdirs()) {
+                        throw new IllegalStateException("Failed to create " + dir + " of " + versionDir);
+                    }
+                }
+                BenchmarkInputs.writeFile(new File(versionDir, info.getSplitName() + ".apk"), BenchmarkInputs.bytes(i, 64 * 1024));
+                BenchmarkInputs.writeFile(new File(versionDir, "code_cache/" + info.getSplitName() + ".zip"), BenchmarkInputs.bytes(i + 100, 32 * 1024));
+                BenchmarkInputs.writeFile(new File(versionDir, "oat/" + info.getSplitName() + ".odex"), BenchmarkInputs.bytes(i + 200, 32 * 1024));
+                for (int l = 0; l < 4; l++) {
+                    byte[] lib = BenchmarkInputs.bytes(i * 10 + l + 300, 16 * 1024);
+                    File libFile = new File(versionDir, "nativeLib/arm64-v8a/lib" + l + ".so");
+                    BenchmarkInputs.writeFile(libFile, lib);
+                    store.publish(BenchmarkInputs.md5(lib), lib.length, libFile);
+                }
+                accessLog.recordInstalled(createSplitInfo(info.getSplitName(), version, i), time++);
+            }
+            SplitInstallStateTable.get().put(new SplitInstallStateTable.State(info.getSplitName(), info.obtainInstalledMark(context),
+                    info.getSplitName() + ".apk", null, null, null, SplitInstallStateTable.OAT_OK, new HashMap<String, String>()));
+        }
+        quotaManager = new SplitDiskQuotaManager(context, 1L << 30, accessLog, store, SplitDiskQuotaManager.OS_STAT_READER);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (SplitInfo info : splits) {
+            FileUtil.deleteDir(SplitPathManager.require().getSplitRootDir(info));
+        }
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    @Benchmark
+    public void trim() {
+        quotaManager.trim(splits, Collections.<String>emptySet());
+    }
+
+    /**
+     * Baseline: lengths of all files, which count linked libs of every version.
+     */
+    @Benchmark
+    public long sumFileLengths() {
+        long bytes = 0;
+        for (SplitInfo info : splits) {
+            bytes += sumFileLengths(SplitPathManager.require().getSplitRootDir(info));
+        }
+        return bytes;
+    }
+
+    private static long sumFileLengths(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long bytes = 0;
+        for (File child : children) {
+            bytes += sumFileLengths(child);
+        }
+        return bytes;
+    }
+
+    private static SplitInfo createSplitInfo(String splitName, String version, int seed) throws Exception {
+        Constructor<SplitInfo.ApkData> apkDataConstructor = SplitInfo.ApkData.class.getDeclaredConstructor(String.class, String.class, String.class, long.class);
+        apkDataConstructor.setAccessible(true);
+        List<SplitInfo.ApkData> apkDataList = new ArrayList<>(1);
+        apkDataList.add(apkDataConstructor.newInstance("master", "http://localhost/" + splitName + ".zip",
+                BenchmarkInputs.md5(BenchmarkInputs.bytes(seed, 64 * 1024)), 64 * 1024L));
+        Constructor<SplitInfo> constructor = SplitInfo.class.getDeclaredConstructor(String.class, String.class, String.class,
+                boolean.class, int.class, int.class, List.class, List.class, List.class, List.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(splitName, "1.0.0", version, false, 14, 1,
+                Collections.<String>emptyList(), null, apkDataList, null);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkContext;
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extraction and reload of native libs by {@link SplitLibExtractor}, compared with the stream copy
+ * and md5 re-hashing it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitLibExtractorBenchmark {
+
+    private static final String ABI = "arm64-v8a";
+
+    @Param({"true", "false"})
+    public boolean storeLibs;
+
+    private File workDir;
+
+    private File apk;
+
+    private File extractDir;
+
+    private File reloadDir;
+
+    private SplitInfo.LibData libData;
+
+    @Setup
+    public void setUp() throws Exception {
+        workDir = BenchmarkInputs.createTempDir("split_lib_extractor");
+        SplitPathManager.install(new BenchmarkContext(new File(System.getProperty("java.io.tmpdir"), "qigsaw_benchmark")));
+        apk = new File(workDir, "split.apk");
+        extractDir = mkdirs(new File(workDir, "extract"));
+        reloadDir = mkdirs(new File(workDir, "reload"));
+        BenchmarkInputs.writeZip(apk, BenchmarkInputs.splitApkEntries(2L, 2, 256 * 1024, 8, 512 * 1024), storeLibs, 0);
+        libData = createLibData(BenchmarkInputs.nativeLibs(202L, ABI, 8, 512 * 1024));
+        SplitLibExtractor extractor = new SplitLibExtractor(apk, reloadDir);
+        try {
+            extractor.load(libData, true);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    /**
+     * Remove extracted libs and their blobs, so that libs are always extracted from apk.
+     */
+    @Setup(Level.Invocation)
+    public void clearExtractedLibs() {
+        File[] files = extractDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SplitConstants.DOT_SO)) {
+                    FileUtil.deleteFileSafely(file);
+                }
+            }
+        }
+        SplitArtifactStore artifactStore = SplitArtifactStore.get();
+        for (SplitInfo.LibData.Lib lib : libData.getLibs()) {
+            artifactStore.remove(lib.getMd5(), lib.getSize());
+        }
+    }
+
+    @Benchmark
+    public List<File> extract() throws IOException {
+        SplitLibExtractor extractor = new SplitLibExtractor(apk, extractDir);
+        try {
+            return extractor.load(libData, true);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    /**
+     * Each lib is copied from a {@link ZipFile} stream one after another and md5 is computed from the written file.
+     */
+    @Benchmark
+    public List<File> extractByStream() throws IOException {
+        String libPrefix = "lib/" + ABI + "/";
+        List<File> libFiles = new ArrayList<>();
+        ZipFile sourceZip = new ZipFile(apk);
+        try {
+            Enumeration<? extends ZipEntry> entries = sourceZip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (!entryName.startsWith(libPrefix) || !entryName.endsWith(SplitConstants.DOT_SO)) {
+                    continue;
+                }
+                String libName = entryName.substring(entryName.lastIndexOf('/') + 1);
+                SplitInfo.LibData.Lib lib = findLib(libName);
+                File extractedLib = new File(extractDir, libName);
+                File tmp = File.createTempFile("tmp-" + libName, "", SplitPathManager.require().getSplitTmpDir());
+                FileUtil.copyFile(sourceZip.getInputStream(entry), new FileOutputStream(tmp));
+                if (!tmp.renameTo(extractedLib) || !lib.getMd5().equals(FileUtil.getMD5(extractedLib))) {
+                    throw new IOException("Failed to extract " + libName);
+                }
+                libFiles.add(extractedLib);
+            }
+        } finally {
+            FileUtil.closeQuietly(sourceZip);
+        }
+        return libFiles;
+    }
+
+    @Benchmark
+    public List<File> reload() throws IOException {
+        SplitLibExtractor extractor = new SplitLibExtractor(apk, reloadDir);
+        try {
+            return extractor.load(libData, false);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    /**
+     * Every extracted lib is hashed again to check it.
+     */
+    @Benchmark
+    public List<File> reloadByRehash() throws IOException {
+        List<File> libFiles = new ArrayList<>();
+        for (SplitInfo.LibData.Lib lib : libData.getLibs()) {
+            File file = new File(reloadDir, lib.getName());
+            if (!lib.getMd5().equals(FileUtil.getMD5(file))) {
+                throw new IOException("Invalid extracted lib " + lib.getName());
+            }
+            libFiles.add(file);
+        }
+        return libFiles;
+    }
+
+    private SplitInfo.LibData.Lib findLib(String libName) throws IOException {
+        for (SplitInfo.LibData.Lib lib : libData.getLibs()) {
+            if (lib.getName().equals(libName)) {
+                return lib;
+            }
+        }
+        throw new IOException("Failed to find " + libName + " in split-info");
+    }
+
+    private static File mkdirs(File dir) throws IOException {
+        if (!dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    private static SplitInfo.LibData createLibData(Map<String, byte[]> libs) throws Exception {
+        Constructor<SplitInfo.LibData.Lib> libConstructor = SplitInfo.LibData.Lib.class.getDeclaredConstructor(String.class, String.class, long.class);
+        libConstructor.setAccessible(true);
+        List<SplitInfo.LibData.Lib> libList = new ArrayList<>(libs.size());
+        for (Map.Entry<String, byte[]> entry : libs.entrySet()) {
+            String name = entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1);
+            libList.add(libConstructor.newInstance(name, BenchmarkInputs.md5(entry.getValue()), (long) entry.getValue().length));
+        }
+        Constructor<SplitInfo.LibData> libDataConstructor = SplitInfo.LibData.class.getDeclaredConstructor(String.class, List.class);
+        libDataConstructor.setAccessible(true);
+        return libDataConstructor.newInstance(ABI, libList);
+    }
+}
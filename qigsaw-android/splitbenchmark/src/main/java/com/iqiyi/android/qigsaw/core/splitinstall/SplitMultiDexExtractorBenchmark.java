@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Re-zipping secondary dex files by {@link SplitMultiDexExtractor}, compared with compressing them one after another.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitMultiDexExtractorBenchmark {
+
+    @Param({"2", "20"})
+    public int dexCount;
+
+    private File workDir;
+
+    private File apk;
+
+    private File dexDir;
+
+    private File reloadDexDir;
+
+    @Setup
+    public void setUp() throws Exception {
+        workDir = BenchmarkInputs.createTempDir("split_multi_dex");
+        apk = new File(workDir, "split.apk");
+        dexDir = mkdirs(new File(workDir, "dex"));
+        reloadDexDir = mkdirs(new File(workDir, "reload"));
+        BenchmarkInputs.writeZip(apk, BenchmarkInputs.splitApkEntries(3L, dexCount, 512 * 1024, 0, 0), false, 0);
+        SplitMultiDexExtractor extractor = new SplitMultiDexExtractor(apk, reloadDexDir);
+        try {
+            extractor.load("benchmark", true);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    @Benchmark
+    public List<? extends File> extract() throws IOException {
+        SplitMultiDexExtractor extractor = new SplitMultiDexExtractor(apk, dexDir);
+        try {
+            return extractor.load("benchmark", true);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    /**
+     * Each secondary dex is deflated into its zip with a 16KB buffer one after another.
+     */
+    @Benchmark
+    public List<File> extractByDeflate() throws IOException {
+        List<File> files = new ArrayList<>();
+        ZipFile zipFile = new ZipFile(apk);
+        try {
+            for (int number = 2; ; number++) {
+                ZipEntry dex = zipFile.getEntry("classes" + number + ".dex");
+                if (dex == null) {
+                    break;
+                }
+                File extracted = new File(dexDir, apk.getName() + ".classes" + number + ".zip");
+                InputStream in = zipFile.getInputStream(dex);
+                ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(extracted)));
+                try {
+                    ZipEntry classesDex = new ZipEntry("classes.dex");
+                    classesDex.setTime(dex.getTime());
+                    out.putNextEntry(classesDex);
+                    byte[] buffer = new byte[16384];
+                    for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                        out.write(buffer, 0, length);
+                    }
+                    out.closeEntry();
+                } finally {
+                    FileUtil.closeQuietly(in);
+                    FileUtil.closeQuietly(out);
+                }
+                files.add(extracted);
+            }
+        } finally {
+            FileUtil.closeQuietly(zipFile);
+        }
+        return files;
+    }
+
+    @Benchmark
+    public List<? extends File> reload() throws IOException {
+        SplitMultiDexExtractor extractor = new SplitMultiDexExtractor(apk, reloadDexDir);
+        try {
+            return extractor.load("benchmark", false);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    private static File mkdirs(File dir) throws IOException {
+        if (!dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkContext;
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zip scanning and native lib extraction of split apks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitZipBenchmark {
+
+    private static final String ABI = "arm64-v8a";
+
+    /**
+     * Length of zip comment, a long comment is the worst case of End Of Central Directory search.
+     */
+    @Param({"0", "65535"})
+    public int commentLength;
+
+    @Param({"true", "false"})
+    public boolean storeLibs;
+
+    private File workDir;
+
+    private File apk;
+
+    private File libDir;
+
+    private RandomAccessFile apkRaf;
+
+    private SplitInfo.LibData libData;
+
+    @Setup
+    public void setUp() throws Exception {
+        workDir = BenchmarkInputs.createTempDir("split_zip");
+        //lib extraction writes temp files into split tmp dir.
+        SplitPathManager.install(new BenchmarkContext(new File(System.getProperty("java.io.tmpdir"), "qigsaw_benchmark")));
+        apk = new File(workDir, "split.apk");
+        libDir = new File(workDir, "lib");
+        if (!libDir.mkdirs()) {
+            throw new IOException("Failed to create " + libDir.getAbsolutePath());
+        }
+        Map<String, byte[]> entries = BenchmarkInputs.splitApkEntries(1L, 3, 512 * 1024, 4, 256 * 1024);
+        BenchmarkInputs.writeZip(apk, entries, storeLibs, commentLength);
+        apkRaf = new RandomAccessFile(apk, "r");
+        libData = createLibData(BenchmarkInputs.nativeLibs(201L, ABI, 4, 256 * 1024));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        apkRaf.close();
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    /**
+     * Remove extracted libs, so that {@link #extractLibs()} always extracts them from apk.
+     */
+    @Setup(Level.Invocation)
+    public void clearExtractedLibs() {
+        File[] files = libDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SplitConstants.DOT_SO)) {
+                    FileUtil.deleteFileSafely(file);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Object findCentralDirectory() throws IOException {
+        return SplitZipArchive.findCentralDirectory(apkRaf.getChannel());
+    }
+
+    /**
+     * End Of Central Directory search with one seek and readInt per byte, as it was done before mapping the tail of file.
+     */
+    @Benchmark
+    public long findCentralDirectoryByReadInt() throws IOException {
+        long scanOffset = apkRaf.length() - 22L;
+        long stopOffset = Math.max(0L, scanOffset - 65536L);
+        int endSig = Integer.reverseBytes(0x06054b50);
+        do {
+            apkRaf.seek(scanOffset);
+            if (apkRaf.readInt() == endSig) {
+                apkRaf.skipBytes(8);
+                return Integer.reverseBytes(apkRaf.readInt()) & 0xffffffffL;
+            }
+            --scanOffset;
+        } while (scanOffset >= stopOffset);
+        throw new IOException("End Of Central Directory signature not found");
+    }
+
+    @Benchmark
+    public long getZipCrc() throws IOException {
+        return SplitMultiDexExtractor.ZipCrcUtil.getZipCrc(apk);
+    }
+
+    @Benchmark
+    public List<File> extractLibs() throws IOException {
+        SplitLibExtractor extractor = new SplitLibExtractor(apk, libDir);
+        try {
+            return extractor.load(libData, true);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    private static SplitInfo.LibData createLibData(Map<String, byte[]> libs) throws Exception {
+        Constructor<SplitInfo.LibData.Lib> libConstructor = SplitInfo.LibData.Lib.class.getDeclaredConstructor(String.class, String.class, long.class);
+        libConstructor.setAccessible(true);
+        List<SplitInfo.LibData.Lib> libList = new ArrayList<>(libs.size());
+        for (Map.Entry<String, byte[]> entry : libs.entrySet()) {
+            String name = entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1);
+            libList.add(libConstructor.newInstance(name, BenchmarkInputs.md5(entry.getValue()), (long) entry.getValue().length));
+        }
+        Constructor<SplitInfo.LibData> libDataConstructor = SplitInfo.LibData.class.getDeclaredConstructor(String.class, List.class);
+        libDataConstructor.setAccessible(true);
+        return libDataConstructor.newInstance(ABI, libList);
+    }
+}
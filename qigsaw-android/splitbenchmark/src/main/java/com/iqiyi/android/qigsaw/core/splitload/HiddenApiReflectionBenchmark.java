@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeated lookups of members declared at the root of a four level hierarchy, as resources and dex loaders do
+ * with {@code AssetManager} and {@code BaseDexClassLoader} subclasses. Walking the hierarchy on every lookup, as
+ * before members were cached, is measured for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HiddenApiReflectionBenchmark {
+
+    @Benchmark
+    public Field findField() throws NoSuchFieldException {
+        return HiddenApiReflection.findField(Leaf.class, "mAssets");
+    }
+
+    @Benchmark
+    public Field findFieldByWalking() throws NoSuchFieldException {
+        for (Class<?> clazz = Leaf.class; clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Field field = clazz.getDeclaredField("mAssets");
+                if (!field.isAccessible()) {
+                    field.setAccessible(true);
+                }
+                return field;
+            } catch (NoSuchFieldException e) {
+                // ignore and search next
+            }
+        }
+        throw new NoSuchFieldException("mAssets");
+    }
+
+    @Benchmark
+    public Method findMethod() throws NoSuchMethodException {
+        return HiddenApiReflection.findMethod(Leaf.class, "addAssetPath", String.class);
+    }
+
+    @Benchmark
+    public Method findMethodByWalking() throws NoSuchMethodException {
+        for (Class<?> clazz = Leaf.class; clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Method method = clazz.getDeclaredMethod("addAssetPath", String.class);
+                if (!method.isAccessible()) {
+                    method.setAccessible(true);
+                }
+                return method;
+            } catch (NoSuchMethodException e) {
+                // ignore and search next
+            }
+        }
+        throw new NoSuchMethodException("addAssetPath");
+    }
+
+    /**
+     * Field of another platform version, its absence is cached but the exception is still thrown to callers.
+     */
+    @Benchmark
+    public Object findMissingField() {
+        try {
+            return HiddenApiReflection.findField(Leaf.class, "mApkAssets");
+        } catch (NoSuchFieldException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object findMissingFieldByWalking() {
+        for (Class<?> clazz = Leaf.class; clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                return clazz.getDeclaredField("mApkAssets");
+            } catch (NoSuchFieldException e) {
+                // ignore and search next
+            }
+        }
+        return new NoSuchFieldException("mApkAssets");
+    }
+
+    @SuppressWarnings("unused")
+    private static class Root {
+
+        private Object mAssets;
+
+        private int addAssetPath(String path) {
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class Middle extends Root {
+
+        private Object mMiddle;
+    }
+
+    @SuppressWarnings("unused")
+    private static class Upper extends Middle {
+
+        private Object mUpper;
+    }
+
+    @SuppressWarnings("unused")
+    private static class Leaf extends Upper {
+
+        private Object mLeaf;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resource and library lookups of {@code SplitDelegateClassloader} once the base apk missed, for a resource and
+ * a library of the last loaded split and for a resource of no split. Copying valid loaders into a new set and
+ * asking each of them, as before loaders were indexed, is measured for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitApplicationLoadersBenchmark {
+
+    private static final int SPLIT_COUNT = 10;
+
+    private static final int RESOURCE_COUNT = 40;
+
+    private static final String LAST_SPLIT_RESOURCE = "assets/split" + (SPLIT_COUNT - 1) + "/file0.txt";
+
+    private static final String MISSING_RESOURCE = "assets/missing.txt";
+
+    private static final String LAST_SPLIT_LIBRARY = "split" + (SPLIT_COUNT - 1);
+
+    private File dir;
+
+    private SplitApplicationLoaders loaders;
+
+    @Setup
+    public void setUp() throws Throwable {
+        dir = BenchmarkInputs.createTempDir("loaders");
+        loaders = SplitApplicationLoaders.getInstance();
+        for (int i = 0; i < SPLIT_COUNT; i++) {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            for (int j = 0; j < RESOURCE_COUNT; j++) {
+                entries.put("assets/split" + i + "/file" + j + ".txt", BenchmarkInputs.bytes(i * RESOURCE_COUNT + j, 64));
+            }
+            File apk = new File(dir, "split" + i + ".apk");
+            BenchmarkInputs.writeZip(apk, entries, false, 0);
+            File libDir = new File(dir, "split" + i + "-lib");
+            if (!libDir.mkdirs()) {
+                throw new IllegalStateException("Failed to create " + libDir);
+            }
+            BenchmarkInputs.writeFile(new File(libDir, "libsplit" + i + ".so"), BenchmarkInputs.bytes(i, 64));
+            loaders.addClassLoaderIfAbsent(SplitDexClassLoader.create("split" + i,
+                    Collections.singletonList(apk.getAbsolutePath()), null, libDir, null, null, null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public URL findResource() {
+        return findResource(LAST_SPLIT_RESOURCE);
+    }
+
+    @Benchmark
+    public URL findResourceByScanning() {
+        return findResourceByScanning(LAST_SPLIT_RESOURCE);
+    }
+
+    @Benchmark
+    public URL findMissingResource() {
+        return findResource(MISSING_RESOURCE);
+    }
+
+    @Benchmark
+    public URL findMissingResourceByScanning() {
+        return findResourceByScanning(MISSING_RESOURCE);
+    }
+
+    @Benchmark
+    public String findLibrary() {
+        SplitDexClassLoader loader = loaders.getValidLibraryOwner(LAST_SPLIT_LIBRARY);
+        return loader == null ? null : loader.findLibraryItself(LAST_SPLIT_LIBRARY);
+    }
+
+    @Benchmark
+    public String findLibraryByScanning() {
+        Set<SplitDexClassLoader> validLoaders = new HashSet<>(loaders.getValidClassLoaders());
+        for (SplitDexClassLoader loader : validLoaders) {
+            String libName = loader.findLibraryItself(LAST_SPLIT_LIBRARY);
+            if (libName != null) {
+                return libName;
+            }
+        }
+        return null;
+    }
+
+    private URL findResource(String name) {
+        for (SplitDexClassLoader loader : loaders.getValidClassLoaderArray()) {
+            if (loader.mayContainResource(name)) {
+                URL resource = loader.findResourceItself(name);
+                if (resource != null) {
+                    return resource;
+                }
+            }
+        }
+        return null;
+    }
+
+    private URL findResourceByScanning(String name) {
+        Set<SplitDexClassLoader> validLoaders = new HashSet<>(loaders.getValidClassLoaders());
+        for (SplitDexClassLoader loader : validLoaders) {
+            URL resource = loader.findResourceItself(name);
+            if (resource != null) {
+                return resource;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owner lookups of {@link SplitClassIndex} for indexed and unknown classes. Asking every split class loader,
+ * which throws {@link ClassNotFoundException} on a miss, is measured for comparison without the cost of dex lookups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitClassIndexBenchmark {
+
+    private static final int SPLIT_COUNT = 20;
+
+    @Param({"1000", "50000"})
+    public int classCount;
+
+    private SplitClassIndex index;
+
+    private Map<String, String> classOwners;
+
+    private String indexedClass;
+
+    private String unknownClass;
+
+    @Setup
+    public void setUp() throws IOException {
+        classOwners = new HashMap<>(classCount * 2);
+        TreeMap<Long, Short> entries = new TreeMap<>();
+        for (int i = 0; i < classCount; i++) {
+            short owner = (short) (i % SPLIT_COUNT);
+            String className = "com.example.split" + owner + ".feature.Class" + i;
+            classOwners.put(className, "split" + owner);
+            entries.put(SplitClassIndex.hash(className), owner);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x51434958);
+        out.writeInt(1);
+        out.writeInt(SPLIT_COUNT);
+        for (int i = 0; i < SPLIT_COUNT; i++) {
+            out.writeUTF("split" + i);
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<Long, Short> entry : entries.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeShort(entry.getValue());
+        }
+        out.close();
+        index = SplitClassIndex.read(new ByteArrayInputStream(bytes.toByteArray()));
+        indexedClass = "com.example.split7.feature.Class" + (classCount / 2 / SPLIT_COUNT * SPLIT_COUNT + 7);
+        unknownClass = "com.example.base.MissingClass";
+    }
+
+    @Benchmark
+    public String findIndexedClass() {
+        return index.findSplit(indexedClass);
+    }
+
+    @Benchmark
+    public String findUnknownClass() {
+        return index.findSplit(unknownClass);
+    }
+
+    @Benchmark
+    public String findIndexedClassByMap() {
+        return classOwners.get(indexedClass);
+    }
+
+    @Benchmark
+    public int probeSplitsForUnknownClass() {
+        int misses = 0;
+        for (int i = 0; i < SPLIT_COUNT; i++) {
+            try {
+                throw new ClassNotFoundException(unknownClass);
+            } catch (ClassNotFoundException e) {
+                misses++;
+            }
+        }
+        return misses;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class lookups of a split with five dependencies, for a class defined by the last dependency and for a class
+ * defined by no split. Asking the split and then every dependency in turn, each miss throwing, as before
+ * dependencies were indexed, is measured for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitDexClassLoaderBenchmark {
+
+    private static final int DEPENDENCY_COUNT = 5;
+
+    private static final String DEPENDENCY_CLASS = Feature.class.getName();
+
+    private static final String MISSING_CLASS = "com.example.base.MissingClass";
+
+    private File dir;
+
+    private List<SplitDexClassLoader> dependencies;
+
+    private SplitDexClassLoader indexedLoader;
+
+    private SplitDexClassLoader unindexedLoader;
+
+    @Setup
+    public void setUp() throws Throwable {
+        dir = BenchmarkInputs.createTempDir("dex");
+        String entryName = DEPENDENCY_CLASS.replace('.', '/') + ".class";
+        byte[] featureClass = readClass(entryName);
+        List<String> dependencyNames = new ArrayList<>();
+        dependencies = new ArrayList<>();
+        TreeMap<Long, Short> entries = new TreeMap<>();
+        for (int i = 0; i < DEPENDENCY_COUNT; i++) {
+            String splitName = "split" + i;
+            Map<String, byte[]> zipEntries = new LinkedHashMap<>();
+            zipEntries.put("classes.dex", BenchmarkInputs.bytes(i, 256));
+            entries.put(SplitClassIndex.hash("com.example." + splitName + ".Feature"), (short) i);
+            if (i == DEPENDENCY_COUNT - 1) {
+                zipEntries.put(entryName, featureClass);
+                entries.put(SplitClassIndex.hash(DEPENDENCY_CLASS), (short) i);
+            }
+            dependencyNames.add(splitName);
+            dependencies.add(SplitDexClassLoader.create(splitName, writeZip(splitName, zipEntries), null, null,
+                    null, null, null));
+        }
+        Map<String, byte[]> appEntries = Collections.singletonMap("classes.dex", BenchmarkInputs.bytes(DEPENDENCY_COUNT, 256));
+        indexedLoader = SplitDexClassLoader.create("app", writeZip("app", appEntries), null, null,
+                dependencyNames, dependencies, readIndex(entries));
+        unindexedLoader = SplitDexClassLoader.create("app", writeZip("app", appEntries), null, null,
+                dependencyNames, dependencies, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public Object findDependencyClass() {
+        return findClass(indexedLoader, DEPENDENCY_CLASS);
+    }
+
+    @Benchmark
+    public Object findDependencyClassWithoutIndex() {
+        return findClass(unindexedLoader, DEPENDENCY_CLASS);
+    }
+
+    @Benchmark
+    public Object findDependencyClassByProbing() {
+        return findClassByProbing(DEPENDENCY_CLASS);
+    }
+
+    @Benchmark
+    public Object findMissingClass() {
+        return findClass(indexedLoader, MISSING_CLASS);
+    }
+
+    @Benchmark
+    public Object findMissingClassWithoutIndex() {
+        return findClass(unindexedLoader, MISSING_CLASS);
+    }
+
+    @Benchmark
+    public Object findMissingClassByProbing() {
+        return findClassByProbing(MISSING_CLASS);
+    }
+
+    private static Object findClass(SplitDexClassLoader loader, String name) {
+        try {
+            return loader.findClass(name);
+        } catch (ClassNotFoundException e) {
+            return e;
+        }
+    }
+
+    private Object findClassByProbing(String name) {
+        ClassNotFoundException notFound;
+        try {
+            return indexedLoader.loadClassItself(name);
+        } catch (ClassNotFoundException e) {
+            notFound = e;
+        }
+        for (SplitDexClassLoader loader : dependencies) {
+            try {
+                return loader.loadClassItself(name);
+            } catch (ClassNotFoundException ignored) {
+                // ignore and search next
+            }
+        }
+        return notFound;
+    }
+
+    private List<String> writeZip(String splitName, Map<String, byte[]> entries) throws IOException {
+        File zip = File.createTempFile(splitName, ".apk", dir);
+        BenchmarkInputs.writeZip(zip, entries, false, 0);
+        return Collections.singletonList(zip.getAbsolutePath());
+    }
+
+    private static byte[] readClass(String entryName) throws IOException {
+        InputStream in = SplitDexClassLoaderBenchmark.class.getClassLoader().getResourceAsStream(entryName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static SplitClassIndex readIndex(TreeMap<Long, Short> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x51434958);
+        out.writeInt(1);
+        out.writeInt(DEPENDENCY_COUNT);
+        for (int i = 0; i < DEPENDENCY_COUNT; i++) {
+            out.writeUTF("split" + i);
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<Long, Short> entry : entries.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeShort(entry.getValue());
+        }
+        out.close();
+        return SplitClassIndex.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Class defined by the last dependency.
+     */
+    public static class Feature {
+
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of split-details, json as read by {@link SplitInfoManagerImpl} and the binary form.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitDetailsBenchmark {
+
+    @Param({"10", "50", "200", "500"})
+    public int splitCount;
+
+    private String json;
+
+    private File workDir;
+
+    private RandomAccessFile binaryFile;
+
+    private ByteBuffer binary;
+
+    @Setup
+    public void setUp() throws Exception {
+        json = BenchmarkInputs.splitDetailsJson(splitCount, splitCount);
+        workDir = BenchmarkInputs.createTempDir("split_details");
+        File binaryDest = new File(workDir, "qigsaw.bin");
+        SplitDetailsBinary.write(parseJson(), binaryDest);
+        binaryFile = new RandomAccessFile(binaryDest, "r");
+        binary = binaryFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, binaryDest.length());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        binaryFile.close();
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    private SplitDetails parseJson() throws Exception {
+        return SplitInfoManagerImpl.parseSplitsContent(json);
+    }
+
+    @Benchmark
+    public void parseJson(Blackhole blackhole) throws Exception {
+        consume(parseJson(), blackhole);
+    }
+
+    @Benchmark
+    public void readBinary(Blackhole blackhole) throws Exception {
+        consume(SplitDetailsBinary.read(binary.duplicate()), blackhole);
+    }
+
+    /**
+     * Cold start usually looks up a few splits only, which is where lazy decoding pays off.
+     */
+    @Benchmark
+    public void lookupJson(Blackhole blackhole) throws Exception {
+        blackhole.consume(parseJson().getSplitInfoListing().getSplitInfo("split0"));
+    }
+
+    @Benchmark
+    public void lookupBinary(Blackhole blackhole) throws Exception {
+        blackhole.consume(SplitDetailsBinary.read(binary.duplicate()).getSplitInfoListing().getSplitInfo("split0"));
+    }
+
+    /**
+     * Touch every split, so that lazily decoded details are measured as well.
+     */
+    private static void consume(SplitDetails details, Blackhole blackhole) {
+        for (SplitInfo info : details.getSplitInfoListing().getAllSplitInfo()) {
+            blackhole.consume(info.getSplitName());
+            blackhole.consume(info.getDependencies());
+            blackhole.consume(info.getAllApkData());
+            blackhole.consume(info.getAllLibData());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups through {@link SplitInfoIndex} should cost the same whatever the split count is,
+ * linear scans over all split info as done before the index are measured for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitInfoIndexBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int splitCount;
+
+    private SplitInfoIndex index;
+
+    private Collection<SplitInfo> allSplitInfo;
+
+    private String lastSplitName;
+
+    private List<String> requestedSplits;
+
+    @Setup
+    public void setUp() throws Exception {
+        SplitDetails details = SplitInfoManagerImpl.parseSplitsContent(BenchmarkInputs.splitDetailsJson(splitCount, splitCount));
+        index = details.getSplitInfoIndex();
+        allSplitInfo = details.getSplitInfoListing().getAllSplitInfo();
+        lastSplitName = "split" + (splitCount - 1);
+        requestedSplits = Collections.singletonList(lastSplitName);
+    }
+
+    @Benchmark
+    public SplitInfo getSplitInfoByIndex() {
+        return index.getSplitInfo(lastSplitName);
+    }
+
+    @Benchmark
+    public SplitInfo getSplitInfoByScan() {
+        for (SplitInfo info : allSplitInfo) {
+            if (info.getSplitName().equals(lastSplitName)) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public List<SplitInfo> getSplitInfosByIndex() {
+        return index.getSplitInfos(requestedSplits);
+    }
+
+    @Benchmark
+    public List<SplitInfo> getSplitInfosByScan() {
+        List<SplitInfo> result = new ArrayList<>();
+        for (SplitInfo info : allSplitInfo) {
+            if (requestedSplits.contains(info.getSplitName())) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<SplitInfo> getSplitInfosWithDependencies() {
+        return index.getSplitInfosWithDependencies(requestedSplits);
+    }
+}
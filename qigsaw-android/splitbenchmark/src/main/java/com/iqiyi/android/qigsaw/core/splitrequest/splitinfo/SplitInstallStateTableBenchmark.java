@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+import com.iqiyi.android.qigsaw.core.common.SplitJournalStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determining loadable splits at start from {@link SplitInstallStateTable}. Statting mark files of every split and its
+ * dependencies and listing its code cache as done before the table is measured for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitInstallStateTableBenchmark {
+
+    private static final String MARK = "1.0.0@1_mark";
+
+    @Param({"20", "100"})
+    public int splitCount;
+
+    private File workDir;
+
+    private File journal;
+
+    private List<File> splitDirs;
+
+    private File coldJournal;
+
+    private byte[] coldContent;
+
+    private long generation;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = BenchmarkInputs.createTempDir("install_state");
+        journal = new File(workDir, "install_state.journal");
+        SplitInstallStateTable table = new SplitInstallStateTable(SplitJournalStore.get(journal));
+        splitDirs = new ArrayList<>(splitCount);
+        for (int i = 0; i < splitCount; i++) {
+            File splitDir = new File(workDir, "split" + i + File.separator + "1.0.0");
+            File codeCacheDir = new File(splitDir, "code_cache");
+            codeCacheDir.mkdirs();
+            new File(splitDir, MARK).createNewFile();
+            new File(codeCacheDir, "split" + i + ".classes2.zip").createNewFile();
+            splitDirs.add(splitDir);
+            Map<String, String> dependencyMarks = new HashMap<>();
+            if (i > 0) {
+                dependencyMarks.put("split0", MARK);
+            }
+            List<String> addedDexPaths = new ArrayList<>();
+            addedDexPaths.add(new File(splitDir, "split" + i + "-master.apk").getAbsolutePath());
+            addedDexPaths.add(new File(codeCacheDir, "split" + i + ".classes2.zip").getAbsolutePath());
+            table.put(new SplitInstallStateTable.State("split" + i, MARK, addedDexPaths.get(0),
+                    new File(splitDir, "oat").getAbsolutePath(), null, addedDexPaths,
+                    SplitInstallStateTable.OAT_OK, dependencyMarks));
+        }
+        coldJournal = new File(workDir, "cold.journal");
+        coldContent = new byte[(int) journal.length()];
+        RandomAccessFile raf = new RandomAccessFile(journal, "r");
+        try {
+            raf.readFully(coldContent);
+            generation = ByteBuffer.wrap(coldContent).getLong(8);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    /**
+     * Journal of another generation is written before each invocation, so the table is read as in a cold process.
+     */
+    @Setup(Level.Invocation)
+    public void prepareColdJournal() throws IOException {
+        generation++;
+        ByteBuffer.wrap(coldContent).putLong(8, generation);
+        FileOutputStream os = new FileOutputStream(coldJournal);
+        try {
+            os.write(coldContent);
+        } finally {
+            os.close();
+        }
+        coldJournal.setLastModified(generation * 1000);
+    }
+
+    @Benchmark
+    public int readColdTable() {
+        return new SplitInstallStateTable(SplitJournalStore.get(coldJournal)).getAll().size();
+    }
+
+    /**
+     * Table which has been read in this process, values are kept in memory.
+     */
+    @Benchmark
+    public int readWarmTable() {
+        return new SplitInstallStateTable(SplitJournalStore.get(journal)).getAll().size();
+    }
+
+    @Benchmark
+    public int statMarkFiles() {
+        int installed = 0;
+        File dependencyDir = splitDirs.get(0);
+        for (File splitDir : splitDirs) {
+            boolean ok = new File(splitDir, MARK).exists() || new File(splitDir, MARK + ".ov").exists();
+            ok &= new File(dependencyDir, MARK).exists();
+            File[] zips = new File(splitDir, "code_cache").listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".zip");
+                }
+            });
+            if (ok && zips != null) {
+                installed++;
+            }
+        }
+        return installed;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import com.iqiyi.android.qigsaw.core.benchmark.BenchmarkInputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dir lookups of 20 splits at start, dirs are checked once by {@link SplitPathManager}.
+ * Checking and creating every dir on each lookup as done before the cache is measured for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SplitPathManagerBenchmark {
+
+    private static final int SPLIT_COUNT = 20;
+
+    private File workDir;
+
+    private SplitPathManager pathManager;
+
+    private List<SplitInfo> splits;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = BenchmarkInputs.createTempDir("paths");
+        pathManager = new SplitPathManager(workDir, "1.0.0_benchmark", SplitPathManager.DirOperations.DEFAULT);
+        splits = new ArrayList<>(SPLIT_COUNT);
+        for (int i = 0; i < SPLIT_COUNT; i++) {
+            List<SplitInfo.ApkData> apkDataList = new ArrayList<>(1);
+            apkDataList.add(new SplitInfo.ApkData("master", "http://localhost/split" + i + ".zip", "", 0));
+            splits.add(new SplitInfo("split" + i, "1.0.0", "1.0.0@1", false, 14, 1,
+                    Collections.<String>emptyList(), null, apkDataList, null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkInputs.deleteTempDir(workDir);
+    }
+
+    @Benchmark
+    public int lookupDirs() {
+        int hash = 0;
+        for (SplitInfo split : splits) {
+            hash += pathManager.getSplitDir(split).hashCode();
+            hash += pathManager.getSplitCodeCacheDir(split).hashCode();
+            hash += pathManager.getSplitOptDir(split).hashCode();
+            hash += pathManager.getSplitLibDir(split, "arm64-v8a").hashCode();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public int lookupDirsByCheckingEachTime() {
+        int hash = 0;
+        File root = new File(workDir, "1.0.0_benchmark");
+        for (SplitInfo split : splits) {
+            File splitDir = checkDir(new File(checkDir(new File(root, split.getSplitName())), split.getSplitVersion()));
+            hash += splitDir.hashCode();
+            hash += checkDir(new File(splitDir, "code_cache")).hashCode();
+            hash += checkDir(new File(splitDir, "oat")).hashCode();
+            hash += checkDir(new File(splitDir, "nativeLib" + File.separator + "arm64-v8a")).hashCode();
+        }
+        return hash;
+    }
+
+    private static File checkDir(File dir) {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+}
@@ -0,0 +1,35 @@
+package android.content;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+
+import java.io.File;
+
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0x0000;
+
+    public static final String ACTIVITY_SERVICE = "activity";
+
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+    public abstract Context getApplicationContext();
+
+    public abstract Object getSystemService(String name);
+
+    public abstract String getPackageName();
+
+    public abstract ApplicationInfo getApplicationInfo();
+
+    public abstract PackageManager getPackageManager();
+
+    public abstract AssetManager getAssets();
+
+    public abstract Resources getResources();
+
+    public abstract File getDir(String name, int mode);
+
+    public abstract File getFilesDir();
+}
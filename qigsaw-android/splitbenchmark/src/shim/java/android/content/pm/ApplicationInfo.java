@@ -0,0 +1,15 @@
+package android.content.pm;
+
+public class ApplicationInfo {
+
+    public String sourceDir;
+
+    public String nativeLibraryDir;
+
+    public int flags;
+
+    /**
+     * Hidden field which is read by reflection.
+     */
+    public String primaryCpuAbi;
+}
@@ -0,0 +1,15 @@
+package android.content.pm;
+
+public abstract class PackageManager {
+
+    public static final int GET_SIGNATURES = 0x00000040;
+
+    public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+
+    public static class NameNotFoundException extends Exception {
+
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+}
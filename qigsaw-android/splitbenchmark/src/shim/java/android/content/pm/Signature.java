@@ -0,0 +1,14 @@
+package android.content.pm;
+
+public class Signature {
+
+    private final byte[] signature;
+
+    public Signature(byte[] signature) {
+        this.signature = signature.clone();
+    }
+
+    public byte[] toByteArray() {
+        return signature.clone();
+    }
+}
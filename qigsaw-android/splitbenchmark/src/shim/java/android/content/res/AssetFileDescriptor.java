@@ -0,0 +1,15 @@
+package android.content.res;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public abstract class AssetFileDescriptor {
+
+    public abstract FileInputStream createInputStream() throws IOException;
+
+    public abstract long getStartOffset();
+
+    public abstract long getLength();
+
+    public abstract void close() throws IOException;
+}
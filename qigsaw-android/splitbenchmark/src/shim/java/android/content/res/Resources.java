@@ -0,0 +1,6 @@
+package android.content.res;
+
+public abstract class Resources {
+
+    public abstract AssetManager getAssets();
+}
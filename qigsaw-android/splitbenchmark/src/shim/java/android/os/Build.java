@@ -0,0 +1,20 @@
+package android.os;
+
+public class Build {
+
+    public static final String[] SUPPORTED_ABIS = {"arm64-v8a", "armeabi-v7a", "armeabi"};
+
+    public static final String CPU_ABI = "arm64-v8a";
+
+    public static final String CPU_ABI2 = "armeabi-v7a";
+
+    public static class VERSION {
+
+        public static final int SDK_INT = 29;
+    }
+
+    public static class VERSION_CODES {
+
+        public static final int LOLLIPOP = 21;
+    }
+}
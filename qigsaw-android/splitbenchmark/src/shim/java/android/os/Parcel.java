@@ -0,0 +1,30 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Values are kept in memory in the order they are written.
+ */
+public final class Parcel {
+
+    private final List<Object> values = new ArrayList<>();
+
+    private int position;
+
+    public void writeString(String value) {
+        values.add(value);
+    }
+
+    public void writeLong(long value) {
+        values.add(value);
+    }
+
+    public String readString() {
+        return (String) values.get(position++);
+    }
+
+    public long readLong() {
+        return (Long) values.get(position++);
+    }
+}
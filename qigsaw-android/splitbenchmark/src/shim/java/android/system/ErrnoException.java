@@ -0,0 +1,11 @@
+package android.system;
+
+public final class ErrnoException extends Exception {
+
+    public final int errno;
+
+    public ErrnoException(String functionName, int errno, Throwable cause) {
+        super(functionName + " failed", cause);
+        this.errno = errno;
+    }
+}
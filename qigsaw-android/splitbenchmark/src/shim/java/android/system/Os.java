@@ -0,0 +1,39 @@
+package android.system;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Hard links are created and stated through java.nio.file, which is what libcore does on device.
+ */
+public final class Os {
+
+    public static void link(String oldPath, String newPath) throws ErrnoException {
+        try {
+            Files.createLink(Paths.get(newPath), Paths.get(oldPath));
+        } catch (IOException e) {
+            throw new ErrnoException("link", 0, e);
+        }
+    }
+
+    public static StructStat stat(String path) throws ErrnoException {
+        return stat(path, new LinkOption[0]);
+    }
+
+    public static StructStat lstat(String path) throws ErrnoException {
+        return stat(path, new LinkOption[]{LinkOption.NOFOLLOW_LINKS});
+    }
+
+    private static StructStat stat(String path, LinkOption[] options) throws ErrnoException {
+        try {
+            Map<String, Object> attributes = Files.readAttributes(Paths.get(path), "unix:ino,mode,nlink,size", options);
+            return new StructStat(((Number) attributes.get("ino")).longValue(), ((Number) attributes.get("mode")).intValue(),
+                    ((Number) attributes.get("nlink")).longValue(), ((Number) attributes.get("size")).longValue());
+        } catch (IOException | UnsupportedOperationException e) {
+            throw new ErrnoException("stat", 0, e);
+        }
+    }
+}
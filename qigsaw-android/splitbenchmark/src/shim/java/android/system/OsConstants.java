@@ -0,0 +1,18 @@
+package android.system;
+
+public final class OsConstants {
+
+    public static final int S_IFMT = 0170000;
+
+    public static final int S_IFREG = 0100000;
+
+    public static final int S_IFLNK = 0120000;
+
+    public static boolean S_ISREG(int mode) {
+        return (mode & S_IFMT) == S_IFREG;
+    }
+
+    public static boolean S_ISLNK(int mode) {
+        return (mode & S_IFMT) == S_IFLNK;
+    }
+}
@@ -0,0 +1,19 @@
+package android.system;
+
+public final class StructStat {
+
+    public final long st_ino;
+
+    public final int st_mode;
+
+    public final long st_nlink;
+
+    public final long st_size;
+
+    public StructStat(long st_ino, int st_mode, long st_nlink, long st_size) {
+        this.st_ino = st_ino;
+        this.st_mode = st_mode;
+        this.st_nlink = st_nlink;
+        this.st_size = st_size;
+    }
+}
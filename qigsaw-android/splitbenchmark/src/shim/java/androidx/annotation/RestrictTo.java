@@ -0,0 +1,17 @@
+package androidx.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+@Retention(RetentionPolicy.CLASS)
+public @interface RestrictTo {
+
+    Scope[] value();
+
+    enum Scope {
+        LIBRARY,
+        LIBRARY_GROUP,
+        TESTS,
+        SUBCLASSES
+    }
+}
@@ -0,0 +1,97 @@
+package dalvik.system;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Opens zip files of dex path when created like DexPathList does, classes are defined from ".class" entries
+ * of them in place of dex code, and a missing class throws the same way.
+ */
+public class BaseDexClassLoader extends ClassLoader {
+
+    private final String dexPath;
+
+    private final List<ZipFile> zipFiles = new ArrayList<>();
+
+    private final File librarySearchPath;
+
+    public BaseDexClassLoader(String dexPath, File optimizedDirectory, String librarySearchPath, ClassLoader parent) {
+        super(parent);
+        this.dexPath = dexPath;
+        this.librarySearchPath = librarySearchPath == null ? null : new File(librarySearchPath);
+        for (String path : dexPath.split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                try {
+                    zipFiles.add(new ZipFile(path));
+                } catch (IOException ignored) {
+                    //not a zip file, DexPathList suppresses it the same way.
+                }
+            }
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String entryName = name.replace('.', '/') + ".class";
+        for (ZipFile zipFile : zipFiles) {
+            ZipEntry entry = zipFile.getEntry(entryName);
+            if (entry != null) {
+                byte[] bytes = read(zipFile, entry);
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        }
+        throw new ClassNotFoundException("Didn't find class \"" + name + "\" on path: DexPathList[" + dexPath + "]");
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        for (ZipFile zipFile : zipFiles) {
+            if (zipFile.getEntry(name) != null) {
+                try {
+                    return new URL("jar:" + new File(zipFile.getName()).toURI() + "!/" + name);
+                } catch (MalformedURLException ignored) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        URL resource = findResource(name);
+        return resource == null ? null : Collections.enumeration(Collections.singletonList(resource));
+    }
+
+    public String findLibrary(String name) {
+        if (librarySearchPath == null) {
+            return null;
+        }
+        File library = new File(librarySearchPath, "lib" + name + ".so");
+        return library.isFile() ? library.getAbsolutePath() : null;
+    }
+
+    private static byte[] read(ZipFile zipFile, ZipEntry entry) throws ClassNotFoundException {
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(entry.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package dalvik.system;
+
+public final class DexFile {
+
+    private DexFile() {
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A {@link SplitLog.Logger} which hands logs over to a background thread, where they are formatted and passed to
+ * {@code delegate} in the order they are logged. Logs are queued in a ring buffer of fixed capacity, once it is full
+ * further logs are dropped until the background thread catches up, and number of dropped logs is reported then.
+ * <p>
+ * Parameters are formatted later, so mutable objects should not be passed as parameters.
+ */
+public class AsyncSplitLogger implements SplitLog.Logger {
+
+    private static final String TAG = "Split.AsyncSplitLogger";
+
+    private static final int V = 0;
+
+    private static final int I = 1;
+
+    private static final int W = 2;
+
+    private static final int D = 3;
+
+    private static final int E = 4;
+
+    private static final int STACK_TRACE = 5;
+
+    private final SplitLog.Logger delegate;
+
+    private final Object lock = new Object();
+
+    private final int[] kinds;
+
+    private final String[] tags;
+
+    private final String[] messages;
+
+    private final Object[][] params;
+
+    private final Throwable[] throwables;
+
+    private int head;
+
+    private int count;
+
+    private int dropped;
+
+    public AsyncSplitLogger(@NonNull SplitLog.Logger delegate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, but is " + capacity);
+        }
+        this.delegate = delegate;
+        this.kinds = new int[capacity];
+        this.tags = new String[capacity];
+        this.messages = new String[capacity];
+        this.params = new Object[capacity][];
+        this.throwables = new Throwable[capacity];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "qigsaw-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return number of logs dropped so far and not reported yet.
+     */
+    public int getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    @Override
+    public void v(String tag, String msg, Object... obj) {
+        enqueue(V, tag, msg, obj, null);
+    }
+
+    @Override
+    public void i(String tag, String msg, Object... obj) {
+        enqueue(I, tag, msg, obj, null);
+    }
+
+    @Override
+    public void w(String tag, String msg, Object... obj) {
+        enqueue(W, tag, msg, obj, null);
+    }
+
+    @Override
+    public void d(String tag, String msg, Object... obj) {
+        enqueue(D, tag, msg, obj, null);
+    }
+
+    @Override
+    public void e(String tag, String msg, Object... obj) {
+        enqueue(E, tag, msg, obj, null);
+    }
+
+    @Override
+    public void v(String tag, String msg, Throwable throwable) {
+        enqueue(V, tag, msg, null, throwable);
+    }
+
+    @Override
+    public void i(String tag, String msg, Throwable throwable) {
+        enqueue(I, tag, msg, null, throwable);
+    }
+
+    @Override
+    public void w(String tag, String msg, Throwable throwable) {
+        enqueue(W, tag, msg, null, throwable);
+    }
+
+    @Override
+    public void d(String tag, String msg, Throwable throwable) {
+        enqueue(D, tag, msg, null, throwable);
+    }
+
+    @Override
+    public void e(String tag, String msg, Throwable throwable) {
+        enqueue(E, tag, msg, null, throwable);
+    }
+
+    @Override
+    public void printErrStackTrace(String tag, Throwable tr, String format, Object... obj) {
+        enqueue(STACK_TRACE, tag, format, obj, tr);
+    }
+
+    private void enqueue(int kind, String tag, String msg, Object[] obj, Throwable throwable) {
+        synchronized (lock) {
+            int capacity = kinds.length;
+            if (count == capacity) {
+                dropped++;
+                return;
+            }
+            int tail = (head + count) % capacity;
+            kinds[tail] = kind;
+            tags[tail] = tag;
+            messages[tail] = msg;
+            params[tail] = obj;
+            throwables[tail] = throwable;
+            if (count++ == 0) {
+                lock.notify();
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            int kind;
+            String tag;
+            String msg;
+            Object[] obj;
+            Throwable throwable;
+            int droppedLogs = 0;
+            synchronized (lock) {
+                while (count == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {
+                        //ignored
+                    }
+                }
+                kind = kinds[head];
+                tag = tags[head];
+                msg = messages[head];
+                obj = params[head];
+                throwable = throwables[head];
+                tags[head] = null;
+                messages[head] = null;
+                params[head] = null;
+                throwables[head] = null;
+                head = (head + 1) % kinds.length;
+                count--;
+                if (count == 0 && dropped > 0) {
+                    droppedLogs = dropped;
+                    dropped = 0;
+                }
+            }
+            try {
+                deliver(kind, tag, msg, obj, throwable);
+                if (droppedLogs > 0) {
+                    delegate.w(TAG, "%d logs are dropped because logging is faster than writing", droppedLogs);
+                }
+            } catch (Throwable e) {
+                //a broken log must not stop logging thread.
+            }
+        }
+    }
+
+    private void deliver(int kind, String tag, String msg, Object[] obj, Throwable throwable) {
+        if (kind == STACK_TRACE) {
+            delegate.printErrStackTrace(tag, throwable, msg, obj);
+            return;
+        }
+        if (throwable != null) {
+            switch (kind) {
+                case V:
+                    delegate.v(tag, msg, throwable);
+                    break;
+                case I:
+                    delegate.i(tag, msg, throwable);
+                    break;
+                case W:
+                    delegate.w(tag, msg, throwable);
+                    break;
+                case D:
+                    delegate.d(tag, msg, throwable);
+                    break;
+                default:
+                    delegate.e(tag, msg, throwable);
+                    break;
+            }
+            return;
+        }
+        switch (kind) {
+            case V:
+                delegate.v(tag, msg, obj);
+                break;
+            case I:
+                delegate.i(tag, msg, obj);
+                break;
+            case W:
+                delegate.w(tag, msg, obj);
+                break;
+            case D:
+                delegate.d(tag, msg, obj);
+                break;
+            default:
+                delegate.e(tag, msg, obj);
+                break;
+        }
+    }
+}
@@ -2,13 +2,16 @@ package com.iqiyi.android.qigsaw.core.common;
 
 import android.app.ActivityManager;
 import android.content.Context;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 import android.text.TextUtils;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 
@@ -35,6 +38,34 @@ public class ProcessUtil {
         }
     }
 
+    /**
+     * @return pids of all running processes of this app, or {@code null} if they can't be queried.
+     */
+    @Nullable
+    public static Set<Integer> getRunningProcessIds(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null) {
+            return null;
+        }
+        List<ActivityManager.RunningAppProcessInfo> appProcessList;
+        try {
+            appProcessList = am.getRunningAppProcesses();
+        } catch (Exception e) {
+            //may be occur DeadSystemException
+            return null;
+        }
+        if (appProcessList == null) {
+            return null;
+        }
+        Set<Integer> pids = new HashSet<>(appProcessList.size());
+        for (ActivityManager.RunningAppProcessInfo ai : appProcessList) {
+            if (ai.uid == android.os.Process.myUid()) {
+                pids.add(ai.pid);
+            }
+        }
+        return pids;
+    }
+
     public static String getProcessName(Context context) {
         String processName = null;
         try {
@@ -0,0 +1,490 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * A small key-value store backed by an append-only journal.
+ * <p>
+ * Journal layout: magic(int), format version(int), generation(long), then records of
+ * payload length(int), crc32 of payload(int) and payload. Payload is a batch of key updates, so every record is
+ * applied atomically. Replay stops at the first truncated or corrupted record, which drops a torn tail left by a crash.
+ * Keys and values are length-prefixed UTF-8 bytes, a record is limited to {@link #MAX_RECORD_SIZE}.
+ * <p>
+ * Journal is never modified in place, it is only appended or replaced by rename when compacted, and the generation
+ * increases on every replacement. The first record of a generation holds all values, it is rewritten once the journal
+ * grows beyond twice its size plus {@link #COMPACT_SLACK}, so compaction cost is amortized over the appended records.
+ * <p>
+ * Values are kept in memory. Reads only stat the journal and replay records appended since the last read when its
+ * length or modified time changes, writes always catch up with the journal under a lock file shared across processes.
+ */
+@RestrictTo(LIBRARY_GROUP)
+public final class SplitJournalStore {
+
+    private static final String TAG = "SplitJournalStore";
+
+    private static final int MAGIC = 0x514a524e;
+
+    /**
+     * Version 1 encodes strings with {@link DataOutputStream#writeUTF(String)}, it is still readable and is replaced by
+     * current version on next write.
+     */
+    private static final int FORMAT_VERSION_UTF = 1;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private static final int COMPACT_SLACK = 16 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private static final Map<File, SplitJournalStore> sStores = new HashMap<>();
+
+    private final File journalFile;
+
+    private final File lockFile;
+
+    private final Object writeLock = new Object();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private SplitJournalStore(File journalFile) {
+        this.journalFile = journalFile;
+        this.lockFile = new File(journalFile.getPath() + LOCK_SUFFIX);
+    }
+
+    /**
+     * @return shared store of {@code journalFile} in current process.
+     */
+    public static SplitJournalStore get(@NonNull File journalFile) {
+        File key = journalFile.getAbsoluteFile();
+        synchronized (sStores) {
+            SplitJournalStore store = sStores.get(key);
+            if (store == null) {
+                store = new SplitJournalStore(key);
+                sStores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Update all keys in one atomic record under the cross-process lock.
+     */
+    public interface Mutation {
+
+        /**
+         * @param values latest values of store.
+         * @return keys to update, a {@code null} value removes the key. Return {@code null} or empty map if nothing changes.
+         */
+        @Nullable
+        Map<String, String> mutate(@NonNull Map<String, String> values);
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    @Nullable
+    public String get(@NonNull String key) {
+        return read().values.get(key);
+    }
+
+    /**
+     * @return an unmodifiable snapshot of all values.
+     */
+    @NonNull
+    public Map<String, String> getAll() {
+        return read().values;
+    }
+
+    public boolean put(@NonNull String key, @Nullable String value) {
+        return update(Collections.singletonMap(key, value));
+    }
+
+    public boolean update(@NonNull final Map<String, String> updates) {
+        return update(new Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                return updates;
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} if mutation is committed or there is nothing to commit.
+     */
+    public boolean update(@NonNull Mutation mutation) {
+        synchronized (writeLock) {
+            File parent = journalFile.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                SplitLog.w(TAG, "Failed to create dir " + parent.getAbsolutePath());
+                return false;
+            }
+            RandomAccessFile lockRaf = null;
+            FileLock lock = null;
+            try {
+                lockRaf = new RandomAccessFile(lockFile, "rw");
+                lock = lockRaf.getChannel().lock();
+                Snapshot current = read(true);
+                Map<String, String> updates = mutation.mutate(current.values);
+                if (updates == null || updates.isEmpty()) {
+                    return true;
+                }
+                Map<String, String> newValues = new HashMap<>(current.values);
+                apply(updates, newValues);
+                byte[] record = encodeRecord(updates);
+                Snapshot committed;
+                if (current.generation == Snapshot.NO_GENERATION
+                        || current.formatVersion != FORMAT_VERSION
+                        || current.validLength != current.fileLength
+                        || current.validLength + record.length > 2 * current.baseLength + COMPACT_SLACK) {
+                    //missing or old journal, torn tail or large journal, rewrite it instead of appending.
+                    committed = compact(newValues, Math.max(current.generation + 1, System.currentTimeMillis()));
+                } else {
+                    committed = append(record, current, newValues);
+                }
+                snapshot = committed;
+                return true;
+            } catch (IOException e) {
+                SplitLog.printErrStackTrace(TAG, e, "Failed to update journal " + journalFile.getAbsolutePath());
+                return false;
+            } finally {
+                if (lock != null) {
+                    try {
+                        lock.release();
+                    } catch (IOException ignored) {
+                        //ignored
+                    }
+                }
+                FileUtil.closeQuietly(lockRaf);
+            }
+        }
+    }
+
+    private Snapshot read() {
+        return read(false);
+    }
+
+    /**
+     * Read journal without any lock, only records appended after last read are replayed.
+     *
+     * @param force whether to open journal even if its length and modified time are unchanged, a journal compacted
+     *              by another process to the same length within the resolution of modified time is only seen then.
+     */
+    private Snapshot read(boolean force) {
+        Snapshot current = snapshot;
+        long lastModified = journalFile.lastModified();
+        if (!force && current.lastModified == lastModified && current.fileLength == journalFile.length()) {
+            return current;
+        }
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(journalFile, "r");
+        } catch (FileNotFoundException e) {
+            return publish(Snapshot.EMPTY);
+        }
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                return publish(Snapshot.invalid(length, lastModified));
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int formatVersion = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC || (formatVersion != FORMAT_VERSION && formatVersion != FORMAT_VERSION_UTF)) {
+                SplitLog.w(TAG, "Bad header of journal " + journalFile.getAbsolutePath());
+                return publish(Snapshot.invalid(length, lastModified));
+            }
+            long generation = buffer.getLong(8);
+            Map<String, String> values;
+            int baseLength;
+            int position;
+            if (current.generation == generation && current.formatVersion == formatVersion && current.validLength <= length) {
+                if (current.validLength == length && current.fileLength == length) {
+                    return publish(current.touch(lastModified));
+                }
+                values = new HashMap<>(current.values);
+                baseLength = current.baseLength;
+                position = replay(buffer, current.validLength, formatVersion, values, Integer.MAX_VALUE);
+            } else {
+                values = new HashMap<>();
+                baseLength = replay(buffer, HEADER_SIZE, formatVersion, values, 1);
+                position = replay(buffer, baseLength, formatVersion, values, Integer.MAX_VALUE);
+            }
+            return publish(new Snapshot(generation, formatVersion, baseLength, position, length, lastModified, values));
+        } catch (IOException e) {
+            SplitLog.printErrStackTrace(TAG, e, "Failed to read journal " + journalFile.getAbsolutePath());
+            return Snapshot.EMPTY;
+        } finally {
+            FileUtil.closeQuietly(raf);
+        }
+    }
+
+    private Snapshot publish(Snapshot newSnapshot) {
+        snapshot = newSnapshot;
+        return newSnapshot;
+    }
+
+    /**
+     * @return end position of last valid record.
+     */
+    private static int replay(ByteBuffer buffer, int position, int formatVersion, Map<String, String> values, int maxRecords) {
+        int limit = buffer.limit();
+        CRC32 crc32 = new CRC32();
+        int records = 0;
+        while (records < maxRecords && limit - position >= RECORD_HEADER_SIZE) {
+            int size = buffer.getInt(position);
+            if (size <= 0 || size > MAX_RECORD_SIZE || size > limit - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            byte[] payload = new byte[size];
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + RECORD_HEADER_SIZE);
+            record.get(payload);
+            crc32.reset();
+            crc32.update(payload);
+            if ((int) crc32.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            Map<String, String> updates;
+            try {
+                updates = decodePayload(payload, formatVersion);
+            } catch (IOException e) {
+                break;
+            }
+            apply(updates, values);
+            position += RECORD_HEADER_SIZE + size;
+            records++;
+        }
+        return position;
+    }
+
+    private Snapshot append(byte[] record, Snapshot current, Map<String, String> newValues) throws IOException {
+        FileOutputStream os = new FileOutputStream(journalFile, true);
+        try {
+            os.write(record);
+        } finally {
+            FileUtil.closeQuietly(os);
+        }
+        long validLength = current.validLength + record.length;
+        return new Snapshot(current.generation, FORMAT_VERSION, current.baseLength, (int) validLength, validLength,
+                journalFile.lastModified(), newValues);
+    }
+
+    private Snapshot compact(Map<String, String> values, long generation) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(MAGIC);
+        dos.writeInt(FORMAT_VERSION);
+        dos.writeLong(generation);
+        //base record is written even if it is empty, so its end tells how large the compacted journal is.
+        dos.write(encodeRecord(values));
+        dos.flush();
+        byte[] content = bos.toByteArray();
+        File tmpFile = new File(journalFile.getPath() + "." + Process.myPid() + ".tmp");
+        FileOutputStream os = new FileOutputStream(tmpFile);
+        try {
+            os.write(content);
+            os.getFD().sync();
+        } finally {
+            FileUtil.closeQuietly(os);
+        }
+        if (!tmpFile.renameTo(journalFile)) {
+            FileUtil.deleteFileSafely(tmpFile);
+            throw new IOException("Failed to rename " + tmpFile.getAbsolutePath() + " to " + journalFile.getAbsolutePath());
+        }
+        SplitLog.i(TAG, "Journal %s is compacted, generation %d", journalFile.getName(), generation);
+        return new Snapshot(generation, FORMAT_VERSION, content.length, content.length, content.length,
+                journalFile.lastModified(), values);
+    }
+
+    private static byte[] encodeRecord(Map<String, String> updates) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(updates.size());
+        for (Map.Entry<String, String> entry : updates.entrySet()) {
+            writeString(dos, entry.getKey());
+            writeString(dos, entry.getValue());
+        }
+        dos.flush();
+        byte[] payload = bos.toByteArray();
+        if (payload.length > MAX_RECORD_SIZE) {
+            throw new IOException("Journal record of " + payload.length + " bytes exceeds " + MAX_RECORD_SIZE);
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc32.getValue());
+        record.put(payload);
+        return record.array();
+    }
+
+    /**
+     * Write length of UTF-8 bytes and bytes, length is -1 for {@code null}.
+     */
+    private static void writeString(DataOutputStream dos, @Nullable String value) throws IOException {
+        if (value == null) {
+            dos.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(DataInputStream dis) throws IOException {
+        int length = dis.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > dis.available()) {
+            throw new IOException("Bad string length of journal record " + length);
+        }
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static Map<String, String> decodePayload(byte[] payload, int formatVersion) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = dis.readInt();
+        if (count < 0) {
+            throw new IOException("Bad count of journal record " + count);
+        }
+        Map<String, String> updates = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (formatVersion == FORMAT_VERSION_UTF) {
+                String key = dis.readUTF();
+                updates.put(key, dis.readBoolean() ? dis.readUTF() : null);
+            } else {
+                String key = readString(dis);
+                if (key == null) {
+                    throw new IOException("Null key of journal record");
+                }
+                updates.put(key, readString(dis));
+            }
+        }
+        if (dis.available() != 0) {
+            throw new IOException("Unexpected data at the end of journal record");
+        }
+        return updates;
+    }
+
+    private static void apply(Map<String, String> updates, Map<String, String> values) {
+        for (Map.Entry<String, String> entry : updates.entrySet()) {
+            if (entry.getValue() == null) {
+                values.remove(entry.getKey());
+            } else {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static final class Snapshot {
+
+        static final long NO_GENERATION = 0;
+
+        /**
+         * Snapshot of a missing journal, whose length and modified time are both 0.
+         */
+        static final Snapshot EMPTY = invalid(0, 0);
+
+        final long generation;
+
+        final int formatVersion;
+
+        /**
+         * End of the first record, which holds all values when the journal is compacted.
+         */
+        final int baseLength;
+
+        /**
+         * End of the last valid record.
+         */
+        final int validLength;
+
+        final long fileLength;
+
+        final long lastModified;
+
+        final Map<String, String> values;
+
+        Snapshot(long generation, int formatVersion, int baseLength, int validLength,
+                 long fileLength, long lastModified, Map<String, String> values) {
+            this.generation = generation;
+            this.formatVersion = formatVersion;
+            this.baseLength = baseLength;
+            this.validLength = validLength;
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+            this.values = Collections.unmodifiableMap(values);
+        }
+
+        static Snapshot invalid(long fileLength, long lastModified) {
+            return new Snapshot(NO_GENERATION, FORMAT_VERSION, 0, 0, fileLength, lastModified, Collections.<String, String>emptyMap());
+        }
+
+        Snapshot touch(long lastModified) {
+            return lastModified == this.lastModified ? this
+                    : new Snapshot(generation, formatVersion, baseLength, validLength, fileLength, lastModified, values);
+        }
+    }
+}
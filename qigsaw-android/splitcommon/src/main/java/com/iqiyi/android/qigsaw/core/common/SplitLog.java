@@ -4,6 +4,18 @@ public class SplitLog {
 
     private static final String TAG = "Split.SplitLog";
 
+    public static final int VERBOSE = android.util.Log.VERBOSE;
+
+    public static final int DEBUG = android.util.Log.DEBUG;
+
+    public static final int INFO = android.util.Log.INFO;
+
+    public static final int WARN = android.util.Log.WARN;
+
+    public static final int ERROR = android.util.Log.ERROR;
+
+    private static final Object[] NO_PARAMS = new Object[0];
+
     private SplitLog() {
 
     }
@@ -75,7 +87,10 @@ public class SplitLog {
             android.util.Log.e(tag, log);
         }
     };
-    private static Logger splitLogImp = defaultLogger;
+
+    private static volatile Logger splitLogImp = defaultLogger;
+
+    private static volatile int minLevel = VERBOSE;
 
     public static void setSplitLogImp(Logger imp) {
         splitLogImp = imp;
@@ -85,69 +100,266 @@ public class SplitLog {
         return splitLogImp;
     }
 
+    /**
+     * Logs below {@code level} are dropped before they are formatted or passed to {@link Logger}.
+     *
+     * @param level one of {@link #VERBOSE}, {@link #DEBUG}, {@link #INFO}, {@link #WARN} and {@link #ERROR}.
+     */
+    public static void setLevel(int level) {
+        minLevel = level;
+    }
+
+    public static int getLevel() {
+        return minLevel;
+    }
+
+    /**
+     * @return {@code true} if logs of {@code level} are passed to {@link Logger}, callers could check it
+     * before computing expensive parameters.
+     */
+    public static boolean isLoggable(int level) {
+        return level >= minLevel && splitLogImp != null;
+    }
+
+    private static Logger loggerFor(int level) {
+        return level >= minLevel ? splitLogImp : null;
+    }
+
+    public static void v(final String tag, final String msg) {
+        Logger logger = loggerFor(VERBOSE);
+        if (logger != null) {
+            logger.v(tag, msg, NO_PARAMS);
+        }
+    }
+
+    public static void v(final String tag, final String msg, final Object arg) {
+        Logger logger = loggerFor(VERBOSE);
+        if (logger != null) {
+            logger.v(tag, msg, new Object[]{arg});
+        }
+    }
+
+    public static void v(final String tag, final String msg, final Object arg1, final Object arg2) {
+        Logger logger = loggerFor(VERBOSE);
+        if (logger != null) {
+            logger.v(tag, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void v(final String tag, final String msg, final Object arg1, final Object arg2, final Object arg3) {
+        Logger logger = loggerFor(VERBOSE);
+        if (logger != null) {
+            logger.v(tag, msg, new Object[]{arg1, arg2, arg3});
+        }
+    }
+
     public static void v(final String tag, final String msg, final Object... obj) {
-        if (splitLogImp != null) {
-            splitLogImp.v(tag, msg, obj);
+        Logger logger = loggerFor(VERBOSE);
+        if (logger != null) {
+            logger.v(tag, msg, obj);
         }
     }
 
     public static void v(final String tag, final String msg, final Throwable error) {
-        if (splitLogImp != null) {
-            splitLogImp.v(tag, msg, error);
+        Logger logger = loggerFor(VERBOSE);
+        if (logger != null) {
+            logger.v(tag, msg, error);
+        }
+    }
+
+    public static void e(final String tag, final String msg) {
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.e(tag, msg, NO_PARAMS);
+        }
+    }
+
+    public static void e(final String tag, final String msg, final Object arg) {
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.e(tag, msg, new Object[]{arg});
+        }
+    }
+
+    public static void e(final String tag, final String msg, final Object arg1, final Object arg2) {
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.e(tag, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void e(final String tag, final String msg, final Object arg1, final Object arg2, final Object arg3) {
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.e(tag, msg, new Object[]{arg1, arg2, arg3});
         }
     }
 
     public static void e(final String tag, final String msg, final Object... obj) {
-        if (splitLogImp != null) {
-            splitLogImp.e(tag, msg, obj);
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.e(tag, msg, obj);
         }
     }
 
     public static void e(final String tag, final String msg, final Throwable error) {
-        if (splitLogImp != null) {
-            splitLogImp.e(tag, msg, error);
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.e(tag, msg, error);
+        }
+    }
+
+    public static void w(final String tag, final String msg) {
+        Logger logger = loggerFor(WARN);
+        if (logger != null) {
+            logger.w(tag, msg, NO_PARAMS);
+        }
+    }
+
+    public static void w(final String tag, final String msg, final Object arg) {
+        Logger logger = loggerFor(WARN);
+        if (logger != null) {
+            logger.w(tag, msg, new Object[]{arg});
+        }
+    }
+
+    public static void w(final String tag, final String msg, final Object arg1, final Object arg2) {
+        Logger logger = loggerFor(WARN);
+        if (logger != null) {
+            logger.w(tag, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void w(final String tag, final String msg, final Object arg1, final Object arg2, final Object arg3) {
+        Logger logger = loggerFor(WARN);
+        if (logger != null) {
+            logger.w(tag, msg, new Object[]{arg1, arg2, arg3});
         }
     }
 
     public static void w(final String tag, final String msg, final Object... obj) {
-        if (splitLogImp != null) {
-            splitLogImp.w(tag, msg, obj);
+        Logger logger = loggerFor(WARN);
+        if (logger != null) {
+            logger.w(tag, msg, obj);
         }
     }
 
     public static void w(final String tag, final String msg, final Throwable error) {
-        if (splitLogImp != null) {
-            splitLogImp.w(tag, msg, error);
+        Logger logger = loggerFor(WARN);
+        if (logger != null) {
+            logger.w(tag, msg, error);
+        }
+    }
+
+    public static void i(final String tag, final String msg) {
+        Logger logger = loggerFor(INFO);
+        if (logger != null) {
+            logger.i(tag, msg, NO_PARAMS);
+        }
+    }
+
+    public static void i(final String tag, final String msg, final Object arg) {
+        Logger logger = loggerFor(INFO);
+        if (logger != null) {
+            logger.i(tag, msg, new Object[]{arg});
+        }
+    }
+
+    public static void i(final String tag, final String msg, final Object arg1, final Object arg2) {
+        Logger logger = loggerFor(INFO);
+        if (logger != null) {
+            logger.i(tag, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void i(final String tag, final String msg, final Object arg1, final Object arg2, final Object arg3) {
+        Logger logger = loggerFor(INFO);
+        if (logger != null) {
+            logger.i(tag, msg, new Object[]{arg1, arg2, arg3});
         }
     }
 
     public static void i(final String tag, final String msg, final Object... obj) {
-        if (splitLogImp != null) {
-            splitLogImp.i(tag, msg, obj);
+        Logger logger = loggerFor(INFO);
+        if (logger != null) {
+            logger.i(tag, msg, obj);
         }
     }
 
     public static void i(final String tag, final String msg, final Throwable error) {
-        if (splitLogImp != null) {
-            splitLogImp.i(tag, msg, error);
+        Logger logger = loggerFor(INFO);
+        if (logger != null) {
+            logger.i(tag, msg, error);
+        }
+    }
+
+    public static void d(final String tag, final String msg) {
+        Logger logger = loggerFor(DEBUG);
+        if (logger != null) {
+            logger.d(tag, msg, NO_PARAMS);
+        }
+    }
+
+    public static void d(final String tag, final String msg, final Object arg) {
+        Logger logger = loggerFor(DEBUG);
+        if (logger != null) {
+            logger.d(tag, msg, new Object[]{arg});
+        }
+    }
+
+    public static void d(final String tag, final String msg, final Object arg1, final Object arg2) {
+        Logger logger = loggerFor(DEBUG);
+        if (logger != null) {
+            logger.d(tag, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void d(final String tag, final String msg, final Object arg1, final Object arg2, final Object arg3) {
+        Logger logger = loggerFor(DEBUG);
+        if (logger != null) {
+            logger.d(tag, msg, new Object[]{arg1, arg2, arg3});
         }
     }
 
     public static void d(final String tag, final String msg, final Object... obj) {
-        if (splitLogImp != null) {
-            splitLogImp.d(tag, msg, obj);
+        Logger logger = loggerFor(DEBUG);
+        if (logger != null) {
+            logger.d(tag, msg, obj);
         }
     }
 
     public static void d(final String tag, final String msg, final Throwable error) {
-        if (splitLogImp != null) {
-            splitLogImp.d(tag, msg, error);
+        Logger logger = loggerFor(DEBUG);
+        if (logger != null) {
+            logger.d(tag, msg, error);
+        }
+    }
+
+    public static void printErrStackTrace(String tag, Throwable tr, final String format) {
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.printErrStackTrace(tag, tr, format, NO_PARAMS);
+        }
+    }
+
+    public static void printErrStackTrace(String tag, Throwable tr, final String format, final Object arg) {
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.printErrStackTrace(tag, tr, format, new Object[]{arg});
+        }
+    }
+
+    public static void printErrStackTrace(String tag, Throwable tr, final String format, final Object arg1, final Object arg2) {
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.printErrStackTrace(tag, tr, format, new Object[]{arg1, arg2});
         }
     }
 
     public static void printErrStackTrace(String tag, Throwable tr, final String format, final Object... obj) {
-        if (splitLogImp != null) {
-            splitLogImp.printErrStackTrace(tag, tr, format, obj);
+        Logger logger = loggerFor(ERROR);
+        if (logger != null) {
+            logger.printErrStackTrace(tag, tr, format, obj);
         }
     }
 
@@ -0,0 +1,386 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * Lightweight tracing of install and load phases.
+ * <p>
+ * A span is opened by {@link #begin} and closed by {@link #end} on the same thread, spans opened inside it on that thread
+ * are nested in it and inherit its split name. Spans are kept in a ring buffer allocated by {@link #enable}, so recording
+ * a span allocates nothing but the string of its attributes, and oldest spans are overwritten when it is full.
+ * When tracing is disabled, {@link #begin} only reads one volatile field and returns {@link #NO_SPAN}.
+ */
+@RestrictTo(LIBRARY_GROUP)
+public final class SplitTrace {
+
+    public static final long NO_SPAN = -1L;
+
+    public static final String CATEGORY_INSTALL = "install";
+
+    public static final String CATEGORY_LOAD = "load";
+
+    public static final String CATEGORY_INFO = "info";
+
+    static final int MAX_ATTRIBUTES = 4;
+
+    static final int MAX_DEPTH = 32;
+
+    /**
+     * Sequence of spans across buffers, so a span begun before {@link #enable} is called again never matches a new slot.
+     */
+    private static final AtomicLong sNextSeq = new AtomicLong();
+
+    private static final ThreadLocal<SpanStack> sStacks = new ThreadLocal<SpanStack>() {
+        @Override
+        protected SpanStack initialValue() {
+            return new SpanStack();
+        }
+    };
+
+    private static volatile SpanBuffer sBuffer;
+
+    private SplitTrace() {
+
+    }
+
+    /**
+     * Start recording spans into a new buffer of {@code capacity} spans, {@code capacity <= 0} disables tracing.
+     */
+    public static void enable(int capacity) {
+        sBuffer = capacity > 0 ? new SpanBuffer(capacity, sNextSeq.get()) : null;
+    }
+
+    public static void disable() {
+        sBuffer = null;
+    }
+
+    public static boolean isEnabled() {
+        return sBuffer != null;
+    }
+
+    /**
+     * @return sequence of next span, pass it to {@link #collect} to get spans begun after now.
+     */
+    public static long mark() {
+        return sBuffer == null ? NO_SPAN : sNextSeq.get();
+    }
+
+    public static long begin(@NonNull String category, @NonNull String name) {
+        return begin(category, name, null);
+    }
+
+    /**
+     * @param split name of split this span belongs to, {@code null} to inherit it from enclosing span.
+     * @return id of span which is passed to {@link #end}, or {@link #NO_SPAN} if tracing is disabled.
+     */
+    public static long begin(@NonNull String category, @NonNull String name, @Nullable String split) {
+        SpanBuffer buffer = sBuffer;
+        if (buffer == null) {
+            return NO_SPAN;
+        }
+        return buffer.begin(category, name, split, sStacks.get());
+    }
+
+    /**
+     * Add an attribute to an open span, attributes beyond {@link #MAX_ATTRIBUTES} are dropped.
+     */
+    public static void attr(long span, @NonNull String key, @Nullable Object value) {
+        if (span == NO_SPAN) {
+            return;
+        }
+        SpanBuffer buffer = sBuffer;
+        if (buffer != null) {
+            buffer.attr(span, key, String.valueOf(value));
+        }
+    }
+
+    public static void end(long span) {
+        if (span == NO_SPAN) {
+            return;
+        }
+        long endTime = System.nanoTime();
+        sStacks.get().pop(span);
+        SpanBuffer buffer = sBuffer;
+        if (buffer != null) {
+            buffer.end(span, endTime);
+        }
+    }
+
+    /**
+     * @return finished spans still in buffer, in order they are begun.
+     */
+    @NonNull
+    public static List<Span> snapshot() {
+        return collect(null, 0);
+    }
+
+    /**
+     * @param split name of split, {@code null} to collect spans of all splits.
+     * @param since value of {@link #mark()}, spans begun before it are skipped.
+     * @return finished spans in order they are begun.
+     */
+    @NonNull
+    public static List<Span> collect(@Nullable String split, long since) {
+        SpanBuffer buffer = sBuffer;
+        if (buffer == null || since == NO_SPAN) {
+            return Collections.emptyList();
+        }
+        return buffer.collect(split, since);
+    }
+
+    public static final class Span {
+
+        public final long seq;
+
+        public final String category;
+
+        public final String name;
+
+        @Nullable
+        public final String split;
+
+        public final long threadId;
+
+        /**
+         * Number of spans enclosing this span on its thread.
+         */
+        public final int depth;
+
+        /**
+         * {@link System#nanoTime()} when span is begun.
+         */
+        public final long startNanos;
+
+        public final long durationNanos;
+
+        public final Map<String, String> attributes;
+
+        Span(long seq, String category, String name, @Nullable String split, long threadId, int depth,
+             long startNanos, long durationNanos, Map<String, String> attributes) {
+            this.seq = seq;
+            this.category = category;
+            this.name = name;
+            this.split = split;
+            this.threadId = threadId;
+            this.depth = depth;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Open spans of one thread.
+     */
+    private static final class SpanStack {
+
+        final long[] spans = new long[MAX_DEPTH];
+
+        final String[] splits = new String[MAX_DEPTH];
+
+        /**
+         * Depth of open spans, may exceed {@link #MAX_DEPTH} while spans beyond it are not kept.
+         */
+        int depth;
+
+        String currentSplit() {
+            int top = Math.min(depth, MAX_DEPTH) - 1;
+            return top < 0 ? null : splits[top];
+        }
+
+        void push(long span, String split) {
+            if (depth < MAX_DEPTH) {
+                spans[depth] = span;
+                splits[depth] = split;
+            }
+            depth++;
+        }
+
+        /**
+         * Pop {@code span} and spans left open inside it.
+         */
+        void pop(long span) {
+            for (int i = Math.min(depth, MAX_DEPTH) - 1; i >= 0; i--) {
+                if (spans[i] == span) {
+                    for (int j = i; j < Math.min(depth, MAX_DEPTH); j++) {
+                        splits[j] = null;
+                    }
+                    depth = i;
+                    return;
+                }
+            }
+            if (depth > MAX_DEPTH) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Slots of spans, a slot is only written by thread which begins its span and is published by {@link #seqs}.
+     * Readers check sequence of slot before and after reading it, so a slot overwritten meanwhile is skipped.
+     */
+    private static final class SpanBuffer {
+
+        private static final long OPEN = -1L;
+
+        final int capacity;
+
+        final long firstSeq;
+
+        final AtomicLongArray seqs;
+
+        final AtomicLongArray durations;
+
+        final String[] categories;
+
+        final String[] names;
+
+        final String[] splits;
+
+        final long[] threadIds;
+
+        final int[] depths;
+
+        final long[] starts;
+
+        final String[] attrKeys;
+
+        final String[] attrValues;
+
+        SpanBuffer(int capacity, long firstSeq) {
+            this.capacity = capacity;
+            this.firstSeq = firstSeq;
+            this.seqs = new AtomicLongArray(capacity);
+            this.durations = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                seqs.set(i, NO_SPAN);
+            }
+            this.categories = new String[capacity];
+            this.names = new String[capacity];
+            this.splits = new String[capacity];
+            this.threadIds = new long[capacity];
+            this.depths = new int[capacity];
+            this.starts = new long[capacity];
+            this.attrKeys = new String[capacity * MAX_ATTRIBUTES];
+            this.attrValues = new String[capacity * MAX_ATTRIBUTES];
+        }
+
+        long begin(String category, String name, String split, SpanStack stack) {
+            long seq = sNextSeq.getAndIncrement();
+            int slot = slot(seq);
+            seqs.set(slot, NO_SPAN);
+            String spanSplit = split != null ? split : stack.currentSplit();
+            categories[slot] = category;
+            names[slot] = name;
+            splits[slot] = spanSplit;
+            threadIds[slot] = Thread.currentThread().getId();
+            depths[slot] = stack.depth;
+            int attrStart = slot * MAX_ATTRIBUTES;
+            for (int i = attrStart; i < attrStart + MAX_ATTRIBUTES; i++) {
+                attrKeys[i] = null;
+                attrValues[i] = null;
+            }
+            durations.set(slot, OPEN);
+            stack.push(seq, spanSplit);
+            starts[slot] = System.nanoTime();
+            seqs.set(slot, seq);
+            return seq;
+        }
+
+        void attr(long span, String key, String value) {
+            int slot = slot(span);
+            if (seqs.get(slot) != span) {
+                return;
+            }
+            int attrStart = slot * MAX_ATTRIBUTES;
+            for (int i = attrStart; i < attrStart + MAX_ATTRIBUTES; i++) {
+                if (attrKeys[i] == null || attrKeys[i].equals(key)) {
+                    attrValues[i] = value;
+                    attrKeys[i] = key;
+                    return;
+                }
+            }
+        }
+
+        void end(long span, long endTime) {
+            if (span < firstSeq) {
+                return;
+            }
+            int slot = slot(span);
+            if (seqs.get(slot) == span) {
+                durations.set(slot, endTime - starts[slot]);
+            }
+        }
+
+        List<Span> collect(@Nullable String split, long since) {
+            long next = sNextSeq.get();
+            long first = Math.max(Math.max(firstSeq, since), next - capacity);
+            List<Span> spans = new ArrayList<>();
+            for (long seq = first; seq < next; seq++) {
+                int slot = slot(seq);
+                if (seqs.get(slot) != seq) {
+                    continue;
+                }
+                long duration = durations.get(slot);
+                String spanSplit = splits[slot];
+                if (duration == OPEN || (split != null && !split.equals(spanSplit))) {
+                    continue;
+                }
+                Map<String, String> attributes = new LinkedHashMap<>();
+                int attrStart = slot * MAX_ATTRIBUTES;
+                for (int i = attrStart; i < attrStart + MAX_ATTRIBUTES; i++) {
+                    String key = attrKeys[i];
+                    if (key != null) {
+                        attributes.put(key, attrValues[i]);
+                    }
+                }
+                Span span = new Span(seq, categories[slot], names[slot], spanSplit, threadIds[slot], depths[slot],
+                        starts[slot], duration, Collections.unmodifiableMap(attributes));
+                if (seqs.get(slot) == seq) {
+                    spans.add(span);
+                }
+            }
+            return spans;
+        }
+
+        private int slot(long seq) {
+            return (int) (seq % capacity);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * Write spans of {@link SplitTrace} in Chrome trace event format, which can be opened by chrome://tracing or Perfetto.
+ * Every span is written as a complete event, nesting is restored from timestamps of events on the same thread.
+ */
+@RestrictTo(LIBRARY_GROUP)
+public final class SplitTraceExporter {
+
+    private static final String TAG = "SplitTraceExporter";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private SplitTraceExporter() {
+
+    }
+
+    /**
+     * @return {@code true} if all spans are written to {@code file}, which is replaced atomically.
+     */
+    public static boolean exportChromeTrace(@NonNull List<SplitTrace.Span> spans, @NonNull File file) {
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            writeChromeTrace(spans, Process.myPid(), writer);
+            writer.close();
+            writer = null;
+            if (tmp.renameTo(file)) {
+                return true;
+            }
+            SplitLog.w(TAG, "Failed to rename " + tmp.getAbsolutePath() + " to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            SplitLog.printErrStackTrace(TAG, e, "Failed to export trace to %s", file.getAbsolutePath());
+        } finally {
+            FileUtil.closeQuietly(writer);
+        }
+        FileUtil.deleteFileSafely(tmp);
+        return false;
+    }
+
+    static void writeChromeTrace(List<SplitTrace.Span> spans, int pid, Writer writer) throws IOException {
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            SplitTrace.Span span = spans.get(i);
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("\n{\"ph\":\"X\",\"name\":");
+            writer.write(JSONObject.quote(span.name));
+            writer.write(",\"cat\":");
+            writer.write(JSONObject.quote(span.category));
+            writer.write(",\"pid\":");
+            writer.write(Integer.toString(pid));
+            writer.write(",\"tid\":");
+            writer.write(Long.toString(span.threadId));
+            writer.write(",\"ts\":");
+            writeMicros(span.startNanos, writer);
+            writer.write(",\"dur\":");
+            writeMicros(span.durationNanos, writer);
+            writer.write(",\"args\":{");
+            boolean first = true;
+            if (span.split != null) {
+                writer.write("\"split\":");
+                writer.write(JSONObject.quote(span.split));
+                first = false;
+            }
+            for (Map.Entry<String, String> attribute : span.attributes.entrySet()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writer.write(JSONObject.quote(attribute.getKey()));
+                writer.write(':');
+                writer.write(JSONObject.quote(attribute.getValue()));
+                first = false;
+            }
+            writer.write("}}");
+        }
+        writer.write("\n]}\n");
+    }
+
+    /**
+     * Timestamps of trace events are microseconds, fractions are kept so that short spans are not rounded to zero.
+     */
+    private static void writeMicros(long nanos, Writer writer) throws IOException {
+        writer.write(Long.toString(nanos / 1000));
+        long fraction = Math.abs(nanos % 1000);
+        if (fraction != 0) {
+            writer.write('.');
+            if (fraction < 100) {
+                writer.write('0');
+            }
+            if (fraction < 10) {
+                writer.write('0');
+            }
+            writer.write(Long.toString(fraction));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncSplitLoggerTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new AsyncSplitLogger(new RecordingLogger(), 0);
+    }
+
+    @Test
+    public void logsAreDeliveredInOrder() throws InterruptedException {
+        RecordingLogger delegate = new RecordingLogger();
+        AsyncSplitLogger logger = new AsyncSplitLogger(delegate, 16);
+        logger.v("Split", "v %s", "a");
+        logger.d("Split", "d", new RuntimeException("d"));
+        logger.i("Split", "i");
+        logger.w("Split", "w", new RuntimeException("w"));
+        logger.e("Split", "e %s %s", "a", "b");
+        logger.printErrStackTrace("Split", new RuntimeException("t"), "t %s", "a");
+
+        assertEquals(Arrays.asList("V/Split: v %s [a]", "D/Split: d d", "I/Split: i", "W/Split: w w",
+                "E/Split: e %s %s [a, b]", "T/Split: t %s [a] t"), delegate.awaitLogs(6));
+        assertEquals(0, logger.getDroppedCount());
+    }
+
+    @Test
+    public void logsOfEachThreadKeepTheirOrder() throws InterruptedException {
+        RecordingLogger delegate = new RecordingLogger();
+        final AsyncSplitLogger logger = new AsyncSplitLogger(delegate, 4096);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final String tag = "thread" + t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        logger.i(tag, String.valueOf(i));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<String> logs = delegate.awaitLogs(2000);
+        assertEquals(2000, logs.size());
+        int[] next = new int[4];
+        for (String log : logs) {
+            int thread = log.charAt("I/thread".length()) - '0';
+            assertEquals(log, "I/thread" + thread + ": " + next[thread], log);
+            next[thread]++;
+        }
+    }
+
+    @Test
+    public void fullBufferDropsNewLogsAndReportsThem() throws InterruptedException {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingLogger delegate = new RecordingLogger() {
+            @Override
+            void record(String level, String tag, String msg, Object[] obj, Throwable throwable) {
+                if ("blocking".equals(msg)) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                        //ignored
+                    }
+                }
+                super.record(level, tag, msg, obj, throwable);
+            }
+        };
+        AsyncSplitLogger logger = new AsyncSplitLogger(delegate, 4);
+        logger.i("Split", "blocking");
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            logger.i("Split", "log %d", i);
+        }
+        assertEquals(6, logger.getDroppedCount());
+        release.countDown();
+
+        List<String> logs = delegate.awaitLogs(6);
+        assertEquals(Arrays.asList("I/Split: blocking", "I/Split: log %d [0]", "I/Split: log %d [1]",
+                "I/Split: log %d [2]", "I/Split: log %d [3]",
+                "W/Split.AsyncSplitLogger: %d logs are dropped because logging is faster than writing [6]"), logs);
+        assertEquals(0, logger.getDroppedCount());
+
+        logger.i("Split", "after");
+        assertEquals("I/Split: after", delegate.awaitLogs(7).get(6));
+    }
+
+    @Test
+    public void failingDelegateKeepsLogging() throws InterruptedException {
+        RecordingLogger delegate = new RecordingLogger() {
+            @Override
+            void record(String level, String tag, String msg, Object[] obj, Throwable throwable) {
+                if ("broken".equals(msg)) {
+                    throw new IllegalStateException(msg);
+                }
+                super.record(level, tag, msg, obj, throwable);
+            }
+        };
+        AsyncSplitLogger logger = new AsyncSplitLogger(delegate, 4);
+        logger.e("Split", "broken");
+        logger.e("Split", "next");
+
+        assertEquals(Arrays.asList("E/Split: next"), delegate.awaitLogs(1));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records every call as a line of level, tag, message, parameters and throwable.
+ */
+class RecordingLogger implements SplitLog.Logger {
+
+    final List<String> logs = new ArrayList<>();
+
+    final List<Object[]> params = new ArrayList<>();
+
+    @Override
+    public void v(String tag, String msg, Object... obj) {
+        record("V", tag, msg, obj, null);
+    }
+
+    @Override
+    public void i(String tag, String msg, Object... obj) {
+        record("I", tag, msg, obj, null);
+    }
+
+    @Override
+    public void w(String tag, String msg, Object... obj) {
+        record("W", tag, msg, obj, null);
+    }
+
+    @Override
+    public void d(String tag, String msg, Object... obj) {
+        record("D", tag, msg, obj, null);
+    }
+
+    @Override
+    public void e(String tag, String msg, Object... obj) {
+        record("E", tag, msg, obj, null);
+    }
+
+    @Override
+    public void v(String tag, String msg, Throwable throwable) {
+        record("V", tag, msg, null, throwable);
+    }
+
+    @Override
+    public void i(String tag, String msg, Throwable throwable) {
+        record("I", tag, msg, null, throwable);
+    }
+
+    @Override
+    public void w(String tag, String msg, Throwable throwable) {
+        record("W", tag, msg, null, throwable);
+    }
+
+    @Override
+    public void d(String tag, String msg, Throwable throwable) {
+        record("D", tag, msg, null, throwable);
+    }
+
+    @Override
+    public void e(String tag, String msg, Throwable throwable) {
+        record("E", tag, msg, null, throwable);
+    }
+
+    @Override
+    public void printErrStackTrace(String tag, Throwable tr, String format, Object... obj) {
+        record("T", tag, format, obj, tr);
+    }
+
+    void record(String level, String tag, String msg, Object[] obj, Throwable throwable) {
+        synchronized (logs) {
+            StringBuilder log = new StringBuilder(level).append('/').append(tag).append(": ").append(msg);
+            if (obj != null && obj.length > 0) {
+                log.append(' ').append(Arrays.toString(obj));
+            }
+            if (throwable != null) {
+                log.append(' ').append(throwable.getMessage());
+            }
+            logs.add(log.toString());
+            params.add(obj);
+            logs.notifyAll();
+        }
+    }
+
+    List<String> awaitLogs(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (logs) {
+            while (logs.size() < count && System.currentTimeMillis() < deadline) {
+                logs.wait(deadline - System.currentTimeMillis());
+            }
+            return new ArrayList<>(logs);
+        }
+    }
+}
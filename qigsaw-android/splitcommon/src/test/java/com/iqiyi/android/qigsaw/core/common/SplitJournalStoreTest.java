@@ -0,0 +1,399 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SplitJournalStoreTest {
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int COMPACT_SLACK = 16 * 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void valuesAreVisibleToNewReader() throws IOException {
+        SplitJournalStore store = SplitJournalStore.get(folder.newFile("journal"));
+        assertTrue(store.put("a", "1"));
+        assertTrue(store.put("b", "2"));
+        assertTrue(store.put("a", null));
+        Map<String, String> expected = new HashMap<>();
+        expected.put("b", "2");
+        assertEquals(expected, store.getAll());
+        assertEquals(expected, reopen(store).getAll());
+    }
+
+    @Test
+    public void largeAndNonAsciiValuesRoundTrip() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 100 * 1024) {
+            builder.append("split\u0000中😀");
+        }
+        String value = builder.toString();
+        SplitJournalStore store = SplitJournalStore.get(folder.newFile("journal"));
+        assertTrue(store.put("😀key", value));
+        assertEquals(value, store.get("😀key"));
+        assertEquals(value, reopen(store).get("😀key"));
+    }
+
+    @Test
+    public void recordOverLimitIsRejected() throws IOException {
+        SplitJournalStore store = SplitJournalStore.get(folder.newFile("journal"));
+        assertTrue(store.put("a", "1"));
+        char[] chars = new char[2 * 1024 * 1024];
+        assertFalse(store.put("b", new String(chars)));
+        assertEquals("1", store.get("a"));
+        assertNull(reopen(store).get("b"));
+    }
+
+    @Test
+    public void truncatedJournalKeepsCommittedRecords() throws IOException {
+        File journal = folder.newFile("journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        List<Long> lengths = new ArrayList<>();
+        List<Map<String, String>> states = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Map<String, String> updates = new LinkedHashMap<>();
+            updates.put("key" + i, "value" + i);
+            updates.put("key" + (i - 1), i % 2 == 0 ? null : "changed" + i);
+            assertTrue(store.update(updates));
+            lengths.add(journal.length());
+            states.add(new HashMap<>(store.getAll()));
+        }
+        byte[] content = readFully(journal);
+        for (int offset = 0; offset <= content.length; offset++) {
+            File truncated = new File(folder.getRoot(), "truncated" + offset);
+            write(truncated, content, offset);
+            Map<String, String> expected = new HashMap<>();
+            for (int i = 0; i < lengths.size() && lengths.get(i) <= offset; i++) {
+                expected = states.get(i);
+            }
+            SplitJournalStore recovered = SplitJournalStore.get(truncated);
+            assertEquals("truncated at " + offset, expected, recovered.getAll());
+            //next write drops the torn tail.
+            assertTrue(recovered.put("after", "crash"));
+            expected = new HashMap<>(expected);
+            expected.put("after", "crash");
+            assertEquals("truncated at " + offset, expected, reopen(recovered).getAll());
+        }
+    }
+
+    @Test
+    public void corruptedRecordStopsReplay() throws IOException {
+        File journal = folder.newFile("journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        store.put("a", "1");
+        long secondStart = journal.length();
+        store.put("b", "2");
+        store.put("c", "3");
+        byte[] content = readFully(journal);
+        content[(int) secondStart + 8 + 6] ^= 0x5a;
+        File corrupted = new File(folder.getRoot(), "corrupted");
+        write(corrupted, content, content.length);
+        Map<String, String> expected = new HashMap<>();
+        expected.put("a", "1");
+        assertEquals(expected, SplitJournalStore.get(corrupted).getAll());
+    }
+
+    @Test
+    public void compactionIsAmortizedForOverwrittenKey() throws IOException {
+        File journal = folder.newFile("journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        char[] chars = new char[100];
+        Arrays.fill(chars, 'v');
+        String value = new String(chars);
+        int compactions = 0;
+        long generation = 0;
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(store.put("key", value + i));
+            long current = generation(journal);
+            if (current != generation) {
+                compactions++;
+                generation = current;
+            }
+            assertTrue(journal.length() <= 2 * 256 + COMPACT_SLACK + 256);
+        }
+        //a record takes about 130 bytes, so the journal is compacted about once every 120 writes.
+        assertTrue("compactions " + compactions, compactions >= 10 && compactions <= 25);
+        assertEquals(value + 1999, reopen(store).get("key"));
+    }
+
+    @Test
+    public void compactionIsAmortizedForGrowingValues() throws IOException {
+        File journal = folder.newFile("journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        int compactions = 0;
+        long generation = 0;
+        long written = 0;
+        long previousLength = 0;
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(store.put("key" + i, "value" + i));
+            long current = generation(journal);
+            if (current != generation) {
+                compactions++;
+                generation = current;
+                written += journal.length();
+            } else {
+                written += journal.length() - previousLength;
+            }
+            previousLength = journal.length();
+        }
+        assertTrue("compactions " + compactions, compactions <= 10);
+        assertTrue("written " + written + " of " + journal.length(), written <= 4 * journal.length() + 4 * COMPACT_SLACK);
+        assertEquals(5000, reopen(store).getAll().size());
+    }
+
+    @Test
+    public void unchangedJournalIsNotReadAgain() throws IOException {
+        File journal = folder.newFile("journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        store.put("a", "1");
+        long lastModified = journal.lastModified();
+        byte[] garbage = new byte[(int) journal.length()];
+        write(journal, garbage, garbage.length);
+        assertTrue(journal.setLastModified(lastModified));
+        assertEquals(lastModified, journal.lastModified());
+        assertEquals("1", store.get("a"));
+    }
+
+    @Test
+    public void recordsAppendedByAnotherProcessAreRead() throws IOException {
+        File journal = folder.newFile("journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        store.put("a", "1");
+        assertEquals("1", store.get("a"));
+        //the other process appends to the same file, copy it back as if it was written in place.
+        SplitJournalStore other = reopen(store);
+        other.put("b", "2");
+        byte[] content = readFully(other.getJournalFile());
+        FileOutputStream os = new FileOutputStream(journal, true);
+        try {
+            os.write(content, (int) journal.length(), content.length - (int) journal.length());
+        } finally {
+            os.close();
+        }
+        assertEquals("2", store.get("b"));
+        assertEquals("1", store.get("a"));
+    }
+
+    @Test
+    public void utfJournalIsReadAndUpgraded() throws IOException {
+        File journal = folder.newFile("journal");
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(payload);
+        dos.writeInt(2);
+        dos.writeUTF("a");
+        dos.writeBoolean(true);
+        dos.writeUTF("中");
+        dos.writeUTF("b");
+        dos.writeBoolean(false);
+        dos.flush();
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 + bytes.length);
+        buffer.putInt(0x514a524e).putInt(1).putLong(1).putInt(bytes.length).putInt((int) crc32.getValue()).put(bytes);
+        write(journal, buffer.array(), buffer.capacity());
+
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        assertEquals("中", store.get("a"));
+        assertTrue(store.put("c", "3"));
+        assertEquals(2, formatVersion(journal));
+        Map<String, String> expected = new HashMap<>();
+        expected.put("a", "中");
+        expected.put("c", "3");
+        assertEquals(expected, reopen(store).getAll());
+    }
+
+    @Test
+    public void concurrentThreadsDoNotLoseUpdates() throws Exception {
+        final SplitJournalStore store = SplitJournalStore.get(folder.newFile("journal"));
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        increment(store);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("400", store.get("counter"));
+        assertEquals("400", reopen(store).get("counter"));
+    }
+
+    @Test
+    public void concurrentProcessesDoNotLoseUpdates() throws Exception {
+        File journal = folder.newFile("journal");
+        String java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    Writer.class.getName(), journal.getAbsolutePath(), "writer" + i, "50")
+                    .redirectErrorStream(true)
+                    .start());
+        }
+        for (Process process : processes) {
+            byte[] output = readFully(process.getInputStream());
+            assertEquals(new String(output, "UTF-8"), 0, process.waitFor());
+        }
+        Map<String, String> values = SplitJournalStore.get(journal).getAll();
+        assertEquals("150", values.get("counter"));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("50", values.get("writer" + i));
+        }
+    }
+
+    /**
+     * Entry of a forked process which increments a shared counter and its own key.
+     */
+    public static final class Writer {
+
+        public static void main(String[] args) {
+            SplitJournalStore store = SplitJournalStore.get(new File(args[0]));
+            final String name = args[1];
+            int count = Integer.parseInt(args[2]);
+            for (int i = 0; i < count; i++) {
+                final int written = i + 1;
+                boolean success = store.update(new SplitJournalStore.Mutation() {
+                    @Override
+                    public Map<String, String> mutate(Map<String, String> values) {
+                        Map<String, String> updates = new HashMap<>();
+                        String counter = values.get("counter");
+                        updates.put("counter", String.valueOf(counter == null ? 1 : Integer.parseInt(counter) + 1));
+                        updates.put(name, String.valueOf(written));
+                        return updates;
+                    }
+                });
+                if (!success) {
+                    System.exit(1);
+                }
+            }
+            System.exit(0);
+        }
+    }
+
+    private static void increment(SplitJournalStore store) {
+        assertTrue(store.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(Map<String, String> values) {
+                String counter = values.get("counter");
+                Map<String, String> updates = new HashMap<>();
+                updates.put("counter", String.valueOf(counter == null ? 1 : Integer.parseInt(counter) + 1));
+                return updates;
+            }
+        }));
+    }
+
+    /**
+     * Stores are shared by path in a process, a copy of the journal is read as another process would do.
+     */
+    private SplitJournalStore reopen(SplitJournalStore store) throws IOException {
+        byte[] content = readFully(store.getJournalFile());
+        File copy = File.createTempFile("copy", null, folder.getRoot());
+        write(copy, content, content.length);
+        return SplitJournalStore.get(copy);
+    }
+
+    private static long generation(File journal) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(journal, "r");
+        try {
+            raf.seek(8);
+            return raf.readLong();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int formatVersion(File journal) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(journal, "r");
+        try {
+            raf.seek(4);
+            return raf.readInt();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream is = new FileInputStream(file);
+        try {
+            return readFully(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        return bos.toByteArray();
+    }
+
+    private static void write(File file, byte[] content, int length) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content, 0, length);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitLogTest {
+
+    private SplitLog.Logger defaultLogger;
+
+    private int defaultLevel;
+
+    private RecordingLogger logger;
+
+    @Before
+    public void setUp() {
+        defaultLogger = SplitLog.getImpl();
+        defaultLevel = SplitLog.getLevel();
+        logger = new RecordingLogger();
+        SplitLog.setSplitLogImp(logger);
+    }
+
+    @After
+    public void tearDown() {
+        SplitLog.setSplitLogImp(defaultLogger);
+        SplitLog.setLevel(defaultLevel);
+    }
+
+    @Test
+    public void logsBelowLevelAreDropped() {
+        SplitLog.setLevel(SplitLog.WARN);
+        SplitLog.v("Split", "v");
+        SplitLog.d("Split", "d %s", "a");
+        SplitLog.i("Split", "i %s %s", "a", "b");
+        SplitLog.w("Split", "w %s %s %s", "a", "b", "c");
+        SplitLog.e("Split", "e", new RuntimeException("error"));
+        SplitLog.printErrStackTrace("Split", new RuntimeException("trace"), "t %s", "a");
+
+        assertEquals(Arrays.asList("W/Split: w %s %s %s [a, b, c]", "E/Split: e error", "T/Split: t %s [a] trace"),
+                logger.logs);
+        assertFalse(SplitLog.isLoggable(SplitLog.INFO));
+        assertTrue(SplitLog.isLoggable(SplitLog.WARN));
+    }
+
+    @Test
+    public void parametersArePassedInOrder() {
+        Object[] varargs = {"a", "b", "c", "d"};
+        SplitLog.i("Split", "none");
+        SplitLog.i("Split", "one", "a");
+        SplitLog.i("Split", "two", "a", "b");
+        SplitLog.i("Split", "three", "a", "b", "c");
+        SplitLog.i("Split", "four", varargs);
+
+        assertArrayEquals(new Object[0], logger.params.get(0));
+        assertArrayEquals(new Object[]{"a"}, logger.params.get(1));
+        assertArrayEquals(new Object[]{"a", "b"}, logger.params.get(2));
+        assertArrayEquals(new Object[]{"a", "b", "c"}, logger.params.get(3));
+        assertTrue("varargs are passed as is", varargs == logger.params.get(4));
+    }
+
+    @Test
+    public void logsWithoutLoggerAreDropped() {
+        SplitLog.setSplitLogImp(null);
+        SplitLog.e("Split", "e %s", "a");
+        SplitLog.printErrStackTrace("Split", new RuntimeException(), "t");
+
+        assertFalse(SplitLog.isLoggable(SplitLog.ERROR));
+    }
+
+    @Test
+    public void filteredLogsAllocateNothing() {
+        SplitLog.setLevel(SplitLog.ERROR);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        logFiltered(200000, "a", "b", "c");
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        logFiltered(1000000, "a", "b", "c");
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(logger.logs.isEmpty());
+        //one parameter array per call would take more than 16MB, the rest is allocated by the measuring itself.
+        assertTrue("allocated " + allocated + " bytes for 1M filtered logs", allocated < 16 * 1024);
+    }
+
+    private static void logFiltered(int count, Object arg1, Object arg2, Object arg3) {
+        Throwable error = new RuntimeException();
+        for (int i = 0; i < count; i++) {
+            SplitLog.v("Split", "v");
+            SplitLog.d("Split", "d %s", arg1);
+            SplitLog.i("Split", "i %s %s", arg1, arg2);
+            SplitLog.w("Split", "w %s %s %s", arg1, arg2, arg3);
+            SplitLog.w("Split", "w", error);
+        }
+    }
+}
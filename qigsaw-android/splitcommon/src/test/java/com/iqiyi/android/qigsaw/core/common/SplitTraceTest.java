@@ -0,0 +1,292 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.common;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SplitTraceTest {
+
+    @Before
+    public void setUp() {
+        SplitTrace.enable(64);
+    }
+
+    @After
+    public void tearDown() {
+        SplitTrace.disable();
+    }
+
+    @Test
+    public void nestedSpansInheritSplitAndRecordDepth() {
+        long install = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "install", "java");
+        long verify = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "verify");
+        long md5 = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "md5");
+        SplitTrace.end(md5);
+        SplitTrace.end(verify);
+        long extract = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "extractLibs");
+        SplitTrace.end(extract);
+        SplitTrace.end(install);
+
+        List<SplitTrace.Span> spans = SplitTrace.snapshot();
+        assertEquals(Arrays.asList("install", "verify", "md5", "extractLibs"), names(spans));
+        assertEquals(Arrays.asList(0, 1, 2, 1), depths(spans));
+        for (SplitTrace.Span span : spans) {
+            assertEquals("java", span.split);
+            assertEquals(Thread.currentThread().getId(), span.threadId);
+        }
+        assertEnclosed(spans.get(0), spans.get(1));
+        assertEnclosed(spans.get(1), spans.get(2));
+        assertEnclosed(spans.get(0), spans.get(3));
+        assertTrue(spans.get(3).startNanos >= spans.get(1).startNanos + spans.get(1).durationNanos);
+    }
+
+    @Test
+    public void nestedSpanOfAnotherSplitKeepsItsOwnSplit() {
+        long load = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "load", "java");
+        long dependency = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "load", "native");
+        long code = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "loadCode");
+        SplitTrace.end(code);
+        SplitTrace.end(dependency);
+        long resources = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "loadResources");
+        SplitTrace.end(resources);
+        SplitTrace.end(load);
+
+        List<SplitTrace.Span> spans = SplitTrace.snapshot();
+        assertEquals(Arrays.asList("java", "native", "native", "java"), splits(spans));
+        assertEquals(Arrays.asList("load", "loadCode"), names(SplitTrace.collect("native", 0)));
+        assertEquals(Arrays.asList("load", "loadResources"), names(SplitTrace.collect("java", 0)));
+    }
+
+    @Test
+    public void endingOuterSpanClosesSpansLeftOpenInside() {
+        long outer = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "outer", "java");
+        SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "leaked");
+        SplitTrace.end(outer);
+        long next = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "next");
+        SplitTrace.end(next);
+
+        List<SplitTrace.Span> spans = SplitTrace.snapshot();
+        assertEquals("open span is not collected", Arrays.asList("outer", "next"), names(spans));
+        assertEquals(0, spans.get(1).depth);
+        assertNull("split is not inherited from closed span", spans.get(1).split);
+    }
+
+    @Test
+    public void spansOfOtherThreadsAreNotNested() throws InterruptedException {
+        long outer = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "outer", "java");
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SplitTrace.end(SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "worker"));
+            }
+        });
+        thread.start();
+        thread.join();
+        SplitTrace.end(outer);
+
+        List<SplitTrace.Span> spans = SplitTrace.snapshot();
+        assertEquals(Arrays.asList("outer", "worker"), names(spans));
+        assertEquals(0, spans.get(1).depth);
+        assertNull(spans.get(1).split);
+        assertEquals(thread.getId(), spans.get(1).threadId);
+    }
+
+    @Test
+    public void spansBeyondMaxDepthKeepDepthOfLaterSpans() {
+        int count = SplitTrace.MAX_DEPTH + 3;
+        long[] spans = new long[count];
+        for (int i = 0; i < count; i++) {
+            spans[i] = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "span" + i, i == 0 ? "java" : null);
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            SplitTrace.end(spans[i]);
+        }
+        long next = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "next");
+        SplitTrace.end(next);
+
+        List<SplitTrace.Span> recorded = SplitTrace.snapshot();
+        assertEquals(count + 1, recorded.size());
+        assertEquals(count - 1, recorded.get(count - 1).depth);
+        assertEquals("java", recorded.get(count - 1).split);
+        assertEquals(0, recorded.get(count).depth);
+    }
+
+    @Test
+    public void attributesAreOverwrittenAndCapped() {
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "extractLibs", "java");
+        SplitTrace.attr(span, "count", 1);
+        SplitTrace.attr(span, "count", 2);
+        for (int i = 0; i < SplitTrace.MAX_ATTRIBUTES; i++) {
+            SplitTrace.attr(span, "key" + i, i);
+        }
+        SplitTrace.end(span);
+        SplitTrace.attr(span, "late", true);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("count", "2");
+        for (int i = 0; i < SplitTrace.MAX_ATTRIBUTES - 1; i++) {
+            expected.put("key" + i, String.valueOf(i));
+        }
+        assertEquals(expected, SplitTrace.snapshot().get(0).attributes);
+    }
+
+    @Test
+    public void fullBufferKeepsLatestSpans() {
+        SplitTrace.enable(4);
+        long since = SplitTrace.mark();
+        for (int i = 0; i < 10; i++) {
+            SplitTrace.end(SplitTrace.begin(SplitTrace.CATEGORY_INFO, "span" + i));
+        }
+
+        assertEquals(Arrays.asList("span6", "span7", "span8", "span9"), names(SplitTrace.snapshot()));
+        assertEquals(Arrays.asList("span8", "span9"), names(SplitTrace.collect(null, since + 8)));
+    }
+
+    @Test
+    public void spanBegunBeforeTracingIsEnabledAgainIsDropped() {
+        long stale = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "stale", "java");
+        SplitTrace.enable(64);
+        long fresh = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "fresh");
+        SplitTrace.end(fresh);
+        SplitTrace.end(stale);
+
+        List<SplitTrace.Span> spans = SplitTrace.snapshot();
+        assertEquals(Arrays.asList("fresh"), names(spans));
+        assertEquals("stale span is still open on this thread", 1, spans.get(0).depth);
+    }
+
+    @Test
+    public void disabledTracingRecordsNothing() {
+        SplitTrace.disable();
+        assertFalse(SplitTrace.isEnabled());
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "install", "java");
+        SplitTrace.attr(span, "size", "1");
+        SplitTrace.end(span);
+
+        assertEquals(SplitTrace.NO_SPAN, span);
+        assertEquals(SplitTrace.NO_SPAN, SplitTrace.mark());
+        assertTrue(SplitTrace.snapshot().isEmpty());
+    }
+
+    @Test
+    public void disabledTracingAllocatesNothing() {
+        SplitTrace.disable();
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        //warm up so that measured loop is compiled and thread local of span stacks exists.
+        traceDisabled(200000);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long spans = traceDisabled(1000000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(1000000 * SplitTrace.NO_SPAN, spans);
+        //recording a span per call would take tens of MB, a few KB are taken by compiling and measuring.
+        assertTrue("allocated " + allocated + " bytes for 1M disabled spans", allocated < 16 * 1024);
+    }
+
+    @Test
+    public void exportedChromeTraceRestoresNesting() throws Exception {
+        long install = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "install", "java");
+        long verify = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "verify \"signature\"");
+        SplitTrace.attr(verify, "apk", "/data/java.apk");
+        SplitTrace.end(verify);
+        SplitTrace.end(install);
+        List<SplitTrace.Span> spans = SplitTrace.snapshot();
+
+        StringWriter writer = new StringWriter();
+        SplitTraceExporter.writeChromeTrace(spans, 1234, writer);
+        JSONArray events = new JSONObject(writer.toString()).getJSONArray("traceEvents");
+
+        assertEquals(2, events.length());
+        JSONObject parent = events.getJSONObject(0);
+        JSONObject child = events.getJSONObject(1);
+        assertEquals("X", parent.getString("ph"));
+        assertEquals(1234, parent.getInt("pid"));
+        assertEquals("verify \"signature\"", child.getString("name"));
+        assertEquals("java", child.getJSONObject("args").getString("split"));
+        assertEquals("/data/java.apk", child.getJSONObject("args").getString("apk"));
+        assertEquals(spans.get(1).startNanos / 1000.0, child.getDouble("ts"), 0.001);
+        assertEquals(spans.get(1).durationNanos / 1000.0, child.getDouble("dur"), 0.001);
+        assertTrue(child.getDouble("ts") >= parent.getDouble("ts"));
+        assertTrue(child.getDouble("ts") + child.getDouble("dur") <= parent.getDouble("ts") + parent.getDouble("dur"));
+    }
+
+    private static long traceDisabled(int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            long span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "loadCode", "java");
+            SplitTrace.attr(span, "dex", "classes.dex");
+            SplitTrace.end(span);
+            sum += span;
+        }
+        return sum;
+    }
+
+    private static void assertEnclosed(SplitTrace.Span parent, SplitTrace.Span child) {
+        assertTrue(child.startNanos >= parent.startNanos);
+        assertTrue(child.startNanos + child.durationNanos <= parent.startNanos + parent.durationNanos);
+    }
+
+    private static List<String> names(List<SplitTrace.Span> spans) {
+        List<String> names = new ArrayList<>(spans.size());
+        for (SplitTrace.Span span : spans) {
+            names.add(span.name);
+        }
+        return names;
+    }
+
+    private static List<Integer> depths(List<SplitTrace.Span> spans) {
+        List<Integer> depths = new ArrayList<>(spans.size());
+        for (SplitTrace.Span span : spans) {
+            depths.add(span.depth);
+        }
+        return depths;
+    }
+
+    private static List<String> splits(List<SplitTrace.Span> spans) {
+        List<String> splits = new ArrayList<>(spans.size());
+        for (SplitTrace.Span span : spans) {
+            splits.add(span.split);
+        }
+        return splits;
+    }
+}
@@ -38,19 +38,26 @@ import com.google.android.play.core.splitcompat.SplitCompat;
 import com.iqiyi.android.qigsaw.core.common.ProcessUtil;
 import com.iqiyi.android.qigsaw.core.common.SplitBaseInfoProvider;
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
+import com.iqiyi.android.qigsaw.core.common.SplitTraceExporter;
 import com.iqiyi.android.qigsaw.core.extension.AABExtension;
 import com.iqiyi.android.qigsaw.core.splitdownload.Downloader;
 import com.iqiyi.android.qigsaw.core.splitinstall.SplitApkInstaller;
 import com.iqiyi.android.qigsaw.core.splitinstall.SplitInstallReporterManager;
+import com.iqiyi.android.qigsaw.core.splitinstall.SplitDiskQuotaReporterManager;
 import com.iqiyi.android.qigsaw.core.splitinstall.SplitUninstallReporterManager;
 import com.iqiyi.android.qigsaw.core.splitload.SplitLoadManagerService;
 import com.iqiyi.android.qigsaw.core.splitload.SplitLoadReporterManager;
 import com.iqiyi.android.qigsaw.core.splitreport.DefaultSplitInstallReporter;
 import com.iqiyi.android.qigsaw.core.splitreport.DefaultSplitLoadReporter;
+import com.iqiyi.android.qigsaw.core.splitreport.DefaultSplitDiskQuotaReporter;
+import com.iqiyi.android.qigsaw.core.splitreport.DefaultSplitTraceReporter;
 import com.iqiyi.android.qigsaw.core.splitreport.DefaultSplitUninstallReporter;
 import com.iqiyi.android.qigsaw.core.splitreport.DefaultSplitUpdateReporter;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitTraceReporterManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitUpdateReporterManager;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -118,7 +125,13 @@ public class Qigsaw {
     }
 
     private void onBaseContextAttached() {
+        if (splitConfiguration.traceBufferSize > 0) {
+            SplitTrace.enable(splitConfiguration.traceBufferSize);
+        }
+        SplitTraceReporterManager.install(splitConfiguration.traceReporter == null ? new DefaultSplitTraceReporter(context) : splitConfiguration.traceReporter);
         SplitBaseInfoProvider.setPackageName(context.getPackageName());
+        //resolve hidden api handles off main thread before any split is loaded.
+        SplitLoadManagerService.warmUpReflection(Qigsaw.class.getClassLoader());
         boolean qigsawMode = SplitBaseInfoProvider.isQigsawMode();
         if (isMainProcess) {
             SplitUpdateReporterManager.install(splitConfiguration.updateReporter == null ? new DefaultSplitUpdateReporter(context) : splitConfiguration.updateReporter);
@@ -148,11 +161,15 @@ public class Qigsaw {
         if (isMainProcess) {
             SplitInstallReporterManager.install(splitConfiguration.installReporter == null ? new DefaultSplitInstallReporter(context) : splitConfiguration.installReporter);
             SplitUninstallReporterManager.install(splitConfiguration.uninstallReporter == null ? new DefaultSplitUninstallReporter(context) : splitConfiguration.uninstallReporter);
+            SplitDiskQuotaReporterManager.install(splitConfiguration.diskQuotaReporter == null ? new DefaultSplitDiskQuotaReporter(context) : splitConfiguration.diskQuotaReporter);
             SplitApkInstaller.install(
                     context,
                     downloader,
                     splitConfiguration.obtainUserConfirmationDialogClass,
-                    splitConfiguration.verifySignature);
+                    splitConfiguration.verifySignature,
+                    splitConfiguration.sessionProgressMinInterval,
+                    splitConfiguration.sessionProgressMinBytes,
+                    splitConfiguration.splitDiskQuota);
             SplitApkInstaller.startUninstallSplits(context);
             if (Looper.myLooper() != null) {
                 Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
@@ -236,6 +253,20 @@ public class Qigsaw {
         return true;
     }
 
+    /**
+     * Export traced phases of split install and load in Chrome trace event format,
+     * which could be opened by chrome://tracing or Perfetto.
+     *
+     * @param file destination file.
+     * @return if {@code true} trace is exported, otherwise {@code false} such as tracing is disabled.
+     */
+    public static boolean exportTrace(@NonNull File file) {
+        if (!SplitTrace.isEnabled()) {
+            return false;
+        }
+        return SplitTraceExporter.exportChromeTrace(SplitTrace.snapshot(), file);
+    }
+
     /**
      * Clean stale disk cache of all splits.
      */
@@ -28,8 +28,10 @@ import androidx.annotation.NonNull;
 
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
 import com.iqiyi.android.qigsaw.core.splitload.SplitLoad;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitDiskQuotaReporter;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallReporter;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitLoadReporter;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitTraceReporter;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitUninstallReporter;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitUpdateReporter;
 
@@ -49,10 +51,22 @@ public class SplitConfiguration {
 
     final SplitUninstallReporter uninstallReporter;
 
+    final SplitDiskQuotaReporter diskQuotaReporter;
+
+    final SplitTraceReporter traceReporter;
+
     final Class<? extends ObtainUserConfirmationDialog> obtainUserConfirmationDialogClass;
 
     final boolean verifySignature;
 
+    final long sessionProgressMinInterval;
+
+    final long sessionProgressMinBytes;
+
+    final long splitDiskQuota;
+
+    final int traceBufferSize;
+
     public static SplitConfiguration.Builder newBuilder() {
         return new SplitConfiguration.Builder();
     }
@@ -67,9 +81,15 @@ public class SplitConfiguration {
         this.loadReporter = builder.loadReporter;
         this.updateReporter = builder.updateReporter;
         this.uninstallReporter = builder.uninstallReporter;
+        this.diskQuotaReporter = builder.diskQuotaReporter;
+        this.traceReporter = builder.traceReporter;
         this.obtainUserConfirmationDialogClass = builder.obtainUserConfirmationDialogClass;
         this.workProcesses = builder.workProcesses;
         this.verifySignature = builder.verifySignature;
+        this.sessionProgressMinInterval = builder.sessionProgressMinInterval;
+        this.sessionProgressMinBytes = builder.sessionProgressMinBytes;
+        this.splitDiskQuota = builder.splitDiskQuota;
+        this.traceBufferSize = builder.traceBufferSize;
     }
 
     public static class Builder {
@@ -88,10 +108,22 @@ public class SplitConfiguration {
 
         private SplitUninstallReporter uninstallReporter;
 
+        private SplitDiskQuotaReporter diskQuotaReporter;
+
+        private SplitTraceReporter traceReporter;
+
         private Class<? extends ObtainUserConfirmationDialog> obtainUserConfirmationDialogClass;
 
         private boolean verifySignature = true;
 
+        private long sessionProgressMinInterval = 200L;
+
+        private long sessionProgressMinBytes = 64 * 1024L;
+
+        private long splitDiskQuota = 0L;
+
+        private int traceBufferSize = 0;
+
         private Builder() {
             this.obtainUserConfirmationDialogClass = DefaultObtainUserConfirmationDialog.class;
         }
@@ -104,6 +136,16 @@ public class SplitConfiguration {
             return this;
         }
 
+        /**
+         * Minimum level of logs passed to {@link SplitLog.Logger}, such as {@link SplitLog#WARN} for release builds.
+         * Logs below it are dropped before they are formatted. Default value is {@link SplitLog#VERBOSE}.
+         * Wrap logger with {@link com.iqiyi.android.qigsaw.core.common.AsyncSplitLogger} to format and write logs off caller thread.
+         */
+        public Builder logLevel(int level) {
+            SplitLog.setLevel(level);
+            return this;
+        }
+
         /**
          * You can decide to use single or multiple class loader mode to load splits, see {@link SplitLoad} to know more details.
          */
@@ -158,6 +200,23 @@ public class SplitConfiguration {
             return this;
         }
 
+        /**
+         * Report evicted split versions when disk usage of splits is trimmed.
+         */
+        public Builder diskQuotaReporter(@NonNull SplitDiskQuotaReporter diskQuotaReporter) {
+            this.diskQuotaReporter = diskQuotaReporter;
+            return this;
+        }
+
+        /**
+         * Report time spent in every phase when splits are installed or loaded, only works if tracing is enabled
+         * by {@link Builder#traceBufferSize(int)}.
+         */
+        public Builder traceReporter(@NonNull SplitTraceReporter traceReporter) {
+            this.traceReporter = traceReporter;
+            return this;
+        }
+
         /**
          * Report updating status when split info version is fully updated.
          */
@@ -183,6 +242,46 @@ public class SplitConfiguration {
             return this;
         }
 
+        /**
+         * Minimum interval in milliseconds between two download progress updates of one install session.
+         * Progress updates arriving faster are merged and the latest one is delivered when interval elapses,
+         * status changes are always delivered immediately. Default value is 200ms, {@code 0} disables merging.
+         */
+        public Builder sessionProgressMinInterval(long millis) {
+            this.sessionProgressMinInterval = millis;
+            return this;
+        }
+
+        /**
+         * Minimum growth of downloaded bytes between two download progress updates of one install session.
+         * Default value is 64KB, {@code 0} delivers progress only according to {@link Builder#sessionProgressMinInterval(long)}.
+         */
+        public Builder sessionProgressMinBytes(long bytes) {
+            this.sessionProgressMinBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Total bytes of installed splits, including old versions and shared artifacts, to keep on disk.
+         * Once exceeded, least recently used old versions are deleted when app starts, current versions and
+         * versions loaded by running processes are always kept. Default value is {@code 0}, which keeps
+         * at most one old version of every split regardless of its size.
+         */
+        public Builder splitDiskQuota(long bytes) {
+            this.splitDiskQuota = bytes;
+            return this;
+        }
+
+        /**
+         * Number of phase spans kept in memory for tracing split install and load, oldest spans are overwritten
+         * once exceeded. Spans can be exported by {@link Qigsaw#exportTrace(java.io.File)}. Default value is {@code 0},
+         * which disables tracing.
+         */
+        public Builder traceBufferSize(int spans) {
+            this.traceBufferSize = spans;
+            return this;
+        }
+
         public SplitConfiguration build() {
             return new SplitConfiguration(this);
         }
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of read buffers shared by all connections of {@link SplitHttpDownloader}.
+ * Buffers are created lazily, at most {@code capacity} buffers exist at the same time.
+ */
+final class DownloadBufferPool {
+
+    private final BlockingQueue<byte[]> buffers;
+
+    private final AtomicInteger createdCount = new AtomicInteger();
+
+    private final int capacity;
+
+    private final int bufferSize;
+
+    DownloadBufferPool(int capacity, int bufferSize) {
+        this.capacity = capacity;
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Get a buffer, block until one is released if all buffers are in use.
+     */
+    byte[] acquire() throws InterruptedIOException {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (createdCount.incrementAndGet() <= capacity) {
+            return new byte[bufferSize];
+        }
+        createdCount.decrementAndGet();
+        try {
+            return buffers.take();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for download buffer");
+        }
+    }
+
+    void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
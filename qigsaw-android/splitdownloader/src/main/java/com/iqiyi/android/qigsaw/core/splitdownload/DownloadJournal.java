@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Persisted progress of a file downloaded by {@link SplitHttpDownloader}, so that it could be resumed by http range
+ * requests after the download is interrupted, even if the process is killed.
+ * <p>
+ * The file is split into chunks [start, end), each chunk is downloaded by a connection and
+ * {@code offsets[i]} is the position of next byte to download for chunk {@code i}.
+ */
+final class DownloadJournal {
+
+    private static final String TAG = "Split:DownloadJournal";
+
+    private static final int MAGIC = 0x51444a4e;
+
+    private static final int VERSION = 1;
+
+    /**
+     * End of chunk whose length is unknown.
+     */
+    static final long UNKNOWN_END = Long.MAX_VALUE;
+
+    final String url;
+
+    final String md5;
+
+    final long size;
+
+    /**
+     * ETag or Last-Modified of the file, sent with If-Range when resuming. Empty if server provides neither.
+     */
+    String validator;
+
+    final long[] starts;
+
+    final long[] ends;
+
+    final long[] offsets;
+
+    private DownloadJournal(String url, String md5, long size, String validator, long[] starts, long[] ends, long[] offsets) {
+        this.url = url;
+        this.md5 = md5;
+        this.size = size;
+        this.validator = validator;
+        this.starts = starts;
+        this.ends = ends;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Split file of {@code size} bytes into {@code chunkCount} chunks of the same size.
+     */
+    static DownloadJournal create(@NonNull DownloadRequest request, int chunkCount) {
+        long size = request.getSize();
+        if (size <= 0) {
+            chunkCount = 1;
+        }
+        long[] starts = new long[chunkCount];
+        long[] ends = new long[chunkCount];
+        long chunkSize = size / chunkCount;
+        for (int i = 0; i < chunkCount; i++) {
+            starts[i] = i * chunkSize;
+            ends[i] = i == chunkCount - 1 ? (size > 0 ? size : UNKNOWN_END) : (i + 1) * chunkSize;
+        }
+        return new DownloadJournal(request.getUrl(), nonNull(request.getFileMD5()), size, "", starts, ends, starts.clone());
+    }
+
+    @Nullable
+    static DownloadJournal read(File journalFile) {
+        if (!journalFile.exists()) {
+            return null;
+        }
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                return null;
+            }
+            String url = is.readUTF();
+            String md5 = is.readUTF();
+            long size = is.readLong();
+            String validator = is.readUTF();
+            int chunkCount = is.readInt();
+            if (chunkCount <= 0 || chunkCount > 64) {
+                return null;
+            }
+            long[] starts = new long[chunkCount];
+            long[] ends = new long[chunkCount];
+            long[] offsets = new long[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                starts[i] = is.readLong();
+                ends[i] = is.readLong();
+                offsets[i] = is.readLong();
+                if (offsets[i] < starts[i] || offsets[i] > ends[i]) {
+                    return null;
+                }
+            }
+            return new DownloadJournal(url, md5, size, validator, starts, ends, offsets);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read download journal " + journalFile.getAbsolutePath(), e);
+            return null;
+        } finally {
+            closeQuietly(is);
+        }
+    }
+
+    /**
+     * Write journal to a temp file first and then rename it, so that a broken journal is never read.
+     */
+    void write(File journalFile) throws IOException {
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        DataOutputStream os = null;
+        try {
+            os = new DataOutputStream(new FileOutputStream(tmp));
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeUTF(url);
+            os.writeUTF(md5);
+            os.writeLong(size);
+            os.writeUTF(validator);
+            os.writeInt(starts.length);
+            for (int i = 0; i < starts.length; i++) {
+                os.writeLong(starts[i]);
+                os.writeLong(ends[i]);
+                os.writeLong(offsets[i]);
+            }
+            os.close();
+            os = null;
+            if (!tmp.renameTo(journalFile)) {
+                throw new IOException("Failed to rename " + tmp.getAbsolutePath() + " to " + journalFile.getAbsolutePath());
+            }
+        } finally {
+            closeQuietly(os);
+            if (tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Whether this journal records the download of {@code request}.
+     */
+    boolean matches(@NonNull DownloadRequest request) {
+        return url.equals(request.getUrl())
+                && md5.equals(nonNull(request.getFileMD5()))
+                && size == request.getSize();
+    }
+
+    int chunkCount() {
+        return starts.length;
+    }
+
+    long downloadedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < starts.length; i++) {
+            bytes += offsets[i] - starts[i];
+        }
+        return bytes;
+    }
+
+    private static String nonNull(String str) {
+        return str == null ? "" : str;
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                //ignored
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download task of {@link SplitHttpDownloader} for a group of requests, which reports its status to {@link DownloadCallback}.
+ */
+final class DownloadSession {
+
+    private static final long PROGRESS_INTERVAL_MS = 100L;
+
+    final int sessionId;
+
+    final List<DownloadRequest> requests;
+
+    final DownloadCallback callback;
+
+    final boolean deferred;
+
+    final boolean usingMobileDataPermitted;
+
+    /**
+     * Bytes downloaded by all files of this session, updated in place so that progress needs no summing.
+     */
+    private final AtomicLong downloadedBytes = new AtomicLong();
+
+    private final AtomicLong lastProgressTime = new AtomicLong();
+
+    private final Set<HttpURLConnection> connections = Collections.synchronizedSet(new HashSet<HttpURLConnection>());
+
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
+
+    private final Object bandwidthLock = new Object();
+
+    /**
+     * Max bytes per second of all connections, {@link ThrottlingDownloader#UNLIMITED} if it is not throttled.
+     */
+    private volatile long maxBytesPerSecond = ThrottlingDownloader.UNLIMITED;
+
+    /**
+     * Time when downloaded bytes are within the limit, guarded by {@link #bandwidthLock}.
+     */
+    private long bandwidthAvailableNanos;
+
+    private volatile boolean canceled;
+
+    private volatile boolean failed;
+
+    private int remainingFiles;
+
+    private int errorCode;
+
+    DownloadSession(int sessionId,
+                    List<DownloadRequest> requests,
+                    DownloadCallback callback,
+                    boolean deferred,
+                    boolean usingMobileDataPermitted) {
+        this.sessionId = sessionId;
+        this.requests = requests;
+        this.callback = callback;
+        this.deferred = deferred;
+        this.usingMobileDataPermitted = usingMobileDataPermitted;
+        this.remainingFiles = requests.size();
+    }
+
+    /**
+     * Whether files of this session should stop downloading, because it is canceled or one of the files failed.
+     */
+    boolean isStopped() {
+        return canceled || failed;
+    }
+
+    boolean isCanceled() {
+        return canceled;
+    }
+
+    void addProgress(long bytes) {
+        long current = downloadedBytes.addAndGet(bytes);
+        long now = System.currentTimeMillis();
+        long last = lastProgressTime.get();
+        if (now - last >= PROGRESS_INTERVAL_MS && lastProgressTime.compareAndSet(last, now)) {
+            callback.onProgress(current);
+        }
+    }
+
+    void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    boolean isThrottled() {
+        return maxBytesPerSecond > 0;
+    }
+
+    /**
+     * Account {@code bytes} which have just been downloaded against bandwidth limit of this session.
+     *
+     * @return nanoseconds to wait before downloading more, {@code 0} if it is not throttled.
+     */
+    long reserveBandwidth(int bytes) {
+        long rate = maxBytesPerSecond;
+        if (rate <= 0) {
+            return 0;
+        }
+        synchronized (bandwidthLock) {
+            long now = System.nanoTime();
+            if (bandwidthAvailableNanos - now < 0) {
+                bandwidthAvailableNanos = now;
+            }
+            bandwidthAvailableNanos += bytes * TimeUnit.SECONDS.toNanos(1) / rate;
+            return bandwidthAvailableNanos - now;
+        }
+    }
+
+    void registerConnection(HttpURLConnection connection) {
+        connections.add(connection);
+        if (canceled) {
+            connection.disconnect();
+        }
+    }
+
+    void unregisterConnection(HttpURLConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Stop all files, active connections are closed so that blocking reads return immediately.
+     * Connections are closed on a new thread, because disconnecting may wait for the blocking read on some platforms.
+     */
+    void cancel() {
+        canceled = true;
+        final HttpURLConnection[] active;
+        synchronized (connections) {
+            active = connections.toArray(new HttpURLConnection[0]);
+        }
+        if (active.length == 0) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (HttpURLConnection connection : active) {
+                    connection.disconnect();
+                }
+            }
+        }, "qigsaw-download-cancel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    boolean awaitFinished(long timeoutMs) {
+        try {
+            return finishedLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param errorCode {@code 0} if file is downloaded, otherwise one of error codes of {@link SplitHttpDownloader}.
+     * @return {@code true} if all files of this session are finished and callback has been notified.
+     */
+    boolean onFileFinished(int errorCode) {
+        int sessionErrorCode;
+        synchronized (this) {
+            if (errorCode != 0 && this.errorCode == 0) {
+                this.errorCode = errorCode;
+                failed = true;
+            }
+            if (--remainingFiles > 0) {
+                return false;
+            }
+            sessionErrorCode = this.errorCode;
+        }
+        notifyFinished(sessionErrorCode);
+        return true;
+    }
+
+    /**
+     * Finish session which has no file to download.
+     */
+    void finishEmpty() {
+        notifyFinished(0);
+    }
+
+    private void notifyFinished(int errorCode) {
+        if (canceled) {
+            callback.onCanceled();
+        } else if (errorCode != 0) {
+            callback.onError(errorCode);
+        } else {
+            callback.onProgress(downloadedBytes.get());
+            callback.onCompleted();
+        }
+        finishedLatch.countDown();
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Download a single file of {@link DownloadSession}.
+ * <p>
+ * Data is written to {@code fileName.tmp} and progress is checkpointed to {@code fileName.journal} periodically,
+ * large file is split into chunks which are downloaded by parallel connections with http range requests.
+ * MD5 is updated while the first chunk is streamed, so a single-chunk file is never read again;
+ * the rest chunks of a multi-chunk file are digested from disk after they are complete.
+ */
+final class FileDownloadTask {
+
+    private static final String TAG = "Split:FileDownloadTask";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * Data is synced and journal is written every time so many bytes are downloaded.
+     */
+    private static final long CHECKPOINT_BYTES = 1024 * 1024L;
+
+    /**
+     * Times to download the file again if its md5 is not matched.
+     */
+    private static final int MAX_RESTARTS = 1;
+
+    private static final long RETRY_DELAY_MS = 500L;
+
+    /**
+     * Result of {@link #complete()} when the file is downloaded again.
+     */
+    private static final int RESTARTED = 1;
+
+    private final SplitHttpDownloader downloader;
+
+    private final DownloadSession session;
+
+    private final DownloadRequest request;
+
+    final File targetFile;
+
+    private final File tmpFile;
+
+    private final File journalFile;
+
+    private DownloadJournal journal;
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    /**
+     * Digest of bytes [0, digestedBytes), only accessed by the connection of first chunk and {@link #finish()}.
+     */
+    private MessageDigest digest;
+
+    private long digestedBytes;
+
+    private int activeChunks;
+
+    private int errorCode;
+
+    private boolean rangeUnsupported;
+
+    private boolean singleChunk;
+
+    private int restarts;
+
+    private long uncheckpointedBytes;
+
+    private volatile boolean stopped;
+
+    FileDownloadTask(SplitHttpDownloader downloader, DownloadSession session, DownloadRequest request) {
+        this.downloader = downloader;
+        this.session = session;
+        this.request = request;
+        this.targetFile = new File(request.getFileDir(), request.getFileName());
+        this.tmpFile = new File(request.getFileDir(), request.getFileName() + TMP_SUFFIX);
+        this.journalFile = getJournalFile(request);
+    }
+
+    static File getJournalFile(DownloadRequest request) {
+        return new File(request.getFileDir(), request.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    void start() {
+        if (session.isStopped()) {
+            downloader.onFileFinished(this, session, 0);
+            return;
+        }
+        if (targetFile.exists() && (request.getSize() <= 0 || targetFile.length() == request.getSize())) {
+            Log.i(TAG, "File " + targetFile.getName() + " has been downloaded");
+            session.addProgress(targetFile.length());
+            downloader.onFileFinished(this, session, 0);
+            return;
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to start downloading " + targetFile.getAbsolutePath(), e);
+            closeChannel();
+            downloader.onFileFinished(this, session, SplitHttpDownloader.ERROR_IO);
+        }
+    }
+
+    private void open() throws IOException {
+        DownloadJournal recorded = singleChunk ? null : DownloadJournal.read(journalFile);
+        DownloadJournal current;
+        if (recorded != null && recorded.matches(request) && tmpFile.exists()) {
+            Log.i(TAG, "Resume downloading " + targetFile.getName() + " from " + recorded.downloadedBytes() + " bytes");
+            current = recorded;
+        } else {
+            deleteQuietly(tmpFile);
+            current = DownloadJournal.create(request, singleChunk ? 1 : downloader.getChunkCount(request.getSize()));
+        }
+        File dir = tmpFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create dir " + dir.getAbsolutePath());
+        }
+        raf = new RandomAccessFile(tmpFile, "rw");
+        channel = raf.getChannel();
+        current.write(journalFile);
+        digest = newMD5Digest();
+        digestedBytes = 0;
+        stopped = false;
+        synchronized (this) {
+            journal = current;
+            errorCode = 0;
+            rangeUnsupported = false;
+            uncheckpointedBytes = 0;
+            activeChunks = current.chunkCount();
+        }
+        session.addProgress(current.downloadedBytes());
+        for (int i = 0; i < current.chunkCount(); i++) {
+            scheduleChunk(i, 0, 0);
+        }
+    }
+
+    private void scheduleChunk(final int index, final int attempt, long delayMs) {
+        downloader.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runChunk(index, attempt);
+            }
+        }, delayMs);
+    }
+
+    private void runChunk(int index, int attempt) {
+        if (stopped || session.isStopped()) {
+            onChunkExit(0, false);
+            return;
+        }
+        try {
+            transfer(index);
+            onChunkExit(0, false);
+        } catch (RangeUnsupportedException e) {
+            Log.w(TAG, "Server does not support range requests of " + journal.url + ", download it with single connection");
+            onChunkExit(SplitHttpDownloader.ERROR_IO, true);
+        } catch (UnrecoverableException e) {
+            Log.w(TAG, "Failed to download chunk " + index + " of " + targetFile.getName(), e);
+            onChunkExit(e.errorCode, false);
+        } catch (IOException e) {
+            if (stopped || session.isStopped()) {
+                onChunkExit(0, false);
+            } else if (attempt < downloader.maxRetries) {
+                Log.w(TAG, "Failed to download chunk " + index + " of " + targetFile.getName() + ", retry " + (attempt + 1) + ": " + e);
+                scheduleChunk(index, attempt + 1, RETRY_DELAY_MS * (attempt + 1));
+            } else {
+                Log.w(TAG, "Failed to download chunk " + index + " of " + targetFile.getName(), e);
+                onChunkExit(SplitHttpDownloader.ERROR_IO, false);
+            }
+        }
+    }
+
+    private void transfer(int index) throws IOException {
+        long offset;
+        String validator;
+        synchronized (this) {
+            offset = journal.offsets[index];
+            validator = journal.validator;
+        }
+        long end = journal.ends[index];
+        if (offset >= end) {
+            return;
+        }
+        if (index == 0) {
+            updateDigest(offset);
+        }
+        HttpURLConnection connection = downloader.openConnection(journal.url);
+        session.registerConnection(connection);
+        InputStream is = null;
+        byte[] buffer = null;
+        try {
+            if (offset > 0 || journal.chunkCount() > 1) {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-" + (end == DownloadJournal.UNKNOWN_END ? "" : String.valueOf(end - 1)));
+                if (!TextUtils.isEmpty(validator)) {
+                    connection.setRequestProperty("If-Range", validator);
+                }
+            }
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_OK) {
+                if (journal.chunkCount() > 1) {
+                    throw new RangeUnsupportedException();
+                }
+                if (offset > 0) {
+                    Log.i(TAG, "Range of " + targetFile.getName() + " is ignored by server, download it from start");
+                    offset = resetChunk();
+                    digest.reset();
+                    digestedBytes = 0;
+                }
+                updateValidator(connection);
+            } else if (code == HttpURLConnection.HTTP_PARTIAL) {
+                checkContentRange(connection, offset);
+                if (TextUtils.isEmpty(validator)) {
+                    updateValidator(connection);
+                }
+            } else if (code >= 500 || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT || code == 429) {
+                throw new IOException("Server responds " + code + " for " + journal.url);
+            } else {
+                throw new UnrecoverableException(SplitHttpDownloader.ERROR_HTTP, "Server responds " + code + " for " + journal.url);
+            }
+            is = connection.getInputStream();
+            buffer = downloader.bufferPool.acquire();
+            while (offset < end) {
+                if (stopped || session.isStopped()) {
+                    throw new InterruptedIOException("Download of " + targetFile.getName() + " is stopped");
+                }
+                int count = is.read(buffer, 0, (int) Math.min(buffer.length, end - offset));
+                if (count < 0) {
+                    if (end == DownloadJournal.UNKNOWN_END) {
+                        break;
+                    }
+                    throw new EOFException("Connection is closed at " + offset + " of chunk " + index);
+                }
+                writeFully(ByteBuffer.wrap(buffer, 0, count), offset);
+                if (index == 0) {
+                    digest.update(buffer, 0, count);
+                    digestedBytes += count;
+                }
+                offset += count;
+                onBytesWritten(index, count);
+                long waitNanos = session.reserveBandwidth(count);
+                if (waitNanos > 0) {
+                    //buffer is not held while waiting, it is used by connections of other sessions.
+                    downloader.bufferPool.release(buffer);
+                    buffer = null;
+                    downloader.awaitBandwidth(session, waitNanos);
+                    buffer = downloader.bufferPool.acquire();
+                }
+            }
+        } finally {
+            if (buffer != null) {
+                downloader.bufferPool.release(buffer);
+            }
+            DownloadJournal.closeQuietly(is);
+            connection.disconnect();
+            session.unregisterConnection(connection);
+        }
+    }
+
+    private void writeFully(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    private void onBytesWritten(int index, int count) throws IOException {
+        synchronized (this) {
+            journal.offsets[index] += count;
+            uncheckpointedBytes += count;
+            if (uncheckpointedBytes >= CHECKPOINT_BYTES) {
+                checkpoint();
+            }
+        }
+        session.addProgress(count);
+    }
+
+    /**
+     * Sync data before writing journal, so that journal never records bytes which are not on disk.
+     */
+    private synchronized void checkpoint() throws IOException {
+        channel.force(false);
+        journal.write(journalFile);
+        uncheckpointedBytes = 0;
+    }
+
+    private synchronized long resetChunk() {
+        session.addProgress(-journal.offsets[0]);
+        journal.offsets[0] = 0;
+        return 0;
+    }
+
+    private synchronized void updateValidator(HttpURLConnection connection) {
+        String validator = connection.getHeaderField("ETag");
+        if (TextUtils.isEmpty(validator)) {
+            validator = connection.getHeaderField("Last-Modified");
+        }
+        journal.validator = validator == null ? "" : validator;
+    }
+
+    /**
+     * Check header such as "Content-Range: bytes 100-199/1000".
+     */
+    private void checkContentRange(HttpURLConnection connection, long offset) throws IOException {
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            throw new UnrecoverableException(SplitHttpDownloader.ERROR_HTTP, "Bad Content-Range " + contentRange + " of " + journal.url);
+        }
+        int dash = contentRange.indexOf('-');
+        int slash = contentRange.indexOf('/');
+        try {
+            long start = Long.parseLong(contentRange.substring(6, dash).trim());
+            String total = contentRange.substring(slash + 1).trim();
+            if (start != offset || (journal.size > 0 && !"*".equals(total) && Long.parseLong(total) != journal.size)) {
+                throw new UnrecoverableException(SplitHttpDownloader.ERROR_HTTP, "Content-Range " + contentRange + " is not matched with offset " + offset + " of " + journal.url);
+            }
+        } catch (RuntimeException e) {
+            throw new UnrecoverableException(SplitHttpDownloader.ERROR_HTTP, "Bad Content-Range " + contentRange + " of " + journal.url);
+        }
+    }
+
+    /**
+     * Bring digest to {@code position}, bytes which are not streamed through it are read from file.
+     */
+    private void updateDigest(long position) throws IOException {
+        if (digestedBytes > position) {
+            digest.reset();
+            digestedBytes = 0;
+        }
+        if (digestedBytes == position) {
+            return;
+        }
+        byte[] buffer = downloader.bufferPool.acquire();
+        try {
+            while (digestedBytes < position) {
+                int count = channel.read(ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, position - digestedBytes)), digestedBytes);
+                if (count < 0) {
+                    throw new EOFException("File " + tmpFile.getAbsolutePath() + " is shorter than " + position);
+                }
+                digest.update(buffer, 0, count);
+                digestedBytes += count;
+            }
+        } finally {
+            downloader.bufferPool.release(buffer);
+        }
+    }
+
+    private void onChunkExit(int errorCode, boolean rangeUnsupported) {
+        boolean last;
+        synchronized (this) {
+            if (errorCode != 0 && this.errorCode == 0) {
+                this.errorCode = errorCode;
+                this.rangeUnsupported = rangeUnsupported;
+                stopped = true;
+            }
+            last = --activeChunks == 0;
+        }
+        if (last) {
+            finish();
+        }
+    }
+
+    /**
+     * Called by the last exited connection.
+     */
+    private void finish() {
+        int code;
+        boolean restartWithSingleChunk;
+        synchronized (this) {
+            code = errorCode;
+            restartWithSingleChunk = rangeUnsupported && !singleChunk;
+        }
+        try {
+            if (code == 0 && !session.isStopped()) {
+                code = complete();
+            } else if (restartWithSingleChunk && !session.isStopped()) {
+                singleChunk = true;
+                restart();
+                return;
+            } else {
+                checkpoint();
+                closeChannel();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to finish downloading " + targetFile.getAbsolutePath(), e);
+            closeChannel();
+            code = SplitHttpDownloader.ERROR_IO;
+        }
+        if (code == SplitHttpDownloader.ERROR_HTTP) {
+            //resource is not available, nothing is worth resuming.
+            deleteQuietly(tmpFile);
+            deleteQuietly(journalFile);
+        }
+        if (code != RESTARTED) {
+            downloader.onFileFinished(this, session, code);
+        }
+    }
+
+    private int complete() throws IOException {
+        long total = journal.size > 0 ? journal.size : journal.offsets[0];
+        if (channel.size() > total) {
+            channel.truncate(total);
+        }
+        updateDigest(total);
+        channel.force(false);
+        closeChannel();
+        String md5 = toHexString(digest.digest());
+        String expectedMd5 = request.getFileMD5();
+        if (!TextUtils.isEmpty(expectedMd5) && !expectedMd5.equalsIgnoreCase(md5)) {
+            Log.w(TAG, "MD5 of " + targetFile.getName() + " is " + md5 + " but " + expectedMd5 + " is expected");
+            if (restarts++ < MAX_RESTARTS) {
+                restart();
+                return RESTARTED;
+            }
+            deleteQuietly(tmpFile);
+            deleteQuietly(journalFile);
+            return SplitHttpDownloader.ERROR_MD5_MISMATCH;
+        }
+        if (targetFile.exists()) {
+            deleteQuietly(targetFile);
+        }
+        if (!tmpFile.renameTo(targetFile)) {
+            throw new IOException("Failed to rename " + tmpFile.getAbsolutePath() + " to " + targetFile.getAbsolutePath());
+        }
+        deleteQuietly(journalFile);
+        Log.i(TAG, "Succeed to download " + targetFile.getAbsolutePath());
+        return 0;
+    }
+
+    /**
+     * Discard downloaded data and download the file from start.
+     */
+    private void restart() throws IOException {
+        long downloaded;
+        synchronized (this) {
+            downloaded = journal.downloadedBytes();
+        }
+        closeChannel();
+        deleteQuietly(tmpFile);
+        deleteQuietly(journalFile);
+        session.addProgress(-downloaded);
+        open();
+    }
+
+    private void closeChannel() {
+        DownloadJournal.closeQuietly(channel);
+        DownloadJournal.closeQuietly(raf);
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file.getAbsolutePath());
+        }
+    }
+
+    private static MessageDigest newMD5Digest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static String toHexString(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Server returns the whole file for a range request of a multi-chunk file.
+     */
+    private static final class RangeUnsupportedException extends IOException {
+
+        RangeUnsupportedException() {
+            super("Range request is not supported");
+        }
+    }
+
+    /**
+     * Error which is not recovered by retrying.
+     */
+    private static final class UnrecoverableException extends IOException {
+
+        final int errorCode;
+
+        UnrecoverableException(int errorCode, String message) {
+            super(message);
+            this.errorCode = errorCode;
+        }
+    }
+}
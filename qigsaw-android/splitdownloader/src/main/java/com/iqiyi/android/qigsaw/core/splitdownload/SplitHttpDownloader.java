@@ -0,0 +1,486 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Built-in {@link Downloader} based on {@link HttpURLConnection}, it could be used if app has no downloader lib.
+ * <ul>
+ * <li>Progress of each file is persisted, interrupted downloads are resumed by http range requests.</li>
+ * <li>Large file is downloaded by several connections in parallel.</li>
+ * <li>All connections share a bounded pool of buffers.</li>
+ * <li>MD5 is computed while downloading, files whose md5 is not matched are downloaded again.</li>
+ * </ul>
+ * Started sessions are downloaded immediately, deferred sessions are downloaded one by one when no session is started.
+ * Speed of a session could be limited by {@link #setSessionBandwidth(int, long)}.
+ */
+public final class SplitHttpDownloader implements ThrottlingDownloader {
+
+    private static final String TAG = "Split:HttpDownloader";
+
+    /**
+     * Failed to read from network or write to disk.
+     */
+    public static final int ERROR_IO = -1;
+
+    /**
+     * Server responds unexpectedly, such as 404.
+     */
+    public static final int ERROR_HTTP = -2;
+
+    /**
+     * MD5 of downloaded file is still not matched after it is downloaded again.
+     */
+    public static final int ERROR_MD5_MISMATCH = -3;
+
+    private static final long CANCEL_TIMEOUT_MS = 5000L;
+
+    private static final long DEFERRED_RECHECK_DELAY_MS = 30 * 1000L;
+
+    private static final long DUPLICATED_FILE_RECHECK_DELAY_MS = 500L;
+
+    /**
+     * Throttled connections check whether they are stopped or no longer throttled at this interval.
+     */
+    private static final long BANDWIDTH_CHECK_INTERVAL_MS = 100L;
+
+    private final Context context;
+
+    private final int maxConnections;
+
+    private final int connectionsPerFile;
+
+    private final long minChunkSize;
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    final int maxRetries;
+
+    private final long downloadSizeThresholdWhenUsingMobileData;
+
+    private final boolean deferredDownloadOnlyWhenUsingWifiData;
+
+    final DownloadBufferPool bufferPool;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final ConcurrentHashMap<Integer, DownloadSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Files which are being downloaded, keyed by path. A file requested by two sessions is downloaded once.
+     */
+    private final ConcurrentHashMap<String, FileDownloadTask> activeFiles = new ConcurrentHashMap<>();
+
+    private final LinkedList<DownloadSession> deferredSessions = new LinkedList<>();
+
+    private int runningStartedSessions;
+
+    private boolean deferredSessionRunning;
+
+    private boolean deferredRecheckScheduled;
+
+    private int throttledConnections;
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private SplitHttpDownloader(Builder builder) {
+        this.context = builder.context == null ? null : builder.context.getApplicationContext();
+        this.maxConnections = builder.maxConnections;
+        this.connectionsPerFile = builder.connectionsPerFile;
+        this.minChunkSize = builder.minChunkSize;
+        this.connectTimeout = builder.connectTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.maxRetries = builder.maxRetries;
+        this.downloadSizeThresholdWhenUsingMobileData = builder.downloadSizeThresholdWhenUsingMobileData;
+        this.deferredDownloadOnlyWhenUsingWifiData = builder.deferredDownloadOnlyWhenUsingWifiData;
+        this.bufferPool = new DownloadBufferPool(builder.maxConnections, builder.bufferSize);
+        this.executor = new ScheduledThreadPoolExecutor(builder.maxConnections, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "qigsaw-download-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void startDownload(int sessionId, List<DownloadRequest> requests, DownloadCallback callback) {
+        DownloadSession session = new DownloadSession(sessionId, filterRequests(requests), callback, false, true);
+        sessions.put(sessionId, session);
+        synchronized (this) {
+            runningStartedSessions++;
+        }
+        dispatch(session);
+    }
+
+    @Override
+    public void deferredDownload(int sessionId, List<DownloadRequest> requests, DownloadCallback callback, boolean usingMobileDataPermitted) {
+        DownloadSession session = new DownloadSession(sessionId, filterRequests(requests), callback, true, usingMobileDataPermitted);
+        sessions.put(sessionId, session);
+        synchronized (this) {
+            deferredSessions.add(session);
+        }
+        scheduleDeferredSessions();
+    }
+
+    @Override
+    public boolean cancelDownloadSync(int sessionId) {
+        DownloadSession session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (deferredSessions.remove(session)) {
+                sessions.remove(sessionId);
+                session.callback.onCanceled();
+                return true;
+            }
+        }
+        session.callback.onCanceling();
+        session.cancel();
+        //connections stop at the latest when reading times out, and onCanceled is always notified then.
+        if (!session.awaitFinished(CANCEL_TIMEOUT_MS)) {
+            Log.w(TAG, "Session " + sessionId + " is not stopped in " + CANCEL_TIMEOUT_MS + "ms, it will be canceled later");
+        }
+        return true;
+    }
+
+    @Override
+    public boolean setSessionBandwidth(int sessionId, long bytesPerSecond) {
+        DownloadSession session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.setMaxBytesPerSecond(Math.max(UNLIMITED, bytesPerSecond));
+        return true;
+    }
+
+    @Override
+    public long getDownloadSizeThresholdWhenUsingMobileData() {
+        return downloadSizeThresholdWhenUsingMobileData;
+    }
+
+    @Override
+    public boolean isDeferredDownloadOnlyWhenUsingWifiData() {
+        return deferredDownloadOnlyWhenUsingWifiData;
+    }
+
+    /**
+     * Bytes which have been downloaded by interrupted downloads are excluded.
+     */
+    @Override
+    public long calculateDownloadSize(@NonNull List<DownloadRequest> requests, long totalBytesToDownload) {
+        long resumableBytes = 0;
+        for (DownloadRequest request : requests) {
+            DownloadJournal journal = DownloadJournal.read(FileDownloadTask.getJournalFile(request));
+            if (journal != null && journal.matches(request)) {
+                resumableBytes += journal.downloadedBytes();
+            }
+        }
+        return Math.max(0, totalBytesToDownload - resumableBytes);
+    }
+
+    private void dispatch(DownloadSession session) {
+        session.callback.onStart();
+        if (session.requests.isEmpty()) {
+            session.finishEmpty();
+            onSessionFinished(session);
+            return;
+        }
+        for (DownloadRequest request : session.requests) {
+            startFile(new FileDownloadTask(this, session, request), 0);
+        }
+    }
+
+    private void startFile(final FileDownloadTask task, long delayMs) {
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (activeFiles.putIfAbsent(task.targetFile.getPath(), task) != null) {
+                    startFile(task, DUPLICATED_FILE_RECHECK_DELAY_MS);
+                } else {
+                    task.start();
+                }
+            }
+        }, delayMs);
+    }
+
+    void onFileFinished(FileDownloadTask task, DownloadSession session, int errorCode) {
+        activeFiles.remove(task.targetFile.getPath(), task);
+        if (session.onFileFinished(errorCode)) {
+            onSessionFinished(session);
+        }
+    }
+
+    private void onSessionFinished(DownloadSession session) {
+        sessions.remove(session.sessionId, session);
+        synchronized (this) {
+            if (session.deferred) {
+                deferredSessionRunning = false;
+            } else {
+                runningStartedSessions--;
+            }
+        }
+        scheduleDeferredSessions();
+    }
+
+    private void scheduleDeferredSessions() {
+        DownloadSession next = null;
+        synchronized (this) {
+            if (runningStartedSessions > 0 || deferredSessionRunning || deferredSessions.isEmpty()) {
+                return;
+            }
+            boolean usingMobileData = isUsingMobileData();
+            Iterator<DownloadSession> iterator = deferredSessions.iterator();
+            while (iterator.hasNext()) {
+                DownloadSession session = iterator.next();
+                if (session.usingMobileDataPermitted || !usingMobileData) {
+                    iterator.remove();
+                    next = session;
+                    break;
+                }
+            }
+            if (next != null) {
+                deferredSessionRunning = true;
+            } else if (!deferredRecheckScheduled) {
+                deferredRecheckScheduled = true;
+                schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (SplitHttpDownloader.this) {
+                            deferredRecheckScheduled = false;
+                        }
+                        scheduleDeferredSessions();
+                    }
+                }, DEFERRED_RECHECK_DELAY_MS);
+            }
+        }
+        if (next != null) {
+            dispatch(next);
+        }
+    }
+
+    private boolean isUsingMobileData() {
+        if (context == null) {
+            return false;
+        }
+        try {
+            ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo info = manager == null ? null : manager.getActiveNetworkInfo();
+            return info != null && info.getType() != ConnectivityManager.TYPE_WIFI;
+        } catch (RuntimeException e) {
+            //permission ACCESS_NETWORK_STATE may be missing.
+            return false;
+        }
+    }
+
+    private static List<DownloadRequest> filterRequests(List<DownloadRequest> requests) {
+        List<DownloadRequest> result = new ArrayList<>(requests.size());
+        for (DownloadRequest request : requests) {
+            String url = request.getUrl();
+            if (url != null && (url.startsWith("http://") || url.startsWith("https://"))) {
+                result.add(request);
+            }
+        }
+        return result;
+    }
+
+    void schedule(Runnable runnable, long delayMs) {
+        if (delayMs > 0) {
+            executor.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+        } else {
+            executor.execute(runnable);
+        }
+    }
+
+    /**
+     * Wait until downloaded bytes of throttled {@code session} are within its limit.
+     * The waiting thread is not counted as a connection, so connections of other sessions are not blocked by it.
+     */
+    void awaitBandwidth(DownloadSession session, long waitNanos) throws InterruptedIOException {
+        synchronized (this) {
+            executor.setCorePoolSize(maxConnections + ++throttledConnections);
+        }
+        try {
+            long deadline = System.nanoTime() + waitNanos;
+            long remaining;
+            while (!session.isStopped() && session.isThrottled() && (remaining = deadline - System.nanoTime()) > 0) {
+                Thread.sleep(Math.min(TimeUnit.NANOSECONDS.toMillis(remaining) + 1, BANDWIDTH_CHECK_INTERVAL_MS));
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        } finally {
+            synchronized (this) {
+                executor.setCorePoolSize(maxConnections + --throttledConnections);
+            }
+        }
+    }
+
+    int getChunkCount(long size) {
+        if (size < minChunkSize * 2) {
+            return 1;
+        }
+        return (int) Math.min(connectionsPerFile, size / minChunkSize);
+    }
+
+    HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        //length of compressed body is not the file size, range requests would be broken.
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+
+    public static class Builder {
+
+        private Context context;
+
+        private int maxConnections = 4;
+
+        private int connectionsPerFile = 3;
+
+        private long minChunkSize = 2 * 1024 * 1024L;
+
+        private int bufferSize = 32 * 1024;
+
+        private int connectTimeout = 15 * 1000;
+
+        private int readTimeout = 20 * 1000;
+
+        private int maxRetries = 3;
+
+        private long downloadSizeThresholdWhenUsingMobileData = 10 * 1024 * 1024L;
+
+        private boolean deferredDownloadOnlyWhenUsingWifiData = true;
+
+        private Builder() {
+
+        }
+
+        /**
+         * Used to check whether deferred sessions which are not permitted to use mobile data could be downloaded.
+         * If it is not set, network type is not checked.
+         */
+        public Builder context(@Nullable Context context) {
+            this.context = context;
+            return this;
+        }
+
+        /**
+         * Max count of connections of all sessions, which is also the count of buffers.
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = Math.max(1, maxConnections);
+            return this;
+        }
+
+        /**
+         * Max count of connections used to download a single file, {@code 1} to disable chunked download.
+         */
+        public Builder connectionsPerFile(int connectionsPerFile) {
+            this.connectionsPerFile = Math.max(1, connectionsPerFile);
+            return this;
+        }
+
+        /**
+         * Files smaller than twice of it are downloaded by a single connection.
+         */
+        public Builder minChunkSize(long minChunkSize) {
+            this.minChunkSize = Math.max(64 * 1024L, minChunkSize);
+            return this;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = Math.max(4 * 1024, bufferSize);
+            return this;
+        }
+
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder readTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Times to resume a chunk after its connection fails.
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = Math.max(0, maxRetries);
+            return this;
+        }
+
+        public Builder downloadSizeThresholdWhenUsingMobileData(long threshold) {
+            this.downloadSizeThresholdWhenUsingMobileData = threshold;
+            return this;
+        }
+
+        public Builder deferredDownloadOnlyWhenUsingWifiData(boolean onlyWifi) {
+            this.deferredDownloadOnlyWhenUsingWifiData = onlyWifi;
+            return this;
+        }
+
+        public SplitHttpDownloader build() {
+            return new SplitHttpDownloader(this);
+        }
+    }
+}
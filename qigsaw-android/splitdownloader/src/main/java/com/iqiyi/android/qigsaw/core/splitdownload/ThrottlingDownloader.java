@@ -0,0 +1,50 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import androidx.annotation.Keep;
+
+/**
+ * {@link Downloader} which could limit download speed of a session, implement it if your downloader lib supports it.
+ * Lower priority sessions are then throttled instead of being canceled while an urgent session is downloaded,
+ * so that they keep their connections and go on slowly.
+ */
+@Keep
+public interface ThrottlingDownloader extends Downloader {
+
+    /**
+     * Value of {@code bytesPerSecond} to remove the limit.
+     */
+    long UNLIMITED = 0;
+
+    /**
+     * Limit download speed of all files of the download task.
+     *
+     * @param sessionId      represents a single download task.
+     * @param bytesPerSecond max download speed, {@link #UNLIMITED} to remove the limit.
+     * @return {@code true} if the download task exists and its speed is limited, otherwise {@code false}
+     */
+    boolean setSessionBandwidth(int sessionId, long bytesPerSecond);
+}
@@ -0,0 +1,28 @@
+package android.text;
+
+/**
+ * Methods of android.jar used by unit tests only return default values, but downloader needs working ones.
+ */
+public class TextUtils {
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static boolean equals(CharSequence a, CharSequence b) {
+        return a == null ? b == null : b != null && a.toString().equals(b.toString());
+    }
+
+    public static String join(CharSequence delimiter, Iterable tokens) {
+        StringBuilder builder = new StringBuilder();
+        boolean first = true;
+        for (Object token : tokens) {
+            if (!first) {
+                builder.append(delimiter);
+            }
+            builder.append(token);
+            first = false;
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitHttpDownloaderTest {
+
+    private static final int SMALL_SIZE = 100 * 1024;
+
+    /**
+     * Split into 3 chunks of at least 64KB each.
+     */
+    private static final int LARGE_SIZE = 1024 * 1024 + 17;
+
+    private TestHttpServer server;
+
+    private File downloadDir;
+
+    private byte[] small;
+
+    private byte[] large;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TestHttpServer();
+        downloadDir = File.createTempFile("split_http_downloader", null);
+        assertTrue(downloadDir.delete() && downloadDir.mkdirs());
+        small = randomBytes(1, SMALL_SIZE);
+        large = randomBytes(2, LARGE_SIZE);
+        server.setFile("small.apk", small, "\"small-1\"");
+        server.setFile("large.apk", large, "\"large-1\"");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        deleteDir(downloadDir);
+    }
+
+    @Test
+    public void downloadsSingleAndChunkedFiles() throws Exception {
+        RecordingCallback callback = download(newDownloader(), 1, request("small.apk", small), request("large.apk", large));
+
+        assertEquals("completed", callback.awaitResult());
+        assertDownloaded("small.apk", small);
+        assertDownloaded("large.apk", large);
+        assertEquals(SMALL_SIZE + LARGE_SIZE, callback.lastProgress);
+        // md5 is computed while streaming, nothing is fetched twice.
+        assertEquals(SMALL_SIZE + LARGE_SIZE, server.servedBytes());
+        assertEquals(1 + 3, server.requests().size());
+    }
+
+    @Test
+    public void disconnectedChunksAreResumedWithoutRefetching() throws Exception {
+        server.disconnectNext(3, 50 * 1024);
+
+        RecordingCallback callback = download(newDownloader(), 1, request("large.apk", large));
+
+        assertEquals("completed", callback.awaitResult());
+        assertDownloaded("large.apk", large);
+        assertEquals(LARGE_SIZE, server.servedBytes());
+        List<String> requests = server.requests();
+        assertEquals(6, requests.size());
+        int resumed = 0;
+        for (String request : requests) {
+            if (request.endsWith("\"large-1\"")) {
+                resumed++;
+            }
+        }
+        assertEquals("resumed requests carry If-Range: " + requests, 3, resumed);
+    }
+
+    @Test
+    public void stalledResponseTimesOutAndIsResumed() throws Exception {
+        server.stallNext(1, 30 * 1024, 5000);
+        SplitHttpDownloader downloader = SplitHttpDownloader.newBuilder().readTimeout(300).connectionsPerFile(1).build();
+        long start = System.nanoTime();
+
+        RecordingCallback callback = download(downloader, 1, request("small.apk", small));
+
+        assertEquals("completed", callback.awaitResult());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 4000);
+        assertDownloaded("small.apk", small);
+        assertEquals(2, server.requests().size());
+        assertTrue(server.requests().get(1).contains("bytes=" + 30 * 1024 + "-"));
+    }
+
+    @Test
+    public void corruptedTransferIsDownloadedAgain() throws Exception {
+        server.corruptNext(1);
+
+        RecordingCallback callback = download(newDownloader(), 1, request("large.apk", large));
+
+        assertEquals("completed", callback.awaitResult());
+        assertDownloaded("large.apk", large);
+        assertEquals(2L * LARGE_SIZE, server.servedBytes());
+        assertEquals(LARGE_SIZE, callback.lastProgress);
+    }
+
+    @Test
+    public void persistentCorruptionIsReported() throws Exception {
+        server.corruptNext(Integer.MAX_VALUE);
+
+        RecordingCallback callback = download(newDownloader(), 1, request("small.apk", small));
+
+        assertEquals("error " + SplitHttpDownloader.ERROR_MD5_MISMATCH, callback.awaitResult());
+        assertEquals(Collections.emptyList(), Arrays.asList(downloadDir.list()));
+    }
+
+    @Test
+    public void chunkedFileFallsBackToSingleConnectionWithoutRangeSupport() throws Exception {
+        server.setIgnoreRange(true);
+
+        RecordingCallback callback = download(newDownloader(), 1, request("large.apk", large));
+
+        assertEquals("completed", callback.awaitResult());
+        assertDownloaded("large.apk", large);
+        assertEquals(LARGE_SIZE, callback.lastProgress);
+        assertTrue(server.requests().get(server.requests().size() - 1).contains("null null"));
+    }
+
+    @Test
+    public void missingFileIsReportedWithoutLeftovers() throws Exception {
+        DownloadRequest missing = DownloadRequest.newBuilder()
+                .url(server.url("missing.apk")).fileDir(downloadDir.getAbsolutePath()).fileName("missing.apk")
+                .fileMD5(md5(small)).size(SMALL_SIZE).moduleName("missing").build();
+
+        RecordingCallback callback = download(newDownloader(), 1, missing);
+
+        assertEquals("error " + SplitHttpDownloader.ERROR_HTTP, callback.awaitResult());
+        assertEquals(Collections.emptyList(), Arrays.asList(downloadDir.list()));
+    }
+
+    @Test
+    public void canceledDownloadIsResumedByNewDownloader() throws Exception {
+        server.setWriteDelayMs(20);
+        SplitHttpDownloader downloader = newDownloader();
+        DownloadRequest request = request("large.apk", large);
+        RecordingCallback callback = download(downloader, 1, request);
+        callback.awaitProgress(LARGE_SIZE / 4);
+
+        assertTrue(downloader.cancelDownloadSync(1));
+        assertEquals("canceled", callback.awaitResult());
+        assertTrue(callback.canceling);
+        server.awaitIdle();
+        long servedBeforeCancel = server.servedBytes();
+        long remaining = newDownloader().calculateDownloadSize(Collections.singletonList(request), LARGE_SIZE);
+        assertTrue(remaining > 0 && remaining < LARGE_SIZE * 3 / 4);
+        assertFalse(new File(downloadDir, "large.apk").exists());
+
+        server.setWriteDelayMs(0);
+        RecordingCallback resumed = download(newDownloader(), 2, request);
+
+        assertEquals("completed", resumed.awaitResult());
+        assertDownloaded("large.apk", large);
+        assertEquals(remaining, server.servedBytes() - servedBeforeCancel);
+        assertEquals(LARGE_SIZE, resumed.lastProgress);
+    }
+
+    @Test
+    public void changedFileOnServerIsDownloadedFromStart() throws Exception {
+        server.setWriteDelayMs(20);
+        SplitHttpDownloader downloader = SplitHttpDownloader.newBuilder().connectionsPerFile(1).build();
+        DownloadRequest request = request("small.apk", small);
+        RecordingCallback callback = download(downloader, 1, request);
+        callback.awaitProgress(20 * 1024);
+        downloader.cancelDownloadSync(1);
+        assertEquals("canceled", callback.awaitResult());
+        server.awaitIdle();
+
+        // same content under a new validator, If-Range is not matched and server responds the whole file.
+        server.setWriteDelayMs(0);
+        server.setFile("small.apk", small, "\"small-2\"");
+        long servedBeforeResume = server.servedBytes();
+        RecordingCallback resumed = download(SplitHttpDownloader.newBuilder().connectionsPerFile(1).build(), 2, request);
+
+        assertEquals("completed", resumed.awaitResult());
+        assertDownloaded("small.apk", small);
+        assertEquals(SMALL_SIZE, server.servedBytes() - servedBeforeResume);
+        assertEquals(SMALL_SIZE, resumed.lastProgress);
+    }
+
+    private SplitHttpDownloader newDownloader() {
+        return SplitHttpDownloader.newBuilder().minChunkSize(64 * 1024).connectionsPerFile(3).readTimeout(5000).build();
+    }
+
+    private DownloadRequest request(String name, byte[] content) throws Exception {
+        return DownloadRequest.newBuilder()
+                .url(server.url(name))
+                .fileDir(downloadDir.getAbsolutePath())
+                .fileName(name)
+                .fileMD5(md5(content))
+                .size(content.length)
+                .moduleName(name)
+                .build();
+    }
+
+    private static RecordingCallback download(SplitHttpDownloader downloader, int sessionId, DownloadRequest... requests) {
+        RecordingCallback callback = new RecordingCallback();
+        downloader.startDownload(sessionId, new ArrayList<>(Arrays.asList(requests)), callback);
+        return callback;
+    }
+
+    private void assertDownloaded(String name, byte[] content) throws IOException {
+        File file = new File(downloadDir, name);
+        byte[] downloaded = new byte[(int) file.length()];
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        try {
+            is.readFully(downloaded);
+        } finally {
+            is.close();
+        }
+        assertArrayEquals(content, downloaded);
+        assertFalse(new File(downloadDir, name + ".tmp").exists());
+        assertFalse(new File(downloadDir, name + ".journal").exists());
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static String md5(byte[] content) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+            builder.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+        }
+        return builder.toString();
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static final class RecordingCallback implements DownloadCallback {
+
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private volatile String result;
+
+        volatile boolean canceling;
+
+        volatile long lastProgress;
+
+        @Override
+        public void onStart() {
+
+        }
+
+        @Override
+        public void onCanceled() {
+            finish("canceled");
+        }
+
+        @Override
+        public void onCanceling() {
+            canceling = true;
+        }
+
+        @Override
+        public void onProgress(long currentBytes) {
+            lastProgress = currentBytes;
+        }
+
+        @Override
+        public void onCompleted() {
+            finish("completed");
+        }
+
+        @Override
+        public void onError(int errorCode) {
+            finish("error " + errorCode);
+        }
+
+        private void finish(String result) {
+            if (this.result != null) {
+                throw new AssertionError("Finished twice: " + this.result + ", " + result);
+            }
+            this.result = result;
+            finished.countDown();
+        }
+
+        String awaitResult() throws InterruptedException {
+            assertTrue("download is not finished", finished.await(20, TimeUnit.SECONDS));
+            return result;
+        }
+
+        void awaitProgress(long bytes) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 20000;
+            while (lastProgress < bytes) {
+                assertTrue("no progress", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitdownload;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP/1.1 server serving files from memory, one response per connection.
+ * Faults are injected into the next responses: disconnects, stalls, corrupted bytes, ignored ranges and slow bodies.
+ */
+final class TestHttpServer {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int WRITE_SIZE = 8 * 1024;
+
+    private final ServerSocket serverSocket;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicLong servedBytes = new AtomicLong();
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    /**
+     * Close the connection after so many body bytes, for each of the next {@link #disconnectCount} responses.
+     */
+    private final AtomicInteger disconnectCount = new AtomicInteger();
+
+    private volatile long disconnectAfter;
+
+    private final AtomicInteger stallCount = new AtomicInteger();
+
+    private volatile long stallAfter;
+
+    private volatile long stallMs;
+
+    private final AtomicInteger corruptCount = new AtomicInteger();
+
+    private volatile boolean ignoreRange;
+
+    /**
+     * Sleep between writes of {@link #WRITE_SIZE} bytes, to emulate a slow network.
+     */
+    private volatile long writeDelayMs;
+
+    private volatile boolean closed;
+
+    TestHttpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/" + path;
+    }
+
+    void setFile(String path, byte[] content, String etag) {
+        files.put("/" + path, content);
+        etags.put("/" + path, etag);
+    }
+
+    void disconnectNext(int count, long afterBytes) {
+        disconnectAfter = afterBytes;
+        disconnectCount.set(count);
+    }
+
+    void stallNext(int count, long afterBytes, long ms) {
+        stallAfter = afterBytes;
+        stallMs = ms;
+        stallCount.set(count);
+    }
+
+    void corruptNext(int count) {
+        corruptCount.set(count);
+    }
+
+    void setIgnoreRange(boolean ignoreRange) {
+        this.ignoreRange = ignoreRange;
+    }
+
+    void setWriteDelayMs(long writeDelayMs) {
+        this.writeDelayMs = writeDelayMs;
+    }
+
+    long servedBytes() {
+        return servedBytes.get();
+    }
+
+    /**
+     * Wait until connections closed by client are finished, so that {@link #servedBytes()} no longer changes.
+     */
+    void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (activeConnections.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Request lines followed by Range and If-Range headers, such as "GET /a.apk bytes=0-99 etag".
+     */
+    List<String> requests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            activeConnections.incrementAndGet();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException | InterruptedException e) {
+                        //client disconnected or server closed
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                            //ignored
+                        }
+                        activeConnections.decrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    private void serve(Socket socket) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ASCII));
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        String range = null;
+        String ifRange = null;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            if ("range".equals(name)) {
+                range = line.substring(colon + 1).trim();
+            } else if ("if-range".equals(name)) {
+                ifRange = line.substring(colon + 1).trim();
+            }
+        }
+        String path = requestLine.split(" ")[1];
+        requests.add(requestLine.substring(0, requestLine.lastIndexOf(' ')) + " " + range + " " + ifRange);
+        OutputStream os = socket.getOutputStream();
+        byte[] content = files.get(path);
+        if (content == null) {
+            os.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(ASCII));
+            os.flush();
+            return;
+        }
+        String etag = etags.get(path);
+        long start = 0;
+        long end = content.length;
+        boolean partial = false;
+        if (range != null && !ignoreRange && (ifRange == null || ifRange.equals(etag))) {
+            String spec = range.substring("bytes=".length());
+            int dash = spec.indexOf('-');
+            start = Long.parseLong(spec.substring(0, dash));
+            if (dash < spec.length() - 1) {
+                end = Math.min(content.length, Long.parseLong(spec.substring(dash + 1)) + 1);
+            }
+            partial = true;
+        }
+        StringBuilder header = new StringBuilder();
+        header.append(partial ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+        header.append("Content-Length: ").append(end - start).append("\r\n");
+        if (partial) {
+            header.append("Content-Range: bytes ").append(start).append('-').append(end - 1).append('/').append(content.length).append("\r\n");
+        }
+        header.append("ETag: ").append(etag).append("\r\n");
+        header.append("Connection: close\r\n\r\n");
+        os.write(header.toString().getBytes(ASCII));
+        long limit = end;
+        if (decrement(disconnectCount)) {
+            limit = Math.min(end, start + disconnectAfter);
+        }
+        long stallAt = decrement(stallCount) ? start + stallAfter : -1;
+        boolean corrupt = decrement(corruptCount);
+        byte[] buffer = new byte[WRITE_SIZE];
+        for (long position = start; position < limit; ) {
+            int count = (int) Math.min(buffer.length, limit - position);
+            if (stallAt >= 0 && position + count > stallAt) {
+                count = (int) Math.max(1, stallAt - position);
+            }
+            System.arraycopy(content, (int) position, buffer, 0, count);
+            if (corrupt && position == start) {
+                buffer[0] ^= 0xff;
+            }
+            try {
+                os.write(buffer, 0, count);
+                os.flush();
+            } catch (SocketException e) {
+                return;
+            }
+            servedBytes.addAndGet(count);
+            position += count;
+            if (stallAt >= 0 && position >= stallAt) {
+                stallAt = -1;
+                Thread.sleep(stallMs);
+            }
+            if (writeDelayMs > 0) {
+                Thread.sleep(writeDelayMs);
+            }
+        }
+    }
+
+    private static boolean decrement(AtomicInteger counter) {
+        while (true) {
+            int count = counter.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (counter.compareAndSet(count, count - 1)) {
+                return true;
+            }
+        }
+    }
+}
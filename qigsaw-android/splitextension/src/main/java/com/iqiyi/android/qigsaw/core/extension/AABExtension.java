@@ -119,6 +119,16 @@ public class AABExtension {
         return extensionManager.createApplication(classLoader, splitName);
     }
 
+    /**
+     * Load split application class without initializing it, so that it could be done off the main thread.
+     *
+     * @param classLoader used to load class.
+     * @param splitName   name of split.
+     */
+    public Class<?> loadApplicationClass(ClassLoader classLoader, String splitName) throws AABExtensionException {
+        return extensionManager.loadApplicationClass(classLoader, splitName);
+    }
+
     public void activeApplication(Application splitApplication, Context appContext) throws AABExtensionException {
         extensionManager.activeApplication(splitApplication, appContext);
     }
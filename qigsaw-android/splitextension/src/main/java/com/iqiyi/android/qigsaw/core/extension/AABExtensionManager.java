@@ -41,6 +41,15 @@ interface AABExtensionManager {
      */
     Application createApplication(ClassLoader classLoader, String splitName) throws AABExtensionException;
 
+    /**
+     * Load {@link Application} class of split without initializing it.
+     *
+     * @param classLoader used to load class
+     * @param splitName   name of split
+     * @return application class, or {@code null} if split has no application.
+     */
+    Class<?> loadApplicationClass(ClassLoader classLoader, String splitName) throws AABExtensionException;
+
     /**
      * Invoke {@link Application#attach(android.content.Context)} method to activate split's application.
      *
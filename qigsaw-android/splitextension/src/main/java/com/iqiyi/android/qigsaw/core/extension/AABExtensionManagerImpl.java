@@ -75,6 +75,19 @@ final class AABExtensionManagerImpl implements AABExtensionManager {
         return null;
     }
 
+    @Override
+    public Class<?> loadApplicationClass(ClassLoader classLoader, String splitName) throws AABExtensionException {
+        String applicationName = infoProvider.getSplitApplicationName(splitName);
+        if (TextUtils.isEmpty(applicationName)) {
+            return null;
+        }
+        try {
+            return Class.forName(applicationName, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new AABExtensionException(e);
+        }
+    }
+
     @Override
     @SuppressLint("DiscouragedPrivateApi")
     public void activeApplication(Application app, Context appContext) throws AABExtensionException {
@@ -29,11 +29,14 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.pm.Signature;
 
+import androidx.annotation.Nullable;
+
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
 import com.split.signature.G;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.security.MessageDigest;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
@@ -50,6 +53,15 @@ class SignatureValidator {
     }
 
     static boolean validateSplit(Context context, File splitFile) {
+        return validateSplit(context, splitFile, null);
+    }
+
+    /**
+     * Validate signature of split and feed the whole split file to {@code fileDigest} in the same pass.
+     *
+     * @param fileDigest digest of whole file, it is complete only if this method returns {@code true}.
+     */
+    static boolean validateSplit(Context context, File splitFile, @Nullable MessageDigest fileDigest) {
         Signature[] signatures;
         ArrayList<X509Certificate> signatureList;
         if ((signatures = getAppSignature(context)) == null) {
@@ -65,15 +77,15 @@ class SignatureValidator {
             signatureList = temp;
         }
         if (signatureList != null && !signatureList.isEmpty()) {
-            return a(splitFile.getAbsolutePath(), signatureList);
+            return a(splitFile.getAbsolutePath(), signatureList, fileDigest);
         }
         return false;
     }
 
-    private static boolean a(String var1, List<X509Certificate> var2) {
+    private static boolean a(String var1, List<X509Certificate> var2, MessageDigest var4) {
         X509Certificate[][] var3;
         try {
-            var3 = G.a(var1);
+            var3 = G.a(var1, var4);
         } catch (Exception var14) {
             SplitLog.e(TAG, "Downloaded split " + var1 + " is not signed.", var14);
             return false;
@@ -48,14 +48,18 @@ public final class SplitApkInstaller {
     public static void install(Context context,
                                Downloader downloader,
                                Class<? extends Activity> obtainUserConfirmationActivityClass,
-                               boolean verifySignature) {
+                               boolean verifySignature,
+                               long sessionProgressMinInterval,
+                               long sessionProgressMinBytes,
+                               long splitDiskQuota) {
         if (sSplitApkInstallerRef.get() == null) {
             sSplitApkInstallerRef.set(new SplitInstallSupervisorImpl(
                     context,
-                    new SplitInstallSessionManagerImpl(context),
+                    new SplitInstallSessionManagerImpl(context, sessionProgressMinInterval, sessionProgressMinBytes),
                     downloader,
                     obtainUserConfirmationActivityClass,
-                    verifySignature)
+                    verifySignature,
+                    splitDiskQuota)
             );
         }
     }
@@ -0,0 +1,217 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Rebuild split apk from the installed apk of previous split version and a zip-entry level patch,
+ * which is created by SplitApkPatchGenerator of qigsaw gradle plugin.
+ * <pre>
+ * header | magic, format version, utf base md5, utf target md5, long target size
+ * body   | deflated ops: OP_COPY [long base offset][int length], OP_DATA [int length][bytes], OP_END
+ * </pre>
+ * Patch is applied in one streaming pass and md5 of rebuilt apk is computed on the fly,
+ * so {@link SplitApkVerifier} only needs to check its signature.
+ */
+final class SplitApkPatch {
+
+    private static final String TAG = "SplitApkPatch";
+
+    private static final int MAGIC = 0x51535054;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int OP_END = 0;
+
+    private static final int OP_COPY = 1;
+
+    private static final int OP_DATA = 2;
+
+    private static final String PATCH_SUFFIX = ".patch";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private SplitApkPatch() {
+
+    }
+
+    static File getPatchFile(File splitDir, SplitInfo info, SplitInfo.ApkData apkData) {
+        return new File(splitDir, info.getSplitName() + "-" + apkData.getAbi() + PATCH_SUFFIX);
+    }
+
+    /**
+     * Find base apk which the patch of {@code apkData} can be applied to, only apks of other versions
+     * which are verified and not changed since then are considered.
+     *
+     * @return base apk, or {@code null} if split apk has to be downloaded completely.
+     */
+    @Nullable
+    static File findBaseApk(@NonNull SplitInfo info, @NonNull SplitInfo.ApkData apkData) {
+        SplitInfo.PatchData patchData = apkData.getPatchData();
+        if (patchData == null || info.isBuiltIn()) {
+            return null;
+        }
+        File currentSplitDir = SplitPathManager.require().getSplitDir(info);
+        File[] versionDirs = SplitPathManager.require().getSplitRootDir(info).listFiles();
+        if (versionDirs == null) {
+            return null;
+        }
+        String apkName = info.getSplitName() + "-" + apkData.getAbi() + SplitConstants.DOT_APK;
+        for (File versionDir : versionDirs) {
+            if (!versionDir.isDirectory() || versionDir.equals(currentSplitDir)) {
+                continue;
+            }
+            File baseApk = new File(versionDir, apkName);
+            String md5 = SplitApkVerifier.getVerifiedMd5(baseApk, SplitApkVerifier.getRecordFile(versionDir, baseApk));
+            if (patchData.getBaseMd5().equals(md5)) {
+                return baseApk;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget verification of base apk, so that it would not be patched again.
+     */
+    static void invalidateBaseApk(File baseApk) {
+        FileUtil.deleteFileSafely(SplitApkVerifier.getRecordFile(baseApk.getParentFile(), baseApk));
+    }
+
+    /**
+     * Rebuild split apk, it is written to a temp file first and then renamed to {@code targetApk}.
+     *
+     * @param expectedMd5 md5 of split apk.
+     * @return md5 of rebuilt split apk, which is always {@code expectedMd5}.
+     */
+    static String apply(File baseApk, File patchFile, File targetApk, String expectedMd5) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        File tmpFile = File.createTempFile(targetApk.getName(), null, targetApk.getParentFile());
+        DataInputStream patch = null;
+        RandomAccessFile base = null;
+        FileOutputStream fos = null;
+        Inflater inflater = new Inflater();
+        try {
+            patch = new DataInputStream(new BufferedInputStream(new FileInputStream(patchFile), BUFFER_SIZE));
+            if (patch.readInt() != MAGIC || patch.readShort() != FORMAT_VERSION) {
+                throw new IOException("Bad header of split apk patch " + patchFile.getAbsolutePath());
+            }
+            patch.readUTF();
+            String targetMd5 = patch.readUTF();
+            long targetSize = patch.readLong();
+            if (!targetMd5.equals(expectedMd5)) {
+                throw new IOException("Patch " + patchFile.getName() + " rebuilds apk " + targetMd5 + " but " + expectedMd5 + " is expected");
+            }
+            DataInputStream ops = new DataInputStream(new BufferedInputStream(new InflaterInputStream(patch, inflater), BUFFER_SIZE));
+            base = new RandomAccessFile(baseApk, "r");
+            long baseLength = base.length();
+            fos = new FileOutputStream(tmpFile);
+            DigestOutputStream output = new DigestOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE), digest);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            int op;
+            while ((op = ops.readByte()) != OP_END) {
+                if (op == OP_COPY) {
+                    long offset = ops.readLong();
+                    int length = ops.readInt();
+                    if (offset < 0 || length < 0 || offset + length > baseLength) {
+                        throw new IOException("Copy range [" + offset + ", " + length + "] is out of base apk");
+                    }
+                    base.seek(offset);
+                    for (int remaining = length; remaining > 0; ) {
+                        int count = Math.min(remaining, buffer.length);
+                        base.readFully(buffer, 0, count);
+                        output.write(buffer, 0, count);
+                        remaining -= count;
+                    }
+                    written += length;
+                } else if (op == OP_DATA) {
+                    int length = ops.readInt();
+                    if (length < 0) {
+                        throw new IOException("Bad data length " + length);
+                    }
+                    for (int remaining = length; remaining > 0; ) {
+                        int count = Math.min(remaining, buffer.length);
+                        ops.readFully(buffer, 0, count);
+                        output.write(buffer, 0, count);
+                        remaining -= count;
+                    }
+                    written += length;
+                } else {
+                    throw new IOException("Unknown op " + op + " of split apk patch");
+                }
+                if (written > targetSize) {
+                    throw new IOException("Rebuilt apk exceeds " + targetSize + " bytes");
+                }
+            }
+            output.flush();
+            fos.getFD().sync();
+            String md5 = SplitApkVerifier.toHexString(digest.digest());
+            if (written != targetSize || !expectedMd5.equals(md5)) {
+                throw new IOException("Rebuilt apk is broken, size " + written + " md5 " + md5);
+            }
+            FileUtil.closeQuietly(fos);
+            fos = null;
+            if (!tmpFile.renameTo(targetApk)) {
+                throw new IOException("Failed to rename " + tmpFile.getAbsolutePath() + " to " + targetApk.getAbsolutePath());
+            }
+            SplitLog.i(TAG, "Succeed to rebuild %s from %s, patch %d bytes", targetApk.getName(), baseApk.getAbsolutePath(), patchFile.length());
+            return md5;
+        } finally {
+            FileUtil.closeQuietly(fos);
+            FileUtil.closeQuietly(base);
+            FileUtil.closeQuietly(patch);
+            inflater.end();
+            FileUtil.deleteFileSafely(tmpFile);
+        }
+    }
+}
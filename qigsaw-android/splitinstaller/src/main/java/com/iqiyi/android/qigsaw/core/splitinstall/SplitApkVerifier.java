@@ -0,0 +1,279 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import android.content.Context;
+import android.os.Build;
+import android.system.Os;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.iqiyi.android.qigsaw.core.common.CompatBundle;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Verify signature and md5 of split apk in a single pass over the file.
+ * <p>
+ * Once a split apk is verified, a small record file which stores path, size, last-modified time,
+ * inode (if available) and md5 of the apk is written, so that the same file would not be verified
+ * again by {@link SplitDownloadPreprocessor} or {@link SplitInstallerImpl} until it is changed.
+ */
+final class SplitApkVerifier {
+
+    static final int VERIFIED = 0;
+
+    static final int SIGNATURE_MISMATCH = 1;
+
+    static final int MD5_MISMATCH = 2;
+
+    /**
+     * The apk could not be read to compute md5.
+     */
+    static final int READ_FAILED = 3;
+
+    private static final String TAG = "SplitApkVerifier";
+
+    private static final int RECORD_VERSION = 1;
+
+    private static final String RECORD_SUFFIX = ".verified";
+
+    private final Context context;
+
+    private final boolean verifySignature;
+
+    SplitApkVerifier(Context context, boolean verifySignature) {
+        this.context = context;
+        this.verifySignature = verifySignature;
+    }
+
+    /**
+     * @param splitApk    file of split apk.
+     * @param expectedMd5 md5 value of split apk.
+     * @param recordFile  file to record the result of verification.
+     * @return one of {@link #VERIFIED}, {@link #SIGNATURE_MISMATCH}, {@link #MD5_MISMATCH} and {@link #READ_FAILED}.
+     */
+    int verify(@NonNull File splitApk, @NonNull String expectedMd5, @NonNull File recordFile) {
+        return verify(splitApk, expectedMd5, recordFile, null);
+    }
+
+    /**
+     * @param knownMd5 md5 which has been computed while the apk is written, see {@link SplitApkPatch}.
+     *                 Only signature is verified by reading the apk if it is not {@code null}.
+     */
+    int verify(@NonNull File splitApk, @NonNull String expectedMd5, @NonNull File recordFile, @Nullable String knownMd5) {
+        VerifiedRecord current = VerifiedRecord.of(splitApk, expectedMd5, verifySignature);
+        VerifiedRecord recorded = VerifiedRecord.read(recordFile);
+        if (recorded != null && recorded.covers(current)) {
+            SplitLog.d(TAG, "Split apk %s has been verified, skip it.", splitApk.getAbsolutePath());
+            return VERIFIED;
+        }
+        String md5;
+        if (knownMd5 != null) {
+            if (verifySignature && !SignatureValidator.validateSplit(context, splitApk)) {
+                FileUtil.deleteFileSafely(recordFile);
+                return SIGNATURE_MISMATCH;
+            }
+            md5 = knownMd5;
+        } else if (verifySignature) {
+            MessageDigest fileDigest = CompatBundle.instance == null ? newMD5Digest() : null;
+            if (!SignatureValidator.validateSplit(context, splitApk, fileDigest)) {
+                FileUtil.deleteFileSafely(recordFile);
+                return SIGNATURE_MISMATCH;
+            }
+            md5 = fileDigest == null ? FileUtil.getMD5(splitApk) : toHexString(fileDigest.digest());
+        } else {
+            md5 = FileUtil.getMD5(splitApk);
+        }
+        if (TextUtils.isEmpty(md5)) {
+            FileUtil.deleteFileSafely(recordFile);
+            return READ_FAILED;
+        }
+        if (!expectedMd5.equals(md5)) {
+            SplitLog.w(TAG, "Failed to check split apk %s md5, expect %s but %s", splitApk.getAbsolutePath(), expectedMd5, md5);
+            FileUtil.deleteFileSafely(recordFile);
+            return MD5_MISMATCH;
+        }
+        current.write(recordFile);
+        return VERIFIED;
+    }
+
+    /**
+     * Record {@code splitApk} as verified without reading it, only if it has been replaced with a file of verified content.
+     */
+    void record(@NonNull File splitApk, @NonNull String expectedMd5, @NonNull File recordFile) {
+        VerifiedRecord.of(splitApk, expectedMd5, verifySignature).write(recordFile);
+    }
+
+    /**
+     * @return md5 recorded by last verification if {@code splitApk} has not been changed since then, otherwise {@code null}.
+     */
+    @Nullable
+    static String getVerifiedMd5(@NonNull File splitApk, @NonNull File recordFile) {
+        VerifiedRecord recorded = VerifiedRecord.read(recordFile);
+        if (recorded == null || !splitApk.exists()) {
+            return null;
+        }
+        return recorded.covers(VerifiedRecord.of(splitApk, recorded.md5, false)) ? recorded.md5 : null;
+    }
+
+    /**
+     * Get the file recording verification of split apk.
+     *
+     * @param splitDir directory of split, see {@link com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager#getSplitDir}
+     */
+    static File getRecordFile(File splitDir, File splitApk) {
+        return new File(splitDir, splitApk.getName() + RECORD_SUFFIX);
+    }
+
+    @Nullable
+    private static MessageDigest newMD5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    static String toHexString(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+        }
+        return builder.toString();
+    }
+
+    private static final class VerifiedRecord {
+
+        final String path;
+
+        final long size;
+
+        final long lastModified;
+
+        final long inode;
+
+        final String md5;
+
+        final boolean signatureVerified;
+
+        VerifiedRecord(String path, long size, long lastModified, long inode, String md5, boolean signatureVerified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.inode = inode;
+            this.md5 = md5;
+            this.signatureVerified = signatureVerified;
+        }
+
+        static VerifiedRecord of(File splitApk, String md5, boolean signatureVerified) {
+            return new VerifiedRecord(splitApk.getAbsolutePath(), splitApk.length(), splitApk.lastModified(),
+                    getInode(splitApk), md5, signatureVerified);
+        }
+
+        @Nullable
+        static VerifiedRecord read(File recordFile) {
+            if (!recordFile.exists()) {
+                return null;
+            }
+            DataInputStream is = null;
+            try {
+                is = new DataInputStream(new FileInputStream(recordFile));
+                if (is.readInt() != RECORD_VERSION) {
+                    return null;
+                }
+                return new VerifiedRecord(is.readUTF(), is.readLong(), is.readLong(), is.readLong(), is.readUTF(), is.readBoolean());
+            } catch (IOException e) {
+                SplitLog.w(TAG, "Failed to read verified record " + recordFile.getAbsolutePath(), e);
+                return null;
+            } finally {
+                FileUtil.closeQuietly(is);
+            }
+        }
+
+        /**
+         * Whether this record is written for the same file and the same expectation.
+         */
+        boolean covers(VerifiedRecord current) {
+            return path.equals(current.path)
+                    && size == current.size
+                    && lastModified == current.lastModified
+                    && inode == current.inode
+                    && md5.equals(current.md5)
+                    && (signatureVerified || !current.signatureVerified);
+        }
+
+        void write(File recordFile) {
+            File tmp = null;
+            DataOutputStream os = null;
+            try {
+                tmp = File.createTempFile(recordFile.getName(), null, recordFile.getParentFile());
+                os = new DataOutputStream(new FileOutputStream(tmp));
+                os.writeInt(RECORD_VERSION);
+                os.writeUTF(path);
+                os.writeLong(size);
+                os.writeLong(lastModified);
+                os.writeLong(inode);
+                os.writeUTF(md5);
+                os.writeBoolean(signatureVerified);
+                os.close();
+                os = null;
+                if (!tmp.renameTo(recordFile)) {
+                    SplitLog.w(TAG, "Failed to rename " + tmp.getAbsolutePath() + " to " + recordFile.getAbsolutePath());
+                }
+            } catch (IOException e) {
+                SplitLog.w(TAG, "Failed to write verified record " + recordFile.getAbsolutePath(), e);
+            } finally {
+                FileUtil.closeQuietly(os);
+                if (tmp != null) {
+                    FileUtil.deleteFileSafely(tmp);
+                }
+            }
+        }
+
+        private static long getInode(File file) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                try {
+                    return Os.stat(file.getAbsolutePath()).st_ino;
+                } catch (Throwable e) {
+                    //ignored
+                }
+            }
+            return -1L;
+        }
+    }
+}
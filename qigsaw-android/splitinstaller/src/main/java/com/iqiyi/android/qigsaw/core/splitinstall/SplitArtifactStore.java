@@ -0,0 +1,505 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import android.content.Context;
+import android.os.Build;
+import android.system.Os;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitJournalStore;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed store of split apks and libs, keyed by md5 and size, which is shared by all qigsaw ids and split versions.
+ * <p>
+ * Files of split dirs reference blobs of store by hard links, or by copies if links are not supported,
+ * so a split apk or lib which is already stored is neither downloaded nor extracted again.
+ * Referencing paths of every blob are recorded in a {@link SplitJournalStore}, and blobs are only linked, copied or deleted
+ * inside its mutations, which are serialized across processes. So {@link #gc} never deletes a blob which is being restored
+ * by a concurrent install.
+ */
+final class SplitArtifactStore {
+
+    private static final String TAG = "Split:ArtifactStore";
+
+    private static final String INDEX_FILE_NAME = "artifacts.journal";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final String KEY_SIZE = "size";
+
+    private static final String KEY_LINKS = "links";
+
+    private static final String KEY_COPIES = "copies";
+
+    private static final int TRANSFER_FAILED = 0;
+
+    private static final int TRANSFER_LINKED = 1;
+
+    private static final int TRANSFER_COPIED = 2;
+
+    /**
+     * Set once linking fails, e.g. store and split dirs are on different file systems, so that files are copied directly.
+     */
+    private static volatile boolean sLinkUnsupported;
+
+    /**
+     * Creates hard links by {@link Os#link} since Lollipop.
+     */
+    static final Linker OS_LINKER = new Linker() {
+
+        @Override
+        public boolean link(File source, File dest) {
+            if (sLinkUnsupported || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                return false;
+            }
+            try {
+                Os.link(source.getAbsolutePath(), dest.getAbsolutePath());
+                return true;
+            } catch (Throwable e) {
+                SplitLog.w(TAG, "Failed to link " + source.getAbsolutePath() + ", fall back to copy", e);
+                sLinkUnsupported = true;
+                return false;
+            }
+        }
+    };
+
+    private final File storeDir;
+
+    private final SplitJournalStore index;
+
+    private final Linker linker;
+
+    SplitArtifactStore(File storeDir) {
+        this(storeDir, OS_LINKER);
+    }
+
+    SplitArtifactStore(File storeDir, Linker linker) {
+        this.storeDir = storeDir;
+        this.index = SplitJournalStore.get(new File(storeDir, INDEX_FILE_NAME));
+        this.linker = linker;
+    }
+
+    static SplitArtifactStore get() {
+        return new SplitArtifactStore(SplitPathManager.require().getArtifactStoreDir());
+    }
+
+    static String key(@NonNull String md5, long size) {
+        return md5.toLowerCase() + "-" + size;
+    }
+
+    /**
+     * Keys of apks and libs of {@code splits}, which are passed to {@link #gc} so that they can be restored when installing.
+     */
+    static Set<String> keysOf(Context context, @NonNull Collection<SplitInfo> splits) {
+        Set<String> keys = new HashSet<>();
+        for (SplitInfo info : splits) {
+            try {
+                for (SplitInfo.ApkData apkData : info.getApkDataList(context)) {
+                    keys.add(key(apkData.getMd5(), apkData.getSize()));
+                }
+                SplitInfo.LibData libData = info.getPrimaryLibData(context);
+                if (libData != null) {
+                    for (SplitInfo.LibData.Lib lib : libData.getLibs()) {
+                        keys.add(key(lib.getMd5(), lib.getSize()));
+                    }
+                }
+            } catch (IOException e) {
+                //ignored
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Restore {@code target} from store if blob of {@code md5} and {@code size} is stored.
+     * Content of restored file is not checked, caller should verify it and {@link #remove} the blob if it is corrupted.
+     *
+     * @return {@code true} if {@code target} is restored and referenced by blob.
+     */
+    boolean restore(@NonNull String md5, final long size, @NonNull final File target) {
+        final String key = key(md5, size);
+        if (index.get(key) == null) {
+            return false;
+        }
+        final boolean[] restored = new boolean[1];
+        index.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                Artifact artifact = Artifact.decode(values.get(key));
+                if (artifact == null) {
+                    return null;
+                }
+                File blob = new File(storeDir, key);
+                if (blob.length() != size) {
+                    FileUtil.deleteFileSafely(blob);
+                    return Collections.singletonMap(key, null);
+                }
+                int result = transfer(blob, target);
+                if (result == TRANSFER_FAILED) {
+                    return null;
+                }
+                restored[0] = true;
+                artifact.references.put(target.getAbsolutePath(), result == TRANSFER_LINKED);
+                return Collections.singletonMap(key, artifact.encode());
+            }
+        });
+        if (restored[0]) {
+            SplitLog.i(TAG, "Restore %s from blob %s", target.getAbsolutePath(), key);
+        }
+        return restored[0];
+    }
+
+    /**
+     * Store {@code file} which has been verified with {@code md5} and {@code size}.
+     * If the blob is stored already, {@code file} is replaced with a link to it, so that only one copy is kept on disk.
+     *
+     * @return {@code true} if {@code file} is replaced, its content is unchanged but its inode and last modified time are.
+     */
+    boolean publish(@NonNull String md5, final long size, @NonNull final File file) {
+        final String key = key(md5, size);
+        final String path = file.getAbsolutePath();
+        Artifact stored = Artifact.decode(index.get(key));
+        if (stored != null && stored.references.containsKey(path)) {
+            return false;
+        }
+        final boolean[] replaced = new boolean[1];
+        index.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                Artifact artifact = Artifact.decode(values.get(key));
+                File blob = new File(storeDir, key);
+                boolean linked;
+                if (artifact == null || blob.length() != size) {
+                    int result = transfer(file, blob);
+                    if (result == TRANSFER_FAILED) {
+                        return null;
+                    }
+                    artifact = new Artifact(size);
+                    linked = result == TRANSFER_LINKED;
+                } else if (artifact.references.containsKey(path)) {
+                    return null;
+                } else {
+                    linked = link(blob, file);
+                    replaced[0] = linked;
+                }
+                artifact.references.put(path, linked);
+                return Collections.singletonMap(key, artifact.encode());
+            }
+        });
+        return replaced[0];
+    }
+
+    /**
+     * Delete blob of {@code md5} and {@code size}, files referencing it are left unchanged.
+     */
+    void remove(@NonNull String md5, long size) {
+        final String key = key(md5, size);
+        index.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                FileUtil.deleteFileSafely(new File(storeDir, key));
+                return values.containsKey(key) ? Collections.singletonMap(key, (String) null) : null;
+            }
+        });
+    }
+
+    /**
+     * Forget references whose files are deleted, and delete blobs which are referenced by nothing,
+     * unless their keys are in {@code retainedKeys}, e.g. splits of current qigsaw id which are not installed yet.
+     *
+     * @return bytes of deleted files.
+     */
+    long gc(@NonNull final Collection<String> retainedKeys) {
+        final long[] freedBytes = new long[1];
+        boolean success = index.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                Map<String, String> updates = new HashMap<>();
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    String key = entry.getKey();
+                    Artifact artifact = Artifact.decode(entry.getValue());
+                    File blob = new File(storeDir, key);
+                    if (artifact == null || blob.length() != artifact.size) {
+                        freedBytes[0] += delete(blob);
+                        updates.put(key, null);
+                        continue;
+                    }
+                    boolean changed = artifact.removeDeadReferences();
+                    if (artifact.references.isEmpty() && !retainedKeys.contains(key)) {
+                        freedBytes[0] += delete(blob);
+                        updates.put(key, null);
+                    } else if (changed) {
+                        updates.put(key, artifact.encode());
+                    }
+                }
+                //temp files left by crash and blobs missing in index.
+                File[] files = storeDir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        String name = file.getName();
+                        if (!values.containsKey(name) && !name.startsWith(INDEX_FILE_NAME)) {
+                            freedBytes[0] += delete(file);
+                        }
+                    }
+                }
+                return updates;
+            }
+        });
+        SplitLog.i(TAG, "Artifacts gc %s, %d bytes are freed", success ? "succeeded" : "failed", freedBytes[0]);
+        return freedBytes[0];
+    }
+
+    /**
+     * Measure disk usage of store, only references whose files still exist are counted.
+     */
+    Usage getUsage() {
+        int blobCount = 0;
+        long storedBytes = 0;
+        long referencedBytes = 0;
+        long copiedBytes = 0;
+        for (String value : index.getAll().values()) {
+            Artifact artifact = Artifact.decode(value);
+            if (artifact == null) {
+                continue;
+            }
+            artifact.removeDeadReferences();
+            blobCount++;
+            storedBytes += artifact.size;
+            for (boolean linked : artifact.references.values()) {
+                referencedBytes += artifact.size;
+                if (!linked) {
+                    copiedBytes += artifact.size;
+                }
+            }
+        }
+        return new Usage(blobCount, storedBytes, referencedBytes, copiedBytes);
+    }
+
+    /**
+     * Files of blobs, including those missing in index which are deleted by {@link #gc}.
+     */
+    @NonNull
+    List<File> listBlobs() {
+        File[] files = storeDir.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> blobs = new ArrayList<>(files.length);
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(INDEX_FILE_NAME) && !name.endsWith(TMP_SUFFIX)) {
+                blobs.add(file);
+            }
+        }
+        return blobs;
+    }
+
+    private static long delete(File file) {
+        long length = file.length();
+        return FileUtil.deleteFileSafely(file) ? length : 0;
+    }
+
+    /**
+     * Link or copy {@code source} to {@code dest} through a temp file, existing {@code dest} is replaced.
+     */
+    private int transfer(File source, File dest) {
+        if (link(source, dest)) {
+            return TRANSFER_LINKED;
+        }
+        File tmp = new File(dest.getPath() + TMP_SUFFIX);
+        try {
+            FileUtil.copyFile(source, tmp);
+            if (tmp.renameTo(dest)) {
+                return TRANSFER_COPIED;
+            }
+            SplitLog.w(TAG, "Failed to rename " + tmp.getAbsolutePath() + " to " + dest.getAbsolutePath());
+        } catch (IOException e) {
+            SplitLog.w(TAG, "Failed to copy " + source.getAbsolutePath() + " to " + tmp.getAbsolutePath(), e);
+        }
+        FileUtil.deleteFileSafely(tmp);
+        return TRANSFER_FAILED;
+    }
+
+    /**
+     * Replace {@code dest} with a hard link to {@code source}, {@code dest} is unchanged if it fails.
+     */
+    private boolean link(File source, File dest) {
+        File tmp = new File(dest.getPath() + TMP_SUFFIX);
+        FileUtil.deleteFileSafely(tmp);
+        if (!linker.link(source, tmp)) {
+            return false;
+        }
+        if (!tmp.renameTo(dest)) {
+            SplitLog.w(TAG, "Failed to rename " + tmp.getAbsolutePath() + " to " + dest.getAbsolutePath());
+            FileUtil.deleteFileSafely(tmp);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates hard links of blobs.
+     */
+    interface Linker {
+
+        /**
+         * @return {@code false} if links are not supported, then files are copied.
+         */
+        boolean link(File source, File dest);
+    }
+
+    /**
+     * Disk usage of store. Without store every referencing file would be a separate copy,
+     * so {@link #getSavedBytes()} is negative if the retained blobs cost more than links save.
+     */
+    static final class Usage {
+
+        final int blobCount;
+
+        /**
+         * Bytes of all blobs.
+         */
+        final long storedBytes;
+
+        /**
+         * Bytes of all files referencing blobs.
+         */
+        final long referencedBytes;
+
+        /**
+         * Bytes of referencing files which are copies of blobs instead of links.
+         */
+        final long copiedBytes;
+
+        Usage(int blobCount, long storedBytes, long referencedBytes, long copiedBytes) {
+            this.blobCount = blobCount;
+            this.storedBytes = storedBytes;
+            this.referencedBytes = referencedBytes;
+            this.copiedBytes = copiedBytes;
+        }
+
+        long getDiskBytes() {
+            return storedBytes + copiedBytes;
+        }
+
+        long getSavedBytes() {
+            return referencedBytes - getDiskBytes();
+        }
+    }
+
+    /**
+     * Index entry of blob, referencing paths are mapped to whether they are hard links.
+     */
+    private static final class Artifact {
+
+        final long size;
+
+        final Map<String, Boolean> references = new LinkedHashMap<>();
+
+        Artifact(long size) {
+            this.size = size;
+        }
+
+        /**
+         * @return {@code true} if any reference is removed.
+         */
+        boolean removeDeadReferences() {
+            boolean changed = false;
+            Iterator<String> iterator = references.keySet().iterator();
+            while (iterator.hasNext()) {
+                File file = new File(iterator.next());
+                if (file.length() != size || !file.exists()) {
+                    iterator.remove();
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        String encode() {
+            JSONArray links = new JSONArray();
+            JSONArray copies = new JSONArray();
+            for (Map.Entry<String, Boolean> entry : references.entrySet()) {
+                (entry.getValue() ? links : copies).put(entry.getKey());
+            }
+            JSONObject object = new JSONObject();
+            try {
+                object.put(KEY_SIZE, size);
+                object.put(KEY_LINKS, links);
+                object.put(KEY_COPIES, copies);
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+            return object.toString();
+        }
+
+        @Nullable
+        static Artifact decode(@Nullable String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                JSONObject object = new JSONObject(value);
+                Artifact artifact = new Artifact(object.getLong(KEY_SIZE));
+                JSONArray links = object.getJSONArray(KEY_LINKS);
+                for (int i = 0; i < links.length(); i++) {
+                    artifact.references.put(links.getString(i), true);
+                }
+                JSONArray copies = object.getJSONArray(KEY_COPIES);
+                for (int i = 0; i < copies.length(); i++) {
+                    artifact.references.put(copies.getString(i), false);
+                }
+                return artifact;
+            } catch (JSONException e) {
+                SplitLog.w(TAG, "Failed to decode artifact " + value);
+                return null;
+            }
+        }
+    }
+}
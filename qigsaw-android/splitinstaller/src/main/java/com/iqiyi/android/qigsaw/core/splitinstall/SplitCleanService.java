@@ -29,8 +29,14 @@ import android.content.Intent;
 import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManagerService;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
+import java.util.Collection;
+import java.util.Set;
+
 import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 
 @RestrictTo(LIBRARY_GROUP)
@@ -51,6 +57,26 @@ public class SplitCleanService extends IntentService {
 
     private void doClean() {
         SplitPathManager.require().clearCache();
+        Set<String> retainedArtifacts = getArtifactsOfCurrentSplits();
+        if (retainedArtifacts != null) {
+            SplitArtifactStore.get().gc(retainedArtifacts);
+        }
+    }
+
+    /**
+     * Artifacts of current splits are retained even if they are not referenced, so that they can be restored when installing.
+     */
+    @Nullable
+    private Set<String> getArtifactsOfCurrentSplits() {
+        SplitInfoManager manager = SplitInfoManagerService.getInstance();
+        if (manager == null) {
+            return null;
+        }
+        Collection<SplitInfo> splitInfoList = manager.getAllSplitInfo(this);
+        if (splitInfoList == null) {
+            return null;
+        }
+        return SplitArtifactStore.keysOf(this, splitInfoList);
     }
 
 }
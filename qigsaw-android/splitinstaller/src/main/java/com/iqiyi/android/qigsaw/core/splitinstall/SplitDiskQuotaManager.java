@@ -0,0 +1,448 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import android.content.Context;
+import android.os.Build;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.WorkerThread;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.ProcessUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitBriefInfo;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitDiskQuotaReporter;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitAccessLog;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * Keep disk usage of installed split versions within quota.
+ * <p>
+ * Old versions of a split are evicted by last access time recorded in {@link SplitAccessLog}, at most
+ * {@link #MAX_OLD_VERSIONS} of them are kept for every split. If quota is set and bytes used by all versions
+ * and {@link SplitArtifactStore} still exceed it, old versions of all splits are evicted least recently used first.
+ * Current versions, versions loaded by running processes and old versions of splits whose current version
+ * is not installed yet are never evicted.
+ * <p>
+ * Bytes of a version are measured from its apk, libs, dex zips and oat files. Files hard linked to blobs of
+ * {@link SplitArtifactStore} are shared, their bytes are counted once and freed by gc when their last link
+ * is evicted, unless their blobs are retained for current splits.
+ */
+@RestrictTo(LIBRARY_GROUP)
+public final class SplitDiskQuotaManager {
+
+    private static final String TAG = "Split:DiskQuotaManager";
+
+    /**
+     * Max number of old versions kept for one split regardless of quota.
+     */
+    static final int MAX_OLD_VERSIONS = 1;
+
+    /**
+     * Quota which never evicts versions except those exceeding {@link #MAX_OLD_VERSIONS}.
+     */
+    public static final long UNLIMITED = 0L;
+
+    /**
+     * Reads stat of files by {@link Os#lstat} since Lollipop, where hard links may be created by {@link SplitArtifactStore}.
+     */
+    static final FileStatReader OS_STAT_READER = new FileStatReader() {
+
+        @Override
+        public FileStat lstat(File file) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                return null;
+            }
+            try {
+                StructStat stat = Os.lstat(file.getAbsolutePath());
+                return new FileStat(OsConstants.S_ISREG(stat.st_mode), OsConstants.S_ISLNK(stat.st_mode),
+                        stat.st_ino, stat.st_nlink, stat.st_size);
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+    };
+
+    private final Context context;
+
+    private final long quotaBytes;
+
+    private final SplitAccessLog accessLog;
+
+    private final SplitArtifactStore artifactStore;
+
+    private final FileStatReader statReader;
+
+    public SplitDiskQuotaManager(Context context, long quotaBytes) {
+        this(context, quotaBytes, SplitAccessLog.get(), SplitArtifactStore.get(), OS_STAT_READER);
+    }
+
+    SplitDiskQuotaManager(Context context, long quotaBytes, SplitAccessLog accessLog,
+                          SplitArtifactStore artifactStore, FileStatReader statReader) {
+        this.context = context;
+        this.quotaBytes = quotaBytes;
+        this.accessLog = accessLog;
+        this.artifactStore = artifactStore;
+        this.statReader = statReader;
+    }
+
+    /**
+     * Evict split versions exceeding quota.
+     *
+     * @param allSplits      current split infos.
+     * @param excludedSplits names of splits which are not trimmed, e.g. splits pending uninstall whose dirs are deleted at all.
+     */
+    @WorkerThread
+    public void trim(@NonNull Collection<SplitInfo> allSplits, @NonNull Collection<String> excludedSplits) {
+        long startTime = System.currentTimeMillis();
+        Map<String, SplitAccessLog.Entry> accessEntries = accessLog.getAll();
+        Set<Integer> runningPids = ProcessUtil.getRunningProcessIds(context);
+        List<String> staleKeys = new ArrayList<>();
+        List<Version> candidates = new ArrayList<>();
+        List<Version> evicted = new ArrayList<>();
+        Set<String> retainedKeys = SplitArtifactStore.keysOf(context, allSplits);
+        Map<Long, SharedFile> sharedFiles = new HashMap<>();
+        long usedBytes = measureBlobs(retainedKeys, sharedFiles);
+        for (SplitInfo info : allSplits) {
+            if (excludedSplits.contains(info.getSplitName())) {
+                continue;
+            }
+            File splitRootDir = SplitPathManager.require().getSplitRootDir(info);
+            File[] versionDirs = splitRootDir.listFiles();
+            if (versionDirs == null) {
+                continue;
+            }
+            boolean installed = isInstalled(info);
+            List<Version> oldVersions = new ArrayList<>(versionDirs.length);
+            for (File versionDir : versionDirs) {
+                if (!versionDir.isDirectory()) {
+                    continue;
+                }
+                Version version = createVersion(info.getSplitName(), versionDir, accessEntries, sharedFiles);
+                usedBytes += version.bytes;
+                if (versionDir.getName().equals(info.getSplitVersion())) {
+                    continue;
+                }
+                SplitAccessLog.Entry entry = accessEntries.get(version.key);
+                if (!installed || (entry != null && entry.isLoaded(runningPids))) {
+                    SplitLog.i(TAG, "Split %s version %s may be in use, skip it", version.splitName, version.splitVersion);
+                    continue;
+                }
+                oldVersions.add(version);
+            }
+            Collections.sort(oldVersions, MOST_RECENTLY_USED_FIRST);
+            for (int i = 0; i < oldVersions.size(); i++) {
+                (i < MAX_OLD_VERSIONS ? candidates : evicted).add(oldVersions.get(i));
+            }
+            collectStaleKeys(info.getSplitName(), versionDirs, accessEntries, staleKeys);
+        }
+        for (SharedFile sharedFile : sharedFiles.values()) {
+            if (!sharedFile.stored) {
+                usedBytes += sharedFile.size;
+            }
+        }
+        long exceededBytes = usedBytes - quotaBytes;
+        for (Version version : evicted) {
+            exceededBytes -= freedBytesOnEviction(version, sharedFiles);
+        }
+        if (quotaBytes > UNLIMITED) {
+            Collections.sort(candidates, Collections.reverseOrder(MOST_RECENTLY_USED_FIRST));
+            for (Version version : candidates) {
+                if (exceededBytes <= 0) {
+                    break;
+                }
+                evicted.add(version);
+                exceededBytes -= freedBytesOnEviction(version, sharedFiles);
+            }
+            if (exceededBytes > 0) {
+                SplitLog.w(TAG, "Disk quota %d bytes is still exceeded by %d bytes, all evictable versions are evicted", quotaBytes, exceededBytes);
+            }
+        }
+        if (evicted.isEmpty()) {
+            if (!staleKeys.isEmpty()) {
+                accessLog.remove(staleKeys);
+            }
+            return;
+        }
+        long deletedBytes = 0;
+        List<SplitBriefInfo> evictedInfos = new ArrayList<>(evicted.size());
+        for (Version version : evicted) {
+            SplitLog.i(TAG, "Split %s version %s is evicted, last accessed at %d, %d bytes", version.splitName, version.splitVersion, version.lastAccessTime, version.bytes);
+            if (FileUtil.deleteDir(version.dir)) {
+                deletedBytes += version.bytes;
+                staleKeys.add(version.key);
+                evictedInfos.add(new SplitBriefInfo(version.splitName, version.splitVersion, false));
+            }
+            SplitPathManager.require().invalidateDirs(version.dir);
+        }
+        accessLog.remove(staleKeys);
+        long reclaimedBytes = deletedBytes + artifactStore.gc(retainedKeys);
+        long cost = System.currentTimeMillis() - startTime;
+        SplitLog.i(TAG, "Evict %d split versions, reclaimed %d bytes, cost %d ms", evictedInfos.size(), reclaimedBytes, cost);
+        SplitDiskQuotaReporter reporter = SplitDiskQuotaReporterManager.getDiskQuotaReporter();
+        if (reporter != null && !evictedInfos.isEmpty()) {
+            reporter.onSplitsEvicted(evictedInfos, reclaimedBytes, usedBytes - reclaimedBytes, cost);
+        }
+    }
+
+    private boolean isInstalled(SplitInfo info) {
+        try {
+            String installedMark = info.obtainInstalledMark(context);
+            return SplitInstallStateTable.get().getOatStatus(info, installedMark) != SplitInstallStateTable.NOT_INSTALLED;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Versions which have never been recorded, e.g. installed before access log is introduced, fall back to last modified time.
+     */
+    private Version createVersion(String splitName, File versionDir,
+                                  Map<String, SplitAccessLog.Entry> accessEntries, Map<Long, SharedFile> sharedFiles) {
+        String splitVersion = versionDir.getName();
+        String key = SplitAccessLog.key(splitName, splitVersion);
+        SplitAccessLog.Entry entry = accessEntries.get(key);
+        long lastAccessTime = entry != null ? entry.lastAccessTime : versionDir.lastModified();
+        Map<Long, Integer> sharedLinks = new HashMap<>();
+        long bytes = measure(versionDir, sharedFiles, sharedLinks);
+        return new Version(splitName, splitVersion, key, versionDir, lastAccessTime, bytes, sharedLinks);
+    }
+
+    /**
+     * Record blobs of artifact store as shared files.
+     *
+     * @return bytes of blobs.
+     */
+    private long measureBlobs(Set<String> retainedKeys, Map<Long, SharedFile> sharedFiles) {
+        long bytes = 0;
+        for (File blob : artifactStore.listBlobs()) {
+            FileStat stat = statReader.lstat(blob);
+            if (stat == null) {
+                bytes += blob.length();
+            } else if (stat.regular) {
+                bytes += stat.size;
+                sharedFiles.put(stat.inode, new SharedFile(stat.size, stat.links, true, retainedKeys.contains(blob.getName())));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Forget links of {@code version} to shared files.
+     *
+     * @return bytes freed by deleting {@code version} and then running gc of artifact store.
+     */
+    private static long freedBytesOnEviction(Version version, Map<Long, SharedFile> sharedFiles) {
+        long bytes = version.bytes;
+        for (Map.Entry<Long, Integer> link : version.sharedLinks.entrySet()) {
+            SharedFile sharedFile = sharedFiles.get(link.getKey());
+            sharedFile.remainingLinks -= link.getValue();
+            if (!sharedFile.retained && sharedFile.remainingLinks == (sharedFile.stored ? 1 : 0)) {
+                bytes += sharedFile.size;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Entries of versions whose dirs are deleted, e.g. by uninstall or clear data.
+     */
+    private static void collectStaleKeys(String splitName, File[] versionDirs,
+                                         Map<String, SplitAccessLog.Entry> accessEntries, List<String> staleKeys) {
+        String prefix = SplitAccessLog.key(splitName, "");
+        for (String key : accessEntries.keySet()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            boolean exists = false;
+            for (File versionDir : versionDirs) {
+                if (key.equals(SplitAccessLog.key(splitName, versionDir.getName()))) {
+                    exists = true;
+                    break;
+                }
+            }
+            if (!exists) {
+                staleKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Measure bytes which are freed by deleting {@code file} only. Hard linked files are recorded in {@code sharedFiles}
+     * and their links in {@code sharedLinks} instead.
+     */
+    private long measure(File file, Map<Long, SharedFile> sharedFiles, Map<Long, Integer> sharedLinks) {
+        FileStat stat = statReader.lstat(file);
+        if (stat != null) {
+            if (stat.symbolicLink) {
+                return 0;
+            }
+            if (stat.regular) {
+                if (stat.links <= 1) {
+                    return stat.size;
+                }
+                if (!sharedFiles.containsKey(stat.inode)) {
+                    sharedFiles.put(stat.inode, new SharedFile(stat.size, stat.links, false, false));
+                }
+                Integer count = sharedLinks.get(stat.inode);
+                sharedLinks.put(stat.inode, count == null ? 1 : count + 1);
+                return 0;
+            }
+        } else if (file.isFile()) {
+            return file.length();
+        }
+        File[] children = file.listFiles();
+        long bytes = 0;
+        if (children != null) {
+            for (File child : children) {
+                bytes += measure(child, sharedFiles, sharedLinks);
+            }
+        }
+        return bytes;
+    }
+
+
+    private static final Comparator<Version> MOST_RECENTLY_USED_FIRST = new Comparator<Version>() {
+        @Override
+        public int compare(Version o1, Version o2) {
+            return o1.lastAccessTime < o2.lastAccessTime ? 1 : (o1.lastAccessTime == o2.lastAccessTime ? 0 : -1);
+        }
+    };
+
+    /**
+     * Reads stat of files without following symbolic links.
+     */
+    interface FileStatReader {
+
+        /**
+         * @return {@code null} if stat is not available, then hard links are not recognized.
+         */
+        @Nullable
+        FileStat lstat(File file);
+    }
+
+    static final class FileStat {
+
+        final boolean regular;
+
+        final boolean symbolicLink;
+
+        final long inode;
+
+        final long links;
+
+        final long size;
+
+        FileStat(boolean regular, boolean symbolicLink, long inode, long links, long size) {
+            this.regular = regular;
+            this.symbolicLink = symbolicLink;
+            this.inode = inode;
+            this.links = links;
+            this.size = size;
+        }
+    }
+
+    /**
+     * File with more than one hard link, whose bytes are freed when its last link out of artifact store is deleted.
+     */
+    private static final class SharedFile {
+
+        final long size;
+
+        /**
+         * Whether one of its links is a blob of artifact store.
+         */
+        final boolean stored;
+
+        /**
+         * Whether its blob is retained by gc of artifact store.
+         */
+        final boolean retained;
+
+        long remainingLinks;
+
+        SharedFile(long size, long links, boolean stored, boolean retained) {
+            this.size = size;
+            this.remainingLinks = links;
+            this.stored = stored;
+            this.retained = retained;
+        }
+    }
+
+    private static final class Version {
+
+        final String splitName;
+
+        final String splitVersion;
+
+        final String key;
+
+        final File dir;
+
+        final long lastAccessTime;
+
+        /**
+         * Bytes of files which are not shared.
+         */
+        final long bytes;
+
+        /**
+         * Inodes of shared files mapped to the number of their links in this version.
+         */
+        final Map<Long, Integer> sharedLinks;
+
+        Version(String splitName, String splitVersion, String key, File dir, long lastAccessTime, long bytes,
+                Map<Long, Integer> sharedLinks) {
+            this.splitName = splitName;
+            this.splitVersion = splitVersion;
+            this.key = key;
+            this.dir = dir;
+            this.lastAccessTime = lastAccessTime;
+            this.bytes = bytes;
+            this.sharedLinks = sharedLinks;
+        }
+    }
+}
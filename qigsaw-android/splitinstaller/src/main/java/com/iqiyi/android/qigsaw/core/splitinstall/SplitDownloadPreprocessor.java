@@ -25,7 +25,6 @@
 package com.iqiyi.android.qigsaw.core.splitinstall;
 
 import android.content.Context;
-import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -34,8 +33,10 @@ import com.iqiyi.android.qigsaw.core.common.AbiUtil;
 import com.iqiyi.android.qigsaw.core.common.FileUtil;
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
 import java.io.Closeable;
@@ -63,6 +64,8 @@ final class SplitDownloadPreprocessor implements Closeable {
 
     private final File splitDir;
 
+    private final SplitArtifactStore artifactStore = SplitArtifactStore.get();
+
     private static final String LOCK_FILENAME = "SplitCopier.lock";
 
     SplitDownloadPreprocessor(File splitDir) throws IOException {
@@ -101,16 +104,16 @@ final class SplitDownloadPreprocessor implements Closeable {
                             copyBuiltInSplit(context, info.getSplitName(), apkData, splitApk);
                         }
                         //check size
-                        if (!verifySplitApk(context, apkData, splitApk, verifySignature)) {
+                        if (!verifySplitApk(context, info, apkData, splitApk, verifySignature)) {
                             throw new IOException(String.format("Failed to check built-in split %s, it may be corrupted", info.getSplitName()));
                         }
                     } else {
                         SplitLog.v(TAG, "Built-in split %s is existing", splitApk.getAbsolutePath());
-                        if (!verifySplitApk(context, apkData, splitApk, verifySignature)) {
+                        if (!verifySplitApk(context, info, apkData, splitApk, verifySignature)) {
                             if (builtInSplitInAssets) {
                                 copyBuiltInSplit(context, info.getSplitName(), apkData, splitApk);
                             }
-                            if (!verifySplitApk(context, apkData, splitApk, verifySignature)) {
+                            if (!verifySplitApk(context, info, apkData, splitApk, verifySignature)) {
                                 throw new IOException(String.format("Failed to check built-in split %s, it may be corrupted", splitApk.getAbsolutePath()));
                             }
                         }
@@ -118,9 +121,19 @@ final class SplitDownloadPreprocessor implements Closeable {
                 } else {
                     if (splitApk.exists()) {
                         SplitLog.v(TAG, "split %s is downloaded", info.getSplitName());
-                        verifySplitApk(context, apkData, splitApk, verifySignature);
+                        verifySplitApk(context, info, apkData, splitApk, verifySignature);
+                    } else if (restoreSplitApk(apkData, splitApk)) {
+                        SplitLog.v(TAG, "split %s is restored from artifact store", info.getSplitName());
+                        if (!verifySplitApk(context, info, apkData, splitApk, verifySignature)) {
+                            artifactStore.remove(apkData.getMd5(), apkData.getSize());
+                        }
                     } else {
                         SplitLog.v(TAG, " split %s is not downloaded", info.getSplitName());
+                        SplitInfo.PatchData patchData = apkData.getPatchData();
+                        if (patchData != null && SplitApkPatch.findBaseApk(info, apkData) != null) {
+                            downloadedSplitApkFiles.set(downloadedSplitApkFiles.size() - 1,
+                                    new SplitFile(splitDir, SplitApkPatch.getPatchFile(splitDir, info, apkData).getName(), patchData.getSize()));
+                        }
                     }
                 }
             }
@@ -128,38 +141,42 @@ final class SplitDownloadPreprocessor implements Closeable {
         }
     }
 
-    private boolean verifySplitApk(Context context, SplitInfo.ApkData apkData, File splitApk, boolean verifySignature) {
+    private boolean restoreSplitApk(SplitInfo.ApkData apkData, File splitApk) {
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "restoreApk");
+        boolean restored = artifactStore.restore(apkData.getMd5(), apkData.getSize(), splitApk);
+        SplitTrace.attr(span, "restored", restored);
+        SplitTrace.end(span);
+        return restored;
+    }
+
+    private boolean verifySplitApk(Context context, SplitInfo info, SplitInfo.ApkData apkData, File splitApk, boolean verifySignature) {
         if (FileUtil.isLegalFile(splitApk)) {
+            SplitApkVerifier verifier = new SplitApkVerifier(context, verifySignature);
+            long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "verifyApk");
+            SplitTrace.attr(span, "apk", splitApk.getName());
+            int result = verifier.verify(splitApk, apkData.getMd5(), SplitApkVerifier.getRecordFile(splitDir, splitApk));
+            SplitTrace.attr(span, "result", result);
+            SplitTrace.end(span);
             boolean ret;
-            if (verifySignature) {
-                ret = SignatureValidator.validateSplit(context, splitApk);
-                if (ret) {
-                    ret = checkSplitMD5(apkData, splitApk);
-                }
+            if (result == SplitApkVerifier.READ_FAILED) {
+                //fallback to check apk length.
+                ret = apkData.getSize() == splitApk.length();
             } else {
-                ret = checkSplitMD5(apkData, splitApk);
+                ret = result == SplitApkVerifier.VERIFIED;
             }
             if (!ret) {
                 SplitLog.w(TAG, "Oops! Failed to check file %s signature or md5", splitApk.getAbsoluteFile());
-                deleteCorruptedOrObsoletedSplitApk();
+                deleteCorruptedOrObsoletedSplitApk(info);
             }
             return ret;
         }
         return false;
     }
 
-    private static boolean checkSplitMD5(SplitInfo.ApkData apkData, File splitApk) {
-        String apkMd5 = FileUtil.getMD5(splitApk);
-        if (TextUtils.isEmpty(apkMd5)) {
-            //fallback to check apk length.
-            return apkData.getSize() == splitApk.length();
-        } else {
-            return apkData.getMd5().equals(apkMd5);
-        }
-    }
-
-    private void deleteCorruptedOrObsoletedSplitApk() {
+    private void deleteCorruptedOrObsoletedSplitApk(SplitInfo info) {
         FileUtil.deleteDir(splitDir);
+        SplitPathManager.require().invalidateDirs(splitDir);
+        SplitInstallStateTable.get().remove(info.getSplitName());
         if (splitDir.exists()) {
             SplitLog.w(TAG, "Failed to delete corrupted split files");
         }
@@ -170,6 +187,7 @@ final class SplitDownloadPreprocessor implements Closeable {
         boolean isCopySuccessful = false;
         File tmpDir = SplitPathManager.require().getSplitTmpDir();
         File tmp = File.createTempFile("tmp-" + splitName, SplitConstants.DOT_APK, tmpDir);
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "copyBuiltInApk");
         String fileName = SplitConstants.QIGSAW + "/" + splitName + "-" + apkData.getAbi() + SplitConstants.DOT_ZIP;
         while (!isCopySuccessful && numAttempts < MAX_RETRY_ATTEMPTS) {
             ++numAttempts;
@@ -200,6 +218,8 @@ final class SplitDownloadPreprocessor implements Closeable {
             }
         }
         FileUtil.deleteFileSafely(tmp);
+        SplitTrace.attr(span, "attempts", numAttempts);
+        SplitTrace.end(span);
         if (!isCopySuccessful) {
             throw new IOException(String.format("Failed to copy built-in file %s to path %s", fileName, splitApk.getPath()));
         }
@@ -0,0 +1,417 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import androidx.annotation.NonNull;
+
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.splitdownload.DownloadCallback;
+import com.iqiyi.android.qigsaw.core.splitdownload.DownloadRequest;
+import com.iqiyi.android.qigsaw.core.splitdownload.Downloader;
+import com.iqiyi.android.qigsaw.core.splitdownload.ThrottlingDownloader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedule download sessions of {@link Downloader} by priority.
+ * <p>
+ * Foreground sessions (start-install requested by user) are downloaded immediately. While any of them is active,
+ * running sessions of lower priority are throttled if downloader is a {@link ThrottlingDownloader}, otherwise they are
+ * paused by {@link Downloader#cancelDownloadSync(int)}, and new ones are queued. Throttled sessions get full speed
+ * and paused sessions are downloaded again once no foreground session is active, downloader is expected to resume
+ * them from downloaded data, as {@code SplitHttpDownloader} does. Pausing is invisible to callbacks of paused sessions.
+ * <p>
+ * Each time a session is handed to downloader, it gets a new {@link Attempt} as callback. Callbacks of an attempt
+ * which has been paused or superseded are dropped, so a paused session never waits for its onCanceled.
+ */
+final class SplitDownloadScheduler {
+
+    private static final String TAG = "Split:DownloadScheduler";
+
+    static final int PRIORITY_FOREGROUND = 0;
+
+    static final int PRIORITY_DEFERRED = 1;
+
+    static final int PRIORITY_PREFETCH = 2;
+
+    /**
+     * Speed of lower priority sessions while a foreground session is active.
+     */
+    static final long THROTTLED_BYTES_PER_SECOND = 32 * 1024L;
+
+    private static final int STATE_QUEUED = 0;
+
+    private static final int STATE_RUNNING = 1;
+
+    private static final int STATE_PAUSING = 2;
+
+    private static final int STATE_CANCELING = 3;
+
+    private static final int STATE_THROTTLED = 4;
+
+    private final Downloader downloader;
+
+    private final Map<Integer, ScheduledSession> sessions = new HashMap<>();
+
+    private final Object lock = new Object();
+
+    private long submittedCount;
+
+    SplitDownloadScheduler(@NonNull Downloader downloader) {
+        this.downloader = downloader;
+    }
+
+    /**
+     * Download splits for foreground session, lower priority sessions are throttled or paused until it finishes.
+     */
+    void startDownload(int sessionId, List<DownloadRequest> requests, DownloadCallback callback) {
+        ScheduledSession session = new ScheduledSession(sessionId, PRIORITY_FOREGROUND, requests, callback, true);
+        List<ScheduledSession> toYield = new ArrayList<>();
+        ScheduledSession superseded = null;
+        boolean cancelSuperseded = false;
+        Attempt attempt;
+        synchronized (lock) {
+            ScheduledSession sameIdSession = sessions.get(sessionId);
+            if (sameIdSession != null && sameIdSession.priority != PRIORITY_FOREGROUND) {
+                //deferred session of the same splits is replaced by this one.
+                superseded = sameIdSession;
+                cancelSuperseded = sameIdSession.state != STATE_QUEUED;
+                sameIdSession.attempt = null;
+            }
+            for (ScheduledSession running : sessions.values()) {
+                if (running.priority > PRIORITY_FOREGROUND && running.state == STATE_RUNNING && running != superseded) {
+                    running.state = downloader instanceof ThrottlingDownloader ? STATE_THROTTLED : STATE_PAUSING;
+                    toYield.add(running);
+                }
+            }
+            session.state = STATE_RUNNING;
+            session.order = submittedCount++;
+            attempt = session.newAttempt();
+            sessions.put(sessionId, session);
+        }
+        if (superseded != null) {
+            if (cancelSuperseded) {
+                //the same session id can't be downloaded twice by downloader at the same time.
+                downloader.cancelDownloadSync(sessionId);
+            }
+            superseded.callback.onCanceled();
+        }
+        downloader.startDownload(sessionId, requests, attempt);
+        for (ScheduledSession running : toYield) {
+            yield(running);
+        }
+    }
+
+    /**
+     * Download splits for session of {@code priority}, it is queued if any foreground session is active.
+     */
+    void deferredDownload(int sessionId, int priority, List<DownloadRequest> requests, DownloadCallback callback, boolean usingMobileDataPermitted) {
+        ScheduledSession session = new ScheduledSession(sessionId, priority, requests, callback, usingMobileDataPermitted);
+        Attempt attempt = null;
+        synchronized (lock) {
+            ScheduledSession existing = sessions.get(sessionId);
+            if (existing != null) {
+                SplitLog.w(TAG, "Session %d is being downloaded, ignore deferred download request", sessionId);
+                return;
+            }
+            session.order = submittedCount++;
+            if (hasActiveForegroundSession()) {
+                session.state = STATE_QUEUED;
+            } else {
+                session.state = STATE_RUNNING;
+                attempt = session.newAttempt();
+            }
+            sessions.put(sessionId, session);
+        }
+        if (attempt != null) {
+            downloader.deferredDownload(sessionId, requests, attempt, usingMobileDataPermitted);
+        } else {
+            SplitLog.i(TAG, "Foreground session is active, queue session %d", sessionId);
+        }
+    }
+
+    boolean cancelDownloadSync(int sessionId) {
+        ScheduledSession queuedSession = null;
+        synchronized (lock) {
+            ScheduledSession session = sessions.get(sessionId);
+            if (session != null) {
+                if (session.state == STATE_QUEUED) {
+                    sessions.remove(sessionId);
+                    queuedSession = session;
+                } else {
+                    session.state = STATE_CANCELING;
+                }
+            }
+        }
+        if (queuedSession != null) {
+            queuedSession.callback.onCanceled();
+            return true;
+        }
+        return downloader.cancelDownloadSync(sessionId);
+    }
+
+    /**
+     * Leave bandwidth to foreground session, by throttling or pausing {@code session}.
+     */
+    private void yield(ScheduledSession session) {
+        if (downloader instanceof ThrottlingDownloader) {
+            SplitLog.i(TAG, "Throttle session %d for foreground session", session.sessionId);
+            ThrottlingDownloader throttlingDownloader = (ThrottlingDownloader) downloader;
+            if (!throttlingDownloader.setSessionBandwidth(session.sessionId, THROTTLED_BYTES_PER_SECOND)) {
+                SplitLog.w(TAG, "Failed to throttle session %d, let it go on", session.sessionId);
+            }
+            boolean unthrottled;
+            synchronized (lock) {
+                unthrottled = session.state != STATE_THROTTLED;
+            }
+            if (unthrottled) {
+                //foreground session has finished before throttling takes effect.
+                throttlingDownloader.setSessionBandwidth(session.sessionId, ThrottlingDownloader.UNLIMITED);
+            }
+            return;
+        }
+        SplitLog.i(TAG, "Pause session %d for foreground session", session.sessionId);
+        boolean canceled = downloader.cancelDownloadSync(session.sessionId);
+        synchronized (lock) {
+            if (session.state != STATE_PAUSING) {
+                //paused by onCanceled already, or canceled by user meanwhile.
+                return;
+            }
+            if (canceled) {
+                //downloader has stopped it, onCanceled may come late or never.
+                session.state = STATE_QUEUED;
+                session.attempt = null;
+            } else {
+                SplitLog.w(TAG, "Failed to pause session %d, let it go on", session.sessionId);
+                session.state = STATE_RUNNING;
+            }
+        }
+        scheduleQueuedSessions();
+    }
+
+    /**
+     * Give full speed back to throttled sessions and resume queued sessions in order of priority,
+     * if no foreground session is active.
+     */
+    private void scheduleQueuedSessions() {
+        List<ScheduledSession> toRun = new ArrayList<>();
+        List<ScheduledSession> toUnthrottle = new ArrayList<>();
+        synchronized (lock) {
+            if (hasActiveForegroundSession()) {
+                return;
+            }
+            for (ScheduledSession session : sessions.values()) {
+                if (session.state == STATE_QUEUED) {
+                    session.state = STATE_RUNNING;
+                    toRun.add(session);
+                } else if (session.state == STATE_THROTTLED) {
+                    session.state = STATE_RUNNING;
+                    toUnthrottle.add(session);
+                }
+            }
+            Collections.sort(toRun, new Comparator<ScheduledSession>() {
+                @Override
+                public int compare(ScheduledSession o1, ScheduledSession o2) {
+                    if (o1.priority != o2.priority) {
+                        return o1.priority < o2.priority ? -1 : 1;
+                    }
+                    return o1.order < o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
+                }
+            });
+        }
+        for (ScheduledSession session : toUnthrottle) {
+            SplitLog.i(TAG, "Unthrottle session %d", session.sessionId);
+            ((ThrottlingDownloader) downloader).setSessionBandwidth(session.sessionId, ThrottlingDownloader.UNLIMITED);
+        }
+        for (ScheduledSession session : toRun) {
+            Attempt attempt;
+            synchronized (lock) {
+                if (session.state != STATE_RUNNING || sessions.get(session.sessionId) != session) {
+                    continue;
+                }
+                attempt = session.newAttempt();
+            }
+            SplitLog.i(TAG, "Resume session %d", session.sessionId);
+            downloader.deferredDownload(session.sessionId, session.requests, attempt, session.usingMobileDataPermitted);
+        }
+    }
+
+    private boolean hasActiveForegroundSession() {
+        for (ScheduledSession session : sessions.values()) {
+            if (session.priority == PRIORITY_FOREGROUND) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onSessionFinished(ScheduledSession session) {
+        synchronized (lock) {
+            if (sessions.get(session.sessionId) == session) {
+                sessions.remove(session.sessionId);
+            }
+        }
+        scheduleQueuedSessions();
+    }
+
+    /**
+     * Download session whose callback is notified once, no matter how many times it is paused and resumed.
+     */
+    private final class ScheduledSession {
+
+        final int sessionId;
+
+        final int priority;
+
+        final List<DownloadRequest> requests;
+
+        final DownloadCallback callback;
+
+        final boolean usingMobileDataPermitted;
+
+        int state;
+
+        long order;
+
+        /**
+         * Attempt whose callbacks are forwarded, {@code null} while the session is queued.
+         */
+        Attempt attempt;
+
+        boolean started;
+
+        ScheduledSession(int sessionId, int priority, List<DownloadRequest> requests, DownloadCallback callback, boolean usingMobileDataPermitted) {
+            this.sessionId = sessionId;
+            this.priority = priority;
+            this.requests = requests;
+            this.callback = callback;
+            this.usingMobileDataPermitted = usingMobileDataPermitted;
+        }
+
+        Attempt newAttempt() {
+            attempt = new Attempt(this);
+            return attempt;
+        }
+    }
+
+    /**
+     * Callback of a session handed to downloader once, forwards callbacks except the ones caused by pausing.
+     */
+    private final class Attempt implements DownloadCallback {
+
+        private final ScheduledSession session;
+
+        Attempt(ScheduledSession session) {
+            this.session = session;
+        }
+
+        private boolean isCurrent() {
+            return session.attempt == this;
+        }
+
+        @Override
+        public void onStart() {
+            synchronized (lock) {
+                if (!isCurrent() || session.started) {
+                    return;
+                }
+                session.started = true;
+            }
+            session.callback.onStart();
+        }
+
+        @Override
+        public void onCanceling() {
+            synchronized (lock) {
+                if (!isCurrent() || session.state == STATE_PAUSING) {
+                    return;
+                }
+            }
+            session.callback.onCanceling();
+        }
+
+        @Override
+        public void onCanceled() {
+            boolean paused;
+            synchronized (lock) {
+                if (!isCurrent()) {
+                    return;
+                }
+                session.attempt = null;
+                paused = session.state == STATE_PAUSING;
+                if (paused) {
+                    session.state = STATE_QUEUED;
+                }
+            }
+            if (paused) {
+                SplitLog.i(TAG, "Session %d is paused", session.sessionId);
+                //foreground session may have finished before pausing takes effect.
+                scheduleQueuedSessions();
+                return;
+            }
+            session.callback.onCanceled();
+            onSessionFinished(session);
+        }
+
+        @Override
+        public void onProgress(long currentBytes) {
+            synchronized (lock) {
+                if (!isCurrent()) {
+                    return;
+                }
+            }
+            session.callback.onProgress(currentBytes);
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (lock) {
+                if (!isCurrent()) {
+                    return;
+                }
+                session.attempt = null;
+            }
+            session.callback.onCompleted();
+            onSessionFinished(session);
+        }
+
+        @Override
+        public void onError(int errorCode) {
+            synchronized (lock) {
+                if (!isCurrent()) {
+                    return;
+                }
+                session.attempt = null;
+            }
+            session.callback.onError(errorCode);
+            onSessionFinished(session);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run a list of file extractions on the calling thread, together with a few helpers on install worker executor.
+ * The calling thread never waits for a helper which has not started, so it is safe to be used
+ * from install worker threads.
+ */
+final class SplitExtractionQueue implements Runnable {
+
+    interface Extraction {
+
+        void run() throws IOException;
+    }
+
+    private final List<? extends Extraction> extractions;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private final Object lock = new Object();
+
+    private int runningHelpers;
+
+    private boolean closed;
+
+    private IOException error;
+
+    private SplitExtractionQueue(List<? extends Extraction> extractions) {
+        this.extractions = extractions;
+    }
+
+    /**
+     * @param maxHelpers max number of worker threads helping the calling thread.
+     * @throws IOException the first error of extractions.
+     */
+    static void run(List<? extends Extraction> extractions, int maxHelpers) throws IOException {
+        if (extractions.isEmpty()) {
+            return;
+        }
+        SplitExtractionQueue queue = new SplitExtractionQueue(extractions);
+        int helperCount = Math.min(extractions.size() - 1, maxHelpers);
+        if (helperCount > 0) {
+            Executor executor = SplitInstallerExecutor.getWorkerExecutor();
+            for (int i = 0; i < helperCount; i++) {
+                executor.execute(queue);
+            }
+        }
+        queue.drainAndAwait();
+        if (queue.error != null) {
+            throw queue.error;
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            runningHelpers++;
+        }
+        try {
+            drain();
+        } finally {
+            synchronized (lock) {
+                runningHelpers--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void drainAndAwait() {
+        drain();
+        boolean interrupted = false;
+        synchronized (lock) {
+            closed = true;
+            while (runningHelpers > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < extractions.size()) {
+            synchronized (lock) {
+                if (error != null) {
+                    return;
+                }
+            }
+            try {
+                extractions.get(index).run();
+            } catch (IOException e) {
+                onError(e);
+            } catch (RuntimeException e) {
+                onError(new IOException(e));
+            }
+        }
+    }
+
+    private void onError(IOException e) {
+        synchronized (lock) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+}
@@ -53,6 +53,11 @@ final class SplitInstallInternalSessionState {
 
     private List<Intent> splitFileIntents;
 
+    /**
+     * Scheduler of running installation, guarded by this state.
+     */
+    private SplitInstallScheduler installScheduler;
+
     final List<SplitInfo> needInstalledSplits;
 
     final List<DownloadRequest> downloadRequests;
@@ -89,6 +94,10 @@ final class SplitInstallInternalSessionState {
         return status;
     }
 
+    long bytesDownloaded() {
+        return bytesDownloaded;
+    }
+
     void setStatus(int status) {
         if (this.status != status) {
             this.status = status;
@@ -111,6 +120,14 @@ final class SplitInstallInternalSessionState {
         this.splitFileIntents = splitFileIntents;
     }
 
+    void setInstallScheduler(SplitInstallScheduler installScheduler) {
+        this.installScheduler = installScheduler;
+    }
+
+    SplitInstallScheduler installScheduler() {
+        return installScheduler;
+    }
+
     static Bundle transform2Bundle(SplitInstallInternalSessionState sessionState) {
         Bundle bundle;
         (bundle = new Bundle()).putInt("session_id", sessionState.sessionId());
@@ -0,0 +1,288 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallError;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitPhase;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Install a batch of splits on a worker pool with respect to dependencies between them.
+ * <p>
+ * A split is dispatched once all of its dependencies in the batch have finished. For start-install,
+ * the first failure cancels every split which has not started yet, just like the serial installation
+ * stops at the first failure. For deferred-install, a failure does not stop other splits.
+ * Splits can also be canceled by {@link #cancel(String)} when installation of session is canceled.
+ * Outcomes are always returned in the order of the batch, which is topological order of splits.
+ * Cross-process safety still relies on file locks taken by {@link SplitInstaller} for each split.
+ */
+final class SplitInstallScheduler {
+
+    private static final String TAG = "SplitInstallScheduler";
+
+    private final SplitInstaller installer;
+
+    private final boolean startInstall;
+
+    private final Executor workerExecutor;
+
+    private final List<SplitInfo> splits;
+
+    private final Map<String, Integer> positions;
+
+    private final List<List<Integer>> dependents;
+
+    private final int[] pendingDependencies;
+
+    private final SplitOutcome[] outcomes;
+
+    private final Object lock = new Object();
+
+    private int finishedCount;
+
+    /**
+     * @param workerExecutor executor to run installation, if null splits are installed serially on the calling thread.
+     */
+    SplitInstallScheduler(@NonNull SplitInstaller installer,
+                          boolean startInstall,
+                          @NonNull Collection<SplitInfo> splits,
+                          @Nullable Executor workerExecutor) {
+        this.installer = installer;
+        this.startInstall = startInstall;
+        this.workerExecutor = workerExecutor;
+        this.splits = new ArrayList<>(splits);
+        int size = this.splits.size();
+        this.positions = new HashMap<>(size * 2);
+        this.dependents = new ArrayList<>(size);
+        this.pendingDependencies = new int[size];
+        this.outcomes = new SplitOutcome[size];
+        for (int i = 0; i < size; i++) {
+            SplitInfo info = this.splits.get(i);
+            positions.put(info.getSplitName(), i);
+            dependents.add(new ArrayList<Integer>(0));
+            outcomes[i] = new SplitOutcome(info);
+        }
+        for (int i = 0; i < size; i++) {
+            List<String> dependencies = this.splits.get(i).getDependencies();
+            if (dependencies == null) {
+                continue;
+            }
+            for (String dependency : dependencies) {
+                Integer position = positions.get(dependency);
+                if (position != null && position != i) {
+                    dependents.get(position).add(i);
+                    pendingDependencies[i]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Install all splits and wait until every split is installed, failed or canceled.
+     *
+     * @return outcomes of splits in the order of batch.
+     */
+    List<SplitOutcome> install() {
+        if (workerExecutor == null) {
+            installSerially();
+        } else {
+            installConcurrently();
+        }
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * Cancel installation of a split and all splits in the batch depending on it.
+     * Installation which has started would not be interrupted.
+     *
+     * @return {@code true} if the split or any split depending on it is canceled by this call.
+     */
+    boolean cancel(String splitName) {
+        synchronized (lock) {
+            Integer position = positions.get(splitName);
+            return position != null && cancelLocked(position) > 0;
+        }
+    }
+
+    private void installSerially() {
+        for (int i = 0; i < outcomes.length; i++) {
+            SplitOutcome outcome = outcomes[i];
+            synchronized (lock) {
+                if (outcome.canceled) {
+                    continue;
+                }
+                outcome.started = true;
+            }
+            installSplit(outcome);
+            if (outcome.error != null && startInstall) {
+                synchronized (lock) {
+                    cancelAllPendingLocked();
+                }
+            }
+        }
+    }
+
+    private void installConcurrently() {
+        synchronized (lock) {
+            for (int i = 0; i < outcomes.length; i++) {
+                if (pendingDependencies[i] == 0) {
+                    dispatchLocked(i);
+                }
+            }
+            boolean interrupted = false;
+            while (finishedCount < outcomes.length) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    cancelAllPendingLocked();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void dispatchLocked(final int position) {
+        if (outcomes[position].canceled) {
+            onFinishedLocked(position);
+            return;
+        }
+        workerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SplitOutcome outcome = outcomes[position];
+                synchronized (lock) {
+                    if (outcome.canceled) {
+                        onFinishedLocked(position);
+                        return;
+                    }
+                    outcome.started = true;
+                }
+                installSplit(outcome);
+                synchronized (lock) {
+                    if (outcome.error != null && startInstall) {
+                        cancelAllPendingLocked();
+                    }
+                    onFinishedLocked(position);
+                }
+            }
+        });
+    }
+
+    private void onFinishedLocked(int position) {
+        finishedCount++;
+        for (int dependent : dependents.get(position)) {
+            if (--pendingDependencies[dependent] == 0) {
+                dispatchLocked(dependent);
+            }
+        }
+        if (finishedCount == outcomes.length) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return number of splits canceled.
+     */
+    private int cancelLocked(int position) {
+        SplitOutcome outcome = outcomes[position];
+        if (outcome.started || outcome.canceled) {
+            return 0;
+        }
+        outcome.canceled = true;
+        SplitLog.i(TAG, "Installation of split %s is canceled", outcome.splitInfo.getSplitName());
+        int count = 1;
+        for (int dependent : dependents.get(position)) {
+            count += cancelLocked(dependent);
+        }
+        return count;
+    }
+
+    private void cancelAllPendingLocked() {
+        for (int i = 0; i < outcomes.length; i++) {
+            cancelLocked(i);
+        }
+    }
+
+    private void installSplit(SplitOutcome outcome) {
+        long installStart = System.currentTimeMillis();
+        String splitName = outcome.splitInfo.getSplitName();
+        long traceMark = SplitTrace.mark();
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "install", splitName);
+        try {
+            outcome.result = installer.install(startInstall, outcome.splitInfo);
+        } catch (SplitInstaller.InstallException e) {
+            outcome.error = e;
+        } catch (RuntimeException e) {
+            SplitLog.printErrStackTrace(TAG, e, "Unexpected error when installing split %s", splitName);
+            outcome.error = new SplitInstaller.InstallException(SplitInstallError.INTERNAL_ERROR, e);
+        } finally {
+            SplitTrace.attr(span, "version", outcome.splitInfo.getSplitVersion());
+            SplitTrace.end(span);
+        }
+        outcome.timeCost = System.currentTimeMillis() - installStart;
+        outcome.phases = SplitPhase.fromSpans(SplitTrace.collect(splitName, traceMark));
+    }
+
+    static final class SplitOutcome {
+
+        final SplitInfo splitInfo;
+
+        SplitInstaller.InstallResult result;
+
+        SplitInstaller.InstallException error;
+
+        boolean started;
+
+        boolean canceled;
+
+        long timeCost;
+
+        /**
+         * Traced phases of installation, empty if tracing is disabled.
+         */
+        List<SplitPhase> phases;
+
+        SplitOutcome(SplitInfo splitInfo) {
+            this.splitInfo = splitInfo;
+        }
+    }
+}
@@ -44,4 +44,14 @@ interface SplitInstallSessionManager {
 
     void emitSessionState(SplitInstallInternalSessionState sessionState);
 
+    /**
+     * @return count of session state updates delivered to listeners.
+     */
+    long getEmittedUpdateCount();
+
+    /**
+     * @return count of download progress updates merged into later ones.
+     */
+    long getSuppressedUpdateCount();
+
 }
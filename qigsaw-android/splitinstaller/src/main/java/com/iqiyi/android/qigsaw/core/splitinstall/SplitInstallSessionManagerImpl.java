@@ -27,13 +27,20 @@ package com.iqiyi.android.qigsaw.core.splitinstall;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.SparseArray;
 
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
 import java.util.ArrayList;
 import java.util.List;
 
 final class SplitInstallSessionManagerImpl implements SplitInstallSessionManager {
 
+    private static final String TAG = "SplitInstallSessionManagerImpl";
+
     private final SparseArray<SplitInstallInternalSessionState> mActiveSessionStates = new SparseArray<>();
 
     private final Context mContext;
@@ -42,9 +49,22 @@ final class SplitInstallSessionManagerImpl implements SplitInstallSessionManager
 
     private final Object mLock = new Object();
 
-    SplitInstallSessionManagerImpl(Context context) {
+    private final Object mEmitLock = new Object();
+
+    private final SplitSessionUpdateCoalescer mCoalescer;
+
+    private final Handler mFlushHandler;
+
+    SplitInstallSessionManagerImpl(Context context, long progressMinIntervalMillis, long progressMinBytesDelta) {
+        this(context, new SplitSessionUpdateCoalescer(progressMinIntervalMillis, progressMinBytesDelta, SplitSessionUpdateCoalescer.SYSTEM_CLOCK),
+                new Handler(Looper.getMainLooper()));
+    }
+
+    SplitInstallSessionManagerImpl(Context context, SplitSessionUpdateCoalescer coalescer, Handler flushHandler) {
         this.mContext = context;
         this.mPackageName = context.getPackageName();
+        this.mCoalescer = coalescer;
+        this.mFlushHandler = flushHandler;
     }
 
     @Override
@@ -64,9 +84,7 @@ final class SplitInstallSessionManagerImpl implements SplitInstallSessionManager
             SplitInstallInternalSessionState sessionState = mActiveSessionStates.get(sessionId);
             if (sessionState != null) {
                 sessionState.setStatus(status);
-                if (status == SplitInstallInternalSessionStatus.CANCELED
-                        || status == SplitInstallInternalSessionStatus.FAILED
-                        || status == SplitInstallInternalSessionStatus.POST_INSTALLED) {
+                if (isTerminalStatus(status)) {
                     removeSessionState(sessionId);
                 }
             }
@@ -75,10 +93,16 @@ final class SplitInstallSessionManagerImpl implements SplitInstallSessionManager
 
     @Override
     public void removeSessionState(int sessionId) {
+        SplitInstallInternalSessionState sessionState;
         synchronized (mLock) {
-            if (sessionId != 0) {
-                mActiveSessionStates.remove(sessionId);
+            if (sessionId == 0) {
+                return;
             }
+            sessionState = mActiveSessionStates.get(sessionId);
+            mActiveSessionStates.remove(sessionId);
+        }
+        if (sessionState != null) {
+            forgetSessionUpdates(sessionState, sessionState.status());
         }
     }
 
@@ -131,7 +155,72 @@ final class SplitInstallSessionManagerImpl implements SplitInstallSessionManager
     }
 
     @Override
-    public void emitSessionState(SplitInstallInternalSessionState sessionState) {
+    public void emitSessionState(final SplitInstallInternalSessionState sessionState) {
+        final int sessionId = sessionState.sessionId();
+        synchronized (mEmitLock) {
+            int status = sessionState.status();
+            if (!mCoalescer.offer(sessionId, status, sessionState.bytesDownloaded())) {
+                long delay = mCoalescer.scheduleFlush(sessionId);
+                if (delay >= 0) {
+                    mFlushHandler.postAtTime(new Runnable() {
+                        @Override
+                        public void run() {
+                            flushSessionState(sessionState);
+                        }
+                    }, sessionState, SystemClock.uptimeMillis() + delay);
+                }
+                return;
+            }
+            sendSessionState(sessionState);
+            if (isTerminalStatus(status)) {
+                forgetSessionUpdates(sessionState, status);
+            }
+        }
+    }
+
+    @Override
+    public long getEmittedUpdateCount() {
+        synchronized (mEmitLock) {
+            return mCoalescer.getEmittedCount();
+        }
+    }
+
+    @Override
+    public long getSuppressedUpdateCount() {
+        synchronized (mEmitLock) {
+            return mCoalescer.getSuppressedCount();
+        }
+    }
+
+    /**
+     * Drop coalescing record and pending flush of a finished or removed session.
+     */
+    private void forgetSessionUpdates(SplitInstallInternalSessionState sessionState, int status) {
+        synchronized (mEmitLock) {
+            mFlushHandler.removeCallbacksAndMessages(sessionState);
+            long suppressed = mCoalescer.remove(sessionState.sessionId());
+            if (suppressed > 0) {
+                SplitLog.d(TAG, "Session %d finished with status %d, %d progress updates are merged", sessionState.sessionId(), status, suppressed);
+            }
+        }
+    }
+
+    private static boolean isTerminalStatus(int status) {
+        return status == SplitInstallInternalSessionStatus.INSTALLED
+                || status == SplitInstallInternalSessionStatus.CANCELED
+                || status == SplitInstallInternalSessionStatus.FAILED
+                || status == SplitInstallInternalSessionStatus.POST_INSTALLED;
+    }
+
+    void flushSessionState(SplitInstallInternalSessionState sessionState) {
+        synchronized (mEmitLock) {
+            if (mCoalescer.flush(sessionState.sessionId(), sessionState.status(), sessionState.bytesDownloaded())) {
+                sendSessionState(sessionState);
+            }
+        }
+    }
+
+    private void sendSessionState(SplitInstallInternalSessionState sessionState) {
         Bundle bundle = SplitInstallInternalSessionState.transform2Bundle(sessionState);
         Intent intent = new Intent();
         intent.putExtra("session_state", bundle);
@@ -38,9 +38,11 @@ import com.iqiyi.android.qigsaw.core.common.SplitBaseInfoProvider;
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitAABInfoProvider;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 import com.iqiyi.android.qigsaw.core.splitdownload.DownloadRequest;
 import com.iqiyi.android.qigsaw.core.splitdownload.Downloader;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoIndex;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManagerService;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
@@ -52,7 +54,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -66,6 +67,8 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
 
     private final Downloader userDownloader;
 
+    private final SplitDownloadScheduler downloadScheduler;
+
     private final long downloadSizeThresholdValue;
 
     private final Set<String> installedSplitForAAB;
@@ -78,20 +81,25 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
 
     private final List<String> dynamicFeatures;
 
+    private final long splitDiskQuota;
+
     SplitInstallSupervisorImpl(Context appContext,
                                SplitInstallSessionManager sessionManager,
                                Downloader userDownloader,
                                Class<? extends Activity> obtainUserConfirmationActivityClass,
-                               boolean verifySignature) {
+                               boolean verifySignature,
+                               long splitDiskQuota) {
         this.appContext = appContext;
         this.sessionManager = sessionManager;
         this.userDownloader = userDownloader;
+        this.downloadScheduler = new SplitDownloadScheduler(userDownloader);
         long downloadSizeThreshold = userDownloader.getDownloadSizeThresholdWhenUsingMobileData();
         this.downloadSizeThresholdValue = downloadSizeThreshold < 0 ? Long.MAX_VALUE : downloadSizeThreshold;
         this.installedSplitForAAB = new SplitAABInfoProvider(this.appContext).getInstalledSplitsForAAB();
         this.obtainUserConfirmationActivityClass = obtainUserConfirmationActivityClass;
         this.splitInstaller = new SplitInstallerImpl(appContext, verifySignature);
         this.verifySignature = verifySignature;
+        this.splitDiskQuota = splitDiskQuota;
         String[] dynamicFeaturesArray = SplitBaseInfoProvider.getDynamicFeatures();
         this.dynamicFeatures = dynamicFeaturesArray == null ? null : Arrays.asList(dynamicFeaturesArray);
         if (dynamicFeatures == null) {
@@ -99,6 +107,11 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
         }
     }
 
+    @Override
+    protected long getSplitDiskQuota() {
+        return splitDiskQuota;
+    }
+
     @Override
     public void startInstall(List<Bundle> moduleNames, Callback callback) {
         List<String> moduleNameList = unBundleModuleNames(moduleNames);
@@ -172,18 +185,45 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
         }
         if (sessionState.status() == SplitInstallInternalSessionStatus.PENDING
                 || sessionState.status() == SplitInstallInternalSessionStatus.DOWNLOADING) {
-            boolean ret = userDownloader.cancelDownloadSync(sessionId);
+            boolean ret = downloadScheduler.cancelDownloadSync(sessionId);
             SplitLog.d(TAG, "result of cancel request : " + ret);
             if (ret) {
                 callback.onCancelInstall(sessionId, null);
             } else {
                 callback.onError(bundleErrorCode(SplitInstallInternalErrorCode.INVALID_REQUEST));
             }
+        } else if (sessionState.status() == SplitInstallInternalSessionStatus.INSTALLING && cancelInstallingSplits(sessionState)) {
+            callback.onCancelInstall(sessionId, null);
         } else {
             callback.onError(bundleErrorCode(SplitInstallInternalErrorCode.INVALID_REQUEST));
         }
     }
 
+    /**
+     * Cancel splits of session which have not started installing, splits being installed are not interrupted.
+     * Session becomes {@link SplitInstallInternalSessionStatus#CANCELED} once running splits finish.
+     *
+     * @return {@code true} if any split is canceled.
+     */
+    private boolean cancelInstallingSplits(SplitInstallInternalSessionState sessionState) {
+        synchronized (sessionState) {
+            SplitInstallScheduler scheduler = sessionState.installScheduler();
+            if (scheduler == null) {
+                return false;
+            }
+            boolean canceled = false;
+            for (SplitInfo info : sessionState.needInstalledSplits) {
+                canceled |= scheduler.cancel(info.getSplitName());
+            }
+            if (canceled) {
+                sessionManager.changeSessionState(sessionState.sessionId(), SplitInstallInternalSessionStatus.CANCELING);
+                sessionManager.emitSessionState(sessionState);
+            }
+            SplitLog.i(TAG, "Cancel installing splits of session %d, result: %b", sessionState.sessionId(), canceled);
+            return canceled;
+        }
+    }
+
     @Override
     public void getSessionState(int sessionId, Callback callback) {
         SplitInstallInternalSessionState sessionStateVariant = sessionManager.getSessionState(sessionId);
@@ -216,7 +256,7 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
                     splitInstaller, sessionId, sessionManager, sessionState.needInstalledSplits);
             sessionManager.changeSessionState(sessionId, SplitInstallInternalSessionStatus.PENDING);
             sessionManager.emitSessionState(sessionState);
-            userDownloader.startDownload(sessionState.sessionId(), sessionState.downloadRequests, downloadCallback);
+            downloadScheduler.startDownload(sessionState.sessionId(), sessionState.downloadRequests, downloadCallback);
             return true;
         }
         return false;
@@ -300,19 +340,10 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
     private List<SplitInfo> getNeed2BeInstalledSplits(List<String> moduleNames) {
         SplitInfoManager manager = SplitInfoManagerService.getInstance();
         assert manager != null;
-        List<SplitInfo> needInstallSplitInfos = manager.getSplitInfos(appContext, moduleNames);
-        Set<String> dependenciesSplits = new HashSet<>(0);
-        for (SplitInfo info : needInstallSplitInfos) {
-            if (info.getDependencies() != null) {
-                dependenciesSplits.addAll(info.getDependencies());
-            }
-        }
-        if (!dependenciesSplits.isEmpty()) {
-            dependenciesSplits.removeAll(moduleNames);
-            SplitLog.i(TAG, "Add dependencies %s automatically for install splits %s!", dependenciesSplits.toString(), moduleNames.toString());
-            List<SplitInfo> dependenciesSplitInfos = manager.getSplitInfos(appContext, dependenciesSplits);
-            dependenciesSplitInfos.addAll(needInstallSplitInfos);
-            return dependenciesSplitInfos;
+        SplitInfoIndex index = manager.getSplitInfoIndex(appContext);
+        List<SplitInfo> needInstallSplitInfos = index.getSplitInfosWithDependencies(moduleNames);
+        if (needInstallSplitInfos.size() > moduleNames.size()) {
+            SplitLog.i(TAG, "Add dependencies automatically for install splits %s, all splits to install %s!", moduleNames.toString(), needInstallSplitInfos.size());
         }
         return needInstallSplitInfos;
     }
@@ -332,7 +363,7 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
                 List<DownloadRequest> downloadRequests = createDownloadRequests(needInstallSplits);
                 realTotalBytesNeedToDownload = userDownloader.calculateDownloadSize(downloadRequests, result[1]);
                 boolean usingMobileDataPermitted = realTotalBytesNeedToDownload < downloadSizeThresholdValue && !userDownloader.isDeferredDownloadOnlyWhenUsingWifiData();
-                userDownloader.deferredDownload(sessionId, downloadRequests, downloadCallback, usingMobileDataPermitted);
+                downloadScheduler.deferredDownload(sessionId, SplitDownloadScheduler.PRIORITY_DEFERRED, downloadRequests, downloadCallback, usingMobileDataPermitted);
             }
         } catch (IOException e) {
             callback.onError(bundleErrorCode(SplitInstallInternalErrorCode.BUILTIN_SPLIT_APK_COPIED_FAILED));
@@ -358,14 +389,15 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
         }
         SplitLog.d(TAG, "startInstall session id: " + sessionId);
         try {
-            List<DownloadRequest> downloadRequests = createDownloadRequests(needInstallSplits);
-            if (sessionState == null) {
-                sessionState = new SplitInstallInternalSessionState(sessionId, moduleNames, needInstallSplits, downloadRequests);
-            }
             //1.copy built-in apk if need
             //2.check signature
             //3.create list of download request
             long[] result = onPreDownloadSplits(needInstallSplits);
+            //split apks restored from artifact store are not requested as patches.
+            List<DownloadRequest> downloadRequests = createDownloadRequests(needInstallSplits);
+            if (sessionState == null) {
+                sessionState = new SplitInstallInternalSessionState(sessionId, moduleNames, needInstallSplits, downloadRequests);
+            }
             //wait util builtin splits are copied completely.
             callback.onStartInstall(sessionId, null);
             sessionManager.setSessionState(sessionId, sessionState);
@@ -387,7 +419,7 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
                 }
                 sessionManager.changeSessionState(sessionId, SplitInstallInternalSessionStatus.PENDING);
                 sessionManager.emitSessionState(sessionState);
-                userDownloader.startDownload(sessionId, downloadRequests, downloadCallback);
+                downloadScheduler.startDownload(sessionId, downloadRequests, downloadCallback);
             }
         } catch (IOException e) {
             //copy local split file failed!
@@ -418,14 +450,11 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
     private boolean isModuleAvailable(List<String> moduleNames) {
         SplitInfoManager manager = SplitInfoManagerService.getInstance();
         assert manager != null;
-        Collection<SplitInfo> splitInfoList = manager.getAllSplitInfo(appContext);
+        SplitInfoIndex index = manager.getSplitInfoIndex(appContext);
         for (String moduleName : moduleNames) {
-            for (SplitInfo info : splitInfoList) {
-                if (info.getSplitName().equals(moduleName)) {
-                    if (!checkSplitInfo(info)) {
-                        return false;
-                    }
-                }
+            SplitInfo info = index.getSplitInfo(moduleName);
+            if (info != null && !checkSplitInfo(info)) {
+                return false;
             }
         }
         return true;
@@ -460,14 +489,29 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
             List<SplitInfo.ApkData> apkDataList = splitInfo.getApkDataList(appContext);
             for (SplitInfo.ApkData apkData : apkDataList) {
                 File splitDir = SplitPathManager.require().getSplitDir(splitInfo);
-                DownloadRequest request = DownloadRequest.newBuilder()
-                        .url(apkData.getUrl())
-                        .fileDir(splitDir.getAbsolutePath())
-                        .fileName(splitInfo.getSplitName() + "-" + apkData.getAbi() + SplitConstants.DOT_APK)
-                        .fileMD5(apkData.getMd5())
-                        .size(apkData.getSize())
-                        .moduleName(splitInfo.getSplitName())
-                        .build();
+                DownloadRequest request;
+                SplitInfo.PatchData patchData = apkData.getPatchData();
+                File splitApk = new File(splitDir, splitInfo.getSplitName() + "-" + apkData.getAbi() + SplitConstants.DOT_APK);
+                if (patchData != null && !splitApk.exists() && SplitApkPatch.findBaseApk(splitInfo, apkData) != null) {
+                    //download patch only, split apk would be rebuilt from the apk of previous version when installing.
+                    request = DownloadRequest.newBuilder()
+                            .url(patchData.getUrl())
+                            .fileDir(splitDir.getAbsolutePath())
+                            .fileName(SplitApkPatch.getPatchFile(splitDir, splitInfo, apkData).getName())
+                            .fileMD5(patchData.getMd5())
+                            .size(patchData.getSize())
+                            .moduleName(splitInfo.getSplitName())
+                            .build();
+                } else {
+                    request = DownloadRequest.newBuilder()
+                            .url(apkData.getUrl())
+                            .fileDir(splitDir.getAbsolutePath())
+                            .fileName(splitApk.getName())
+                            .fileMD5(apkData.getMd5())
+                            .size(apkData.getSize())
+                            .moduleName(splitInfo.getSplitName())
+                            .build();
+                }
                 requests.add(request);
             }
         }
@@ -479,16 +523,21 @@ final class SplitInstallSupervisorImpl extends SplitInstallSupervisor {
         long realTotalBytesNeedToDownload = 0L;
         for (SplitInfo splitInfo : splitInfoList) {
             File splitDir = SplitPathManager.require().getSplitDir(splitInfo);
-            SplitDownloadPreprocessor processor = new SplitDownloadPreprocessor(splitDir);
+            long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "preprocess", splitInfo.getSplitName());
             List<SplitDownloadPreprocessor.SplitFile> splitApkList;
             try {
-                splitApkList = processor.load(appContext, splitInfo, verifySignature);
+                SplitDownloadPreprocessor processor = new SplitDownloadPreprocessor(splitDir);
+                try {
+                    splitApkList = processor.load(appContext, splitInfo, verifySignature);
+                } finally {
+                    FileUtil.closeQuietly(processor);
+                }
             } finally {
-                FileUtil.closeQuietly(processor);
+                SplitTrace.end(span);
             }
-            //calculate splits total download size.
-            totalBytesToDownload = totalBytesToDownload + splitInfo.getApkTotalSize(appContext);
+            //calculate splits total download size, patch size is used for split apk which could be rebuilt.
             for (SplitDownloadPreprocessor.SplitFile splitApk : splitApkList) {
+                totalBytesToDownload = totalBytesToDownload + splitApk.realSize;
                 if (!splitApk.exists()) {
                     realTotalBytesNeedToDownload = realTotalBytesNeedToDownload + splitApk.realSize;
                 }
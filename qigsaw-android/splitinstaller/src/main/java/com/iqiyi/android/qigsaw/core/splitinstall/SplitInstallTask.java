@@ -24,17 +24,23 @@
 
 package com.iqiyi.android.qigsaw.core.splitinstall;
 
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitBriefInfo;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallError;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallReporter;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitTraceReporter;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitTraceReporterManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 abstract class SplitInstallTask implements Runnable {
 
+    private static final String TAG = "SplitInstallTask";
+
     private final SplitInstaller installer;
 
     private final Collection<SplitInfo> needUpdateSplits;
@@ -49,52 +55,75 @@ abstract class SplitInstallTask implements Runnable {
 
     @Override
     public final void run() {
-        onPreInstall();
-        long totalInstallStart = System.currentTimeMillis();
-        boolean installCompleted = true;
         boolean isStartInstall = isStartInstallOperation();
+        SplitInstallScheduler scheduler = new SplitInstallScheduler(installer, isStartInstall, needUpdateSplits,
+                needUpdateSplits.size() > 1 ? SplitInstallerExecutor.getWorkerExecutor() : null);
+        onPreInstall(scheduler);
+        long totalInstallStart = System.currentTimeMillis();
         List<SplitInstaller.InstallResult> installResults = new ArrayList<>();
         List<SplitBriefInfo> installOKSplits = new ArrayList<>(needUpdateSplits.size());
         List<SplitInstallError> installErrorSplits = new ArrayList<>();
-        for (SplitInfo info : needUpdateSplits) {
+        List<SplitInstallError> canceledSplits = new ArrayList<>();
+        SplitTraceReporter traceReporter = SplitTraceReporterManager.getTraceReporter();
+        for (SplitInstallScheduler.SplitOutcome outcome : scheduler.install()) {
+            SplitInfo info = outcome.splitInfo;
             SplitBriefInfo briefInfo = new SplitBriefInfo(info.getSplitName(), info.getSplitVersion(), info.isBuiltIn());
-            try {
-                long installStart = System.currentTimeMillis();
-                SplitInstaller.InstallResult installResult = installer.install(isStartInstall, info);
-                int installFlag = installResult.firstInstalled ? SplitBriefInfo.FIRST_INSTALLED : SplitBriefInfo.ALREADY_INSTALLED;
-                installOKSplits.add(briefInfo.setInstallFlag(installFlag).setTimeCost(System.currentTimeMillis() - installStart));
-                installResults.add(installResult);
-            } catch (SplitInstaller.InstallException error) {
-                installCompleted = false;
-                installErrorSplits.add(new SplitInstallError(briefInfo, error.getErrorCode(), error.getCause()));
-                if (isStartInstall) {
-                    break;
-                }
+            if (outcome.canceled) {
+                canceledSplits.add(new SplitInstallError(briefInfo, SplitInstallError.INSTALL_CANCELED,
+                        new CancellationException("Installation of split " + info.getSplitName() + " is canceled")));
+                continue;
+            }
+            if (traceReporter != null && outcome.phases != null && !outcome.phases.isEmpty()) {
+                traceReporter.onInstallTraced(briefInfo, outcome.phases);
+            }
+            if (outcome.error == null) {
+                int installFlag = outcome.result.firstInstalled ? SplitBriefInfo.FIRST_INSTALLED : SplitBriefInfo.ALREADY_INSTALLED;
+                installOKSplits.add(briefInfo.setInstallFlag(installFlag).setTimeCost(outcome.timeCost));
+                installResults.add(outcome.result);
+            } else {
+                installErrorSplits.add(new SplitInstallError(briefInfo, outcome.error.getErrorCode(), outcome.error.getCause()));
             }
         }
         SplitInstallReporter installReporter = SplitInstallReporterManager.getInstallReporter();
-        if (installCompleted) {
+        long cost = System.currentTimeMillis() - totalInstallStart;
+        if (installErrorSplits.isEmpty() && canceledSplits.isEmpty()) {
             onInstallCompleted(installResults);
             if (installReporter != null) {
                 if (isStartInstall) {
-                    installReporter.onStartInstallOK(installOKSplits, System.currentTimeMillis() - totalInstallStart);
+                    installReporter.onStartInstallOK(installOKSplits, cost);
                 } else {
-                    installReporter.onDeferredInstallOK(installOKSplits, System.currentTimeMillis() - totalInstallStart);
+                    installReporter.onDeferredInstallOK(installOKSplits, cost);
                 }
             }
-        } else {
+        } else if (!installErrorSplits.isEmpty()) {
+            if (!canceledSplits.isEmpty()) {
+                SplitLog.i(TAG, "%d splits are canceled after installation failed", canceledSplits.size());
+            }
             onInstallFailed(installErrorSplits);
             if (installReporter != null) {
                 if (isStartInstall) {
-                    installReporter.onStartInstallFailed(installOKSplits, installErrorSplits.get(0), System.currentTimeMillis() - totalInstallStart);
+                    installReporter.onStartInstallFailed(installOKSplits, installErrorSplits.get(0), cost);
                 } else {
-                    installReporter.onDeferredInstallFailed(installOKSplits, installErrorSplits, System.currentTimeMillis() - totalInstallStart);
+                    installErrorSplits.addAll(canceledSplits);
+                    installReporter.onDeferredInstallFailed(installOKSplits, installErrorSplits, cost);
+                }
+            }
+        } else {
+            onInstallCanceled(canceledSplits);
+            if (installReporter != null) {
+                if (isStartInstall) {
+                    installReporter.onStartInstallFailed(installOKSplits, canceledSplits.get(0), cost);
+                } else {
+                    installReporter.onDeferredInstallFailed(installOKSplits, canceledSplits, cost);
                 }
             }
         }
     }
 
-    protected void onPreInstall() {
+    /**
+     * @param scheduler scheduler of this task, splits which have not started can be canceled through it.
+     */
+    protected void onPreInstall(SplitInstallScheduler scheduler) {
 
     }
 
@@ -106,4 +135,11 @@ abstract class SplitInstallTask implements Runnable {
 
     }
 
+    /**
+     * Invoked when no split failed but some are canceled, splits which have been installed are kept.
+     */
+    void onInstallCanceled(List<SplitInstallError> canceledSplits) {
+
+    }
+
 }
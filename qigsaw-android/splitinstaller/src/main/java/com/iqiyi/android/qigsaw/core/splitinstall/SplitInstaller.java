@@ -28,6 +28,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
 
 import java.io.File;
 import java.util.List;
@@ -43,19 +44,13 @@ abstract class SplitInstaller {
     public abstract InstallResult install(boolean startInstall, @NonNull SplitInfo splitInfo) throws InstallException;
 
     /**
-     * Check whether the signature of split apk is consistent with base app.
-     *
-     * @param splitApk file of split apk.
-     */
-    protected abstract void verifySignature(File splitApk) throws InstallException;
-
-    /**
-     * check md5 for split apk.
+     * Check whether the signature of split apk is consistent with base app and md5 of split apk is correct.
      *
      * @param splitApk    file of split apk.
      * @param splitApkMd5 md5 value of split apk.
+     * @param splitDir    directory of split.
      */
-    protected abstract void checkSplitMD5(File splitApk, String splitApkMd5) throws InstallException;
+    protected abstract void verifySplitApk(File splitApk, String splitApkMd5, File splitDir) throws InstallException;
 
     /**
      * Extract split apk dex files if current platform does't support multi dex.
@@ -77,13 +72,11 @@ abstract class SplitInstaller {
     protected abstract void extractLib(File splitApk, File libDir, @NonNull SplitInfo.LibData libData) throws InstallException;
 
     /**
-     * create a mark file to record that this split has been installed successfully.
+     * Record that this split has been installed successfully, the entry is replaced atomically.
      *
-     * @return if {@code true} means the split is first installed, otherwise {@code false} means the split has been install.
+     * @param state install state of split.
      */
-    protected abstract boolean createInstalledMark(File markFile) throws InstallException;
-
-    protected abstract boolean createInstalledMarkLock(File markFile, File lockFile) throws InstallException;
+    protected abstract void recordInstallState(@NonNull SplitInstallStateTable.State state) throws InstallException;
 
     static class InstallResult {
 
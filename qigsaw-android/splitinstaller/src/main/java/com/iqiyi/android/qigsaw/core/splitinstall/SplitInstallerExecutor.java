@@ -24,14 +24,59 @@
 
 package com.iqiyi.android.qigsaw.core.splitinstall;
 
+import android.annotation.SuppressLint;
+
+import androidx.annotation.NonNull;
+
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class SplitInstallerExecutor {
 
+    private static final int MAX_WORKER_COUNT = 4;
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30L;
+
     private static final Executor sExecutor = Executors.newSingleThreadScheduledExecutor(new SplitInstallerThread());
 
+    private static volatile Executor sWorkerExecutor;
+
     static Executor getExecutor() {
         return sExecutor;
     }
+
+    /**
+     * Executor to install splits of one task concurrently, it is idle if there is no installation.
+     */
+    static Executor getWorkerExecutor() {
+        if (sWorkerExecutor == null) {
+            synchronized (SplitInstallerExecutor.class) {
+                if (sWorkerExecutor == null) {
+                    int workerCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_WORKER_COUNT));
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(workerCount, workerCount,
+                            WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new SplitInstallerWorkerThread());
+                    executor.allowCoreThreadTimeOut(true);
+                    sWorkerExecutor = executor;
+                }
+            }
+        }
+        return sWorkerExecutor;
+    }
+
+    private static final class SplitInstallerWorkerThread implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @SuppressLint("NewThreadDirectly")
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            return new Thread(r, "split_install_worker_" + count.incrementAndGet());
+        }
+    }
 }
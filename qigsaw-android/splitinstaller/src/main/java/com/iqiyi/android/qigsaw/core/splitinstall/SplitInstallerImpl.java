@@ -30,13 +30,19 @@ import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 
+import com.iqiyi.android.qigsaw.core.common.CompatBundle;
 import com.iqiyi.android.qigsaw.core.common.FileUtil;
 import com.iqiyi.android.qigsaw.core.common.OEMCompat;
 import com.iqiyi.android.qigsaw.core.common.SplitBaseInfoProvider;
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallError;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitAccessLog;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManagerService;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
 import java.io.File;
@@ -45,7 +51,9 @@ import java.io.IOException;
 import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -61,9 +69,15 @@ final class SplitInstallerImpl extends SplitInstaller {
 
     private final boolean verifySignature;
 
+    private final SplitApkVerifier verifier;
+
+    private final SplitArtifactStore artifactStore;
+
     SplitInstallerImpl(Context context, boolean verifySignature) {
         this.appContext = context;
         this.verifySignature = verifySignature;
+        this.verifier = new SplitApkVerifier(context, verifySignature);
+        this.artifactStore = SplitArtifactStore.get();
     }
 
     @Override
@@ -83,13 +97,17 @@ final class SplitInstallerImpl extends SplitInstaller {
         List<String> addedDexPaths = null;
         File optimizedDirectory = null;
         File splitMasterApk = null;
-        File markFile = SplitPathManager.require().getSplitMarkFile(info, installedMark);
+        int installedOatStatus = SplitInstallStateTable.get().getOatStatus(info, installedMark);
         for (SplitInfo.ApkData apkData : apkDataList) {
             File splitApk;
-            if (info.isBuiltIn() && apkData.getUrl().startsWith(SplitConstants.URL_NATIVE)) {
+            boolean inNativeLibraryDir = info.isBuiltIn() && apkData.getUrl().startsWith(SplitConstants.URL_NATIVE);
+            if (inNativeLibraryDir) {
                 splitApk = new File(appContext.getApplicationInfo().nativeLibraryDir, System.mapLibraryName(SplitConstants.SPLIT_PREFIX + info.getSplitName()));
             } else {
                 splitApk = new File(splitDir, info.getSplitName() + "-" + apkData.getAbi() + SplitConstants.DOT_APK);
+                if (apkData.getPatchData() != null && !splitApk.exists()) {
+                    restoreSplitApkFromPatch(info, apkData, splitApk, splitDir);
+                }
             }
             if (!FileUtil.isLegalFile(splitApk)) {
                 throw new InstallException(
@@ -97,11 +115,15 @@ final class SplitInstallerImpl extends SplitInstaller {
                         new FileNotFoundException("Split apk " + splitApk.getAbsolutePath() + " is illegal!")
                 );
             }
-            if (verifySignature) {
-                SplitLog.d(TAG, "Need to verify split %s signature!", splitApk.getAbsolutePath());
-                verifySignature(splitApk);
+            verifySplitApk(splitApk, apkData.getMd5(), splitDir);
+            if (!inNativeLibraryDir) {
+                long publishSpan = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "publishApk");
+                if (artifactStore.publish(apkData.getMd5(), apkData.getSize(), splitApk)) {
+                    //split apk is replaced with a link to stored blob of the same content.
+                    verifier.record(splitApk, apkData.getMd5(), SplitApkVerifier.getRecordFile(splitDir, splitApk));
+                }
+                SplitTrace.end(publishSpan);
             }
-            checkSplitMD5(splitApk, apkData.getMd5());
             if (!SplitConstants.MASTER.equals(apkData.getAbi())) {
                 if (libData != null) {
                     splitLibDir = SplitPathManager.require().getSplitLibDir(info, libData.getAbi());
@@ -122,13 +144,16 @@ final class SplitInstallerImpl extends SplitInstaller {
                     String dexPath = TextUtils.join(File.pathSeparator, addedDexPaths);
                     String librarySearchPath = splitLibDir == null ? null : splitLibDir.getAbsolutePath();
                     //trigger oat if need
-                    if (!markFile.exists()) {
+                    if (installedOatStatus != SplitInstallStateTable.OAT_OK) {
+                        long oatSpan = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "dexOpt");
                         try {
                             new DexClassLoader(dexPath, optimizedDirectory.getAbsolutePath(), librarySearchPath, SplitInstallerImpl.class.getClassLoader());
                         } catch (Throwable error) {
                             throw new InstallException(
                                     SplitInstallError.CLASSLOADER_CREATE_FAILED,
                                     error);
+                        } finally {
+                            SplitTrace.end(oatSpan);
                         }
                     }
                     //check oat file. We found many native crash in libart.so, especially vivo & oppo.
@@ -137,7 +162,10 @@ final class SplitInstallerImpl extends SplitInstaller {
                         boolean specialManufacturer = OEMCompat.isSpecialManufacturer();
                         File oatFile = OEMCompat.getOatFilePath(splitApk, optimizedDirectory);
                         if (FileUtil.isLegalFile(oatFile)) {
+                            long checkSpan = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "checkOat");
                             boolean checkResult = OEMCompat.checkOatFile(oatFile);
+                            SplitTrace.attr(checkSpan, "bytes", oatFile.length());
+                            SplitTrace.end(checkSpan);
                             SplitLog.v(TAG, "Result of oat file %s is " + checkResult, oatFile.getAbsoluteFile());
                             if (!checkResult) {
                                 SplitLog.w(TAG, "Failed to check oat file " + oatFile.getAbsolutePath());
@@ -159,11 +187,10 @@ final class SplitInstallerImpl extends SplitInstaller {
                         } else {
                             if (specialManufacturer) {
                                 SplitLog.v(TAG, "Oat file %s is not exist in vivo & oppo, system would use interpreter mode.", oatFile.getAbsoluteFile());
-                                File specialMarkFile = SplitPathManager.require().getSplitSpecialMarkFile(info, installedMark);
-                                if (!markFile.exists() && !specialMarkFile.exists()) {
-                                    File lockFile = SplitPathManager.require().getSplitSpecialLockFile(info);
-                                    boolean firstInstalled = createInstalledMarkLock(specialMarkFile, lockFile);
-                                    return new InstallResult(info.getSplitName(), splitApk, optimizedDirectory, splitLibDir, addedDexPaths, firstInstalled);
+                                if (installedOatStatus == SplitInstallStateTable.NOT_INSTALLED) {
+                                    recordInstallState(createInstallState(info, installedMark, splitApk, optimizedDirectory, splitLibDir, addedDexPaths, SplitInstallStateTable.OAT_PENDING));
+                                    recordAccess(info);
+                                    return new InstallResult(info.getSplitName(), splitApk, optimizedDirectory, splitLibDir, addedDexPaths, true);
                                 }
                             }
                         }
@@ -172,27 +199,67 @@ final class SplitInstallerImpl extends SplitInstaller {
             }
         }
         assert splitMasterApk != null;
-        boolean firstInstalled = createInstalledMark(markFile);
+        recordInstallState(createInstallState(info, installedMark, splitMasterApk, optimizedDirectory, splitLibDir, addedDexPaths, SplitInstallStateTable.OAT_OK));
+        boolean firstInstalled = installedOatStatus != SplitInstallStateTable.OAT_OK;
+        recordAccess(info);
         return new InstallResult(info.getSplitName(), splitMasterApk, optimizedDirectory, splitLibDir, addedDexPaths, firstInstalled);
     }
 
+    private void recordAccess(SplitInfo info) {
+        if (!SplitAccessLog.get().recordInstalled(info, System.currentTimeMillis())) {
+            SplitLog.w(TAG, "Failed to record access of split %s", info.getSplitName());
+        }
+    }
+
+    /**
+     * Rebuild split apk if its patch is downloaded instead, see {@link SplitApkPatch}.
+     * Split apk is left missing if it fails, so that the install fails as before and the whole apk is downloaded next time.
+     */
+    private void restoreSplitApkFromPatch(SplitInfo info, SplitInfo.ApkData apkData, File splitApk, File splitDir) {
+        File patchFile = SplitApkPatch.getPatchFile(splitDir, info, apkData);
+        if (!patchFile.exists()) {
+            return;
+        }
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "applyPatch");
+        SplitTrace.attr(span, "patchBytes", patchFile.length());
+        File baseApk = SplitApkPatch.findBaseApk(info, apkData);
+        try {
+            if (baseApk == null) {
+                SplitLog.w(TAG, "Base apk of patch %s is not found!", patchFile.getAbsolutePath());
+                return;
+            }
+            String md5 = SplitApkPatch.apply(baseApk, patchFile, splitApk, apkData.getMd5());
+            //md5 is computed while the apk is rebuilt, record it so that only signature is checked.
+            verifier.verify(splitApk, apkData.getMd5(), SplitApkVerifier.getRecordFile(splitDir, splitApk),
+                    CompatBundle.instance == null ? md5 : null);
+        } catch (IOException e) {
+            SplitLog.printErrStackTrace(TAG, e, "Failed to rebuild split apk %s", splitApk.getAbsolutePath());
+            SplitApkPatch.invalidateBaseApk(baseApk);
+        } finally {
+            FileUtil.deleteFileSafely(patchFile);
+            SplitTrace.end(span);
+        }
+    }
+
     @Override
-    protected void verifySignature(File splitApk) throws InstallException {
-        if (!SignatureValidator.validateSplit(appContext, splitApk)) {
+    protected void verifySplitApk(File splitApk, String splitApkMd5, File splitDir) throws InstallException {
+        if (verifySignature) {
+            SplitLog.d(TAG, "Need to verify split %s signature!", splitApk.getAbsolutePath());
+        }
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "verifyApk");
+        SplitTrace.attr(span, "apk", splitApk.getName());
+        int result = verifier.verify(splitApk, splitApkMd5, SplitApkVerifier.getRecordFile(splitDir, splitApk));
+        SplitTrace.attr(span, "result", result);
+        SplitTrace.end(span);
+        if (result == SplitApkVerifier.SIGNATURE_MISMATCH) {
             deleteCorruptedFiles(Collections.singletonList(splitApk));
             throw new InstallException(
                     SplitInstallError.SIGNATURE_MISMATCH,
                     new SignatureException("Failed to check split apk " + splitApk.getAbsolutePath() + " signature!")
             );
-        }
-    }
-
-    @Override
-    protected void checkSplitMD5(File splitApk, String splitApkMd5) throws InstallException {
-        String curMd5 = FileUtil.getMD5(splitApk);
-        if (!splitApkMd5.equals(curMd5)) {
+        } else if (result != SplitApkVerifier.VERIFIED) {
             deleteCorruptedFiles(Collections.singletonList(splitApk));
-            throw new InstallException(SplitInstallError.MD5_ERROR, new IOException("Failed to check split apk md5, expect " + splitApkMd5 + " but " + curMd5));
+            throw new InstallException(SplitInstallError.MD5_ERROR, new IOException("Failed to check split apk " + splitApk.getAbsolutePath() + " md5, expect " + splitApkMd5));
         }
     }
 
@@ -201,11 +268,12 @@ final class SplitInstallerImpl extends SplitInstaller {
         SplitLog.w(TAG,
                 "VM do not support multi-dex, but split %s has multi dex files, so we need install other dex files manually",
                 splitApk.getName());
-        String prefsKeyPrefix = splitInfo.getSplitName() + "@" + SplitBaseInfoProvider.getVersionName() + "@" + splitInfo.getSplitVersion();
+        String recordKey = splitInfo.getSplitName() + "@" + SplitBaseInfoProvider.getVersionName() + "@" + splitInfo.getSplitVersion();
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "extractMultiDex");
         try {
             SplitMultiDexExtractor extractor = new SplitMultiDexExtractor(splitApk, codeCacheDir);
             try {
-                List<? extends File> dexFiles = extractor.load(appContext, prefsKeyPrefix, false);
+                List<? extends File> dexFiles = extractor.load(recordKey, false);
                 List<String> dexPaths = new ArrayList<>(dexFiles.size());
                 for (File dexFile : dexFiles) {
                     dexPaths.add(dexFile.getAbsolutePath());
@@ -220,11 +288,15 @@ final class SplitInstallerImpl extends SplitInstaller {
             }
         } catch (IOException ioError) {
             throw new InstallException(SplitInstallError.DEX_EXTRACT_FAILED, ioError);
+        } finally {
+            SplitTrace.end(span);
         }
     }
 
     @Override
     protected void extractLib(File splitApk, File libDir, @NonNull SplitInfo.LibData libData) throws InstallException {
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "extractLib");
+        SplitTrace.attr(span, "abi", libData.getAbi());
         try {
             SplitLibExtractor extractor = new SplitLibExtractor(splitApk, libDir);
             try {
@@ -238,33 +310,56 @@ final class SplitInstallerImpl extends SplitInstaller {
             }
         } catch (IOException ioError) {
             throw new InstallException(SplitInstallError.LIB_EXTRACT_FAILED, ioError);
+        } finally {
+            SplitTrace.end(span);
         }
     }
 
     @Override
-    protected boolean createInstalledMark(File markFile) throws InstallException {
-        if (!markFile.exists()) {
-            try {
-                FileUtil.createFileSafely(markFile);
-                return true;
-            } catch (IOException e) {
-                throw new InstallException(SplitInstallError.MARK_CREATE_FAILED, e);
-            }
+    protected void recordInstallState(@NonNull SplitInstallStateTable.State state) throws InstallException {
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "recordState");
+        boolean recorded = SplitInstallStateTable.get().put(state);
+        SplitTrace.end(span);
+        if (!recorded) {
+            throw new InstallException(
+                    SplitInstallError.MARK_CREATE_FAILED,
+                    new IOException("Failed to record install state of split " + state.splitName)
+            );
         }
-        return false;
     }
 
-    @Override
-    protected boolean createInstalledMarkLock(File markFile, File lockFile) throws InstallException {
-        if (!markFile.exists()) {
-            try {
-                FileUtil.createFileSafelyLock(markFile, lockFile);
-                return true;
-            } catch (IOException e) {
-                throw new InstallException(SplitInstallError.MARK_CREATE_FAILED, e);
+    private SplitInstallStateTable.State createInstallState(SplitInfo info,
+                                                            String installedMark,
+                                                            File splitApk,
+                                                            File optimizedDirectory,
+                                                            File splitLibDir,
+                                                            List<String> addedDexPaths,
+                                                            int oatStatus) {
+        Map<String, String> dependencyMarks = new HashMap<>();
+        List<String> dependencies = info.getDependencies();
+        SplitInfoManager manager = SplitInfoManagerService.getInstance();
+        if (dependencies != null && manager != null) {
+            for (String dependency : dependencies) {
+                SplitInfo dependencyInfo = manager.getSplitInfo(appContext, dependency);
+                if (dependencyInfo != null) {
+                    try {
+                        dependencyMarks.put(dependency, dependencyInfo.obtainInstalledMark(appContext));
+                    } catch (IOException e) {
+                        SplitLog.w(TAG, "Failed to obtain installed mark of dependency " + dependency);
+                    }
+                }
             }
         }
-        return false;
+        return new SplitInstallStateTable.State(
+                info.getSplitName(),
+                installedMark,
+                splitApk.getAbsolutePath(),
+                optimizedDirectory == null ? null : optimizedDirectory.getAbsolutePath(),
+                splitLibDir == null ? null : splitLibDir.getAbsolutePath(),
+                addedDexPaths,
+                oatStatus,
+                dependencyMarks
+        );
     }
 
     /**
@@ -24,34 +24,58 @@
 
 package com.iqiyi.android.qigsaw.core.splitinstall;
 
+import androidx.annotation.Nullable;
+
 import com.iqiyi.android.qigsaw.core.common.FileUtil;
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 final class SplitLibExtractor implements Closeable {
 
     private static final String TAG = "Split:LibExtractor";
 
+    private static final String LOCK_FILENAME = "SplitLib.lock";
+
+    private static final String MANIFEST_FILENAME = "SplitLib.manifest";
+
+    private static final int MANIFEST_VERSION = 1;
+
+    /**
+     * Max number of worker threads helping the calling thread to extract libs.
+     */
+    private static final int MAX_EXTRACTION_HELPERS = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final File sourceApk;
 
     private final File libDir;
 
-    private static final String LOCK_FILENAME = "SplitLib.lock";
+    private final SplitArtifactStore artifactStore = SplitArtifactStore.get();
 
     private final RandomAccessFile lockRaf;
 
@@ -84,70 +108,297 @@ final class SplitLibExtractor implements Closeable {
         if (!cacheLock.isValid()) {
             throw new IllegalStateException("SplitLibExtractor was closed");
         } else {
+            Map<String, ExtractedLib> manifest = readManifest();
             List<File> files;
             if (!forceReload) {
                 try {
-                    files = loadExistingExtractions(libData.getLibs());
+                    files = loadExistingExtractions(libData.getLibs(), manifest);
                 } catch (IOException e) {
                     SplitLog.w(TAG, "Failed to reload existing extracted lib files, falling back to fresh extraction");
-                    files = performExtractions(libData);
+                    files = performExtractions(libData, manifest);
                 }
             } else {
-                files = performExtractions(libData);
+                files = performExtractions(libData, null);
             }
             SplitLog.i(TAG, "load found " + files.size() + " lib files");
             return files;
         }
     }
 
-    private List<File> performExtractions(SplitInfo.LibData libData) throws IOException {
-        ZipFile sourceZip = new ZipFile(sourceApk);
+    private List<File> performExtractions(SplitInfo.LibData libData, @Nullable Map<String, ExtractedLib> manifest) throws IOException {
+        Map<String, SplitInfo.LibData.Lib> libs = new HashMap<>(libData.getLibs().size() * 2);
+        for (SplitInfo.LibData.Lib lib : libData.getLibs()) {
+            libs.put(lib.getName(), lib);
+        }
         String libPrefix = String.format("lib/%s/", libData.getAbi());
-        Enumeration e = sourceZip.entries();
+        SplitZipArchive sourceZip = new SplitZipArchive(sourceApk);
         List<File> libFiles = new ArrayList<>();
-        while (e.hasMoreElements()) {
-            ZipEntry entry = (ZipEntry) e.nextElement();
-            String entryName = entry.getName();
-            if (entryName.charAt(0) < 'l') {
-                continue;
-            }
-            if (entryName.charAt(0) > 'l') {
-                continue;
-            }
-            if (!entryName.startsWith("lib/")) {
-                continue;
-            }
-            if (!entryName.endsWith(SplitConstants.DOT_SO) || !entryName.startsWith(libPrefix)) {
-                continue;
-            }
-            String libName = entryName.substring(entryName.lastIndexOf('/') + 1);
-            SplitInfo.LibData.Lib lib = findLib(libName, libData.getLibs());
-            if (lib == null) {
-                throw new IOException(String.format("Failed to find %s in split-info", libName));
-            }
-            File extractedLib = new File(libDir, libName);
-            if (extractedLib.exists()) {
-                if (lib.getMd5().equals(FileUtil.getMD5(extractedLib))) {
-                    libFiles.add(extractedLib);
-                    continue;
-                } else {
+        Map<String, ExtractedLib> newManifest = new HashMap<>();
+        try {
+            List<LibExtraction> extractions = new ArrayList<>();
+            for (SplitZipArchive.Entry entry : sourceZip.getEntries(libPrefix, SplitConstants.DOT_SO)) {
+                String libName = entry.name.substring(entry.name.lastIndexOf('/') + 1);
+                SplitInfo.LibData.Lib lib = libs.get(libName);
+                if (lib == null) {
+                    throw new IOException(String.format("Failed to find %s in split-info", libName));
+                }
+                File extractedLib = new File(libDir, libName);
+                libFiles.add(extractedLib);
+                boolean restored = !extractedLib.exists() && artifactStore.restore(lib.getMd5(), lib.getSize(), extractedLib);
+                if (extractedLib.exists()) {
+                    ExtractedLib extracted = manifest == null ? null : manifest.get(libName);
+                    if (extracted != null ? extracted.matches(lib, extractedLib) : lib.getMd5().equals(FileUtil.getMD5(extractedLib))) {
+                        newManifest.put(libName, new ExtractedLib(libName, extractedLib.length(), entry.crc, extractedLib.lastModified(), lib.getMd5()));
+                        continue;
+                    }
                     FileUtil.deleteFileSafely(extractedLib);
                     if (extractedLib.exists()) {
                         SplitLog.w(TAG, "Failed to delete corrupted lib file '" + extractedLib.getPath() + "'");
                     }
+                    if (restored) {
+                        artifactStore.remove(lib.getMd5(), lib.getSize());
+                    }
                 }
+                SplitLog.i(TAG, "Extraction is needed for lib: " + extractedLib.getAbsolutePath());
+                extractions.add(new LibExtraction(sourceZip, entry, lib, extractedLib));
+            }
+            long extractSpan = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "extractLibs");
+            SplitTrace.attr(extractSpan, "count", extractions.size());
+            try {
+                SplitExtractionQueue.run(extractions, MAX_EXTRACTION_HELPERS);
+            } finally {
+                SplitTrace.end(extractSpan);
+            }
+            for (LibExtraction extraction : extractions) {
+                File extractedLib = extraction.extractedLib;
+                artifactStore.publish(extraction.lib.getMd5(), extraction.lib.getSize(), extractedLib);
+                newManifest.put(extraction.lib.getName(), new ExtractedLib(extraction.lib.getName(), extractedLib.length(), extraction.entry.crc, extractedLib.lastModified(), extraction.lib.getMd5()));
+            }
+        } finally {
+            FileUtil.closeQuietly(sourceZip);
+        }
+        if (libFiles.size() != libData.getLibs().size()) {
+            throw new IOException("Number of extracted so files is mismatch, expected: " + libData.getLibs().size() + " ,but: " + libFiles.size());
+        }
+        writeManifest(newManifest);
+        return libFiles;
+    }
+
+    private List<File> loadExistingExtractions(List<SplitInfo.LibData.Lib> libs, @Nullable Map<String, ExtractedLib> manifest) throws IOException {
+        SplitLog.i(TAG, "loading existing lib files");
+        if (manifest == null) {
+            throw new IOException("Missing manifest of extracted lib files in '" + libDir.getPath() + "'");
+        }
+        List<File> libFiles = new ArrayList<>(libs.size());
+        for (SplitInfo.LibData.Lib lib : libs) {
+            File file = new File(libDir, lib.getName());
+            ExtractedLib extracted = manifest.get(lib.getName());
+            if (extracted == null || !file.exists()) {
+                throw new IOException(String.format("Invalid extracted lib: file %s is not existing!", lib.getName()));
+            }
+            if (!extracted.matches(lib, file)) {
+                throw new IOException("Invalid extracted lib : file " + lib.getName() + " is modified or outdated!");
+            }
+            libFiles.add(file);
+        }
+        SplitLog.i(TAG, "Existing lib files loaded");
+        return libFiles;
+    }
+
+    @Nullable
+    private Map<String, ExtractedLib> readManifest() {
+        File manifestFile = new File(libDir, MANIFEST_FILENAME);
+        if (!manifestFile.exists()) {
+            return null;
+        }
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new FileInputStream(manifestFile));
+            if (is.readInt() != MANIFEST_VERSION) {
+                return null;
+            }
+            int count = is.readInt();
+            Map<String, ExtractedLib> manifest = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                ExtractedLib extracted = new ExtractedLib(is.readUTF(), is.readLong(), is.readLong(), is.readLong(), is.readUTF());
+                manifest.put(extracted.name, extracted);
+            }
+            return manifest;
+        } catch (IOException e) {
+            SplitLog.w(TAG, "Failed to read manifest " + manifestFile.getAbsolutePath(), e);
+            return null;
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+    }
+
+    private void writeManifest(Map<String, ExtractedLib> manifest) {
+        File manifestFile = new File(libDir, MANIFEST_FILENAME);
+        File tmp = null;
+        DataOutputStream os = null;
+        try {
+            tmp = File.createTempFile(MANIFEST_FILENAME, null, libDir);
+            os = new DataOutputStream(new FileOutputStream(tmp));
+            os.writeInt(MANIFEST_VERSION);
+            os.writeInt(manifest.size());
+            for (ExtractedLib extracted : manifest.values()) {
+                os.writeUTF(extracted.name);
+                os.writeLong(extracted.size);
+                os.writeLong(extracted.crc);
+                os.writeLong(extracted.lastModified);
+                os.writeUTF(extracted.md5);
+            }
+            os.close();
+            os = null;
+            if (!tmp.renameTo(manifestFile)) {
+                SplitLog.w(TAG, "Failed to rename " + tmp.getAbsolutePath() + " to " + manifestFile.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            SplitLog.w(TAG, "Failed to write manifest " + manifestFile.getAbsolutePath(), e);
+        } finally {
+            FileUtil.closeQuietly(os);
+            if (tmp != null) {
+                FileUtil.deleteFileSafely(tmp);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        cacheLock.release();
+        lockChannel.close();
+        lockRaf.close();
+    }
+
+    /**
+     * Extract a lib entry into temp file, and check md5 while writing.
+     * STORED entries are transferred from apk directly, DEFLATED entries are inflated.
+     */
+    private static void extract(SplitZipArchive sourceZip, SplitZipArchive.Entry entry, File dest, MessageDigest digest) throws IOException {
+        long dataOffset = sourceZip.getDataOffset(entry);
+        FileOutputStream fos = new FileOutputStream(dest);
+        try {
+            FileChannel out = fos.getChannel();
+            if (entry.method == SplitZipArchive.METHOD_STORED) {
+                if (entry.size != entry.compressedSize) {
+                    throw new ZipException("Invalid size of stored entry " + entry.name);
+                }
+                FileChannel in = sourceZip.getChannel();
+                digest.update(in.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.size));
+                long transferred = 0;
+                while (transferred < entry.size) {
+                    long count = in.transferTo(dataOffset + transferred, entry.size - transferred, out);
+                    if (count <= 0) {
+                        throw new IOException("Failed to transfer entry " + entry.name);
+                    }
+                    transferred += count;
+                }
+            } else if (entry.method == SplitZipArchive.METHOD_DEFLATED) {
+                inflate(sourceZip, entry, dataOffset, out, digest);
+            } else {
+                throw new ZipException("Unsupported compression method " + entry.method + " of entry " + entry.name);
+            }
+        } finally {
+            FileUtil.closeQuietly(fos);
+        }
+    }
+
+    private static void inflate(SplitZipArchive sourceZip, SplitZipArchive.Entry entry, long dataOffset, FileChannel out, MessageDigest digest) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] output = new byte[BUFFER_SIZE];
+            long remaining = entry.compressedSize;
+            long position = dataOffset;
+            long written = 0;
+            boolean dummyInputFed = false;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(output);
+                if (count > 0) {
+                    digest.update(output, 0, count);
+                    ByteBuffer buffer = ByteBuffer.wrap(output, 0, count);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    written += count;
+                } else if (inflater.needsInput()) {
+                    if (remaining <= 0) {
+                        if (dummyInputFed) {
+                            throw new ZipException("Unexpected end of deflated entry " + entry.name);
+                        }
+                        //inflater without zlib header needs an extra dummy byte to finish, see Inflater(boolean).
+                        inflater.setInput(new byte[1]);
+                        dummyInputFed = true;
+                        continue;
+                    }
+                    input.clear();
+                    input.limit((int) Math.min(remaining, BUFFER_SIZE));
+                    sourceZip.readFully(input, position);
+                    inflater.setInput(input.array(), 0, input.limit());
+                    position += input.limit();
+                    remaining -= input.limit();
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid deflated entry " + entry.name);
+                }
+            }
+            if (written != entry.size) {
+                throw new ZipException("Size of entry " + entry.name + " is mismatch, expected: " + entry.size + ", but: " + written);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflated entry " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String toHexString(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+        }
+        return builder.toString();
+    }
+
+    private static final class LibExtraction implements SplitExtractionQueue.Extraction {
+
+        final SplitZipArchive sourceZip;
+
+        final SplitZipArchive.Entry entry;
+
+        final SplitInfo.LibData.Lib lib;
+
+        final File extractedLib;
+
+        LibExtraction(SplitZipArchive sourceZip, SplitZipArchive.Entry entry, SplitInfo.LibData.Lib lib, File extractedLib) {
+            this.sourceZip = sourceZip;
+            this.entry = entry;
+            this.lib = lib;
+            this.extractedLib = extractedLib;
+        }
+
+        @Override
+        public void run() throws IOException {
+            String libName = lib.getName();
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
             }
-            SplitLog.i(TAG, "Extraction is needed for lib: " + extractedLib.getAbsolutePath());
             int numAttempts = 0;
             boolean isExtractionSuccessful = false;
             File tempDir = SplitPathManager.require().getSplitTmpDir();
             File tmp = File.createTempFile("tmp-" + libName, "", tempDir);
             while (numAttempts < SplitConstants.MAX_RETRY_ATTEMPTS && !isExtractionSuccessful) {
                 ++numAttempts;
+                digest.reset();
                 try {
-                    FileOutputStream fos = new FileOutputStream(tmp);
-                    FileUtil.copyFile(sourceZip.getInputStream(entry), fos);
-                    if (!tmp.renameTo(extractedLib)) {
+                    extract(sourceZip, entry, tmp, digest);
+                    //check md5
+                    String libFileMd5 = toHexString(digest.digest());
+                    if (!lib.getMd5().equals(libFileMd5)) {
+                        SplitLog.w(TAG, "Failed to check %s md5, excepted %s but %s", libName, lib.getMd5(), libFileMd5);
+                    } else if (!tmp.renameTo(extractedLib)) {
                         SplitLog.w(TAG, "Failed to rename \"" + tmp.getAbsolutePath() + "\" to \"" + extractedLib.getAbsolutePath() + "\"");
                     } else {
                         isExtractionSuccessful = true;
@@ -156,19 +407,11 @@ final class SplitLibExtractor implements Closeable {
                     SplitLog.w(TAG, "Failed to extract so :" + libName + ", attempts times : " + numAttempts);
                 }
                 SplitLog.i(TAG, "Extraction " + (isExtractionSuccessful ? "succeeded" : "failed") + " '" + extractedLib.getAbsolutePath() + "': length " + extractedLib.length());
-                //check md5
-                String libFileMd5 = FileUtil.getMD5(extractedLib);
-                if (!lib.getMd5().equals(libFileMd5)) {
-                    SplitLog.w(TAG, "Failed to check %s md5, excepted %s but %s", libName, lib.getMd5(), libFileMd5);
-                    isExtractionSuccessful = false;
-                }
                 if (!isExtractionSuccessful) {
                     FileUtil.deleteFileSafely(extractedLib);
                     if (extractedLib.exists()) {
                         SplitLog.w(TAG, "Failed to delete extracted lib that has been corrupted'" + extractedLib.getPath() + "'");
                     }
-                } else {
-                    libFiles.add(extractedLib);
                 }
             }
             FileUtil.deleteFileSafely(tmp);
@@ -176,53 +419,33 @@ final class SplitLibExtractor implements Closeable {
                 throw new IOException("Could not create lib file " + extractedLib.getAbsolutePath() + ")");
             }
         }
-        FileUtil.closeQuietly(sourceZip);
-        if (libFiles.size() != libData.getLibs().size()) {
-            throw new IOException("Number of extracted so files is mismatch, expected: " + libData.getLibs().size() + " ,but: " + libFiles.size());
-        }
-        return libFiles;
     }
 
-    private SplitInfo.LibData.Lib findLib(String libName, List<SplitInfo.LibData.Lib> libs) {
-        for (SplitInfo.LibData.Lib lib : libs) {
-            if (lib.getName().equals(libName)) {
-                return lib;
-            }
-        }
-        return null;
-    }
+    private static final class ExtractedLib {
 
-    private List<File> loadExistingExtractions(List<SplitInfo.LibData.Lib> libs) throws IOException {
-        SplitLog.i(TAG, "loading existing lib files");
-        File[] files = libDir.listFiles();
-        if (files == null || files.length <= 0) {
-            throw new IOException("Missing extracted lib file '" + libDir.getPath() + "'");
-        }
-        List<File> libFiles = new ArrayList<>(files.length);
-        for (SplitInfo.LibData.Lib lib : libs) {
-            boolean hasSo = false;
-            for (File file : files) {
-                if (lib.getName().equals(file.getName())) {
-                    hasSo = true;
-                    if (!lib.getMd5().equals(FileUtil.getMD5(file))) {
-                        throw new IOException("Invalid extracted lib : file md5 is unmatched!");
-                    } else {
-                        libFiles.add(file);
-                    }
-                }
-            }
-            if (!hasSo) {
-                throw new IOException(String.format("Invalid extracted lib: file %s is not existing!", lib.getName()));
-            }
+        final String name;
+
+        final long size;
+
+        final long crc;
+
+        final long lastModified;
+
+        final String md5;
+
+        ExtractedLib(String name, long size, long crc, long lastModified, String md5) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+            this.lastModified = lastModified;
+            this.md5 = md5;
         }
-        SplitLog.i(TAG, "Existing lib files loaded");
-        return libFiles;
-    }
 
-    @Override
-    public void close() throws IOException {
-        lockChannel.close();
-        lockRaf.close();
-        cacheLock.release();
+        /**
+         * Whether the extracted file is unchanged since it was checked against md5 of {@code lib}.
+         */
+        boolean matches(SplitInfo.LibData.Lib lib, File file) {
+            return md5.equals(lib.getMd5()) && size == file.length() && lastModified == file.lastModified();
+        }
     }
 }
@@ -24,17 +24,20 @@
 
 package com.iqiyi.android.qigsaw.core.splitinstall;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
+import androidx.annotation.Nullable;
 
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,11 +45,9 @@ import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
@@ -55,14 +56,12 @@ final class SplitMultiDexExtractor implements Closeable {
     private static final String TAG = "Split:MultiDexExtractor";
     private static final String DEX_PREFIX = "classes";
     private static final String EXTRACTED_NAME_EXT = ".classes";
-    private static final String PREFS_FILE = "split.multidex.version";
-    private static final String KEY_TIME_STAMP = "timestamp";
-    private static final String KEY_CRC = "crc";
-    private static final String KEY_DEX_NUMBER = "dex.number";
-    private static final String KEY_DEX_CRC = "dex.crc.";
-    private static final String KEY_DEX_TIME = "dex.time.";
+    private static final String RECORD_FILENAME = "SplitMultiDex.record";
+    private static final int RECORD_VERSION = 1;
     private static final long NO_VALUE = -1L;
     private static final String LOCK_FILENAME = "SplitMultiDex.lock";
+    private static final int MAX_EXTRACTION_HELPERS = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
     private final File sourceApk;
     private final long sourceCrc;
     private final File dexDir;
@@ -93,19 +92,23 @@ final class SplitMultiDexExtractor implements Closeable {
         }
     }
 
-    List<? extends File> load(Context context, String prefsKeyPrefix, boolean forceReload) throws IOException {
-        SplitLog.i(TAG, "SplitMultiDexExtractor.load(" + this.sourceApk.getPath() + ", " + forceReload + ", " + prefsKeyPrefix + ")");
+    /**
+     * @param recordKey key of extraction record, extraction is performed again if it changes.
+     */
+    List<? extends File> load(String recordKey, boolean forceReload) throws IOException {
+        SplitLog.i(TAG, "SplitMultiDexExtractor.load(" + this.sourceApk.getPath() + ", " + forceReload + ", " + recordKey + ")");
         if (!this.cacheLock.isValid()) {
             throw new IllegalStateException("SplitMultiDexExtractor was closed");
         } else {
             List files;
-            if (!forceReload && !isModified(context, this.sourceApk, this.sourceCrc, prefsKeyPrefix)) {
+            ExtractionRecord record = forceReload ? null : readRecord();
+            if (!forceReload && !isModified(record, this.sourceApk, this.sourceCrc, recordKey)) {
                 try {
-                    files = loadExistingExtractions(context, prefsKeyPrefix);
+                    files = loadExistingExtractions(record);
                 } catch (IOException var6) {
                     SplitLog.w(TAG, "Failed to reload existing extracted secondary dex files, falling back to fresh extraction", var6);
                     files = this.performExtractions();
-                    putStoredApkInfo(context, prefsKeyPrefix, getTimeStamp(this.sourceApk), this.sourceCrc, files);
+                    writeRecord(recordKey, getTimeStamp(this.sourceApk), this.sourceCrc, files);
                 }
             } else {
                 if (forceReload) {
@@ -114,7 +117,7 @@ final class SplitMultiDexExtractor implements Closeable {
                     SplitLog.i(TAG, "Detected that extraction must be performed.");
                 }
                 files = this.performExtractions();
-                putStoredApkInfo(context, prefsKeyPrefix, getTimeStamp(this.sourceApk), this.sourceCrc, files);
+                writeRecord(recordKey, getTimeStamp(this.sourceApk), this.sourceCrc, files);
             }
 
             SplitLog.i(TAG, "load found " + files.size() + " secondary dex files");
@@ -128,11 +131,10 @@ final class SplitMultiDexExtractor implements Closeable {
         this.lockRaf.close();
     }
 
-    private List<? extends File> loadExistingExtractions(Context context, String prefsKeyPrefix) throws IOException {
+    private List<? extends File> loadExistingExtractions(ExtractionRecord record) throws IOException {
         SplitLog.i(TAG, "loading existing secondary dex files");
         String extractedFilePrefix = sourceApk.getName() + EXTRACTED_NAME_EXT;
-        SharedPreferences multiDexPreferences = getMultiDexPreferences(context);
-        int totalDexNumber = multiDexPreferences.getInt(prefsKeyPrefix + KEY_DEX_NUMBER, 1);
+        int totalDexNumber = record.dexCrcs.length + 1;
         List<ExtractedDex> files = new ArrayList<>(totalDexNumber - 1);
 
         for (int secondaryNumber = 2; secondaryNumber <= totalDexNumber; ++secondaryNumber) {
@@ -142,11 +144,11 @@ final class SplitMultiDexExtractor implements Closeable {
                 throw new IOException("Missing extracted secondary dex file '" + extractedFile.getPath() + "'");
             }
             extractedFile.crc = getZipCrc(extractedFile);
-            long expectedCrc = multiDexPreferences.getLong(prefsKeyPrefix + KEY_DEX_CRC + secondaryNumber, NO_VALUE);
-            long expectedModTime = multiDexPreferences.getLong(prefsKeyPrefix + KEY_DEX_TIME + secondaryNumber, NO_VALUE);
+            long expectedCrc = record.dexCrcs[secondaryNumber - 2];
+            long expectedModTime = record.dexTimes[secondaryNumber - 2];
             long lastModified = extractedFile.lastModified();
             if (expectedModTime != lastModified || expectedCrc != extractedFile.crc) {
-                throw new IOException("Invalid extracted dex: " + extractedFile + " (key \"" + prefsKeyPrefix + "\"), expected modification time: " + expectedModTime + ", modification time: " + lastModified + ", expected crc: " + expectedCrc + ", file crc: " + extractedFile.crc);
+                throw new IOException("Invalid extracted dex: " + extractedFile + " (key \"" + record.key + "\"), expected modification time: " + expectedModTime + ", modification time: " + lastModified + ", expected crc: " + expectedCrc + ", file crc: " + extractedFile.crc);
             }
             files.add(extractedFile);
         }
@@ -154,9 +156,8 @@ final class SplitMultiDexExtractor implements Closeable {
         return files;
     }
 
-    private static boolean isModified(Context context, File archive, long currentCrc, String prefsKeyPrefix) {
-        SharedPreferences prefs = getMultiDexPreferences(context);
-        return prefs.getLong(prefsKeyPrefix + KEY_TIME_STAMP, -NO_VALUE) != getTimeStamp(archive) || prefs.getLong(prefsKeyPrefix + KEY_CRC, -NO_VALUE) != currentCrc;
+    private static boolean isModified(@Nullable ExtractionRecord record, File archive, long currentCrc, String recordKey) {
+        return record == null || !record.key.equals(recordKey) || record.timeStamp != getTimeStamp(archive) || record.crc != currentCrc;
     }
 
     private static long getTimeStamp(File archive) {
@@ -178,42 +179,35 @@ final class SplitMultiDexExtractor implements Closeable {
 
 
     private List<ExtractedDex> performExtractions() throws IOException {
-        String extractedFilePrefix = this.sourceApk.getName() + EXTRACTED_NAME_EXT;
+        final String extractedFilePrefix = this.sourceApk.getName() + EXTRACTED_NAME_EXT;
         this.clearDexDir();
         List<ExtractedDex> files = new ArrayList<>();
-        ZipFile apk = new ZipFile(this.sourceApk);
+        final ZipFile apk = new ZipFile(this.sourceApk);
         try {
+            List<SplitExtractionQueue.Extraction> extractions = new ArrayList<>();
             int secondaryNumber = 2;
             for (ZipEntry dexFile = apk.getEntry(DEX_PREFIX + secondaryNumber + SplitConstants.DOT_DEX); dexFile != null; dexFile = apk.getEntry(DEX_PREFIX + secondaryNumber + SplitConstants.DOT_DEX)) {
                 String fileName = extractedFilePrefix + secondaryNumber + SplitConstants.DOT_ZIP;
-                SplitMultiDexExtractor.ExtractedDex extractedFile = new SplitMultiDexExtractor.ExtractedDex(this.dexDir, fileName);
+                final SplitMultiDexExtractor.ExtractedDex extractedFile = new SplitMultiDexExtractor.ExtractedDex(this.dexDir, fileName);
                 files.add(extractedFile);
                 SplitLog.i(TAG, "Extraction is needed for file " + extractedFile);
-                int numAttempts = 0;
-                boolean isExtractionSuccessful = false;
-                while (numAttempts < SplitConstants.MAX_RETRY_ATTEMPTS && !isExtractionSuccessful) {
-                    ++numAttempts;
-                    extract(apk, dexFile, extractedFile, extractedFilePrefix);
-                    try {
-                        extractedFile.crc = getZipCrc(extractedFile);
-                        isExtractionSuccessful = true;
-                    } catch (IOException var18) {
-                        isExtractionSuccessful = false;
-                        SplitLog.w(TAG, "Failed to read crc from " + extractedFile.getAbsolutePath(), var18);
+                final ZipEntry entry = dexFile;
+                final int number = secondaryNumber;
+                extractions.add(new SplitExtractionQueue.Extraction() {
+                    @Override
+                    public void run() throws IOException {
+                        extractWithRetry(apk, entry, extractedFile, extractedFilePrefix, number);
                     }
-                    SplitLog.i(TAG, "Extraction " + (isExtractionSuccessful ? "succeeded" : "failed") + " '" + extractedFile.getAbsolutePath() + "': length " + extractedFile.length() + " - crc: " + extractedFile.crc);
-                    if (!isExtractionSuccessful) {
-                        extractedFile.delete();
-                        if (extractedFile.exists()) {
-                            SplitLog.w(TAG, "Failed to delete corrupted secondary dex '" + extractedFile.getPath() + "'");
-                        }
-                    }
-                }
-                if (!isExtractionSuccessful) {
-                    throw new IOException("Could not create zip file " + extractedFile.getAbsolutePath() + " for secondary dex (" + secondaryNumber + ")");
-                }
+                });
                 ++secondaryNumber;
             }
+            long extractSpan = SplitTrace.begin(SplitTrace.CATEGORY_INSTALL, "extractDex");
+            SplitTrace.attr(extractSpan, "count", extractions.size());
+            try {
+                SplitExtractionQueue.run(extractions, MAX_EXTRACTION_HELPERS);
+            } finally {
+                SplitTrace.end(extractSpan);
+            }
         } finally {
             try {
                 apk.close();
@@ -225,23 +219,93 @@ final class SplitMultiDexExtractor implements Closeable {
         return files;
     }
 
-    private static void putStoredApkInfo(Context context, String keyPrefix, long timeStamp, long crc, List<ExtractedDex> extractedDexes) {
-        SharedPreferences prefs = getMultiDexPreferences(context);
-        Editor edit = prefs.edit();
-        edit.putLong(keyPrefix + KEY_TIME_STAMP, timeStamp);
-        edit.putLong(keyPrefix + KEY_CRC, crc);
-        edit.putInt(keyPrefix + KEY_DEX_NUMBER, extractedDexes.size() + 1);
-        int extractedDexId = 2;
-        for (Iterator var10 = extractedDexes.iterator(); var10.hasNext(); ++extractedDexId) {
-            SplitMultiDexExtractor.ExtractedDex dex = (SplitMultiDexExtractor.ExtractedDex) var10.next();
-            edit.putLong(keyPrefix + KEY_DEX_CRC + extractedDexId, dex.crc);
-            edit.putLong(keyPrefix + KEY_DEX_TIME + extractedDexId, dex.lastModified());
+    private static void extractWithRetry(ZipFile apk, ZipEntry dexFile, ExtractedDex extractedFile, String extractedFilePrefix, int secondaryNumber) throws IOException {
+        int numAttempts = 0;
+        boolean isExtractionSuccessful = false;
+        while (numAttempts < SplitConstants.MAX_RETRY_ATTEMPTS && !isExtractionSuccessful) {
+            ++numAttempts;
+            extract(apk, dexFile, extractedFile, extractedFilePrefix);
+            try {
+                extractedFile.crc = getZipCrc(extractedFile);
+                isExtractionSuccessful = true;
+            } catch (IOException var18) {
+                isExtractionSuccessful = false;
+                SplitLog.w(TAG, "Failed to read crc from " + extractedFile.getAbsolutePath(), var18);
+            }
+            SplitLog.i(TAG, "Extraction " + (isExtractionSuccessful ? "succeeded" : "failed") + " '" + extractedFile.getAbsolutePath() + "': length " + extractedFile.length() + " - crc: " + extractedFile.crc);
+            if (!isExtractionSuccessful) {
+                extractedFile.delete();
+                if (extractedFile.exists()) {
+                    SplitLog.w(TAG, "Failed to delete corrupted secondary dex '" + extractedFile.getPath() + "'");
+                }
+            }
+        }
+        if (!isExtractionSuccessful) {
+            throw new IOException("Could not create zip file " + extractedFile.getAbsolutePath() + " for secondary dex (" + secondaryNumber + ")");
         }
-        edit.apply();
     }
 
-    private static SharedPreferences getMultiDexPreferences(Context context) {
-        return context.getSharedPreferences(PREFS_FILE, Context.MODE_MULTI_PROCESS);
+    @Nullable
+    private ExtractionRecord readRecord() {
+        File recordFile = new File(dexDir, RECORD_FILENAME);
+        if (!recordFile.exists()) {
+            return null;
+        }
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new FileInputStream(recordFile));
+            if (is.readInt() != RECORD_VERSION) {
+                return null;
+            }
+            ExtractionRecord record = new ExtractionRecord();
+            record.key = is.readUTF();
+            record.timeStamp = is.readLong();
+            record.crc = is.readLong();
+            int secondaryDexNumber = is.readInt();
+            record.dexCrcs = new long[secondaryDexNumber];
+            record.dexTimes = new long[secondaryDexNumber];
+            for (int i = 0; i < secondaryDexNumber; i++) {
+                record.dexCrcs[i] = is.readLong();
+                record.dexTimes[i] = is.readLong();
+            }
+            return record;
+        } catch (IOException e) {
+            SplitLog.w(TAG, "Failed to read extraction record " + recordFile.getPath(), e);
+            return null;
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+    }
+
+    private void writeRecord(String recordKey, long timeStamp, long crc, List<ExtractedDex> extractedDexes) {
+        File recordFile = new File(dexDir, RECORD_FILENAME);
+        File tmp = null;
+        DataOutputStream os = null;
+        try {
+            tmp = File.createTempFile(RECORD_FILENAME, null, dexDir);
+            os = new DataOutputStream(new FileOutputStream(tmp));
+            os.writeInt(RECORD_VERSION);
+            os.writeUTF(recordKey);
+            os.writeLong(timeStamp);
+            os.writeLong(crc);
+            os.writeInt(extractedDexes.size());
+            for (ExtractedDex dex : extractedDexes) {
+                os.writeLong(dex.crc);
+                os.writeLong(dex.lastModified());
+            }
+            os.close();
+            os = null;
+            if (!tmp.renameTo(recordFile)) {
+                SplitLog.w(TAG, "Failed to rename " + tmp.getPath() + " to " + recordFile.getPath());
+            }
+        } catch (IOException e) {
+            SplitLog.w(TAG, "Failed to write extraction record " + recordFile.getPath(), e);
+        } finally {
+            FileUtil.closeQuietly(os);
+            if (tmp != null) {
+                FileUtil.deleteFileSafely(tmp);
+            }
+        }
     }
 
     private void clearDexDir() {
@@ -273,12 +337,19 @@ final class SplitMultiDexExtractor implements Closeable {
         File tmp = File.createTempFile("tmp-" + extractedFilePrefix, SplitConstants.DOT_ZIP, extractTo.getParentFile());
         SplitLog.i(TAG, "Extracting " + tmp.getPath());
         try {
-            out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE));
             try {
                 ZipEntry classesDex = new ZipEntry("classes.dex");
                 classesDex.setTime(dexFile.getTime());
+                //Dalvik reads stored entries directly, so skip compressing dex file again.
+                if (dexFile.getSize() >= 0 && dexFile.getCrc() >= 0) {
+                    classesDex.setMethod(ZipEntry.STORED);
+                    classesDex.setSize(dexFile.getSize());
+                    classesDex.setCompressedSize(dexFile.getSize());
+                    classesDex.setCrc(dexFile.getCrc());
+                }
                 out.putNextEntry(classesDex);
-                byte[] buffer = new byte[16384];
+                byte[] buffer = new byte[BUFFER_SIZE];
 
                 for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
                     out.write(buffer, 0, length);
@@ -324,7 +395,7 @@ final class SplitMultiDexExtractor implements Closeable {
             RandomAccessFile raf = new RandomAccessFile(apk, "r");
             long var3;
             try {
-                CentralDirectory dir = findCentralDirectory(raf);
+                SplitZipArchive.CentralDirectory dir = SplitZipArchive.findCentralDirectory(raf.getChannel());
                 var3 = computeCrcOfCentralDir(raf, dir);
             } finally {
                 raf.close();
@@ -332,39 +403,7 @@ final class SplitMultiDexExtractor implements Closeable {
             return var3;
         }
 
-        private static CentralDirectory findCentralDirectory(RandomAccessFile raf) throws IOException, ZipException {
-            long scanOffset = raf.length() - 22L;
-            if (scanOffset < 0L) {
-                throw new ZipException("File too short to be a zip file: " + raf.length());
-            } else {
-                long stopOffset = scanOffset - 65536L;
-                if (stopOffset < 0L) {
-                    stopOffset = 0L;
-                }
-
-                int endSig = Integer.reverseBytes(101010256);
-
-                do {
-                    raf.seek(scanOffset);
-                    if (raf.readInt() == endSig) {
-                        raf.skipBytes(2);
-                        raf.skipBytes(2);
-                        raf.skipBytes(2);
-                        raf.skipBytes(2);
-                        CentralDirectory dir = new CentralDirectory();
-                        dir.size = (long) Integer.reverseBytes(raf.readInt()) & 4294967295L;
-                        dir.offset = (long) Integer.reverseBytes(raf.readInt()) & 4294967295L;
-                        return dir;
-                    }
-
-                    --scanOffset;
-                } while (scanOffset >= stopOffset);
-
-                throw new ZipException("End Of Central Directory signature not found");
-            }
-        }
-
-        private static long computeCrcOfCentralDir(RandomAccessFile raf, CentralDirectory dir) throws IOException {
+        private static long computeCrcOfCentralDir(RandomAccessFile raf, SplitZipArchive.CentralDirectory dir) throws IOException {
             CRC32 crc = new CRC32();
             long stillToRead = dir.size;
             raf.seek(dir.offset);
@@ -386,13 +425,17 @@ final class SplitMultiDexExtractor implements Closeable {
 
     }
 
-    static class CentralDirectory {
-        long offset;
-        long size;
+    private static final class ExtractionRecord {
 
-        CentralDirectory() {
+        String key;
 
-        }
+        long timeStamp;
+
+        long crc;
+
+        long[] dexCrcs;
+
+        long[] dexTimes;
     }
 
 }
@@ -29,19 +29,20 @@ import androidx.annotation.RestrictTo;
 import android.text.TextUtils;
 
 import com.iqiyi.android.qigsaw.core.common.FileUtil;
-import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.common.SplitJournalStore;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 
@@ -50,119 +51,94 @@ public final class SplitPendingUninstallManager {
 
     private static final String TAG = "PendingUninstallSplitsManager";
 
-    private static final String VERSION_DATA_NAME = "uninstallsplits.info";
+    private static final String JOURNAL_NAME = "uninstallsplits.journal";
+
+    private static final String LEGACY_VERSION_DATA_NAME = "uninstallsplits.info";
 
     private static final String PENDING_UNINSTALL_SPLITS = "pendingUninstallSplits";
 
-    private final File pendingUninstallSplitsFile;
+    private final SplitJournalStore journalStore;
 
-    private static final Object sLock = new Object();
+    private final File legacyPendingUninstallSplitsFile;
 
     public SplitPendingUninstallManager() {
         File uninstallDir = SplitPathManager.require().getUninstallSplitsDir();
-        this.pendingUninstallSplitsFile = new File(uninstallDir, VERSION_DATA_NAME);
+        this.journalStore = SplitJournalStore.get(new File(uninstallDir, JOURNAL_NAME));
+        this.legacyPendingUninstallSplitsFile = new File(uninstallDir, LEGACY_VERSION_DATA_NAME);
     }
 
     public List<String> readPendingUninstallSplits() {
-        synchronized (sLock) {
-            if (pendingUninstallSplitsFile.exists()) {
-                return readPendingUninstallSplitsInternal(pendingUninstallSplitsFile);
-            }
-            return null;
-        }
+        migrateLegacyPendingUninstallSplits();
+        return split(journalStore.get(PENDING_UNINSTALL_SPLITS));
     }
 
     public boolean deletePendingUninstallSplitsRecord() {
-        synchronized (sLock) {
-            if (pendingUninstallSplitsFile.exists()) {
-                return FileUtil.deleteFileSafely(pendingUninstallSplitsFile);
-            }
-            return true;
+        if (legacyPendingUninstallSplitsFile.exists()) {
+            FileUtil.deleteFileSafely(legacyPendingUninstallSplitsFile);
         }
+        return journalStore.put(PENDING_UNINSTALL_SPLITS, null);
     }
 
     boolean recordPendingUninstallSplits(@NonNull List<String> pendingUninstallSplits) {
-        synchronized (sLock) {
-            return recordPendingUninstallSplitsInternal(pendingUninstallSplitsFile, pendingUninstallSplits);
-        }
+        migrateLegacyPendingUninstallSplits();
+        return recordPendingUninstallSplitsInternal(pendingUninstallSplits);
     }
 
-    private List<String> readPendingUninstallSplitsInternal(File pendingUninstallSplitsFile) {
-        List<String> uninstallInfoList = null;
-        boolean isReadPatchSuccessful = false;
-        int numAttempts = 0;
-        while (numAttempts < SplitConstants.MAX_RETRY_ATTEMPTS && !isReadPatchSuccessful) {
-            numAttempts++;
-            Properties properties = new Properties();
-            FileInputStream inputStream = null;
-            try {
-                inputStream = new FileInputStream(pendingUninstallSplitsFile);
-                properties.load(inputStream);
-                String uninstallSplitsStr = properties.getProperty(PENDING_UNINSTALL_SPLITS);
-                if (uninstallSplitsStr != null) {
-                    String[] uninstallSplitsArray = uninstallSplitsStr.split(",");
-                    uninstallInfoList = new ArrayList<>();
-                    Collections.addAll(uninstallInfoList, uninstallSplitsArray);
-                }
-                isReadPatchSuccessful = true;
-            } catch (IOException e) {
-                SplitLog.w(TAG, "read property failed, e:" + e);
-            } finally {
-                FileUtil.closeQuietly(inputStream);
-            }
-        }
-        return uninstallInfoList;
-    }
-
-    private boolean recordPendingUninstallSplitsInternal(File pendingUninstallSplitsFile, List<String> pendingUninstallSplits) {
-        if (pendingUninstallSplitsFile == null || pendingUninstallSplits == null) {
-            return false;
-        }
-        List<String> tempUninstallSplits = new ArrayList<>(pendingUninstallSplits);
+    private boolean recordPendingUninstallSplitsInternal(List<String> pendingUninstallSplits) {
+        final List<String> tempUninstallSplits = new ArrayList<>(pendingUninstallSplits);
         SplitLog.i(TAG, "recordSplitUninstallInfo file path:"
-                + pendingUninstallSplitsFile.getAbsolutePath()
+                + journalStore.getJournalFile().getAbsolutePath()
                 + " , uninstalls splits: "
                 + tempUninstallSplits.toString());
-
-        boolean isWritePatchSuccessful = false;
-
-        int numAttempts = 0;
-
-        if (pendingUninstallSplitsFile.exists()) {
-            List<String> oldPendingUninstallSplits = readPendingUninstallSplits();
-            if (oldPendingUninstallSplits != null) {
-                if (oldPendingUninstallSplits.containsAll(tempUninstallSplits)) {
-                    SplitLog.i(TAG, "Splits %s have been marked to uninstall!", tempUninstallSplits.toString());
-                    return true;
+        return journalStore.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                List<String> oldPendingUninstallSplits = split(values.get(PENDING_UNINSTALL_SPLITS));
+                if (oldPendingUninstallSplits != null) {
+                    if (oldPendingUninstallSplits.containsAll(tempUninstallSplits)) {
+                        SplitLog.i(TAG, "Splits %s have been marked to uninstall!", tempUninstallSplits.toString());
+                        return null;
+                    }
+                    Set<String> tempSet = new LinkedHashSet<>(oldPendingUninstallSplits);
+                    tempSet.addAll(tempUninstallSplits);
+                    tempUninstallSplits.clear();
+                    tempUninstallSplits.addAll(tempSet);
+                    SplitLog.i(TAG, "Splits which need to be uninstalled have been updated, new pending uninstall splits: " + tempUninstallSplits.toString());
                 }
-                tempUninstallSplits.addAll(oldPendingUninstallSplits);
-                HashSet<String> tempSet = new HashSet<>(tempUninstallSplits);
-                tempUninstallSplits.clear();
-                tempUninstallSplits.addAll(tempSet);
-                SplitLog.i(TAG, "Splits which need to be uninstalled have been updated, new pending uninstall splits: " + tempUninstallSplits.toString());
+                return Collections.singletonMap(PENDING_UNINSTALL_SPLITS, TextUtils.join(",", tempUninstallSplits));
             }
+        });
+    }
+
+    /**
+     * Move pending uninstall splits of old properties file into journal.
+     */
+    private void migrateLegacyPendingUninstallSplits() {
+        if (!legacyPendingUninstallSplitsFile.exists()) {
+            return;
+        }
+        Properties properties = new Properties();
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(legacyPendingUninstallSplitsFile);
+            properties.load(inputStream);
+        } catch (IOException e) {
+            SplitLog.w(TAG, "read property failed, e:" + e);
+        } finally {
+            FileUtil.closeQuietly(inputStream);
         }
+        List<String> legacySplits = split(properties.getProperty(PENDING_UNINSTALL_SPLITS));
+        if (legacySplits == null || recordPendingUninstallSplitsInternal(legacySplits)) {
+            FileUtil.deleteFileSafely(legacyPendingUninstallSplitsFile);
+        }
+    }
 
-        while (numAttempts < SplitConstants.MAX_RETRY_ATTEMPTS && !isWritePatchSuccessful) {
-            numAttempts++;
-            Properties newProperties = new Properties();
-            newProperties.put(PENDING_UNINSTALL_SPLITS, TextUtils.join(",", tempUninstallSplits));
-            FileOutputStream outputStream = null;
-            try {
-                outputStream = new FileOutputStream(pendingUninstallSplitsFile, false);
-                String comment = "splits need to be uninstalled: " + tempUninstallSplits.toString();
-                newProperties.store(outputStream, comment);
-            } catch (Exception e) {
-                SplitLog.w(TAG, "write property failed, e:" + e);
-            } finally {
-                FileUtil.closeQuietly(outputStream);
-            }
-            List<String> tempInfo = readPendingUninstallSplits();
-            isWritePatchSuccessful = tempInfo != null && tempInfo.containsAll(tempUninstallSplits);
-            if (!isWritePatchSuccessful) {
-                pendingUninstallSplitsFile.delete();
-            }
+    private static List<String> split(String uninstallSplitsStr) {
+        if (TextUtils.isEmpty(uninstallSplitsStr)) {
+            return null;
         }
-        return isWritePatchSuccessful;
+        List<String> uninstallInfoList = new ArrayList<>();
+        Collections.addAll(uninstallInfoList, uninstallSplitsStr.split(","));
+        return uninstallInfoList;
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+/**
+ * Decide whether a session state update should be emitted, so that frequent download progress
+ * does not flood broadcasts.
+ * <p>
+ * An update whose status differs from the last emitted one is always emitted immediately.
+ * Further {@link SplitInstallInternalSessionStatus#DOWNLOADING} updates of a session are merged until
+ * the minimum interval elapses and bytes downloaded grow by the minimum delta, the latest merged update
+ * should be flushed after the delay returned by {@link #scheduleFlush(int)} if no other update arrives.
+ * This class is not thread safe.
+ */
+final class SplitSessionUpdateCoalescer {
+
+    private static final int NO_STATUS = -1;
+
+    interface Clock {
+
+        long uptimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
+    private final long minIntervalMillis;
+
+    private final long minBytesDelta;
+
+    private final Clock clock;
+
+    private final SparseArray<SessionRecord> records = new SparseArray<>();
+
+    private long emittedCount;
+
+    private long suppressedCount;
+
+    SplitSessionUpdateCoalescer(long minIntervalMillis, long minBytesDelta, Clock clock) {
+        this.minIntervalMillis = Math.max(0L, minIntervalMillis);
+        this.minBytesDelta = Math.max(0L, minBytesDelta);
+        this.clock = clock;
+    }
+
+    /**
+     * @return {@code true} if the update should be emitted now, otherwise it is merged into pending update.
+     */
+    boolean offer(int sessionId, int status, long bytesDownloaded) {
+        SessionRecord record = records.get(sessionId);
+        if (record == null) {
+            record = new SessionRecord();
+            records.put(sessionId, record);
+        }
+        long now = clock.uptimeMillis();
+        if (status != SplitInstallInternalSessionStatus.DOWNLOADING
+                || record.status != status
+                || (now - record.emitTime >= minIntervalMillis && bytesDownloaded - record.bytesDownloaded >= minBytesDelta)) {
+            onEmitted(record, status, bytesDownloaded, now);
+            return true;
+        }
+        record.pending = true;
+        suppressedCount++;
+        record.suppressedCount++;
+        return false;
+    }
+
+    /**
+     * Mark a flush of pending update is scheduled for session.
+     *
+     * @return milliseconds after which pending update should be flushed, or -1 if there is no pending update
+     * or a flush has been scheduled already.
+     */
+    long scheduleFlush(int sessionId) {
+        SessionRecord record = records.get(sessionId);
+        if (record == null || !record.pending || record.flushScheduled) {
+            return -1L;
+        }
+        record.flushScheduled = true;
+        return Math.max(0L, record.emitTime + minIntervalMillis - clock.uptimeMillis());
+    }
+
+    /**
+     * Called when scheduled flush of session is due.
+     *
+     * @return {@code true} if pending update is still not delivered and should be emitted now.
+     */
+    boolean flush(int sessionId, int status, long bytesDownloaded) {
+        SessionRecord record = records.get(sessionId);
+        if (record == null) {
+            return false;
+        }
+        record.flushScheduled = false;
+        if (!record.pending || record.status != status) {
+            return false;
+        }
+        onEmitted(record, status, bytesDownloaded, clock.uptimeMillis());
+        return true;
+    }
+
+    long getEmittedCount() {
+        return emittedCount;
+    }
+
+    long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /**
+     * @return count of sessions whose updates are tracked.
+     */
+    int getSessionCount() {
+        return records.size();
+    }
+
+    /**
+     * Forget the session, it is called when session reaches a terminal state or is removed.
+     *
+     * @return count of updates suppressed for the session.
+     */
+    long remove(int sessionId) {
+        SessionRecord record = records.get(sessionId);
+        if (record == null) {
+            return 0L;
+        }
+        records.remove(sessionId);
+        return record.suppressedCount;
+    }
+
+    private void onEmitted(SessionRecord record, int status, long bytesDownloaded, long now) {
+        record.status = status;
+        record.bytesDownloaded = bytesDownloaded;
+        record.emitTime = now;
+        record.pending = false;
+        emittedCount++;
+    }
+
+    private static final class SessionRecord {
+
+        int status = NO_STATUS;
+
+        long bytesDownloaded;
+
+        long emitTime;
+
+        boolean pending;
+
+        boolean flushScheduled;
+
+        long suppressedCount;
+    }
+}
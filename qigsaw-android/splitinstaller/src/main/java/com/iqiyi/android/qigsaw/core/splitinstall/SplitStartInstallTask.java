@@ -54,10 +54,13 @@ final class SplitStartInstallTask extends SplitInstallTask {
     }
 
     @Override
-    protected void onPreInstall() {
-        super.onPreInstall();
-        mSessionManager.changeSessionState(mSessionState.sessionId(), SplitInstallInternalSessionStatus.INSTALLING);
-        emitSessionStatus();
+    protected void onPreInstall(SplitInstallScheduler scheduler) {
+        super.onPreInstall(scheduler);
+        synchronized (mSessionState) {
+            mSessionState.setInstallScheduler(scheduler);
+            mSessionManager.changeSessionState(mSessionState.sessionId(), SplitInstallInternalSessionStatus.INSTALLING);
+            emitSessionStatus();
+        }
     }
 
     @Override
@@ -79,18 +82,33 @@ final class SplitStartInstallTask extends SplitInstallTask {
             splitFileIntent.putExtra(SplitConstants.KET_NAME, installResult.splitName);
             splitFileIntents.add(splitFileIntent);
         }
-        mSessionState.setSplitFileIntents(splitFileIntents);
-        mSessionManager.changeSessionState(mSessionState.sessionId(), SplitInstallInternalSessionStatus.POST_INSTALLED);
-        emitSessionStatus();
-
+        synchronized (mSessionState) {
+            mSessionState.setInstallScheduler(null);
+            mSessionState.setSplitFileIntents(splitFileIntents);
+            mSessionManager.changeSessionState(mSessionState.sessionId(), SplitInstallInternalSessionStatus.POST_INSTALLED);
+            emitSessionStatus();
+        }
     }
 
     @Override
     void onInstallFailed(List<SplitInstallError> errors) {
         super.onInstallFailed(errors);
-        mSessionState.setErrorCode(errors.get(0).errorCode);
-        mSessionManager.changeSessionState(mSessionState.sessionId(), SplitInstallInternalSessionStatus.FAILED);
-        emitSessionStatus();
+        synchronized (mSessionState) {
+            mSessionState.setInstallScheduler(null);
+            mSessionState.setErrorCode(errors.get(0).errorCode);
+            mSessionManager.changeSessionState(mSessionState.sessionId(), SplitInstallInternalSessionStatus.FAILED);
+            emitSessionStatus();
+        }
+    }
+
+    @Override
+    void onInstallCanceled(List<SplitInstallError> canceledSplits) {
+        super.onInstallCanceled(canceledSplits);
+        synchronized (mSessionState) {
+            mSessionState.setInstallScheduler(null);
+            mSessionManager.changeSessionState(mSessionState.sessionId(), SplitInstallInternalSessionStatus.CANCELED);
+            emitSessionStatus();
+        }
     }
 
     private void emitSessionStatus() {
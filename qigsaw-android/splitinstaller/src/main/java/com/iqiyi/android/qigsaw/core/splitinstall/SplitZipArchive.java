@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view of zip central directory, which exposes raw offsets of entries so that
+ * callers can copy or inflate entry data directly from file channel.
+ * Zip64 archives are not supported, split apks never need it.
+ */
+final class SplitZipArchive implements Closeable {
+
+    static final int METHOD_STORED = 0;
+
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int ENDSIG = 0x06054b50;
+
+    private static final int CENSIG = 0x02014b50;
+
+    private static final int LOCSIG = 0x04034b50;
+
+    private static final int ENDHDR = 22;
+
+    private static final int CENHDR = 46;
+
+    private static final int LOCHDR = 30;
+
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final CentralDirectory centralDirectory;
+
+    SplitZipArchive(File file) throws IOException {
+        this.raf = new RandomAccessFile(file, "r");
+        try {
+            this.channel = raf.getChannel();
+            this.centralDirectory = findCentralDirectory(channel);
+        } catch (IOException e) {
+            FileUtil.closeQuietly(raf);
+            throw e;
+        }
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    CentralDirectory getCentralDirectory() {
+        return centralDirectory;
+    }
+
+    /**
+     * Find the End Of Central Directory record by searching a memory-mapped tail of file.
+     */
+    static CentralDirectory findCentralDirectory(FileChannel channel) throws IOException {
+        long fileLength = channel.size();
+        if (fileLength < ENDHDR) {
+            throw new ZipException("File too short to be a zip file: " + fileLength);
+        }
+        int windowSize = (int) Math.min(fileLength, ENDHDR + MAX_COMMENT_LENGTH);
+        long windowOffset = fileLength - windowSize;
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowOffset, windowSize);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        int firstMatch = -1;
+        for (int pos = windowSize - ENDHDR; pos >= 0; pos--) {
+            if (window.getInt(pos) != ENDSIG) {
+                continue;
+            }
+            if (firstMatch < 0) {
+                firstMatch = pos;
+            }
+            //prefer the record whose comment ends exactly at the end of file.
+            if ((window.getShort(pos + 20) & 0xffff) == windowSize - pos - ENDHDR) {
+                return readCentralDirectory(window, pos, windowOffset);
+            }
+        }
+        if (firstMatch >= 0) {
+            return readCentralDirectory(window, firstMatch, windowOffset);
+        }
+        throw new ZipException("End Of Central Directory signature not found");
+    }
+
+    private static CentralDirectory readCentralDirectory(ByteBuffer window, int pos, long windowOffset) throws ZipException {
+        CentralDirectory dir = new CentralDirectory();
+        dir.entryCount = window.getShort(pos + 10) & 0xffff;
+        dir.size = window.getInt(pos + 12) & 0xffffffffL;
+        dir.offset = window.getInt(pos + 16) & 0xffffffffL;
+        if (dir.offset + dir.size > windowOffset + pos) {
+            throw new ZipException("Central Directory out of range, offset: " + dir.offset + ", size: " + dir.size);
+        }
+        return dir;
+    }
+
+    /**
+     * Read entries whose names start with {@code prefix} and end with {@code suffix}.
+     */
+    List<Entry> getEntries(String prefix, String suffix) throws IOException {
+        if (centralDirectory.size > Integer.MAX_VALUE) {
+            throw new ZipException("Central Directory is too large: " + centralDirectory.size);
+        }
+        ByteBuffer cd = ByteBuffer.allocate((int) centralDirectory.size).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(cd, centralDirectory.offset);
+        cd.flip();
+        List<Entry> entries = new ArrayList<>();
+        byte[] nameBytes = new byte[256];
+        for (int i = 0; i < centralDirectory.entryCount; i++) {
+            int pos = cd.position();
+            if (cd.remaining() < CENHDR || cd.getInt(pos) != CENSIG) {
+                throw new ZipException("Invalid Central Directory entry #" + i);
+            }
+            int nameLength = cd.getShort(pos + 28) & 0xffff;
+            int extraLength = cd.getShort(pos + 30) & 0xffff;
+            int commentLength = cd.getShort(pos + 32) & 0xffff;
+            if (cd.remaining() < CENHDR + nameLength + extraLength + commentLength) {
+                throw new ZipException("Truncated Central Directory entry #" + i);
+            }
+            if (nameBytes.length < nameLength) {
+                nameBytes = new byte[nameLength];
+            }
+            cd.position(pos + CENHDR);
+            cd.get(nameBytes, 0, nameLength);
+            String name = new String(nameBytes, 0, nameLength, UTF_8);
+            cd.position(pos + CENHDR + nameLength + extraLength + commentLength);
+            if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+                continue;
+            }
+            Entry entry = new Entry();
+            entry.name = name;
+            entry.method = cd.getShort(pos + 10) & 0xffff;
+            entry.crc = cd.getInt(pos + 16) & 0xffffffffL;
+            entry.compressedSize = cd.getInt(pos + 20) & 0xffffffffL;
+            entry.size = cd.getInt(pos + 24) & 0xffffffffL;
+            entry.localHeaderOffset = cd.getInt(pos + 42) & 0xffffffffL;
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Get offset of entry data, which follows the local file header of entry.
+     */
+    long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCHDR).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, entry.localHeaderOffset);
+        if (header.getInt(0) != LOCSIG) {
+            throw new ZipException("Invalid local file header of entry " + entry.name);
+        }
+        long dataOffset = entry.localHeaderOffset + LOCHDR + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+        if (dataOffset + entry.compressedSize > centralDirectory.offset) {
+            throw new ZipException("Data of entry " + entry.name + " out of range");
+        }
+        return dataOffset;
+    }
+
+    /**
+     * Read bytes at {@code position} until {@code buffer} is full, it is safe to be called concurrently.
+     */
+    void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of zip file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    static final class CentralDirectory {
+
+        long offset;
+
+        long size;
+
+        int entryCount;
+    }
+
+    static final class Entry {
+
+        String name;
+
+        int method;
+
+        long crc;
+
+        long compressedSize;
+
+        long size;
+
+        long localHeaderOffset;
+    }
+}
@@ -39,6 +39,7 @@ import com.iqiyi.android.qigsaw.core.splitinstall.SplitPendingUninstallManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManagerService;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
 import java.io.File;
@@ -48,6 +49,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
@@ -71,7 +73,8 @@ public abstract class SplitInstallSupervisor {
                     try {
                         String installedMark = uninstallSplitInfo.obtainInstalledMark(context);
                         File installedMarkFile = SplitPathManager.require().getSplitMarkFile(uninstallSplitInfo, installedMark);
-                        boolean ret = FileUtil.deleteFileSafely(installedMarkFile);
+                        boolean ret = SplitInstallStateTable.get().remove(uninstallSplitInfo.getSplitName())
+                                && FileUtil.deleteFileSafely(installedMarkFile);
                         if (ret) {
                             realUninstallSplits.add(uninstallSplitInfo);
                         }
@@ -90,11 +93,17 @@ public abstract class SplitInstallSupervisor {
         if (infoManager != null) {
             Collection<SplitInfo> allSplitInfos = infoManager.getAllSplitInfo(context);
             if (allSplitInfos != null) {
-                SplitInstallService.getHandler(context.getPackageName()).post(new SplitDeleteRedundantVersionTask(context, allSplitInfos));
+                List<String> excludedSplits = uninstallSplits == null ? Collections.<String>emptyList() : uninstallSplits;
+                SplitInstallService.getHandler(context.getPackageName()).post(new SplitDeleteRedundantVersionTask(context, allSplitInfos, excludedSplits, getSplitDiskQuota()));
             }
         }
     }
 
+    /**
+     * @return total bytes of installed split versions to keep, see {@link com.iqiyi.android.qigsaw.core.splitinstall.SplitDiskQuotaManager}.
+     */
+    protected abstract long getSplitDiskQuota();
+
     public abstract void startInstall(List<Bundle> moduleNames, Callback callback) throws RemoteException;
 
     public abstract void deferredInstall(List<Bundle> moduleNames, Callback callback) throws RemoteException;
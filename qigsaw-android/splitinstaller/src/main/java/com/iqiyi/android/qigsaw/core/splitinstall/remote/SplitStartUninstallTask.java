@@ -54,6 +54,7 @@ final class SplitStartUninstallTask implements Runnable {
             SplitLog.d(TAG, "split %s need to be uninstalled, try to delete its files", info.getSplitName());
             File splitRootDir = SplitPathManager.require().getSplitRootDir(info);
             FileUtil.deleteDir(splitRootDir);
+            SplitPathManager.require().invalidateSplitDirs(info);
             realUninstallSplits.add(info.getSplitName());
         }
         SplitUninstallReporter uninstallReporter = SplitUninstallReporterManager.getUninstallReporter();
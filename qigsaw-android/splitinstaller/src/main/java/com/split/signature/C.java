@@ -9,12 +9,14 @@ final class C {
     final long c;
     final long d;
     final ByteBuffer e;
+    final ByteBuffer f;
 
-    C(ByteBuffer var1, long var2, long var4, long var6, ByteBuffer var8) {
+    C(ByteBuffer var1, long var2, long var4, long var6, ByteBuffer var8, ByteBuffer var9) {
         this.a = var1;
         this.b = var2;
         this.c = var4;
         this.d = var6;
         this.e = var8;
+        this.f = var9;
     }
 }
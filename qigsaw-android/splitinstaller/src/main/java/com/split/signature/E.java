@@ -0,0 +1,69 @@
+package com.split.signature;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Section of file which is read through a buffer shared by all sections, bytes read are fed to
+ * chunk digests and a digest of whole file, so that the file is only read once.
+ */
+final class E implements A {
+    private final FileChannel a;
+    private final long b;
+    private final long c;
+    private final ByteBuffer d;
+    private final MessageDigest e;
+    private ByteBuffer f;
+
+    E(FileChannel var1, long var2, long var4, ByteBuffer var6, MessageDigest var7, ByteBuffer var8) {
+        this.a = var1;
+        this.b = var2;
+        this.c = var4;
+        this.d = var6;
+        this.e = var7;
+        this.f = var8;
+    }
+
+    public long a() {
+        return this.c;
+    }
+
+    public void a(MessageDigest[] var1, long var2, int var4) throws IOException {
+        this.b();
+        long var5 = this.b + var2;
+        byte[] var7 = this.d.array();
+        int var8 = var4;
+
+        while (var8 > 0) {
+            this.d.clear();
+            this.d.limit(Math.min(var8, this.d.capacity()));
+            int var9 = this.a.read(this.d, var5);
+            if (var9 < 0) {
+                throw new EOFException("Unexpected end of file at " + var5);
+            }
+
+            for (MessageDigest var10 : var1) {
+                var10.update(var7, 0, var9);
+            }
+
+            this.e.update(var7, 0, var9);
+            var5 += var9;
+            var8 -= var9;
+        }
+    }
+
+    /**
+     * Feed bytes preceding this section, which are not covered by chunk digests, to digest of whole file.
+     */
+    void b() {
+        if (this.f != null) {
+            ByteBuffer var1 = this.f.duplicate();
+            var1.clear();
+            this.e.update(var1);
+            this.f = null;
+        }
+    }
+}
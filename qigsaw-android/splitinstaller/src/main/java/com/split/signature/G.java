@@ -100,28 +100,36 @@ public class G implements A {
     }
 
     public static X509Certificate[][] a(String var0) throws IOException, D {
-        RandomAccessFile var1 = new RandomAccessFile(var0, "r");
+        return a(var0, null);
+    }
+
+    /**
+     * Same as {@link #a(String)}, but also feeds the whole file to {@code var1} while computing content
+     * digests, so that the file is read only once. {@code var1} is complete only if verification succeeds.
+     */
+    public static X509Certificate[][] a(String var0, MessageDigest var1) throws IOException, D {
+        RandomAccessFile var2 = new RandomAccessFile(var0, "r");
 
-        X509Certificate[][] var3;
+        X509Certificate[][] var4;
         try {
-            X509Certificate[][] var2 = a(var1);
-            var1.close();
-            var3 = var2;
+            X509Certificate[][] var3 = a(var2, var1);
+            var2.close();
+            var4 = var3;
         } finally {
             try {
-                var1.close();
+                var2.close();
             } catch (IOException var8) {
 
             }
 
         }
 
-        return var3;
+        return var4;
     }
 
-    private static X509Certificate[][] a(RandomAccessFile var0) throws IOException, D {
-        C var1 = b(var0);
-        return a(var0.getChannel(), var1);
+    private static X509Certificate[][] a(RandomAccessFile var0, MessageDigest var1) throws IOException, D {
+        C var2 = b(var0);
+        return a(var0.getChannel(), var2, var1);
     }
 
     private static C b(RandomAccessFile var0) throws IOException, D {
@@ -153,11 +161,11 @@ public class G implements A {
             ByteBuffer var8 = (ByteBuffer) (var7 = a(var0, var5)).first;
             long var9 = (Long) var7.second;
             ByteBuffer var11 = d(var8);
-            return new C(var11, var9, var5, var3, var2);
+            return new C(var11, var9, var5, var3, var2, var8);
         }
     }
 
-    private static X509Certificate[][] a(FileChannel fileChannel, C cVar) {
+    private static X509Certificate[][] a(FileChannel fileChannel, C cVar, MessageDigest digest) {
         int i = 0;
         Map hashMap = new HashMap();
         List arrayList = new ArrayList();
@@ -183,7 +191,7 @@ public class G implements A {
                 } else if (hashMap.isEmpty()) {
                     throw new SecurityException("No content digests found");
                 } else {
-                    a(hashMap, fileChannel, cVar.b, cVar.c, cVar.d, cVar.e);
+                    a(hashMap, fileChannel, cVar, digest);
                     return (X509Certificate[][]) arrayList.toArray(new X509Certificate[arrayList.size()][]);
                 }
             } catch (Throwable e5) {
@@ -322,12 +330,31 @@ public class G implements A {
         }
     }
 
-    private static void a(Map<Integer, byte[]> var0, FileChannel var1, long var2, long var4, long var6, ByteBuffer var8) {
+    private static void a(Map<Integer, byte[]> var0, FileChannel var1, C cVar, MessageDigest digest) {
         if (var0.isEmpty()) {
             throw new SecurityException("No digests provided");
         } else {
-            B var9 = new B(var1, 0L, var2);
-            B var10 = new B(var1, var4, var6 - var4);
+            long var2 = cVar.b;
+            long var4 = cVar.c;
+            long var6 = cVar.d;
+            ByteBuffer var8 = cVar.e;
+            A var9;
+            A var10;
+            E var28 = null;
+            byte[] var29 = null;
+            if (digest == null) {
+                var9 = new B(var1, 0L, var2);
+                var10 = new B(var1, var4, var6 - var4);
+            } else {
+                ByteBuffer var30 = ByteBuffer.allocate(65536);
+                var9 = new E(var1, 0L, var2, var30, digest, null);
+                var10 = var28 = new E(var1, var4, var6 - var4, var30, digest, cVar.f);
+                //End of Central Directory is modified below, keep the original bytes for digest of whole file.
+                ByteBuffer var31 = var8.duplicate();
+                var31.clear();
+                var29 = new byte[var31.remaining()];
+                var31.get(var29);
+            }
             (var8 = var8.duplicate()).order(ByteOrder.LITTLE_ENDIAN);
             a(var8);
             int var23 = var8.position() + 16;
@@ -359,6 +386,11 @@ public class G implements A {
                     }
                 }
 
+                if (var28 != null) {
+                    var28.b();
+                    digest.update(var29);
+                }
+
             } else {
                 throw new IllegalArgumentException((new StringBuilder(47)).append("uint32 value of out range: ").append(var2).toString());
             }
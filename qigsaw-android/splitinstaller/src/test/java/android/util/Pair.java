@@ -0,0 +1,20 @@
+package android.util;
+
+/**
+ * Methods of android.jar used by unit tests only return default values, but split signature needs a working Pair.
+ */
+public class Pair<F, S> {
+
+    public final F first;
+
+    public final S second;
+
+    public Pair(F first, S second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public static <A, B> Pair<A, B> create(A a, B b) {
+        return new Pair<>(a, b);
+    }
+}
@@ -0,0 +1,71 @@
+package android.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Methods of android.jar used by unit tests only return default values, but session bookkeeping needs a working SparseArray.
+ */
+public class SparseArray<E> {
+
+    private final List<Integer> keys = new ArrayList<>();
+
+    private final List<E> values = new ArrayList<>();
+
+    public E get(int key) {
+        return get(key, null);
+    }
+
+    public E get(int key, E valueIfKeyNotFound) {
+        int index = indexOfKey(key);
+        return index < 0 ? valueIfKeyNotFound : values.get(index);
+    }
+
+    public void put(int key, E value) {
+        int index = indexOfKey(key);
+        if (index >= 0) {
+            values.set(index, value);
+        } else {
+            keys.add(~index, key);
+            values.add(~index, value);
+        }
+    }
+
+    public void remove(int key) {
+        delete(key);
+    }
+
+    public void delete(int key) {
+        int index = indexOfKey(key);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    public void removeAt(int index) {
+        keys.remove(index);
+        values.remove(index);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public int keyAt(int index) {
+        return keys.get(index);
+    }
+
+    public E valueAt(int index) {
+        return values.get(index);
+    }
+
+    public int indexOfKey(int key) {
+        return Collections.binarySearch(keys, key);
+    }
+
+    public void clear() {
+        keys.clear();
+        values.clear();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import androidx.annotation.NonNull;
+
+import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallError;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Installer which only records installation, splits may sleep, fail or block until they are released.
+ */
+class FakeSplitInstaller extends SplitInstaller {
+
+    private final Set<String> failingSplits = new HashSet<>();
+
+    private final Map<String, CountDownLatch> gates = new HashMap<>();
+
+    private final Map<String, CountDownLatch> startedSignals = new HashMap<>();
+
+    private final Set<String> installed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final Set<String> finished = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final Set<String> dependencyViolations = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final Random random;
+
+    private final int maxSleepMs;
+
+    FakeSplitInstaller(long seed, int maxSleepMs) {
+        this.random = new Random(seed);
+        this.maxSleepMs = maxSleepMs;
+    }
+
+    FakeSplitInstaller failOn(String splitName) {
+        failingSplits.add(splitName);
+        return this;
+    }
+
+    /**
+     * Installation of split blocks until {@link #release(String)}.
+     */
+    FakeSplitInstaller blockOn(String splitName) {
+        gates.put(splitName, new CountDownLatch(1));
+        startedSignals.put(splitName, new CountDownLatch(1));
+        return this;
+    }
+
+    void awaitStarted(String splitName) throws InterruptedException {
+        if (!startedSignals.get(splitName).await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError("split " + splitName + " is not started");
+        }
+    }
+
+    void release(String splitName) {
+        gates.get(splitName).countDown();
+    }
+
+    Set<String> installed() {
+        return installed;
+    }
+
+    /**
+     * Splits started before all of their dependencies finished, as "split->dependency".
+     */
+    Set<String> dependencyViolations() {
+        return dependencyViolations;
+    }
+
+    int maxRunning() {
+        return maxRunning.get();
+    }
+
+    @Override
+    public InstallResult install(boolean startInstall, @NonNull SplitInfo splitInfo) throws InstallException {
+        String splitName = splitInfo.getSplitName();
+        List<String> dependencies = splitInfo.getDependencies();
+        if (dependencies != null) {
+            for (String dependency : dependencies) {
+                if (!finished.contains(dependency)) {
+                    dependencyViolations.add(splitName + "->" + dependency);
+                }
+            }
+        }
+        int current = running.incrementAndGet();
+        while (true) {
+            int max = maxRunning.get();
+            if (current <= max || maxRunning.compareAndSet(max, current)) {
+                break;
+            }
+        }
+        try {
+            CountDownLatch started = startedSignals.get(splitName);
+            if (started != null) {
+                started.countDown();
+                gates.get(splitName).await(10, TimeUnit.SECONDS);
+            }
+            int sleep;
+            synchronized (random) {
+                sleep = maxSleepMs > 0 ? random.nextInt(maxSleepMs + 1) : 0;
+            }
+            if (sleep > 0) {
+                Thread.sleep(sleep);
+            }
+        } catch (InterruptedException e) {
+            throw new InstallException(SplitInstallError.INTERNAL_ERROR, e);
+        } finally {
+            running.decrementAndGet();
+        }
+        if (failingSplits.contains(splitName)) {
+            finished.add(splitName);
+            throw new InstallException(SplitInstallError.APK_FILE_ILLEGAL, new RuntimeException(splitName));
+        }
+        installed.add(splitName);
+        finished.add(splitName);
+        return new InstallResult(splitName, new File(splitName + ".apk"), null, null, null, true);
+    }
+
+    @Override
+    protected void verifySplitApk(File splitApk, String splitApkMd5, File splitDir) {
+
+    }
+
+    @Override
+    protected List<String> extractMultiDex(File splitApk, File codeCacheDir, @NonNull SplitInfo splitInfo) {
+        return null;
+    }
+
+    @Override
+    protected void extractLib(File splitApk, File libDir, @NonNull SplitInfo.LibData libData) {
+
+    }
+
+    @Override
+    protected void recordInstallState(@NonNull SplitInstallStateTable.State state) {
+
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import androidx.annotation.NonNull;
+
+import com.iqiyi.android.qigsaw.core.splitdownload.DownloadCallback;
+import com.iqiyi.android.qigsaw.core.splitdownload.DownloadRequest;
+import com.iqiyi.android.qigsaw.core.splitdownload.Downloader;
+import com.iqiyi.android.qigsaw.core.splitdownload.ThrottlingDownloader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downloader simulated on a fake clock: all running sessions share a fixed bandwidth equally, unless they are throttled.
+ * Downloaded bytes of canceled sessions are kept, so the same session id is resumed from them.
+ */
+class SimulatedDownloader implements Downloader {
+
+    /**
+     * How {@link #cancelDownloadSync(int)} notifies onCanceled.
+     */
+    enum CancelBehavior {
+        NOTIFY, NEVER, LATE
+    }
+
+    static final long TICK_MS = 10L;
+
+    final SplitSessionUpdateCoalescerTest.FakeClock clock;
+
+    private final long bytesPerSecond;
+
+    private final Map<Integer, Transfer> running = new LinkedHashMap<>();
+
+    private final Map<Integer, Long> resumableBytes = new HashMap<>();
+
+    private final List<DownloadCallback> lateCanceledCallbacks = new ArrayList<>();
+
+    CancelBehavior cancelBehavior = CancelBehavior.NOTIFY;
+
+    int cancelCount;
+
+    int startCount;
+
+    SimulatedDownloader(SplitSessionUpdateCoalescerTest.FakeClock clock, long bytesPerSecond) {
+        this.clock = clock;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    static DownloadRequest request(String moduleName, long size) {
+        return DownloadRequest.newBuilder().moduleName(moduleName).fileName(moduleName + ".apk").size(size).build();
+    }
+
+    @Override
+    public void startDownload(int sessionId, List<DownloadRequest> requests, DownloadCallback callback) {
+        start(sessionId, requests, callback);
+    }
+
+    @Override
+    public void deferredDownload(int sessionId, List<DownloadRequest> requests, DownloadCallback callback, boolean usingMobileDataPermitted) {
+        start(sessionId, requests, callback);
+    }
+
+    private void start(int sessionId, List<DownloadRequest> requests, DownloadCallback callback) {
+        if (running.containsKey(sessionId)) {
+            throw new IllegalStateException("Session " + sessionId + " is being downloaded");
+        }
+        long size = 0;
+        for (DownloadRequest request : requests) {
+            size += request.getSize();
+        }
+        Long resumed = resumableBytes.remove(sessionId);
+        Transfer transfer = new Transfer(callback, size, resumed == null ? 0 : resumed);
+        running.put(sessionId, transfer);
+        startCount++;
+        callback.onStart();
+    }
+
+    @Override
+    public boolean cancelDownloadSync(int sessionId) {
+        Transfer transfer = running.remove(sessionId);
+        if (transfer == null) {
+            return false;
+        }
+        cancelCount++;
+        resumableBytes.put(sessionId, transfer.downloaded);
+        transfer.callback.onCanceling();
+        if (cancelBehavior == CancelBehavior.NOTIFY) {
+            transfer.callback.onCanceled();
+        } else if (cancelBehavior == CancelBehavior.LATE) {
+            lateCanceledCallbacks.add(transfer.callback);
+        }
+        return true;
+    }
+
+    /**
+     * Deliver onCanceled which are held by {@link CancelBehavior#LATE}.
+     */
+    void deliverLateCanceled() {
+        List<DownloadCallback> callbacks = new ArrayList<>(lateCanceledCallbacks);
+        lateCanceledCallbacks.clear();
+        for (DownloadCallback callback : callbacks) {
+            callback.onCanceled();
+        }
+    }
+
+    boolean isRunning(int sessionId) {
+        return running.containsKey(sessionId);
+    }
+
+    long downloadedBytes(int sessionId) {
+        Transfer transfer = running.get(sessionId);
+        if (transfer != null) {
+            return transfer.downloaded;
+        }
+        Long resumed = resumableBytes.get(sessionId);
+        return resumed == null ? 0 : resumed;
+    }
+
+    long bandwidthLimit(int sessionId) {
+        Transfer transfer = running.get(sessionId);
+        return transfer == null ? -1 : transfer.limit;
+    }
+
+    /**
+     * Download for {@code millis} in ticks of {@link #TICK_MS}.
+     */
+    void advance(long millis) {
+        for (long elapsed = 0; elapsed < millis; elapsed += TICK_MS) {
+            tick();
+        }
+    }
+
+    /**
+     * Download until no session is running, or {@code maxMillis} passes.
+     */
+    void runUntilIdle(long maxMillis) {
+        for (long elapsed = 0; elapsed < maxMillis && !running.isEmpty(); elapsed += TICK_MS) {
+            tick();
+        }
+    }
+
+    private void tick() {
+        clock.advance(TICK_MS);
+        //bandwidth of the tick is shared equally, what throttled sessions leave is shared by the others.
+        double available = bytesPerSecond * TICK_MS / 1000.0;
+        List<Transfer> unsatisfied = new ArrayList<>(running.values());
+        Map<Transfer, Double> shares = new HashMap<>();
+        while (!unsatisfied.isEmpty() && available > 0) {
+            double share = available / unsatisfied.size();
+            List<Transfer> capped = new ArrayList<>();
+            for (Transfer transfer : unsatisfied) {
+                double cap = transfer.limit > 0 ? transfer.limit * TICK_MS / 1000.0 : Double.MAX_VALUE;
+                if (cap <= share) {
+                    capped.add(transfer);
+                }
+            }
+            if (capped.isEmpty()) {
+                for (Transfer transfer : unsatisfied) {
+                    shares.put(transfer, share);
+                }
+                break;
+            }
+            for (Transfer transfer : capped) {
+                double cap = transfer.limit * TICK_MS / 1000.0;
+                shares.put(transfer, cap);
+                available -= cap;
+                unsatisfied.remove(transfer);
+            }
+        }
+        List<Map.Entry<Integer, Transfer>> finished = new ArrayList<>();
+        for (Map.Entry<Integer, Transfer> entry : running.entrySet()) {
+            Transfer transfer = entry.getValue();
+            Double share = shares.get(transfer);
+            transfer.credit += share == null ? 0 : share;
+            long bytes = (long) transfer.credit;
+            transfer.credit -= bytes;
+            transfer.downloaded = Math.min(transfer.size, transfer.downloaded + bytes);
+            if (transfer.downloaded >= transfer.size) {
+                finished.add(entry);
+            }
+        }
+        for (Map.Entry<Integer, Transfer> entry : finished) {
+            running.remove(entry.getKey());
+        }
+        for (Map.Entry<Integer, Transfer> entry : new ArrayList<>(running.entrySet())) {
+            entry.getValue().callback.onProgress(entry.getValue().downloaded);
+        }
+        for (Map.Entry<Integer, Transfer> entry : finished) {
+            entry.getValue().callback.onProgress(entry.getValue().size);
+            entry.getValue().callback.onCompleted();
+        }
+    }
+
+    @Override
+    public long getDownloadSizeThresholdWhenUsingMobileData() {
+        return -1;
+    }
+
+    @Override
+    public boolean isDeferredDownloadOnlyWhenUsingWifiData() {
+        return false;
+    }
+
+    @Override
+    public long calculateDownloadSize(@NonNull List<DownloadRequest> requests, long totalBytesToDownload) {
+        return totalBytesToDownload;
+    }
+
+    private static final class Transfer {
+
+        final DownloadCallback callback;
+
+        final long size;
+
+        long downloaded;
+
+        double credit;
+
+        long limit = ThrottlingDownloader.UNLIMITED;
+
+        Transfer(DownloadCallback callback, long size, long downloaded) {
+            this.callback = callback;
+            this.size = size;
+            this.downloaded = downloaded;
+        }
+    }
+
+    /**
+     * Simulated downloader which supports throttling.
+     */
+    static final class Throttling extends SimulatedDownloader implements ThrottlingDownloader {
+
+        Throttling(SplitSessionUpdateCoalescerTest.FakeClock clock, long bytesPerSecond) {
+            super(clock, bytesPerSecond);
+        }
+
+        @Override
+        public boolean setSessionBandwidth(int sessionId, long bytesPerSecond) {
+            Transfer transfer = super.running.get(sessionId);
+            if (transfer == null) {
+                return false;
+            }
+            transfer.limit = bytesPerSecond;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoFactory;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SplitApkPatchTest {
+
+    private File workDir;
+
+    private File oldApk;
+
+    private File newApk;
+
+    private File patchFile;
+
+    private File targetDir;
+
+    @Before
+    public void setUp() throws Exception {
+        workDir = TestApks.createTempDir("split_apk_patch");
+        targetDir = new File(workDir, "target");
+        assertTrue(targetDir.mkdirs());
+        Map<String, byte[]> oldEntries = TestApks.splitEntries(1, 4, 256 * 1024, 2, 256 * 1024);
+        Map<String, byte[]> newEntries = TestApks.splitEntries(1, 4, 256 * 1024, 2, 256 * 1024);
+        // one dex and resources are changed, the other dex files and native libs are kept.
+        newEntries.put("classes2.dex", TestApks.randomBytes(1002, 260 * 1024));
+        newEntries.put("resources.arsc", TestApks.randomBytes(1003, 16 * 1024));
+        oldApk = signedApk("old", oldEntries);
+        newApk = signedApk("new", newEntries);
+        patchFile = new File(workDir, "split.patch");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Test
+    public void rebuildsApkByteByByte() throws Exception {
+        long patchSize = TestApks.createPatch(oldApk, newApk, patchFile);
+        File targetApk = new File(targetDir, "split-master.apk");
+        String expectedMd5 = FileUtil.getMD5(newApk);
+
+        String md5 = SplitApkPatch.apply(oldApk, patchFile, targetApk, expectedMd5);
+
+        assertEquals(expectedMd5, md5);
+        assertArrayEquals(TestApks.readFile(newApk), TestApks.readFile(targetApk));
+        assertEquals(1, targetDir.list().length);
+        // only the changed dex, resources and zip structures are transferred.
+        assertTrue("patch " + patchSize + " apk " + newApk.length(), patchSize < newApk.length() / 4);
+        assertTrue("patch " + patchSize, patchSize > 276 * 1024);
+    }
+
+    @Test
+    public void patchOfUnchangedApkOnlyCarriesZipStructures() throws Exception {
+        long patchSize = TestApks.createPatch(oldApk, oldApk, patchFile);
+        File targetApk = new File(targetDir, "split-master.apk");
+
+        SplitApkPatch.apply(oldApk, patchFile, targetApk, FileUtil.getMD5(oldApk));
+
+        assertArrayEquals(TestApks.readFile(oldApk), TestApks.readFile(targetApk));
+        assertTrue("patch " + patchSize, patchSize < 8 * 1024);
+    }
+
+    @Test
+    public void unexpectedTargetIsRejectedBeforeRebuilding() throws Exception {
+        TestApks.createPatch(oldApk, newApk, patchFile);
+        File targetApk = new File(targetDir, "split-master.apk");
+
+        assertApplyFails(oldApk, targetApk, FileUtil.getMD5(oldApk));
+    }
+
+    @Test
+    public void corruptedBaseApkIsRejected() throws Exception {
+        TestApks.createPatch(oldApk, newApk, patchFile);
+        File targetApk = new File(targetDir, "split-master.apk");
+        // flip a byte in the middle of classes.dex, which is copied from base apk.
+        RandomAccessFile raf = new RandomAccessFile(oldApk, "rw");
+        try {
+            long offset = 8 * 1024;
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        assertApplyFails(oldApk, targetApk, FileUtil.getMD5(newApk));
+    }
+
+    @Test
+    public void truncatedBaseApkIsRejected() throws Exception {
+        TestApks.createPatch(oldApk, newApk, patchFile);
+        File targetApk = new File(targetDir, "split-master.apk");
+        RandomAccessFile raf = new RandomAccessFile(oldApk, "rw");
+        try {
+            raf.setLength(raf.length() / 2);
+        } finally {
+            raf.close();
+        }
+
+        assertApplyFails(oldApk, targetApk, FileUtil.getMD5(newApk));
+    }
+
+    @Test
+    public void truncatedOrCorruptedPatchIsRejected() throws Exception {
+        TestApks.createPatch(oldApk, newApk, patchFile);
+        byte[] patch = TestApks.readFile(patchFile);
+        File targetApk = new File(targetDir, "split-master.apk");
+        String expectedMd5 = FileUtil.getMD5(newApk);
+        // the adler32 trailer of deflated ops is not needed once OP_END is read, rebuilt apk is checked by md5 anyway.
+        int[] lengths = {0, 3, 40, 100, patch.length / 2, patch.length - 16};
+        for (int length : lengths) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(patch, 0, truncated, 0, length);
+            writeFile(patchFile, truncated);
+            assertApplyFails(oldApk, targetApk, expectedMd5);
+        }
+        byte[] corrupted = patch.clone();
+        corrupted[corrupted.length / 2] ^= 0x5a;
+        writeFile(patchFile, corrupted);
+        assertApplyFails(oldApk, targetApk, expectedMd5);
+    }
+
+    @Test
+    public void baseApkIsFoundInOtherVerifiedVersion() throws Exception {
+        SplitInfoFactory.installPathManager();
+        String oldMd5 = FileUtil.getMD5(oldApk);
+        SplitInfo oldInfo = SplitInfoFactory.createWithPatch("patchsplit", "1.0.0", oldMd5, null);
+        SplitInfo newInfo = SplitInfoFactory.createWithPatch("patchsplit", "1.0.1", FileUtil.getMD5(newApk), oldMd5);
+        SplitInfo.ApkData apkData = SplitInfoFactory.apkData(newInfo);
+        File oldSplitDir = SplitPathManager.require().getSplitDir(oldInfo);
+        File installedApk = new File(oldSplitDir, "patchsplit-master.apk");
+        File recordFile = SplitApkVerifier.getRecordFile(oldSplitDir, installedApk);
+        try {
+            assertNull(SplitApkPatch.findBaseApk(newInfo, apkData));
+
+            FileUtil.copyFile(oldApk, installedApk);
+            assertNull("Unverified apk must not be patched", SplitApkPatch.findBaseApk(newInfo, apkData));
+
+            new SplitApkVerifier(null, false).record(installedApk, oldMd5, recordFile);
+            assertEquals(installedApk, SplitApkPatch.findBaseApk(newInfo, apkData));
+
+            SplitApkPatch.invalidateBaseApk(installedApk);
+            assertFalse(recordFile.exists());
+            assertNull(SplitApkPatch.findBaseApk(newInfo, apkData));
+
+            new SplitApkVerifier(null, false).record(installedApk, oldMd5, recordFile);
+            assertTrue(installedApk.setLastModified(installedApk.lastModified() - 10000));
+            assertNull("Changed apk must not be patched", SplitApkPatch.findBaseApk(newInfo, apkData));
+        } finally {
+            FileUtil.deleteDir(SplitPathManager.require().getSplitRootDir(newInfo));
+        }
+    }
+
+    private void assertApplyFails(File baseApk, File targetApk, String expectedMd5) {
+        try {
+            SplitApkPatch.apply(baseApk, patchFile, targetApk, expectedMd5);
+            fail("Patch must not be applied");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(targetApk.exists());
+        assertEquals("temp file is left", 0, targetDir.list().length);
+    }
+
+    private File signedApk(String name, Map<String, byte[]> entries) throws Exception {
+        File unsigned = new File(workDir, name + "-unsigned.zip");
+        File signed = new File(workDir, name + ".apk");
+        TestApks.writeZip(unsigned, entries);
+        TestApks.sign(unsigned, signed);
+        return signed;
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content);
+        } finally {
+            FileUtil.closeQuietly(os);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.split.signature.G;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class SplitApkVerifierTest {
+
+    private File workDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = TestApks.createTempDir("split_apk_verifier");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Test
+    public void fusedDigestMatchesSeparateChecks() throws Exception {
+        int[][] shapes = {{1, 4 * 1024, 0, 0}, {1, 1024 * 1024 + 17, 1, 300 * 1024}, {3, 1024 * 1024, 2, 1024 * 1024}};
+        for (int i = 0; i < shapes.length; i++) {
+            int[] shape = shapes[i];
+            File apk = signedApk("split" + i, i, shape[0], shape[1], shape[2], shape[3]);
+            X509Certificate[][] expected = G.a(apk.getAbsolutePath());
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            X509Certificate[][] fused = G.a(apk.getAbsolutePath(), digest);
+
+            assertArrayEquals(expected, fused);
+            assertEquals(TestApks.certificate(), fused[0][0]);
+            assertEquals(FileUtil.getMD5(apk), SplitApkVerifier.toHexString(digest.digest()));
+        }
+    }
+
+    @Test
+    public void tamperedApkIsRejected() throws Exception {
+        File apk = signedApk("tampered", 1, 2, 256 * 1024, 1, 64 * 1024);
+        long length = apk.length();
+        long[] offsets = {0, 40, length / 3, length / 2, length - 30};
+        for (long offset : offsets) {
+            File tampered = new File(workDir, "tampered_" + offset + ".apk");
+            FileUtil.copyFile(apk, tampered);
+            flipByte(tampered, offset);
+            try {
+                G.a(tampered.getAbsolutePath(), MessageDigest.getInstance("MD5"));
+                fail("apk tampered at " + offset + " is accepted");
+            } catch (Exception e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void truncatedApkIsRejected() throws Exception {
+        File apk = signedApk("truncated", 2, 1, 128 * 1024, 1, 32 * 1024);
+        long length = apk.length();
+        long[] lengths = {length - 1, length - 22, length / 2, 4096, 21, 0};
+        for (long truncatedLength : lengths) {
+            File truncated = new File(workDir, "truncated_" + truncatedLength + ".apk");
+            FileUtil.copyFile(apk, truncated);
+            RandomAccessFile raf = new RandomAccessFile(truncated, "rw");
+            try {
+                raf.setLength(truncatedLength);
+            } finally {
+                raf.close();
+            }
+            try {
+                G.a(truncated.getAbsolutePath(), MessageDigest.getInstance("MD5"));
+                fail("apk truncated to " + truncatedLength + " is accepted");
+            } catch (Exception e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void unsignedApkIsRejected() throws Exception {
+        File unsigned = new File(workDir, "unsigned.apk");
+        TestApks.writeZip(unsigned, TestApks.splitEntries(3, 1, 4096, 0, 0));
+        try {
+            G.a(unsigned.getAbsolutePath(), MessageDigest.getInstance("MD5"));
+            fail("unsigned apk is accepted");
+        } catch (Exception e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void fusedVerificationReadsApkOnce() throws Exception {
+        File apk = signedApk("read_once", 4, 4, 1024 * 1024, 2, 512 * 1024);
+        long length = apk.length();
+        CountingDigest digest = new CountingDigest();
+        G.a(apk.getAbsolutePath(), digest);
+        assertEquals("every byte is fed to md5 once", length, digest.count);
+        assertEquals(FileUtil.getMD5(apk), SplitApkVerifier.toHexString(digest.digest()));
+
+        assumeTrue(TestApks.readBytesOfProcess() >= 0);
+        long start = TestApks.readBytesOfProcess();
+        G.a(apk.getAbsolutePath(), MessageDigest.getInstance("MD5"));
+        long read = TestApks.readBytesOfProcess() - start;
+        assertTrue("fused verification reads " + read + " bytes of " + length, read >= length && read < length * 5 / 4);
+    }
+
+    @Test
+    public void verifiedRecordSkipsReadingApk() throws Exception {
+        File apk = signedApk("recorded", 5, 2, 512 * 1024, 0, 0);
+        String md5 = FileUtil.getMD5(apk);
+        File record = SplitApkVerifier.getRecordFile(workDir, apk);
+        SplitApkVerifier verifier = new SplitApkVerifier(null, false);
+
+        assertEquals(SplitApkVerifier.VERIFIED, verifier.verify(apk, md5, record));
+        assertTrue(record.exists());
+        assertEquals(md5, SplitApkVerifier.getVerifiedMd5(apk, record));
+
+        long start = TestApks.readBytesOfProcess();
+        assertEquals(SplitApkVerifier.VERIFIED, verifier.verify(apk, md5, record));
+        if (start >= 0) {
+            long read = TestApks.readBytesOfProcess() - start;
+            assertTrue("verified apk is read again, " + read + " bytes", read < apk.length() / 4);
+        }
+    }
+
+    @Test
+    public void recordDoesNotCoverChangedApkOrExpectation() throws Exception {
+        File apk = signedApk("changed", 6, 1, 64 * 1024, 0, 0);
+        String md5 = FileUtil.getMD5(apk);
+        File record = SplitApkVerifier.getRecordFile(workDir, apk);
+        SplitApkVerifier verifier = new SplitApkVerifier(null, false);
+        assertEquals(SplitApkVerifier.VERIFIED, verifier.verify(apk, md5, record));
+
+        assertEquals(SplitApkVerifier.MD5_MISMATCH, verifier.verify(apk, "0123456789abcdef0123456789abcdef", record));
+        assertFalse("record is kept after a failed verification", record.exists());
+
+        assertEquals(SplitApkVerifier.VERIFIED, verifier.verify(apk, md5, record));
+        long lastModified = apk.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(apk, "rw");
+        try {
+            raf.setLength(apk.length() + 1);
+        } finally {
+            raf.close();
+        }
+        assertTrue(apk.setLastModified(lastModified));
+        assertNull(SplitApkVerifier.getVerifiedMd5(apk, record));
+        assertEquals(SplitApkVerifier.MD5_MISMATCH, verifier.verify(apk, md5, record));
+    }
+
+    private File signedApk(String name, long seed, int dexCount, int dexSize, int libCount, int libSize) throws Exception {
+        File unsigned = new File(workDir, name + "_unsigned.apk");
+        File signed = new File(workDir, name + ".apk");
+        TestApks.writeZip(unsigned, TestApks.splitEntries(seed, dexCount, dexSize, libCount, libSize));
+        TestApks.sign(unsigned, signed);
+        return signed;
+    }
+
+    private static void flipByte(File file, long offset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * MD5 digest counting bytes fed to it.
+     */
+    private static final class CountingDigest extends MessageDigest {
+
+        private final MessageDigest md5;
+
+        long count;
+
+        CountingDigest() throws NoSuchAlgorithmException {
+            super("MD5");
+            md5 = MessageDigest.getInstance("MD5");
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            count++;
+            md5.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            count += len;
+            md5.update(input, offset, len);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            return md5.digest();
+        }
+
+        @Override
+        protected void engineReset() {
+            count = 0;
+            md5.reset();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitArtifactStoreTest {
+
+    private static final int SIZE = 256 * 1024;
+
+    private File workDir;
+
+    private File storeDir;
+
+    private TestLinker linker;
+
+    private SplitArtifactStore store;
+
+    private byte[] content;
+
+    private String md5;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = TestApks.createTempDir("split_artifact_store");
+        storeDir = new File(workDir, "artifacts");
+        assertTrue(storeDir.mkdirs());
+        linker = new TestLinker();
+        store = new SplitArtifactStore(storeDir, linker);
+        content = TestApks.randomBytes(17, SIZE);
+        md5 = FileUtil.getMD5(new ByteArrayInputStream(content));
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Test
+    public void duplicateIsReplacedByLinkToBlob() throws IOException {
+        File first = write("1.0/java/split.apk", content);
+        File second = write("2.0/java/split.apk", content);
+
+        assertFalse("first file becomes the blob", store.publish(md5, SIZE, first));
+        assertTrue(store.publish(md5, SIZE, second));
+        assertFalse("published already", store.publish(md5, SIZE, second));
+
+        File blob = new File(storeDir, SplitArtifactStore.key(md5, SIZE));
+        assertTrue(Files.isSameFile(blob.toPath(), first.toPath()));
+        assertTrue(Files.isSameFile(blob.toPath(), second.toPath()));
+        assertArrayEquals(content, TestApks.readFile(second));
+        SplitArtifactStore.Usage usage = store.getUsage();
+        assertEquals(1, usage.blobCount);
+        assertEquals(SIZE, usage.storedBytes);
+        assertEquals(2 * SIZE, usage.referencedBytes);
+        assertEquals(0, usage.copiedBytes);
+        assertEquals(SIZE, usage.getDiskBytes());
+        assertEquals(SIZE, usage.getSavedBytes());
+    }
+
+    @Test
+    public void restoreLinksBlobAfterOldVersionIsDeleted() throws IOException {
+        File old = write("1.0/java/split.apk", content);
+        store.publish(md5, SIZE, old);
+        FileUtil.deleteDir(new File(workDir, "1.0"));
+
+        File target = new File(workDir, "2.0/java/split.apk");
+        assertTrue(target.getParentFile().mkdirs());
+        assertTrue(store.restore(md5, SIZE, target));
+
+        assertArrayEquals(content, TestApks.readFile(target));
+        assertTrue(Files.isSameFile(new File(storeDir, SplitArtifactStore.key(md5, SIZE)).toPath(), target.toPath()));
+        assertFalse(new File(target.getPath() + ".tmp").exists());
+        SplitArtifactStore.Usage usage = store.getUsage();
+        assertEquals("dead reference of old version is not counted", SIZE, usage.referencedBytes);
+    }
+
+    @Test
+    public void unknownBlobIsNotRestored() throws IOException {
+        File target = new File(workDir, "1.0/java/split.apk");
+        assertFalse(store.restore(md5, SIZE, target));
+        store.publish(md5, SIZE, write("1.0/lib/libfoo.so", content));
+        assertFalse("size is part of key", store.restore(md5, SIZE - 1, target));
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void filesAreCopiedWhenLinksAreUnsupported() throws IOException {
+        linker.supported = false;
+        File first = write("1.0/java/split.apk", content);
+        File second = write("2.0/java/split.apk", content);
+        store.publish(md5, SIZE, first);
+        assertFalse("copy is not replaced", store.publish(md5, SIZE, second));
+        File target = new File(workDir, "3.0/java/split.apk");
+        assertTrue(target.getParentFile().mkdirs());
+        assertTrue(store.restore(md5, SIZE, target));
+
+        File blob = new File(storeDir, SplitArtifactStore.key(md5, SIZE));
+        assertFalse(Files.isSameFile(blob.toPath(), first.toPath()));
+        assertFalse(Files.isSameFile(blob.toPath(), target.toPath()));
+        assertArrayEquals(content, TestApks.readFile(target));
+        assertEquals(0, linker.links);
+        SplitArtifactStore.Usage usage = store.getUsage();
+        assertEquals(SIZE, usage.storedBytes);
+        assertEquals(3 * SIZE, usage.referencedBytes);
+        assertEquals(3 * SIZE, usage.copiedBytes);
+        assertEquals("copies cost the blob", -SIZE, usage.getSavedBytes());
+    }
+
+    @Test
+    public void truncatedBlobIsDroppedInsteadOfRestored() throws IOException {
+        store.publish(md5, SIZE, write("1.0/java/split.apk", content));
+        FileUtil.deleteDir(new File(workDir, "1.0"));
+        File blob = new File(storeDir, SplitArtifactStore.key(md5, SIZE));
+        RandomAccessFile raf = new RandomAccessFile(blob, "rw");
+        raf.setLength(SIZE / 2);
+        raf.close();
+
+        File target = new File(workDir, "2.0/java/split.apk");
+        assertTrue(target.getParentFile().mkdirs());
+        assertFalse(store.restore(md5, SIZE, target));
+        assertFalse(blob.exists());
+        assertFalse(target.exists());
+        assertEquals(0, store.getUsage().blobCount);
+    }
+
+    @Test
+    public void gcDeletesUnreferencedBlobsOnly() throws IOException {
+        byte[] retainedContent = TestApks.randomBytes(18, SIZE);
+        String retainedMd5 = FileUtil.getMD5(new ByteArrayInputStream(retainedContent));
+        byte[] deadContent = TestApks.randomBytes(19, SIZE);
+        String deadMd5 = FileUtil.getMD5(new ByteArrayInputStream(deadContent));
+        store.publish(md5, SIZE, write("2.0/java/split.apk", content));
+        store.publish(retainedMd5, SIZE, write("1.0/lib/libretained.so", retainedContent));
+        store.publish(deadMd5, SIZE, write("1.0/lib/libdead.so", deadContent));
+        FileUtil.deleteDir(new File(workDir, "1.0"));
+        File orphan = write("artifacts/orphan", content);
+        File tmp = write("artifacts/" + SplitArtifactStore.key(md5, SIZE) + ".tmp", content);
+
+        long freed = store.gc(Collections.singleton(SplitArtifactStore.key(retainedMd5, SIZE)));
+
+        assertEquals("dead blob, orphan and temp file", 3L * SIZE, freed);
+        assertFalse(orphan.exists());
+        assertFalse(tmp.exists());
+        assertTrue(new File(storeDir, SplitArtifactStore.key(md5, SIZE)).exists());
+        assertTrue(new File(storeDir, SplitArtifactStore.key(retainedMd5, SIZE)).exists());
+        assertFalse(new File(storeDir, SplitArtifactStore.key(deadMd5, SIZE)).exists());
+        SplitArtifactStore.Usage usage = store.getUsage();
+        assertEquals(2, usage.blobCount);
+        assertEquals(SIZE, usage.referencedBytes);
+        assertEquals("gc of nothing frees nothing", 0, store.gc(Collections.singleton(SplitArtifactStore.key(retainedMd5, SIZE))));
+    }
+
+    @Test
+    public void gcNeverDeletesBlobWhileItIsRestored() throws Exception {
+        //copies keep blob busy long enough for gc to run in between.
+        linker.supported = false;
+        final byte[] large = TestApks.randomBytes(20, 4 * 1024 * 1024);
+        final String largeMd5 = FileUtil.getMD5(new ByteArrayInputStream(large));
+        final long size = large.length;
+        store.publish(largeMd5, size, write("0/java/split.apk", large));
+        final AtomicBoolean installing = new AtomicBoolean(true);
+        final List<String> failures = new CopyOnWriteArrayList<>();
+        final int[] restored = new int[1];
+        Thread installer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int version = 1; version <= 30; version++) {
+                        File target = new File(workDir, version + "/java/split.apk");
+                        if (!target.getParentFile().mkdirs()) {
+                            failures.add("mkdirs " + version);
+                        }
+                        if (store.restore(largeMd5, size, target)) {
+                            restored[0]++;
+                            if (!Arrays.equals(large, TestApks.readFile(target))) {
+                                failures.add("corrupted restore of " + version);
+                            }
+                        } else {
+                            //downloaded again.
+                            write(version + "/java/split.apk", large);
+                            store.publish(largeMd5, size, target);
+                        }
+                        FileUtil.deleteDir(new File(workDir, String.valueOf(version - 1)));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e.toString());
+                } finally {
+                    installing.set(false);
+                }
+            }
+        });
+        installer.start();
+        int gcCount = 0;
+        while (installing.get()) {
+            store.gc(Collections.<String>emptySet());
+            gcCount++;
+        }
+        installer.join();
+
+        assertEquals(Collections.<String>emptyList(), failures);
+        assertTrue(gcCount > 0 && restored[0] > 0);
+        store.gc(Collections.<String>emptySet());
+        File blob = new File(storeDir, SplitArtifactStore.key(largeMd5, size));
+        assertTrue("latest version still references blob", blob.exists());
+        assertArrayEquals(large, TestApks.readFile(new File(workDir, "30/java/split.apk")));
+        SplitArtifactStore.Usage usage = store.getUsage();
+        assertEquals(1, usage.blobCount);
+        assertEquals(size, usage.referencedBytes);
+        for (String name : storeDir.list()) {
+            assertFalse("temp file is left: " + name, name.endsWith(".tmp"));
+        }
+    }
+
+    private File write(String path, byte[] bytes) throws IOException {
+        File file = new File(workDir, path);
+        File parent = file.getParentFile();
+        if (!parent.exists()) {
+            assertTrue(parent.mkdirs());
+        }
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import android.content.ContextWrapper;
+
+import com.iqiyi.android.qigsaw.core.common.AbiUtil;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitBriefInfo;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitDiskQuotaReporter;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitAccessLog;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoFactory;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trims synthetic version dirs whose access times are recorded on a fake clock.
+ * Every split is current at version "3.0" and installed unless said otherwise.
+ */
+public class SplitDiskQuotaManagerTest {
+
+    private static final String CURRENT = "3.0";
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static final int KB = 1024;
+
+    private static final RecordingReporter REPORTER = new RecordingReporter();
+
+    private static int sSplitCount;
+
+    private final SplitSessionUpdateCoalescerTest.FakeClock clock = new SplitSessionUpdateCoalescerTest.FakeClock();
+
+    private final ContextWrapper context = new ContextWrapper(null);
+
+    private final SplitAccessLog accessLog = SplitAccessLog.get();
+
+    private File storeDir;
+
+    private SplitArtifactStore store;
+
+    private long seed;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        SplitInfoFactory.installPathManager();
+        SplitDiskQuotaReporterManager.install(REPORTER);
+        //primary abi is read from ApplicationInfo on devices.
+        Field field = AbiUtil.class.getDeclaredField("basePrimaryAbi");
+        field.setAccessible(true);
+        ((AtomicReference<String>) field.get(null)).compareAndSet(null, "arm64-v8a");
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        storeDir = TestApks.createTempDir("split_disk_quota_store");
+        store = new SplitArtifactStore(storeDir, new TestLinker());
+        REPORTER.evictedSplits = null;
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(storeDir);
+    }
+
+    @Test
+    public void oldVersionsAreOrderedByAccessLogInsteadOfModifiedTime() throws IOException {
+        SplitInfo split = split(CURRENT, 500 * KB);
+        File recentlyUsed = version(split, "1.0", 300 * KB);
+        File modifiedLater = version(split, "2.0", 200 * KB);
+        accessed(split, "2.0");
+        accessed(split, "1.0");
+        assertTrue(recentlyUsed.setLastModified(1000L));
+
+        manager(SplitDiskQuotaManager.UNLIMITED).trim(splits(split), Collections.<String>emptySet());
+
+        assertTrue(recentlyUsed.exists());
+        assertFalse(modifiedLater.exists());
+        assertEquals(Collections.singletonList(split.getSplitName() + "@2.0"), REPORTER.evicted());
+        assertEquals(200 * KB, REPORTER.reclaimedBytes);
+        assertEquals(800 * KB, REPORTER.usedBytes);
+        assertFalse(accessLog.getAll().containsKey(SplitAccessLog.key(split.getSplitName(), "2.0")));
+    }
+
+    @Test
+    public void quotaEvictsLeastRecentlyUsedVersionsOfAllSplits() throws IOException {
+        SplitInfo first = split(CURRENT, 500 * KB);
+        SplitInfo second = split(CURRENT, 500 * KB);
+        SplitInfo third = split(CURRENT, 500 * KB);
+        version(first, "1.0", 300 * KB);
+        version(second, "1.0", 300 * KB);
+        version(third, "1.0", 300 * KB);
+        accessed(first, "1.0");
+        accessed(third, "1.0");
+        accessed(second, "1.0");
+
+        manager(2000 * KB).trim(splits(first, second, third), Collections.<String>emptySet());
+
+        assertEquals(Arrays.asList(first.getSplitName() + "@1.0", third.getSplitName() + "@1.0"), REPORTER.evicted());
+        assertEquals(600 * KB, REPORTER.reclaimedBytes);
+        assertEquals(1800 * KB, REPORTER.usedBytes);
+        assertTrue(versionDir(second, "1.0").exists());
+    }
+
+    @Test
+    public void versionLinkedToBlobFreesBlobWhenEvicted() throws IOException {
+        SplitInfo first = split(CURRENT, 500 * KB);
+        SplitInfo second = split(CURRENT, 500 * KB);
+        File blob = publish(version(first, "1.0", 100 * KB), 2048 * KB);
+        version(second, "1.0", 100 * KB);
+        accessed(first, "1.0");
+        accessed(second, "1.0");
+
+        //usage is 3248KB, evicting the older version alone frees its 2MB blob.
+        manager(2000 * KB).trim(splits(first, second), Collections.<String>emptySet());
+
+        assertEquals(Collections.singletonList(first.getSplitName() + "@1.0"), REPORTER.evicted());
+        assertFalse(blob.exists());
+        assertTrue(versionDir(second, "1.0").exists());
+        assertEquals(2148 * KB, REPORTER.reclaimedBytes);
+        assertEquals(1100 * KB, REPORTER.usedBytes);
+    }
+
+    @Test
+    public void blobSharedByVersionsIsFreedWithItsLastLink() throws IOException {
+        SplitInfo first = split(CURRENT, 500 * KB);
+        SplitInfo second = split(CURRENT, 500 * KB);
+        SplitInfo third = split(CURRENT, 500 * KB);
+        File blob = publish(version(first, "1.0", 100 * KB), 2048 * KB);
+        publish(version(second, "1.0", 100 * KB), 2048 * KB);
+        version(third, "1.0", 100 * KB);
+        accessed(first, "1.0");
+        accessed(second, "1.0");
+        accessed(third, "1.0");
+
+        //usage is 3848KB, the blob is freed only after both versions linking it are evicted.
+        manager(3700 * KB).trim(splits(first, second, third), Collections.<String>emptySet());
+
+        assertEquals(Arrays.asList(first.getSplitName() + "@1.0", second.getSplitName() + "@1.0"), REPORTER.evicted());
+        assertFalse(blob.exists());
+        assertEquals(2248 * KB, REPORTER.reclaimedBytes);
+        assertTrue(versionDir(third, "1.0").exists());
+    }
+
+    @Test
+    public void blobSharedWithRemainingVersionIsNotFreed() throws IOException {
+        SplitInfo first = split(CURRENT, 500 * KB);
+        SplitInfo second = split(CURRENT, 500 * KB);
+        File blob = publish(version(first, "1.0", 100 * KB), 2048 * KB);
+        publish(version(second, "1.0", 100 * KB), 2048 * KB);
+        accessed(first, "1.0");
+        accessed(second, "1.0");
+
+        manager(3200 * KB).trim(splits(first, second), Collections.<String>emptySet());
+
+        assertEquals(Collections.singletonList(first.getSplitName() + "@1.0"), REPORTER.evicted());
+        assertTrue(blob.exists());
+        assertEquals(100 * KB, REPORTER.reclaimedBytes);
+        assertEquals(3148 * KB, REPORTER.usedBytes);
+    }
+
+    @Test
+    public void blobRetainedForCurrentSplitIsNotCountedAsFreed() throws IOException {
+        byte[] apk = TestApks.randomBytes(++seed, 1024 * KB);
+        File oldApk = write(new File(versionDir(split("unused", 0), "x"), "unused.apk"), apk);
+        String md5 = FileUtil.getMD5(oldApk);
+        FileUtil.deleteDir(oldApk.getParentFile().getParentFile());
+        SplitInfo first = split(CURRENT, 500 * KB);
+        SplitInfo retaining = SplitInfoFactory.create("retaining" + sSplitCount++, CURRENT, md5, apk.length);
+        write(new File(versionDir(first, "1.0"), "base.apk"), apk);
+        store.publish(md5, apk.length, new File(versionDir(first, "1.0"), "base.apk"));
+        SplitInfo second = split(CURRENT, 500 * KB);
+        version(second, "1.0", 300 * KB);
+        accessed(first, "1.0");
+        accessed(second, "1.0");
+
+        //usage is 2324KB, the blob is kept for a split to install, so evicting its only link frees nothing.
+        manager(2000 * KB).trim(splits(first, second, retaining), Collections.<String>emptySet());
+
+        assertEquals(Arrays.asList(first.getSplitName() + "@1.0", second.getSplitName() + "@1.0"), REPORTER.evicted());
+        assertTrue(new File(storeDir, SplitArtifactStore.key(md5, apk.length)).exists());
+        assertEquals(300 * KB, REPORTER.reclaimedBytes);
+    }
+
+    @Test
+    public void versionsSupersededByOatPendingVersionAreEvicted() throws IOException {
+        SplitInfo split = split(CURRENT, 500 * KB, SplitInstallStateTable.OAT_PENDING);
+        version(split, "1.0", 100 * KB);
+        version(split, "2.0", 100 * KB);
+        accessed(split, "1.0");
+        accessed(split, "2.0");
+
+        manager(SplitDiskQuotaManager.UNLIMITED).trim(splits(split), Collections.<String>emptySet());
+        assertEquals(Collections.singletonList(split.getSplitName() + "@1.0"), REPORTER.evicted());
+
+        manager(1).trim(splits(split), Collections.<String>emptySet());
+        assertEquals(Collections.singletonList(split.getSplitName() + "@2.0"), REPORTER.evicted());
+        assertEquals(Collections.singletonList(CURRENT), Arrays.asList(rootDir(split).list()));
+    }
+
+    @Test
+    public void oldVersionsAreKeptUntilCurrentVersionIsInstalled() throws IOException {
+        SplitInfo split = split(CURRENT, 500 * KB, SplitInstallStateTable.NOT_INSTALLED);
+        version(split, "1.0", 100 * KB);
+        version(split, "2.0", 100 * KB);
+
+        manager(1).trim(splits(split), Collections.<String>emptySet());
+
+        assertNull(REPORTER.evictedSplits);
+        assertEquals(3, rootDir(split).list().length);
+    }
+
+    @Test
+    public void loadedAndExcludedVersionsAreNeverEvicted() throws IOException {
+        SplitInfo loaded = split(CURRENT, 500 * KB);
+        SplitInfo excluded = split(CURRENT, 500 * KB);
+        SplitInfo evictable = split(CURRENT, 500 * KB);
+        version(loaded, "1.0", 100 * KB);
+        version(excluded, "1.0", 100 * KB);
+        version(evictable, "1.0", 100 * KB);
+        clock.advance(HOUR);
+        //pids of running processes are unknown on JVM, so any recorded pid means loaded.
+        accessLog.recordLoaded(Collections.singleton(SplitInfoFactory.create(loaded.getSplitName(), "1.0", "", 0)), 1234, clock.uptimeMillis());
+        accessed(excluded, "1.0");
+        accessed(evictable, "1.0");
+
+        manager(1).trim(splits(loaded, excluded, evictable), Collections.singleton(excluded.getSplitName()));
+
+        assertEquals(Collections.singletonList(evictable.getSplitName() + "@1.0"), REPORTER.evicted());
+        assertTrue(versionDir(loaded, "1.0").exists());
+        assertTrue(versionDir(excluded, "1.0").exists());
+        assertTrue(versionDir(evictable, CURRENT).exists());
+    }
+
+    private SplitDiskQuotaManager manager(long quotaBytes) {
+        return new SplitDiskQuotaManager(context, quotaBytes, accessLog, store, UNIX_STAT_READER);
+    }
+
+    private SplitInfo split(String currentVersion, int currentBytes) throws IOException {
+        return split(currentVersion, currentBytes, SplitInstallStateTable.OAT_OK);
+    }
+
+    /**
+     * Create a split with a current version dir of {@code currentBytes} in install state {@code oatStatus}.
+     */
+    private SplitInfo split(String currentVersion, int currentBytes, int oatStatus) throws IOException {
+        String splitName = "quota" + sSplitCount++;
+        SplitInfo info = SplitInfoFactory.create(splitName, currentVersion, "md5-of-" + splitName, currentBytes);
+        if (currentBytes > 0) {
+            version(info, currentVersion, currentBytes);
+            accessed(info, currentVersion);
+        }
+        if (oatStatus != SplitInstallStateTable.NOT_INSTALLED) {
+            String mark = info.obtainInstalledMark(context);
+            SplitInstallStateTable.get().put(new SplitInstallStateTable.State(splitName, mark,
+                    new File(versionDir(info, currentVersion), splitName + ".apk").getPath(), null, null,
+                    null, oatStatus, new HashMap<String, String>()));
+        }
+        return info;
+    }
+
+    /**
+     * Create version dir of {@code splitVersion} with an apk and a dex zip, {@code bytes} in total.
+     */
+    private File version(SplitInfo info, String splitVersion, int bytes) throws IOException {
+        File dir = versionDir(info, splitVersion);
+        write(new File(dir, info.getSplitName() + ".apk"), TestApks.randomBytes(++seed, bytes / 2));
+        write(new File(dir, "code_cache/" + info.getSplitName() + ".zip"), TestApks.randomBytes(++seed, bytes - bytes / 2));
+        return dir;
+    }
+
+    /**
+     * Add a lib of {@code bytes} to {@code versionDir} and publish it to store.
+     *
+     * @return blob of lib.
+     */
+    private File publish(File versionDir, int bytes) throws IOException {
+        File lib = write(new File(versionDir, "nativeLib/arm64-v8a/libshared.so"), TestApks.randomBytes(42, bytes));
+        String md5 = FileUtil.getMD5(lib);
+        store.publish(md5, bytes, lib);
+        File blob = new File(storeDir, SplitArtifactStore.key(md5, bytes));
+        assertTrue(Files.isSameFile(blob.toPath(), lib.toPath()));
+        return blob;
+    }
+
+    private void accessed(SplitInfo info, String splitVersion) {
+        clock.advance(HOUR);
+        accessLog.recordInstalled(SplitInfoFactory.create(info.getSplitName(), splitVersion, "", 0), clock.uptimeMillis());
+    }
+
+    private static File rootDir(SplitInfo info) {
+        return SplitPathManager.require().getSplitRootDir(info);
+    }
+
+    private static File versionDir(SplitInfo info, String splitVersion) {
+        return new File(rootDir(info), splitVersion);
+    }
+
+    private static Collection<SplitInfo> splits(SplitInfo... splits) {
+        return Arrays.asList(splits);
+    }
+
+    private static File write(File file, byte[] bytes) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.exists()) {
+            assertTrue(parent.mkdirs());
+        }
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    /**
+     * Reads stat by unix attributes, as {@code Os.lstat} is not available on JVM.
+     */
+    private static final SplitDiskQuotaManager.FileStatReader UNIX_STAT_READER = new SplitDiskQuotaManager.FileStatReader() {
+        @Override
+        public SplitDiskQuotaManager.FileStat lstat(File file) {
+            try {
+                Map<String, Object> attributes = Files.readAttributes(file.toPath(),
+                        "unix:isRegularFile,isSymbolicLink,ino,nlink,size", LinkOption.NOFOLLOW_LINKS);
+                return new SplitDiskQuotaManager.FileStat((Boolean) attributes.get("isRegularFile"),
+                        (Boolean) attributes.get("isSymbolicLink"), ((Number) attributes.get("ino")).longValue(),
+                        ((Number) attributes.get("nlink")).longValue(), ((Number) attributes.get("size")).longValue());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    };
+
+    private static final class RecordingReporter implements SplitDiskQuotaReporter {
+
+        List<SplitBriefInfo> evictedSplits;
+
+        long reclaimedBytes;
+
+        long usedBytes;
+
+        List<String> evicted() {
+            List<String> keys = new ArrayList<>();
+            for (SplitBriefInfo info : evictedSplits) {
+                keys.add(SplitAccessLog.key(info.splitName, info.version));
+            }
+            return keys;
+        }
+
+        @Override
+        public void onSplitsEvicted(List<SplitBriefInfo> evictedSplits, long reclaimedBytes, long usedBytes, long cost) {
+            this.evictedSplits = evictedSplits;
+            this.reclaimedBytes = reclaimedBytes;
+            this.usedBytes = usedBytes;
+        }
+    }
+}
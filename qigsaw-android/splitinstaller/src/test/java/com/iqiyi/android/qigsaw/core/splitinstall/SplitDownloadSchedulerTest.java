@@ -0,0 +1,296 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.splitdownload.DownloadCallback;
+import com.iqiyi.android.qigsaw.core.splitdownload.DownloadRequest;
+import com.iqiyi.android.qigsaw.core.splitdownload.ThrottlingDownloader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simulations on a fake clock with 2MB/s bandwidth: a 60MB deferred install is downloading when user starts
+ * an install of a small split, which should be ready as if the deferred install did not exist.
+ */
+public class SplitDownloadSchedulerTest {
+
+    private static final long BANDWIDTH = 2 * 1024 * 1024L;
+
+    private static final long MB = 1024 * 1024L;
+
+    private static final int DEFERRED_ID = 1;
+
+    private static final int URGENT_ID = 2;
+
+    private final SplitSessionUpdateCoalescerTest.FakeClock clock = new SplitSessionUpdateCoalescerTest.FakeClock();
+
+    @Test
+    public void urgentSplitIsReadyEarlierWhenDeferredDownloadIsPaused() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback deferred = deferred(scheduler, 60 * MB);
+        downloader.advance(10000);
+
+        RecordingCallback urgent = foreground(scheduler, URGENT_ID, 2 * MB);
+        assertFalse("deferred session is paused", downloader.isRunning(DEFERRED_ID));
+        downloader.runUntilIdle(60000);
+
+        assertEquals(1000, urgent.readyMillis, SimulatedDownloader.TICK_MS);
+        assertEquals("start, completed", urgent.events());
+        // paused bytes are resumed, the deferred install finishes as late as it would have anyway.
+        assertEquals("start, completed", deferred.events());
+        assertEquals(31000, deferred.readyMillis, 2 * SimulatedDownloader.TICK_MS);
+        assertEquals(1, downloader.cancelCount);
+    }
+
+    @Test
+    public void urgentSplitSharesBandwidthWithoutScheduler() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        RecordingCallback deferred = new RecordingCallback(clock);
+        downloader.deferredDownload(DEFERRED_ID, requests("deferred", 60 * MB), deferred, true);
+        downloader.advance(10000);
+
+        RecordingCallback urgent = new RecordingCallback(clock);
+        downloader.startDownload(URGENT_ID, requests("urgent", 2 * MB), urgent);
+        downloader.runUntilIdle(60000);
+
+        // baseline of the test above: twice as long.
+        assertEquals(2000, urgent.readyMillis, SimulatedDownloader.TICK_MS);
+    }
+
+    @Test
+    public void throttledDeferredDownloadGoesOnSlowly() {
+        SimulatedDownloader.Throttling downloader = new SimulatedDownloader.Throttling(clock, BANDWIDTH);
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback deferred = deferred(scheduler, 60 * MB);
+        downloader.advance(10000);
+
+        RecordingCallback urgent = foreground(scheduler, URGENT_ID, 2 * MB);
+        assertEquals(SplitDownloadScheduler.THROTTLED_BYTES_PER_SECOND, downloader.bandwidthLimit(DEFERRED_ID));
+        long deferredBytes = downloader.downloadedBytes(DEFERRED_ID);
+        downloader.advance(1000);
+        assertTrue(urgent.readyMillis < 0);
+        long throttledBytes = downloader.downloadedBytes(DEFERRED_ID) - deferredBytes;
+        downloader.runUntilIdle(60000);
+
+        long expectedMillis = 2 * MB * 1000 / (BANDWIDTH - SplitDownloadScheduler.THROTTLED_BYTES_PER_SECOND);
+        assertEquals(expectedMillis, urgent.readyMillis, SimulatedDownloader.TICK_MS);
+        assertEquals(SplitDownloadScheduler.THROTTLED_BYTES_PER_SECOND, throttledBytes, 1024);
+        assertEquals("start, completed", deferred.events());
+        assertEquals(0, downloader.cancelCount);
+        assertEquals(31000, deferred.readyMillis, 2 * SimulatedDownloader.TICK_MS);
+    }
+
+    @Test
+    public void throttledSessionGetsFullSpeedBackAfterForegroundSessions() {
+        SimulatedDownloader.Throttling downloader = new SimulatedDownloader.Throttling(clock, BANDWIDTH);
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        deferred(scheduler, 60 * MB);
+        foreground(scheduler, URGENT_ID, 2 * MB);
+        foreground(scheduler, URGENT_ID + 1, 4 * MB);
+
+        downloader.advance(2000);
+        assertEquals("still one foreground session", SplitDownloadScheduler.THROTTLED_BYTES_PER_SECOND, downloader.bandwidthLimit(DEFERRED_ID));
+        downloader.advance(2000);
+        assertEquals(ThrottlingDownloader.UNLIMITED, downloader.bandwidthLimit(DEFERRED_ID));
+    }
+
+    @Test
+    public void pausedSessionIsResumedWhenOnCanceledNeverComes() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        downloader.cancelBehavior = SimulatedDownloader.CancelBehavior.NEVER;
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback deferred = deferred(scheduler, 8 * MB);
+        downloader.advance(1000);
+
+        RecordingCallback urgent = foreground(scheduler, URGENT_ID, 2 * MB);
+        downloader.runUntilIdle(60000);
+
+        assertEquals("start, completed", urgent.events());
+        assertEquals("start, completed", deferred.events());
+        assertEquals(5000, deferred.readyMillis, 2 * SimulatedDownloader.TICK_MS);
+    }
+
+    @Test
+    public void lateOnCanceledOfPausedSessionIsDropped() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        downloader.cancelBehavior = SimulatedDownloader.CancelBehavior.LATE;
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback deferred = deferred(scheduler, 8 * MB);
+        downloader.advance(1000);
+        foreground(scheduler, URGENT_ID, 2 * MB);
+        downloader.advance(1500);
+        assertTrue("deferred session is resumed", downloader.isRunning(DEFERRED_ID));
+
+        downloader.deliverLateCanceled();
+        downloader.runUntilIdle(60000);
+
+        assertEquals("start, completed", deferred.events());
+    }
+
+    @Test
+    public void queuedSessionIsCanceledWithoutDownloader() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback urgent = foreground(scheduler, URGENT_ID, 2 * MB);
+        RecordingCallback deferred = deferred(scheduler, 8 * MB);
+        assertFalse(downloader.isRunning(DEFERRED_ID));
+
+        assertTrue(scheduler.cancelDownloadSync(DEFERRED_ID));
+        downloader.runUntilIdle(60000);
+
+        assertEquals("canceled", deferred.events());
+        assertEquals("start, completed", urgent.events());
+        assertEquals(1, downloader.startCount);
+    }
+
+    @Test
+    public void pausedSessionCanceledByUserIsNotResumed() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        downloader.cancelBehavior = SimulatedDownloader.CancelBehavior.NEVER;
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback deferred = deferred(scheduler, 8 * MB);
+        downloader.advance(1000);
+        foreground(scheduler, URGENT_ID, 2 * MB);
+
+        assertTrue(scheduler.cancelDownloadSync(DEFERRED_ID));
+        downloader.runUntilIdle(60000);
+
+        assertEquals("start, canceled", deferred.events());
+        assertEquals(2, downloader.startCount);
+    }
+
+    @Test
+    public void foregroundSessionSupersedesDeferredSessionOfSameSplits() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback deferred = deferred(scheduler, 8 * MB);
+        downloader.advance(1000);
+
+        RecordingCallback urgent = foreground(scheduler, DEFERRED_ID, 8 * MB);
+        downloader.runUntilIdle(60000);
+
+        assertEquals("start, canceled", deferred.events());
+        assertEquals("start, completed", urgent.events());
+        // downloaded bytes of the deferred session are resumed by the foreground one.
+        assertEquals(3000, urgent.readyMillis, SimulatedDownloader.TICK_MS);
+    }
+
+    @Test
+    public void foregroundSessionsAreNotPausedByEachOther() {
+        SimulatedDownloader downloader = new SimulatedDownloader(clock, BANDWIDTH);
+        SplitDownloadScheduler scheduler = new SplitDownloadScheduler(downloader);
+        RecordingCallback first = foreground(scheduler, URGENT_ID, 2 * MB);
+        RecordingCallback second = foreground(scheduler, URGENT_ID + 1, 2 * MB);
+        downloader.runUntilIdle(60000);
+
+        assertEquals(0, downloader.cancelCount);
+        assertEquals(2000, first.readyMillis, SimulatedDownloader.TICK_MS);
+        assertEquals(2000, second.readyMillis, SimulatedDownloader.TICK_MS);
+    }
+
+    private RecordingCallback deferred(SplitDownloadScheduler scheduler, long size) {
+        RecordingCallback callback = new RecordingCallback(clock);
+        scheduler.deferredDownload(DEFERRED_ID, SplitDownloadScheduler.PRIORITY_DEFERRED, requests("deferred", size), callback, true);
+        return callback;
+    }
+
+    private RecordingCallback foreground(SplitDownloadScheduler scheduler, int sessionId, long size) {
+        RecordingCallback callback = new RecordingCallback(clock);
+        scheduler.startDownload(sessionId, requests("split" + sessionId, size), callback);
+        return callback;
+    }
+
+    private static List<DownloadRequest> requests(String moduleName, long size) {
+        List<DownloadRequest> requests = new ArrayList<>();
+        requests.add(SimulatedDownloader.request(moduleName, size));
+        return requests;
+    }
+
+    /**
+     * Records callbacks except progress, and when the session is ready relative to its creation.
+     */
+    private static final class RecordingCallback implements DownloadCallback {
+
+        private final SplitSessionUpdateCoalescerTest.FakeClock clock;
+
+        private final List<String> events = new ArrayList<>();
+
+        private final long createdMillis;
+
+        long readyMillis = -1;
+
+        RecordingCallback(SplitSessionUpdateCoalescerTest.FakeClock clock) {
+            this.clock = clock;
+            this.createdMillis = clock.uptimeMillis();
+        }
+
+        String events() {
+            StringBuilder builder = new StringBuilder();
+            for (String event : events) {
+                builder.append(builder.length() == 0 ? "" : ", ").append(event);
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public void onStart() {
+            events.add("start");
+        }
+
+        @Override
+        public void onCanceled() {
+            events.add("canceled");
+        }
+
+        @Override
+        public void onCanceling() {
+            events.add("canceling");
+        }
+
+        @Override
+        public void onProgress(long currentBytes) {
+
+        }
+
+        @Override
+        public void onCompleted() {
+            events.add("completed");
+            readyMillis = clock.uptimeMillis() - createdMillis;
+        }
+
+        @Override
+        public void onError(int errorCode) {
+            events.add("error " + errorCode);
+        }
+    }
+}
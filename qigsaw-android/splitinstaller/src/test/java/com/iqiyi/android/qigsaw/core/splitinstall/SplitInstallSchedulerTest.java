@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoFactory;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitInstallSchedulerTest {
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(4);
+
+    @AfterClass
+    public static void shutdown() {
+        WORKERS.shutdownNow();
+    }
+
+    @Test
+    public void concurrentInstallationMatchesSerialInstallation() {
+        Random random = new Random(20200301);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            long seed = random.nextLong();
+            List<SplitInfo> splits = randomBatch(new Random(seed), 12);
+            String failing = "s" + new Random(seed).nextInt(12);
+
+            FakeSplitInstaller serialInstaller = new FakeSplitInstaller(seed, 0).failOn(failing);
+            List<SplitInstallScheduler.SplitOutcome> serial =
+                    new SplitInstallScheduler(serialInstaller, false, splits, null).install();
+            FakeSplitInstaller concurrentInstaller = new FakeSplitInstaller(seed, 2).failOn(failing);
+            List<SplitInstallScheduler.SplitOutcome> concurrent =
+                    new SplitInstallScheduler(concurrentInstaller, false, splits, WORKERS).install();
+
+            assertEquals("iteration " + iteration, describe(serial), describe(concurrent));
+            assertEquals(serialInstaller.installed(), concurrentInstaller.installed());
+            assertTrue("iteration " + iteration + " " + concurrentInstaller.dependencyViolations(),
+                    concurrentInstaller.dependencyViolations().isEmpty());
+        }
+    }
+
+    @Test
+    public void independentSplitsAreInstalledConcurrently() {
+        List<SplitInfo> splits = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            splits.add(SplitInfoFactory.create("s" + i));
+        }
+        FakeSplitInstaller installer = new FakeSplitInstaller(1, 20);
+        List<SplitInstallScheduler.SplitOutcome> outcomes = new SplitInstallScheduler(installer, true, splits, WORKERS).install();
+        assertEquals(Arrays.asList("s0:ok", "s1:ok", "s2:ok", "s3:ok", "s4:ok", "s5:ok", "s6:ok", "s7:ok"), describe(outcomes));
+        assertTrue(installer.maxRunning() > 1);
+    }
+
+    @Test
+    public void startInstallFailureCancelsPendingSplits() {
+        List<SplitInfo> splits = Arrays.asList(
+                SplitInfoFactory.create("s0"),
+                SplitInfoFactory.create("s1", "s0"),
+                SplitInfoFactory.create("s2"));
+        FakeSplitInstaller installer = new FakeSplitInstaller(1, 0).failOn("s0");
+        List<SplitInstallScheduler.SplitOutcome> outcomes = new SplitInstallScheduler(installer, true, splits, null).install();
+        assertEquals(Arrays.asList("s0:error", "s1:canceled", "s2:canceled"), describe(outcomes));
+
+        installer = new FakeSplitInstaller(1, 0).failOn("s0");
+        outcomes = new SplitInstallScheduler(installer, true, splits, WORKERS).install();
+        assertEquals("s0:error", describe(outcomes).get(0));
+        assertEquals("s1:canceled", describe(outcomes).get(1));
+        assertTrue(installer.dependencyViolations().isEmpty());
+    }
+
+    @Test
+    public void deferredInstallFailureDoesNotStopOtherSplits() {
+        List<SplitInfo> splits = Arrays.asList(
+                SplitInfoFactory.create("s0"),
+                SplitInfoFactory.create("s1", "s0"),
+                SplitInfoFactory.create("s2"));
+        FakeSplitInstaller installer = new FakeSplitInstaller(1, 0).failOn("s0");
+        List<SplitInstallScheduler.SplitOutcome> outcomes = new SplitInstallScheduler(installer, false, splits, WORKERS).install();
+        assertEquals(Arrays.asList("s0:error", "s1:ok", "s2:ok"), describe(outcomes));
+    }
+
+    @Test
+    public void cancelCascadesToDependents() throws Exception {
+        List<SplitInfo> splits = Arrays.asList(
+                SplitInfoFactory.create("s0"),
+                SplitInfoFactory.create("s1", "s0"),
+                SplitInfoFactory.create("s2", "s1"),
+                SplitInfoFactory.create("s3", "s0"));
+        for (ExecutorService executor : Arrays.asList(null, WORKERS)) {
+            FakeSplitInstaller installer = new FakeSplitInstaller(1, 0).blockOn("s0");
+            final SplitInstallScheduler scheduler = new SplitInstallScheduler(installer, true, splits, executor);
+            final AtomicReference<List<SplitInstallScheduler.SplitOutcome>> result = new AtomicReference<>();
+            Thread installThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    result.set(scheduler.install());
+                }
+            });
+            installThread.start();
+            installer.awaitStarted("s0");
+            assertFalse("started split can not be canceled", scheduler.cancel("s0"));
+            assertFalse("unknown split", scheduler.cancel("unknown"));
+            assertTrue(scheduler.cancel("s1"));
+            assertFalse("already canceled", scheduler.cancel("s2"));
+            installer.release("s0");
+            installThread.join(10000);
+            assertEquals(Arrays.asList("s0:ok", "s1:canceled", "s2:canceled", "s3:ok"), describe(result.get()));
+        }
+    }
+
+    private static List<SplitInfo> randomBatch(Random random, int size) {
+        List<SplitInfo> splits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> dependencies = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (random.nextInt(4) == 0) {
+                    dependencies.add("s" + j);
+                }
+            }
+            splits.add(SplitInfoFactory.create("s" + i, dependencies.toArray(new String[0])));
+        }
+        return splits;
+    }
+
+    private static List<String> describe(List<SplitInstallScheduler.SplitOutcome> outcomes) {
+        List<String> result = new ArrayList<>(outcomes.size());
+        for (SplitInstallScheduler.SplitOutcome outcome : outcomes) {
+            String state = outcome.canceled ? "canceled" : outcome.error != null ? "error" : "ok";
+            result.add(outcome.splitInfo.getSplitName() + ":" + state);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.iqiyi.android.qigsaw.core.splitdownload.DownloadRequest;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SplitInstallSessionManagerImplTest {
+
+    private final SplitSessionUpdateCoalescerTest.FakeClock clock = new SplitSessionUpdateCoalescerTest.FakeClock();
+
+    private final SplitSessionUpdateCoalescer coalescer = new SplitSessionUpdateCoalescer(100L, 1024L, clock);
+
+    private final BroadcastCounter context = new BroadcastCounter();
+
+    private SplitInstallSessionManagerImpl sessionManager;
+
+    @Before
+    public void setUp() {
+        sessionManager = new SplitInstallSessionManagerImpl(context, coalescer, new Handler(Looper.getMainLooper()));
+    }
+
+    @Test
+    public void everyTerminalStatusForgetsSession() {
+        int[] terminalStatuses = {
+                SplitInstallInternalSessionStatus.INSTALLED,
+                SplitInstallInternalSessionStatus.POST_INSTALLED,
+                SplitInstallInternalSessionStatus.FAILED,
+                SplitInstallInternalSessionStatus.CANCELED
+        };
+        for (int i = 0; i < terminalStatuses.length; i++) {
+            SplitInstallInternalSessionState sessionState = startDownloading(i + 1);
+            sessionState.setBytesDownloaded(10L);
+            sessionManager.emitSessionState(sessionState);
+            assertEquals(1, coalescer.getSessionCount());
+
+            sessionState.setStatus(terminalStatuses[i]);
+            sessionManager.emitSessionState(sessionState);
+            assertEquals("status " + terminalStatuses[i], 0, coalescer.getSessionCount());
+        }
+        assertEquals(8, context.broadcasts);
+        assertEquals(8L, sessionManager.getEmittedUpdateCount());
+        assertEquals(4L, sessionManager.getSuppressedUpdateCount());
+    }
+
+    @Test
+    public void removedSessionIsForgottenWithoutTerminalUpdate() {
+        SplitInstallInternalSessionState sessionState = startDownloading(1);
+        sessionState.setBytesDownloaded(10L);
+        sessionManager.emitSessionState(sessionState);
+
+        sessionManager.changeSessionState(1, SplitInstallInternalSessionStatus.FAILED);
+        assertNull(sessionManager.getSessionState(1));
+        assertEquals(0, coalescer.getSessionCount());
+
+        clock.advance(100L);
+        sessionManager.flushSessionState(sessionState);
+        assertEquals("pending progress of removed session is dropped", 1, context.broadcasts);
+    }
+
+    @Test
+    public void pendingProgressIsFlushed() {
+        SplitInstallInternalSessionState sessionState = startDownloading(1);
+        for (int i = 1; i <= 10; i++) {
+            clock.advance(5L);
+            sessionState.setBytesDownloaded(i * 100L);
+            sessionManager.emitSessionState(sessionState);
+        }
+        assertEquals(1, context.broadcasts);
+        clock.advance(50L);
+        sessionManager.flushSessionState(sessionState);
+        assertEquals(2, context.broadcasts);
+        assertEquals(2L, sessionManager.getEmittedUpdateCount());
+        assertEquals(10L, sessionManager.getSuppressedUpdateCount());
+    }
+
+    private SplitInstallInternalSessionState startDownloading(int sessionId) {
+        SplitInstallInternalSessionState sessionState = new SplitInstallInternalSessionState(sessionId,
+                new ArrayList<>(Collections.singletonList("split" + sessionId)),
+                Collections.<SplitInfo>emptyList(), Collections.<DownloadRequest>emptyList());
+        sessionManager.setSessionState(sessionId, sessionState);
+        sessionManager.changeSessionState(sessionId, SplitInstallInternalSessionStatus.DOWNLOADING);
+        sessionManager.emitSessionState(sessionState);
+        return sessionState;
+    }
+
+    private static final class BroadcastCounter extends ContextWrapper {
+
+        int broadcasts;
+
+        BroadcastCounter() {
+            super(null);
+        }
+
+        @Override
+        public String getPackageName() {
+            return "com.iqiyi.qigsaw.test";
+        }
+
+        @Override
+        public void sendBroadcast(Intent intent) {
+            broadcasts++;
+        }
+    }
+}
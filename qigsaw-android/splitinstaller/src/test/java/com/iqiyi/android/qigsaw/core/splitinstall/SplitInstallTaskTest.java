@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import androidx.annotation.NonNull;
+
+import com.iqiyi.android.qigsaw.core.splitreport.SplitBriefInfo;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallError;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitInstallReporter;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoFactory;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class SplitInstallTaskTest {
+
+    private static final RecordingReporter REPORTER = new RecordingReporter();
+
+    @BeforeClass
+    public static void installReporter() {
+        SplitInstallReporterManager.install(REPORTER);
+    }
+
+    @Before
+    public void resetReporter() {
+        REPORTER.events.clear();
+    }
+
+    @Test
+    public void canceledSplitsAreReportedAsCancellation() throws Exception {
+        final FakeSplitInstaller installer = new FakeSplitInstaller(1, 0).blockOn("s0");
+        final RecordingTask task = new RecordingTask(installer, true, Arrays.asList(
+                SplitInfoFactory.create("s0"),
+                SplitInfoFactory.create("s1", "s0"),
+                SplitInfoFactory.create("s2", "s0")));
+        Thread taskThread = new Thread(task);
+        taskThread.start();
+        installer.awaitStarted("s0");
+        assertNotNull(task.scheduler);
+        task.scheduler.cancel("s1");
+        task.scheduler.cancel("s2");
+        installer.release("s0");
+        taskThread.join(10000);
+
+        assertEquals(Arrays.asList("canceled:s1:-19", "canceled:s2:-19"), task.events);
+        assertEquals(Arrays.asList("startFailed:[s0]:s1:-19"), REPORTER.events);
+    }
+
+    @Test
+    public void deferredFailureReportsErrorsFollowedByCancellations() throws Exception {
+        final FakeSplitInstaller installer = new FakeSplitInstaller(1, 0).blockOn("s0").failOn("s0");
+        final RecordingTask task = new RecordingTask(installer, false, Arrays.asList(
+                SplitInfoFactory.create("s0"),
+                SplitInfoFactory.create("s1", "s0"),
+                SplitInfoFactory.create("s2")));
+        Thread taskThread = new Thread(task);
+        taskThread.start();
+        installer.awaitStarted("s0");
+        task.scheduler.cancel("s1");
+        installer.release("s0");
+        taskThread.join(10000);
+
+        assertEquals(Arrays.asList("failed:s0:" + SplitInstallError.APK_FILE_ILLEGAL), task.events);
+        assertEquals(Arrays.asList("deferredFailed:[s2]:s0:" + SplitInstallError.APK_FILE_ILLEGAL + ",s1:-19"), REPORTER.events);
+    }
+
+    @Test
+    public void completedTaskReportsNoCancellation() {
+        RecordingTask task = new RecordingTask(new FakeSplitInstaller(1, 0), true, Arrays.asList(
+                SplitInfoFactory.create("s0"),
+                SplitInfoFactory.create("s1", "s0")));
+        task.run();
+        assertEquals(Arrays.asList("completed:2"), task.events);
+        assertEquals(Arrays.asList("startOK:[s0, s1]"), REPORTER.events);
+    }
+
+    private static String describe(List<SplitInstallError> errors) {
+        StringBuilder builder = new StringBuilder();
+        for (SplitInstallError error : errors) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(error.splitName).append(':').append(error.errorCode);
+        }
+        return builder.toString();
+    }
+
+    private static List<String> names(List<SplitBriefInfo> splits) {
+        List<String> names = new ArrayList<>(splits.size());
+        for (SplitBriefInfo info : splits) {
+            names.add(info.splitName);
+        }
+        return names;
+    }
+
+    private static final class RecordingTask extends SplitInstallTask {
+
+        final List<String> events = new ArrayList<>();
+
+        private final boolean startInstall;
+
+        volatile SplitInstallScheduler scheduler;
+
+        RecordingTask(SplitInstaller installer, boolean startInstall, Collection<SplitInfo> splits) {
+            super(installer, splits);
+            this.startInstall = startInstall;
+        }
+
+        @Override
+        boolean isStartInstallOperation() {
+            return startInstall;
+        }
+
+        @Override
+        protected void onPreInstall(SplitInstallScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        void onInstallCompleted(List<SplitInstaller.InstallResult> installResults) {
+            events.add("completed:" + installResults.size());
+        }
+
+        @Override
+        void onInstallFailed(List<SplitInstallError> errors) {
+            events.add("failed:" + describe(errors));
+        }
+
+        @Override
+        void onInstallCanceled(List<SplitInstallError> canceledSplits) {
+            for (SplitInstallError error : canceledSplits) {
+                events.add("canceled:" + describe(Arrays.asList(error)));
+            }
+        }
+    }
+
+    private static final class RecordingReporter implements SplitInstallReporter {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onStartInstallOK(@NonNull List<SplitBriefInfo> installOKSplits, long cost) {
+            events.add("startOK:" + names(installOKSplits));
+        }
+
+        @Override
+        public void onStartInstallFailed(@NonNull List<SplitBriefInfo> installOKSplits, @NonNull SplitInstallError installErrorSplit, long cost) {
+            events.add("startFailed:" + names(installOKSplits) + ":" + describe(Arrays.asList(installErrorSplit)));
+        }
+
+        @Override
+        public void onDeferredInstallOK(@NonNull List<SplitBriefInfo> installOKSplits, long cost) {
+            events.add("deferredOK:" + names(installOKSplits));
+        }
+
+        @Override
+        public void onDeferredInstallFailed(@NonNull List<SplitBriefInfo> installOKSplits, @NonNull List<SplitInstallError> installErrorSplits, long cost) {
+            events.add("deferredFailed:" + names(installOKSplits) + ":" + describe(installErrorSplits));
+        }
+    }
+}
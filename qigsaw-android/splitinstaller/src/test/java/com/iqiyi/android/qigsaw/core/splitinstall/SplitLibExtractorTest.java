@@ -0,0 +1,265 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SplitLibExtractorTest {
+
+    private static final String ABI = "arm64-v8a";
+
+    private static long sSeed = 1000;
+
+    private File workDir;
+
+    private File libDir;
+
+    @Before
+    public void setUp() throws IOException {
+        SplitInfoFactory.installPathManager();
+        workDir = TestApks.createTempDir("split_lib_extractor");
+        libDir = new File(workDir, "lib");
+        assertTrue(libDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Test
+    public void extractsStoredAndDeflatedLibs() throws Exception {
+        TestSplit split = new TestSplit(12, 64 * 1024);
+        List<File> files = load(split, true);
+        assertEquals(12, files.size());
+        split.assertExtracted(files);
+        assertTrue("stored and deflated libs are mixed", split.storedLibs.size() > 0 && split.storedLibs.size() < 12);
+    }
+
+    @Test
+    public void extractsEmptyAndLargeLibs() throws Exception {
+        TestSplit split = new TestSplit(0, 0);
+        split.addLib("libempty.so", new byte[0], true);
+        split.addLib("libempty_deflated.so", new byte[0], false);
+        split.addLib("liblarge.so", TestApks.compressibleBytes(7, 3 * 1024 * 1024 + 5), false);
+        split.addLib("liblarge_stored.so", TestApks.randomBytes(8, 2 * 1024 * 1024 + 3), true);
+        split.assertExtracted(load(split, true));
+    }
+
+    @Test
+    public void reloadValidatesByManifest() throws Exception {
+        TestSplit split = new TestSplit(6, 32 * 1024);
+        List<File> extracted = load(split, true);
+        long[] lastModified = new long[extracted.size()];
+        for (int i = 0; i < extracted.size(); i++) {
+            lastModified[i] = extracted.get(i).lastModified();
+        }
+        List<File> reloaded = load(split, false);
+        assertEquals(extracted, reloaded);
+        for (int i = 0; i < reloaded.size(); i++) {
+            assertEquals("lib is not extracted again", lastModified[i], reloaded.get(i).lastModified());
+        }
+    }
+
+    @Test
+    public void modifiedLibIsExtractedAgain() throws Exception {
+        TestSplit split = new TestSplit(4, 16 * 1024);
+        List<File> extracted = load(split, true);
+        File modified = extracted.get(1);
+        RandomAccessFile raf = new RandomAccessFile(modified, "rw");
+        try {
+            raf.setLength(modified.length() / 2);
+        } finally {
+            raf.close();
+        }
+        FileUtil.deleteFileSafely(extracted.get(2));
+        split.assertExtracted(load(split, false));
+    }
+
+    @Test
+    public void missingManifestFallsBackToExtraction() throws Exception {
+        TestSplit split = new TestSplit(3, 16 * 1024);
+        load(split, true);
+        File[] manifests = libDir.listFiles();
+        assertTrue(manifests != null);
+        for (File file : manifests) {
+            if (file.getName().endsWith(".manifest")) {
+                assertTrue(file.delete());
+            }
+        }
+        split.assertExtracted(load(split, false));
+    }
+
+    @Test
+    public void wrongMd5IsRejected() throws Exception {
+        TestSplit split = new TestSplit(3, 16 * 1024);
+        split.md5s.put(split.names().get(1), "0123456789abcdef0123456789abcdef");
+        try {
+            load(split, true);
+            fail("lib with wrong md5 is extracted");
+        } catch (IOException e) {
+            //expected
+        }
+        assertTrue(!new File(libDir, split.names().get(1)).exists());
+    }
+
+    @Test
+    public void libMissingInSplitInfoIsRejected() throws Exception {
+        TestSplit split = new TestSplit(3, 16 * 1024);
+        split.undeclared.add(split.names().get(0));
+        try {
+            load(split, true);
+            fail("lib missing in split-info is extracted");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    private List<File> load(TestSplit split, boolean forceReload) throws Exception {
+        File apk = split.writeApk();
+        SplitLibExtractor extractor = new SplitLibExtractor(apk, libDir);
+        try {
+            return extractor.load(split.libData(), forceReload);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    /**
+     * Libs of a split apk, every other lib is stored.
+     */
+    private final class TestSplit {
+
+        final Map<String, byte[]> libs = new LinkedHashMap<>();
+
+        final Map<String, String> md5s = new HashMap<>();
+
+        final List<String> storedLibs = new ArrayList<>();
+
+        final List<String> undeclared = new ArrayList<>();
+
+        private File apk;
+
+        TestSplit(int libCount, int libSize) throws Exception {
+            long seed = sSeed++ * 100;
+            for (int i = 0; i < libCount; i++) {
+                byte[] content = i % 3 == 0 ? TestApks.randomBytes(seed + i, libSize + i) : TestApks.compressibleBytes(seed + i, libSize + i);
+                addLib("libsplit" + seed + "_" + i + ".so", content, i % 2 == 0);
+            }
+        }
+
+        void addLib(String name, byte[] content, boolean stored) throws Exception {
+            libs.put(name, content);
+            md5s.put(name, TestApks.md5(content));
+            if (stored) {
+                storedLibs.add("lib/" + ABI + "/" + name);
+            }
+        }
+
+        List<String> names() {
+            return new ArrayList<>(libs.keySet());
+        }
+
+        File writeApk() throws IOException {
+            if (apk == null) {
+                Map<String, byte[]> entries = new LinkedHashMap<>();
+                entries.put("AndroidManifest.xml", TestApks.randomBytes(1, 1024));
+                entries.put("classes.dex", TestApks.compressibleBytes(2, 64 * 1024));
+                for (Map.Entry<String, byte[]> lib : libs.entrySet()) {
+                    entries.put("lib/" + ABI + "/" + lib.getKey(), lib.getValue());
+                    //libs of other abi are not extracted.
+                    entries.put("lib/x86/" + lib.getKey(), TestApks.randomBytes(3, 128));
+                }
+                apk = new File(workDir, "split.apk");
+                TestApks.writeZip(apk, entries, storedLibs, null);
+            }
+            return apk;
+        }
+
+        SplitInfo.LibData libData() {
+            List<SplitInfo.LibData.Lib> libList = new ArrayList<>();
+            for (Map.Entry<String, byte[]> lib : libs.entrySet()) {
+                if (!undeclared.contains(lib.getKey())) {
+                    libList.add(SplitInfoFactory.lib(lib.getKey(), md5s.get(lib.getKey()), lib.getValue().length));
+                }
+            }
+            return SplitInfoFactory.libData(ABI, libList);
+        }
+
+        void assertExtracted(List<File> files) throws IOException {
+            assertEquals(libs.size(), files.size());
+            for (File file : files) {
+                assertEquals(libDir, file.getParentFile());
+                byte[] expected = libs.get(file.getName());
+                assertArrayEquals(file.getName(), expected, readFully(file));
+            }
+            List<String> names = new ArrayList<>();
+            for (File file : files) {
+                names.add(file.getName());
+            }
+            assertEquals(new ArrayList<>(libs.keySet()), names);
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream is = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < content.length) {
+                int count = is.read(content, offset, content.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
+            }
+        } finally {
+            is.close();
+        }
+        return content;
+    }
+}
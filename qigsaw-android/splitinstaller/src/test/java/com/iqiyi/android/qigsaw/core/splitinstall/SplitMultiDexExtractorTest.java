@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SplitMultiDexExtractorTest {
+
+    private File workDir;
+
+    private File dexDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = TestApks.createTempDir("split_multi_dex");
+        dexDir = new File(workDir, "dex");
+        assertTrue(dexDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Test
+    public void extractsManyDexFilesFromApkWithLargeComment() throws Exception {
+        Map<String, byte[]> dexes = dexes(20, 32 * 1024);
+        File apk = apk(dexes, 65000);
+        List<? extends File> files = load(apk, "key", false);
+        assertExtracted(apk, dexes, files);
+    }
+
+    @Test
+    public void singleDexApkHasNoSecondaryDex() throws Exception {
+        File apk = apk(dexes(1, 1024), 0);
+        assertEquals(0, load(apk, "key", false).size());
+    }
+
+    @Test
+    public void recordIsReusedUntilKeyOrApkChanges() throws Exception {
+        Map<String, byte[]> dexes = dexes(5, 16 * 1024);
+        File apk = apk(dexes, 100);
+        List<? extends File> files = load(apk, "key", false);
+        //make re-extraction observable through modification time.
+        File marked = files.get(0);
+        assertTrue(marked.setLastModified(marked.lastModified() - 10000));
+        long markedTime = marked.lastModified();
+
+        List<? extends File> reloaded = load(apk, "key", false);
+        assertEquals(files, reloaded);
+        assertNotEquals("stale record is accepted", markedTime, reloaded.get(0).lastModified());
+
+        assertTrue(reloaded.get(0).setLastModified(reloaded.get(0).lastModified() - 10000));
+        markedTime = reloaded.get(0).lastModified();
+        //key which has changed forces extraction.
+        List<? extends File> rekeyed = load(apk, "other key", false);
+        assertNotEquals(markedTime, rekeyed.get(0).lastModified());
+        assertExtracted(apk, dexes, rekeyed);
+
+        markedTime = rekeyed.get(0).lastModified();
+        List<? extends File> unchanged = load(apk, "other key", false);
+        assertEquals("unchanged extraction is reused", markedTime, unchanged.get(0).lastModified());
+
+        Map<String, byte[]> changedDexes = dexes(7, 8 * 1024);
+        File changedApk = apk(changedDexes, 0);
+        assertExtracted(changedApk, changedDexes, load(changedApk, "other key", false));
+    }
+
+    @Test
+    public void corruptedExtractionIsExtractedAgain() throws Exception {
+        Map<String, byte[]> dexes = dexes(4, 16 * 1024);
+        File apk = apk(dexes, 0);
+        List<? extends File> files = load(apk, "key", false);
+        File corrupted = files.get(1);
+        assertTrue(corrupted.setWritable(true));
+        RandomAccessFile raf = new RandomAccessFile(corrupted, "rw");
+        try {
+            raf.setLength(corrupted.length() - 10);
+        } finally {
+            raf.close();
+        }
+        assertExtracted(apk, dexes, load(apk, "key", false));
+        FileUtil.deleteFileSafely(files.get(2));
+        assertExtracted(apk, dexes, load(apk, "key", false));
+        assertExtracted(apk, dexes, load(apk, "key", true));
+    }
+
+    private List<? extends File> load(File apk, String key, boolean forceReload) throws IOException {
+        SplitMultiDexExtractor extractor = new SplitMultiDexExtractor(apk, dexDir);
+        try {
+            return extractor.load(key, forceReload);
+        } finally {
+            extractor.close();
+        }
+    }
+
+    private void assertExtracted(File apk, Map<String, byte[]> dexes, List<? extends File> files) throws IOException {
+        assertEquals(dexes.size() - 1, files.size());
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            int number = i + 2;
+            assertEquals(new File(dexDir, apk.getName() + ".classes" + number + ".zip"), file);
+            ZipFile zip = new ZipFile(file);
+            try {
+                assertEquals(1, zip.size());
+                ZipEntry entry = zip.getEntry("classes.dex");
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+                assertArrayEquals(file.getName(), dexes.get("classes" + number + ".dex"), readFully(zip.getInputStream(entry)));
+            } finally {
+                zip.close();
+            }
+        }
+    }
+
+    private static Map<String, byte[]> dexes(int count, int size) {
+        Map<String, byte[]> dexes = new LinkedHashMap<>();
+        for (int i = 1; i <= count; i++) {
+            dexes.put(i == 1 ? "classes.dex" : "classes" + i + ".dex", TestApks.compressibleBytes(count * 100 + i, size + i));
+        }
+        return dexes;
+    }
+
+    private File apk(Map<String, byte[]> dexes, int commentLength) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("AndroidManifest.xml", TestApks.randomBytes(1, 1024));
+        entries.putAll(dexes);
+        char[] comment = new char[commentLength];
+        for (int i = 0; i < commentLength; i++) {
+            comment[i] = (char) ('a' + i % 26);
+        }
+        File apk = new File(workDir, "split" + dexes.size() + ".apk");
+        TestApks.writeZip(apk, entries, Collections.<String>emptyList(), commentLength > 0 ? new String(comment) : null);
+        return apk;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int count = is.read(buffer); count != -1; count = is.read(buffer)) {
+                os.write(buffer, 0, count);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+}
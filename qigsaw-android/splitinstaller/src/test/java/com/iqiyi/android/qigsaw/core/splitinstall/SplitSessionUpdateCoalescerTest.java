@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitSessionUpdateCoalescerTest {
+
+    private static final int SESSION_ID = 7;
+
+    private final FakeClock clock = new FakeClock();
+
+    private final SplitSessionUpdateCoalescer coalescer = new SplitSessionUpdateCoalescer(100L, 1024L, clock);
+
+    @Test
+    public void progressIsMergedUntilIntervalAndDeltaAreReached() {
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 0L));
+        clock.advance(50L);
+        assertFalse(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 4096L));
+        clock.advance(50L);
+        assertFalse("delta is too small", coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 512L));
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 8192L));
+        assertEquals(2L, coalescer.getEmittedCount());
+        assertEquals(2L, coalescer.getSuppressedCount());
+    }
+
+    @Test
+    public void statusChangesAreNeverMerged() {
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.PENDING, 0L));
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 0L));
+        assertFalse(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 1L));
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADED, 2L));
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.INSTALLING, 2L));
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.INSTALLING, 2L));
+        assertEquals(5L, coalescer.getEmittedCount());
+        assertEquals(1L, coalescer.getSuppressedCount());
+    }
+
+    @Test
+    public void pendingUpdateIsFlushedOnceAfterRemainingInterval() {
+        assertEquals(-1L, coalescer.scheduleFlush(SESSION_ID));
+        coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 0L);
+        assertEquals("nothing is pending", -1L, coalescer.scheduleFlush(SESSION_ID));
+        clock.advance(30L);
+        coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 10L);
+        assertEquals(70L, coalescer.scheduleFlush(SESSION_ID));
+        coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 20L);
+        assertEquals("flush is scheduled already", -1L, coalescer.scheduleFlush(SESSION_ID));
+        clock.advance(70L);
+        assertTrue(coalescer.flush(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 20L));
+        assertFalse("nothing is pending", coalescer.flush(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 20L));
+    }
+
+    @Test
+    public void flushIsDroppedWhenSupersededByNewerStatus() {
+        coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 0L);
+        coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 10L);
+        coalescer.scheduleFlush(SESSION_ID);
+        assertTrue(coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADED, 10L));
+        clock.advance(100L);
+        assertFalse(coalescer.flush(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADED, 10L));
+    }
+
+    @Test
+    public void removeForgetsSession() {
+        coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 0L);
+        coalescer.offer(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 10L);
+        coalescer.offer(SESSION_ID + 1, SplitInstallInternalSessionStatus.DOWNLOADING, 0L);
+        assertEquals(2, coalescer.getSessionCount());
+        assertEquals(1L, coalescer.remove(SESSION_ID));
+        assertEquals(0L, coalescer.remove(SESSION_ID));
+        assertEquals(1, coalescer.getSessionCount());
+        assertFalse(coalescer.flush(SESSION_ID, SplitInstallInternalSessionStatus.DOWNLOADING, 10L));
+    }
+
+    static final class FakeClock implements SplitSessionUpdateCoalescer.Clock {
+
+        private long now = 1000L;
+
+        void advance(long millis) {
+            now += millis;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SplitZipArchiveTest {
+
+    private static final int CENSIG = 0x02014b50;
+
+    private static final int ENDSIG = 0x06054b50;
+
+    private File workDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = TestApks.createTempDir("split_zip_archive");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDir(workDir);
+    }
+
+    @Test
+    public void findsCentralDirectoryWithAnyCommentLength() throws Exception {
+        int[] commentLengths = {0, 1, 21, 22, 1000, 65535 - 1, 65535};
+        for (int commentLength : commentLengths) {
+            File zip = zip("comment_" + commentLength, 8, comment(commentLength));
+            assertCentralDirectory(zip);
+        }
+    }
+
+    @Test
+    public void ignoresEndSignatureInsideComment() throws Exception {
+        //a fake record whose comment length does not reach the end of file.
+        StringBuilder comment = new StringBuilder("PK\u0005\u0006");
+        for (int i = 0; i < 18; i++) {
+            comment.append('\u0001');
+        }
+        comment.append(comment(4000));
+        File zip = zip("fake_signature", 4, comment.toString());
+        assertCentralDirectory(zip);
+    }
+
+    @Test
+    public void rejectsFilesWhichAreNotZip() throws Exception {
+        File tooShort = new File(workDir, "short.zip");
+        writeBytes(tooShort, new byte[21]);
+        File noSignature = new File(workDir, "no_signature.zip");
+        writeBytes(noSignature, TestApks.randomBytes(1, 128 * 1024));
+        for (File file : new File[]{tooShort, noSignature}) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                SplitZipArchive.findCentralDirectory(raf.getChannel());
+                fail(file.getName() + " is parsed as zip");
+            } catch (ZipException e) {
+                //expected
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    @Test
+    public void zipCrcCoversCentralDirectoryOnly() throws Exception {
+        File zip = zip("crc", 6, comment(30000));
+        RandomAccessFile raf = new RandomAccessFile(zip, "r");
+        long expected;
+        try {
+            SplitZipArchive.CentralDirectory dir = SplitZipArchive.findCentralDirectory(raf.getChannel());
+            byte[] cd = new byte[(int) dir.size];
+            raf.seek(dir.offset);
+            raf.readFully(cd);
+            CRC32 crc = new CRC32();
+            crc.update(cd);
+            expected = crc.getValue();
+        } finally {
+            raf.close();
+        }
+        assertEquals(expected, SplitMultiDexExtractor.ZipCrcUtil.getZipCrc(zip));
+    }
+
+    private void assertCentralDirectory(File zip) throws IOException {
+        int entryCount;
+        ZipFile zipFile = new ZipFile(zip);
+        try {
+            entryCount = zipFile.size();
+        } finally {
+            zipFile.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(zip, "r");
+        try {
+            SplitZipArchive.CentralDirectory dir = SplitZipArchive.findCentralDirectory(raf.getChannel());
+            assertEquals(zip.getName(), entryCount, dir.entryCount);
+            raf.seek(dir.offset);
+            assertEquals(zip.getName(), CENSIG, Integer.reverseBytes(raf.readInt()));
+            raf.seek(dir.offset + dir.size);
+            assertEquals(zip.getName(), ENDSIG, Integer.reverseBytes(raf.readInt()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private File zip(String name, int entryCount, String comment) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            entries.put("assets/entry" + i + ".bin", TestApks.compressibleBytes(i, 4096 + i));
+        }
+        File zip = new File(workDir, name + ".zip");
+        TestApks.writeZip(zip, entries, Collections.<String>emptyList(), comment);
+        return zip;
+    }
+
+    private static String comment(int length) {
+        char[] comment = new char[length];
+        for (int i = 0; i < length; i++) {
+            comment[i] = (char) ('a' + i % 26);
+        }
+        return new String(comment);
+    }
+
+    private static void writeBytes(File file, byte[] content) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(content);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitinstall;
+
+import com.android.apksig.ApkSigner;
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Split apks generated and signed locally for tests.
+ */
+final class TestApks {
+
+    /**
+     * System property of keystore used to sign apks, see build.gradle.
+     */
+    private static final String KEYSTORE_PROPERTY = "qigsaw.test.keystore";
+
+    private static final String KEYSTORE_PASSWORD = "qigsawtest";
+
+    private static final String KEY_ALIAS = "qigsawtest";
+
+    /**
+     * Format of split apk patch, which must be kept in sync with SplitApkPatch.
+     */
+    private static final int PATCH_MAGIC = 0x51535054;
+
+    private static final int PATCH_FORMAT_VERSION = 1;
+
+    private static final int PATCH_OP_END = 0;
+
+    private static final int PATCH_OP_COPY = 1;
+
+    private static final int PATCH_OP_DATA = 2;
+
+    private TestApks() {
+
+    }
+
+    static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, null);
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Failed to create temp dir " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Bytes which compress well, like most native code.
+     */
+    static byte[] compressibleBytes(long seed, int size) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : i % 64);
+        }
+        return data;
+    }
+
+    static String md5(byte[] content) throws Exception {
+        return SplitApkVerifier.toHexString(MessageDigest.getInstance("MD5").digest(content));
+    }
+
+    /**
+     * Content of a split apk, native libs are stored as they are in apks built by qigsaw.
+     */
+    static Map<String, byte[]> splitEntries(long seed, int dexCount, int dexSize, int libCount, int libSize) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("AndroidManifest.xml", randomBytes(seed, 2048));
+        for (int i = 0; i < dexCount; i++) {
+            entries.put(i == 0 ? "classes.dex" : "classes" + (i + 1) + ".dex", randomBytes(seed + 100 + i, dexSize));
+        }
+        for (int i = 0; i < libCount; i++) {
+            entries.put("lib/arm64-v8a/libsplit" + i + ".so", randomBytes(seed + 200 + i, libSize));
+        }
+        entries.put("resources.arsc", randomBytes(seed + 300, 16 * 1024));
+        return entries;
+    }
+
+    static void writeZip(File dest, Map<String, byte[]> entries) throws IOException {
+        List<String> storedEntries = new ArrayList<>();
+        for (String name : entries.keySet()) {
+            if (name.endsWith(".so")) {
+                storedEntries.add(name);
+            }
+        }
+        writeZip(dest, entries, storedEntries, null);
+    }
+
+    /**
+     * @param storedEntries names of entries which are stored, others are deflated.
+     * @param comment       comment of zip, may be null.
+     */
+    static void writeZip(File dest, Map<String, byte[]> entries, Collection<String> storedEntries, String comment) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(dest));
+        try {
+            if (comment != null) {
+                zos.setComment(comment);
+            }
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                byte[] content = entry.getValue();
+                if (storedEntries.contains(entry.getKey())) {
+                    CRC32 crc32 = new CRC32();
+                    crc32.update(content);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(content.length);
+                    zipEntry.setCompressedSize(content.length);
+                    zipEntry.setCrc(crc32.getValue());
+                }
+                zos.putNextEntry(zipEntry);
+                zos.write(content);
+                zos.closeEntry();
+            }
+        } finally {
+            FileUtil.closeQuietly(zos);
+        }
+    }
+
+    static X509Certificate certificate() throws Exception {
+        return (X509Certificate) keyStore().getCertificate(KEY_ALIAS);
+    }
+
+    /**
+     * Sign a zip with apk signature scheme v2 using the debug keystore of this repository.
+     */
+    static void sign(File unsigned, File signed) throws Exception {
+        KeyStore keyStore = keyStore();
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(KEY_ALIAS, KEYSTORE_PASSWORD.toCharArray());
+        ApkSigner.SignerConfig signerConfig = new ApkSigner.SignerConfig.Builder(
+                KEY_ALIAS, privateKey, Collections.singletonList(certificate())).build();
+        new ApkSigner.Builder(Collections.singletonList(signerConfig))
+                .setInputApk(unsigned)
+                .setOutputApk(signed)
+                .setMinSdkVersion(14)
+                .setV1SigningEnabled(false)
+                .setV2SigningEnabled(true)
+                .build()
+                .sign();
+    }
+
+    /**
+     * Bytes read by this process through read system calls, or -1 if it is not available.
+     */
+    static long readBytesOfProcess() {
+        File io = new File("/proc/self/io");
+        if (!io.canRead()) {
+            return -1;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(io));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("rchar:")) {
+                    return Long.parseLong(line.substring("rchar:".length()).trim());
+                }
+            }
+            return -1;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Create zip-entry level patch like SplitApkPatchGenerator of qigsaw gradle plugin does,
+     * raw data of unchanged entries is copied from {@code oldApk} and everything else is stored.
+     *
+     * @return size of created patch file.
+     */
+    static long createPatch(File oldApk, File newApk, File patchFile) throws Exception {
+        byte[] oldBytes = readFile(oldApk);
+        byte[] newBytes = readFile(newApk);
+        Map<String, ZipEntryRange> oldEntries = new HashMap<>();
+        for (ZipEntryRange entry : readEntries(oldBytes)) {
+            oldEntries.put(entry.name, entry);
+        }
+        List<ZipEntryRange> newEntries = readEntries(newBytes);
+        Collections.sort(newEntries, new Comparator<ZipEntryRange>() {
+            @Override
+            public int compare(ZipEntryRange o1, ZipEntryRange o2) {
+                return Integer.compare(o1.dataOffset, o2.dataOffset);
+            }
+        });
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(patchFile)));
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            output.writeInt(PATCH_MAGIC);
+            output.writeShort(PATCH_FORMAT_VERSION);
+            output.writeUTF(md5(oldBytes));
+            output.writeUTF(md5(newBytes));
+            output.writeLong(newBytes.length);
+            DeflaterOutputStream deflated = new DeflaterOutputStream(output, deflater);
+            DataOutputStream ops = new DataOutputStream(deflated);
+            int cursor = 0;
+            for (ZipEntryRange entry : newEntries) {
+                ZipEntryRange oldEntry = oldEntries.get(entry.name);
+                if (entry.dataOffset >= cursor && entry.isCopyOf(oldEntry, oldBytes, newBytes)) {
+                    writePatchData(ops, newBytes, cursor, entry.dataOffset - cursor);
+                    ops.writeByte(PATCH_OP_COPY);
+                    ops.writeLong(oldEntry.dataOffset);
+                    ops.writeInt(entry.compressedSize);
+                    cursor = entry.dataOffset + entry.compressedSize;
+                }
+            }
+            writePatchData(ops, newBytes, cursor, newBytes.length - cursor);
+            ops.writeByte(PATCH_OP_END);
+            ops.flush();
+            deflated.finish();
+            output.flush();
+        } finally {
+            FileUtil.closeQuietly(output);
+            deflater.end();
+        }
+        return patchFile.length();
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        try {
+            is.readFully(content);
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+        return content;
+    }
+
+    private static void writePatchData(DataOutputStream ops, byte[] bytes, int offset, int length) throws IOException {
+        if (length > 0) {
+            ops.writeByte(PATCH_OP_DATA);
+            ops.writeInt(length);
+            ops.write(bytes, offset, length);
+        }
+    }
+
+    private static List<ZipEntryRange> readEntries(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = -1;
+        for (int i = bytes.length - 22; i >= 0; i--) {
+            if (buffer.getInt(i) == 0x06054b50) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("End of central directory is not found!");
+        }
+        int entryCount = buffer.getShort(eocd + 10) & 0xffff;
+        int position = buffer.getInt(eocd + 16);
+        List<ZipEntryRange> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            int nameLength = buffer.getShort(position + 28) & 0xffff;
+            int extraLength = buffer.getShort(position + 30) & 0xffff;
+            int commentLength = buffer.getShort(position + 32) & 0xffff;
+            int localHeader = buffer.getInt(position + 42);
+            ZipEntryRange entry = new ZipEntryRange();
+            entry.name = new String(bytes, position + 46, nameLength, Charset.forName("UTF-8"));
+            entry.crc = buffer.getInt(position + 16);
+            entry.compressedSize = buffer.getInt(position + 20);
+            entry.dataOffset = localHeader + 30 + (buffer.getShort(localHeader + 26) & 0xffff) + (buffer.getShort(localHeader + 28) & 0xffff);
+            entries.add(entry);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static final class ZipEntryRange {
+
+        String name;
+
+        int crc;
+
+        int compressedSize;
+
+        int dataOffset;
+
+        /**
+         * Entries smaller than 32 bytes are cheaper to store than to copy.
+         */
+        boolean isCopyOf(ZipEntryRange oldEntry, byte[] oldBytes, byte[] newBytes) {
+            if (oldEntry == null || compressedSize < 32 || oldEntry.crc != crc || oldEntry.compressedSize != compressedSize) {
+                return false;
+            }
+            for (int i = 0; i < compressedSize; i++) {
+                if (oldBytes[oldEntry.dataOffset + i] != newBytes[dataOffset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static KeyStore keyStore() throws Exception {
+        String keystorePath = System.getProperty(KEYSTORE_PROPERTY);
+        if (keystorePath == null) {
+            throw new IllegalStateException("System property " + KEYSTORE_PROPERTY + " is not set");
+        }
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream is = new FileInputStream(keystorePath);
+        try {
+            keyStore.load(is, KEYSTORE_PASSWORD.toCharArray());
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+        return keyStore;
+    }
+}
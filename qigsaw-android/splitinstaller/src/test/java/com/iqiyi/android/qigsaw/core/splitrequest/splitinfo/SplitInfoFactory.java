@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Create {@link SplitInfo} for tests out of splitrequester, its constructor is package-private.
+ */
+public final class SplitInfoFactory {
+
+    private SplitInfoFactory() {
+
+    }
+
+    public static SplitInfo create(String splitName, String... dependencies) {
+        List<SplitInfo.ApkData> apkDataList = new ArrayList<>(1);
+        apkDataList.add(new SplitInfo.ApkData("master", "http://localhost/" + splitName + ".zip", "", 0));
+        return new SplitInfo(splitName, "1.0.0", "1.0.0@1", false, 14, 1,
+                Collections.<String>emptyList(),
+                dependencies.length == 0 ? null : Arrays.asList(dependencies),
+                apkDataList, null);
+    }
+
+    /**
+     * Create split of {@code splitVersion} with a master apk of {@code md5} and {@code size}.
+     */
+    public static SplitInfo create(String splitName, String splitVersion, String md5, long size) {
+        List<SplitInfo.ApkData> apkDataList = new ArrayList<>(1);
+        apkDataList.add(new SplitInfo.ApkData("master", "http://localhost/" + splitName + ".zip", md5, size));
+        return new SplitInfo(splitName, "1.0.0", splitVersion, false, 14, 1,
+                Collections.<String>emptyList(), null, apkDataList, null);
+    }
+
+    /**
+     * @param baseMd5 md5 of the apk which the patch of split apk is applied to, or {@code null} if there is no patch.
+     */
+    public static SplitInfo createWithPatch(String splitName, String splitVersion, String md5, String baseMd5) {
+        SplitInfo.PatchData patchData = baseMd5 == null ? null
+                : new SplitInfo.PatchData(baseMd5, "http://localhost/" + splitName + ".patch", "", 0);
+        List<SplitInfo.ApkData> apkDataList = new ArrayList<>(1);
+        apkDataList.add(new SplitInfo.ApkData("master", "http://localhost/" + splitName + ".zip", md5, 0, patchData));
+        return new SplitInfo(splitName, "1.0.0", splitVersion, false, 14, 1,
+                Collections.<String>emptyList(), null, apkDataList, null);
+    }
+
+    public static SplitInfo.ApkData apkData(SplitInfo info) {
+        return info.getAllApkData().get(0);
+    }
+
+    public static SplitInfo.LibData.Lib lib(String name, String md5, long size) {
+        return new SplitInfo.LibData.Lib(name, md5, size);
+    }
+
+    public static SplitInfo.LibData libData(String abi, List<SplitInfo.LibData.Lib> libs) {
+        return new SplitInfo.LibData(abi, libs);
+    }
+
+    /**
+     * Install {@link SplitPathManager} rooted at a temp dir, which is shared by all tests of this process.
+     */
+    public static synchronized void installPathManager() throws IOException {
+        try {
+            Field field = SplitPathManager.class.getDeclaredField("sSplitPathManagerRef");
+            field.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            AtomicReference<SplitPathManager> ref = (AtomicReference<SplitPathManager>) field.get(null);
+            if (ref.get() == null) {
+                File rootDir = File.createTempFile("qigsaw_test", null);
+                if (!rootDir.delete() || !rootDir.mkdirs()) {
+                    throw new IOException("Failed to create " + rootDir.getAbsolutePath());
+                }
+                ref.set(new SplitPathManager(rootDir, "1.0.0_test", SplitPathManager.DirOperations.DEFAULT));
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
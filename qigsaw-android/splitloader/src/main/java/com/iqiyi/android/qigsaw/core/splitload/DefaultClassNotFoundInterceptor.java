@@ -28,22 +28,43 @@ import android.content.Context;
 
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
 import com.iqiyi.android.qigsaw.core.extension.AABExtension;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoIndex;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManagerService;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 final class DefaultClassNotFoundInterceptor implements ClassNotFoundInterceptor {
 
     private static final String TAG = "Split:ClassNotFound";
 
+    private static final int MAX_ABSENT_CLASSES = 256;
+
     private final Context context;
 
     private final ClassLoader originClassLoader;
 
     private final int splitLoadMode;
 
+    /**
+     * Names of classes which are not found in loaded splits, it is dropped once more splits are loaded.
+     */
+    private final Map<String, Boolean> absentClasses = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_ABSENT_CLASSES;
+        }
+    };
+
+    private int absentClassesGeneration;
+
     DefaultClassNotFoundInterceptor(Context appContext, ClassLoader originClassLoader, int splitLoadMode) {
         this.context = appContext;
         this.originClassLoader = originClassLoader;
@@ -53,24 +74,46 @@ final class DefaultClassNotFoundInterceptor implements ClassNotFoundInterceptor
     @Override
     public Class<?> findClass(String name) {
         if (SplitLoadManagerService.hasInstance()) {
+            int generation = SplitLoadManagerService.getInstance().getLoadedSplitCount();
+            if (isKnownAbsent(name, generation)) {
+                return null;
+            }
+            Class<?> ret = null;
             if (splitLoadMode == SplitLoad.MULTIPLE_CLASSLOADER) {
-                return onClassNotFound(name);
+                ret = onClassNotFound(name);
             } else if (splitLoadMode == SplitLoad.SINGLE_CLASSLOADER) {
-                return onClassNotFound2(name);
+                ret = onClassNotFound2(name);
+            }
+            if (ret == null) {
+                markAbsent(name, generation);
             }
+            return ret;
         }
         return null;
     }
 
     private Class<?> onClassNotFound(String name) {
-        Class<?> ret = findClassInSplits(name);
+        String owner = findOwnerSplit(name);
+        if (owner != null) {
+            Class<?> ret = findClassInSplit(owner, name);
+            if (ret == null && loadSplitOnDemand(owner)) {
+                ret = findClassInSplit(owner, name);
+                if (ret != null) {
+                    SplitLog.i(TAG, "Class %s is found in %s ClassLoader after loading it on demand.", name, owner);
+                }
+            }
+            if (ret != null) {
+                return ret;
+            }
+        }
+        Class<?> ret = findClassInSplits(name, owner);
         if (ret != null) {
             return ret;
         }
         Class<?> fakeComponent = AABExtension.getInstance().getFakeComponent(name);
         if (fakeComponent != null || isSplitEntryFragments(name)) {
             SplitLoadManagerService.getInstance().loadInstalledSplits();
-            ret = findClassInSplits(name);
+            ret = findClassInSplits(name, null);
             if (ret != null) {
                 SplitLog.i(TAG, "Class %s is found in Splits after loading all installed splits.", name);
                 return ret;
@@ -95,6 +138,16 @@ final class DefaultClassNotFoundInterceptor implements ClassNotFoundInterceptor
     }
 
     private Class<?> onClassNotFound2(String name) {
+        String owner = findOwnerSplit(name);
+        if (owner != null && loadSplitOnDemand(owner)) {
+            try {
+                Class<?> ret = originClassLoader.loadClass(name);
+                SplitLog.i(TAG, "Class %s is found after loading split %s on demand.", name, owner);
+                return ret;
+            } catch (ClassNotFoundException ignored) {
+
+            }
+        }
         Class<?> fakeComponent = AABExtension.getInstance().getFakeComponent(name);
         if (fakeComponent != null || isSplitEntryFragments(name)) {
             SplitLoadManagerService.getInstance().loadInstalledSplits();
@@ -110,9 +163,24 @@ final class DefaultClassNotFoundInterceptor implements ClassNotFoundInterceptor
         return null;
     }
 
-    private Class<?> findClassInSplits(String name) {
+    private Class<?> findClassInSplit(String splitName, String name) {
+        SplitDexClassLoader classLoader = SplitApplicationLoaders.getInstance().getValidClassLoader(splitName);
+        if (classLoader != null) {
+            try {
+                return classLoader.loadClassItself(name);
+            } catch (ClassNotFoundException e) {
+                SplitLog.w(TAG, "Class %s is indexed but not found in %s ClassLoader", name, splitName);
+            }
+        }
+        return null;
+    }
+
+    private Class<?> findClassInSplits(String name, String excludedSplit) {
         Set<SplitDexClassLoader> splitDexClassLoaders = SplitApplicationLoaders.getInstance().getValidClassLoaders();
         for (SplitDexClassLoader classLoader : splitDexClassLoaders) {
+            if (classLoader.moduleName().equals(excludedSplit)) {
+                continue;
+            }
             try {
                 Class<?> clazz = classLoader.loadClassItself(name);
                 SplitLog.i(TAG, "Class %s is found in %s ClassLoader", name, classLoader.moduleName());
@@ -123,4 +191,75 @@ final class DefaultClassNotFoundInterceptor implements ClassNotFoundInterceptor
         }
         return null;
     }
+
+    /**
+     * Load the split and its transitive dependencies if the split is not loaded yet.
+     *
+     * @return {@code true} if loading is triggered.
+     */
+    private boolean loadSplitOnDemand(String splitName) {
+        SplitLoadManager loadManager = SplitLoadManagerService.getInstance();
+        Set<String> loadedSplitNames = loadManager.getLoadedSplitNames();
+        if (loadedSplitNames.contains(splitName)) {
+            return false;
+        }
+        List<String> splitNames;
+        SplitInfoManager infoManager = SplitInfoManagerService.getInstance();
+        if (infoManager != null) {
+            SplitInfoIndex index = infoManager.getSplitInfoIndex(context);
+            if (index == null) {
+                return false;
+            }
+            splitNames = getSplitsToLoad(index, splitName, loadedSplitNames);
+            if (splitNames == null) {
+                return false;
+            }
+        } else {
+            splitNames = Collections.singletonList(splitName);
+        }
+        long time = System.currentTimeMillis();
+        loadManager.preloadInstalledSplits(splitNames);
+        SplitLog.i(TAG, "Cost %d ms to load splits %s on demand", System.currentTimeMillis() - time, splitNames);
+        return true;
+    }
+
+    /**
+     * @return the split and all its direct and indirect dependencies which are not loaded yet, every split comes after
+     * its dependencies, or {@code null} if the split is not declared.
+     */
+    static List<String> getSplitsToLoad(SplitInfoIndex index, String splitName, Collection<String> loadedSplitNames) {
+        int splitId = index.getSplitId(splitName);
+        if (splitId < 0) {
+            return null;
+        }
+        BitSet splitIds = index.getTransitiveDependencies(splitId);
+        splitIds.set(splitId);
+        splitIds.andNot(index.toSplitIds(loadedSplitNames));
+        int[] sortedIds = index.sortTopologically(splitIds);
+        List<String> splitNames = new ArrayList<>(sortedIds.length);
+        for (int id : sortedIds) {
+            splitNames.add(index.getSplitName(id));
+        }
+        return splitNames;
+    }
+
+    private String findOwnerSplit(String name) {
+        SplitClassIndex classIndex = SplitClassIndex.obtain(context);
+        return classIndex == null ? null : classIndex.findSplit(name);
+    }
+
+    private synchronized boolean isKnownAbsent(String name, int generation) {
+        if (absentClassesGeneration != generation) {
+            absentClasses.clear();
+            absentClassesGeneration = generation;
+            return false;
+        }
+        return absentClasses.get(name) != null;
+    }
+
+    private synchronized void markAbsent(String name, int generation) {
+        if (absentClassesGeneration == generation) {
+            absentClasses.put(name, Boolean.TRUE);
+        }
+    }
 }
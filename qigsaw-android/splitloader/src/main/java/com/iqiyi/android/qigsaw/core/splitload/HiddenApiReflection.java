@@ -1,16 +1,30 @@
 package com.iqiyi.android.qigsaw.core.splitload;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Source code from Tinker
  */
 final class HiddenApiReflection {
 
+    private static final Object NOT_FOUND = new Object();
+
+    /**
+     * Members resolved from classes, keyed by field name or method signature. Members which are not found
+     * are cached as {@link #NOT_FOUND}, so fallback lookups on other platform versions stay cheap.
+     * Member maps are softly referenced because members refer to their declaring classes, which would
+     * otherwise keep weak keys of split classes alive forever.
+     */
+    private static final Map<Class<?>, SoftReference<ConcurrentHashMap<String, Object>>> sMembers = new WeakHashMap<>();
+
     private HiddenApiReflection() {
 
     }
@@ -24,37 +38,20 @@ final class HiddenApiReflection {
      * @throws NoSuchFieldException if the field cannot be located
      */
     static Field findField(Object instance, String name) throws NoSuchFieldException {
-        for (Class<?> clazz = instance.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
-            try {
-                Field field = clazz.getDeclaredField(name);
-                if (!field.isAccessible()) {
-                    field.setAccessible(true);
-                }
-                return field;
-            } catch (NoSuchFieldException e) {
-                // ignore and search next
-            }
-        }
-
-        throw new NoSuchFieldException("Field " + name + " not found in " + instance.getClass());
+        return findField(instance.getClass(), name);
     }
 
     static Field findField(Class<?> originClazz, String name) throws NoSuchFieldException {
-        for (Class<?> clazz = originClazz; clazz != null; clazz = clazz.getSuperclass()) {
-            try {
-                Field field = clazz.getDeclaredField(name);
-
-                if (!field.isAccessible()) {
-                    field.setAccessible(true);
-                }
-
-                return field;
-            } catch (NoSuchFieldException e) {
-                // ignore and search next
-            }
+        ConcurrentHashMap<String, Object> members = membersOf(originClazz);
+        Object field = members.get(name);
+        if (field == null) {
+            field = resolveField(originClazz, name);
+            members.put(name, field);
         }
-
-        throw new NoSuchFieldException("Field " + name + " not found in " + originClazz);
+        if (field == NOT_FOUND) {
+            throw new NoSuchFieldException("Field " + name + " not found in " + originClazz);
+        }
+        return (Field) field;
     }
 
     /**
@@ -68,25 +65,7 @@ final class HiddenApiReflection {
      */
     static Method findMethod(Object instance, String name, Class<?>... parameterTypes)
             throws NoSuchMethodException {
-        for (Class<?> clazz = instance.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
-            try {
-                Method method = clazz.getDeclaredMethod(name, parameterTypes);
-
-                if (!method.isAccessible()) {
-                    method.setAccessible(true);
-                }
-
-                return method;
-            } catch (NoSuchMethodException e) {
-                // ignore and search next
-            }
-        }
-
-        throw new NoSuchMethodException("Method "
-                + name
-                + " with parameters "
-                + Arrays.asList(parameterTypes)
-                + " not found in " + instance.getClass());
+        return findMethod(instance.getClass(), name, parameterTypes);
     }
 
     /**
@@ -100,25 +79,21 @@ final class HiddenApiReflection {
      */
     static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes)
             throws NoSuchMethodException {
-        for (; clazz != null; clazz = clazz.getSuperclass()) {
-            try {
-                Method method = clazz.getDeclaredMethod(name, parameterTypes);
-
-                if (!method.isAccessible()) {
-                    method.setAccessible(true);
-                }
-
-                return method;
-            } catch (NoSuchMethodException e) {
-                // ignore and search next
-            }
+        ConcurrentHashMap<String, Object> members = membersOf(clazz);
+        String signature = signature(name, parameterTypes);
+        Object method = members.get(signature);
+        if (method == null) {
+            method = resolveMethod(clazz, name, parameterTypes);
+            members.put(signature, method);
         }
-
-        throw new NoSuchMethodException("Method "
-                + name
-                + " with parameters "
-                + Arrays.asList(parameterTypes)
-                + " not found in " + clazz);
+        if (method == NOT_FOUND) {
+            throw new NoSuchMethodException("Method "
+                    + name
+                    + " with parameters "
+                    + Arrays.asList(parameterTypes)
+                    + " not found in " + clazz);
+        }
+        return (Method) method;
     }
 
     /**
@@ -131,24 +106,7 @@ final class HiddenApiReflection {
      */
     static Constructor<?> findConstructor(Object instance, Class<?>... parameterTypes)
             throws NoSuchMethodException {
-        for (Class<?> clazz = instance.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
-            try {
-                Constructor<?> ctor = clazz.getDeclaredConstructor(parameterTypes);
-
-                if (!ctor.isAccessible()) {
-                    ctor.setAccessible(true);
-                }
-
-                return ctor;
-            } catch (NoSuchMethodException e) {
-                // ignore and search next
-            }
-        }
-
-        throw new NoSuchMethodException("Constructor"
-                + " with parameters "
-                + Arrays.asList(parameterTypes)
-                + " not found in " + instance.getClass());
+        return findConstructor(instance.getClass(), parameterTypes);
     }
 
     /**
@@ -161,24 +119,20 @@ final class HiddenApiReflection {
      */
     static Constructor<?> findConstructor(Class<?> clazz, Class<?>... parameterTypes)
             throws NoSuchMethodException {
-        for (; clazz != null; clazz = clazz.getSuperclass()) {
-            try {
-                Constructor<?> ctor = clazz.getDeclaredConstructor(parameterTypes);
-
-                if (!ctor.isAccessible()) {
-                    ctor.setAccessible(true);
-                }
-
-                return ctor;
-            } catch (NoSuchMethodException e) {
-                // ignore and search next
-            }
+        ConcurrentHashMap<String, Object> members = membersOf(clazz);
+        String signature = signature("<init>", parameterTypes);
+        Object ctor = members.get(signature);
+        if (ctor == null) {
+            ctor = resolveConstructor(clazz, parameterTypes);
+            members.put(signature, ctor);
         }
-
-        throw new NoSuchMethodException("Constructor"
-                + " with parameters "
-                + Arrays.asList(parameterTypes)
-                + " not found in " + clazz);
+        if (ctor == NOT_FOUND) {
+            throw new NoSuchMethodException("Constructor"
+                    + " with parameters "
+                    + Arrays.asList(parameterTypes)
+                    + " not found in " + clazz);
+        }
+        return (Constructor<?>) ctor;
     }
 
     /**
@@ -232,5 +186,80 @@ final class HiddenApiReflection {
 
         jlrField.set(instance, combined);
     }
-}
 
+    private static ConcurrentHashMap<String, Object> membersOf(Class<?> clazz) {
+        synchronized (sMembers) {
+            SoftReference<ConcurrentHashMap<String, Object>> ref = sMembers.get(clazz);
+            ConcurrentHashMap<String, Object> members = ref == null ? null : ref.get();
+            if (members == null) {
+                members = new ConcurrentHashMap<>();
+                sMembers.put(clazz, new SoftReference<>(members));
+            }
+            return members;
+        }
+    }
+
+    private static String signature(String name, Class<?>[] parameterTypes) {
+        StringBuilder signature = new StringBuilder(name).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    signature.append(',');
+                }
+                signature.append(parameterTypes[i].getName());
+            }
+        }
+        return signature.append(')').toString();
+    }
+
+    private static Object resolveField(Class<?> originClazz, String name) {
+        for (Class<?> clazz = originClazz; clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Field field = clazz.getDeclaredField(name);
+
+                if (!field.isAccessible()) {
+                    field.setAccessible(true);
+                }
+
+                return field;
+            } catch (NoSuchFieldException e) {
+                // ignore and search next
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private static Object resolveMethod(Class<?> originClazz, String name, Class<?>... parameterTypes) {
+        for (Class<?> clazz = originClazz; clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Method method = clazz.getDeclaredMethod(name, parameterTypes);
+
+                if (!method.isAccessible()) {
+                    method.setAccessible(true);
+                }
+
+                return method;
+            } catch (NoSuchMethodException e) {
+                // ignore and search next
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private static Object resolveConstructor(Class<?> originClazz, Class<?>... parameterTypes) {
+        for (Class<?> clazz = originClazz; clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Constructor<?> ctor = clazz.getDeclaredConstructor(parameterTypes);
+
+                if (!ctor.isAccessible()) {
+                    ctor.setAccessible(true);
+                }
+
+                return ctor;
+            } catch (NoSuchMethodException e) {
+                // ignore and search next
+            }
+        }
+        return NOT_FOUND;
+    }
+}
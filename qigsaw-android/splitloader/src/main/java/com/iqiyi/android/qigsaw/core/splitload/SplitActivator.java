@@ -28,6 +28,7 @@ import android.app.Application;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
 import com.iqiyi.android.qigsaw.core.extension.AABExtension;
 import com.iqiyi.android.qigsaw.core.extension.AABExtensionException;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitLoadError;
@@ -36,7 +37,9 @@ import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 
-final class SplitActivator {
+class SplitActivator {
+
+    private static final String TAG = "SplitActivator";
 
     private final AABExtension aabExtension;
 
@@ -45,8 +48,12 @@ final class SplitActivator {
     private static final Map<String, Application> sSplitApplicationMap = new HashMap<>();
 
     SplitActivator(Context context) {
+        this(context, AABExtension.getInstance());
+    }
+
+    SplitActivator(Context context, AABExtension aabExtension) {
         this.appContext = context;
-        this.aabExtension = AABExtension.getInstance();
+        this.aabExtension = aabExtension;
     }
 
     Application createSplitApplication(ClassLoader classLoader, String splitName) throws SplitLoadException {
@@ -67,6 +74,18 @@ final class SplitActivator {
         return app;
     }
 
+    /**
+     * Load split application class ahead of {@link #createSplitApplication(ClassLoader, String)},
+     * it does not run any code of split, so it is safe to be invoked off the main thread.
+     */
+    void prewarmSplitApplicationClass(ClassLoader classLoader, String splitName) {
+        try {
+            aabExtension.loadApplicationClass(classLoader, splitName);
+        } catch (Throwable e) {
+            SplitLog.w(TAG, "Failed to prewarm %s application class", splitName);
+        }
+    }
+
     void attachSplitApplication(Application application) throws SplitLoadException {
         try {
             aabExtension.activeApplication(application, appContext);
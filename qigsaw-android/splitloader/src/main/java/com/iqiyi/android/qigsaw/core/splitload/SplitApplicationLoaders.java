@@ -26,16 +26,25 @@ package com.iqiyi.android.qigsaw.core.splitload;
 
 import androidx.annotation.Nullable;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 final class SplitApplicationLoaders {
 
-    private final Set<SplitDexClassLoader> splitDexClassLoaders = Collections.newSetFromMap(new ConcurrentHashMap<SplitDexClassLoader, Boolean>());
+    private final Map<String, SplitDexClassLoader> splitDexClassLoaders = new ConcurrentHashMap<>();
+
+    /**
+     * Valid class loaders, rebuilt only when a class loader is added or its validity changes.
+     */
+    private volatile Snapshot validSnapshot = new Snapshot(Collections.<SplitDexClassLoader>emptyList());
 
     private static final AtomicReference<SplitApplicationLoaders> sInstance = new AtomicReference<>();
 
@@ -46,18 +55,49 @@ final class SplitApplicationLoaders {
         return sInstance.get();
     }
 
-    void addClassLoader(SplitDexClassLoader classLoader) {
-        splitDexClassLoaders.add(classLoader);
+    /**
+     * Add class loader and mark it valid unless a valid one of the same split has been added, which happens
+     * when two tasks load a split concurrently. An invalid class loader of a split which failed to load is replaced.
+     *
+     * @return class loader kept for the split.
+     */
+    synchronized SplitDexClassLoader addClassLoaderIfAbsent(SplitDexClassLoader classLoader) {
+        SplitDexClassLoader added = getValidClassLoader(classLoader.moduleName());
+        if (added != null) {
+            return added;
+        }
+        classLoader.setValid(true);
+        splitDexClassLoaders.put(classLoader.moduleName(), classLoader);
+        rebuildSnapshot();
+        return classLoader;
+    }
+
+    synchronized void setClassLoaderValid(SplitDexClassLoader classLoader, boolean valid) {
+        classLoader.setValid(valid);
+        rebuildSnapshot();
     }
 
+    /**
+     * @return valid class loaders, the returned set is shared and must not be modified.
+     */
     Set<SplitDexClassLoader> getValidClassLoaders() {
-        Set<SplitDexClassLoader> validClassLoaders = new HashSet<>(splitDexClassLoaders.size());
-        for (SplitDexClassLoader classLoader : splitDexClassLoaders) {
-            if (classLoader.isValid()) {
-                validClassLoaders.add(classLoader);
-            }
-        }
-        return validClassLoaders;
+        return validSnapshot.loaders;
+    }
+
+    /**
+     * @return valid class loaders, the returned array is shared and must not be modified.
+     */
+    SplitDexClassLoader[] getValidClassLoaderArray() {
+        return validSnapshot.loaderArray;
+    }
+
+    /**
+     * @param name library name without "lib" prefix and ".so" suffix.
+     * @return valid class loader whose library search path contains the library.
+     */
+    @Nullable
+    SplitDexClassLoader getValidLibraryOwner(String name) {
+        return validSnapshot.libraryOwners.get(name);
     }
 
     @Nullable
@@ -66,8 +106,9 @@ final class SplitApplicationLoaders {
             return null;
         }
         Set<SplitDexClassLoader> loaders = new HashSet<>(moduleNames.size());
-        for (SplitDexClassLoader classLoader : splitDexClassLoaders) {
-            if (moduleNames.contains(classLoader.moduleName()) && classLoader.isValid()) {
+        for (String moduleName : moduleNames) {
+            SplitDexClassLoader classLoader = getValidClassLoader(moduleName);
+            if (classLoader != null) {
                 loaders.add(classLoader);
             }
         }
@@ -76,22 +117,45 @@ final class SplitApplicationLoaders {
 
     @Nullable
     SplitDexClassLoader getValidClassLoader(String moduleName) {
-        for (SplitDexClassLoader classLoader : splitDexClassLoaders) {
-            if (classLoader.moduleName().equals(moduleName) && classLoader.isValid()) {
-                return classLoader;
-            }
-        }
-        return null;
+        SplitDexClassLoader classLoader = splitDexClassLoaders.get(moduleName);
+        return classLoader != null && classLoader.isValid() ? classLoader : null;
     }
 
     @Nullable
     SplitDexClassLoader getClassLoader(String moduleName) {
-        for (SplitDexClassLoader classLoader : splitDexClassLoaders) {
-            if (classLoader.moduleName().equals(moduleName)) {
-                return classLoader;
+        return splitDexClassLoaders.get(moduleName);
+    }
+
+    private void rebuildSnapshot() {
+        Set<SplitDexClassLoader> validClassLoaders = new LinkedHashSet<>(splitDexClassLoaders.size());
+        for (SplitDexClassLoader classLoader : splitDexClassLoaders.values()) {
+            if (classLoader.isValid()) {
+                validClassLoaders.add(classLoader);
             }
         }
-        return null;
+        validSnapshot = new Snapshot(validClassLoaders);
     }
 
+    private static final class Snapshot {
+
+        final Set<SplitDexClassLoader> loaders;
+
+        final SplitDexClassLoader[] loaderArray;
+
+        final Map<String, SplitDexClassLoader> libraryOwners;
+
+        Snapshot(Collection<SplitDexClassLoader> validClassLoaders) {
+            this.loaders = Collections.unmodifiableSet(new LinkedHashSet<>(validClassLoaders));
+            this.loaderArray = validClassLoaders.toArray(new SplitDexClassLoader[0]);
+            Map<String, SplitDexClassLoader> libraryOwners = new HashMap<>();
+            for (SplitDexClassLoader classLoader : loaderArray) {
+                for (String libraryName : classLoader.libraryNames()) {
+                    if (!libraryOwners.containsKey(libraryName)) {
+                        libraryOwners.put(libraryName, classLoader);
+                    }
+                }
+            }
+            this.libraryOwners = libraryOwners;
+        }
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import android.content.res.AssetManager;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Records ids of split apks which are known to be added into each {@link AssetManager}, see
+ * {@link SplitLoadManager#getSplitApkId(String)}. Checking an {@link AssetManager} again then costs a map probe
+ * and a bitset check instead of reading its asset paths by reflection.
+ * {@link AssetManager} does not override {@link Object#equals(Object)}, so it is keyed by identity,
+ * and it is weakly referenced so that records of released resources are dropped with them.
+ */
+final class SplitAssetPathRecord {
+
+    private final Map<AssetManager, BitSet> assetPaths = new WeakHashMap<>();
+
+    /**
+     * @return {@code true} if all of {@code splitIds} are recorded for {@code asset}.
+     */
+    synchronized boolean containsAll(AssetManager asset, BitSet splitIds) {
+        BitSet recorded = assetPaths.get(asset);
+        if (recorded == null) {
+            return false;
+        }
+        for (int id = splitIds.nextSetBit(0); id >= 0; id = splitIds.nextSetBit(id + 1)) {
+            if (!recorded.get(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized boolean contains(AssetManager asset, int splitId) {
+        BitSet recorded = assetPaths.get(asset);
+        return recorded != null && recorded.get(splitId);
+    }
+
+    synchronized void add(AssetManager asset, int splitId) {
+        BitSet recorded = assetPaths.get(asset);
+        if (recorded == null) {
+            recorded = new BitSet();
+            assetPaths.put(asset, recorded);
+        }
+        recorded.set(splitId);
+    }
+}
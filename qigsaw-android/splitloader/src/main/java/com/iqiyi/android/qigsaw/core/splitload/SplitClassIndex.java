@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Index of classes defined in splits, generated by SplitClassIndexWriter of qigsaw gradle plugin.
+ * Class names are stored as sorted 64-bit hashes with index of owner split, so a lookup is a binary search
+ * without decoding the file. The index describes splits of the base apk build, so its result is a hint
+ * which must be verified by the owner split class loader.
+ */
+final class SplitClassIndex {
+
+    static final String FILE_NAME = SplitConstants.QIGSAW + "/" + SplitConstants.QIGSAW_PREFIX + "class_index" + SplitConstants.DOT_BIN;
+
+    private static final String TAG = "SplitClassIndex";
+
+    private static final int MAGIC = 0x51434958;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int ENTRY_SIZE = 10;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static volatile boolean sIndexRead;
+
+    private static SplitClassIndex sIndex;
+
+    private final String[] splitNames;
+
+    private final ByteBuffer entries;
+
+    private final int entryCount;
+
+    private SplitClassIndex(String[] splitNames, ByteBuffer entries, int entryCount) {
+        this.splitNames = splitNames;
+        this.entries = entries;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * @return index of base apk which is read once per process, or {@code null} if it is not available.
+     */
+    @Nullable
+    static SplitClassIndex obtain(Context context) {
+        if (!sIndexRead) {
+            synchronized (SplitClassIndex.class) {
+                if (!sIndexRead) {
+                    try {
+                        sIndex = read(context);
+                        SplitLog.i(TAG, "Class index of %d classes is read", sIndex.size());
+                    } catch (IOException e) {
+                        SplitLog.w(TAG, "Class index is not available, " + e.getMessage());
+                    }
+                    sIndexRead = true;
+                }
+            }
+        }
+        return sIndex;
+    }
+
+    static SplitClassIndex read(Context context) throws IOException {
+        InputStream is = null;
+        try {
+            is = context.getAssets().open(FILE_NAME);
+            return read(is);
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+    }
+
+    static SplitClassIndex read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown class index format");
+        }
+        int splitCount = in.readInt();
+        if (splitCount < 0) {
+            throw new IOException("Illegal split count " + splitCount);
+        }
+        String[] splitNames = new String[splitCount];
+        for (int i = 0; i < splitCount; i++) {
+            splitNames[i] = in.readUTF();
+        }
+        int entryCount = in.readInt();
+        if (entryCount < 0) {
+            throw new IOException("Illegal entry count " + entryCount);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entryCount * ENTRY_SIZE);
+        byte[] buffer = new byte[16 * 1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+        if (bytes.size() != entryCount * ENTRY_SIZE) {
+            throw new IOException("Class index is truncated, expected " + entryCount * ENTRY_SIZE + " bytes but was " + bytes.size());
+        }
+        return new SplitClassIndex(splitNames, ByteBuffer.wrap(bytes.toByteArray()), entryCount);
+    }
+
+    /**
+     * @return name of split which defines the class, or {@code null} if no split or more than one split defines it.
+     */
+    @Nullable
+    String findSplit(String className) {
+        int position = indexOf(className);
+        if (position < 0) {
+            return null;
+        }
+        int owner = entries.getShort(position * ENTRY_SIZE + 8);
+        return owner >= 0 && owner < splitNames.length ? splitNames[owner] : null;
+    }
+
+    /**
+     * @return {@code true} if one or more splits define the class.
+     */
+    boolean contains(String className) {
+        return indexOf(className) >= 0;
+    }
+
+    private int indexOf(String className) {
+        long hash = hash(className);
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = entries.getLong(mid * ENTRY_SIZE);
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    int size() {
+        return entryCount;
+    }
+
+    static long hash(String name) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
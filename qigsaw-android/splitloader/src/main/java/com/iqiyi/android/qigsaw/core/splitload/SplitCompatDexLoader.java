@@ -50,6 +50,29 @@ final class SplitCompatDexLoader {
         }
     }
 
+    /**
+     * Resolve reflection handles used by {@link #load} on current platform version, so they are cached before splits are loaded.
+     */
+    static void warmUp(ClassLoader classLoader) throws Throwable {
+        Object dexPathList = HiddenApiReflection.findField(classLoader, "pathList").get(classLoader);
+        HiddenApiReflection.findField(dexPathList, "dexElements");
+        if (Build.VERSION.SDK_INT >= 23) {
+            try {
+                HiddenApiReflection.findMethod(dexPathList, "makePathElements", List.class, File.class, List.class);
+            } catch (NoSuchMethodException e) {
+                HiddenApiReflection.findMethod(dexPathList, "makePathElements", ArrayList.class, File.class, ArrayList.class);
+            }
+        } else if (Build.VERSION.SDK_INT >= 19) {
+            try {
+                HiddenApiReflection.findMethod(dexPathList, "makeDexElements", ArrayList.class, File.class, ArrayList.class);
+            } catch (NoSuchMethodException e) {
+                HiddenApiReflection.findMethod(dexPathList, "makeDexElements", List.class, File.class, List.class);
+            }
+        } else {
+            HiddenApiReflection.findMethod(dexPathList, "makeDexElements", ArrayList.class, File.class);
+        }
+    }
+
     /**
      * Installer for platform versions 19.
      */
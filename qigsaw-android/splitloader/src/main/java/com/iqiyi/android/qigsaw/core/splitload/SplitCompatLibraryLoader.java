@@ -63,6 +63,24 @@ final class SplitCompatLibraryLoader {
         }
     }
 
+    /**
+     * Resolve reflection handles used by {@link #load} on current platform version, so they are cached before splits are loaded.
+     */
+    static void warmUp(ClassLoader classLoader) throws Throwable {
+        Object dexPathList = HiddenApiReflection.findField(classLoader, "pathList").get(classLoader);
+        HiddenApiReflection.findField(dexPathList, "nativeLibraryDirectories");
+        if (Build.VERSION.SDK_INT >= 23) {
+            HiddenApiReflection.findField(dexPathList, "systemNativeLibraryDirectories");
+            HiddenApiReflection.findField(dexPathList, "nativeLibraryPathElements");
+            if ((Build.VERSION.SDK_INT == 25 && Build.VERSION.PREVIEW_SDK_INT != 0)
+                    || Build.VERSION.SDK_INT > 25) {
+                HiddenApiReflection.findMethod(dexPathList, "makePathElements", List.class);
+            } else {
+                HiddenApiReflection.findMethod(dexPathList, "makePathElements", List.class, File.class, List.class);
+            }
+        }
+    }
+
     private static final class V14 {
         private static void load(ClassLoader classLoader, File folder) throws Throwable {
             final Field pathListField = HiddenApiReflection.findField(classLoader, "pathList");
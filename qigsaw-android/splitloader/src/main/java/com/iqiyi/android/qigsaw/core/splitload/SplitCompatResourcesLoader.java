@@ -43,13 +43,16 @@ import androidx.annotation.RequiresApi;
 import androidx.annotation.RestrictTo;
 
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 import com.iqiyi.android.qigsaw.core.splitload.compat.SplitResourcesLoader;
 
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -68,6 +71,31 @@ public class SplitCompatResourcesLoader {
     private static final String TAG = "SplitCompatResourcesLoader";
 
     private static final Object sLock = new Object();
+
+    /**
+     * Only works above Android 5.0, where split resources are added into existing {@link AssetManager},
+     * below it new {@link AssetManager} is created for every install.
+     */
+    private static final SplitAssetPathRecord sAssetPathRecord = new SplitAssetPathRecord();
+
+    static final AssetPathAccessor OS_ASSET_PATHS = new AssetPathAccessor() {
+
+        @Override
+        public List<String> getLoadedResourcesDirs(AssetManager asset) throws Throwable {
+            return SplitCompatResourcesLoader.getLoadedResourcesDirs(asset);
+        }
+
+        @Override
+        public void installSplitResDirs(Context context, Resources resources, List<String> splitResPaths) throws Throwable {
+            SplitCompatResourcesLoader.installSplitResDirs(context, resources, splitResPaths);
+        }
+
+        @Override
+        public boolean addsIntoExistingAssets() {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+        }
+    };
+
     @NonNull
     private static final SplitResourcesLoader resourcesLoader;
 
@@ -87,15 +115,64 @@ public class SplitCompatResourcesLoader {
         resourcesLoader.loadResources(context, preResources, splitApkPath);
     }
 
+    /**
+     * Load resources of several split apks at once, so loaded resources are read and updated once for all of them.
+     * Customized {@link SplitResourcesLoader} loads them one by one.
+     */
+    static void loadResources(Context context, Resources preResources, List<String> splitApkPaths) throws Throwable {
+        if (resourcesLoader instanceof DefaultSplitResourcesLoader) {
+            ((DefaultSplitResourcesLoader) resourcesLoader).loadResources(context, preResources, splitApkPaths);
+        } else {
+            for (String splitApkPath : splitApkPaths) {
+                resourcesLoader.loadResources(context, preResources, splitApkPath);
+            }
+        }
+    }
+
+    /**
+     * Resolve reflection handles used to install split resources on current platform version, so they are cached
+     * before splits are loaded. Handles which must be resolved on main thread below Android 5.0 are skipped.
+     */
+    static void warmUp() throws Throwable {
+        VersionCompat.getAddAssetPathMethod();
+        if (Build.VERSION.SDK_INT >= 28) {
+            VersionCompat.getGetApkAssetsMethod();
+            VersionCompat.getGetAssetPathMethod();
+        } else {
+            VersionCompat.mStringBlocksInAssetManager();
+            VersionCompat.getGetCookieNameMethod();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            VersionCompat.mResourcesInContextThemeWrapper();
+            VersionCompat.mThemeInContextThemeWrapper();
+        }
+    }
+
     private static void checkOrUpdateResources(Context context, Resources resources) throws SplitCompatResourcesException {
+        checkOrUpdateResources(context, resources, SplitLoadManagerService.getInstance(), sAssetPathRecord, OS_ASSET_PATHS);
+    }
+
+    static void checkOrUpdateResources(Context context,
+                                       Resources resources,
+                                       SplitLoadManager loadManager,
+                                       SplitAssetPathRecord assetPathRecord,
+                                       AssetPathAccessor accessor) throws SplitCompatResourcesException {
+        BitSet loadedSplitIds = loadManager.getLoadedSplitIds();
+        if (loadedSplitIds.isEmpty()) {
+            return;
+        }
+        AssetManager asset = resources.getAssets();
+        if (assetPathRecord.containsAll(asset, loadedSplitIds)) {
+            return;
+        }
         List<String> loadedResDirsInAsset;
         try {
-            loadedResDirsInAsset = getLoadedResourcesDirs(resources.getAssets());
+            loadedResDirsInAsset = accessor.getLoadedResourcesDirs(asset);
         } catch (Throwable e) {
             throw new SplitCompatResourcesException("Failed to get all loaded split resources for " + context.getClass().getName(), e);
         }
-        Collection<String> loadedSplitPaths = getLoadedSplitPaths();
-        if (loadedSplitPaths != null && !loadedSplitPaths.isEmpty()) {
+        Collection<String> loadedSplitPaths = loadManager.getLoadedSplitApkPaths();
+        if (!loadedSplitPaths.isEmpty()) {
             if (!loadedResDirsInAsset.containsAll(loadedSplitPaths)) {
                 List<String> unloadedSplitPaths = new ArrayList<>();
                 for (String splitPath : loadedSplitPaths) {
@@ -103,21 +180,72 @@ public class SplitCompatResourcesLoader {
                         unloadedSplitPaths.add(splitPath);
                     }
                 }
+                long span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "installResDirs");
+                SplitTrace.attr(span, "count", unloadedSplitPaths.size());
                 try {
-                    installSplitResDirs(context, resources, unloadedSplitPaths);
+                    accessor.installSplitResDirs(context, resources, unloadedSplitPaths);
                 } catch (Throwable e) {
                     throw new SplitCompatResourcesException("Failed to install resources " + unloadedSplitPaths.toString() + " for " + context.getClass().getName(), e);
+                } finally {
+                    SplitTrace.end(span);
+                }
+            }
+            if (accessor.addsIntoExistingAssets()) {
+                for (String splitPath : loadedSplitPaths) {
+                    assetPathRecord.add(asset, loadManager.getSplitApkId(splitPath));
                 }
             }
         }
     }
 
-    private static Collection<String> getLoadedSplitPaths() {
-        SplitLoadManager loadManager = SplitLoadManagerService.getInstance();
-        if (loadManager != null) {
-            return loadManager.getLoadedSplitApkPaths();
+    /**
+     * Load resources of {@code splitApkPaths} into {@code preResources}, asset paths are only read if some of them
+     * are not recorded for its {@link AssetManager} yet.
+     */
+    static void loadResources(Context context,
+                              Resources preResources,
+                              List<String> splitApkPaths,
+                              SplitLoadManager loadManager,
+                              SplitAssetPathRecord assetPathRecord,
+                              AssetPathAccessor accessor) throws Throwable {
+        AssetManager asset = preResources.getAssets();
+        List<String> uncheckedPaths = new ArrayList<>(splitApkPaths.size());
+        for (String splitApkPath : splitApkPaths) {
+            if (!assetPathRecord.contains(asset, loadManager.getSplitApkId(splitApkPath))) {
+                uncheckedPaths.add(splitApkPath);
+            }
+        }
+        if (uncheckedPaths.isEmpty()) {
+            return;
+        }
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "getLoadedResDirs");
+        List<String> loadedResDirs;
+        try {
+            loadedResDirs = accessor.getLoadedResourcesDirs(asset);
+        } finally {
+            SplitTrace.end(span);
+        }
+        List<String> unloadedPaths = new ArrayList<>(uncheckedPaths.size());
+        for (String splitApkPath : uncheckedPaths) {
+            if (!loadedResDirs.contains(splitApkPath)) {
+                unloadedPaths.add(splitApkPath);
+            }
+        }
+        if (!unloadedPaths.isEmpty()) {
+            span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "installResDirs");
+            SplitTrace.attr(span, "count", unloadedPaths.size());
+            try {
+                accessor.installSplitResDirs(context, preResources, unloadedPaths);
+            } finally {
+                SplitTrace.end(span);
+            }
+            SplitLog.d(TAG, "Install split %s resources for application.", unloadedPaths);
+        }
+        if (accessor.addsIntoExistingAssets()) {
+            for (String splitApkPath : uncheckedPaths) {
+                assetPathRecord.add(asset, loadManager.getSplitApkId(splitApkPath));
+            }
         }
-        return null;
     }
 
     private static void installSplitResDirs(final Context context, final Resources resources, final List<String> splitResPaths) throws Throwable {
@@ -182,13 +310,43 @@ public class SplitCompatResourcesLoader {
         return existedAppResDirList;
     }
 
+    /**
+     * Add split apks into {@code asset}. Since android 9.0 every addAssetPath rebuilds native asset manager,
+     * so several paths are loaded as apk assets and set at once, they are added one by one only if that fails.
+     *
+     * @param apkAssetsClassName class of apk assets since android 9.0, {@code null} below it.
+     */
+    static void addAssetPaths(Object asset, List<String> splitResPaths, String apkAssetsClassName) throws Throwable {
+        if (apkAssetsClassName != null && splitResPaths.size() > 1) {
+            try {
+                setApkAssets(asset, splitResPaths, Class.forName(apkAssetsClassName));
+                return;
+            } catch (Throwable e) {
+                SplitLog.w(TAG, "Failed to add %d split resources at once, add them one by one. %s", splitResPaths.size(), e);
+            }
+        }
+        Method method = HiddenApiReflection.findMethod(asset, "addAssetPath", String.class);
+        for (String splitResPath : splitResPaths) {
+            method.invoke(asset, splitResPath);
+        }
+    }
+
+    private static void setApkAssets(Object asset, List<String> splitResPaths, Class<?> apkAssetsClass) throws Throwable {
+        Object[] apkAssets = (Object[]) HiddenApiReflection.findMethod(asset, "getApkAssets").invoke(asset);
+        Object[] newApkAssets = (Object[]) Array.newInstance(apkAssetsClass, apkAssets.length + splitResPaths.size());
+        System.arraycopy(apkAssets, 0, newApkAssets, 0, apkAssets.length);
+        Method loadFromPath = HiddenApiReflection.findMethod(apkAssetsClass, "loadFromPath", String.class);
+        for (int i = 0; i < splitResPaths.size(); i++) {
+            newApkAssets[apkAssets.length + i] = loadFromPath.invoke(null, splitResPaths.get(i));
+        }
+        HiddenApiReflection.findMethod(asset, "setApkAssets", newApkAssets.getClass(), boolean.class).invoke(asset, newApkAssets, true);
+    }
+
     private static class V21 extends VersionCompat {
 
         private static void installSplitResDirs(Resources preResources, List<String> splitResPaths) throws Throwable {
-            Method method = VersionCompat.getAddAssetPathMethod();
-            for (String splitResPath : splitResPaths) {
-                method.invoke(preResources.getAssets(), splitResPath);
-            }
+            addAssetPaths(preResources.getAssets(), splitResPaths,
+                    Build.VERSION.SDK_INT >= 28 ? "android.content.res.ApkAssets" : null);
         }
     }
 
@@ -363,47 +521,47 @@ public class SplitCompatResourcesLoader {
 
     private static abstract class VersionCompat {
 
-        private static Field mStringBlocksField;
+        private static volatile Field mStringBlocksField;
 
-        private static Method addAssetPathMethod;
+        private static volatile Method addAssetPathMethod;
 
-        private static Method getCookieNameMethod;
+        private static volatile Method getCookieNameMethod;
 
-        private static Method getAssetPathMethod;
+        private static volatile Method getAssetPathMethod;
 
-        private static Method getApkAssetsMethod;
+        private static volatile Method getApkAssetsMethod;
 
-        private static Field mActivitiesInActivityThread;
+        private static volatile Field mActivitiesInActivityThread;
 
-        private static Object activityThread;
+        private static volatile Object activityThread;
 
-        private static Class<?> activityThreadClass;
+        private static volatile Class<?> activityThreadClass;
 
-        private static Class<?> contextImplClass;
+        private static volatile Class<?> contextImplClass;
 
-        private static Field mResourcesInContextImpl;
+        private static volatile Field mResourcesInContextImpl;
 
-        private static Field mThemeInContentImpl;
+        private static volatile Field mThemeInContentImpl;
 
-        private static Field mPackagesInActivityThread;
+        private static volatile Field mPackagesInActivityThread;
 
-        private static Field mResourcePackagesInActivityThread;
+        private static volatile Field mResourcePackagesInActivityThread;
 
-        private static Field mActiveResourcesInActivityThread;
+        private static volatile Field mActiveResourcesInActivityThread;
 
-        private static Field mActiveResourcesInResourcesManager;
+        private static volatile Field mActiveResourcesInResourcesManager;
 
-        private static Class<?> resourcesManagerClass;
+        private static volatile Class<?> resourcesManagerClass;
 
-        private static Object resourcesManager;
+        private static volatile Object resourcesManager;
 
-        private static Field mResourcesInContextThemeWrapper;
+        private static volatile Field mResourcesInContextThemeWrapper;
 
-        private static Field mThemeInContextThemeWrapper;
+        private static volatile Field mThemeInContextThemeWrapper;
 
-        private static Class<?> loadedApkClass;
+        private static volatile Class<?> loadedApkClass;
 
-        private static Field mResourcesInLoadedApk;
+        private static volatile Field mResourcesInLoadedApk;
 
         @SuppressLint("PrivateApi")
         static Object getActivityThread() throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
@@ -572,12 +730,29 @@ public class SplitCompatResourcesLoader {
 
         @Override
         public void loadResources(@NonNull Context context, @NonNull Resources preResources, @NonNull String splitApkPath) throws Throwable {
-            List<String> loadedResDirs = getLoadedResourcesDirs(preResources.getAssets());
-            if (!loadedResDirs.contains(splitApkPath)) {
-                installSplitResDirs(context, preResources, Collections.singletonList(splitApkPath));
-                SplitLog.d(TAG, "Install split %s resources for application.", splitApkPath);
-            }
+            loadResources(context, preResources, Collections.singletonList(splitApkPath));
         }
+
+        void loadResources(Context context, Resources preResources, List<String> splitApkPaths) throws Throwable {
+            SplitCompatResourcesLoader.loadResources(context, preResources, splitApkPaths,
+                    SplitLoadManagerService.getInstance(), sAssetPathRecord, OS_ASSET_PATHS);
+        }
+    }
+
+    /**
+     * Reads and adds asset paths of {@link AssetManager}, both by reflection.
+     */
+    interface AssetPathAccessor {
+
+        List<String> getLoadedResourcesDirs(AssetManager asset) throws Throwable;
+
+        void installSplitResDirs(Context context, Resources resources, List<String> splitResPaths) throws Throwable;
+
+        /**
+         * @return {@code true} if split resources are added into the existing {@link AssetManager}, so its asset
+         * paths could be recorded. Below Android 5.0 a new one is created instead.
+         */
+        boolean addsIntoExistingAssets();
     }
 
     @NonNull
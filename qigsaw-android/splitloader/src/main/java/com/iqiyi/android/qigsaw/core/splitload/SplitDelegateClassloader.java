@@ -31,7 +31,6 @@ import androidx.annotation.Keep;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Enumeration;
-import java.util.Set;
 
 import dalvik.system.BaseDexClassLoader;
 import dalvik.system.PathClassLoader;
@@ -102,8 +101,11 @@ final class SplitDelegateClassloader extends PathClassLoader {
     protected URL findResource(String name) {
         URL resource = super.findResource(name);
         if (resource == null) {
-            Set<SplitDexClassLoader> splitDexClassLoaders = SplitApplicationLoaders.getInstance().getValidClassLoaders();
+            SplitDexClassLoader[] splitDexClassLoaders = SplitApplicationLoaders.getInstance().getValidClassLoaderArray();
             for (SplitDexClassLoader loader : splitDexClassLoaders) {
+                if (!loader.mayContainResource(name)) {
+                    continue;
+                }
                 resource = loader.findResourceItself(name);
                 if (resource != null) {
                     break;
@@ -117,8 +119,11 @@ final class SplitDelegateClassloader extends PathClassLoader {
     protected Enumeration<URL> findResources(String name) {
         Enumeration<URL> resources = super.findResources(name);
         if (resources == null) {
-            Set<SplitDexClassLoader> splitDexClassLoaders = SplitApplicationLoaders.getInstance().getValidClassLoaders();
+            SplitDexClassLoader[] splitDexClassLoaders = SplitApplicationLoaders.getInstance().getValidClassLoaderArray();
             for (SplitDexClassLoader loader : splitDexClassLoaders) {
+                if (!loader.mayContainResource(name)) {
+                    continue;
+                }
                 resources = loader.findResourcesItself(name);
                 if (resources != null) {
                     break;
@@ -137,12 +142,9 @@ final class SplitDelegateClassloader extends PathClassLoader {
     public String findLibrary(String name) {
         String libName = originClassLoader.findLibrary(name);
         if (libName == null) {
-            Set<SplitDexClassLoader> splitDexClassLoaders = SplitApplicationLoaders.getInstance().getValidClassLoaders();
-            for (SplitDexClassLoader classLoader : splitDexClassLoaders) {
+            SplitDexClassLoader classLoader = SplitApplicationLoaders.getInstance().getValidLibraryOwner(name);
+            if (classLoader != null) {
                 libName = classLoader.findLibraryItself(name);
-                if (libName != null) {
-                    break;
-                }
             }
         }
         return libName;
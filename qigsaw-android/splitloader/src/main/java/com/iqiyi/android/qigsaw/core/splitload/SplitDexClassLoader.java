@@ -27,14 +27,26 @@ package com.iqiyi.android.qigsaw.core.splitload;
 import android.text.TextUtils;
 
 import androidx.annotation.Keep;
+import androidx.annotation.Nullable;
 
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 import dalvik.system.BaseDexClassLoader;
 
@@ -43,21 +55,73 @@ final class SplitDexClassLoader extends BaseDexClassLoader {
 
     private static final String TAG = "SplitDexClassLoader";
 
+    /**
+     * Marks that entry names of split could not be read, so every resource is looked up in it.
+     */
+    private static final int[] RESOURCE_INDEX_UNAVAILABLE = new int[0];
+
+    private static final int MAX_ABSENT_CLASSES = 256;
+
     private final String moduleName;
 
-    private boolean valid;
+    private final List<String> dexPaths;
+
+    private final Set<String> libraryNames;
+
+    /**
+     * Sorted hash codes of entry names in zip files of split, read on first resource lookup.
+     */
+    private volatile int[] resourceNameHashes;
+
+    private volatile boolean valid;
 
     private Set<SplitDexClassLoader> dependenciesLoaders;
 
+    private final SplitClassIndex classIndex;
+
+    private final DexClassFinder dexClasses;
+
+    /**
+     * Names of classes which are not defined by any dependency, dependencies never change so it is never invalidated.
+     */
+    private final Map<String, Boolean> absentInDependencies = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_ABSENT_CLASSES;
+        }
+    };
+
+    /**
+     * Finds classes defined by dex files of a split class loader.
+     */
+    interface DexClassFinder {
+
+        Class<?> findClass(SplitDexClassLoader loader, String name) throws ClassNotFoundException;
+    }
+
+    static final DexClassFinder OS_DEX_CLASSES = new DexClassFinder() {
+        @Override
+        public Class<?> findClass(SplitDexClassLoader loader, String name) throws ClassNotFoundException {
+            return loader.findDexClass(name);
+        }
+    };
+
     private SplitDexClassLoader(String moduleName,
                                 List<String> dexPaths,
                                 File optimizedDirectory,
                                 String librarySearchPath,
                                 List<String> dependencies,
+                                Collection<SplitDexClassLoader> preparedDependencies,
+                                SplitClassIndex classIndex,
+                                DexClassFinder dexClasses,
                                 ClassLoader parent) throws Throwable {
         super((dexPaths == null) ? "" : TextUtils.join(File.pathSeparator, dexPaths), optimizedDirectory, librarySearchPath, parent);
         this.moduleName = moduleName;
-        this.dependenciesLoaders = SplitApplicationLoaders.getInstance().getValidClassLoaders(dependencies);
+        this.dexPaths = dexPaths == null ? Collections.<String>emptyList() : dexPaths;
+        this.libraryNames = readLibraryNames(librarySearchPath);
+        this.dependenciesLoaders = resolveDependencies(dependencies, preparedDependencies);
+        this.classIndex = classIndex;
+        this.dexClasses = dexClasses;
         SplitUnKnownFileTypeDexLoader.loadDex(this, dexPaths, optimizedDirectory);
     }
 
@@ -65,7 +129,21 @@ final class SplitDexClassLoader extends BaseDexClassLoader {
                                       List<String> dexPaths,
                                       File optimizedDirectory,
                                       File librarySearchFile,
-                                      List<String> dependencies) throws Throwable {
+                                      List<String> dependencies,
+                                      @Nullable Collection<SplitDexClassLoader> preparedDependencies,
+                                      @Nullable SplitClassIndex classIndex) throws Throwable {
+        return create(moduleName, dexPaths, optimizedDirectory, librarySearchFile, dependencies, preparedDependencies,
+                classIndex, OS_DEX_CLASSES);
+    }
+
+    static SplitDexClassLoader create(String moduleName,
+                                      List<String> dexPaths,
+                                      File optimizedDirectory,
+                                      File librarySearchFile,
+                                      List<String> dependencies,
+                                      @Nullable Collection<SplitDexClassLoader> preparedDependencies,
+                                      @Nullable SplitClassIndex classIndex,
+                                      DexClassFinder dexClasses) throws Throwable {
         long time = System.currentTimeMillis();
         SplitDexClassLoader cl = new SplitDexClassLoader(
                 moduleName,
@@ -73,30 +151,132 @@ final class SplitDexClassLoader extends BaseDexClassLoader {
                 optimizedDirectory,
                 librarySearchFile == null ? null : librarySearchFile.getAbsolutePath(),
                 dependencies,
+                preparedDependencies,
+                classIndex,
+                dexClasses,
                 SplitDexClassLoader.class.getClassLoader()
         );
         SplitLog.d(TAG, "Cost %d ms to load %s code", System.currentTimeMillis() - time, moduleName);
         return cl;
     }
 
+    /**
+     * Dependencies loaded by former tasks are published, dependencies loaded in the same task are not published
+     * until their applications are created, so they are passed in directly.
+     */
+    @Nullable
+    private static Set<SplitDexClassLoader> resolveDependencies(@Nullable List<String> dependencies,
+                                                                @Nullable Collection<SplitDexClassLoader> preparedDependencies) {
+        Set<SplitDexClassLoader> loaders = SplitApplicationLoaders.getInstance().getValidClassLoaders(dependencies);
+        if (loaders == null || preparedDependencies == null) {
+            return loaders;
+        }
+        Set<String> resolved = new HashSet<>(loaders.size());
+        for (SplitDexClassLoader loader : loaders) {
+            resolved.add(loader.moduleName());
+        }
+        for (SplitDexClassLoader loader : preparedDependencies) {
+            if (dependencies.contains(loader.moduleName()) && resolved.add(loader.moduleName())) {
+                loaders.add(loader);
+            }
+        }
+        return loaders;
+    }
+
+    /**
+     * A class which {@link SplitClassIndex} records in another split is looked up in that dependency first,
+     * so dex files of this split are not asked for it and no exception is thrown unless it is not found at all.
+     */
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> cl = findLoadedClass(name);
+        if (cl != null) {
+            return cl;
+        }
+        String owner = classIndex == null ? null : classIndex.findSplit(name);
+        if (owner != null && !owner.equals(moduleName)) {
+            cl = findClassInDependencies(name, owner);
+            if (cl != null) {
+                return cl;
+            }
+            return dexClasses.findClass(this, name);
+        }
         try {
-            return super.findClass(name);
+            return dexClasses.findClass(this, name);
         } catch (ClassNotFoundException e1) {
-            if (dependenciesLoaders != null) {
-                for (SplitDexClassLoader loader : dependenciesLoaders) {
-                    try {
-                        return loader.loadClassItself(name);
-                    } catch (ClassNotFoundException e2) {
-                        SplitLog.w(TAG, "SplitDexClassLoader: Class %s is not found in %s ClassLoader", name, loader.moduleName());
-                    }
-                }
+            cl = findClassInDependencies(name, owner);
+            if (cl != null) {
+                return cl;
             }
             throw e1;
         }
     }
 
+    /**
+     * Find class in dependencies, classes already defined by one of them are returned first. With
+     * {@link SplitClassIndex} only the dependency which owns the class is asked, and a class which is not indexed
+     * is not asked at all. Otherwise dependencies with dex files are asked, which throws on every miss, so names
+     * which none of them defines are remembered.
+     *
+     * @param owner split which owns the class in {@link SplitClassIndex}.
+     */
+    @Nullable
+    private Class<?> findClassInDependencies(String name, @Nullable String owner) {
+        if (dependenciesLoaders == null || dependenciesLoaders.isEmpty()) {
+            return null;
+        }
+        for (SplitDexClassLoader loader : dependenciesLoaders) {
+            Class<?> cl = loader.findLoadedClass(name);
+            if (cl != null) {
+                return cl;
+            }
+        }
+        if (classIndex != null) {
+            if (owner != null) {
+                SplitDexClassLoader ownerLoader = findDependency(owner);
+                return ownerLoader == null ? null : ownerLoader.findClassIfPresent(name);
+            }
+            if (!classIndex.contains(name)) {
+                return null;
+            }
+        }
+        if (isAbsentInDependencies(name)) {
+            return null;
+        }
+        for (SplitDexClassLoader loader : dependenciesLoaders) {
+            if (loader.hasDexFiles()) {
+                Class<?> cl = loader.findClassIfPresent(name);
+                if (cl != null) {
+                    return cl;
+                }
+            }
+        }
+        markAbsentInDependencies(name);
+        return null;
+    }
+
+    @Nullable
+    private SplitDexClassLoader findDependency(String moduleName) {
+        for (SplitDexClassLoader loader : dependenciesLoaders) {
+            if (moduleName.equals(loader.moduleName())) {
+                return loader.hasDexFiles() ? loader : null;
+            }
+        }
+        return null;
+    }
+
+    private boolean isAbsentInDependencies(String name) {
+        synchronized (absentInDependencies) {
+            return absentInDependencies.get(name) != null;
+        }
+    }
+
+    private void markAbsentInDependencies(String name) {
+        synchronized (absentInDependencies) {
+            absentInDependencies.put(name, Boolean.TRUE);
+        }
+    }
+
     void setValid(boolean valid) {
         this.valid = valid;
     }
@@ -109,6 +289,75 @@ final class SplitDexClassLoader extends BaseDexClassLoader {
         return moduleName;
     }
 
+    boolean hasDexFiles() {
+        return !dexPaths.isEmpty();
+    }
+
+    /**
+     * @return names of libraries in library search path of split, without "lib" prefix and ".so" suffix.
+     */
+    Set<String> libraryNames() {
+        return libraryNames;
+    }
+
+    /**
+     * @return {@code false} if zip files of split have no entry named {@code name}, otherwise it may be found
+     * by {@link #findResourceItself(String)}.
+     */
+    boolean mayContainResource(String name) {
+        int[] hashes = resourceNameHashes;
+        if (hashes == null) {
+            hashes = readResourceNameHashes();
+            resourceNameHashes = hashes;
+        }
+        return hashes == RESOURCE_INDEX_UNAVAILABLE || Arrays.binarySearch(hashes, name.hashCode()) >= 0;
+    }
+
+    private int[] readResourceNameHashes() {
+        int[] hashes = new int[64];
+        int count = 0;
+        for (String dexPath : dexPaths) {
+            ZipFile zipFile = null;
+            try {
+                zipFile = new ZipFile(dexPath);
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    if (count == hashes.length) {
+                        hashes = Arrays.copyOf(hashes, count * 2);
+                    }
+                    hashes[count++] = entries.nextElement().getName().hashCode();
+                }
+            } catch (ZipException e) {
+                //not a zip file, such as a dex file, which has no resources.
+            } catch (IOException e) {
+                SplitLog.w(TAG, "Failed to read entries of %s, resources of split %s are not indexed", dexPath, moduleName);
+                return RESOURCE_INDEX_UNAVAILABLE;
+            } finally {
+                FileUtil.closeQuietly(zipFile);
+            }
+        }
+        hashes = Arrays.copyOf(hashes, count);
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    private static Set<String> readLibraryNames(String librarySearchPath) {
+        if (librarySearchPath == null) {
+            return Collections.emptySet();
+        }
+        String[] fileNames = new File(librarySearchPath).list();
+        if (fileNames == null) {
+            return Collections.emptySet();
+        }
+        Set<String> libraryNames = new HashSet<>(fileNames.length);
+        for (String fileName : fileNames) {
+            if (fileName.startsWith("lib") && fileName.endsWith(".so")) {
+                libraryNames.add(fileName.substring(3, fileName.length() - 3));
+            }
+        }
+        return libraryNames;
+    }
+
     @Override
     public String findLibrary(String name) {
         String libName = super.findLibrary(name);
@@ -174,11 +423,24 @@ final class SplitDexClassLoader extends BaseDexClassLoader {
         return super.findLibrary(name);
     }
 
+    @Nullable
+    private Class<?> findClassIfPresent(String name) {
+        try {
+            return loadClassItself(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
     Class<?> loadClassItself(String name) throws ClassNotFoundException {
         Class<?> cl = findLoadedClass(name);
         if (cl != null) {
             return cl;
         }
+        return dexClasses.findClass(this, name);
+    }
+
+    private Class<?> findDexClass(String name) throws ClassNotFoundException {
         return super.findClass(name);
     }
 
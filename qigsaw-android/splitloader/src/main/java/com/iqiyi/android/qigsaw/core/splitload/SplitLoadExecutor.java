@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import android.annotation.SuppressLint;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class SplitLoadExecutor {
+
+    private static final int MAX_WORKER_COUNT = 4;
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30L;
+
+    private static volatile Executor sWorkerExecutor;
+
+    /**
+     * Executor to prepare splits of one load task concurrently, it is idle if there is no loading.
+     */
+    static Executor getWorkerExecutor() {
+        if (sWorkerExecutor == null) {
+            synchronized (SplitLoadExecutor.class) {
+                if (sWorkerExecutor == null) {
+                    int workerCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_WORKER_COUNT));
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(workerCount, workerCount,
+                            WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new SplitLoadWorkerThread());
+                    executor.allowCoreThreadTimeOut(true);
+                    sWorkerExecutor = executor;
+                }
+            }
+        }
+        return sWorkerExecutor;
+    }
+
+    private static final class SplitLoadWorkerThread implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @SuppressLint("NewThreadDirectly")
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            return new Thread(r, "split_load_worker_" + count.incrementAndGet());
+        }
+    }
+}
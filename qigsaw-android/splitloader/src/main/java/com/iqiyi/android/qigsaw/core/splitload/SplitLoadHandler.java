@@ -22,6 +22,7 @@
  * SOFTWARE.
  */
 
+
 package com.iqiyi.android.qigsaw.core.splitload;
 
 import android.app.Application;
@@ -29,28 +30,44 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 import com.iqiyi.android.qigsaw.core.splitload.compat.NativePathMapper;
 import com.iqiyi.android.qigsaw.core.splitload.compat.NativePathMapperImpl;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitBriefInfo;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitLoadError;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitPhase;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitTraceReporter;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitTraceReporterManager;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitAccessLog;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManagerService;
-import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
+/**
+ * Loading splits is divided into two phases. Prepare phase checks split files, creates class loaders and
+ * prewarms application classes, it could run off the main thread. Commit phase loads resources, creates, attaches
+ * and invokes onCreate for split applications and installs content-providers, it must run on the main thread.
+ * A class loader is published to other splits only after its split application is created in commit phase.
+ */
 final class SplitLoadHandler {
 
     private static final String TAG = "SplitLoadHandler";
@@ -72,13 +89,23 @@ final class SplitLoadHandler {
     SplitLoadHandler(@NonNull SplitLoaderWrapper splitLoader,
                      @NonNull SplitLoadManager loadManager,
                      @NonNull List<Intent> splitFileIntents) {
+        this(splitLoader, loadManager, splitFileIntents, SplitInfoManagerService.getInstance(),
+                new SplitActivator(loadManager.getContext()), new NativePathMapperImpl(loadManager.getContext()));
+    }
+
+    SplitLoadHandler(@NonNull SplitLoaderWrapper splitLoader,
+                     @NonNull SplitLoadManager loadManager,
+                     @NonNull List<Intent> splitFileIntents,
+                     SplitInfoManager infoManager,
+                     @NonNull SplitActivator activator,
+                     @NonNull NativePathMapper mapper) {
         this.splitLoader = splitLoader;
         this.loadManager = loadManager;
         this.splitFileIntents = splitFileIntents;
         this.mainHandler = new Handler(Looper.getMainLooper());
-        this.infoManager = SplitInfoManagerService.getInstance();
-        this.activator = new SplitActivator(loadManager.getContext());
-        this.mapper = new NativePathMapperImpl(loadManager.getContext());
+        this.infoManager = infoManager;
+        this.activator = activator;
+        this.mapper = mapper;
     }
 
     Handler getMainHandler() {
@@ -87,130 +114,413 @@ final class SplitLoadHandler {
 
     @MainThread
     final void loadSplitsSync(final OnSplitLoadFinishListener loadFinishListener) {
-        loadSplits(loadFinishListener);
+        long totalLoadStart = System.currentTimeMillis();
+        commitSplits(prepareSplits(true, null), totalLoadStart, loadFinishListener);
     }
 
-    private void loadSplits(final OnSplitLoadFinishListener loadFinishListener) {
-        long totalLoadStart = System.currentTimeMillis();
-        Set<Split> loadedSpits = new HashSet<>();
-        List<SplitLoadError> loadErrorInfos = new ArrayList<>(0);
-        List<SplitBriefInfo> loadOKInfos = new ArrayList<>(splitFileIntents.size());
+    /**
+     * @param loadCode whether code of splits is loaded in this phase, otherwise it is loaded in commit phase.
+     * @param executor executor to load code of splits concurrently, a split is not started until its dependencies
+     *                 in this task are handled. If null splits are prepared serially on the calling thread.
+     */
+    List<PreparedSplit> prepareSplits(boolean loadCode, @Nullable Executor executor) {
+        List<PreparedSplit> preparedSplits = new ArrayList<>(splitFileIntents.size());
+        List<PreparedSplit> checkedSplits = new ArrayList<>(splitFileIntents.size());
         for (Intent splitFileIntent : splitFileIntents) {
-            long loadStart = System.currentTimeMillis();
-            final String splitName = splitFileIntent.getStringExtra(SplitConstants.KET_NAME);
-            SplitInfo info = infoManager.getSplitInfo(getContext(), splitName);
-            if (info == null) {
-                SplitLog.w(TAG, "Unable to get info for %s, just skip!", splitName == null ? "null" : splitName);
-                continue;
+            long traceMark = SplitTrace.mark();
+            long span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "checkFiles", splitFileIntent.getStringExtra(SplitConstants.KET_NAME));
+            PreparedSplit split = checkSplitFiles(splitFileIntent);
+            SplitTrace.end(span);
+            if (split != null) {
+                split.traceMark = traceMark;
+                preparedSplits.add(split);
+                if (split.error == null) {
+                    checkedSplits.add(split);
+                }
             }
-            SplitBriefInfo splitBriefInfo = new SplitBriefInfo(info.getSplitName(), info.getSplitVersion(), info.isBuiltIn());
-            //if if split has been loaded, just skip.
-            if (checkSplitLoaded(splitName)) {
-                SplitLog.i(TAG, "Split %s has been loaded!", splitName);
-                continue;
+        }
+        if (loadCode) {
+            Map<String, PreparedSplit> batch = toBatch(checkedSplits);
+            if (executor == null || checkedSplits.size() < 2 || !loadSplitCodeConcurrently(checkedSplits, batch, executor)) {
+                for (PreparedSplit split : checkedSplits) {
+                    loadSplitCode(split, batch);
+                }
             }
-            String splitApkPath = splitFileIntent.getStringExtra(SplitConstants.KEY_APK);
-            if (splitApkPath == null) {
-                SplitLog.w(TAG, "Failed to read split %s apk path", splitName);
-                loadErrorInfos.add(new SplitLoadError(splitBriefInfo, SplitLoadError.INTERNAL_ERROR, new Exception("split apk path " + splitName + " is missing!")));
+        }
+        return preparedSplits;
+    }
+
+    @MainThread
+    void commitSplits(List<PreparedSplit> preparedSplits, long totalLoadStart, final OnSplitLoadFinishListener loadFinishListener) {
+        Set<Split> loadedSpits = new HashSet<>();
+        List<SplitLoadError> loadErrorInfos = new ArrayList<>(0);
+        List<SplitBriefInfo> loadOKInfos = new ArrayList<>(preparedSplits.size());
+        List<SplitInfo> loadedSplitInfos = new ArrayList<>(preparedSplits.size());
+        List<PreparedSplit> committingSplits = new ArrayList<>(preparedSplits.size());
+        Map<String, PreparedSplit> batch = toBatch(preparedSplits);
+        for (PreparedSplit split : preparedSplits) {
+            //split may be loaded by another task while this task is preparing.
+            if (split.error == null && checkSplitLoaded(split.splitName)) {
+                SplitLog.i(TAG, "Split %s has been loaded!", split.splitName);
                 continue;
             }
-            String dexOptPath = splitFileIntent.getStringExtra(SplitConstants.KEY_DEX_OPT_DIR);
-            //check opt-path for split.
-            if (info.hasDex() && dexOptPath == null) {
-                SplitLog.w(TAG, "Failed to %s get dex-opt-dir", splitName);
-                loadErrorInfos.add(new SplitLoadError(splitBriefInfo, SplitLoadError.INTERNAL_ERROR, new Exception("dex-opt-dir of " + splitName + " is missing!")));
-                continue;
+            if (split.error == null && split.classLoader == null) {
+                loadSplitCode(split, batch);
             }
-            //check native library path for split.
-            String nativeLibPath = splitFileIntent.getStringExtra(SplitConstants.KEY_NATIVE_LIB_DIR);
-            try {
-                SplitInfo.LibData libData = info.getPrimaryLibData(getContext());
-                if (libData != null && nativeLibPath == null) {
-                    SplitLog.w(TAG, "Failed to get %s native-lib-dir", splitName);
-                    loadErrorInfos.add(new SplitLoadError(splitBriefInfo, SplitLoadError.INTERNAL_ERROR, new Exception("native-lib-dir of " + splitName + " is missing!")));
-                    continue;
-                }
-            } catch (IOException e) {
-                loadErrorInfos.add(new SplitLoadError(splitBriefInfo, SplitLoadError.INTERNAL_ERROR, e));
+            if (split.error != null) {
+                loadErrorInfos.add(split.error);
                 continue;
             }
-            //load split's dex files
-            List<String> addedDexPaths = splitFileIntent.getStringArrayListExtra(SplitConstants.KEY_ADDED_DEX);
-            ClassLoader classLoader;
-
-            // check if need compat native lib path on android 5.x
-            SplitLog.d(TAG, "split name: %s, origin native path: %s", splitName, nativeLibPath);
-            nativeLibPath = mapper.map(splitName, nativeLibPath);
-            SplitLog.d(TAG, "split name: %s, mapped native path: %s", splitName, nativeLibPath);
-
+            committingSplits.add(split);
+        }
+        //resources are injected after applications are created, so a split failing here leaves no asset path behind.
+        List<PreparedSplit> createdSplits = new ArrayList<>(committingSplits.size());
+        for (PreparedSplit split : committingSplits) {
+            long createStart = System.currentTimeMillis();
+            long createSpan = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "createApplication", split.splitName);
             try {
-                classLoader = splitLoader.loadCode(splitName,
-                        addedDexPaths, dexOptPath == null ? null : new File(dexOptPath),
-                        nativeLibPath == null ? null : new File(nativeLibPath),
-                        info.getDependencies()
-                );
+                split.application = activator.createSplitApplication(split.classLoader, split.splitName);
             } catch (SplitLoadException e) {
-                SplitLog.printErrStackTrace(TAG, e, "Failed to load split %s code!", splitName);
-                loadErrorInfos.add(new SplitLoadError(splitBriefInfo, e.getErrorCode(), e.getCause()));
+                SplitLog.printErrStackTrace(TAG, e, "Failed to create %s application ", split.splitName);
+                loadErrorInfos.add(new SplitLoadError(split.briefInfo, e.getErrorCode(), e.getCause()));
+                splitLoader.unloadCode(split.classLoader);
                 continue;
+            } finally {
+                SplitTrace.end(createSpan);
             }
-            //create split application instance.
-            final Application application;
-            try {
-                application = activator.createSplitApplication(classLoader, splitName);
-            } catch (SplitLoadException e) {
-                SplitLog.printErrStackTrace(TAG, e, "Failed to create %s application ", splitName);
-                loadErrorInfos.add(new SplitLoadError(splitBriefInfo, e.getErrorCode(), e.getCause()));
-                splitLoader.unloadCode(classLoader);
+            split.createCost = System.currentTimeMillis() - createStart;
+            createdSplits.add(split);
+        }
+        loadSplitResources(createdSplits);
+        for (PreparedSplit split : createdSplits) {
+            long commitStart = System.currentTimeMillis();
+            //make split code visible to other splits once its application is created.
+            ClassLoader published = splitLoader.publishCode(split.classLoader);
+            if (published != split.classLoader) {
+                SplitLog.i(TAG, "Split %s has been published by another task!", split.splitName);
                 continue;
             }
+            long activateSpan = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "activate", split.splitName);
             try {
-                activateSplit(splitName, splitApkPath, application, classLoader);
+                activateSplit(split, split.application);
             } catch (SplitLoadException e) {
-                loadErrorInfos.add(new SplitLoadError(splitBriefInfo, e.getErrorCode(), e.getCause()));
-                splitLoader.unloadCode(classLoader);
+                loadErrorInfos.add(new SplitLoadError(split.briefInfo, e.getErrorCode(), e.getCause()));
+                splitLoader.unloadCode(split.classLoader);
                 continue;
+            } finally {
+                SplitTrace.end(activateSpan);
             }
-            File splitDir = SplitPathManager.require().getSplitDir(info);
-            if (!splitDir.setLastModified(System.currentTimeMillis())) {
-                SplitLog.w(TAG, "Failed to set last modified time for " + splitName);
-            }
-            loadOKInfos.add(splitBriefInfo.setTimeCost(System.currentTimeMillis() - loadStart));
-            loadedSpits.add(new Split(splitName, splitApkPath));
+            loadedSplitInfos.add(split.info);
+            long commitCost = split.createCost + System.currentTimeMillis() - commitStart;
+            SplitLog.i(TAG, "Split %s is loaded, prepare %d ms (check %d ms, code %d ms, prewarm %d ms), commit %d ms",
+                    split.splitName, split.checkCost + split.codeCost + split.prewarmCost, split.checkCost, split.codeCost, split.prewarmCost,
+                    commitCost);
+            loadOKInfos.add(split.briefInfo.setTimeCost(split.checkCost + split.codeCost + split.prewarmCost + commitCost));
+            loadedSpits.add(new Split(split.splitName, split.splitApkPath));
         }
         loadManager.putSplits(loadedSpits);
+        if (!loadedSplitInfos.isEmpty() && !SplitAccessLog.get().recordLoaded(loadedSplitInfos, Process.myPid(), System.currentTimeMillis())) {
+            SplitLog.w(TAG, "Failed to record access of loaded splits");
+        }
+        reportTraces(preparedSplits);
         if (loadFinishListener != null) {
             loadFinishListener.onLoadFinish(loadOKInfos, loadErrorInfos, loadManager.currentProcessName, System.currentTimeMillis() - totalLoadStart);
         }
     }
 
-    private void activateSplit(String splitName, String splitApkPath, Application application, ClassLoader classLoader) throws SplitLoadException {
+    private void reportTraces(List<PreparedSplit> preparedSplits) {
+        SplitTraceReporter traceReporter = SplitTraceReporterManager.getTraceReporter();
+        if (traceReporter == null || !SplitTrace.isEnabled()) {
+            return;
+        }
+        for (PreparedSplit split : preparedSplits) {
+            List<SplitPhase> phases = SplitPhase.fromSpans(SplitTrace.collect(split.splitName, split.traceMark));
+            if (!phases.isEmpty()) {
+                traceReporter.onLoadTraced(loadManager.currentProcessName, split.briefInfo, phases);
+            }
+        }
+    }
+
+    /**
+     * @return {@code null} if split should be skipped, otherwise a split whose error is set if its files are illegal.
+     */
+    @Nullable
+    private PreparedSplit checkSplitFiles(Intent splitFileIntent) {
+        long checkStart = System.currentTimeMillis();
+        final String splitName = splitFileIntent.getStringExtra(SplitConstants.KET_NAME);
+        SplitInfo info = infoManager.getSplitInfo(getContext(), splitName);
+        if (info == null) {
+            SplitLog.w(TAG, "Unable to get info for %s, just skip!", splitName == null ? "null" : splitName);
+            return null;
+        }
+        //if if split has been loaded, just skip.
+        if (checkSplitLoaded(splitName)) {
+            SplitLog.i(TAG, "Split %s has been loaded!", splitName);
+            return null;
+        }
+        PreparedSplit split = new PreparedSplit(splitName, info, new SplitBriefInfo(info.getSplitName(), info.getSplitVersion(), info.isBuiltIn()));
+        split.splitApkPath = splitFileIntent.getStringExtra(SplitConstants.KEY_APK);
+        if (split.splitApkPath == null) {
+            SplitLog.w(TAG, "Failed to read split %s apk path", splitName);
+            split.error = new SplitLoadError(split.briefInfo, SplitLoadError.INTERNAL_ERROR, new Exception("split apk path " + splitName + " is missing!"));
+            return split;
+        }
+        split.dexOptPath = splitFileIntent.getStringExtra(SplitConstants.KEY_DEX_OPT_DIR);
+        //check opt-path for split.
+        if (info.hasDex() && split.dexOptPath == null) {
+            SplitLog.w(TAG, "Failed to %s get dex-opt-dir", splitName);
+            split.error = new SplitLoadError(split.briefInfo, SplitLoadError.INTERNAL_ERROR, new Exception("dex-opt-dir of " + splitName + " is missing!"));
+            return split;
+        }
+        //check native library path for split.
+        String nativeLibPath = splitFileIntent.getStringExtra(SplitConstants.KEY_NATIVE_LIB_DIR);
+        try {
+            SplitInfo.LibData libData = info.getPrimaryLibData(getContext());
+            if (libData != null && nativeLibPath == null) {
+                SplitLog.w(TAG, "Failed to get %s native-lib-dir", splitName);
+                split.error = new SplitLoadError(split.briefInfo, SplitLoadError.INTERNAL_ERROR, new Exception("native-lib-dir of " + splitName + " is missing!"));
+                return split;
+            }
+        } catch (IOException e) {
+            split.error = new SplitLoadError(split.briefInfo, SplitLoadError.INTERNAL_ERROR, e);
+            return split;
+        }
+        split.addedDexPaths = splitFileIntent.getStringArrayListExtra(SplitConstants.KEY_ADDED_DEX);
+        // check if need compat native lib path on android 5.x
+        SplitLog.d(TAG, "split name: %s, origin native path: %s", splitName, nativeLibPath);
+        split.nativeLibPath = mapper.map(splitName, nativeLibPath);
+        SplitLog.d(TAG, "split name: %s, mapped native path: %s", splitName, split.nativeLibPath);
+        split.checkCost = System.currentTimeMillis() - checkStart;
+        return split;
+    }
+
+    private static Map<String, PreparedSplit> toBatch(List<PreparedSplit> splits) {
+        Map<String, PreparedSplit> batch = new HashMap<>(splits.size());
+        for (PreparedSplit split : splits) {
+            batch.put(split.splitName, split);
+        }
+        return batch;
+    }
+
+    /**
+     * @return class loaders of dependencies loaded in this task, they are not published until commit phase.
+     */
+    @Nullable
+    private static List<ClassLoader> getPreparedDependencies(PreparedSplit split, Map<String, PreparedSplit> batch) {
+        List<String> dependencies = split.info.getDependencies();
+        if (dependencies == null) {
+            return null;
+        }
+        List<ClassLoader> preparedDependencies = null;
+        for (String dependency : dependencies) {
+            PreparedSplit dependencySplit = batch.get(dependency);
+            if (dependencySplit != null && dependencySplit != split
+                    && dependencySplit.error == null && dependencySplit.classLoader != null) {
+                if (preparedDependencies == null) {
+                    preparedDependencies = new ArrayList<>(dependencies.size());
+                }
+                preparedDependencies.add(dependencySplit.classLoader);
+            }
+        }
+        return preparedDependencies;
+    }
+
+    private void loadSplitCode(PreparedSplit split, Map<String, PreparedSplit> batch) {
+        long codeStart = System.currentTimeMillis();
+        long codeSpan = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "loadCode", split.splitName);
         try {
-            splitLoader.loadResources(splitApkPath);
+            split.classLoader = splitLoader.loadCode(split.splitName,
+                    split.addedDexPaths, split.dexOptPath == null ? null : new File(split.dexOptPath),
+                    split.nativeLibPath == null ? null : new File(split.nativeLibPath),
+                    split.info.getDependencies(),
+                    getPreparedDependencies(split, batch)
+            );
         } catch (SplitLoadException e) {
-            SplitLog.printErrStackTrace(TAG, e, "Failed to load %s resources", splitApkPath);
+            SplitLog.printErrStackTrace(TAG, e, "Failed to load split %s code!", split.splitName);
+            split.error = new SplitLoadError(split.briefInfo, e.getErrorCode(), e.getCause());
+            return;
+        } finally {
+            SplitTrace.end(codeSpan);
+        }
+        long prewarmStart = System.currentTimeMillis();
+        split.codeCost = prewarmStart - codeStart;
+        long prewarmSpan = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "prewarm", split.splitName);
+        try {
+            activator.prewarmSplitApplicationClass(split.classLoader, split.splitName);
+        } finally {
+            SplitTrace.end(prewarmSpan);
         }
+        split.prewarmCost = System.currentTimeMillis() - prewarmStart;
+    }
+
+    /**
+     * @return {@code false} if dependencies of splits are cyclic, nothing is loaded in this case.
+     */
+    private boolean loadSplitCodeConcurrently(List<PreparedSplit> splits, Map<String, PreparedSplit> splitMap, Executor executor) {
+        final Map<String, List<PreparedSplit>> dependents = new HashMap<>();
+        for (PreparedSplit split : splits) {
+            split.pendingDependencies = 0;
+            List<String> dependencies = split.info.getDependencies();
+            if (dependencies != null) {
+                for (String dependency : dependencies) {
+                    if (!dependency.equals(split.splitName) && splitMap.containsKey(dependency)) {
+                        split.pendingDependencies++;
+                        List<PreparedSplit> list = dependents.get(dependency);
+                        if (list == null) {
+                            list = new ArrayList<>();
+                            dependents.put(dependency, list);
+                        }
+                        list.add(split);
+                    }
+                }
+            }
+        }
+        if (hasDependencyCycle(splits, dependents)) {
+            SplitLog.w(TAG, "Dependencies of splits are cyclic, load them serially!");
+            return false;
+        }
+        CountDownLatch latch = new CountDownLatch(splits.size());
+        for (PreparedSplit split : splits) {
+            if (split.pendingDependencies == 0) {
+                dispatchLoadSplitCode(split, splitMap, dependents, latch, executor);
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    private void dispatchLoadSplitCode(final PreparedSplit split,
+                                       final Map<String, PreparedSplit> batch,
+                                       final Map<String, List<PreparedSplit>> dependents,
+                                       final CountDownLatch latch,
+                                       final Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadSplitCode(split, batch);
+                } catch (Throwable e) {
+                    SplitLog.printErrStackTrace(TAG, e, "Failed to load split %s code!", split.splitName);
+                    split.error = new SplitLoadError(split.briefInfo, SplitLoadError.INTERNAL_ERROR, e);
+                }
+                List<PreparedSplit> readySplits = new ArrayList<>(0);
+                synchronized (dependents) {
+                    List<PreparedSplit> list = dependents.get(split.splitName);
+                    if (list != null) {
+                        for (PreparedSplit dependent : list) {
+                            if (--dependent.pendingDependencies == 0) {
+                                readySplits.add(dependent);
+                            }
+                        }
+                    }
+                }
+                for (PreparedSplit readySplit : readySplits) {
+                    dispatchLoadSplitCode(readySplit, batch, dependents, latch, executor);
+                }
+                latch.countDown();
+            }
+        });
+    }
+
+    private static boolean hasDependencyCycle(List<PreparedSplit> splits, Map<String, List<PreparedSplit>> dependents) {
+        Map<PreparedSplit, Integer> pendingCounts = new HashMap<>(splits.size());
+        List<PreparedSplit> readySplits = new ArrayList<>();
+        for (PreparedSplit split : splits) {
+            pendingCounts.put(split, split.pendingDependencies);
+            if (split.pendingDependencies == 0) {
+                readySplits.add(split);
+            }
+        }
+        int visited = 0;
+        while (visited < readySplits.size()) {
+            List<PreparedSplit> list = dependents.get(readySplits.get(visited++).splitName);
+            if (list != null) {
+                for (PreparedSplit dependent : list) {
+                    int count = pendingCounts.get(dependent) - 1;
+                    pendingCounts.put(dependent, count);
+                    if (count == 0) {
+                        readySplits.add(dependent);
+                    }
+                }
+            }
+        }
+        return visited < splits.size();
+    }
+
+    /**
+     * Load resources of all splits to be committed at once, so resources are updated once rather than once per split.
+     * Failure of a split's resources is not fatal, as it was when they are loaded one by one.
+     * The cost is shared by all splits, so it is logged once and not added to time cost of each split.
+     */
+    private void loadSplitResources(List<PreparedSplit> splits) {
+        if (splits.isEmpty()) {
+            return;
+        }
+        long resourcesStart = System.currentTimeMillis();
+        List<String> splitApkPaths = new ArrayList<>(splits.size());
+        for (PreparedSplit split : splits) {
+            splitApkPaths.add(split.splitApkPath);
+        }
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "loadResources");
+        SplitTrace.attr(span, "count", splitApkPaths.size());
+        try {
+            splitLoader.loadResources(splitApkPaths);
+        } catch (SplitLoadException e) {
+            SplitLog.printErrStackTrace(TAG, e, "Failed to load resources of %s at once, load them one by one", splitApkPaths);
+            for (String splitApkPath : splitApkPaths) {
+                try {
+                    splitLoader.loadResources(splitApkPath);
+                } catch (SplitLoadException e1) {
+                    SplitLog.printErrStackTrace(TAG, e1, "Failed to load %s resources", splitApkPath);
+                }
+            }
+        } finally {
+            SplitTrace.end(span);
+        }
+        SplitLog.i(TAG, "Resources of %d splits are loaded, cost %d ms", splitApkPaths.size(), System.currentTimeMillis() - resourcesStart);
+    }
+
+    private void activateSplit(PreparedSplit split, Application application) throws SplitLoadException {
         //attach split application.
+        long span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "attachApplication");
         try {
             activator.attachSplitApplication(application);
         } catch (SplitLoadException e) {
-            SplitLog.printErrStackTrace(TAG, e, "Failed to attach %s application", splitName);
+            SplitLog.printErrStackTrace(TAG, e, "Failed to attach %s application", split.splitName);
             throw e;
+        } finally {
+            SplitTrace.end(span);
         }
         //create split content-provider instance.
+        span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "createProviders");
         try {
-            activator.createAndActivateSplitContentProviders(classLoader, splitName);
+            activator.createAndActivateSplitContentProviders(split.classLoader, split.splitName);
         } catch (SplitLoadException e) {
-            SplitLog.printErrStackTrace(TAG, e, "Failed to create %s content-provider ", splitName);
+            SplitLog.printErrStackTrace(TAG, e, "Failed to create %s content-provider ", split.splitName);
             throw e;
+        } finally {
+            SplitTrace.end(span);
         }
         //invoke onCreate for split application.
+        span = SplitTrace.begin(SplitTrace.CATEGORY_LOAD, "applicationOnCreate");
         try {
             activator.invokeOnCreateForSplitApplication(application);
         } catch (SplitLoadException e) {
-            SplitLog.printErrStackTrace(TAG, e, "Failed to invoke onCreate for %s application", splitName);
+            SplitLog.printErrStackTrace(TAG, e, "Failed to invoke onCreate for %s application", split.splitName);
             throw e;
+        } finally {
+            SplitTrace.end(span);
         }
     }
 
@@ -231,4 +541,51 @@ final class SplitLoadHandler {
 
         void onLoadFinish(List<SplitBriefInfo> loadOKSplits, List<SplitLoadError> loadErrorSplits, String process, long totalTimeCost);
     }
+
+    /**
+     * State of a split between prepare phase and commit phase.
+     */
+    static final class PreparedSplit {
+
+        final String splitName;
+
+        final SplitInfo info;
+
+        final SplitBriefInfo briefInfo;
+
+        String splitApkPath;
+
+        String dexOptPath;
+
+        String nativeLibPath;
+
+        List<String> addedDexPaths;
+
+        ClassLoader classLoader;
+
+        SplitLoadError error;
+
+        int pendingDependencies;
+
+        long checkCost;
+
+        long codeCost;
+
+        long prewarmCost;
+
+        long createCost;
+
+        Application application;
+
+        /**
+         * Value of {@link SplitTrace#mark()} before this split is prepared, phases of this split are traced after it.
+         */
+        long traceMark = SplitTrace.NO_SPAN;
+
+        PreparedSplit(String splitName, SplitInfo info, SplitBriefInfo briefInfo) {
+            this.splitName = splitName;
+            this.info = info;
+            this.briefInfo = briefInfo;
+        }
+    }
 }
@@ -36,10 +36,13 @@ import com.iqiyi.android.qigsaw.core.common.SplitLog;
 import com.iqiyi.android.qigsaw.core.splitload.listener.OnSplitLoadListener;
 
 import java.io.File;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -54,6 +57,13 @@ public abstract class SplitLoadManager {
 
     private final Set<Split> loadedSplits = Collections.newSetFromMap(new ConcurrentHashMap<Split, Boolean>());
 
+    private final Map<String, Integer> splitApkIds = new HashMap<>();
+
+    /**
+     * Ids of loaded split apks, it is replaced rather than modified once published.
+     */
+    private volatile BitSet loadedSplitIds = new BitSet();
+
     final String currentProcessName;
 
     private final int splitLoadMode;
@@ -140,13 +150,46 @@ public abstract class SplitLoadManager {
 
     final void putSplits(Collection<Split> splits) {
         loadedSplits.addAll(splits);
+        synchronized (splitApkIds) {
+            BitSet splitIds = (BitSet) loadedSplitIds.clone();
+            for (Split split : splits) {
+                splitIds.set(getSplitApkId(split.splitApkPath));
+            }
+            loadedSplitIds = splitIds;
+        }
+    }
+
+    /**
+     * Get dense id of split apk path, which stays the same during process lifetime.
+     */
+    final int getSplitApkId(String splitApkPath) {
+        synchronized (splitApkIds) {
+            Integer id = splitApkIds.get(splitApkPath);
+            if (id == null) {
+                id = splitApkIds.size();
+                splitApkIds.put(splitApkPath, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Get ids of loaded split apks without checking their files, the returned set must not be modified.
+     */
+    final BitSet getLoadedSplitIds() {
+        return loadedSplitIds;
     }
 
     final Set<Split> getLoadedSplits() {
         return loadedSplits;
     }
 
+    final int getLoadedSplitCount() {
+        return loadedSplits.size();
+    }
+
     public final void clear() {
         loadedSplits.clear();
+        loadedSplitIds = new BitSet();
     }
 }
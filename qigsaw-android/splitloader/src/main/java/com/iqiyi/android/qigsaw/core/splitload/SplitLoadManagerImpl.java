@@ -43,14 +43,15 @@ import com.iqiyi.android.qigsaw.core.splitload.listener.OnSplitLoadListener;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManager;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoManagerService;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInstallStateTable;
 import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitPathManager;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 final class SplitLoadManagerImpl extends SplitLoadManager {
 
@@ -181,6 +182,8 @@ final class SplitLoadManagerImpl extends SplitLoadManager {
 
     private List<Intent> createInstalledSplitFileIntents(@NonNull Collection<SplitInfo> splitInfoList) {
         List<Intent> splitFileIntents = new ArrayList<>();
+        SplitInstallStateTable stateTable = SplitInstallStateTable.get();
+        Map<String, SplitInstallStateTable.State> installStates = stateTable.getAll();
         for (SplitInfo splitInfo : splitInfoList) {
             if (canBeWorkedInThisProcessForSplit(splitInfo)) {
                 if (getLoadedSplitNames().contains(splitInfo.getSplitName())) {
@@ -188,15 +191,8 @@ final class SplitLoadManagerImpl extends SplitLoadManager {
                     continue;
                 }
                 try {
-                    SplitInfo.ApkData masterApkData = splitInfo.getApkDataForMaster();
-                    SplitInfo.LibData libData = splitInfo.getPrimaryLibData(getContext());
                     String installedMark = splitInfo.obtainInstalledMark(getContext());
-                    File splitLibDir = null;
-                    if (libData != null) {
-                        splitLibDir = SplitPathManager.require().getSplitLibDir(splitInfo, libData.getAbi());
-                    }
-                    boolean libBuiltIn = splitInfo.isBuiltIn() && masterApkData.getUrl().startsWith(SplitConstants.URL_NATIVE);
-                    Intent splitFileIntent = createLastInstalledSplitFileIntent(libBuiltIn, installedMark, splitLibDir, splitInfo);
+                    Intent splitFileIntent = createLastInstalledSplitFileIntent(stateTable, installStates, installedMark, splitInfo);
                     if (splitFileIntent != null) {
                         splitFileIntents.add(splitFileIntent);
                     }
@@ -225,35 +221,38 @@ final class SplitLoadManagerImpl extends SplitLoadManager {
     }
 
     /**
-     * fast check operation
+     * fast check operation, only {@code installStates} is read unless the split was installed by an old version of qigsaw.
      */
-    private Intent createLastInstalledSplitFileIntent(boolean libBuiltIn, String mark, File splitLibDir, SplitInfo splitInfo) {
+    private Intent createLastInstalledSplitFileIntent(SplitInstallStateTable stateTable,
+                                                      Map<String, SplitInstallStateTable.State> installStates,
+                                                      String mark,
+                                                      SplitInfo splitInfo) throws IOException {
         String splitName = splitInfo.getSplitName();
-        File splitDir = SplitPathManager.require().getSplitDir(splitInfo);
-        File markFile = SplitPathManager.require().getSplitMarkFile(splitInfo, mark);
-        File specialMarkFile = SplitPathManager.require().getSplitSpecialMarkFile(splitInfo, mark);
-        File splitApk;
-        if (libBuiltIn) {
-            splitApk = new File(getContext().getApplicationInfo().nativeLibraryDir, System.mapLibraryName(SplitConstants.SPLIT_PREFIX + splitInfo.getSplitName()));
-        } else {
-            splitApk = new File(splitDir, splitName + "-" + SplitConstants.MASTER + SplitConstants.DOT_APK);
+        SplitInstallStateTable.State installState = installStates.get(splitName);
+        if (installState == null || !installState.mark.equals(mark)) {
+            installState = migrateLegacyInstallState(stateTable, mark, splitInfo);
+            if (installState == null) {
+                return null;
+            }
+            installStates.put(splitName, installState);
         }
-        //check oat file if special mark file is exist.
-        if (specialMarkFile.exists() && !markFile.exists()) {
+        //check oat file if split is installed without oat file.
+        if (installState.oatStatus == SplitInstallStateTable.OAT_PENDING && installState.optDir != null) {
             SplitLog.v(TAG, "In vivo & oppo, we need to check oat file when split is going to be loaded.");
-            File optimizedDirectory = SplitPathManager.require().getSplitOptDir(splitInfo);
-            File oatFile = OEMCompat.getOatFilePath(splitApk, optimizedDirectory);
+            File oatFile = OEMCompat.getOatFilePath(new File(installState.apkPath), new File(installState.optDir));
             if (FileUtil.isLegalFile(oatFile)) {
                 boolean result = OEMCompat.checkOatFile(oatFile);
                 SplitLog.v(TAG, "Check result of oat file %s is " + result, oatFile.getAbsoluteFile());
-                File lockFile = SplitPathManager.require().getSplitSpecialLockFile(splitInfo);
                 if (result) {
-                    try {
-                        FileUtil.createFileSafelyLock(markFile, lockFile);
-                    } catch (IOException e) {
-                        SplitLog.w(TAG, "Failed to create installed mark file " + oatFile.exists());
+                    SplitInstallStateTable.State checkedState = installState.withOatStatus(SplitInstallStateTable.OAT_OK);
+                    if (stateTable.put(checkedState)) {
+                        installState = checkedState;
+                        installStates.put(splitName, installState);
+                    } else {
+                        SplitLog.w(TAG, "Failed to record oat status of split " + splitName);
                     }
                 } else {
+                    File lockFile = SplitPathManager.require().getSplitSpecialLockFile(splitInfo);
                     try {
                         FileUtil.deleteFileSafelyLock(oatFile, lockFile);
                     } catch (IOException e) {
@@ -264,57 +263,60 @@ final class SplitLoadManagerImpl extends SplitLoadManager {
                 SplitLog.v(TAG, "Oat file %s is still not exist in vivo & oppo, system continue to use interpreter mode.", oatFile.getAbsoluteFile());
             }
         }
-        if (markFile.exists() || specialMarkFile.exists()) {
-            List<String> dependencies = splitInfo.getDependencies();
-            if (dependencies != null) {
-                SplitLog.i(TAG, "Split %s has dependencies %s !", splitName, dependencies);
-                for (String dependency : dependencies) {
-                    SplitInfo dependSplitInfo = SplitInfoManagerService.getInstance().getSplitInfo(getContext(), dependency);
-                    try {
-                        String dependInstalledMark = dependSplitInfo.obtainInstalledMark(getContext());
-                        File dependMarkFile = SplitPathManager.require().getSplitMarkFile(dependSplitInfo, dependInstalledMark);
-                        if (!dependMarkFile.exists()) {
-                            SplitLog.i(TAG, "Dependency %s mark file is not existed!", dependency);
-                            return null;
-                        }
-                    } catch (IOException e) {
-                        return null;
-                    }
+        List<String> dependencies = splitInfo.getDependencies();
+        if (dependencies != null) {
+            SplitLog.i(TAG, "Split %s has dependencies %s !", splitName, dependencies);
+            for (String dependency : dependencies) {
+                SplitInfo dependSplitInfo = SplitInfoManagerService.getInstance().getSplitInfo(getContext(), dependency);
+                String dependInstalledMark = dependSplitInfo.obtainInstalledMark(getContext());
+                SplitInstallStateTable.State dependInstallState = installStates.get(dependency);
+                boolean dependInstalled;
+                if (dependInstallState != null && dependInstallState.mark.equals(dependInstalledMark)) {
+                    dependInstalled = dependInstallState.oatStatus == SplitInstallStateTable.OAT_OK;
+                } else {
+                    dependInstalled = SplitInstallStateTable.getLegacyOatStatus(dependSplitInfo, dependInstalledMark) == SplitInstallStateTable.OAT_OK;
                 }
-            }
-            File optimizedDirectory = null;
-            ArrayList<String> addedDexPaths = null;
-            if (splitInfo.hasDex()) {
-                optimizedDirectory = SplitPathManager.require().getSplitOptDir(splitInfo);
-                addedDexPaths = new ArrayList<>();
-                addedDexPaths.add(splitApk.getAbsolutePath());
-                File[] results = SplitPathManager.require().getSplitCodeCacheDir(splitInfo).listFiles(new FilenameFilter() {
-                    @Override
-                    public boolean accept(File dir, String name) {
-                        return name.endsWith(SplitConstants.DOT_ZIP);
-                    }
-                });
-                if (results != null && results.length > 0) {
-                    for (File result : results) {
-                        addedDexPaths.add(result.getAbsolutePath());
-                    }
+                if (!dependInstalled) {
+                    SplitLog.i(TAG, "Dependency %s is not installed!", dependency);
+                    return null;
                 }
             }
-            Intent splitFileIntent = new Intent();
-            splitFileIntent.putExtra(SplitConstants.KET_NAME, splitName);
-            splitFileIntent.putExtra(SplitConstants.KEY_APK, splitApk.getAbsolutePath());
-            if (optimizedDirectory != null) {
-                splitFileIntent.putExtra(SplitConstants.KEY_DEX_OPT_DIR, optimizedDirectory.getAbsolutePath());
-            }
-            if (splitLibDir != null) {
-                splitFileIntent.putExtra(SplitConstants.KEY_NATIVE_LIB_DIR, splitLibDir.getAbsolutePath());
-            }
-            if (addedDexPaths != null) {
-                splitFileIntent.putStringArrayListExtra(SplitConstants.KEY_ADDED_DEX, addedDexPaths);
-            }
-            return splitFileIntent;
         }
-        return null;
+        Intent splitFileIntent = new Intent();
+        splitFileIntent.putExtra(SplitConstants.KET_NAME, splitName);
+        splitFileIntent.putExtra(SplitConstants.KEY_APK, installState.apkPath);
+        if (installState.optDir != null) {
+            splitFileIntent.putExtra(SplitConstants.KEY_DEX_OPT_DIR, installState.optDir);
+        }
+        if (installState.libDir != null) {
+            splitFileIntent.putExtra(SplitConstants.KEY_NATIVE_LIB_DIR, installState.libDir);
+        }
+        if (installState.addedDexPaths != null) {
+            splitFileIntent.putStringArrayListExtra(SplitConstants.KEY_ADDED_DEX, new ArrayList<>(installState.addedDexPaths));
+        }
+        return splitFileIntent;
+    }
+
+    /**
+     * Split installed by an old version of qigsaw only has mark files, record its install state so mark files are not read again.
+     */
+    private SplitInstallStateTable.State migrateLegacyInstallState(SplitInstallStateTable stateTable,
+                                                                   String mark,
+                                                                   SplitInfo splitInfo) throws IOException {
+        int oatStatus = SplitInstallStateTable.getLegacyOatStatus(splitInfo, mark);
+        if (oatStatus == SplitInstallStateTable.NOT_INSTALLED) {
+            return null;
+        }
+        String splitName = splitInfo.getSplitName();
+        SplitInfo.ApkData masterApkData = splitInfo.getApkDataForMaster();
+        SplitInfo.LibData libData = splitInfo.getPrimaryLibData(getContext());
+        File splitApk;
+        if (splitInfo.isBuiltIn() && masterApkData.getUrl().startsWith(SplitConstants.URL_NATIVE)) {
+            splitApk = new File(getContext().getApplicationInfo().nativeLibraryDir, System.mapLibraryName(SplitConstants.SPLIT_PREFIX + splitName));
+        } else {
+            splitApk = new File(SplitPathManager.require().getSplitDir(splitInfo), splitName + "-" + SplitConstants.MASTER + SplitConstants.DOT_APK);
+        }
+        return stateTable.migrateLegacyState(splitInfo, mark, oatStatus, splitApk, libData == null ? null : libData.getAbi());
     }
 
     private void injectClassLoader(ClassLoader originalClassloader) {
@@ -27,6 +27,9 @@ package com.iqiyi.android.qigsaw.core.splitload;
 import android.content.Context;
 import androidx.annotation.RestrictTo;
 
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
@@ -37,8 +40,12 @@ import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 @RestrictTo(LIBRARY_GROUP)
 public class SplitLoadManagerService {
 
+    private static final String TAG = "SplitLoadManagerService";
+
     private static final AtomicReference<SplitLoadManager> sReference = new AtomicReference<>();
 
+    private static final AtomicBoolean sReflectionWarmedUp = new AtomicBoolean();
+
     public static void install(Context context,
                                int splitLoadMode,
                                boolean qigsawMode,
@@ -51,6 +58,36 @@ public class SplitLoadManagerService {
         }
     }
 
+    /**
+     * Resolve hidden api handles used to load split code, libraries and resources on split load workers,
+     * so loading splits later does not pay for walking class hierarchies. Only works once per process.
+     *
+     * @param classLoader class loader which split dex and libraries are injected into.
+     */
+    public static void warmUpReflection(final ClassLoader classLoader) {
+        if (!sReflectionWarmedUp.compareAndSet(false, true)) {
+            return;
+        }
+        SplitLoadExecutor.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                long time = System.currentTimeMillis();
+                try {
+                    SplitCompatDexLoader.warmUp(classLoader);
+                    SplitCompatLibraryLoader.warmUp(classLoader);
+                } catch (Throwable e) {
+                    SplitLog.w(TAG, "Failed to warm up reflection of class loader", e);
+                }
+                try {
+                    SplitCompatResourcesLoader.warmUp();
+                } catch (Throwable e) {
+                    SplitLog.w(TAG, "Failed to warm up reflection of resources", e);
+                }
+                SplitLog.d(TAG, "Cost %d ms to warm up reflection", System.currentTimeMillis() - time);
+            }
+        });
+    }
+
     public static boolean hasInstance() {
         return sReference.get() != null;
     }
@@ -60,7 +60,7 @@ abstract class SplitLoadTask implements SplitLoaderWrapper, Runnable, SplitLoadH
         return loadHandler.getContext();
     }
 
-    SplitLoader getSplitLoader() {
+    synchronized SplitLoader getSplitLoader() {
         if (splitLoader == null) {
             splitLoader = createSplitLoader();
         }
@@ -72,18 +72,32 @@ abstract class SplitLoadTask implements SplitLoaderWrapper, Runnable, SplitLoadH
         getSplitLoader().loadResources(splitApkPath);
     }
 
+    @Override
+    public void loadResources(List<String> splitApkPaths) throws SplitLoadException {
+        getSplitLoader().loadResources(splitApkPaths);
+    }
+
+    /**
+     * Whether code of splits could be loaded off the main thread and concurrently.
+     */
+    abstract boolean canLoadCodeOffMainThread();
+
     @Override
     public final void run() {
         if (Looper.getMainLooper().getThread() == Thread.currentThread()) {
             loadHandler.loadSplitsSync(this);
         } else {
+            final long totalLoadStart = System.currentTimeMillis();
+            final List<SplitLoadHandler.PreparedSplit> preparedSplits = canLoadCodeOffMainThread()
+                    ? loadHandler.prepareSplits(true, SplitLoadExecutor.getWorkerExecutor())
+                    : loadHandler.prepareSplits(false, null);
             synchronized (this) {
                 loadHandler.getMainHandler().post(new Runnable() {
 
                     @Override
                     public void run() {
                         synchronized (SplitLoadTask.this) {
-                            loadHandler.loadSplitsSync(SplitLoadTask.this);
+                            loadHandler.commitSplits(preparedSplits, totalLoadStart, SplitLoadTask.this);
                             SplitLoadTask.this.notifyAll();
                         }
                     }
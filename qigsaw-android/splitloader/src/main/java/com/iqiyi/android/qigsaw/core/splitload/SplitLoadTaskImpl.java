@@ -32,6 +32,7 @@ import androidx.annotation.Nullable;
 import com.iqiyi.android.qigsaw.core.splitload.listener.OnSplitLoadListener;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 final class SplitLoadTaskImpl extends SplitLoadTask {
@@ -52,20 +53,42 @@ final class SplitLoadTaskImpl extends SplitLoadTask {
                                 List<String> addedDexPaths,
                                 File optimizedDirectory,
                                 File librarySearchPath,
-                                List<String> dependencies) throws SplitLoadException {
-        SplitDexClassLoader classLoader = SplitApplicationLoaders.getInstance().getClassLoader(splitName);
+                                List<String> dependencies,
+                                List<ClassLoader> preparedDependencies) throws SplitLoadException {
+        SplitDexClassLoader classLoader = SplitApplicationLoaders.getInstance().getValidClassLoader(splitName);
         if (classLoader == null) {
-            classLoader = getSplitLoader().loadCode(splitName, addedDexPaths, optimizedDirectory, librarySearchPath, dependencies);
-            classLoader.setValid(true);
-            SplitApplicationLoaders.getInstance().addClassLoader(classLoader);
+            List<SplitDexClassLoader> preparedDependencyLoaders = null;
+            if (preparedDependencies != null) {
+                preparedDependencyLoaders = new ArrayList<>(preparedDependencies.size());
+                for (ClassLoader dependency : preparedDependencies) {
+                    if (dependency instanceof SplitDexClassLoader) {
+                        preparedDependencyLoaders.add((SplitDexClassLoader) dependency);
+                    }
+                }
+            }
+            classLoader = getSplitLoader().loadCode(splitName, addedDexPaths, optimizedDirectory, librarySearchPath,
+                    dependencies, preparedDependencyLoaders);
         }
         return classLoader;
     }
 
+    @Override
+    public ClassLoader publishCode(ClassLoader classLoader) {
+        if (classLoader instanceof SplitDexClassLoader) {
+            return SplitApplicationLoaders.getInstance().addClassLoaderIfAbsent((SplitDexClassLoader) classLoader);
+        }
+        return classLoader;
+    }
+
+    @Override
+    boolean canLoadCodeOffMainThread() {
+        return true;
+    }
+
     @Override
     public void unloadCode(ClassLoader classLoader) {
         if (classLoader instanceof SplitDexClassLoader) {
-            ((SplitDexClassLoader) classLoader).setValid(false);
+            SplitApplicationLoaders.getInstance().setClassLoaderValid((SplitDexClassLoader) classLoader, false);
         }
     }
 }
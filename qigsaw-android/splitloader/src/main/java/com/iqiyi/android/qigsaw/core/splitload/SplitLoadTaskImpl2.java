@@ -56,11 +56,25 @@ final class SplitLoadTaskImpl2 extends SplitLoadTask {
                                 List<String> addedDexPaths,
                                 File optimizedDirectory,
                                 File librarySearchPath,
-                                List<String> dependencies) throws SplitLoadException {
+                                List<String> dependencies,
+                                List<ClassLoader> preparedDependencies) throws SplitLoadException {
         getSplitLoader().loadCode2(addedDexPaths, optimizedDirectory, librarySearchPath);
         return SplitLoadTask.class.getClassLoader();
     }
 
+    @Override
+    public ClassLoader publishCode(ClassLoader classLoader) {
+        return classLoader;
+    }
+
+    /**
+     * Dex files are injected into the class loader of base apk, which must not be changed while main thread is running.
+     */
+    @Override
+    boolean canLoadCodeOffMainThread() {
+        return false;
+    }
+
     @Override
     public void unloadCode(ClassLoader classLoader) {
         try {
@@ -31,6 +31,7 @@ import androidx.annotation.Nullable;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitLoadError;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -38,7 +39,7 @@ import java.util.List;
  */
 abstract class SplitLoader {
 
-    private final Context context;
+    final Context context;
 
     SplitLoader(Context context) {
         this.context = context;
@@ -46,12 +47,15 @@ abstract class SplitLoader {
 
     /**
      * Load split' code for multiple class loader mode.
+     *
+     * @param preparedDependencies class loaders of dependencies which are loaded in the same task but not published yet.
      */
     SplitDexClassLoader loadCode(String moduleNames,
                                  @Nullable List<String> dexPaths,
                                  File optimizedDirectory,
                                  @Nullable File librarySearchPath,
-                                 @Nullable List<String> dependencies) throws SplitLoadException {
+                                 @Nullable List<String> dependencies,
+                                 @Nullable Collection<SplitDexClassLoader> preparedDependencies) throws SplitLoadException {
         return null;
     }
 
@@ -76,4 +80,17 @@ abstract class SplitLoader {
             throw new SplitLoadException(SplitLoadError.LOAD_RES_FAILED, throwable);
         }
     }
+
+    /**
+     * load resources of several installed splits at once.
+     *
+     * @param splitResDirs local file paths of split apks.
+     */
+    final void loadResources(List<String> splitResDirs) throws SplitLoadException {
+        try {
+            SplitCompatResourcesLoader.loadResources(context, context.getResources(), splitResDirs);
+        } catch (Throwable throwable) {
+            throw new SplitLoadException(SplitLoadError.LOAD_RES_FAILED, throwable);
+        }
+    }
 }
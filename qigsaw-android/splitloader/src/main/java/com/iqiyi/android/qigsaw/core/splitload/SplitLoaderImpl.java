@@ -30,6 +30,7 @@ import androidx.annotation.Nullable;
 import com.iqiyi.android.qigsaw.core.splitreport.SplitLoadError;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 
 final class SplitLoaderImpl extends SplitLoader {
@@ -43,9 +44,11 @@ final class SplitLoaderImpl extends SplitLoader {
                                  @Nullable List<String> dexPaths,
                                  File optimizedDirectory,
                                  @Nullable File librarySearchPath,
-                                 @Nullable List<String> dependencies) throws SplitLoadException {
+                                 @Nullable List<String> dependencies,
+                                 @Nullable Collection<SplitDexClassLoader> preparedDependencies) throws SplitLoadException {
         try {
-            return SplitDexClassLoader.create(moduleNames, dexPaths, optimizedDirectory, librarySearchPath, dependencies);
+            return SplitDexClassLoader.create(moduleNames, dexPaths, optimizedDirectory, librarySearchPath, dependencies,
+                    preparedDependencies, SplitClassIndex.obtain(context));
         } catch (Throwable e) {
             throw new SplitLoadException(SplitLoadError.CREATE_CLASSLOADER_FAILED, e);
         }
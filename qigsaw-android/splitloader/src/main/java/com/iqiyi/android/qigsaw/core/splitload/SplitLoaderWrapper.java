@@ -31,13 +31,28 @@ interface SplitLoaderWrapper {
 
     SplitLoader createSplitLoader();
 
+    /**
+     * Load code of split without making it visible to other splits.
+     *
+     * @param preparedDependencies class loaders of dependencies loaded by the same task, which are not published yet.
+     */
     ClassLoader loadCode(String splitName,
                          List<String> addedDexPaths,
                          File optimizedDirectory,
                          File librarySearchPath,
-                         List<String> dependencies) throws SplitLoadException;
+                         List<String> dependencies,
+                         List<ClassLoader> preparedDependencies) throws SplitLoadException;
+
+    /**
+     * Make code of split visible to other splits, it is invoked once application of split is created.
+     *
+     * @return class loader kept for the split, it differs from the given one if the split has been published by another task.
+     */
+    ClassLoader publishCode(ClassLoader classLoader);
 
     void unloadCode(ClassLoader classLoader);
 
     void loadResources(String splitApkPath) throws SplitLoadException;
+
+    void loadResources(List<String> splitApkPaths) throws SplitLoadException;
 }
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoIndex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoIndexFactory.create;
+import static com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoIndexFactory.split;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultClassNotFoundInterceptorTest {
+
+    /**
+     * feature -> {login, player}, login -> base, player -> {codec, base}, codec -> base
+     */
+    private final SplitInfoIndex index = create(
+            split("feature", "login", "player"),
+            split("login", "base"),
+            split("player", "codec", "base"),
+            split("codec", "base"),
+            split("base"),
+            split("unrelated"));
+
+    @Test
+    public void indirectDependenciesAreLoadedBeforeOwner() {
+        List<String> splits = DefaultClassNotFoundInterceptor.getSplitsToLoad(index, "feature", Collections.<String>emptySet());
+        assertEquals(5, splits.size());
+        assertEquals("feature", splits.get(4));
+        assertBefore(splits, "base", "login");
+        assertBefore(splits, "base", "codec");
+        assertBefore(splits, "codec", "player");
+        assertBefore(splits, "login", "feature");
+        assertBefore(splits, "player", "feature");
+    }
+
+    @Test
+    public void loadedSplitsAreSkipped() {
+        List<String> splits = DefaultClassNotFoundInterceptor.getSplitsToLoad(index, "feature", Arrays.asList("base", "codec", "unrelated"));
+        assertEquals(Arrays.asList("login", "player", "feature"), splits);
+    }
+
+    @Test
+    public void splitWithoutDependenciesIsLoadedAlone() {
+        assertEquals(Collections.singletonList("unrelated"),
+                DefaultClassNotFoundInterceptor.getSplitsToLoad(index, "unrelated", Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void undeclaredSplitIsNotLoaded() {
+        assertNull(DefaultClassNotFoundInterceptor.getSplitsToLoad(index, "missing", Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void splitsInCycleAreAllLoaded() {
+        SplitInfoIndex cyclic = create(split("a", "b"), split("b", "c"), split("c", "a"), split("d", "a"));
+        List<String> splits = DefaultClassNotFoundInterceptor.getSplitsToLoad(cyclic, "d", Collections.<String>emptySet());
+        assertEquals(4, splits.size());
+        assertTrue(splits.containsAll(Arrays.asList("a", "b", "c", "d")));
+    }
+
+    private static void assertBefore(List<String> splits, String dependency, String dependent) {
+        assertTrue(splits + ": " + dependency + " must be loaded before " + dependent,
+                splits.indexOf(dependency) < splits.indexOf(dependent));
+    }
+}
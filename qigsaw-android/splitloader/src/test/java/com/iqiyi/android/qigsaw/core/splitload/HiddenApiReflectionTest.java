@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HiddenApiReflectionTest {
+
+    @Test
+    public void fieldOfAncestorIsFoundFromSubclass() throws Exception {
+        Field field = HiddenApiReflection.findField(new Leaf(), "mAssets");
+
+        assertEquals(Root.class, field.getDeclaringClass());
+        assertEquals("root assets", field.get(new Leaf()));
+    }
+
+    @Test
+    public void shadowingFieldOfNearestClassIsFound() throws Exception {
+        Field field = HiddenApiReflection.findField(Leaf.class, "mName");
+
+        assertEquals(Middle.class, field.getDeclaringClass());
+        assertEquals("middle", field.get(new Leaf()));
+        assertEquals(Root.class, HiddenApiReflection.findField(Root.class, "mName").getDeclaringClass());
+    }
+
+    @Test
+    public void overloadsAreResolvedBySignature() throws Exception {
+        Leaf leaf = new Leaf();
+        Method byString = HiddenApiReflection.findMethod(leaf, "addAssetPath", String.class);
+        Method byStringAndFlag = HiddenApiReflection.findMethod(leaf, "addAssetPath", String.class, boolean.class);
+        Method noArgs = HiddenApiReflection.findMethod(leaf, "addAssetPath");
+
+        assertEquals(1, byString.invoke(leaf, "a.apk"));
+        assertEquals(2, byStringAndFlag.invoke(leaf, "a.apk", true));
+        assertEquals(Middle.class, noArgs.getDeclaringClass());
+        assertEquals(0, noArgs.invoke(leaf));
+    }
+
+    @Test
+    public void overridingMethodOfNearestClassIsFound() throws Exception {
+        Method method = HiddenApiReflection.findMethod(Leaf.class, "getApkAssets");
+
+        assertEquals(Leaf.class, method.getDeclaringClass());
+        assertArrayEquals(new String[]{"leaf"}, (String[]) method.invoke(new Leaf()));
+    }
+
+    @Test
+    public void privateConstructorIsFound() throws Exception {
+        Constructor<?> ctor = HiddenApiReflection.findConstructor(Root.class, String.class);
+
+        assertEquals("created", ((Root) ctor.newInstance("created")).mAssets);
+    }
+
+    @Test
+    public void resolvedMembersAreCached() throws Exception {
+        assertSame(HiddenApiReflection.findField(Leaf.class, "mAssets"),
+                HiddenApiReflection.findField(new Leaf(), "mAssets"));
+        assertSame(HiddenApiReflection.findMethod(Leaf.class, "addAssetPath", String.class),
+                HiddenApiReflection.findMethod(new Leaf(), "addAssetPath", String.class));
+        assertSame(HiddenApiReflection.findConstructor(Root.class, String.class),
+                HiddenApiReflection.findConstructor(Root.class, String.class));
+    }
+
+    @Test
+    public void membersAreCachedPerClass() throws Exception {
+        Field fromLeaf = HiddenApiReflection.findField(Leaf.class, "mName");
+        Field fromRoot = HiddenApiReflection.findField(Root.class, "mName");
+
+        assertNotSame(fromLeaf, fromRoot);
+        assertSame(fromLeaf, HiddenApiReflection.findField(Leaf.class, "mName"));
+        assertSame(fromRoot, HiddenApiReflection.findField(Root.class, "mName"));
+    }
+
+    @Test
+    public void missingMembersThrowOnEveryLookup() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                HiddenApiReflection.findField(Leaf.class, "mMissing");
+                fail();
+            } catch (NoSuchFieldException e) {
+                assertTrue(e.getMessage().contains("mMissing"));
+            }
+            try {
+                HiddenApiReflection.findMethod(Leaf.class, "addAssetPath", int.class);
+                fail();
+            } catch (NoSuchMethodException e) {
+                assertTrue(e.getMessage().contains("addAssetPath"));
+            }
+            try {
+                HiddenApiReflection.findConstructor(Leaf.class, int.class);
+                fail();
+            } catch (NoSuchMethodException e) {
+                assertTrue(e.getMessage().contains("int"));
+            }
+        }
+    }
+
+    @Test
+    public void missingMethodIsNotCachedForOtherParameters() throws Exception {
+        try {
+            HiddenApiReflection.findMethod(Middle.class, "addAssetPath", long.class);
+            fail();
+        } catch (NoSuchMethodException ignored) {
+            //expected
+        }
+        assertEquals(Middle.class, HiddenApiReflection.findMethod(Middle.class, "addAssetPath").getDeclaringClass());
+    }
+
+    @Test
+    public void fieldArrayOfAncestorIsExpandedAndReduced() throws Exception {
+        Leaf leaf = new Leaf();
+        HiddenApiReflection.expandFieldArray(leaf, "mPaths", new String[]{"split.apk"});
+        assertArrayEquals(new String[]{"split.apk", "base.apk"}, leaf.paths());
+
+        HiddenApiReflection.reduceFieldArray(leaf, "mPaths", 1);
+        assertArrayEquals(new String[]{"base.apk"}, leaf.paths());
+    }
+
+    @SuppressWarnings("unused")
+    private static class Root {
+
+        private final String mAssets;
+
+        private String mName = "root";
+
+        private String[] mPaths = {"base.apk"};
+
+        Root() {
+            this("root assets");
+        }
+
+        private Root(String assets) {
+            mAssets = assets;
+        }
+
+        private int addAssetPath(String path) {
+            return 1;
+        }
+
+        String[] getApkAssets() {
+            return new String[]{"root"};
+        }
+
+        String[] paths() {
+            return mPaths;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class Middle extends Root {
+
+        private String mName = "middle";
+
+        private int addAssetPath() {
+            return 0;
+        }
+    }
+
+    private static class Leaf extends Middle {
+
+        @SuppressWarnings("unused")
+        private int addAssetPath(String path, boolean overlay) {
+            return 2;
+        }
+
+        @Override
+        String[] getApkAssets() {
+            return new String[]{"leaf"};
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SplitApplicationLoadersTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final SplitApplicationLoaders loaders = new SplitApplicationLoaders();
+
+    @Test
+    public void validLoadersAreSharedUntilTheyChange() throws Throwable {
+        SplitDexClassLoader java = loader("java");
+        SplitDexClassLoader kotlin = loader("kotlin");
+        loaders.addClassLoaderIfAbsent(java);
+        SplitDexClassLoader[] snapshot = loaders.getValidClassLoaderArray();
+
+        assertSame(snapshot, loaders.getValidClassLoaderArray());
+        assertSame(loaders.getValidClassLoaders(), loaders.getValidClassLoaders());
+        assertArrayEquals(new SplitDexClassLoader[]{java}, snapshot);
+
+        loaders.addClassLoaderIfAbsent(kotlin);
+        assertNotSame(snapshot, loaders.getValidClassLoaderArray());
+        assertEquals(new HashSet<>(Arrays.asList(java, kotlin)), loaders.getValidClassLoaders());
+
+        loaders.setClassLoaderValid(java, false);
+        assertArrayEquals(new SplitDexClassLoader[]{kotlin}, loaders.getValidClassLoaderArray());
+        assertEquals(Collections.singleton(kotlin), loaders.getValidClassLoaders());
+        assertSame(java, loaders.getClassLoader("java"));
+        assertNull(loaders.getValidClassLoader("java"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sharedValidLoadersCanNotBeModified() throws Throwable {
+        loaders.addClassLoaderIfAbsent(loader("java"));
+        loaders.getValidClassLoaders().clear();
+    }
+
+    @Test
+    public void validLoaderOfSameSplitIsKept() throws Throwable {
+        SplitDexClassLoader first = loader("java");
+        SplitDexClassLoader second = loader("java");
+
+        assertSame(first, loaders.addClassLoaderIfAbsent(first));
+        assertSame(first, loaders.addClassLoaderIfAbsent(second));
+        assertEquals(1, loaders.getValidClassLoaderArray().length);
+
+        loaders.setClassLoaderValid(first, false);
+        assertSame("invalid loader is replaced", second, loaders.addClassLoaderIfAbsent(second));
+        assertArrayEquals(new SplitDexClassLoader[]{second}, loaders.getValidClassLoaderArray());
+    }
+
+    @Test
+    public void loadersAreLookedUpByModuleNames() throws Throwable {
+        SplitDexClassLoader java = loader("java");
+        SplitDexClassLoader kotlin = loader("kotlin");
+        loaders.addClassLoaderIfAbsent(java);
+        loaders.addClassLoaderIfAbsent(kotlin);
+        loaders.setClassLoaderValid(kotlin, false);
+
+        Set<SplitDexClassLoader> found = loaders.getValidClassLoaders(Arrays.asList("java", "kotlin", "missing"));
+        assertEquals(Collections.singleton(java), found);
+        assertNull(loaders.getValidClassLoaders(null));
+    }
+
+    @Test
+    public void librariesAreOwnedByValidLoaders() throws Throwable {
+        SplitDexClassLoader player = TestSplitLoaders.create("player", Collections.<String>emptyList(),
+                TestSplitLoaders.libraryDir(tmp.getRoot(), "player", "libcodec.so", "libplayer.so", "player.txt"));
+        SplitDexClassLoader codec = TestSplitLoaders.create("codec", Collections.<String>emptyList(),
+                TestSplitLoaders.libraryDir(tmp.getRoot(), "codec", "libcodec.so"));
+        loaders.addClassLoaderIfAbsent(player);
+        loaders.addClassLoaderIfAbsent(codec);
+
+        assertEquals(new HashSet<>(Arrays.asList("codec", "player")), player.libraryNames());
+        assertSame(player, loaders.getValidLibraryOwner("player"));
+        SplitDexClassLoader codecOwner = loaders.getValidLibraryOwner("codec");
+        assertTrue(codecOwner == player || codecOwner == codec);
+        assertNull(loaders.getValidLibraryOwner("player.txt"));
+        assertNull(loaders.getValidLibraryOwner("missing"));
+
+        loaders.setClassLoaderValid(player, false);
+        assertNull(loaders.getValidLibraryOwner("player"));
+        assertSame(codec, loaders.getValidLibraryOwner("codec"));
+    }
+
+    @Test
+    public void lookupsAllocateNothing() throws Throwable {
+        for (int i = 0; i < 8; i++) {
+            loaders.addClassLoaderIfAbsent(TestSplitLoaders.create("split" + i, Collections.<String>emptyList(),
+                    TestSplitLoaders.libraryDir(tmp.getRoot(), "split" + i, "libsplit" + i + ".so")));
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        lookUp(200000);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        int found = lookUp(1000000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(3000000, found);
+        //a copied set of loaders per lookup, as before snapshots, would take hundreds of MB.
+        assertTrue("allocated " + allocated + " bytes for 1M lookups", allocated < 16 * 1024);
+    }
+
+    private int lookUp(int count) {
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            found += loaders.getValidClassLoaderArray().length > 0 ? 1 : 0;
+            found += loaders.getValidLibraryOwner("split7") != null ? 1 : 0;
+            found += loaders.getValidLibraryOwner("missing") == null ? 1 : 0;
+        }
+        return found;
+    }
+
+    private SplitDexClassLoader loader(String splitName) throws Throwable {
+        return TestSplitLoaders.create(splitName, Collections.<String>emptyList(), (File) null);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SplitClassIndexTest {
+
+    @Test
+    public void everyIndexedClassIsFound() throws IOException {
+        Map<String, List<String>> splitClasses = new LinkedHashMap<>();
+        for (int split = 0; split < 20; split++) {
+            List<String> classNames = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                classNames.add("com.example.split" + split + ".Class" + i);
+            }
+            splitClasses.put("split" + split, classNames);
+        }
+        SplitClassIndex index = SplitClassIndex.read(new ByteArrayInputStream(write(splitClasses)));
+        assertEquals(20 * 500, index.size());
+        for (Map.Entry<String, List<String>> entry : splitClasses.entrySet()) {
+            for (String className : entry.getValue()) {
+                assertEquals(className, entry.getKey(), index.findSplit(className));
+            }
+        }
+        assertNull(index.findSplit("com.example.split0.Missing"));
+        assertFalse(index.contains("com.example.split0.Missing"));
+        assertNull(index.findSplit("java.lang.String"));
+        assertNull(index.findSplit(""));
+    }
+
+    @Test
+    public void classDefinedByMoreThanOneSplitHasNoOwner() throws IOException {
+        Map<String, List<String>> splitClasses = new LinkedHashMap<>();
+        splitClasses.put("a", Arrays.asList("com.example.Shared", "com.example.A"));
+        splitClasses.put("b", Arrays.asList("com.example.Shared", "com.example.B"));
+        SplitClassIndex index = SplitClassIndex.read(new ByteArrayInputStream(write(splitClasses)));
+        assertNull(index.findSplit("com.example.Shared"));
+        assertTrue(index.contains("com.example.Shared"));
+        assertEquals("a", index.findSplit("com.example.A"));
+        assertEquals("b", index.findSplit("com.example.B"));
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() throws IOException {
+        SplitClassIndex index = SplitClassIndex.read(new ByteArrayInputStream(write(new LinkedHashMap<String, List<String>>())));
+        assertEquals(0, index.size());
+        assertNull(index.findSplit("com.example.A"));
+    }
+
+    @Test
+    public void malformedIndexIsRejected() throws IOException {
+        Map<String, List<String>> splitClasses = new LinkedHashMap<>();
+        splitClasses.put("a", Arrays.asList("com.example.A", "com.example.B"));
+        byte[] bytes = write(splitClasses);
+        assertRejected(Arrays.copyOf(bytes, bytes.length - 1));
+        assertRejected(Arrays.copyOf(bytes, bytes.length + 1));
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 0;
+        assertRejected(badMagic);
+        byte[] badVersion = bytes.clone();
+        badVersion[7] = 2;
+        assertRejected(badVersion);
+        for (int length = 0; length < 12; length++) {
+            assertRejected(Arrays.copyOf(bytes, length));
+        }
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            SplitClassIndex.read(new ByteArrayInputStream(bytes));
+            fail("Malformed index of " + bytes.length + " bytes is read");
+        } catch (IOException ignored) {
+
+        }
+    }
+
+    /**
+     * Same format as SplitClassIndexWriter of qigsaw gradle plugin.
+     */
+    static byte[] write(Map<String, List<String>> splitClasses) throws IOException {
+        List<String> splitNames = new ArrayList<>(splitClasses.keySet());
+        TreeMap<Long, Short> entries = new TreeMap<>();
+        for (short owner = 0; owner < splitNames.size(); owner++) {
+            for (String className : splitClasses.get(splitNames.get(owner))) {
+                long hash = SplitClassIndex.hash(className);
+                Short existing = entries.get(hash);
+                entries.put(hash, existing == null || existing == owner ? owner : (short) -1);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x51434958);
+        out.writeInt(1);
+        out.writeInt(splitNames.size());
+        for (String splitName : splitNames) {
+            out.writeUTF(splitName);
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<Long, Short> entry : entries.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeShort(entry.getValue());
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+}
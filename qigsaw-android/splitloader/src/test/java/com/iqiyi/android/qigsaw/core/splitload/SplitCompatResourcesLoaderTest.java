@@ -0,0 +1,431 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+
+import com.iqiyi.android.qigsaw.core.splitload.listener.OnSplitLoadListener;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SplitCompatResourcesLoaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Context context;
+
+    private TestSplitLoadManager loadManager;
+
+    private SplitAssetPathRecord assetPathRecord;
+
+    private FakeAssetPaths assetPaths;
+
+    @Before
+    public void setUp() {
+        context = new ContextWrapper(null);
+        loadManager = new TestSplitLoadManager();
+        assetPathRecord = new SplitAssetPathRecord();
+        assetPaths = new FakeAssetPaths(true);
+    }
+
+    @Test
+    public void nothingIsReadWithoutLoadedSplits() throws Throwable {
+        launchActivity(new FakeResources(newAssetManager()));
+
+        assertEquals(0, assetPaths.reads);
+    }
+
+    @Test
+    public void assetPathsAreReadOnceForEachAssetManager() throws Throwable {
+        String java = loadSplit("java");
+        AssetManager appAssets = newAssetManager();
+        assetPaths.add(appAssets, "/data/app/base.apk");
+
+        for (int i = 0; i < 10; i++) {
+            launchActivity(new FakeResources(appAssets));
+        }
+        assertEquals(1, assetPaths.reads);
+        assertEquals(Arrays.asList("/data/app/base.apk", java), assetPaths.paths(appAssets));
+
+        AssetManager activityAssets = newAssetManager();
+        assetPaths.add(activityAssets, java);
+        for (int i = 0; i < 10; i++) {
+            launchActivity(new FakeResources(activityAssets));
+        }
+        assertEquals(2, assetPaths.reads);
+        assertEquals("asset manager containing split is not installed again", 1, assetPaths.installs);
+    }
+
+    @Test
+    public void newlyLoadedSplitIsInstalledAlone() throws Throwable {
+        String java = loadSplit("java");
+        AssetManager appAssets = newAssetManager();
+        launchActivity(new FakeResources(appAssets));
+        String kotlin = loadSplit("kotlin");
+
+        launchActivity(new FakeResources(appAssets));
+        launchActivity(new FakeResources(appAssets));
+
+        assertEquals(2, assetPaths.reads);
+        assertEquals(Arrays.asList(java, kotlin), assetPaths.paths(appAssets));
+        assertEquals(2, assetPaths.installs);
+    }
+
+    @Test
+    public void missingSplitApkIsCheckedAgainUntilItExists() throws Throwable {
+        String java = loadSplit("java");
+        File missing = new File(loadSplit("missing"));
+        assertTrue(missing.delete());
+        AssetManager appAssets = newAssetManager();
+
+        launchActivity(new FakeResources(appAssets));
+        launchActivity(new FakeResources(appAssets));
+        assertEquals(Collections.singletonList(java), assetPaths.paths(appAssets));
+        assertEquals(4, assetPaths.reads);
+
+        assertTrue(missing.createNewFile());
+        launchActivity(new FakeResources(appAssets));
+        launchActivity(new FakeResources(appAssets));
+        assertEquals(Arrays.asList(java, missing.getAbsolutePath()), assetPaths.paths(appAssets));
+        assertEquals(5, assetPaths.reads);
+    }
+
+    @Test
+    public void assetPathsAreReadOnEveryCheckIfAssetManagerIsReplaced() throws Throwable {
+        assetPaths = new FakeAssetPaths(false);
+        loadSplit("java");
+        AssetManager appAssets = newAssetManager();
+
+        for (int i = 0; i < 3; i++) {
+            launchActivity(new FakeResources(appAssets));
+        }
+
+        assertEquals(6, assetPaths.reads);
+        assertEquals(1, assetPaths.installs);
+    }
+
+    @Test
+    public void splitsLoadedTogetherAreRecorded() throws Throwable {
+        String java = loadSplit("java");
+        String kotlin = loadSplit("kotlin");
+        AssetManager appAssets = newAssetManager();
+        FakeResources resources = new FakeResources(appAssets);
+
+        SplitCompatResourcesLoader.loadResources(context, resources, Arrays.asList(java, kotlin),
+                loadManager, assetPathRecord, assetPaths);
+        SplitCompatResourcesLoader.loadResources(context, resources, Collections.singletonList(java),
+                loadManager, assetPathRecord, assetPaths);
+        launchActivity(resources);
+
+        assertEquals(1, assetPaths.reads);
+        assertEquals(1, assetPaths.installs);
+        assertEquals(Arrays.asList(java, kotlin), assetPaths.paths(appAssets));
+    }
+
+    @Test(expected = SplitCompatResourcesException.class)
+    public void failureOfReadingAssetPathsIsThrown() throws Throwable {
+        loadSplit("java");
+        launchActivity(new FakeResources(null));
+    }
+
+    @Test
+    public void splitApksAreSetAsApkAssetsAtOnce() throws Throwable {
+        FakeAssetManager asset = new FakeAssetManager("/data/app/base.apk");
+
+        SplitCompatResourcesLoader.addAssetPaths(asset, Arrays.asList("java.apk", "kotlin.apk", "native.apk"),
+                FakeApkAssets.class.getName());
+
+        assertEquals(Arrays.asList("/data/app/base.apk", "java.apk", "kotlin.apk", "native.apk"), asset.paths());
+        assertEquals(1, asset.rebuilds);
+    }
+
+    @Test
+    public void splitApksAreAddedOneByOneIfApkAssetsFailToLoad() throws Throwable {
+        FakeAssetManager asset = new FakeAssetManager("/data/app/base.apk");
+
+        SplitCompatResourcesLoader.addAssetPaths(asset, Arrays.asList("java.apk", "broken.apk", "native.apk"),
+                FakeApkAssets.class.getName());
+
+        assertEquals("broken apk is rejected by addAssetPath",
+                Arrays.asList("/data/app/base.apk", "java.apk", "native.apk"), asset.paths());
+        assertEquals(2, asset.rebuilds);
+    }
+
+    @Test
+    public void splitApksAreAddedOneByOneWithoutSetApkAssets() throws Throwable {
+        AddOnlyAssetManager asset = new AddOnlyAssetManager();
+
+        SplitCompatResourcesLoader.addAssetPaths(asset, Arrays.asList("java.apk", "kotlin.apk"),
+                FakeApkAssets.class.getName());
+
+        assertEquals(Arrays.asList("java.apk", "kotlin.apk"), asset.paths);
+    }
+
+    @Test
+    public void splitApksAreAddedOneByOneWithoutApkAssetsClass() throws Throwable {
+        FakeAssetManager asset = new FakeAssetManager();
+
+        SplitCompatResourcesLoader.addAssetPaths(asset, Arrays.asList("java.apk", "kotlin.apk"),
+                "android.content.res.MissingApkAssets");
+        SplitCompatResourcesLoader.addAssetPaths(asset, Collections.singletonList("native.apk"),
+                FakeApkAssets.class.getName());
+        SplitCompatResourcesLoader.addAssetPaths(asset, Collections.singletonList("webview.apk"), null);
+
+        assertEquals(Arrays.asList("java.apk", "kotlin.apk", "native.apk", "webview.apk"), asset.paths());
+        assertEquals(4, asset.rebuilds);
+    }
+
+    /**
+     * Resources are checked by {@code Activity#getResources} and again before the activity is created.
+     */
+    private void launchActivity(Resources resources) throws SplitCompatResourcesException {
+        SplitCompatResourcesLoader.checkOrUpdateResources(context, resources, loadManager, assetPathRecord, assetPaths);
+        SplitCompatResourcesLoader.checkOrUpdateResources(context, resources, loadManager, assetPathRecord, assetPaths);
+    }
+
+    private String loadSplit(String splitName) throws IOException {
+        File apk = tmp.newFile(splitName + ".apk");
+        loadManager.putSplits(Collections.singletonList(new Split(splitName, apk.getAbsolutePath())));
+        return apk.getAbsolutePath();
+    }
+
+    /**
+     * {@link AssetManager} has no public constructor, its instances are only compared by identity here.
+     */
+    private static AssetManager newAssetManager() throws Exception {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        return (AssetManager) unsafeClass.getMethod("allocateInstance", Class.class)
+                .invoke(theUnsafe.get(null), AssetManager.class);
+    }
+
+    /**
+     * Shape of {@code AssetManager} since Android 9.0, every change of its apk assets rebuilds it.
+     */
+    @SuppressWarnings("unused")
+    private static class FakeAssetManager {
+
+        private FakeApkAssets[] mApkAssets;
+
+        int rebuilds;
+
+        FakeAssetManager(String... paths) {
+            mApkAssets = new FakeApkAssets[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                mApkAssets[i] = new FakeApkAssets(paths[i]);
+            }
+        }
+
+        private FakeApkAssets[] getApkAssets() {
+            return mApkAssets;
+        }
+
+        private void setApkAssets(FakeApkAssets[] apkAssets, boolean invalidateCaches) {
+            mApkAssets = apkAssets;
+            rebuilds++;
+        }
+
+        private int addAssetPath(String path) {
+            FakeApkAssets added;
+            try {
+                added = FakeApkAssets.loadFromPath(path);
+            } catch (IOException e) {
+                return 0;
+            }
+            FakeApkAssets[] apkAssets = Arrays.copyOf(mApkAssets, mApkAssets.length + 1);
+            apkAssets[mApkAssets.length] = added;
+            setApkAssets(apkAssets, true);
+            return apkAssets.length;
+        }
+
+        List<String> paths() {
+            List<String> paths = new ArrayList<>(mApkAssets.length);
+            for (FakeApkAssets apkAssets : mApkAssets) {
+                paths.add(apkAssets.path);
+            }
+            return paths;
+        }
+    }
+
+    /**
+     * {@code AssetManager} of a rom without {@code setApkAssets}.
+     */
+    @SuppressWarnings("unused")
+    private static final class AddOnlyAssetManager {
+
+        final List<String> paths = new ArrayList<>();
+
+        private FakeApkAssets[] getApkAssets() {
+            return new FakeApkAssets[0];
+        }
+
+        private int addAssetPath(String path) {
+            paths.add(path);
+            return paths.size();
+        }
+    }
+
+    private static final class FakeApkAssets {
+
+        final String path;
+
+        private FakeApkAssets(String path) {
+            this.path = path;
+        }
+
+        @SuppressWarnings("unused")
+        static FakeApkAssets loadFromPath(String path) throws IOException {
+            if (path.startsWith("broken")) {
+                throw new IOException("Failed to load " + path);
+            }
+            return new FakeApkAssets(path);
+        }
+    }
+
+    private static final class FakeResources extends Resources {
+
+        private final AssetManager asset;
+
+        @SuppressWarnings("deprecation")
+        FakeResources(AssetManager asset) {
+            super(null, null, null);
+            this.asset = asset;
+        }
+
+        @Override
+        public AssetManager getAssets() {
+            return asset;
+        }
+    }
+
+    /**
+     * Counts reads of asset paths, which are done by reflection on devices.
+     */
+    private static final class FakeAssetPaths implements SplitCompatResourcesLoader.AssetPathAccessor {
+
+        private final Map<AssetManager, List<String>> assetPaths = new IdentityHashMap<>();
+
+        private final boolean addsIntoExistingAssets;
+
+        int reads;
+
+        int installs;
+
+        FakeAssetPaths(boolean addsIntoExistingAssets) {
+            this.addsIntoExistingAssets = addsIntoExistingAssets;
+        }
+
+        void add(AssetManager asset, String path) {
+            paths(asset).add(path);
+        }
+
+        List<String> paths(AssetManager asset) {
+            List<String> paths = assetPaths.get(asset);
+            if (paths == null) {
+                paths = new ArrayList<>();
+                assetPaths.put(asset, paths);
+            }
+            return paths;
+        }
+
+        @Override
+        public List<String> getLoadedResourcesDirs(AssetManager asset) {
+            if (asset == null) {
+                throw new NullPointerException("asset");
+            }
+            reads++;
+            return new ArrayList<>(paths(asset));
+        }
+
+        @Override
+        public void installSplitResDirs(Context context, Resources resources, List<String> splitResPaths) {
+            installs++;
+            List<String> paths = paths(resources.getAssets());
+            List<String> sorted = new ArrayList<>(splitResPaths);
+            Collections.sort(sorted);
+            paths.addAll(sorted);
+        }
+
+        @Override
+        public boolean addsIntoExistingAssets() {
+            return addsIntoExistingAssets;
+        }
+    }
+
+    private static final class TestSplitLoadManager extends SplitLoadManager {
+
+        TestSplitLoadManager() {
+            super(null, "test", SplitLoad.MULTIPLE_CLASSLOADER);
+        }
+
+        @Override
+        public void injectPathClassloader() {
+
+        }
+
+        @Override
+        public void getResources(Resources resources) {
+
+        }
+
+        @Override
+        public Runnable createSplitLoadTask(List<Intent> splitFileIntents, OnSplitLoadListener loadListener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void preloadInstalledSplits(Collection<String> splitNames) {
+
+        }
+
+        @Override
+        public void loadInstalledSplits() {
+
+        }
+    }
+}
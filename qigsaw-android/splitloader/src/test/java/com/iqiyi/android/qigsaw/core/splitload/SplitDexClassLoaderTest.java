@@ -0,0 +1,291 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SplitDexClassLoaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void resourcesAreLookedUpOnlyInSplitsContainingThem() throws Throwable {
+        List<SplitDexClassLoader> loaders = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            loaders.add(TestSplitLoaders.create("split" + i, tmp.getRoot(),
+                    "classes.dex", "assets/split" + i + ".json", "res/layout/split" + i + ".xml"));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Collections.singletonList("split" + i), mayContain(loaders, "assets/split" + i + ".json"));
+            assertEquals(Collections.singletonList("split" + i), mayContain(loaders, "res/layout/split" + i + ".xml"));
+        }
+        assertEquals(5, mayContain(loaders, "classes.dex").size());
+        assertTrue(mayContain(loaders, "assets/missing.json").isEmpty());
+    }
+
+    @Test
+    public void entriesOfAllZipsOfSplitAreIndexed() throws Throwable {
+        File apk = TestSplitLoaders.writeZip(tmp.getRoot(), "java.apk", "classes.dex", "assets/java.json");
+        File secondary = TestSplitLoaders.writeZip(tmp.getRoot(), "java.zip", "classes2.dex", "assets/secondary.json");
+        File dex = tmp.newFile("classes3.dex");
+        FileOutputStream out = new FileOutputStream(dex);
+        out.write(new byte[]{'d', 'e', 'x', '\n', '0', '3', '5', 0});
+        out.close();
+        SplitDexClassLoader loader = TestSplitLoaders.create("java",
+                Arrays.asList(apk.getAbsolutePath(), secondary.getAbsolutePath(), dex.getAbsolutePath()), null);
+
+        assertTrue(loader.mayContainResource("assets/java.json"));
+        assertTrue(loader.mayContainResource("assets/secondary.json"));
+        assertFalse("plain dex file has no resources", loader.mayContainResource("classes3.dex"));
+    }
+
+    @Test
+    public void entriesAreReadOnce() throws Throwable {
+        SplitDexClassLoader loader = TestSplitLoaders.create("java", tmp.getRoot(), "assets/java.json");
+        assertTrue(loader.mayContainResource("assets/java.json"));
+        assertTrue(new File(tmp.getRoot(), "java.apk").delete());
+
+        assertTrue(loader.mayContainResource("assets/java.json"));
+        assertFalse(loader.mayContainResource("assets/kotlin.json"));
+    }
+
+    @Test
+    public void splitWithUnreadableZipIsAlwaysAsked() throws Throwable {
+        SplitDexClassLoader loader = TestSplitLoaders.create("java",
+                Collections.singletonList(new File(tmp.getRoot(), "missing.apk").getAbsolutePath()), null);
+
+        assertTrue(loader.mayContainResource("assets/java.json"));
+        assertTrue(loader.mayContainResource("assets/kotlin.json"));
+    }
+
+    @Test
+    public void splitWithoutDexHasNoResources() throws Throwable {
+        SplitDexClassLoader loader = TestSplitLoaders.create("native", Collections.<String>emptyList(), null);
+
+        assertFalse(loader.mayContainResource("assets/native.json"));
+    }
+
+    @Test
+    public void resourceLookupsAllocateNothing() throws Throwable {
+        List<SplitDexClassLoader> loaders = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            loaders.add(TestSplitLoaders.create("split" + i, tmp.getRoot(), "assets/split" + i + ".json"));
+        }
+        SplitDexClassLoader[] loaderArray = loaders.toArray(new SplitDexClassLoader[0]);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        countCandidates(loaderArray, 100000);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        int candidates = countCandidates(loaderArray, 500000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(500000, candidates);
+        assertTrue("allocated " + allocated + " bytes for 500K lookups", allocated < 16 * 1024);
+    }
+
+    @Test
+    public void indexedClassIsLookedUpOnlyInOwner() throws Throwable {
+        FakeDexClasses dexClasses = new FakeDexClasses().define("probe.c", Runnable.class);
+        Map<String, List<String>> splitClasses = new LinkedHashMap<>();
+        splitClasses.put("probe.a", Collections.singletonList("com.example.A"));
+        splitClasses.put("probe.c", Collections.singletonList(Runnable.class.getName()));
+        SplitDexClassLoader loader = createWithDependencies(dexClasses, index(splitClasses));
+
+        assertSame(Runnable.class, loader.findClass(Runnable.class.getName()));
+        assertEquals(Collections.singletonList("probe.c/java.lang.Runnable"), dexClasses.lookups);
+        assertEquals("own dex files are not asked", 0, dexClasses.misses);
+    }
+
+    @Test
+    public void classIndexedInItselfIsNotLookedUpInDependencies() throws Throwable {
+        FakeDexClasses dexClasses = new FakeDexClasses().define("probe.c", Runnable.class);
+        SplitDexClassLoader loader = createWithDependencies(dexClasses,
+                index(Collections.singletonMap("probe.app", Collections.singletonList(Runnable.class.getName()))));
+
+        assertNotFound(loader, Runnable.class.getName());
+        assertEquals(Collections.singletonList("probe.app/java.lang.Runnable"), dexClasses.lookups);
+        assertEquals(1, dexClasses.misses);
+    }
+
+    @Test
+    public void staleOwnerEndsWithOwnMiss() throws Throwable {
+        FakeDexClasses dexClasses = new FakeDexClasses();
+        SplitDexClassLoader loader = createWithDependencies(dexClasses,
+                index(Collections.singletonMap("probe.c", Collections.singletonList(Runnable.class.getName()))));
+
+        assertNotFound(loader, Runnable.class.getName());
+        assertEquals(Arrays.asList("probe.c/java.lang.Runnable", "probe.app/java.lang.Runnable"), dexClasses.lookups);
+    }
+
+    @Test
+    public void classNotIndexedIsNotLookedUpInDependencies() throws Throwable {
+        FakeDexClasses dexClasses = new FakeDexClasses().define("probe.c", Runnable.class);
+        SplitDexClassLoader loader = createWithDependencies(dexClasses,
+                index(Collections.singletonMap("probe.a", Collections.singletonList("com.example.A"))));
+
+        assertNotFound(loader, Runnable.class.getName());
+        assertEquals(Collections.singletonList("probe.app/java.lang.Runnable"), dexClasses.lookups);
+    }
+
+    @Test
+    public void dependencyWithoutDexIsNotLookedUp() throws Throwable {
+        FakeDexClasses dexClasses = new FakeDexClasses().define("probe.b", Runnable.class);
+        SplitDexClassLoader loader = createWithDependencies(dexClasses,
+                index(Collections.singletonMap("probe.b", Collections.singletonList(Runnable.class.getName()))));
+
+        assertNotFound(loader, Runnable.class.getName());
+        assertEquals(Collections.singletonList("probe.app/java.lang.Runnable"), dexClasses.lookups);
+    }
+
+    @Test
+    public void classSharedBySplitsIsLookedUpInDependenciesWithDex() throws Throwable {
+        FakeDexClasses dexClasses = new FakeDexClasses().define("probe.c", Runnable.class);
+        Map<String, List<String>> splitClasses = new LinkedHashMap<>();
+        splitClasses.put("probe.a", Collections.singletonList(Runnable.class.getName()));
+        splitClasses.put("probe.c", Collections.singletonList(Runnable.class.getName()));
+        SplitDexClassLoader loader = createWithDependencies(dexClasses, index(splitClasses));
+
+        assertSame(Runnable.class, loader.findClass(Runnable.class.getName()));
+        assertFalse(dexClasses.lookups.contains("probe.b/java.lang.Runnable"));
+        assertTrue(dexClasses.lookups.contains("probe.c/java.lang.Runnable"));
+    }
+
+    @Test
+    public void withoutIndexMissesAreLookedUpInDependenciesOnce() throws Throwable {
+        FakeDexClasses dexClasses = new FakeDexClasses().define("probe.c", Runnable.class);
+        SplitDexClassLoader loader = createWithDependencies(dexClasses, null);
+
+        assertSame(Runnable.class, loader.findClass(Runnable.class.getName()));
+        assertFalse(dexClasses.lookups.contains("probe.b/java.lang.Runnable"));
+        dexClasses.lookups.clear();
+
+        assertNotFound(loader, "com.example.Missing");
+        assertEquals(3, dexClasses.lookups.size());
+        assertFalse(dexClasses.lookups.contains("probe.b/com.example.Missing"));
+        dexClasses.lookups.clear();
+
+        assertNotFound(loader, "com.example.Missing");
+        assertEquals(Collections.singletonList("probe.app/com.example.Missing"), dexClasses.lookups);
+    }
+
+    private SplitDexClassLoader createWithDependencies(FakeDexClasses dexClasses, SplitClassIndex index) throws Throwable {
+        List<SplitDexClassLoader> dependencies = Arrays.asList(
+                SplitDexClassLoader.create("probe.a", dexPaths("probe.a"), null, null, null, null, index, dexClasses),
+                SplitDexClassLoader.create("probe.b", Collections.<String>emptyList(), null, null, null, null, index, dexClasses),
+                SplitDexClassLoader.create("probe.c", dexPaths("probe.c"), null, null, null, null, index, dexClasses));
+        return SplitDexClassLoader.create("probe.app", dexPaths("probe.app"), null, null,
+                Arrays.asList("probe.a", "probe.b", "probe.c"), dependencies, index, dexClasses);
+    }
+
+    private List<String> dexPaths(String splitName) {
+        return Collections.singletonList(new File(tmp.getRoot(), splitName + ".apk").getAbsolutePath());
+    }
+
+    private static SplitClassIndex index(Map<String, List<String>> splitClasses) throws Exception {
+        return SplitClassIndex.read(new ByteArrayInputStream(SplitClassIndexTest.write(splitClasses)));
+    }
+
+    private static void assertNotFound(SplitDexClassLoader loader, String name) {
+        try {
+            loader.findClass(name);
+            fail(name + " is found");
+        } catch (ClassNotFoundException e) {
+            assertEquals("probe.app/" + name, e.getMessage());
+        }
+    }
+
+    private static int countCandidates(SplitDexClassLoader[] loaders, int count) {
+        int candidates = 0;
+        for (int i = 0; i < count; i++) {
+            for (SplitDexClassLoader loader : loaders) {
+                if (loader.mayContainResource("assets/split7.json")) {
+                    candidates++;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static List<String> mayContain(List<SplitDexClassLoader> loaders, String name) {
+        List<String> candidates = new ArrayList<>();
+        for (SplitDexClassLoader loader : loaders) {
+            if (loader.mayContainResource(name)) {
+                candidates.add(loader.moduleName());
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Dex files of each split define the given classes, every lookup is recorded and a miss throws like dex files do.
+     */
+    private static final class FakeDexClasses implements SplitDexClassLoader.DexClassFinder {
+
+        final List<String> lookups = new ArrayList<>();
+
+        int misses;
+
+        private final Map<String, Class<?>> classes = new HashMap<>();
+
+        FakeDexClasses define(String splitName, Class<?> cl) {
+            classes.put(splitName + "/" + cl.getName(), cl);
+            return this;
+        }
+
+        @Override
+        public Class<?> findClass(SplitDexClassLoader loader, String name) throws ClassNotFoundException {
+            String lookup = loader.moduleName() + "/" + name;
+            lookups.add(lookup);
+            Class<?> cl = classes.get(lookup);
+            if (cl == null) {
+                misses++;
+                throw new ClassNotFoundException(lookup);
+            }
+            return cl;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import android.app.Application;
+import android.content.Intent;
+import android.content.res.Resources;
+
+import com.iqiyi.android.qigsaw.core.splitload.compat.NativePathMapper;
+import com.iqiyi.android.qigsaw.core.splitload.listener.OnSplitLoadListener;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitBriefInfo;
+import com.iqiyi.android.qigsaw.core.splitreport.SplitLoadError;
+import com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoIndexFactory.installPathManager;
+import static com.iqiyi.android.qigsaw.core.splitrequest.splitinfo.SplitInfoIndexFactory.split;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SplitLoadHandlerTest {
+
+    private static final long RESOURCES_COST = 200;
+
+    private final List<String> events = new ArrayList<>();
+
+    private final RecordingSplitLoader splitLoader = new RecordingSplitLoader();
+
+    private final RecordingActivator activator = new RecordingActivator();
+
+    private final TestSplitLoadManager loadManager = new TestSplitLoadManager();
+
+    private final SplitLoadHandler handler = new SplitLoadHandler(splitLoader, loadManager,
+            Collections.<Intent>emptyList(), null, activator, new NativePathMapper() {
+        @Override
+        public String map(String splitName, String originPath) {
+            return originPath;
+        }
+    });
+
+    private List<SplitBriefInfo> loadOKSplits;
+
+    private List<SplitLoadError> loadErrorSplits;
+
+    private long totalTimeCost;
+
+    @Before
+    public void setUp() throws Exception {
+        installPathManager();
+    }
+
+    @Test
+    public void classLoaderIsPublishedAfterApplicationIsCreated() {
+        commit(prepared("feature"));
+        assertEquals(Arrays.asList(
+                "loadCode:feature",
+                "prewarm:feature",
+                "createApplication:feature",
+                "loadResources:[feature]",
+                "publish:feature",
+                "attach:feature",
+                "providers:feature",
+                "onCreate:feature"), events);
+        assertEquals(1, loadOKSplits.size());
+        assertEquals(Collections.singleton("feature"), loadManager.getLoadedSplitNames());
+    }
+
+    @Test
+    public void classLoaderIsNotPublishedIfApplicationFailsToBeCreated() {
+        activator.failCreate.add("feature");
+        commit(prepared("feature"), prepared("other"));
+        assertFalse(events.contains("publish:feature"));
+        assertTrue(events.contains("unload:feature"));
+        assertTrue(events.indexOf("unload:feature") < events.indexOf("createApplication:other"));
+        assertTrue(events.contains("publish:other"));
+        assertEquals(1, loadErrorSplits.size());
+        assertEquals(SplitLoadError.CREATE_APPLICATION_FAILED, loadErrorSplits.get(0).errorCode);
+        assertEquals(Collections.singleton("other"), loadManager.getLoadedSplitNames());
+    }
+
+    @Test
+    public void resourcesAreNotLoadedForSplitFailingToCreateApplication() {
+        activator.failCreate.add("b");
+        commit(prepared("a"), prepared("b"), prepared("c"));
+        assertTrue(events.contains("loadResources:[a, c]"));
+        assertEquals(1, splitLoader.resourcesLoadCount);
+        assertTrue(events.indexOf("createApplication:c") < events.indexOf("loadResources:[a, c]"));
+        assertTrue(events.indexOf("loadResources:[a, c]") < events.indexOf("publish:a"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), loadManager.getLoadedSplitNames());
+    }
+
+    @Test
+    public void resourcesAreNotLoadedIfNoApplicationIsCreated() {
+        activator.failCreate.add("feature");
+        commit(prepared("feature"));
+        assertEquals(0, splitLoader.resourcesLoadCount);
+        assertTrue(loadManager.getLoadedSplitNames().isEmpty());
+    }
+
+    @Test
+    public void publishedClassLoaderIsUnloadedIfActivationFails() {
+        activator.failOnCreate.add("feature");
+        commit(prepared("feature"));
+        assertTrue(events.indexOf("publish:feature") < events.indexOf("unload:feature"));
+        assertTrue(loadOKSplits.isEmpty());
+        assertEquals(1, loadErrorSplits.size());
+        assertTrue(loadManager.getLoadedSplitNames().isEmpty());
+    }
+
+    @Test
+    public void splitPublishedByAnotherTaskIsNotActivatedAgain() {
+        splitLoader.publishedByOthers.add("feature");
+        commit(prepared("feature"));
+        assertFalse(events.contains("attach:feature"));
+        assertTrue(loadOKSplits.isEmpty());
+        assertTrue(loadErrorSplits.isEmpty());
+    }
+
+    @Test
+    public void dependenciesLoadedInSameTaskArePassedBeforePublished() {
+        commit(prepared("base"), prepared("feature", "base", "missing"));
+        List<ClassLoader> preparedDependencies = splitLoader.preparedDependencies.get("feature");
+        assertNotNull(preparedDependencies);
+        assertEquals(Collections.singletonList(splitLoader.classLoaders.get("base")), preparedDependencies);
+        assertTrue(events.indexOf("loadCode:feature") < events.indexOf("publish:base"));
+    }
+
+    @Test
+    public void failedDependencyIsNotPassed() {
+        splitLoader.failLoadCode.add("base");
+        commit(prepared("base"), prepared("feature", "base"));
+        assertEquals(null, splitLoader.preparedDependencies.get("feature"));
+        assertEquals(1, loadErrorSplits.size());
+        assertEquals(1, loadOKSplits.size());
+    }
+
+    @Test
+    public void resourcesCostIsNotChargedToEachSplit() {
+        splitLoader.resourcesCost = RESOURCES_COST;
+        commit(prepared("a"), prepared("b"), prepared("c"));
+        assertEquals(1, splitLoader.resourcesLoadCount);
+        assertEquals(3, loadOKSplits.size());
+        long sum = 0;
+        for (SplitBriefInfo info : loadOKSplits) {
+            assertTrue(info.splitName + " cost " + info.getTimeCost(), info.getTimeCost() < RESOURCES_COST);
+            sum += info.getTimeCost();
+        }
+        assertTrue(totalTimeCost >= RESOURCES_COST);
+        assertTrue(sum < RESOURCES_COST);
+    }
+
+    private SplitLoadHandler.PreparedSplit prepared(String splitName, String... dependencies) {
+        SplitInfo info = split(splitName, dependencies);
+        SplitLoadHandler.PreparedSplit split = new SplitLoadHandler.PreparedSplit(splitName, info,
+                new SplitBriefInfo(splitName, info.getSplitVersion(), false));
+        split.splitApkPath = new File(splitName + ".apk").getAbsolutePath();
+        return split;
+    }
+
+    private void commit(SplitLoadHandler.PreparedSplit... splits) {
+        long start = System.currentTimeMillis();
+        handler.commitSplits(Arrays.asList(splits), start, new SplitLoadHandler.OnSplitLoadFinishListener() {
+            @Override
+            public void onLoadFinish(List<SplitBriefInfo> loadOKSplits, List<SplitLoadError> loadErrorSplits, String process, long totalTimeCost) {
+                SplitLoadHandlerTest.this.loadOKSplits = loadOKSplits;
+                SplitLoadHandlerTest.this.loadErrorSplits = loadErrorSplits;
+                SplitLoadHandlerTest.this.totalTimeCost = totalTimeCost;
+            }
+        });
+    }
+
+    private static String nameOf(ClassLoader classLoader) {
+        return ((NamedClassLoader) classLoader).splitName;
+    }
+
+    private static final class NamedClassLoader extends ClassLoader {
+
+        final String splitName;
+
+        NamedClassLoader(String splitName) {
+            super(null);
+            this.splitName = splitName;
+        }
+    }
+
+    private final class RecordingSplitLoader implements SplitLoaderWrapper {
+
+        final Map<String, ClassLoader> classLoaders = new HashMap<>();
+
+        final Map<String, List<ClassLoader>> preparedDependencies = new HashMap<>();
+
+        final Set<String> failLoadCode = new HashSet<>();
+
+        final Set<String> publishedByOthers = new HashSet<>();
+
+        long resourcesCost;
+
+        int resourcesLoadCount;
+
+        @Override
+        public SplitLoader createSplitLoader() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ClassLoader loadCode(String splitName, List<String> addedDexPaths, File optimizedDirectory,
+                                    File librarySearchPath, List<String> dependencies,
+                                    List<ClassLoader> preparedDependencies) throws SplitLoadException {
+            events.add("loadCode:" + splitName);
+            if (failLoadCode.contains(splitName)) {
+                throw new SplitLoadException(SplitLoadError.LOAD_DEX_FAILED, new Exception(splitName));
+            }
+            this.preparedDependencies.put(splitName, preparedDependencies);
+            ClassLoader classLoader = new NamedClassLoader(splitName);
+            classLoaders.put(splitName, classLoader);
+            return classLoader;
+        }
+
+        @Override
+        public ClassLoader publishCode(ClassLoader classLoader) {
+            String splitName = nameOf(classLoader);
+            events.add("publish:" + splitName);
+            return publishedByOthers.contains(splitName) ? new NamedClassLoader(splitName) : classLoader;
+        }
+
+        @Override
+        public void unloadCode(ClassLoader classLoader) {
+            events.add("unload:" + nameOf(classLoader));
+        }
+
+        @Override
+        public void loadResources(String splitApkPath) {
+            events.add("loadResources:" + new File(splitApkPath).getName());
+        }
+
+        @Override
+        public void loadResources(List<String> splitApkPaths) {
+            List<String> splitNames = new ArrayList<>(splitApkPaths.size());
+            for (String splitApkPath : splitApkPaths) {
+                splitNames.add(new File(splitApkPath).getName().replace(".apk", ""));
+            }
+            events.add("loadResources:" + splitNames);
+            resourcesLoadCount++;
+            if (resourcesCost > 0) {
+                try {
+                    Thread.sleep(resourcesCost);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private final class RecordingActivator extends SplitActivator {
+
+        final Set<String> failCreate = new HashSet<>();
+
+        final Set<String> failOnCreate = new HashSet<>();
+
+        private final Map<Application, String> applications = new HashMap<>();
+
+        RecordingActivator() {
+            super(null, null);
+        }
+
+        @Override
+        Application createSplitApplication(ClassLoader classLoader, String splitName) throws SplitLoadException {
+            events.add("createApplication:" + splitName);
+            if (failCreate.contains(splitName)) {
+                throw new SplitLoadException(SplitLoadError.CREATE_APPLICATION_FAILED, new Exception(splitName));
+            }
+            Application application = new Application();
+            applications.put(application, splitName);
+            return application;
+        }
+
+        @Override
+        void prewarmSplitApplicationClass(ClassLoader classLoader, String splitName) {
+            events.add("prewarm:" + splitName);
+        }
+
+        @Override
+        void attachSplitApplication(Application application) {
+            events.add("attach:" + applications.get(application));
+        }
+
+        @Override
+        void createAndActivateSplitContentProviders(ClassLoader classLoader, String splitName) {
+            events.add("providers:" + splitName);
+        }
+
+        @Override
+        void invokeOnCreateForSplitApplication(Application application) throws SplitLoadException {
+            String splitName = applications.get(application);
+            events.add("onCreate:" + splitName);
+            if (failOnCreate.contains(splitName)) {
+                throw new SplitLoadException(SplitLoadError.ACTIVATE_APPLICATION_FAILED, new Exception(splitName));
+            }
+        }
+    }
+
+    private static final class TestSplitLoadManager extends SplitLoadManager {
+
+        TestSplitLoadManager() {
+            super(null, "test", SplitLoad.MULTIPLE_CLASSLOADER);
+        }
+
+        @Override
+        public void injectPathClassloader() {
+
+        }
+
+        @Override
+        public void getResources(Resources resources) {
+
+        }
+
+        @Override
+        public Runnable createSplitLoadTask(List<Intent> splitFileIntents, OnSplitLoadListener loadListener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void preloadInstalledSplits(Collection<String> splitNames) {
+
+        }
+
+        @Override
+        public void loadInstalledSplits() {
+
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Creates split class loaders of zip files and library directories written into a temporary directory.
+ */
+final class TestSplitLoaders {
+
+    private TestSplitLoaders() {
+
+    }
+
+    static File writeZip(File dir, String fileName, String... entryNames) throws IOException {
+        File zip = new File(dir, fileName);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            for (String entryName : entryNames) {
+                out.putNextEntry(new ZipEntry(entryName));
+                out.write(entryName.getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return zip;
+    }
+
+    static File libraryDir(File dir, String splitName, String... fileNames) throws IOException {
+        File libDir = new File(dir, splitName + "-lib");
+        if (!libDir.mkdirs()) {
+            throw new IOException("Failed to create " + libDir);
+        }
+        for (String fileName : fileNames) {
+            if (!new File(libDir, fileName).createNewFile()) {
+                throw new IOException("Failed to create " + fileName);
+            }
+        }
+        return libDir;
+    }
+
+    static SplitDexClassLoader create(String splitName, List<String> dexPaths, File libraryDir) throws Throwable {
+        return SplitDexClassLoader.create(splitName, dexPaths, null, libraryDir, null, null, null);
+    }
+
+    static SplitDexClassLoader create(String splitName, File dir, String... entryNames) throws Throwable {
+        File apk = writeZip(dir, splitName + ".apk", entryNames);
+        return create(splitName, Collections.singletonList(apk.getAbsolutePath()), null);
+    }
+}
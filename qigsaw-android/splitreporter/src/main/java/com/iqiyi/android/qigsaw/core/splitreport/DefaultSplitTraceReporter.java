@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitreport;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import java.util.List;
+
+public class DefaultSplitTraceReporter implements SplitTraceReporter {
+
+    private static final String TAG = "SplitTraceReporter";
+
+    protected final Context context;
+
+    public DefaultSplitTraceReporter(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public void onInstallTraced(@NonNull SplitBriefInfo split, @NonNull List<SplitPhase> phases) {
+        SplitLog.i(TAG, "Install phases of %s: %s", split.splitName, phases);
+    }
+
+    @Override
+    public void onLoadTraced(String processName, @NonNull SplitBriefInfo split, @NonNull List<SplitPhase> phases) {
+        SplitLog.i(TAG, "Load phases of %s in process %s: %s", split.splitName, processName, phases);
+    }
+}
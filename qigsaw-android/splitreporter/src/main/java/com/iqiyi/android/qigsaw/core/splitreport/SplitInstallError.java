@@ -69,6 +69,11 @@ public final class SplitInstallError extends SplitBriefInfo {
      */
     public static final int DEX_OAT_FAILED = -18;
 
+    /**
+     * Installation of split is canceled before it starts, because installation of session is canceled.
+     */
+    public static final int INSTALL_CANCELED = -19;
+
     public static final int INTERNAL_ERROR = -100;
 
     /**
@@ -49,6 +49,8 @@ public interface SplitInstallReporter {
      * Using {@code startInstall} to install modules,
      * When one module is installed failed,
      * installation would be cancelled and this method will be invoked.
+     * It is also invoked when installation is canceled by user, with a split whose error code is
+     * {@link SplitInstallError#INSTALL_CANCELED}.
      *
      * @param installOKSplits    splits which have been installed successfully, maybe empty.
      * @param installErrorSplit split which has been installed unsuccessfully.
@@ -71,11 +73,12 @@ public interface SplitInstallReporter {
     /**
      * Using {@code deferredInstall} to install modules.
      * When installations of all modules are done,
-     * and at least one module failed,
+     * and at least one module failed or is canceled,
      * this method will be invoked.
      *
      * @param installOKSplits    splits which have been installed successfully, maybe empty.
-     * @param installErrorSplits splits which have been installed unsuccessfully.
+     * @param installErrorSplits splits which have been installed unsuccessfully, followed by canceled splits
+     *                           with error code {@link SplitInstallError#INSTALL_CANCELED}.
      * @param cost               time in ms.
      */
     @WorkerThread
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitreport;
+
+import androidx.annotation.Keep;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A traced phase of installing or loading a split, e.g. signature check, lib extraction or resources loading.
+ */
+@Keep
+public class SplitPhase {
+
+    /**
+     * Name of phase.
+     */
+    public final String name;
+
+    /**
+     * Number of phases enclosing this phase, phases of depth {@code 0} are not nested in other phases.
+     */
+    public final int depth;
+
+    /**
+     * Time in ns from start of first phase to start of this phase.
+     */
+    public final long startOffsetNanos;
+
+    /**
+     * Time cost in ns.
+     */
+    public final long durationNanos;
+
+    /**
+     * Attributes recorded in this phase, e.g. bytes of extracted files.
+     */
+    public final Map<String, String> attributes;
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public SplitPhase(@NonNull String name, int depth, long startOffsetNanos, long durationNanos, @NonNull Map<String, String> attributes) {
+        this.name = name;
+        this.depth = depth;
+        this.startOffsetNanos = startOffsetNanos;
+        this.durationNanos = durationNanos;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Convert spans of one split to phases, depth and start offset are relative to outermost and first span.
+     */
+    @NonNull
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public static List<SplitPhase> fromSpans(@NonNull List<SplitTrace.Span> spans) {
+        if (spans.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int minDepth = Integer.MAX_VALUE;
+        long firstStart = Long.MAX_VALUE;
+        for (SplitTrace.Span span : spans) {
+            minDepth = Math.min(minDepth, span.depth);
+            firstStart = Math.min(firstStart, span.startNanos);
+        }
+        List<SplitPhase> phases = new ArrayList<>(spans.size());
+        for (SplitTrace.Span span : spans) {
+            phases.add(new SplitPhase(span.name, span.depth - minDepth, span.startNanos - firstStart, span.durationNanos, span.attributes));
+        }
+        return phases;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "{\"name\":"
+                + "\"" + name + "\","
+                + "\"depth\":" + depth + ","
+                + "\"startOffsetNanos\":" + startOffsetNanos + ","
+                + "\"durationNanos\":" + durationNanos + ","
+                + "\"attributes\":" + attributes
+                + "}";
+    }
+}
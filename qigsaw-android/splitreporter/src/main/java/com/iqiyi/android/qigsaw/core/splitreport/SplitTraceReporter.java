@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitreport;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * report per-phase breakdown of installing and loading splits, only called if tracing is enabled.
+ */
+public interface SplitTraceReporter {
+
+    /**
+     * When a split is installed, successfully or not, this method will be invoked in main process.
+     *
+     * @param split  split which has been installed.
+     * @param phases traced phases of installation, in order they are started.
+     */
+    void onInstallTraced(@NonNull SplitBriefInfo split, @NonNull List<SplitPhase> phases);
+
+    /**
+     * When a split is loaded, successfully or not, this method will be invoked on main thread.
+     *
+     * @param processName current process name.
+     * @param split       split which has been loaded.
+     * @param phases      traced phases of loading, in order they are started.
+     */
+    void onLoadTraced(String processName, @NonNull SplitBriefInfo split, @NonNull List<SplitPhase> phases);
+
+}
@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link SplitInfoListing} backed by binary split-details, see {@link SplitDetailsBinary}.
+ * Only split names are decoded eagerly, each {@link SplitInfo} is decoded on first access.
+ */
+final class MappedSplitInfoListing implements SplitInfoListing {
+
+    private final ByteBuffer buffer;
+
+    private final int formatVersion;
+
+    private final int stringCount;
+
+    private final int stringTableOffset;
+
+    private final int splitCount;
+
+    private final int splitRecordOffset;
+
+    private final String[] strings;
+
+    private final SplitInfo[] splitInfos;
+
+    private final Map<String, Integer> splitIndexes;
+
+    private volatile List<SplitInfo> allSplitInfo;
+
+    MappedSplitInfoListing(ByteBuffer buffer, int formatVersion) {
+        this.buffer = buffer;
+        this.formatVersion = formatVersion;
+        this.stringCount = buffer.getInt(SplitDetailsBinary.OFFSET_STRING_COUNT);
+        this.stringTableOffset = buffer.getInt(SplitDetailsBinary.OFFSET_STRING_TABLE);
+        this.splitCount = buffer.getInt(SplitDetailsBinary.OFFSET_SPLIT_COUNT);
+        this.splitRecordOffset = buffer.getInt(SplitDetailsBinary.OFFSET_SPLIT_RECORDS);
+        this.strings = new String[stringCount];
+        this.splitInfos = new SplitInfo[splitCount];
+        this.splitIndexes = new HashMap<>(splitCount * 2);
+        for (int i = 0; i < splitCount; i++) {
+            splitIndexes.put(getString(buffer.getInt(recordOffset(i) + SplitDetailsBinary.RECORD_NAME)), i);
+        }
+    }
+
+    @Override
+    public SplitInfo getSplitInfo(String splitName) {
+        Integer index = splitIndexes.get(splitName);
+        if (index == null) {
+            return null;
+        }
+        return getSplitInfo(index);
+    }
+
+    @Override
+    public Collection<SplitInfo> getAllSplitInfo() {
+        List<SplitInfo> result = allSplitInfo;
+        if (result == null) {
+            SplitInfo[] array = new SplitInfo[splitCount];
+            for (int i = 0; i < splitCount; i++) {
+                array[i] = getSplitInfo(i);
+            }
+            result = Collections.unmodifiableList(Arrays.asList(array));
+            allSplitInfo = result;
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> getSplitNames() {
+        List<String> names = new ArrayList<>(splitCount);
+        for (int i = 0; i < splitCount; i++) {
+            names.add(getString(buffer.getInt(recordOffset(i) + SplitDetailsBinary.RECORD_NAME)));
+        }
+        return names;
+    }
+
+    @Override
+    public List<String> getDependencies(String splitName) {
+        Integer index = splitIndexes.get(splitName);
+        if (index == null) {
+            return null;
+        }
+        return getStringList(buffer.getInt(recordOffset(index) + SplitDetailsBinary.RECORD_DEPENDENCIES));
+    }
+
+    private synchronized SplitInfo getSplitInfo(int index) {
+        SplitInfo splitInfo = splitInfos[index];
+        if (splitInfo == null) {
+            splitInfo = decodeSplitInfo(recordOffset(index));
+            splitInfos[index] = splitInfo;
+        }
+        return splitInfo;
+    }
+
+    private SplitInfo decodeSplitInfo(int record) {
+        String splitName = getString(buffer.getInt(record + SplitDetailsBinary.RECORD_NAME));
+        String version = getString(buffer.getInt(record + SplitDetailsBinary.RECORD_VERSION));
+        int flags = buffer.getInt(record + SplitDetailsBinary.RECORD_FLAGS);
+        int minSdkVersion = buffer.getInt(record + SplitDetailsBinary.RECORD_MIN_SDK_VERSION);
+        int dexNumber = buffer.getInt(record + SplitDetailsBinary.RECORD_DEX_NUMBER);
+        List<String> workProcesses = getStringList(buffer.getInt(record + SplitDetailsBinary.RECORD_WORK_PROCESSES));
+        List<String> dependencies = getStringList(buffer.getInt(record + SplitDetailsBinary.RECORD_DEPENDENCIES));
+        Map<String, SplitInfo.PatchData> patchDataMap = null;
+        if (formatVersion >= 2) {
+            patchDataMap = getPatchDataMap(buffer.getInt(record + SplitDetailsBinary.RECORD_PATCH_DATA));
+        }
+        List<SplitInfo.ApkData> apkDataList = getApkDataList(buffer.getInt(record + SplitDetailsBinary.RECORD_APK_DATA), patchDataMap);
+        List<SplitInfo.LibData> libDataList = getLibDataList(buffer.getInt(record + SplitDetailsBinary.RECORD_LIB_DATA));
+        String appVersionName = getString(buffer.getInt(SplitDetailsBinary.OFFSET_APP_VERSION_NAME));
+        return new SplitInfo(
+                splitName, appVersionName, version,
+                (flags & SplitDetailsBinary.FLAG_BUILT_IN) != 0, minSdkVersion, dexNumber,
+                workProcesses, dependencies, apkDataList,
+                libDataList
+        );
+    }
+
+    private int recordOffset(int index) {
+        return splitRecordOffset + index * SplitDetailsBinary.SPLIT_RECORD_SIZE;
+    }
+
+    /**
+     * Missing string is decoded as empty string, which keeps the same semantic with {@code JSONObject#optString}.
+     */
+    synchronized String getString(int index) {
+        if (index == SplitDetailsBinary.NO_INDEX) {
+            return "";
+        }
+        if (index < 0 || index >= stringCount) {
+            throw new IndexOutOfBoundsException("String index " + index + " is out of bounds " + stringCount);
+        }
+        String value = strings[index];
+        if (value == null) {
+            int offset = buffer.getInt(stringTableOffset + index * 4);
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset + 4);
+            duplicate.get(bytes);
+            value = new String(bytes, SplitDetailsBinary.UTF_8);
+            strings[index] = value;
+        }
+        return value;
+    }
+
+    List<String> getStringList(int offset) {
+        if (offset == SplitDetailsBinary.NO_INDEX) {
+            return null;
+        }
+        int count = buffer.getInt(offset);
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(getString(buffer.getInt(offset + 4 + i * 4)));
+        }
+        return values;
+    }
+
+    private List<SplitInfo.ApkData> getApkDataList(int offset, Map<String, SplitInfo.PatchData> patchDataMap) {
+        int count = buffer.getInt(offset);
+        List<SplitInfo.ApkData> apkDataList = new ArrayList<>(count);
+        int position = offset + 4;
+        for (int i = 0; i < count; i++) {
+            String abi = getString(buffer.getInt(position));
+            String url = getString(buffer.getInt(position + 4));
+            String md5 = getString(buffer.getInt(position + 8));
+            long size = buffer.getLong(position + 12);
+            SplitInfo.PatchData patchData = patchDataMap == null ? null : patchDataMap.get(abi);
+            apkDataList.add(new SplitInfo.ApkData(abi, url, md5, size, patchData));
+            position += SplitDetailsBinary.APK_DATA_SIZE;
+        }
+        return apkDataList;
+    }
+
+    /**
+     * @return patch data keyed by abi of apk.
+     */
+    private Map<String, SplitInfo.PatchData> getPatchDataMap(int offset) {
+        if (offset == SplitDetailsBinary.NO_INDEX) {
+            return null;
+        }
+        int count = buffer.getInt(offset);
+        Map<String, SplitInfo.PatchData> patchDataMap = new HashMap<>(count * 2);
+        int position = offset + 4;
+        for (int i = 0; i < count; i++) {
+            String abi = getString(buffer.getInt(position));
+            String baseMd5 = getString(buffer.getInt(position + 4));
+            String url = getString(buffer.getInt(position + 8));
+            String md5 = getString(buffer.getInt(position + 12));
+            long size = buffer.getLong(position + 16);
+            patchDataMap.put(abi, new SplitInfo.PatchData(baseMd5, url, md5, size));
+            position += SplitDetailsBinary.PATCH_DATA_SIZE;
+        }
+        return patchDataMap;
+    }
+
+    private List<SplitInfo.LibData> getLibDataList(int offset) {
+        if (offset == SplitDetailsBinary.NO_INDEX) {
+            return null;
+        }
+        int count = buffer.getInt(offset);
+        List<SplitInfo.LibData> libDataList = new ArrayList<>(count);
+        int position = offset + 4;
+        for (int i = 0; i < count; i++) {
+            String abi = getString(buffer.getInt(position));
+            int libCount = buffer.getInt(position + 4);
+            position += 8;
+            List<SplitInfo.LibData.Lib> libs = new ArrayList<>(libCount);
+            for (int j = 0; j < libCount; j++) {
+                String name = getString(buffer.getInt(position));
+                String md5 = getString(buffer.getInt(position + 4));
+                long size = buffer.getLong(position + 8);
+                libs.add(new SplitInfo.LibData.Lib(name, md5, size));
+                position += SplitDetailsBinary.LIB_SIZE;
+            }
+            libDataList.add(new SplitInfo.LibData(abi, libs));
+        }
+        return libDataList;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.iqiyi.android.qigsaw.core.common.SplitJournalStore;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * Last access time of split versions, keyed by {@link #key}, which orders versions to evict instead of last modified time of dirs.
+ * Pids of processes which have loaded a version are also recorded, so that a version is known to be in use while any of them is running.
+ * Entries are stored in one checksummed {@link SplitJournalStore}.
+ */
+@RestrictTo(LIBRARY_GROUP)
+public final class SplitAccessLog {
+
+    private static final String TAG = "SplitAccessLog";
+
+    /**
+     * Max number of pids recorded for one version, older pids are dropped.
+     */
+    private static final int MAX_PIDS = 8;
+
+    private static final String KEY_TIME = "time";
+
+    private static final String KEY_PIDS = "pids";
+
+    private final SplitJournalStore journalStore;
+
+    SplitAccessLog(SplitJournalStore journalStore) {
+        this.journalStore = journalStore;
+    }
+
+    public static SplitAccessLog get() {
+        return new SplitAccessLog(SplitJournalStore.get(SplitPathManager.require().getAccessLogFile()));
+    }
+
+    public static String key(@NonNull String splitName, @NonNull String splitVersion) {
+        return splitName + "@" + splitVersion;
+    }
+
+    /**
+     * Record splits loaded by process {@code pid} with one write.
+     */
+    public boolean recordLoaded(@NonNull final Collection<SplitInfo> splits, final int pid, final long time) {
+        return journalStore.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                Map<String, String> updates = new HashMap<>(splits.size() * 2);
+                for (SplitInfo info : splits) {
+                    String key = key(info.getSplitName(), info.getSplitVersion());
+                    Entry entry = decode(values.get(key));
+                    List<Integer> pids = new ArrayList<>();
+                    if (entry != null) {
+                        pids.addAll(entry.pids);
+                    }
+                    pids.remove(Integer.valueOf(pid));
+                    pids.add(pid);
+                    if (pids.size() > MAX_PIDS) {
+                        pids = pids.subList(pids.size() - MAX_PIDS, pids.size());
+                    }
+                    updates.put(key, encode(new Entry(Math.max(time, entry == null ? 0 : entry.lastAccessTime), pids)));
+                }
+                return updates;
+            }
+        });
+    }
+
+    /**
+     * Record split which is installed or requested to install again.
+     */
+    public boolean recordInstalled(@NonNull SplitInfo info, final long time) {
+        final String key = key(info.getSplitName(), info.getSplitVersion());
+        return journalStore.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                Entry entry = decode(values.get(key));
+                if (entry != null && entry.lastAccessTime >= time) {
+                    return null;
+                }
+                List<Integer> pids = entry == null ? Collections.<Integer>emptyList() : entry.pids;
+                return Collections.singletonMap(key, encode(new Entry(time, pids)));
+            }
+        });
+    }
+
+    public boolean remove(@NonNull final Collection<String> keys) {
+        return journalStore.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                Map<String, String> updates = new HashMap<>();
+                for (String key : keys) {
+                    if (values.containsKey(key)) {
+                        updates.put(key, null);
+                    }
+                }
+                return updates;
+            }
+        });
+    }
+
+    /**
+     * Read all entries with one read of log, entries which can't be decoded are skipped.
+     */
+    @NonNull
+    public Map<String, Entry> getAll() {
+        Map<String, String> values = journalStore.getAll();
+        Map<String, Entry> entries = new HashMap<>(values.size());
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            Entry entry = decode(value.getValue());
+            if (entry != null) {
+                entries.put(value.getKey(), entry);
+            }
+        }
+        return entries;
+    }
+
+    private static String encode(Entry entry) {
+        JSONObject object = new JSONObject();
+        try {
+            object.put(KEY_TIME, entry.lastAccessTime);
+            JSONArray pids = new JSONArray();
+            for (int pid : entry.pids) {
+                pids.put(pid);
+            }
+            object.put(KEY_PIDS, pids);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return object.toString();
+    }
+
+    @Nullable
+    private static Entry decode(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            JSONObject object = new JSONObject(value);
+            JSONArray pidArray = object.getJSONArray(KEY_PIDS);
+            List<Integer> pids = new ArrayList<>(pidArray.length());
+            for (int i = 0; i < pidArray.length(); i++) {
+                pids.add(pidArray.getInt(i));
+            }
+            return new Entry(object.getLong(KEY_TIME), pids);
+        } catch (JSONException e) {
+            SplitLog.w(TAG, "Failed to decode access log entry " + value);
+            return null;
+        }
+    }
+
+    public static final class Entry {
+
+        public final long lastAccessTime;
+
+        /**
+         * Pids of processes which have loaded this version, latest last.
+         */
+        public final List<Integer> pids;
+
+        Entry(long lastAccessTime, @NonNull List<Integer> pids) {
+            this.lastAccessTime = lastAccessTime;
+            this.pids = Collections.unmodifiableList(new ArrayList<>(pids));
+        }
+
+        /**
+         * @param runningPids pids of running processes, {@code null} if unknown.
+         * @return whether this version may be loaded by a running process.
+         */
+        public boolean isLoaded(@Nullable Set<Integer> runningPids) {
+            if (runningPids == null) {
+                return !pids.isEmpty();
+            }
+            for (int pid : pids) {
+                if (runningPids.contains(pid)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -38,6 +38,8 @@ final class SplitDetails {
 
     private final SplitInfoListing splitInfoListing;
 
+    private final SplitInfoIndex splitInfoIndex;
+
     SplitDetails(String qigsawId,
                  String appVersionName,
                  List<String> updateSplits,
@@ -48,6 +50,7 @@ final class SplitDetails {
         this.updateSplits = updateSplits;
         this.splitEntryFragments = splitEntryFragments;
         this.splitInfoListing = splitInfoListing;
+        this.splitInfoIndex = new SplitInfoIndex(splitInfoListing);
     }
 
     String getQigsawId() {
@@ -69,4 +72,8 @@ final class SplitDetails {
     SplitInfoListing getSplitInfoListing() {
         return splitInfoListing;
     }
+
+    SplitInfoIndex getSplitInfoIndex() {
+        return splitInfoIndex;
+    }
 }
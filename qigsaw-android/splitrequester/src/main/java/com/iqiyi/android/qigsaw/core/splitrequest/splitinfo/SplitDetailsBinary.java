@@ -0,0 +1,400 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import com.iqiyi.android.qigsaw.core.common.FileUtil;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary encoding of split-details, emitted next to qigsaw_*.json at compile time.
+ * <p>
+ * All values are big-endian. Layout:
+ * <pre>
+ * header         | magic, format version, header size, file length, crc32 of the body,
+ *                | string count/offset, split count/offset/record size,
+ *                | qigsawId, appVersionName, updateSplits, splitEntryFragments
+ * split records  | fixed-width {@link #SPLIT_RECORD_SIZE} bytes per split, in split-details order
+ * variable area  | string lists, apk data, lib data and patch data blocks referenced by split records
+ * string table   | one absolute int offset per string, then [int length][utf-8 bytes] per string
+ * </pre>
+ * Strings are referenced by index into the string table, lists and blocks by absolute offset.
+ * {@link #NO_INDEX} stands for a missing value.
+ * <p>
+ * Format version 2 stores patch data of apks in the split record slot which is reserved in version 1.
+ */
+final class SplitDetailsBinary {
+
+    private static final String TAG = "SplitDetailsBinary";
+
+    static final int MAGIC = 0x51534454;
+
+    static final int FORMAT_VERSION = 2;
+
+    /**
+     * Oldest format version which can be read, it has no patch data.
+     */
+    static final int MIN_FORMAT_VERSION = 1;
+
+    static final int HEADER_SIZE = 56;
+
+    static final int SPLIT_RECORD_SIZE = 40;
+
+    static final int NO_INDEX = -1;
+
+    static final int FLAG_BUILT_IN = 1;
+
+    static final int APK_DATA_SIZE = 20;
+
+    static final int LIB_SIZE = 16;
+
+    static final int PATCH_DATA_SIZE = 24;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int OFFSET_MAGIC = 0;
+
+    static final int OFFSET_FORMAT_VERSION = 4;
+
+    static final int OFFSET_HEADER_SIZE = 6;
+
+    static final int OFFSET_FILE_LENGTH = 8;
+
+    static final int OFFSET_CRC = 12;
+
+    static final int OFFSET_STRING_COUNT = 16;
+
+    static final int OFFSET_STRING_TABLE = 20;
+
+    static final int OFFSET_SPLIT_COUNT = 24;
+
+    static final int OFFSET_SPLIT_RECORDS = 28;
+
+    static final int OFFSET_SPLIT_RECORD_SIZE = 32;
+
+    static final int OFFSET_QIGSAW_ID = 36;
+
+    static final int OFFSET_APP_VERSION_NAME = 40;
+
+    static final int OFFSET_UPDATE_SPLITS = 44;
+
+    static final int OFFSET_SPLIT_ENTRY_FRAGMENTS = 48;
+
+    /**
+     * offsets of fields in split record.
+     */
+    static final int RECORD_NAME = 0;
+
+    static final int RECORD_VERSION = 4;
+
+    static final int RECORD_FLAGS = 8;
+
+    static final int RECORD_MIN_SDK_VERSION = 12;
+
+    static final int RECORD_DEX_NUMBER = 16;
+
+    static final int RECORD_WORK_PROCESSES = 20;
+
+    static final int RECORD_DEPENDENCIES = 24;
+
+    static final int RECORD_APK_DATA = 28;
+
+    static final int RECORD_LIB_DATA = 32;
+
+    static final int RECORD_PATCH_DATA = 36;
+
+    private SplitDetailsBinary() {
+
+    }
+
+    /**
+     * Map binary split-details file into memory, split info is decoded lazily on access.
+     */
+    static SplitDetails map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            FileUtil.closeQuietly(raf);
+        }
+    }
+
+    static SplitDetails read(@NonNull ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE) {
+            throw new IOException("Split details binary is too short: " + buffer.limit());
+        }
+        if (buffer.getInt(OFFSET_MAGIC) != MAGIC) {
+            throw new IOException("Bad magic of split details binary!");
+        }
+        int formatVersion = buffer.getShort(OFFSET_FORMAT_VERSION);
+        if (formatVersion < MIN_FORMAT_VERSION || formatVersion > FORMAT_VERSION) {
+            throw new IOException("Unsupported format version of split details binary: " + formatVersion);
+        }
+        int headerSize = buffer.getShort(OFFSET_HEADER_SIZE);
+        int fileLength = buffer.getInt(OFFSET_FILE_LENGTH);
+        if (headerSize != HEADER_SIZE || fileLength != buffer.limit()) {
+            throw new IOException("Split details binary is truncated, expected " + fileLength + " bytes but found " + buffer.limit());
+        }
+        if (buffer.getInt(OFFSET_SPLIT_RECORD_SIZE) != SPLIT_RECORD_SIZE) {
+            throw new IOException("Unsupported split record size of split details binary!");
+        }
+        if (buffer.getInt(OFFSET_CRC) != computeCrc(buffer, fileLength)) {
+            throw new IOException("Crc of split details binary is not matched!");
+        }
+        MappedSplitInfoListing listing = new MappedSplitInfoListing(buffer, formatVersion);
+        String qigsawId = listing.getString(buffer.getInt(OFFSET_QIGSAW_ID));
+        String appVersionName = listing.getString(buffer.getInt(OFFSET_APP_VERSION_NAME));
+        List<String> updateSplits = listing.getStringList(buffer.getInt(OFFSET_UPDATE_SPLITS));
+        List<String> splitEntryFragments = listing.getStringList(buffer.getInt(OFFSET_SPLIT_ENTRY_FRAGMENTS));
+        return new SplitDetails(qigsawId, appVersionName, updateSplits, splitEntryFragments, listing);
+    }
+
+    private static int computeCrc(ByteBuffer buffer, int fileLength) {
+        CRC32 crc32 = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        body.limit(fileLength);
+        byte[] chunk = new byte[Math.min(8192, Math.max(1, body.remaining()))];
+        while (body.hasRemaining()) {
+            int count = Math.min(chunk.length, body.remaining());
+            body.get(chunk, 0, count);
+            crc32.update(chunk, 0, count);
+        }
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Encode split-details into binary file, the file is written to a temp file first and then renamed.
+     */
+    static void write(@NonNull SplitDetails details, @NonNull File dest) throws IOException {
+        byte[] content = encode(details);
+        File tmpFile = new File(dest.getParentFile(), dest.getName() + "." + Process.myPid() + ".tmp");
+        FileOutputStream os = null;
+        try {
+            os = new FileOutputStream(tmpFile);
+            os.write(content);
+            os.getFD().sync();
+        } finally {
+            FileUtil.closeQuietly(os);
+        }
+        if (!tmpFile.renameTo(dest)) {
+            FileUtil.deleteFileSafely(tmpFile);
+            throw new IOException("Failed to rename " + tmpFile.getAbsolutePath() + " to " + dest.getAbsolutePath());
+        }
+        SplitLog.i(TAG, "Succeed to write split details binary %s, %d bytes", dest.getAbsolutePath(), content.length);
+    }
+
+    static byte[] encode(@NonNull SplitDetails details) throws IOException {
+        Collection<SplitInfo> splits = details.getSplitInfoListing().getAllSplitInfo();
+        StringTable strings = new StringTable();
+        int splitRecordOffset = HEADER_SIZE;
+        int variableOffset = splitRecordOffset + splits.size() * SPLIT_RECORD_SIZE;
+        ByteArrayOutputStream variableBytes = new ByteArrayOutputStream();
+        DataOutputStream variable = new DataOutputStream(variableBytes);
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(splits.size() * SPLIT_RECORD_SIZE);
+        DataOutputStream records = new DataOutputStream(recordBytes);
+
+        int qigsawId = strings.indexOf(details.getQigsawId());
+        int appVersionName = strings.indexOf(details.getAppVersionName());
+        int updateSplits = writeStringList(variable, variableOffset, strings, details.getUpdateSplits());
+        int splitEntryFragments = writeStringList(variable, variableOffset, strings, details.getSplitEntryFragments());
+        for (SplitInfo info : splits) {
+            records.writeInt(strings.indexOf(info.getSplitName()));
+            records.writeInt(strings.indexOf(info.getSplitVersion()));
+            records.writeInt(info.isBuiltIn() ? FLAG_BUILT_IN : 0);
+            records.writeInt(info.getMinSdkVersion());
+            records.writeInt(info.getDexNumber());
+            records.writeInt(writeStringList(variable, variableOffset, strings, info.getWorkProcesses()));
+            records.writeInt(writeStringList(variable, variableOffset, strings, info.getDependencies()));
+            records.writeInt(writeApkData(variable, variableOffset, strings, info.getAllApkData()));
+            records.writeInt(writeLibData(variable, variableOffset, strings, info.getAllLibData()));
+            records.writeInt(writePatchData(variable, variableOffset, strings, info.getAllApkData()));
+        }
+        int stringTableOffset = variableOffset + variable.size();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.write(recordBytes.toByteArray());
+        body.write(variableBytes.toByteArray());
+        strings.writeTo(body, stringTableOffset);
+        body.flush();
+        byte[] bodyContent = bodyBytes.toByteArray();
+        int fileLength = HEADER_SIZE + bodyContent.length;
+        CRC32 crc32 = new CRC32();
+        crc32.update(bodyContent);
+
+        ByteArrayOutputStream outputBytes = new ByteArrayOutputStream(fileLength);
+        DataOutputStream output = new DataOutputStream(outputBytes);
+        output.writeInt(MAGIC);
+        output.writeShort(FORMAT_VERSION);
+        output.writeShort(HEADER_SIZE);
+        output.writeInt(fileLength);
+        output.writeInt((int) crc32.getValue());
+        output.writeInt(strings.size());
+        output.writeInt(stringTableOffset);
+        output.writeInt(splits.size());
+        output.writeInt(splitRecordOffset);
+        output.writeInt(SPLIT_RECORD_SIZE);
+        output.writeInt(qigsawId);
+        output.writeInt(appVersionName);
+        output.writeInt(updateSplits);
+        output.writeInt(splitEntryFragments);
+        //reserved
+        output.writeInt(0);
+        output.write(bodyContent);
+        output.flush();
+        return outputBytes.toByteArray();
+    }
+
+    private static int writeStringList(DataOutputStream variable, int variableOffset,
+                                       StringTable strings, Collection<String> values) throws IOException {
+        if (values == null || values.isEmpty()) {
+            return NO_INDEX;
+        }
+        int offset = variableOffset + variable.size();
+        variable.writeInt(values.size());
+        for (String value : values) {
+            variable.writeInt(strings.indexOf(value));
+        }
+        return offset;
+    }
+
+    private static int writeApkData(DataOutputStream variable, int variableOffset,
+                                    StringTable strings, List<SplitInfo.ApkData> apkDataList) throws IOException {
+        int offset = variableOffset + variable.size();
+        variable.writeInt(apkDataList.size());
+        for (SplitInfo.ApkData apkData : apkDataList) {
+            variable.writeInt(strings.indexOf(apkData.getAbi()));
+            variable.writeInt(strings.indexOf(apkData.getUrl()));
+            variable.writeInt(strings.indexOf(apkData.getMd5()));
+            variable.writeLong(apkData.getSize());
+        }
+        return offset;
+    }
+
+    private static int writePatchData(DataOutputStream variable, int variableOffset,
+                                      StringTable strings, List<SplitInfo.ApkData> apkDataList) throws IOException {
+        List<SplitInfo.ApkData> patchedApkDataList = new ArrayList<>(apkDataList.size());
+        for (SplitInfo.ApkData apkData : apkDataList) {
+            if (apkData.getPatchData() != null) {
+                patchedApkDataList.add(apkData);
+            }
+        }
+        if (patchedApkDataList.isEmpty()) {
+            return NO_INDEX;
+        }
+        int offset = variableOffset + variable.size();
+        variable.writeInt(patchedApkDataList.size());
+        for (SplitInfo.ApkData apkData : patchedApkDataList) {
+            SplitInfo.PatchData patchData = apkData.getPatchData();
+            variable.writeInt(strings.indexOf(apkData.getAbi()));
+            variable.writeInt(strings.indexOf(patchData.getBaseMd5()));
+            variable.writeInt(strings.indexOf(patchData.getUrl()));
+            variable.writeInt(strings.indexOf(patchData.getMd5()));
+            variable.writeLong(patchData.getSize());
+        }
+        return offset;
+    }
+
+    private static int writeLibData(DataOutputStream variable, int variableOffset,
+                                    StringTable strings, List<SplitInfo.LibData> libDataList) throws IOException {
+        if (libDataList == null || libDataList.isEmpty()) {
+            return NO_INDEX;
+        }
+        int offset = variableOffset + variable.size();
+        variable.writeInt(libDataList.size());
+        for (SplitInfo.LibData libData : libDataList) {
+            variable.writeInt(strings.indexOf(libData.getAbi()));
+            List<SplitInfo.LibData.Lib> libs = libData.getLibs();
+            variable.writeInt(libs.size());
+            for (SplitInfo.LibData.Lib lib : libs) {
+                variable.writeInt(strings.indexOf(lib.getName()));
+                variable.writeInt(strings.indexOf(lib.getMd5()));
+                variable.writeLong(lib.getSize());
+            }
+        }
+        return offset;
+    }
+
+    private static final class StringTable {
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        private final List<String> values = new ArrayList<>();
+
+        int indexOf(String value) {
+            if (value == null) {
+                return NO_INDEX;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = values.size();
+                values.add(value);
+                indexes.put(value, index);
+            }
+            return index;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        void writeTo(DataOutputStream output, int stringTableOffset) throws IOException {
+            List<byte[]> encoded = new ArrayList<>(values.size());
+            for (String value : values) {
+                encoded.add(value.getBytes(UTF_8));
+            }
+            int dataOffset = stringTableOffset + values.size() * 4;
+            for (byte[] bytes : encoded) {
+                output.writeInt(dataOffset);
+                dataOffset += 4 + bytes.length;
+            }
+            for (byte[] bytes : encoded) {
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+    }
+}
@@ -205,6 +205,18 @@ public class SplitInfo {
         return appVersion;
     }
 
+    int getDexNumber() {
+        return dexNumber;
+    }
+
+    List<SplitInfo.ApkData> getAllApkData() {
+        return apkDataList;
+    }
+
+    List<SplitInfo.LibData> getAllLibData() {
+        return libDataList;
+    }
+
     public static class ApkData {
 
         private String abi;
@@ -215,11 +227,18 @@ public class SplitInfo {
 
         private long size;
 
+        private PatchData patchData;
+
         ApkData(String abi, String url, String md5, long size) {
+            this(abi, url, md5, size, null);
+        }
+
+        ApkData(String abi, String url, String md5, long size, PatchData patchData) {
             this.abi = abi;
             this.url = url;
             this.md5 = md5;
             this.size = size;
+            this.patchData = patchData;
         }
 
         public String getAbi() {
@@ -237,6 +256,51 @@ public class SplitInfo {
         public long getSize() {
             return size;
         }
+
+        /**
+         * @return patch which rebuilds this apk from the apk of previous version, or {@code null} if there is none.
+         */
+        @Nullable
+        public PatchData getPatchData() {
+            return patchData;
+        }
+    }
+
+    public static class PatchData {
+
+        private final String baseMd5;
+
+        private final String url;
+
+        private final String md5;
+
+        private final long size;
+
+        PatchData(String baseMd5, String url, String md5, long size) {
+            this.baseMd5 = baseMd5;
+            this.url = url;
+            this.md5 = md5;
+            this.size = size;
+        }
+
+        /**
+         * @return md5 of the apk which this patch is applied to.
+         */
+        public String getBaseMd5() {
+            return baseMd5;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public long getSize() {
+            return size;
+        }
     }
 
     public static class LibData {
@@ -0,0 +1,279 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * Immutable index of all splits declared in split-details, built once when split-details is parsed.
+ * <p>
+ * Every split is assigned a dense id following the order of split-details, so a set of splits can be
+ * expressed as a {@link BitSet}. Direct dependencies, transitive dependencies and a topological order
+ * (dependencies first) are precomputed, which makes install and load ordering simple set operations.
+ */
+@RestrictTo(LIBRARY_GROUP)
+public final class SplitInfoIndex {
+
+    private static final String TAG = "SplitInfoIndex";
+
+    private final SplitInfoListing listing;
+
+    private final String[] splitNames;
+
+    private final Map<String, Integer> splitIds;
+
+    private final BitSet[] dependencies;
+
+    private final BitSet[] transitiveDependencies;
+
+    private final int[] topologicalOrder;
+
+    SplitInfoIndex(@NonNull SplitInfoListing listing) {
+        this.listing = listing;
+        List<String> names = listing.getSplitNames();
+        int size = names.size();
+        this.splitNames = names.toArray(new String[size]);
+        this.splitIds = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            splitIds.put(splitNames[i], i);
+        }
+        this.dependencies = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            BitSet set = new BitSet(size);
+            List<String> dependencyNames = listing.getDependencies(splitNames[i]);
+            if (dependencyNames != null) {
+                for (String dependencyName : dependencyNames) {
+                    Integer dependencyId = splitIds.get(dependencyName);
+                    if (dependencyId == null) {
+                        SplitLog.w(TAG, "Dependency %s of split %s is not declared, ignore it!", dependencyName, splitNames[i]);
+                    } else if (dependencyId != i) {
+                        set.set(dependencyId);
+                    }
+                }
+            }
+            dependencies[i] = set;
+        }
+        this.topologicalOrder = sortTopologically(dependencies);
+        this.transitiveDependencies = new BitSet[size];
+        //one pass in topological order is enough unless splits of a cycle see closures not complete yet.
+        boolean changed = computeTransitiveDependencies();
+        while (changed) {
+            changed = computeTransitiveDependencies();
+        }
+    }
+
+    /**
+     * Merge closures of direct dependencies into closure of every split.
+     *
+     * @return {@code true} if a closure depends on one which is not complete yet, another pass is needed.
+     */
+    private boolean computeTransitiveDependencies() {
+        boolean incomplete = false;
+        for (int id : topologicalOrder) {
+            BitSet closure = new BitSet(dependencies.length);
+            BitSet direct = dependencies[id];
+            for (int dependencyId = direct.nextSetBit(0); dependencyId >= 0; dependencyId = direct.nextSetBit(dependencyId + 1)) {
+                closure.set(dependencyId);
+                //dependencies in a cycle may not be computed yet.
+                if (transitiveDependencies[dependencyId] == null) {
+                    incomplete = true;
+                } else {
+                    closure.or(transitiveDependencies[dependencyId]);
+                }
+            }
+            closure.clear(id);
+            if (transitiveDependencies[id] != null && !transitiveDependencies[id].equals(closure)) {
+                incomplete = true;
+            }
+            transitiveDependencies[id] = closure;
+        }
+        return incomplete;
+    }
+
+    /**
+     * Kahn's algorithm, splits without unresolved dependencies are emitted in id order.
+     * Splits in a dependency cycle are appended at the end in id order.
+     */
+    private static int[] sortTopologically(BitSet[] dependencies) {
+        int size = dependencies.length;
+        int[] inDegrees = new int[size];
+        BitSet[] dependents = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            dependents[i] = new BitSet(size);
+        }
+        for (int i = 0; i < size; i++) {
+            inDegrees[i] = dependencies[i].cardinality();
+            for (int d = dependencies[i].nextSetBit(0); d >= 0; d = dependencies[i].nextSetBit(d + 1)) {
+                dependents[d].set(i);
+            }
+        }
+        int[] order = new int[size];
+        int count = 0;
+        BitSet ready = new BitSet(size);
+        BitSet emitted = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (inDegrees[i] == 0) {
+                ready.set(i);
+            }
+        }
+        int next;
+        while ((next = ready.nextSetBit(0)) >= 0) {
+            ready.clear(next);
+            emitted.set(next);
+            order[count++] = next;
+            for (int dependent = dependents[next].nextSetBit(0); dependent >= 0; dependent = dependents[next].nextSetBit(dependent + 1)) {
+                if (--inDegrees[dependent] == 0) {
+                    ready.set(dependent);
+                }
+            }
+        }
+        if (count < size) {
+            SplitLog.w(TAG, "Dependency cycle is found among %d splits!", size - count);
+            for (int i = emitted.nextClearBit(0); i < size; i = emitted.nextClearBit(i + 1)) {
+                order[count++] = i;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return number of splits.
+     */
+    public int size() {
+        return splitNames.length;
+    }
+
+    /**
+     * @return dense id of split, or -1 if split is not declared.
+     */
+    public int getSplitId(String splitName) {
+        Integer id = splitIds.get(splitName);
+        return id == null ? -1 : id;
+    }
+
+    public String getSplitName(int splitId) {
+        return splitNames[splitId];
+    }
+
+    @Nullable
+    public SplitInfo getSplitInfo(String splitName) {
+        return listing.getSplitInfo(splitName);
+    }
+
+    public SplitInfo getSplitInfo(int splitId) {
+        return listing.getSplitInfo(splitNames[splitId]);
+    }
+
+    /**
+     * @return a new set of ids for split names, undeclared names are ignored.
+     */
+    public BitSet toSplitIds(Collection<String> names) {
+        BitSet set = new BitSet(size());
+        for (String name : names) {
+            Integer id = splitIds.get(name);
+            if (id != null) {
+                set.set(id);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return a new set of direct dependencies of split.
+     */
+    public BitSet getDependencies(int splitId) {
+        return (BitSet) dependencies[splitId].clone();
+    }
+
+    /**
+     * @return a new set of all direct and indirect dependencies of split.
+     */
+    public BitSet getTransitiveDependencies(int splitId) {
+        return (BitSet) transitiveDependencies[splitId].clone();
+    }
+
+    /**
+     * @return a new set containing given splits and all their transitive dependencies.
+     */
+    public BitSet withTransitiveDependencies(BitSet splitIds) {
+        BitSet result = (BitSet) splitIds.clone();
+        for (int id = splitIds.nextSetBit(0); id >= 0; id = splitIds.nextSetBit(id + 1)) {
+            result.or(transitiveDependencies[id]);
+        }
+        return result;
+    }
+
+    /**
+     * @return ids of given splits in topological order, every split comes after its dependencies.
+     */
+    public int[] sortTopologically(BitSet splitIds) {
+        int[] result = new int[splitIds.cardinality()];
+        int count = 0;
+        for (int id : topologicalOrder) {
+            if (splitIds.get(id)) {
+                result[count++] = id;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return {@link SplitInfo} of given splits and all their dependencies, in topological order.
+     */
+    public List<SplitInfo> getSplitInfosWithDependencies(Collection<String> names) {
+        int[] ids = sortTopologically(withTransitiveDependencies(toSplitIds(names)));
+        List<SplitInfo> splitInfos = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            splitInfos.add(getSplitInfo(id));
+        }
+        return splitInfos;
+    }
+
+    /**
+     * @return {@link SplitInfo} of given splits in the order of split-details, undeclared names are ignored.
+     */
+    public List<SplitInfo> getSplitInfos(Collection<String> names) {
+        BitSet set = toSplitIds(names);
+        List<SplitInfo> splitInfos = new ArrayList<>(set.cardinality());
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            splitInfos.add(getSplitInfo(id));
+        }
+        return splitInfos;
+    }
+}
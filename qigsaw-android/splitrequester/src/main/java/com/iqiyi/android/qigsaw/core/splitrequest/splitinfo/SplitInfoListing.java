@@ -22,21 +22,40 @@
  * SOFTWARE.
  */
 
-package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
-
-import java.util.LinkedHashMap;
-
-final class SplitInfoListing {
 
-    private final LinkedHashMap<String, SplitInfo> splitInfoMap;
-
-
-    SplitInfoListing(LinkedHashMap<String, SplitInfo> splitInfoMap) {
-        this.splitInfoMap = splitInfoMap;
-    }
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
 
-    LinkedHashMap<String, SplitInfo> getSplitInfoMap() {
-        return splitInfoMap;
-    }
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+
+interface SplitInfoListing {
+
+    /**
+     * @param splitName name of split
+     * @return {@link SplitInfo} of the split, or null if it is not declared.
+     */
+    @Nullable
+    SplitInfo getSplitInfo(String splitName);
+
+    /**
+     * @return all {@link SplitInfo}, in the order of split-details file.
+     */
+    Collection<SplitInfo> getAllSplitInfo();
+
+    /**
+     * @return names of all splits, in the order of split-details file.
+     */
+    List<String> getSplitNames();
+
+    /**
+     * Get dependencies of split without decoding the whole {@link SplitInfo} if possible.
+     *
+     * @param splitName name of split
+     * @return names of dependencies, or null if split has no dependencies.
+     */
+    @Nullable
+    List<String> getDependencies(String splitName);
 
 }
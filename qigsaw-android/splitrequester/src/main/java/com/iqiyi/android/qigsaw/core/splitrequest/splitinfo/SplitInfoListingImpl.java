@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+final class SplitInfoListingImpl implements SplitInfoListing {
+
+    private final LinkedHashMap<String, SplitInfo> splitInfoMap;
+
+    SplitInfoListingImpl(LinkedHashMap<String, SplitInfo> splitInfoMap) {
+        this.splitInfoMap = splitInfoMap;
+    }
+
+    @Override
+    public SplitInfo getSplitInfo(String splitName) {
+        return splitInfoMap.get(splitName);
+    }
+
+    @Override
+    public Collection<SplitInfo> getAllSplitInfo() {
+        return splitInfoMap.values();
+    }
+
+    @Override
+    public List<String> getSplitNames() {
+        return new ArrayList<>(splitInfoMap.keySet());
+    }
+
+    @Override
+    public List<String> getDependencies(String splitName) {
+        SplitInfo splitInfo = splitInfoMap.get(splitName);
+        return splitInfo == null ? null : splitInfo.getDependencies();
+    }
+}
@@ -75,6 +75,14 @@ public interface SplitInfoManager {
      */
     List<SplitInfo> getSplitInfos(Context context, Collection<String> splitNames);
 
+    /**
+     * Get immutable index of all splits, including dependency graph.
+     *
+     * @param context
+     * @return {@link SplitInfoIndex}, or null if split details are not available.
+     */
+    SplitInfoIndex getSplitInfoIndex(Context context);
+
     /**
      * @param context get all split info
      * @return collection of {@link SplitInfo}
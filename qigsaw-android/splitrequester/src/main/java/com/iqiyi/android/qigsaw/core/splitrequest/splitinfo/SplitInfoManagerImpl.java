@@ -25,6 +25,8 @@
 package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.text.TextUtils;
 
@@ -35,17 +37,22 @@ import com.iqiyi.android.qigsaw.core.common.CompatBundle;
 import com.iqiyi.android.qigsaw.core.common.FileUtil;
 import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
+import com.iqiyi.android.qigsaw.core.common.SplitTrace;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -115,12 +122,7 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
     public SplitInfo getSplitInfo(Context context, String splitName) {
         SplitDetails details = getOrCreateSplitDetails(context);
         if (details != null) {
-            Collection<SplitInfo> splits = details.getSplitInfoListing().getSplitInfoMap().values();
-            for (SplitInfo split : splits) {
-                if (split.getSplitName().equals(splitName)) {
-                    return split;
-                }
-            }
+            return details.getSplitInfoListing().getSplitInfo(splitName);
         }
         return null;
     }
@@ -129,14 +131,16 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
     public List<SplitInfo> getSplitInfos(Context context, Collection<String> splitNames) {
         SplitDetails details = getOrCreateSplitDetails(context);
         if (details != null) {
-            Collection<SplitInfo> splits = details.getSplitInfoListing().getSplitInfoMap().values();
-            List<SplitInfo> splitInfos = new ArrayList<>(splitNames.size());
-            for (SplitInfo split : splits) {
-                if (splitNames.contains(split.getSplitName())) {
-                    splitInfos.add(split);
-                }
-            }
-            return splitInfos;
+            return details.getSplitInfoIndex().getSplitInfos(splitNames);
+        }
+        return null;
+    }
+
+    @Override
+    public SplitInfoIndex getSplitInfoIndex(Context context) {
+        SplitDetails details = getOrCreateSplitDetails(context);
+        if (details != null) {
+            return details.getSplitInfoIndex();
         }
         return null;
     }
@@ -145,7 +149,7 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
     public Collection<SplitInfo> getAllSplitInfo(Context context) {
         SplitDetails details = getOrCreateSplitDetails(context);
         if (details != null) {
-            return details.getSplitInfoListing().getSplitInfoMap().values();
+            return details.getSplitInfoListing().getAllSplitInfo();
         }
         return null;
     }
@@ -155,7 +159,7 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
     public SplitDetails createSplitDetailsForJsonFile(@NonNull String newSplitInfoPath) {
         File newSplitInfoFile = new File(newSplitInfoPath);
         if (newSplitInfoFile.exists()) {
-            return createSplitDetailsForNewVersion(newSplitInfoFile);
+            return createSplitDetailsForNewVersion(newSplitInfoFile, null);
         }
         return null;
     }
@@ -174,10 +178,23 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
 
     private SplitDetails createSplitDetailsForDefaultVersion(Context context, String defaultVersion) {
         try {
+            long currentTime = System.currentTimeMillis();
+            SplitDetails details = null;
+            if (CompatBundle.instance == null) {
+                String defaultSplitBinaryFileName = SplitConstants.QIGSAW + "/" + SplitConstants.QIGSAW_PREFIX + defaultVersion + SplitConstants.DOT_BIN;
+                long span = SplitTrace.begin(SplitTrace.CATEGORY_INFO, "readBinary");
+                details = readSplitBinaryForDefaultVersion(context.getAssets(), defaultSplitBinaryFileName);
+                SplitTrace.end(span);
+                if (details != null) {
+                    SplitLog.i(TAG, "Cost %d mil-second to read default split binary", (System.currentTimeMillis() - currentTime));
+                    return details;
+                }
+            }
             String defaultSplitInfoFileName = SplitConstants.QIGSAW + "/" + SplitConstants.QIGSAW_PREFIX + defaultVersion + SplitConstants.DOT_JSON;
             SplitLog.i(TAG, "Default split file name: " + defaultSplitInfoFileName);
-            long currentTime = System.currentTimeMillis();
-            SplitDetails details = parseSplitContentsForDefaultVersion(context, defaultSplitInfoFileName);
+            long span = SplitTrace.begin(SplitTrace.CATEGORY_INFO, "parseJson");
+            details = parseSplitContentsForDefaultVersion(context, defaultSplitInfoFileName);
+            SplitTrace.end(span);
             SplitLog.i(TAG, "Cost %d mil-second to parse default split info", (System.currentTimeMillis() - currentTime));
             return details;
         } catch (Throwable e) {
@@ -186,12 +203,31 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
         return null;
     }
 
-    private SplitDetails createSplitDetailsForNewVersion(File newSplitInfoFile) {
+    private SplitDetails createSplitDetailsForNewVersion(File newSplitInfoFile, @Nullable File newSplitBinaryFile) {
         try {
-            SplitLog.i(TAG, "Updated split file path: " + newSplitInfoFile.getAbsolutePath());
             long currentTime = System.currentTimeMillis();
+            if (newSplitBinaryFile != null && newSplitBinaryFile.exists()) {
+                try {
+                    SplitDetails details = SplitDetailsBinary.map(newSplitBinaryFile);
+                    SplitLog.i(TAG, "Cost %d mil-second to read updated split binary", (System.currentTimeMillis() - currentTime));
+                    return details;
+                } catch (IOException e) {
+                    SplitLog.printErrStackTrace(TAG, e, "Failed to read updated split binary, fall back to json!");
+                    FileUtil.deleteFileSafely(newSplitBinaryFile);
+                }
+            }
+            SplitLog.i(TAG, "Updated split file path: " + newSplitInfoFile.getAbsolutePath());
+            long span = SplitTrace.begin(SplitTrace.CATEGORY_INFO, "parseJson");
             SplitDetails details = parseSplitContentsForNewVersion(newSplitInfoFile);
+            SplitTrace.end(span);
             SplitLog.i(TAG, "Cost %d mil-second to parse updated split info", (System.currentTimeMillis() - currentTime));
+            if (details != null && newSplitBinaryFile != null) {
+                try {
+                    SplitDetailsBinary.write(details, newSplitBinaryFile);
+                } catch (IOException e) {
+                    SplitLog.printErrStackTrace(TAG, e, "Failed to write updated split binary!");
+                }
+            }
             return details;
         } catch (Throwable e) {
             SplitLog.printErrStackTrace(TAG, e, "Failed to create updated split info!");
@@ -206,12 +242,16 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
             String currentVersion = versionManager.getCurrentVersion();
             String defaultVersion = versionManager.getDefaultVersion();
             SplitLog.i(TAG, "currentVersion : %s defaultVersion : %s", currentVersion, defaultVersion);
+            long span = SplitTrace.begin(SplitTrace.CATEGORY_INFO, "loadSplitDetails");
+            SplitTrace.attr(span, "version", currentVersion);
             if (defaultVersion.equals(currentVersion)) {
                 details = createSplitDetailsForDefaultVersion(context, defaultVersion);
             } else {
                 File updatedSplitInfoFile = new File(versionManager.getRootDir(), SplitConstants.QIGSAW_PREFIX + currentVersion + SplitConstants.DOT_JSON);
-                details = createSplitDetailsForNewVersion(updatedSplitInfoFile);
+                File updatedSplitBinaryFile = new File(versionManager.getRootDir(), SplitConstants.QIGSAW_PREFIX + currentVersion + SplitConstants.DOT_BIN);
+                details = createSplitDetailsForNewVersion(updatedSplitInfoFile, updatedSplitBinaryFile);
             }
+            SplitTrace.end(span);
             if (details != null) {
                 if (TextUtils.isEmpty(details.getQigsawId())) {
                     return null;
@@ -238,6 +278,62 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
         return null;
     }
 
+    /**
+     * Map split binary from assets if it is stored uncompressed, otherwise read it into heap.
+     *
+     * @return null if split binary is missing or invalid.
+     */
+    static SplitDetails readSplitBinaryForDefaultVersion(AssetManager assets, String fileName) {
+        if (assets == null) {
+            return null;
+        }
+        ByteBuffer buffer = null;
+        try {
+            AssetFileDescriptor fd = assets.openFd(fileName);
+            try {
+                FileInputStream is = fd.createInputStream();
+                try {
+                    buffer = is.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+                } finally {
+                    FileUtil.closeQuietly(is);
+                }
+            } finally {
+                try {
+                    fd.close();
+                } catch (IOException ignored) {
+                    //ignored
+                }
+            }
+        } catch (IOException e) {
+            //asset is compressed or missing.
+        }
+        try {
+            if (buffer == null) {
+                buffer = ByteBuffer.wrap(readInputStreamBytes(assets.open(fileName)));
+            }
+            return SplitDetailsBinary.read(buffer);
+        } catch (FileNotFoundException e) {
+            SplitLog.i(TAG, "Default split binary %s is not found", fileName);
+        } catch (IOException e) {
+            SplitLog.printErrStackTrace(TAG, e, "Failed to read default split binary, fall back to json!");
+        }
+        return null;
+    }
+
+    private static byte[] readInputStreamBytes(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream(Math.max(is.available(), 1024));
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = is.read(buffer)) != -1) {
+                os.write(buffer, 0, length);
+            }
+            return os.toByteArray();
+        } finally {
+            FileUtil.closeQuietly(is);
+        }
+    }
+
     private static InputStream createInputStreamFromAssets(Context context, String fileName) {
         //using default
         InputStream is = null;
@@ -267,7 +363,7 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
         return stringBuffer.toString();
     }
 
-    private static SplitDetails parseSplitsContent(String content) throws JSONException {
+    static SplitDetails parseSplitsContent(String content) throws JSONException {
         if (content == null) {
             return null;
         }
@@ -331,7 +427,13 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
                 String url = apkDataObj.optString("url");
                 String md5 = apkDataObj.optString("md5");
                 long size = apkDataObj.optLong("size");
-                apkDataList.add(new SplitInfo.ApkData(abi, url, md5, size));
+                SplitInfo.PatchData patchData = null;
+                JSONObject patchObj = apkDataObj.optJSONObject("patch");
+                if (patchObj != null) {
+                    patchData = new SplitInfo.PatchData(patchObj.optString("baseMd5"), patchObj.optString("url"),
+                            patchObj.optString("md5"), patchObj.optLong("size"));
+                }
+                apkDataList.add(new SplitInfo.ApkData(abi, url, md5, size, patchData));
             }
             JSONArray libDataArray = itemObj.optJSONArray("libData");
             List<SplitInfo.LibData> libDataList = null;
@@ -364,7 +466,7 @@ final class SplitInfoManagerImpl implements SplitInfoManager {
             );
             splitInfoMap.put(splitName, splitInfo);
         }
-        SplitInfoListing splitInfoListing = new SplitInfoListing(splitInfoMap);
+        SplitInfoListing splitInfoListing = new SplitInfoListingImpl(splitInfoMap);
         return new SplitDetails(qigsawId, appVersionName, updateSplits, splitEntryFragments, splitInfoListing);
     }
 }
@@ -24,9 +24,7 @@
 
 package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
 
-import java.io.Closeable;
-
-interface SplitInfoVersionDataStorage extends Closeable {
+interface SplitInfoVersionDataStorage {
 
     /**
      * read version data of split-info from local storage
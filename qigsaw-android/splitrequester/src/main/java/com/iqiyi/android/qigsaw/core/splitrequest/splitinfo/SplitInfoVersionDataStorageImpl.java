@@ -24,17 +24,17 @@
 
 package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
 
+import androidx.annotation.NonNull;
+
 import com.iqiyi.android.qigsaw.core.common.FileUtil;
-import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.common.SplitJournalStore;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 final class SplitInfoVersionDataStorageImpl implements SplitInfoVersionDataStorage {
@@ -45,143 +45,91 @@ final class SplitInfoVersionDataStorageImpl implements SplitInfoVersionDataStora
 
     private static final String TAG = "SplitInfoVersionStorageImpl";
 
-    private final File versionDataFile;
+    private static final String VERSION_JOURNAL_NAME = "version.journal";
 
-    private static final String VERSION_DATA_NAME = "version.info";
+    private static final String LEGACY_VERSION_DATA_NAME = "version.info";
 
-    private static final String VERSION_DATA_LOCK_NAME = "version.lock";
+    private static final String LEGACY_VERSION_DATA_LOCK_NAME = "version.lock";
 
-    private final RandomAccessFile lockRaf;
+    private final SplitJournalStore journalStore;
 
-    private final FileChannel lockChannel;
+    private final File legacyVersionDataFile;
 
-    private final FileLock cacheLock;
+    private final File legacyVersionDataLockFile;
 
-    SplitInfoVersionDataStorageImpl(File rootDir) throws IOException {
-        this.versionDataFile = new File(rootDir, VERSION_DATA_NAME);
-        File lockFile = new File(rootDir, VERSION_DATA_LOCK_NAME);
-        this.lockRaf = new RandomAccessFile(lockFile, "rw");
-        try {
-            this.lockChannel = this.lockRaf.getChannel();
-            try {
-                SplitLog.i(TAG, "Blocking on lock " + lockFile.getPath());
-                this.cacheLock = this.lockChannel.lock();
-            } catch (RuntimeException | Error | IOException var5) {
-                FileUtil.closeQuietly(this.lockChannel);
-                throw var5;
-            }
-            SplitLog.i(TAG, lockFile.getPath() + " locked");
-        } catch (RuntimeException | Error | IOException var6) {
-            FileUtil.closeQuietly(this.lockRaf);
-            throw var6;
-        }
+    SplitInfoVersionDataStorageImpl(File rootDir) {
+        this.journalStore = SplitJournalStore.get(new File(rootDir, VERSION_JOURNAL_NAME));
+        this.legacyVersionDataFile = new File(rootDir, LEGACY_VERSION_DATA_NAME);
+        this.legacyVersionDataLockFile = new File(rootDir, LEGACY_VERSION_DATA_LOCK_NAME);
     }
 
     @Override
     public SplitInfoVersionData readVersionData() {
-        if (!cacheLock.isValid()) {
-            throw new IllegalStateException("SplitInfoVersionDataStorage was closed");
-        } else {
-            if (versionDataFile.exists()) {
-                return readVersionDataProperties(versionDataFile);
-            }
+        migrateLegacyVersionData();
+        Map<String, String> values = journalStore.getAll();
+        String oldVer = values.get(OLD_VERSION);
+        String newVer = values.get(NEW_VERSION);
+        if (oldVer == null || newVer == null) {
+            return null;
         }
-        return null;
+        return new SplitInfoVersionData(oldVer, newVer);
     }
 
     @Override
     public boolean updateVersionData(SplitInfoVersionData versionData) {
-        if (!cacheLock.isValid()) {
-            throw new IllegalStateException("SplitInfoVersionDataStorage was closed");
-        } else {
-            return updateVersionDataProperties(versionDataFile, versionData);
-        }
-    }
-
-    @Override
-    public void close() throws IOException {
-        lockChannel.close();
-        lockRaf.close();
-        cacheLock.release();
-    }
-
-    private static SplitInfoVersionData readVersionDataProperties(File versionDataFile) {
-        boolean isReadPatchSuccessful = false;
-        int numAttempts = 0;
-        String oldVer = null;
-        String newVer = null;
-        while (numAttempts < SplitConstants.MAX_RETRY_ATTEMPTS && !isReadPatchSuccessful) {
-            numAttempts++;
-            Properties properties = new Properties();
-            FileInputStream inputStream = null;
-            try {
-                inputStream = new FileInputStream(versionDataFile);
-                properties.load(inputStream);
-                oldVer = properties.getProperty(OLD_VERSION);
-                newVer = properties.getProperty(NEW_VERSION);
-            } catch (IOException e) {
-                SplitLog.w(TAG, "read property failed, e:" + e);
-            } finally {
-                FileUtil.closeQuietly(inputStream);
-            }
-
-            if (oldVer == null || newVer == null) {
-                continue;
-            }
-            isReadPatchSuccessful = true;
-        }
-
-        if (isReadPatchSuccessful) {
-            return new SplitInfoVersionData(oldVer, newVer);
-        }
-        return null;
-    }
-
-
-    private boolean updateVersionDataProperties(File versionDataFile, SplitInfoVersionData versionData) {
-        if (versionDataFile == null || versionData == null) {
+        if (versionData == null) {
             return false;
         }
-        SplitLog.i(TAG, "updateVersionDataProperties file path:"
-                + versionDataFile.getAbsolutePath()
+        SplitLog.i(TAG, "updateVersionData file path:"
+                + journalStore.getJournalFile().getAbsolutePath()
                 + " , oldVer:"
                 + versionData.oldVersion
                 + ", newVer:"
                 + versionData.newVersion);
+        Map<String, String> values = new HashMap<>(2);
+        values.put(OLD_VERSION, versionData.oldVersion);
+        values.put(NEW_VERSION, versionData.newVersion);
+        return journalStore.update(values);
+    }
 
-        boolean isWritePatchSuccessful = false;
-        int numAttempts = 0;
-
-        File parentFile = versionDataFile.getParentFile();
-        if (!parentFile.exists()) {
-            parentFile.mkdirs();
+    /**
+     * Move version data of old properties file into journal, only if journal has no version data yet.
+     */
+    private void migrateLegacyVersionData() {
+        if (!legacyVersionDataFile.exists()) {
+            return;
         }
-
-        while (numAttempts < SplitConstants.MAX_RETRY_ATTEMPTS && !isWritePatchSuccessful) {
-            numAttempts++;
-
-            Properties newProperties = new Properties();
-            newProperties.put(OLD_VERSION, versionData.oldVersion);
-            newProperties.put(NEW_VERSION, versionData.newVersion);
-            FileOutputStream outputStream = null;
-            try {
-                outputStream = new FileOutputStream(versionDataFile, false);
-                String comment = "from old version:" + versionData.oldVersion + " to new version:" + versionData.newVersion;
-                newProperties.store(outputStream, comment);
-            } catch (Exception e) {
-                SplitLog.w(TAG, "write property failed, e:" + e);
-            } finally {
-                FileUtil.closeQuietly(outputStream);
-            }
-
-            SplitInfoVersionData tempInfo = readVersionDataProperties(versionDataFile);
-
-            isWritePatchSuccessful = tempInfo != null && tempInfo.oldVersion.equals(versionData.oldVersion) && tempInfo.newVersion.equals(versionData.newVersion);
-            if (!isWritePatchSuccessful) {
-                versionDataFile.delete();
-            }
+        final Properties properties = new Properties();
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(legacyVersionDataFile);
+            properties.load(inputStream);
+        } catch (IOException e) {
+            SplitLog.w(TAG, "read property failed, e:" + e);
+        } finally {
+            FileUtil.closeQuietly(inputStream);
+        }
+        final String oldVer = properties.getProperty(OLD_VERSION);
+        final String newVer = properties.getProperty(NEW_VERSION);
+        boolean migrated = true;
+        if (oldVer != null && newVer != null) {
+            migrated = journalStore.update(new SplitJournalStore.Mutation() {
+                @Override
+                public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                    if (values.containsKey(OLD_VERSION)) {
+                        return null;
+                    }
+                    Map<String, String> updates = new HashMap<>(2);
+                    updates.put(OLD_VERSION, oldVer);
+                    updates.put(NEW_VERSION, newVer);
+                    return updates;
+                }
+            });
+        }
+        if (migrated) {
+            SplitLog.i(TAG, "Version data of %s is migrated to journal", legacyVersionDataFile.getName());
+            FileUtil.deleteFileSafely(legacyVersionDataFile);
+            FileUtil.deleteFileSafely(legacyVersionDataLockFile);
         }
-        return isWritePatchSuccessful;
     }
-
 }
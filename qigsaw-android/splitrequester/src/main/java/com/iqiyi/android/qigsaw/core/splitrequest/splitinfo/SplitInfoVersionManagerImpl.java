@@ -46,6 +46,8 @@ final class SplitInfoVersionManagerImpl implements SplitInfoVersionManager {
 
     private File rootDir;
 
+    private SplitInfoVersionDataStorage versionDataStorage;
+
     private String currentVersion;
 
     private boolean isMainProcess;
@@ -65,6 +67,7 @@ final class SplitInfoVersionManagerImpl implements SplitInfoVersionManager {
         this.isMainProcess = isMainProcess;
         File baseRootDir = new File(context.getDir(SplitConstants.QIGSAW, Context.MODE_PRIVATE), qigsawId);
         this.rootDir = new File(baseRootDir, SPLIT_ROOT_DIR_NAME);
+        this.versionDataStorage = new SplitInfoVersionDataStorageImpl(rootDir);
         processVersionData(context);
         reportNewSplitInfoVersionLoaded();
     }
@@ -109,27 +112,11 @@ final class SplitInfoVersionManagerImpl implements SplitInfoVersionManager {
     }
 
     private boolean updateVersionData(SplitInfoVersionData versionData) {
-        try {
-            SplitInfoVersionDataStorage versionDataStorage = new SplitInfoVersionDataStorageImpl(rootDir);
-            boolean result = versionDataStorage.updateVersionData(versionData);
-            FileUtil.closeQuietly(versionDataStorage);
-            return result;
-        } catch (IOException e) {
-            //
-        }
-        return false;
+        return versionDataStorage.updateVersionData(versionData);
     }
 
     private SplitInfoVersionData readVersionData() {
-        try {
-            SplitInfoVersionDataStorage versionDataStorage = new SplitInfoVersionDataStorageImpl(rootDir);
-            SplitInfoVersionData versionData = versionDataStorage.readVersionData();
-            FileUtil.closeQuietly(versionDataStorage);
-            return versionData;
-        } catch (IOException e) {
-            //
-        }
-        return null;
+        return versionDataStorage.readVersionData();
     }
 
     @Override
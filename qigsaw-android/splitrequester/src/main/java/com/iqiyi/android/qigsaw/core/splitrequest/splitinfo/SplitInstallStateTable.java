@@ -0,0 +1,472 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.iqiyi.android.qigsaw.core.common.SplitConstants;
+import com.iqiyi.android.qigsaw.core.common.SplitJournalStore;
+import com.iqiyi.android.qigsaw.core.common.SplitLog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * Install state of all splits, keyed by split name. Each entry is only valid for the installed mark it records,
+ * see {@link SplitInfo#obtainInstalledMark}. Entries are stored in one checksummed {@link SplitJournalStore},
+ * so loadable splits can be determined with one file read.
+ * Mark files of old versions are only read as migration source.
+ */
+@RestrictTo(LIBRARY_GROUP)
+public final class SplitInstallStateTable {
+
+    private static final String TAG = "SplitInstallStateTable";
+
+    /**
+     * Split is not installed.
+     */
+    public static final int NOT_INSTALLED = -1;
+
+    /**
+     * Split is installed and its oat file is ready or not required.
+     */
+    public static final int OAT_OK = 0;
+
+    /**
+     * Split is installed on vivo & oppo but its oat file has not been generated, system uses interpreter mode.
+     * Oat file should be checked when the split is going to be loaded.
+     */
+    public static final int OAT_PENDING = 1;
+
+    /**
+     * Prefix of entries encoded as fields, entries of former versions are JSON objects.
+     */
+    private static final String FIELDS_PREFIX = "f1;";
+
+    private static final String KEY_MARK = "mark";
+
+    private static final String KEY_APK = "apk";
+
+    private static final String KEY_DEX_OPT_DIR = "optDir";
+
+    private static final String KEY_NATIVE_LIB_DIR = "libDir";
+
+    private static final String KEY_ADDED_DEX = "dex";
+
+    private static final String KEY_OAT_STATUS = "oat";
+
+    private static final String KEY_DEPENDENCIES = "deps";
+
+    private final SplitJournalStore journalStore;
+
+    SplitInstallStateTable(SplitJournalStore journalStore) {
+        this.journalStore = journalStore;
+    }
+
+    public static SplitInstallStateTable get() {
+        return new SplitInstallStateTable(SplitJournalStore.get(SplitPathManager.require().getInstallStateFile()));
+    }
+
+    /**
+     * Read all entries with one read of table, entries which can't be decoded are skipped.
+     */
+    @NonNull
+    public Map<String, State> getAll() {
+        Map<String, String> values = journalStore.getAll();
+        Map<String, State> states = new HashMap<>(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            State state = decode(entry.getKey(), entry.getValue());
+            if (state != null) {
+                states.put(state.splitName, state);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return entry of split if it is installed with {@code mark}, otherwise {@code null}.
+     */
+    @Nullable
+    public State get(@NonNull String splitName, @NonNull String mark) {
+        String value = journalStore.get(splitName);
+        if (value == null) {
+            return null;
+        }
+        State state = decode(splitName, value);
+        return state != null && state.mark.equals(mark) ? state : null;
+    }
+
+    /**
+     * @return oat status of split installed with {@code mark}, falls back to legacy mark files if table has no entry.
+     */
+    public int getOatStatus(@NonNull SplitInfo info, @NonNull String mark) {
+        State state = get(info.getSplitName(), mark);
+        if (state != null) {
+            return state.oatStatus;
+        }
+        return getLegacyOatStatus(info, mark);
+    }
+
+    /**
+     * Replace entry of split atomically, nothing is written if entry is unchanged.
+     */
+    public boolean put(@NonNull State state) {
+        final String splitName = state.splitName;
+        final String value = encode(state);
+        return journalStore.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                if (value.equals(values.get(splitName))) {
+                    return null;
+                }
+                return Collections.singletonMap(splitName, value);
+            }
+        });
+    }
+
+    public boolean remove(@NonNull final String splitName) {
+        return journalStore.update(new SplitJournalStore.Mutation() {
+            @Override
+            public Map<String, String> mutate(@NonNull Map<String, String> values) {
+                if (!values.containsKey(splitName)) {
+                    return null;
+                }
+                return Collections.singletonMap(splitName, null);
+            }
+        });
+    }
+
+    /**
+     * Stat mark files created by old versions of qigsaw.
+     */
+    public static int getLegacyOatStatus(@NonNull SplitInfo info, @NonNull String mark) {
+        if (SplitPathManager.require().getSplitMarkFile(info, mark).exists()) {
+            return OAT_OK;
+        }
+        if (SplitPathManager.require().getSplitSpecialMarkFile(info, mark).exists()) {
+            return OAT_PENDING;
+        }
+        return NOT_INSTALLED;
+    }
+
+    /**
+     * Record install state of split installed by an old version of qigsaw, which only has mark files,
+     * so mark files are not read again.
+     *
+     * @param oatStatus status read by {@link #getLegacyOatStatus(SplitInfo, String)}.
+     * @param splitApk  apk file of split.
+     * @param abi       abi of native libraries of split, {@code null} if split has no native library.
+     * @return migrated entry, it is returned even if it fails to be recorded.
+     */
+    @NonNull
+    public State migrateLegacyState(@NonNull SplitInfo info,
+                                    @NonNull String mark,
+                                    int oatStatus,
+                                    @NonNull File splitApk,
+                                    @Nullable String abi) {
+        String splitName = info.getSplitName();
+        File splitLibDir = null;
+        if (abi != null) {
+            splitLibDir = SplitPathManager.require().getSplitLibDir(info, abi);
+        }
+        File optimizedDirectory = null;
+        List<String> addedDexPaths = null;
+        if (info.hasDex()) {
+            optimizedDirectory = SplitPathManager.require().getSplitOptDir(info);
+            addedDexPaths = new ArrayList<>();
+            addedDexPaths.add(splitApk.getAbsolutePath());
+            File[] results = SplitPathManager.require().getSplitCodeCacheDir(info).listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(SplitConstants.DOT_ZIP);
+                }
+            });
+            if (results != null && results.length > 0) {
+                Arrays.sort(results);
+                for (File result : results) {
+                    addedDexPaths.add(result.getAbsolutePath());
+                }
+            }
+        }
+        State state = new State(
+                splitName,
+                mark,
+                splitApk.getAbsolutePath(),
+                optimizedDirectory == null ? null : optimizedDirectory.getAbsolutePath(),
+                splitLibDir == null ? null : splitLibDir.getAbsolutePath(),
+                addedDexPaths,
+                oatStatus,
+                Collections.<String, String>emptyMap()
+        );
+        if (!put(state)) {
+            SplitLog.w(TAG, "Failed to migrate install state of split " + splitName);
+        }
+        SplitLog.i(TAG, "Migrate install state of split %s from mark files", splitName);
+        return state;
+    }
+
+    /**
+     * Encode entry as a sequence of fields, each field is its length, ':' and its chars, or '-' if it is null.
+     * Fields are mark, apk, opt dir, lib dir, oat status, count of added dex and their paths, count of dependencies
+     * and their names and marks.
+     */
+    private static String encode(State state) {
+        StringBuilder builder = new StringBuilder(256);
+        builder.append(FIELDS_PREFIX);
+        appendField(builder, state.mark);
+        appendField(builder, state.apkPath);
+        appendField(builder, state.optDir);
+        appendField(builder, state.libDir);
+        appendField(builder, String.valueOf(state.oatStatus));
+        if (state.addedDexPaths == null) {
+            appendField(builder, null);
+        } else {
+            appendField(builder, String.valueOf(state.addedDexPaths.size()));
+            for (String dexPath : state.addedDexPaths) {
+                appendField(builder, dexPath);
+            }
+        }
+        appendField(builder, String.valueOf(state.dependencyMarks.size()));
+        for (Map.Entry<String, String> entry : state.dependencyMarks.entrySet()) {
+            appendField(builder, entry.getKey());
+            appendField(builder, entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    private static void appendField(StringBuilder builder, @Nullable String field) {
+        if (field == null) {
+            builder.append('-');
+        } else {
+            builder.append(field.length()).append(':').append(field);
+        }
+    }
+
+    @Nullable
+    private static State decode(String splitName, String value) {
+        if (!value.startsWith(FIELDS_PREFIX)) {
+            return decodeJson(splitName, value);
+        }
+        try {
+            FieldReader reader = new FieldReader(value, FIELDS_PREFIX.length());
+            String mark = reader.require();
+            String apkPath = reader.require();
+            String optDir = reader.next();
+            String libDir = reader.next();
+            int oatStatus = checkOatStatus(reader.nextInt());
+            List<String> addedDexPaths = null;
+            String dexCount = reader.next();
+            if (dexCount != null) {
+                int count = FieldReader.parseCount(dexCount);
+                addedDexPaths = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    addedDexPaths.add(reader.require());
+                }
+            }
+            int dependencyCount = FieldReader.parseCount(reader.require());
+            Map<String, String> dependencyMarks = new HashMap<>(dependencyCount * 2);
+            for (int i = 0; i < dependencyCount; i++) {
+                dependencyMarks.put(reader.require(), reader.require());
+            }
+            if (!reader.isEnd()) {
+                throw new IllegalArgumentException("Unexpected data at " + reader.position);
+            }
+            return new State(splitName, mark, apkPath, optDir, libDir, addedDexPaths, oatStatus, dependencyMarks);
+        } catch (IllegalArgumentException e) {
+            SplitLog.w(TAG, "Failed to decode install state of split %s, treat it as not installed", splitName);
+            return null;
+        }
+    }
+
+    private static int checkOatStatus(int oatStatus) {
+        if (oatStatus != OAT_OK && oatStatus != OAT_PENDING) {
+            throw new IllegalArgumentException("Unknown oat status " + oatStatus);
+        }
+        return oatStatus;
+    }
+
+    /**
+     * Decode entry written as JSON by former versions.
+     */
+    @Nullable
+    private static State decodeJson(String splitName, String value) {
+        try {
+            JSONObject object = new JSONObject(value);
+            List<String> addedDexPaths = null;
+            JSONArray dexPaths = object.optJSONArray(KEY_ADDED_DEX);
+            if (dexPaths != null) {
+                addedDexPaths = new ArrayList<>(dexPaths.length());
+                for (int i = 0; i < dexPaths.length(); i++) {
+                    addedDexPaths.add(dexPaths.getString(i));
+                }
+            }
+            Map<String, String> dependencyMarks = new HashMap<>();
+            JSONObject dependencies = object.optJSONObject(KEY_DEPENDENCIES);
+            if (dependencies != null) {
+                Iterator<String> keys = dependencies.keys();
+                while (keys.hasNext()) {
+                    String dependency = keys.next();
+                    dependencyMarks.put(dependency, dependencies.getString(dependency));
+                }
+            }
+            int oatStatus = checkOatStatus(object.getInt(KEY_OAT_STATUS));
+            return new State(splitName,
+                    object.getString(KEY_MARK),
+                    object.getString(KEY_APK),
+                    object.optString(KEY_DEX_OPT_DIR, null),
+                    object.optString(KEY_NATIVE_LIB_DIR, null),
+                    addedDexPaths,
+                    oatStatus,
+                    dependencyMarks);
+        } catch (JSONException | IllegalArgumentException e) {
+            SplitLog.w(TAG, "Failed to decode install state of split %s, treat it as not installed", splitName);
+            return null;
+        }
+    }
+
+    /**
+     * Read fields written by {@link #appendField(StringBuilder, String)}, malformed fields throw {@link IllegalArgumentException}.
+     */
+    private static final class FieldReader {
+
+        private final String value;
+
+        private int position;
+
+        FieldReader(String value, int position) {
+            this.value = value;
+            this.position = position;
+        }
+
+        boolean isEnd() {
+            return position == value.length();
+        }
+
+        @Nullable
+        String next() {
+            if (position >= value.length()) {
+                throw new IllegalArgumentException("Missing field at " + position);
+            }
+            if (value.charAt(position) == '-') {
+                position++;
+                return null;
+            }
+            int separator = value.indexOf(':', position);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Missing length of field at " + position);
+            }
+            int length = parseCount(value.substring(position, separator));
+            int end = separator + 1 + length;
+            if (end > value.length()) {
+                throw new IllegalArgumentException("Truncated field at " + position);
+            }
+            position = end;
+            return value.substring(separator + 1, end);
+        }
+
+        String require() {
+            String field = next();
+            if (field == null) {
+                throw new IllegalArgumentException("Null field before " + position);
+            }
+            return field;
+        }
+
+        int nextInt() {
+            return Integer.parseInt(require());
+        }
+
+        static int parseCount(String field) {
+            int count = Integer.parseInt(field);
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative count " + count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Entry of table, all paths are absolute.
+     */
+    public static final class State {
+
+        public final String splitName;
+
+        public final String mark;
+
+        public final String apkPath;
+
+        public final String optDir;
+
+        public final String libDir;
+
+        public final List<String> addedDexPaths;
+
+        public final int oatStatus;
+
+        /**
+         * Installed marks of dependencies when this split is installed.
+         */
+        public final Map<String, String> dependencyMarks;
+
+        public State(@NonNull String splitName,
+                     @NonNull String mark,
+                     @NonNull String apkPath,
+                     @Nullable String optDir,
+                     @Nullable String libDir,
+                     @Nullable List<String> addedDexPaths,
+                     int oatStatus,
+                     @NonNull Map<String, String> dependencyMarks) {
+            this.splitName = splitName;
+            this.mark = mark;
+            this.apkPath = apkPath;
+            this.optDir = optDir;
+            this.libDir = libDir;
+            this.addedDexPaths = addedDexPaths == null ? null : Collections.unmodifiableList(addedDexPaths);
+            this.oatStatus = oatStatus;
+            this.dependencyMarks = Collections.unmodifiableMap(dependencyMarks);
+        }
+
+        public State withOatStatus(int oatStatus) {
+            return new State(splitName, mark, apkPath, optDir, libDir, addedDexPaths, oatStatus, dependencyMarks);
+        }
+    }
+}
@@ -34,6 +34,8 @@ import com.iqiyi.android.qigsaw.core.common.SplitConstants;
 import com.iqiyi.android.qigsaw.core.common.SplitLog;
 
 import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
@@ -53,10 +55,28 @@ public final class SplitPathManager {
 
     private static final String COMMON_SO_DIR_NAME = "common_so";
 
+    private static final String ARTIFACT_STORE_DIR_NAME = "artifacts";
+
+    private static final String INSTALL_STATE_FILE_NAME = "install_state.journal";
+
+    private static final String ACCESS_LOG_FILE_NAME = "access_log.journal";
+
+    /**
+     * Dirs which have been created, keyed by path. Files under them can be created without checking dirs again.
+     */
+    private final ConcurrentHashMap<String, File> createdDirs = new ConcurrentHashMap<>();
+
+    private final DirOperations dirOperations;
+
     private SplitPathManager(File rootDir, String qigsawId) {
+        this(rootDir, qigsawId, DirOperations.DEFAULT);
+    }
+
+    SplitPathManager(File rootDir, String qigsawId, DirOperations dirOperations) {
         baseRootDir = rootDir;
         this.rootDir = new File(rootDir, qigsawId);
         this.qigsawId = qigsawId;
+        this.dirOperations = dirOperations;
     }
 
     public static void install(Context context) {
@@ -77,11 +97,7 @@ public final class SplitPathManager {
     }
 
     public File getSplitRootDir(SplitInfo info) {
-        File splitRootDir = new File(rootDir, info.getSplitName());
-        if (!splitRootDir.exists()) {
-            splitRootDir.mkdirs();
-        }
-        return splitRootDir;
+        return getOrCreateDir(rootDir, info.getSplitName());
     }
 
     /**
@@ -90,19 +106,11 @@ public final class SplitPathManager {
      * @param info split info
      */
     public File getSplitDir(SplitInfo info) {
-        File splitDir = new File(getSplitRootDir(info), info.getSplitVersion());
-        if (!splitDir.exists()) {
-            splitDir.mkdirs();
-        }
-        return splitDir;
+        return getOrCreateDir(getSplitRootDir(info), info.getSplitVersion());
     }
 
     public File getUninstallSplitsDir() {
-        File uninstallSplitsDir = new File(rootDir, "uninstall");
-        if (!uninstallSplitsDir.exists()) {
-            uninstallSplitsDir.mkdirs();
-        }
-        return uninstallSplitsDir;
+        return getOrCreateDir(rootDir, "uninstall");
     }
 
     /**
@@ -125,6 +133,20 @@ public final class SplitPathManager {
         return new File(splitDir, mark + ".ov");
     }
 
+    /**
+     * Get file of {@link SplitInstallStateTable}, which records install state of all splits.
+     */
+    public File getInstallStateFile() {
+        return new File(rootDir, INSTALL_STATE_FILE_NAME);
+    }
+
+    /**
+     * Get file of {@link SplitAccessLog}, which records when split versions are accessed.
+     */
+    public File getAccessLogFile() {
+        return new File(rootDir, ACCESS_LOG_FILE_NAME);
+    }
+
     public File getSplitSpecialLockFile(SplitInfo info) {
         File splitDir = getSplitDir(info);
         return new File(splitDir, "ov.lock");
@@ -137,55 +159,89 @@ public final class SplitPathManager {
      */
     public File getSplitOptDir(SplitInfo info) {
         File splitDir = getSplitDir(info);
-        File optDir = new File(splitDir, "oat");
-        if (!optDir.exists()) {
-            if (optDir.mkdirs()) {
-                //individual user report exception for "java.lang.IllegalArgumentException: optimizedDirectory not readable/writable:......"
-                optDir.setWritable(true);
-                optDir.setReadable(true);
+        String path = splitDir.getPath() + File.separator + "oat";
+        File optDir = createdDirs.get(path);
+        if (optDir == null) {
+            optDir = new File(path);
+            if (!dirOperations.exists(optDir)) {
+                if (dirOperations.mkdirs(optDir)) {
+                    //individual user report exception for "java.lang.IllegalArgumentException: optimizedDirectory not readable/writable:......"
+                    optDir.setWritable(true);
+                    optDir.setReadable(true);
+                } else {
+                    return optDir;
+                }
             }
+            createdDirs.put(path, optDir);
         }
         return optDir;
     }
 
     public File getSplitCodeCacheDir(SplitInfo info) {
-        File splitDir = getSplitDir(info);
-        File codeCacheDir = new File(splitDir, "code_cache");
-        if (!codeCacheDir.exists()) {
-            codeCacheDir.mkdirs();
-        }
-        return codeCacheDir;
+        return getOrCreateDir(getSplitDir(info), "code_cache");
     }
 
     /**
      * get storage path of split extracted so
      */
     public File getSplitLibDir(SplitInfo info, String abi) {
-        File libDir = new File(getSplitDir(info), "nativeLib" + File.separator + abi);
-        if (!libDir.exists()) {
-            libDir.mkdirs();
-        }
-        return libDir;
+        return getOrCreateDir(getSplitDir(info), "nativeLib" + File.separator + abi);
     }
 
     /**
      * get storage path of temporary file
      */
     public File getSplitTmpDir() {
-        File tmpDir = new File(rootDir, "tmp");
-        if (!tmpDir.exists()) {
-            tmpDir.mkdirs();
+        return getOrCreateDir(rootDir, "tmp");
+    }
+
+    /**
+     * Forget created dirs under {@code dir}, must be called after deleting split files so that they are recreated.
+     */
+    public void invalidateDirs(File dir) {
+        String path = dir.getPath();
+        String prefix = path + File.separator;
+        Iterator<String> iterator = createdDirs.keySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (key.equals(path) || key.startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget created dirs of all versions of split.
+     */
+    public void invalidateSplitDirs(SplitInfo info) {
+        invalidateDirs(new File(rootDir, info.getSplitName()));
+    }
+
+    /**
+     * Resolve dir {@code parent/child} and create it if it is not created by this manager yet.
+     * Dir which fails to be created is not cached, so it is retried on next call.
+     */
+    private File getOrCreateDir(File parent, String child) {
+        String path = parent.getPath() + File.separator + child;
+        File dir = createdDirs.get(path);
+        if (dir == null) {
+            dir = new File(path);
+            if (dirOperations.exists(dir) || dirOperations.mkdirs(dir)) {
+                createdDirs.put(path, dir);
+            }
         }
-        return tmpDir;
+        return dir;
     }
 
     public void clearCache() {
+        createdDirs.clear();
         File qigsawIdDir = rootDir.getParentFile();
         File[] qigsawIdFiles = qigsawIdDir.listFiles();
         if (qigsawIdFiles != null && qigsawIdFiles.length > 0) {
             for (File file : qigsawIdFiles) {
                 String filename = file.getName();
-                if (file.isDirectory() && !filename.equals(qigsawId) && !filename.equals(COMMON_SO_DIR_NAME)) {
+                if (file.isDirectory() && !filename.equals(qigsawId)
+                        && !filename.equals(COMMON_SO_DIR_NAME) && !filename.equals(ARTIFACT_STORE_DIR_NAME)) {
                     FileUtil.deleteDir(file);
                     SplitLog.i(TAG, "Success to delete all obsolete splits for current app version!");
                 }
@@ -193,6 +249,13 @@ public final class SplitPathManager {
         }
     }
 
+    /**
+     * Get dir of content-addressed split apks and libs, which is shared by all qigsaw ids and kept by {@link #clearCache()}.
+     */
+    public File getArtifactStoreDir() {
+        return getOrCreateDir(baseRootDir, ARTIFACT_STORE_DIR_NAME);
+    }
+
     public File getCommonSoDir() {
         if (commonSoDir == null) {
             commonSoDir = new File(baseRootDir, COMMON_SO_DIR_NAME);
@@ -203,4 +266,25 @@ public final class SplitPathManager {
         return commonSoDir;
     }
 
+    /**
+     * File system operations used to create dirs, replaceable to count them.
+     */
+    interface DirOperations {
+
+        DirOperations DEFAULT = new DirOperations() {
+            @Override
+            public boolean exists(File dir) {
+                return dir.exists();
+            }
+
+            @Override
+            public boolean mkdirs(File dir) {
+                return dir.mkdirs();
+            }
+        };
+
+        boolean exists(File dir);
+
+        boolean mkdirs(File dir);
+    }
 }
@@ -0,0 +1,331 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SplitDetailsBinaryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void binaryIsEquivalentToJson() throws Exception {
+        JSONObject json = SplitDetailsFixtures.details("1.0.0_abc",
+                SplitDetailsFixtures.split("java"),
+                SplitDetailsFixtures.split("native", "java").put("builtIn", true).put("dexNumber", 3),
+                SplitDetailsFixtures.split("assets", "java", "native").put("dexNumber", 0));
+        assertEquivalent(json);
+    }
+
+    @Test
+    public void syntheticSplitsAreEquivalentToJson() throws Exception {
+        assertEquivalent(SplitDetailsFixtures.synthetic(1, 500));
+    }
+
+    @Test
+    public void missingOptionalFieldsAreDecodedAsJsonDoes() throws Exception {
+        JSONObject json = SplitDetailsFixtures.details("", SplitDetailsFixtures.split("java"));
+        json.remove("appVersionName");
+        json.getJSONArray("splits").getJSONObject(0).remove("version");
+        SplitDetails binary = assertEquivalent(json);
+        assertEquals("", binary.getAppVersionName());
+        assertNull(binary.getUpdateSplits());
+        SplitInfo info = binary.getSplitInfoListing().getSplitInfo("java");
+        assertEquals("", info.getSplitVersion());
+        assertNull(info.getDependencies());
+        assertNull(info.getWorkProcesses());
+        assertNull(info.getAllLibData());
+    }
+
+    @Test
+    public void nonAsciiStringsAreKept() throws Exception {
+        JSONObject json = SplitDetailsFixtures.details("1.0.0_奇迹", SplitDetailsFixtures.split("分包"));
+        SplitDetails binary = assertEquivalent(json);
+        assertEquals("1.0.0_奇迹", binary.getQigsawId());
+        assertEquals("分包", binary.getSplitInfoListing().getSplitNames().get(0));
+    }
+
+    @Test
+    public void dependenciesAreReadWithoutDecodingSplit() throws Exception {
+        SplitDetails binary = SplitDetailsBinary.read(ByteBuffer.wrap(SplitDetailsBinary.encode(parse(SplitDetailsFixtures.synthetic(2, 20)))));
+        SplitDetails json = parse(SplitDetailsFixtures.synthetic(2, 20));
+        for (String splitName : json.getSplitInfoListing().getSplitNames()) {
+            assertEquals(json.getSplitInfoListing().getDependencies(splitName), binary.getSplitInfoListing().getDependencies(splitName));
+        }
+        assertNull(binary.getSplitInfoListing().getDependencies("undeclared"));
+        assertNull(binary.getSplitInfoListing().getSplitInfo("undeclared"));
+    }
+
+    @Test
+    public void mappedFileIsEquivalentToJson() throws Exception {
+        SplitDetails json = parse(SplitDetailsFixtures.synthetic(3, 50));
+        File file = new File(temporaryFolder.getRoot(), "qigsaw_1.0.0.bin");
+        SplitDetailsBinary.write(json, file);
+        assertDetailsEquals(json, SplitDetailsBinary.map(file));
+        String[] leftovers = temporaryFolder.getRoot().list();
+        assertEquals(1, leftovers.length);
+    }
+
+    @Test
+    public void formatVersion1IsReadWithoutPatchData() throws Exception {
+        byte[] content = SplitDetailsBinary.encode(parse(SplitDetailsFixtures.synthetic(4, 10)));
+        ByteBuffer.wrap(content).putShort(SplitDetailsBinary.OFFSET_FORMAT_VERSION, (short) 1);
+        SplitDetails binary = SplitDetailsBinary.read(ByteBuffer.wrap(content));
+        for (SplitInfo info : binary.getSplitInfoListing().getAllSplitInfo()) {
+            for (SplitInfo.ApkData apkData : info.getAllApkData()) {
+                assertNull(apkData.getPatchData());
+            }
+        }
+    }
+
+    @Test
+    public void corruptedBinaryIsRejected() throws Exception {
+        byte[] content = SplitDetailsBinary.encode(parse(SplitDetailsFixtures.synthetic(5, 10)));
+        for (int offset = SplitDetailsBinary.HEADER_SIZE; offset < content.length; offset += 7) {
+            byte[] corrupted = content.clone();
+            corrupted[offset] ^= 0x5a;
+            assertRejected(corrupted);
+        }
+        byte[] badMagic = content.clone();
+        badMagic[SplitDetailsBinary.OFFSET_MAGIC] ^= 1;
+        assertRejected(badMagic);
+        byte[] unknownVersion = content.clone();
+        ByteBuffer.wrap(unknownVersion).putShort(SplitDetailsBinary.OFFSET_FORMAT_VERSION, (short) (SplitDetailsBinary.FORMAT_VERSION + 1));
+        assertRejected(unknownVersion);
+    }
+
+    @Test
+    public void truncatedBinaryIsRejected() throws Exception {
+        byte[] content = SplitDetailsBinary.encode(parse(SplitDetailsFixtures.synthetic(6, 10)));
+        for (int length = 0; length < content.length; length += 13) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(content, 0, truncated, 0, length);
+            assertRejected(truncated);
+        }
+    }
+
+    @Test
+    public void uncompressedAssetIsMapped() throws Exception {
+        SplitDetails expected = parse(SplitDetailsFixtures.synthetic(7, 10));
+        File file = temporaryFolder.newFile("qigsaw_1.0.0.bin");
+        SplitDetailsBinary.write(expected, file);
+        FakeAssets assets = FakeAssets.create(file, false);
+
+        assertDetailsEquals(expected, SplitInfoManagerImpl.readSplitBinaryForDefaultVersion(assets, "qigsaw/qigsaw_1.0.0.bin"));
+        assertFalse("asset is copied into heap", assets.opened);
+        assertTrue(assets.fd.closed);
+    }
+
+    @Test
+    public void descriptorIsClosedWhenAssetCanNotBeMapped() throws Exception {
+        SplitDetails expected = parse(SplitDetailsFixtures.synthetic(8, 10));
+        File file = temporaryFolder.newFile("qigsaw_1.0.0.bin");
+        SplitDetailsBinary.write(expected, file);
+        FakeAssets assets = FakeAssets.create(file, true);
+
+        assertDetailsEquals(expected, SplitInfoManagerImpl.readSplitBinaryForDefaultVersion(assets, "qigsaw/qigsaw_1.0.0.bin"));
+        assertTrue(assets.opened);
+        assertTrue(assets.fd.closed);
+    }
+
+    private static void assertRejected(byte[] content) {
+        try {
+            SplitDetailsBinary.read(ByteBuffer.wrap(content));
+            fail("Corrupted split details binary is accepted");
+        } catch (IOException expected) {
+            //expected
+        }
+    }
+
+    private static SplitDetails parse(JSONObject json) throws Exception {
+        return SplitInfoManagerImpl.parseSplitsContent(json.toString());
+    }
+
+    private static SplitDetails assertEquivalent(JSONObject json) throws Exception {
+        SplitDetails expected = parse(json);
+        SplitDetails actual = SplitDetailsBinary.read(ByteBuffer.wrap(SplitDetailsBinary.encode(expected)));
+        assertDetailsEquals(expected, actual);
+        return actual;
+    }
+
+    private static void assertDetailsEquals(SplitDetails expected, SplitDetails actual) {
+        assertEquals(expected.getQigsawId(), actual.getQigsawId());
+        assertEquals(expected.getAppVersionName(), actual.getAppVersionName());
+        assertEquals(expected.getUpdateSplits(), actual.getUpdateSplits());
+        assertEquals(expected.getSplitEntryFragments(), actual.getSplitEntryFragments());
+        assertEquals(expected.getSplitInfoListing().getSplitNames(), actual.getSplitInfoListing().getSplitNames());
+        Collection<SplitInfo> expectedInfos = expected.getSplitInfoListing().getAllSplitInfo();
+        Collection<SplitInfo> actualInfos = actual.getSplitInfoListing().getAllSplitInfo();
+        assertEquals(expectedInfos.size(), actualInfos.size());
+        Iterator<SplitInfo> iterator = actualInfos.iterator();
+        for (SplitInfo expectedInfo : expectedInfos) {
+            SplitInfo actualInfo = iterator.next();
+            assertEquals(describe(expectedInfo), describe(actualInfo));
+            assertTrue(actualInfo == actual.getSplitInfoListing().getSplitInfo(expectedInfo.getSplitName()));
+        }
+    }
+
+    /**
+     * All fields of split info, including ones which are only reachable in this package.
+     */
+    private static List<Object> describe(SplitInfo info) {
+        List<Object> fields = new ArrayList<>();
+        fields.add(info.getSplitName());
+        fields.add(info.getSplitVersion());
+        fields.add(info.getAppVersion());
+        fields.add(info.isBuiltIn());
+        fields.add(info.getMinSdkVersion());
+        fields.add(info.getDexNumber());
+        fields.add(info.isMultiDex());
+        fields.add(info.getWorkProcesses());
+        fields.add(info.getDependencies());
+        for (SplitInfo.ApkData apkData : info.getAllApkData()) {
+            fields.add(apkData.getAbi());
+            fields.add(apkData.getUrl());
+            fields.add(apkData.getMd5());
+            fields.add(apkData.getSize());
+            SplitInfo.PatchData patchData = apkData.getPatchData();
+            if (patchData != null) {
+                fields.add(patchData.getBaseMd5());
+                fields.add(patchData.getUrl());
+                fields.add(patchData.getMd5());
+                fields.add(patchData.getSize());
+            }
+        }
+        if (info.getAllLibData() == null) {
+            fields.add(null);
+        } else {
+            for (SplitInfo.LibData libData : info.getAllLibData()) {
+                fields.add(libData.getAbi());
+                for (SplitInfo.LibData.Lib lib : libData.getLibs()) {
+                    fields.add(lib.getName());
+                    fields.add(lib.getMd5());
+                    fields.add(lib.getSize());
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Assets of a single file, whose descriptor can not create a stream if the asset is compressed.
+     */
+    private static class FakeAssets extends AssetManager {
+
+        File file;
+
+        FakeDescriptor fd;
+
+        boolean opened;
+
+        /**
+         * AssetManager has no public constructor, so the instance is allocated without running one.
+         */
+        static FakeAssets create(File file, boolean compressed) throws Exception {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            FakeAssets assets = (FakeAssets) unsafeClass.getMethod("allocateInstance", Class.class)
+                    .invoke(theUnsafe.get(null), FakeAssets.class);
+            assets.file = file;
+            assets.fd = new FakeDescriptor(file, compressed);
+            return assets;
+        }
+
+        @Override
+        public AssetFileDescriptor openFd(String fileName) {
+            return fd;
+        }
+
+        @Override
+        public InputStream open(String fileName) throws IOException {
+            opened = true;
+            return new FileInputStream(file);
+        }
+    }
+
+    private static class FakeDescriptor extends AssetFileDescriptor {
+
+        private final File file;
+
+        private final boolean compressed;
+
+        boolean closed;
+
+        FakeDescriptor(File file, boolean compressed) {
+            super(null, 0, 0);
+            this.file = file;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public FileInputStream createInputStream() throws IOException {
+            if (compressed) {
+                throw new IOException("This file can not be opened as a file descriptor; it is probably compressed");
+            }
+            return new FileInputStream(file);
+        }
+
+        @Override
+        public long getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public long getLength() {
+            return file.length();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
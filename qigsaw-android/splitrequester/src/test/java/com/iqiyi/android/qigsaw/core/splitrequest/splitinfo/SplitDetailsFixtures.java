@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Builds split-details json in the format generated by qigsaw gradle plugin.
+ */
+final class SplitDetailsFixtures {
+
+    private static final String[] ABIS = {"arm64-v8a", "armeabi-v7a", "x86"};
+
+    private SplitDetailsFixtures() {
+
+    }
+
+    static JSONObject details(String qigsawId, JSONObject... splits) throws JSONException {
+        JSONObject details = new JSONObject();
+        details.put("qigsawId", qigsawId);
+        details.put("appVersionName", "1.0.0");
+        JSONArray array = new JSONArray();
+        for (JSONObject split : splits) {
+            array.put(split);
+        }
+        details.put("splits", array);
+        return details;
+    }
+
+    /**
+     * A split with master apk only and given dependencies.
+     */
+    static JSONObject split(String splitName, String... dependencies) throws JSONException {
+        JSONObject split = new JSONObject();
+        split.put("splitName", splitName);
+        split.put("version", "1.0.0");
+        split.put("minSdkVersion", 14);
+        split.put("dexNumber", 1);
+        if (dependencies.length > 0) {
+            JSONArray array = new JSONArray();
+            for (String dependency : dependencies) {
+                array.put(dependency);
+            }
+            split.put("dependencies", array);
+        }
+        split.put("apkData", new JSONArray().put(apkData("master", splitName)));
+        return split;
+    }
+
+    static JSONObject apkData(String abi, String splitName) throws JSONException {
+        JSONObject apkData = new JSONObject();
+        apkData.put("abi", abi);
+        apkData.put("url", "https://cdn.example.com/qigsaw/" + splitName + "-" + abi + ".zip");
+        apkData.put("md5", md5Of(splitName + abi));
+        apkData.put("size", 1024 + Math.abs((splitName + abi).hashCode() % 4096));
+        return apkData;
+    }
+
+    /**
+     * Every split depends on up to two random splits declared before it, all optional fields are filled
+     * for some splits and missing for others.
+     */
+    static JSONObject synthetic(long seed, int splitCount) throws JSONException {
+        Random random = new Random(seed);
+        JSONObject[] splits = new JSONObject[splitCount];
+        for (int i = 0; i < splitCount; i++) {
+            String splitName = "split" + i;
+            JSONObject split = i == 0 ? split(splitName) : split(splitName, "split" + random.nextInt(i), "split" + random.nextInt(i));
+            split.put("builtIn", i % 3 == 0);
+            split.put("dexNumber", random.nextInt(4));
+            split.put("version", "1.0." + random.nextInt(100));
+            if (i % 2 == 0) {
+                split.put("workProcesses", new JSONArray().put("").put(":" + splitName));
+            }
+            JSONArray apkDataArray = split.getJSONArray("apkData");
+            JSONArray libDataArray = new JSONArray();
+            for (String abi : ABIS) {
+                JSONObject apkData = apkData(abi, splitName);
+                if (random.nextBoolean()) {
+                    JSONObject patch = new JSONObject();
+                    patch.put("baseMd5", md5Of("base" + splitName + abi));
+                    patch.put("url", "https://cdn.example.com/qigsaw/" + splitName + "-" + abi + ".patch");
+                    patch.put("md5", md5Of("patch" + splitName + abi));
+                    patch.put("size", random.nextInt(1 << 16));
+                    apkData.put("patch", patch);
+                }
+                apkDataArray.put(apkData);
+                if (i % 4 != 1) {
+                    JSONArray libs = new JSONArray();
+                    for (int l = 0; l < 2; l++) {
+                        JSONObject lib = new JSONObject();
+                        lib.put("name", "lib" + splitName + "_" + l + ".so");
+                        lib.put("md5", md5Of(splitName + abi + l));
+                        lib.put("size", random.nextInt(1 << 20));
+                        libs.put(lib);
+                    }
+                    libDataArray.put(new JSONObject().put("abi", abi).put("jniLibs", libs));
+                }
+            }
+            if (libDataArray.length() > 0) {
+                split.put("libData", libDataArray);
+            }
+            splits[i] = split;
+        }
+        JSONObject details = details("1.0.0_" + Long.toHexString(seed), splits);
+        details.put("updateSplits", new JSONArray().put("split0").put("split" + (splitCount - 1)));
+        details.put("splitEntryFragments", new JSONArray().put("com.iqiyi.split0.EntryFragment"));
+        return details;
+    }
+
+    private static String md5Of(String value) {
+        StringBuilder sb = new StringBuilder(32);
+        int hash = value.hashCode();
+        for (int i = 0; i < 4; i++) {
+            sb.append(String.format("%08x", hash * (i + 31)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SplitInfoIndexTest {
+
+    @Test
+    public void deepChainIsResolvedTransitively() throws Exception {
+        int depth = 100;
+        JSONObject[] splits = new JSONObject[depth];
+        //declared in reverse order, so split-details order is not a valid install order.
+        for (int i = 0; i < depth; i++) {
+            int level = depth - 1 - i;
+            splits[i] = level == 0 ? SplitDetailsFixtures.split("s0") : SplitDetailsFixtures.split("s" + level, "s" + (level - 1));
+        }
+        SplitInfoIndex index = index(SplitDetailsFixtures.details("deep", splits));
+        int leaf = index.getSplitId("s" + (depth - 1));
+        BitSet closure = index.getTransitiveDependencies(leaf);
+        assertEquals(depth - 1, closure.cardinality());
+        assertTrue(!closure.get(leaf));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            expected.add("s" + i);
+        }
+        assertEquals(expected, names(index.getSplitInfosWithDependencies(Collections.singletonList("s" + (depth - 1)))));
+        assertEquals(Collections.singletonList("s0"), names(index.getSplitInfosWithDependencies(Collections.singletonList("s0"))));
+    }
+
+    @Test
+    public void diamondDependencyIsInstalledOnce() throws Exception {
+        SplitInfoIndex index = index(SplitDetailsFixtures.details("diamond",
+                SplitDetailsFixtures.split("top", "left", "right"),
+                SplitDetailsFixtures.split("left", "base"),
+                SplitDetailsFixtures.split("right", "base"),
+                SplitDetailsFixtures.split("base"),
+                SplitDetailsFixtures.split("other")));
+        assertEquals(ids(index, "left", "right"), index.getDependencies(index.getSplitId("top")));
+        assertEquals(ids(index, "left", "right", "base"), index.getTransitiveDependencies(index.getSplitId("top")));
+        assertEquals(Arrays.asList("base", "left", "right", "top"),
+                names(index.getSplitInfosWithDependencies(Collections.singletonList("top"))));
+        assertEquals(Arrays.asList("base", "left", "right", "top", "other"),
+                names(index.getSplitInfosWithDependencies(Arrays.asList("other", "top", "left"))));
+    }
+
+    @Test
+    public void undeclaredAndSelfDependenciesAreIgnored() throws Exception {
+        SplitInfoIndex index = index(SplitDetailsFixtures.details("broken",
+                SplitDetailsFixtures.split("a", "a", "missing"),
+                SplitDetailsFixtures.split("b", "a")));
+        assertTrue(index.getDependencies(index.getSplitId("a")).isEmpty());
+        assertEquals(-1, index.getSplitId("missing"));
+        assertNull(index.getSplitInfo("missing"));
+        assertEquals(Arrays.asList("a", "b"), names(index.getSplitInfosWithDependencies(Arrays.asList("b", "missing"))));
+    }
+
+    @Test
+    public void splitsInCycleAreStillOrdered() throws Exception {
+        SplitInfoIndex index = index(SplitDetailsFixtures.details("cycle",
+                SplitDetailsFixtures.split("x", "y"),
+                SplitDetailsFixtures.split("y", "x"),
+                SplitDetailsFixtures.split("z", "x"),
+                SplitDetailsFixtures.split("free")));
+        List<String> ordered = names(index.getSplitInfosWithDependencies(Arrays.asList("x", "y", "z", "free")));
+        assertEquals(4, ordered.size());
+        assertEquals("free", ordered.get(0));
+        assertTrue(ordered.containsAll(Arrays.asList("x", "y", "z")));
+        assertEquals(ids(index, "x", "y"), index.getTransitiveDependencies(index.getSplitId("z")));
+    }
+
+    @Test
+    public void splitsInCycleSeeWholeCycle() throws Exception {
+        SplitInfoIndex index = index(SplitDetailsFixtures.details("ring",
+                SplitDetailsFixtures.split("a", "b"),
+                SplitDetailsFixtures.split("b", "c"),
+                SplitDetailsFixtures.split("c", "a"),
+                SplitDetailsFixtures.split("d", "a")));
+        assertEquals(ids(index, "b", "c"), index.getTransitiveDependencies(index.getSplitId("a")));
+        assertEquals(ids(index, "a", "c"), index.getTransitiveDependencies(index.getSplitId("b")));
+        assertEquals(ids(index, "a", "b"), index.getTransitiveDependencies(index.getSplitId("c")));
+        assertEquals(ids(index, "a", "b", "c"), index.getTransitiveDependencies(index.getSplitId("d")));
+    }
+
+    @Test
+    public void randomCyclicGraphsMatchBreadthFirstSearch() throws Exception {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            int splitCount = 60;
+            JSONObject[] splits = new JSONObject[splitCount];
+            for (int i = 0; i < splitCount; i++) {
+                splits[i] = SplitDetailsFixtures.split("split" + i,
+                        "split" + random.nextInt(splitCount), "split" + random.nextInt(splitCount));
+            }
+            JSONObject json = SplitDetailsFixtures.details("cyclic" + seed, splits);
+            SplitDetails details = SplitInfoManagerImpl.parseSplitsContent(json.toString());
+            SplitInfoIndex index = details.getSplitInfoIndex();
+            for (int id = 0; id < index.size(); id++) {
+                assertEquals("seed " + seed + " split " + id,
+                        breadthFirstClosure(details.getSplitInfoListing(), index, id), index.getTransitiveDependencies(id));
+            }
+        }
+    }
+
+    @Test
+    public void randomGraphsMatchBreadthFirstSearch() throws Exception {
+        for (long seed = 0; seed < 20; seed++) {
+            JSONObject json = SplitDetailsFixtures.synthetic(seed, 200);
+            SplitDetails details = SplitInfoManagerImpl.parseSplitsContent(json.toString());
+            SplitInfoIndex index = details.getSplitInfoIndex();
+            BitSet all = new BitSet();
+            all.set(0, index.size());
+            int[] order = index.sortTopologically(all);
+            int[] positions = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                positions[order[i]] = i;
+            }
+            for (int id = 0; id < index.size(); id++) {
+                BitSet expected = breadthFirstClosure(details.getSplitInfoListing(), index, id);
+                assertEquals(expected, index.getTransitiveDependencies(id));
+                for (int d = expected.nextSetBit(0); d >= 0; d = expected.nextSetBit(d + 1)) {
+                    assertTrue(positions[d] < positions[id]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void splitInfosFollowSplitDetailsOrder() throws Exception {
+        SplitDetails details = SplitInfoManagerImpl.parseSplitsContent(SplitDetailsFixtures.synthetic(7, 30).toString());
+        SplitInfoIndex index = details.getSplitInfoIndex();
+        assertEquals(Arrays.asList("split3", "split10", "split29"),
+                names(index.getSplitInfos(Arrays.asList("split29", "unknown", "split3", "split10"))));
+        for (String name : details.getSplitInfoListing().getSplitNames()) {
+            int id = index.getSplitId(name);
+            assertEquals(name, index.getSplitName(id));
+            assertTrue(index.getSplitInfo(id) == details.getSplitInfoListing().getSplitInfo(name));
+        }
+    }
+
+    @Test
+    public void returnedSetsAreCopies() throws Exception {
+        SplitInfoIndex index = index(SplitDetailsFixtures.details("copies",
+                SplitDetailsFixtures.split("a"),
+                SplitDetailsFixtures.split("b", "a")));
+        int b = index.getSplitId("b");
+        index.getDependencies(b).clear();
+        index.getTransitiveDependencies(b).clear();
+        BitSet ids = index.toSplitIds(Collections.singletonList("b"));
+        index.withTransitiveDependencies(ids);
+        assertEquals(ids(index, "b"), ids);
+        assertEquals(ids(index, "a"), index.getDependencies(b));
+        assertEquals(ids(index, "a"), index.getTransitiveDependencies(b));
+    }
+
+    private static BitSet breadthFirstClosure(SplitInfoListing listing, SplitInfoIndex index, int id) {
+        BitSet visited = new BitSet();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(index.getSplitName(id));
+        while (!queue.isEmpty()) {
+            List<String> dependencies = listing.getDependencies(queue.poll());
+            if (dependencies == null) {
+                continue;
+            }
+            for (String dependency : dependencies) {
+                int dependencyId = index.getSplitId(dependency);
+                if (dependencyId >= 0 && !visited.get(dependencyId)) {
+                    visited.set(dependencyId);
+                    queue.add(dependency);
+                }
+            }
+        }
+        visited.clear(id);
+        return visited;
+    }
+
+    private static SplitInfoIndex index(JSONObject json) throws Exception {
+        return SplitInfoManagerImpl.parseSplitsContent(json.toString()).getSplitInfoIndex();
+    }
+
+    private static BitSet ids(SplitInfoIndex index, String... names) {
+        return index.toSplitIds(Arrays.asList(names));
+    }
+
+    private static List<String> names(List<SplitInfo> infos) {
+        List<String> names = new ArrayList<>(infos.size());
+        for (SplitInfo info : infos) {
+            names.add(info.getSplitName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import com.iqiyi.android.qigsaw.core.common.SplitJournalStore;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SplitInstallStateTableTest {
+
+    private static final String MARK = "1.0.0@1_mark";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File lastJournal;
+
+    @BeforeClass
+    public static void installPathManager() throws Exception {
+        Field field = SplitPathManager.class.getDeclaredField("sSplitPathManagerRef");
+        field.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        AtomicReference<SplitPathManager> ref = (AtomicReference<SplitPathManager>) field.get(null);
+        if (ref.get() == null) {
+            File rootDir = File.createTempFile("qigsaw_test", null);
+            assertTrue(rootDir.delete() && rootDir.mkdirs());
+            ref.compareAndSet(null, new SplitPathManager(rootDir, "1.0.0_test", SplitPathManager.DirOperations.DEFAULT));
+        }
+    }
+
+    @Test
+    public void entryIsOnlyValidForItsMark() throws IOException {
+        SplitInstallStateTable table = newTable();
+        SplitInstallStateTable.State state = state("feature", SplitInstallStateTable.OAT_OK);
+        assertTrue(table.put(state));
+        assertStateEquals(state, table.get("feature", MARK));
+        assertNull(table.get("feature", "2.0.0@1_mark"));
+        assertNull(table.get("missing", MARK));
+        assertStateEquals(state, reopen().getAll().get("feature"));
+    }
+
+    @Test
+    public void unchangedEntryIsNotWritten() throws IOException {
+        File journal = folder.newFile("install_state.journal");
+        SplitInstallStateTable table = new SplitInstallStateTable(SplitJournalStore.get(journal));
+        assertTrue(table.put(state("feature", SplitInstallStateTable.OAT_PENDING)));
+        long length = journal.length();
+        assertTrue(table.put(state("feature", SplitInstallStateTable.OAT_PENDING)));
+        assertEquals(length, journal.length());
+        assertTrue(table.put(state("feature", SplitInstallStateTable.OAT_PENDING).withOatStatus(SplitInstallStateTable.OAT_OK)));
+        assertEquals(SplitInstallStateTable.OAT_OK, table.get("feature", MARK).oatStatus);
+        assertTrue(table.remove("feature"));
+        assertTrue(table.getAll().isEmpty());
+        long removedLength = journal.length();
+        assertTrue(table.remove("feature"));
+        assertEquals(removedLength, journal.length());
+    }
+
+    @Test
+    public void splitWithInstalledMarkIsMigrated() throws IOException {
+        SplitInfo info = split("migratedOk", 1);
+        assertTrue(SplitPathManager.require().getSplitMarkFile(info, MARK).createNewFile());
+        File codeCacheDir = SplitPathManager.require().getSplitCodeCacheDir(info);
+        assertTrue(new File(codeCacheDir, "migratedOk.classes3.zip").createNewFile());
+        assertTrue(new File(codeCacheDir, "migratedOk.classes2.zip").createNewFile());
+        assertTrue(new File(codeCacheDir, "migratedOk.classes2.dex").createNewFile());
+        File splitApk = new File(SplitPathManager.require().getSplitDir(info), "migratedOk-master.apk");
+
+        SplitInstallStateTable table = newTable();
+        int oatStatus = SplitInstallStateTable.getLegacyOatStatus(info, MARK);
+        assertEquals(SplitInstallStateTable.OAT_OK, oatStatus);
+        assertEquals(SplitInstallStateTable.OAT_OK, table.getOatStatus(info, MARK));
+        SplitInstallStateTable.State state = table.migrateLegacyState(info, MARK, oatStatus, splitApk, "arm64-v8a");
+
+        assertEquals(splitApk.getAbsolutePath(), state.apkPath);
+        assertEquals(SplitPathManager.require().getSplitOptDir(info).getAbsolutePath(), state.optDir);
+        assertEquals(SplitPathManager.require().getSplitLibDir(info, "arm64-v8a").getAbsolutePath(), state.libDir);
+        assertEquals(Arrays.asList(splitApk.getAbsolutePath(),
+                new File(codeCacheDir, "migratedOk.classes2.zip").getAbsolutePath(),
+                new File(codeCacheDir, "migratedOk.classes3.zip").getAbsolutePath()), state.addedDexPaths);
+        assertTrue(state.dependencyMarks.isEmpty());
+        //migrated entry is read from table afterwards, even if mark file is gone.
+        assertTrue(SplitPathManager.require().getSplitMarkFile(info, MARK).delete());
+        assertStateEquals(state, reopen().get("migratedOk", MARK));
+        assertEquals(SplitInstallStateTable.OAT_OK, table.getOatStatus(info, MARK));
+    }
+
+    @Test
+    public void splitWithSpecialMarkIsMigratedAsOatPending() throws IOException {
+        SplitInfo info = split("migratedPending", 0);
+        assertTrue(SplitPathManager.require().getSplitSpecialMarkFile(info, MARK).createNewFile());
+        SplitInstallStateTable table = newTable();
+        int oatStatus = SplitInstallStateTable.getLegacyOatStatus(info, MARK);
+        assertEquals(SplitInstallStateTable.OAT_PENDING, oatStatus);
+        SplitInstallStateTable.State state = table.migrateLegacyState(info, MARK, oatStatus, folder.newFile("base.apk"), null);
+        assertNull(state.optDir);
+        assertNull(state.libDir);
+        assertNull(state.addedDexPaths);
+        assertEquals(SplitInstallStateTable.OAT_PENDING, reopen().get("migratedPending", MARK).oatStatus);
+    }
+
+    @Test
+    public void splitWithoutMarkIsNotInstalled() throws IOException {
+        SplitInfo info = split("neverInstalled", 1);
+        assertEquals(SplitInstallStateTable.NOT_INSTALLED, SplitInstallStateTable.getLegacyOatStatus(info, MARK));
+        assertEquals(SplitInstallStateTable.NOT_INSTALLED, newTable().getOatStatus(info, MARK));
+    }
+
+    @Test
+    public void undecodableEntriesAreSkipped() throws IOException {
+        File journal = folder.newFile("install_state.journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        SplitInstallStateTable table = new SplitInstallStateTable(store);
+        SplitInstallStateTable.State state = state("feature", SplitInstallStateTable.OAT_OK);
+        assertTrue(table.put(state));
+        Map<String, String> garbage = new HashMap<>();
+        garbage.put("broken", "{\"mark\":");
+        garbage.put("unknownOat", "{\"mark\":\"" + MARK + "\",\"apk\":\"/a.apk\",\"oat\":7}");
+        garbage.put("noApk", "{\"mark\":\"" + MARK + "\",\"oat\":0}");
+        assertTrue(store.update(garbage));
+        Map<String, SplitInstallStateTable.State> states = table.getAll();
+        assertEquals(Collections.singleton("feature"), states.keySet());
+        assertNull(table.get("broken", MARK));
+        assertNull(table.get("unknownOat", MARK));
+        assertStateEquals(state, states.get("feature"));
+    }
+
+    @Test
+    public void jsonEntryOfFormerVersionIsDecoded() throws IOException {
+        File journal = folder.newFile("install_state.journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        assertTrue(store.put("feature", "{\"mark\":\"" + MARK + "\",\"apk\":\"/data/feature-master.apk\","
+                + "\"optDir\":\"/data/feature/oat\",\"libDir\":\"/data/feature/nativeLib/arm64-v8a\","
+                + "\"dex\":[\"/data/feature-master.apk\",\"/data/feature/code_cache/classes2.zip\"],"
+                + "\"oat\":1,\"deps\":{\"base\":\"1.0.0@1_base\"}}"));
+        SplitInstallStateTable table = new SplitInstallStateTable(store);
+        assertStateEquals(state("feature", SplitInstallStateTable.OAT_PENDING), table.get("feature", MARK));
+        //entry is rewritten in fields once it changes.
+        assertTrue(table.put(state("feature", SplitInstallStateTable.OAT_OK)));
+        assertTrue(store.get("feature").startsWith("f1;"));
+        assertStateEquals(state("feature", SplitInstallStateTable.OAT_OK), reopen(journal).get("feature", MARK));
+    }
+
+    @Test
+    public void everyTruncatedEntryIsRejected() throws IOException {
+        File journal = folder.newFile("install_state.journal");
+        SplitJournalStore store = SplitJournalStore.get(journal);
+        SplitInstallStateTable table = new SplitInstallStateTable(store);
+        assertTrue(table.put(state("feature", SplitInstallStateTable.OAT_OK)));
+        String value = store.get("feature");
+        Map<String, String> truncated = new HashMap<>();
+        for (int length = 0; length < value.length(); length++) {
+            truncated.put("truncated" + length, value.substring(0, length));
+        }
+        truncated.put("badLength", "f1;x:" + value.substring(3));
+        truncated.put("negativeCount", "f1;12:" + MARK + "6:/a.apk--1:0-2:-1");
+        truncated.put("trailingData", value + "-");
+        assertTrue(store.update(truncated));
+        assertEquals(Collections.singleton("feature"), table.getAll().keySet());
+    }
+
+    @Test
+    public void tornTailKeepsEarlierEntries() throws IOException {
+        File journal = folder.newFile("install_state.journal");
+        SplitInstallStateTable table = new SplitInstallStateTable(SplitJournalStore.get(journal));
+        table.put(state("first", SplitInstallStateTable.OAT_OK));
+        table.put(state("second", SplitInstallStateTable.OAT_OK));
+        long length = journal.length();
+        table.put(state("third", SplitInstallStateTable.OAT_OK));
+        for (long tail = length; tail < journal.length(); tail++) {
+            File torn = copy(journal, "torn" + tail, tail);
+            SplitInstallStateTable tornTable = new SplitInstallStateTable(SplitJournalStore.get(torn));
+            assertEquals(2, tornTable.getAll().size());
+            assertNull(tornTable.get("third", MARK));
+            assertTrue(tornTable.put(state("fourth", SplitInstallStateTable.OAT_PENDING)));
+            assertEquals(3, reopen(torn).getAll().size());
+        }
+    }
+
+    @Test
+    public void flippedByteDropsOnlyCorruptedRecord() throws IOException {
+        File journal = folder.newFile("install_state.journal");
+        SplitInstallStateTable table = new SplitInstallStateTable(SplitJournalStore.get(journal));
+        table.put(state("first", SplitInstallStateTable.OAT_OK));
+        long length = journal.length();
+        table.put(state("second", SplitInstallStateTable.OAT_OK));
+        File corrupted = copy(journal, "corrupted", journal.length());
+        RandomAccessFile raf = new RandomAccessFile(corrupted, "rw");
+        try {
+            raf.seek(length + 20);
+            int b = raf.read();
+            raf.seek(length + 20);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        SplitInstallStateTable corruptedTable = new SplitInstallStateTable(SplitJournalStore.get(corrupted));
+        assertEquals(Collections.singleton("first"), corruptedTable.getAll().keySet());
+    }
+
+    @Test
+    public void garbageTableIsRewritten() throws IOException {
+        File journal = folder.newFile("install_state.journal");
+        FileOutputStream os = new FileOutputStream(journal);
+        try {
+            os.write("not a journal at all, just garbage bytes".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+        SplitInstallStateTable table = new SplitInstallStateTable(SplitJournalStore.get(journal));
+        assertTrue(table.getAll().isEmpty());
+        assertTrue(table.put(state("feature", SplitInstallStateTable.OAT_OK)));
+        assertEquals(Collections.singleton("feature"), reopen(journal).getAll().keySet());
+    }
+
+    private SplitInstallStateTable newTable() throws IOException {
+        lastJournal = File.createTempFile("install_state", ".journal", folder.getRoot());
+        return new SplitInstallStateTable(SplitJournalStore.get(lastJournal));
+    }
+
+    /**
+     * Tables share stores by path in a process, a copy of the journal is read as another process would do.
+     */
+    private SplitInstallStateTable reopen() throws IOException {
+        return reopen(lastJournal);
+    }
+
+    private SplitInstallStateTable reopen(File journal) throws IOException {
+        return new SplitInstallStateTable(SplitJournalStore.get(copy(journal, "copy" + System.nanoTime(), journal.length())));
+    }
+
+    private File copy(File file, String name, long length) throws IOException {
+        File copy = new File(folder.getRoot(), name);
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] content = new byte[(int) length];
+            in.readFully(content);
+            FileOutputStream os = new FileOutputStream(copy);
+            try {
+                os.write(content);
+            } finally {
+                os.close();
+            }
+        } finally {
+            in.close();
+        }
+        return copy;
+    }
+
+    private static SplitInstallStateTable.State state(String splitName, int oatStatus) {
+        Map<String, String> dependencyMarks = new HashMap<>();
+        dependencyMarks.put("base", "1.0.0@1_base");
+        List<String> addedDexPaths = new ArrayList<>();
+        addedDexPaths.add("/data/" + splitName + "-master.apk");
+        addedDexPaths.add("/data/" + splitName + "/code_cache/classes2.zip");
+        return new SplitInstallStateTable.State(splitName, MARK, "/data/" + splitName + "-master.apk",
+                "/data/" + splitName + "/oat", "/data/" + splitName + "/nativeLib/arm64-v8a",
+                addedDexPaths, oatStatus, dependencyMarks);
+    }
+
+    private static SplitInfo split(String splitName, int dexNumber) {
+        List<SplitInfo.ApkData> apkDataList = new ArrayList<>(1);
+        apkDataList.add(new SplitInfo.ApkData("master", "http://localhost/" + splitName + ".zip", "", 0));
+        return new SplitInfo(splitName, "1.0.0", "1.0.0@1", false, 14, dexNumber,
+                Collections.<String>emptyList(), null, apkDataList, null);
+    }
+
+    private static void assertStateEquals(SplitInstallStateTable.State expected, SplitInstallStateTable.State actual) {
+        assertEquals(expected.splitName, actual.splitName);
+        assertEquals(expected.mark, actual.mark);
+        assertEquals(expected.apkPath, actual.apkPath);
+        assertEquals(expected.optDir, actual.optDir);
+        assertEquals(expected.libDir, actual.libDir);
+        assertEquals(expected.addedDexPaths, actual.addedDexPaths);
+        assertEquals(expected.oatStatus, actual.oatStatus);
+        assertEquals(expected.dependencyMarks, actual.dependencyMarks);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present, iQIYI, Inc. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.iqiyi.android.qigsaw.core.splitrequest.splitinfo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitPathManagerTest {
+
+    private static final int SPLIT_COUNT = 20;
+
+    /**
+     * Dirs of a split: split root, version, code_cache, oat and native lib.
+     */
+    private static final int DIRS_PER_SPLIT = 5;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void coldStartChecksEachDirOnce() {
+        CountingDirOperations operations = new CountingDirOperations(SplitPathManager.DirOperations.DEFAULT);
+        SplitPathManager pathManager = new SplitPathManager(folder.getRoot(), "1.0.0_test", operations);
+        List<SplitInfo> splits = splits();
+        int resolutions = coldStart(pathManager, splits);
+        int dirs = SPLIT_COUNT * DIRS_PER_SPLIT + 1;
+        //every dir is missing at first, so it is checked and created once.
+        assertEquals(dirs, operations.exists);
+        assertEquals(dirs, operations.mkdirs);
+        assertEquals(dirs, operations.paths.size());
+        //without cache every resolved dir is checked at least once.
+        assertEquals(32 * SPLIT_COUNT, resolutions);
+
+        //a second start in the same process touches no dir.
+        operations.reset();
+        coldStart(pathManager, splits);
+        assertEquals(0, operations.exists + operations.mkdirs);
+
+        //a new process checks existing dirs once and creates none of them.
+        operations.reset();
+        coldStart(new SplitPathManager(folder.getRoot(), "1.0.0_test", operations), splits);
+        assertEquals(dirs, operations.exists);
+        assertEquals(0, operations.mkdirs);
+    }
+
+    @Test
+    public void dirFailedToBeCreatedIsRetried() {
+        CountingDirOperations operations = new CountingDirOperations(SplitPathManager.DirOperations.DEFAULT);
+        operations.failMkdirs = true;
+        SplitPathManager pathManager = new SplitPathManager(folder.getRoot(), "1.0.0_test", operations);
+        SplitInfo split = split("feature");
+        File optDir = pathManager.getSplitOptDir(split);
+        assertFalse(optDir.exists());
+        operations.failMkdirs = false;
+        operations.reset();
+        assertEquals(optDir, pathManager.getSplitOptDir(split));
+        assertTrue(optDir.isDirectory());
+        assertTrue(operations.mkdirs > 0);
+        operations.reset();
+        pathManager.getSplitOptDir(split);
+        assertEquals(0, operations.exists + operations.mkdirs);
+    }
+
+    @Test
+    public void invalidatedDirsAreCreatedAgain() {
+        SplitPathManager pathManager = new SplitPathManager(folder.getRoot(), "1.0.0_test", SplitPathManager.DirOperations.DEFAULT);
+        SplitInfo feature = split("feature");
+        SplitInfo other = split("other");
+        File codeCacheDir = pathManager.getSplitCodeCacheDir(feature);
+        File otherDir = pathManager.getSplitDir(other);
+        assertTrue(deleteDir(pathManager.getSplitRootDir(feature)));
+        //without invalidation the deleted dir is still returned from cache.
+        assertFalse(pathManager.getSplitCodeCacheDir(feature).exists());
+        pathManager.invalidateSplitDirs(feature);
+        assertTrue(pathManager.getSplitCodeCacheDir(feature).isDirectory());
+        assertEquals(codeCacheDir, pathManager.getSplitCodeCacheDir(feature));
+
+        assertTrue(deleteDir(otherDir));
+        pathManager.invalidateDirs(otherDir);
+        assertTrue(pathManager.getSplitOptDir(other).isDirectory());
+    }
+
+    @Test
+    public void clearCacheForgetsCreatedDirs() {
+        CountingDirOperations operations = new CountingDirOperations(SplitPathManager.DirOperations.DEFAULT);
+        SplitPathManager pathManager = new SplitPathManager(folder.getRoot(), "1.0.0_test", operations);
+        SplitInfo split = split("feature");
+        pathManager.getSplitLibDir(split, "arm64-v8a");
+        operations.reset();
+        pathManager.clearCache();
+        pathManager.getSplitLibDir(split, "arm64-v8a");
+        assertEquals(3, operations.exists);
+        assertEquals(0, operations.mkdirs);
+    }
+
+    /**
+     * Dir lookups of installing, loading and cleaning up splits at start, as installer, loader and cleaner do.
+     *
+     * @return count of dirs resolved by the lookups, a nested dir resolves its parents as well.
+     */
+    private static int coldStart(SplitPathManager pathManager, List<SplitInfo> splits) {
+        int resolutions = 0;
+        for (SplitInfo split : splits) {
+            pathManager.getSplitTmpDir();
+            pathManager.getSplitDir(split);
+            pathManager.getSplitSpecialLockFile(split);
+            pathManager.getSplitMarkFile(split, split.getSplitVersion());
+            pathManager.getSplitCodeCacheDir(split);
+            pathManager.getSplitOptDir(split);
+            pathManager.getSplitLibDir(split, "arm64-v8a");
+            resolutions += 1 + 2 + 2 + 2 + 3 + 3 + 3;
+        }
+        for (SplitInfo split : splits) {
+            pathManager.getSplitMarkFile(split, split.getSplitVersion());
+            pathManager.getSplitSpecialMarkFile(split, split.getSplitVersion());
+            pathManager.getSplitOptDir(split);
+            pathManager.getSplitLibDir(split, "arm64-v8a");
+            pathManager.getSplitCodeCacheDir(split);
+            resolutions += 2 + 2 + 3 + 3 + 3;
+        }
+        for (SplitInfo split : splits) {
+            pathManager.getSplitRootDir(split);
+            pathManager.getSplitDir(split);
+            resolutions += 1 + 2;
+        }
+        return resolutions;
+    }
+
+    private static List<SplitInfo> splits() {
+        List<SplitInfo> splits = new ArrayList<>(SPLIT_COUNT);
+        for (int i = 0; i < SPLIT_COUNT; i++) {
+            splits.add(split("split" + i));
+        }
+        return splits;
+    }
+
+    private static SplitInfo split(String splitName) {
+        List<SplitInfo.ApkData> apkDataList = new ArrayList<>(1);
+        apkDataList.add(new SplitInfo.ApkData("master", "http://localhost/" + splitName + ".zip", "", 0));
+        return new SplitInfo(splitName, "1.0.0", "1.0.0@1", false, 14, 1,
+                Collections.<String>emptyList(), null, apkDataList, null);
+    }
+
+    private static boolean deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        return dir.delete();
+    }
+
+    private static final class CountingDirOperations implements SplitPathManager.DirOperations {
+
+        private final SplitPathManager.DirOperations delegate;
+
+        final Set<String> paths = new HashSet<>();
+
+        int exists;
+
+        int mkdirs;
+
+        boolean failMkdirs;
+
+        CountingDirOperations(SplitPathManager.DirOperations delegate) {
+            this.delegate = delegate;
+        }
+
+        void reset() {
+            exists = 0;
+            mkdirs = 0;
+            paths.clear();
+        }
+
+        @Override
+        public boolean exists(File dir) {
+            exists++;
+            paths.add(dir.getPath());
+            return delegate.exists(dir);
+        }
+
+        @Override
+        public boolean mkdirs(File dir) {
+            mkdirs++;
+            return !failMkdirs && delegate.mkdirs(dir);
+        }
+    }
+}